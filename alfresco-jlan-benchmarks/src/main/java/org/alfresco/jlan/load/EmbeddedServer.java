@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.io.PrintStream;
+
+import org.alfresco.jlan.app.JLANServer;
+import org.alfresco.jlan.debug.Debug;
+
+/**
+ * Embedded JLAN Server Class
+ *
+ * <p>Runs a JLAN server in a background thread within the load generator process, using the specified server
+ * configuration file. Console shutdown is disabled, the server is stopped using the stopServer() method.
+ *
+ * @author gkspencer
+ */
+public class EmbeddedServer extends JLANServer implements Runnable {
+
+	// Server configuration file
+
+	private String m_configFile;
+
+	// Server thread
+
+	private Thread m_srvThread;
+
+	// Server running/finished flags, and startup error
+
+	private boolean m_running;
+	private boolean m_finished;
+	private Exception m_startupError;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param configFile String
+	 */
+	public EmbeddedServer(String configFile) {
+		m_configFile = configFile;
+	}
+
+	/**
+	 * Start the server, wait for the server to be running
+	 *
+	 * @param timeout long
+	 * @exception Exception
+	 */
+	public final synchronized void startServer(long timeout)
+		throws Exception {
+
+		// Disable console shutdown, the console is not used when embedded
+
+		setAllowConsoleShutdown(false);
+
+		// Start the server thread
+
+		m_srvThread = new Thread(this, "EmbeddedJLANServer");
+		m_srvThread.setDaemon(true);
+		m_srvThread.start();
+
+		// Wait for the server to start, or fail
+
+		long endTime = System.currentTimeMillis() + timeout;
+
+		while ( m_running == false && m_finished == false && System.currentTimeMillis() < endTime)
+			wait(endTime - System.currentTimeMillis());
+
+		// Check if the server started
+
+		if ( m_running == false) {
+			stopServer(timeout);
+
+			if ( m_startupError != null)
+				throw m_startupError;
+			throw new Exception("Embedded server failed to start");
+		}
+	}
+
+	/**
+	 * Stop the server, wait for the server to stop
+	 *
+	 * @param timeout long
+	 */
+	public final void stopServer(long timeout) {
+
+		// Signal the server to shutdown
+
+		shutdownServer(null);
+
+		// Wait for the server thread to exit
+
+		if ( m_srvThread != null) {
+			try {
+				m_srvThread.join(timeout);
+			}
+			catch ( InterruptedException ex) {
+			}
+			m_srvThread = null;
+		}
+	}
+
+	/**
+	 * Run the server
+	 */
+	public void run() {
+		start(new String[] { m_configFile });
+	}
+
+	/**
+	 * Checkpoint method, called at various points of the server startup and shutdown
+	 *
+	 * @param out PrintStream
+	 * @param check int
+	 */
+	protected synchronized void checkPoint(PrintStream out, int check) {
+
+		// Wake up the starting thread when the server is running, or has finished
+
+		if ( check == CheckPointRunning) {
+			m_running = true;
+			notifyAll();
+		}
+		else if ( check == CheckPointFinished) {
+			m_finished = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Checkpoint error method, called if an error occurs during server startup/shutdown
+	 *
+	 * @param out PrintStream
+	 * @param check int
+	 * @param ex Exception
+	 */
+	protected synchronized void checkPointError(PrintStream out, int check, Exception ex) {
+
+		// Save the first error
+
+		if ( m_startupError == null)
+			m_startupError = ex;
+
+		Debug.println("[Load] Embedded server error at checkpoint " + check + ", " + ex.toString());
+
+		// Wake up the starting thread
+
+		m_finished = true;
+		notifyAll();
+	}
+}
@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SessionFactory;
+import org.alfresco.jlan.client.SessionSettings;
+import org.alfresco.jlan.oncrpc.nfs.NFS;
+import org.alfresco.jlan.oncrpc.portmap.PortMapper;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.smb.PCShare;
+import org.alfresco.jlan.smb.Protocol;
+import org.springframework.extensions.config.ConfigElement;
+import org.springframework.extensions.config.element.GenericConfigElement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Load Test Configuration Class
+ *
+ * <p>Loads the load test settings from an XML file. The file specifies an optional embedded server configuration,
+ * the target server and share, the run settings and the list of workloads to run, for example:
+ *
+ * <pre>
+ * &lt;loadTest&gt;
+ *   &lt;server config="jlanConfig.xml"/&gt;
+ *   &lt;target host="127.0.0.1" share="JLAN" username="user" password="pass" smbPort="1445"/&gt;
+ *   &lt;run concurrency="16" warmup="10" duration="60" path="\loadTest"/&gt;
+ *   &lt;workloads&gt;
+ *     &lt;metadataStorm/&gt;
+ *     &lt;sequentialIO fileSize="64M" ioSize="60K" concurrency="4"/&gt;
+ *   &lt;/workloads&gt;
+ * &lt;/loadTest&gt;
+ * </pre>
+ *
+ * @author gkspencer
+ */
+public class LoadConfiguration {
+
+	// Constants
+	//
+	// Node type for an Element
+
+	private static final int ELEMENT_TYPE	= 1;
+
+	// Default run settings
+
+	public static final int DefaultConcurrency	= 8;
+	public static final int DefaultWarmup		= 10;		// seconds
+	public static final int DefaultDuration		= 60;		// seconds
+	public static final String DefaultPath		= "\\jlanLoadTest";
+
+	// Default native SMB port
+
+	public static final int DefaultSMBPort		= 445;
+
+	// Standard workload names and classes
+
+	private static final String[] _workloadNames = { "metadataStorm", "sequentialIO", "smallFiles", "oplockContention", "nfsReadDirPlus" };
+	private static final String[] _workloadClasses = { "org.alfresco.jlan.load.MetadataStormWorkload",
+													   "org.alfresco.jlan.load.SequentialIOWorkload",
+													   "org.alfresco.jlan.load.SmallFilesWorkload",
+													   "org.alfresco.jlan.load.OplockContentionWorkload",
+													   "org.alfresco.jlan.load.NFSReadDirPlusWorkload"
+	};
+
+	// Embedded server configuration file, or null to use an external server
+
+	private String m_serverConfig;
+
+	// Target server details
+
+	private String m_host = "127.0.0.1";
+	private String m_share;
+	private String m_userName = "";
+	private String m_password = "";
+
+	private int m_smbPort = DefaultSMBPort;
+	private boolean m_netbios;
+
+	private int m_nfsPort = NFS.DefaultPort;
+	private int m_mountPort;
+	private int m_portMapperPort = PortMapper.DefaultPort;
+
+	// Run settings
+
+	private int m_concurrency = DefaultConcurrency;
+	private int m_warmup = DefaultWarmup;
+	private int m_duration = DefaultDuration;
+	private String m_path = DefaultPath;
+	private boolean m_verbose;
+
+	// Workloads
+
+	private List<Workload> m_workloads = new ArrayList<Workload>();
+
+	/**
+	 * Default constructor
+	 */
+	public LoadConfiguration() {
+	}
+
+	/**
+	 * Return the embedded server configuration file, or null if the target is an external server
+	 *
+	 * @return String
+	 */
+	public final String getServerConfiguration() {
+		return m_serverConfig;
+	}
+
+	/**
+	 * Check if an embedded server should be started
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasEmbeddedServer() {
+		return m_serverConfig != null ? true : false;
+	}
+
+	/**
+	 * Return the target host name/address
+	 *
+	 * @return String
+	 */
+	public final String getHost() {
+		return m_host;
+	}
+
+	/**
+	 * Return the target share name
+	 *
+	 * @return String
+	 */
+	public final String getShareName() {
+		return m_share;
+	}
+
+	/**
+	 * Return the user name
+	 *
+	 * @return String
+	 */
+	public final String getUserName() {
+		return m_userName;
+	}
+
+	/**
+	 * Return the password
+	 *
+	 * @return String
+	 */
+	public final String getPassword() {
+		return m_password;
+	}
+
+	/**
+	 * Return the SMB port
+	 *
+	 * @return int
+	 */
+	public final int getSMBPort() {
+		return m_smbPort;
+	}
+
+	/**
+	 * Return the NFS server port
+	 *
+	 * @return int
+	 */
+	public final int getNFSPort() {
+		return m_nfsPort;
+	}
+
+	/**
+	 * Return the mount server port, or zero if the port should be obtained from the portmapper
+	 *
+	 * @return int
+	 */
+	public final int getMountPort() {
+		return m_mountPort;
+	}
+
+	/**
+	 * Return the portmapper port
+	 *
+	 * @return int
+	 */
+	public final int getPortMapperPort() {
+		return m_portMapperPort;
+	}
+
+	/**
+	 * Return the default number of worker threads per workload
+	 *
+	 * @return int
+	 */
+	public final int getConcurrency() {
+		return m_concurrency;
+	}
+
+	/**
+	 * Return the warmup time, in seconds
+	 *
+	 * @return int
+	 */
+	public final int getWarmup() {
+		return m_warmup;
+	}
+
+	/**
+	 * Return the measured run duration, in seconds
+	 *
+	 * @return int
+	 */
+	public final int getDuration() {
+		return m_duration;
+	}
+
+	/**
+	 * Return the root path on the share used by the workloads
+	 *
+	 * @return String
+	 */
+	public final String getPath() {
+		return m_path;
+	}
+
+	/**
+	 * Check if verbose output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean isVerbose() {
+		return m_verbose;
+	}
+
+	/**
+	 * Return the list of workloads
+	 *
+	 * @return List<Workload>
+	 */
+	public final List<Workload> getWorkloads() {
+		return m_workloads;
+	}
+
+	/**
+	 * Open a disk session to the target share
+	 *
+	 * @param id int
+	 * @return DiskSession
+	 * @exception Exception
+	 */
+	public final DiskSession openSession(int id)
+		throws Exception {
+
+		// Connect to the target share, give each session a different virtual circuit
+
+		PCShare share = new PCShare(getHost(), getShareName(), getUserName(), getPassword());
+
+		SessionSettings sessSettings = new SessionSettings();
+
+		if ( m_netbios) {
+			sessSettings.setPrimaryProtocol(Protocol.TCPNetBIOS);
+			sessSettings.setNetBIOSSessionPort(getSMBPort());
+		}
+		else {
+			sessSettings.setPrimaryProtocol(Protocol.NativeSMB);
+			sessSettings.setNativeSMBPort(getSMBPort());
+		}
+
+		sessSettings.setSecondaryProtocol(Protocol.None);
+		sessSettings.setVirtualCircuit(id);
+
+		DiskSession sess = SessionFactory.OpenDisk(share, sessSettings);
+
+		// Give each session a unique process id
+
+		sess.setProcessId(id);
+		return sess;
+	}
+
+	/**
+	 * Load the load test configuration from the specified file
+	 *
+	 * @param fileName String
+	 * @exception Exception
+	 */
+	public final void loadConfiguration(String fileName)
+		throws Exception {
+
+		// Parse the configuration file
+
+		InputStream inStream = new FileInputStream(fileName);
+		Document doc = null;
+
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			DocumentBuilder builder = factory.newDocumentBuilder();
+
+			doc = builder.parse(inStream);
+		}
+		finally {
+			inStream.close();
+		}
+
+		// Access the root of the XML document, validate it
+
+		Element root = doc.getDocumentElement();
+
+		if ( root.getNodeName().equals("loadTest") == false)
+			throw new InvalidConfigurationException("Invalid load test configuration file, " + fileName);
+
+		NodeList childNodes = root.getChildNodes();
+
+		// Process the embedded server settings, a relative configuration path is relative to the load test file
+
+		Element elem = findChildNode("server", childNodes);
+		if ( elem != null) {
+			String srvConfig = elem.getAttribute("config");
+
+			if ( srvConfig == null || srvConfig.length() == 0)
+				throw new InvalidConfigurationException("Embedded server configuration file not specified");
+
+			File srvFile = new File(srvConfig);
+			if ( srvFile.isAbsolute() == false && new File(fileName).getParentFile() != null)
+				srvFile = new File(new File(fileName).getParentFile(), srvConfig);
+
+			if ( srvFile.exists() == false)
+				throw new InvalidConfigurationException("Embedded server configuration file not found, " + srvFile.getPath());
+
+			m_serverConfig = srvFile.getPath();
+		}
+
+		// Process the target server settings
+
+		procTargetElement(buildConfigElement(findChildNode("target", childNodes)));
+
+		// Process the run settings
+
+		procRunElement(buildConfigElement(findChildNode("run", childNodes)));
+
+		// Process the workloads
+
+		procWorkloadsElement(findChildNode("workloads", childNodes));
+	}
+
+	/**
+	 * Process the target server settings
+	 *
+	 * @param target ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	protected final void procTargetElement(ConfigElement target)
+		throws InvalidConfigurationException {
+
+		// Check if the target settings have been specified
+
+		if ( target == null)
+			throw new InvalidConfigurationException("Target server settings not specified");
+
+		// Get the server address and share
+
+		if ( target.getAttribute("host") != null)
+			m_host = target.getAttribute("host");
+
+		m_share = target.getAttribute("share");
+		if ( m_share == null || m_share.length() == 0)
+			throw new InvalidConfigurationException("Target share name not specified");
+
+		// Get the user name and password
+
+		if ( target.getAttribute("username") != null)
+			m_userName = target.getAttribute("username");
+
+		if ( target.getAttribute("password") != null)
+			m_password = target.getAttribute("password");
+
+		// Get the SMB protocol and port
+
+		String proto = target.getAttribute("protocol");
+		if ( proto != null) {
+			if ( proto.equalsIgnoreCase("netbios"))
+				m_netbios = true;
+			else if ( proto.equalsIgnoreCase("native") == false)
+				throw new InvalidConfigurationException("Invalid SMB protocol, " + proto);
+		}
+
+		m_smbPort = Workload.getIntAttribute(target, "smbPort", m_netbios ? 139 : DefaultSMBPort, 1, 65535);
+
+		// Get the NFS ports, a mount port of zero uses the portmapper to find the mount server
+
+		m_nfsPort = Workload.getIntAttribute(target, "nfsPort", NFS.DefaultPort, 1, 65535);
+		m_mountPort = Workload.getIntAttribute(target, "mountPort", 0, 0, 65535);
+		m_portMapperPort = Workload.getIntAttribute(target, "portMapperPort", PortMapper.DefaultPort, 1, 65535);
+	}
+
+	/**
+	 * Process the run settings
+	 *
+	 * @param run ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	protected final void procRunElement(ConfigElement run)
+		throws InvalidConfigurationException {
+
+		// Run settings are optional
+
+		if ( run == null)
+			return;
+
+		m_concurrency = Workload.getIntAttribute(run, "concurrency", DefaultConcurrency, 1, 1024);
+		m_warmup = Workload.getIntAttribute(run, "warmup", DefaultWarmup, 0, 3600);
+		m_duration = Workload.getIntAttribute(run, "duration", DefaultDuration, 1, 604800);
+
+		// Get the workload root path, must be an absolute path on the share
+
+		String path = run.getAttribute("path");
+
+		if ( path != null && path.length() > 0) {
+			path = path.replace('/', '\\');
+			if ( path.startsWith("\\") == false)
+				path = "\\" + path;
+			if ( path.length() > 1 && path.endsWith("\\"))
+				path = path.substring(0, path.length() - 1);
+
+			// The workload folders are deleted when the run completes, do not allow the share root to be used
+
+			if ( path.equals("\\"))
+				throw new InvalidConfigurationException("Load test path cannot be the share root");
+			m_path = path;
+		}
+
+		m_verbose = run.getAttribute("verbose") != null ? Boolean.parseBoolean(run.getAttribute("verbose")) : false;
+	}
+
+	/**
+	 * Process the workloads list
+	 *
+	 * @param workloads Element
+	 * @exception InvalidConfigurationException
+	 */
+	protected final void procWorkloadsElement(Element workloads)
+		throws InvalidConfigurationException {
+
+		// Check if any workloads have been specified
+
+		if ( workloads == null)
+			throw new InvalidConfigurationException("No workloads specified");
+
+		NodeList nodes = workloads.getChildNodes();
+
+		for ( int i = 0; i < nodes.getLength(); i++) {
+
+			// Get the current workload element
+
+			Node node = nodes.item(i);
+			if ( node.getNodeType() != ELEMENT_TYPE)
+				continue;
+
+			Element elem = (Element) node;
+			ConfigElement config = buildConfigElement(elem);
+
+			// Find the workload class, a custom workload specifies the class name
+
+			String className = null;
+			String name = elem.getNodeName();
+
+			if ( name.equals("workload")) {
+				className = config.getAttribute("class");
+				name = config.getAttribute("name");
+
+				if ( className == null || className.length() == 0)
+					throw new InvalidConfigurationException("Workload class not specified");
+			}
+			else {
+				int idx = 0;
+				while ( idx < _workloadNames.length && className == null) {
+					if ( _workloadNames[idx].equals(name))
+						className = _workloadClasses[idx];
+					else
+						idx++;
+				}
+
+				if ( className == null)
+					throw new InvalidConfigurationException("Unknown workload type, " + name);
+			}
+
+			// Load the workload class, and validate
+
+			Workload workload = null;
+
+			try {
+				Object workloadObj = Class.forName(className).newInstance();
+				if ( workloadObj instanceof Workload)
+					workload = (Workload) workloadObj;
+			}
+			catch ( Exception ex) {
+				throw new InvalidConfigurationException("Failed to load workload class " + className + ", " + ex.toString());
+			}
+
+			if ( workload == null)
+				throw new InvalidConfigurationException("Workload class " + className + " is not a Workload");
+
+			// Set the workload name, names must be unique as the name is used as the workload folder name
+
+			if ( name != null && name.length() > 0)
+				workload.setName(name);
+
+			for ( Workload curWorkload : m_workloads) {
+				if ( curWorkload.getName().equals(workload.getName()))
+					workload.setName(workload.getName() + (m_workloads.size() + 1));
+			}
+
+			// Initialize the workload
+
+			workload.configWorkload(config);
+			m_workloads.add(workload);
+		}
+
+		// Make sure at least one workload has been specified
+
+		if ( m_workloads.size() == 0)
+			throw new InvalidConfigurationException("No workloads specified");
+	}
+
+	/**
+	 * Find the specified child node in the node list
+	 *
+	 * @param name String
+	 * @param list NodeList
+	 * @return Element
+	 */
+	protected final Element findChildNode(String name, NodeList list) {
+
+		// Check if the list is valid
+
+		if ( list == null)
+			return null;
+
+		// Search for the required element
+
+		for (int i = 0; i < list.getLength(); i++) {
+
+			// Get the current child node
+
+			Node child = list.item(i);
+			if ( child.getNodeName().equals(name) && child.getNodeType() == ELEMENT_TYPE)
+				return (Element) child;
+		}
+
+		// Element not found
+
+		return null;
+	}
+
+	/**
+	 * Build a configuration element from an element, its attributes and child nodes
+	 *
+	 * @param root Element
+	 * @return GenericConfigElement
+	 */
+	protected final GenericConfigElement buildConfigElement(Element root) {
+
+		// Check if the element is valid
+
+		if ( root == null)
+			return null;
+
+		// Create the configuration element, and add any attributes
+
+		GenericConfigElement cfgElem = new GenericConfigElement(root.getNodeName());
+
+		NamedNodeMap attribs = root.getAttributes();
+		if ( attribs != null) {
+			for (int i = 0; i < attribs.getLength(); i++) {
+				Node attribNode = attribs.item(i);
+				cfgElem.addAttribute(attribNode.getNodeName(), attribNode.getNodeValue());
+			}
+		}
+
+		// Add the child elements
+
+		NodeList nodes = root.getChildNodes();
+
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Node node = nodes.item(i);
+
+			if ( node.getNodeType() == ELEMENT_TYPE)
+				cfgElem.addChild(buildConfigElement((Element) node));
+			else if ( node.getNodeType() == Node.TEXT_NODE && node.getNodeValue().trim().length() > 0)
+				cfgElem.setValue(node.getNodeValue().trim());
+		}
+
+		// Return the configuration element
+
+		return cfgElem;
+	}
+
+	/**
+	 * Return the load test configuration as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[");
+		str.append(hasEmbeddedServer() ? "Embedded:" + getServerConfiguration() : "External");
+		str.append(",\\\\");
+		str.append(getHost());
+		str.append("\\");
+		str.append(getShareName());
+		str.append(",port=");
+		str.append(getSMBPort());
+		str.append(",threads=");
+		str.append(getConcurrency());
+		str.append(",warmup=");
+		str.append(getWarmup());
+		str.append("s,duration=");
+		str.append(getDuration());
+		str.append("s,path=");
+		str.append(getPath());
+		str.append(",workloads=");
+		str.append(m_workloads.size());
+		str.append("]");
+
+		return str.toString();
+	}
+}
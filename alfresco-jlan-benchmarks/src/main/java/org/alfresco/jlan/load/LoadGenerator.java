@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.metrics.LatencyHistogram;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+
+/**
+ * Load Generator Application
+ *
+ * <p>Runs a set of workloads against a JLAN server, or any other SMB/NFS server, and reports the throughput and
+ * operation latency percentiles for each workload. The server may be started within the load generator process
+ * using a JLAN server configuration file, on the loopback address, so that builds can be compared on the same
+ * hardware.
+ *
+ * <p>Each workload is run in turn by a number of worker threads, after a warmup period the metrics are reset and
+ * the workload runs for the measured duration. Usage is:
+ *
+ * <pre>
+ *   java -cp benchmarks.jar org.alfresco.jlan.load.LoadGenerator loadTest.xml
+ * </pre>
+ *
+ * @author gkspencer
+ */
+public class LoadGenerator {
+
+	// Embedded server startup/shutdown timeout, in milliseconds
+
+	private static final long ServerTimeout	= 60000L;
+
+	// Worker thread stop timeout, in milliseconds
+
+	private static final long WorkerStopTimeout	= 30000L;
+
+	// Session id used for the setup/cleanup session, worker sessions use ids from 1
+
+	private static final int SetupSessionId	= 9999;
+
+	// Load test configuration
+
+	private LoadConfiguration m_config;
+
+	// Report output
+
+	private PrintStream m_out;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param config LoadConfiguration
+	 * @param out PrintStream
+	 */
+	public LoadGenerator(LoadConfiguration config, PrintStream out) {
+		m_config = config;
+		m_out = out;
+	}
+
+	/**
+	 * Run the load test
+	 *
+	 * @exception Exception
+	 */
+	public final void runLoadTest()
+		throws Exception {
+
+		// Start the embedded server, if configured
+
+		EmbeddedServer server = null;
+
+		if ( m_config.hasEmbeddedServer()) {
+			m_out.println("Starting embedded server using " + m_config.getServerConfiguration() + " ...");
+
+			server = new EmbeddedServer(m_config.getServerConfiguration());
+			server.startServer(ServerTimeout);
+		}
+
+		try {
+
+			// Create the load test root folder
+
+			DiskSession sess = m_config.openSession(SetupSessionId);
+
+			try {
+				if ( sess.FileExists(m_config.getPath()) == false)
+					sess.CreateDirectory(m_config.getPath());
+			}
+			finally {
+				sess.CloseSession();
+			}
+
+			// Run each workload
+
+			for ( Workload workload : m_config.getWorkloads())
+				runWorkload(workload);
+		}
+		finally {
+
+			// Stop the embedded server
+
+			if ( server != null) {
+				m_out.println("Stopping embedded server ...");
+				server.stopServer(ServerTimeout);
+			}
+		}
+	}
+
+	/**
+	 * Run a workload and output the results
+	 *
+	 * @param workload Workload
+	 * @exception Exception
+	 */
+	protected final void runWorkload(Workload workload)
+		throws Exception {
+
+		// Get the number of worker threads
+
+		int numThreads = workload.getConcurrency() > 0 ? workload.getConcurrency() : m_config.getConcurrency();
+
+		m_out.println();
+		m_out.println("Running workload " + workload.getName() + ", threads=" + numThreads + ", warmup=" + m_config.getWarmup() +
+				"s, duration=" + m_config.getDuration() + "s");
+
+		// Prepare the workload
+
+		DiskSession sess = m_config.openSession(SetupSessionId);
+
+		try {
+			workload.prepareWorkload(sess, m_config);
+		}
+		catch ( Exception ex) {
+			sess.CloseSession();
+			throw ex;
+		}
+
+		// Create the worker threads, the workers are released once all have connected
+
+		MetricsRegistry metrics = new MetricsRegistry();
+		CyclicBarrier startBarrier = new CyclicBarrier(numThreads + 1);
+		LoadWorker[] workers = new LoadWorker[numThreads];
+
+		for ( int i = 0; i < numThreads; i++) {
+			workers[i] = new LoadWorker(i + 1, m_config, workload, metrics, startBarrier);
+			workers[i].start();
+		}
+
+		long elapsed = 0L;
+		Map<String, Long> counters = null;
+
+		try {
+
+			// Wait for the workers to connect and setup
+
+			startBarrier.await();
+
+			// Run the warmup period, then reset the metrics and run the measured period
+
+			if ( m_config.getWarmup() > 0) {
+				Thread.sleep(m_config.getWarmup() * 1000L);
+				metrics.resetMetrics();
+			}
+
+			long startTime = System.nanoTime();
+			Thread.sleep(m_config.getDuration() * 1000L);
+			elapsed = System.nanoTime() - startTime;
+
+			// Take a copy of the operation counters at the end of the measured period
+
+			counters = metrics.getCounters();
+		}
+		finally {
+
+			// Stop the worker threads, and wait for them to exit
+
+			for ( int i = 0; i < numThreads; i++)
+				workers[i].stopWorker();
+
+			for ( int i = 0; i < numThreads; i++)
+				workers[i].join(WorkerStopTimeout);
+
+			// Remove the workload files
+
+			try {
+				workload.finishWorkload(sess, m_config);
+			}
+			catch ( Exception ex) {
+				m_out.println("Failed to cleanup workload " + workload.getName() + ", " + ex.toString());
+			}
+			finally {
+				sess.CloseSession();
+			}
+		}
+
+		// Output the workload results
+
+		outputResults(workload, metrics, counters, elapsed);
+	}
+
+	/**
+	 * Output the results for a workload
+	 *
+	 * @param workload Workload
+	 * @param metrics MetricsRegistry
+	 * @param counters Map<String, Long>
+	 * @param elapsed long
+	 */
+	protected final void outputResults(Workload workload, MetricsRegistry metrics, Map<String, Long> counters, long elapsed) {
+
+		// Calculate the operation throughput
+
+		double secs = elapsed / 1000000000.0;
+
+		Long opsCnt = counters.get(workload.getName() + LoadWorker.CounterOperations);
+		Long errCnt = counters.get(workload.getName() + LoadWorker.CounterErrors);
+
+		long ops = opsCnt != null ? opsCnt.longValue() : 0L;
+		long errs = errCnt != null ? errCnt.longValue() : 0L;
+
+		m_out.println("Workload " + workload.getName() + " operations=" + ops + ", errors=" + errs + ", elapsed=" +
+				String.format("%.1f", secs) + "s, throughput=" + String.format("%.1f", secs > 0.0 ? ops / secs : 0.0) + " ops/sec");
+
+		// Output the per request timers
+
+		m_out.println(String.format("  %-24s %10s %10s %10s %10s %10s %10s %10s", "Request", "Count", "Req/sec", "Mean(us)",
+				"p50(us)", "p90(us)", "p99(us)", "Max(us)"));
+
+		for ( LatencyHistogram timer : metrics.getTimers()) {
+
+			// Strip the workload name from the timer name
+
+			String name = timer.getName();
+			if ( name.startsWith(workload.getName() + "."))
+				name = name.substring(workload.getName().length() + 1);
+
+			m_out.println(String.format("  %-24s %10d %10.1f %10d %10d %10d %10d %10d", name, timer.getCount(),
+					secs > 0.0 ? timer.getCount() / secs : 0.0, timer.getMean(), timer.getPercentile(50.0),
+					timer.getPercentile(90.0), timer.getPercentile(99.0), timer.getMaximum()));
+		}
+
+		// Output any other counters
+
+		Iterator<Map.Entry<String, Long>> iter = counters.entrySet().iterator();
+
+		while ( iter.hasNext()) {
+			Map.Entry<String, Long> counter = iter.next();
+
+			if ( counter.getKey().endsWith(LoadWorker.CounterOperations) == false &&
+					counter.getKey().endsWith(LoadWorker.CounterErrors) == false)
+				m_out.println("  " + counter.getKey() + "=" + counter.getValue());
+		}
+
+		// Check if the workload results are valid
+
+		String warning = workload.checkResults(counters);
+		if ( warning != null)
+			m_out.println("  WARNING: " + warning);
+	}
+
+	/**
+	 * Run the load generator
+	 *
+	 * @param args String[]
+	 */
+	public static void main(String[] args) {
+
+		// Check the command line arguments
+
+		if ( args.length < 1) {
+			System.out.println("Usage: LoadGenerator <loadTestConfig.xml>");
+			System.exit(1);
+		}
+
+		try {
+
+			// Load the load test configuration
+
+			LoadConfiguration config = new LoadConfiguration();
+			config.loadConfiguration(args[0]);
+
+			System.out.println("Load test " + config);
+
+			// Run the load test
+
+			LoadGenerator loadGen = new LoadGenerator(config, System.out);
+			loadGen.runLoadTest();
+		}
+		catch ( Exception ex) {
+			System.out.println("Load test failed, " + ex.toString());
+			Debug.println(ex);
+			System.exit(1);
+		}
+
+		System.exit(0);
+	}
+}
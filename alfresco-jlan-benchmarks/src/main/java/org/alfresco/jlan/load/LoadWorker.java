@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+
+/**
+ * Load Worker Thread Class
+ *
+ * <p>Runs workload operations in a loop until the load run is stopped. Operation times are recorded in the
+ * metrics registry for the current run, using the workload name as the timer group.
+ *
+ * @author gkspencer
+ */
+public class LoadWorker extends Thread {
+
+	// Counter name suffixes
+
+	public static final String CounterOperations	= ".operations";
+	public static final String CounterErrors		= ".errors";
+
+	// Barrier wait time, in seconds
+
+	private static final long BarrierWaitTimeout	= 60L;
+
+	// Worker id, from 1
+
+	private int m_id;
+
+	// Load test settings, workload and metrics
+
+	private LoadConfiguration m_config;
+	private Workload m_workload;
+	private MetricsRegistry m_metrics;
+
+	// Start barrier, all workers connect and setup before the run starts
+
+	private CyclicBarrier m_startBarrier;
+
+	// Disk session, if used by the workload
+
+	private DiskSession m_sess;
+
+	// Per worker workload state
+
+	private Object m_state;
+
+	// Stop flag
+
+	private volatile boolean m_stop;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param id int
+	 * @param config LoadConfiguration
+	 * @param workload Workload
+	 * @param metrics MetricsRegistry
+	 * @param startBarrier CyclicBarrier
+	 */
+	public LoadWorker(int id, LoadConfiguration config, Workload workload, MetricsRegistry metrics, CyclicBarrier startBarrier) {
+		super(workload.getName() + "_" + id);
+
+		m_id = id;
+		m_config = config;
+		m_workload = workload;
+		m_metrics = metrics;
+		m_startBarrier = startBarrier;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Return the worker id
+	 *
+	 * @return int
+	 */
+	public final int getWorkerId() {
+		return m_id;
+	}
+
+	/**
+	 * Check if this is the primary worker thread
+	 *
+	 * @return boolean
+	 */
+	public final boolean isPrimaryWorker() {
+		return m_id == 1 ? true : false;
+	}
+
+	/**
+	 * Return the load test configuration
+	 *
+	 * @return LoadConfiguration
+	 */
+	public final LoadConfiguration getConfiguration() {
+		return m_config;
+	}
+
+	/**
+	 * Return the disk session
+	 *
+	 * @return DiskSession
+	 */
+	public final DiskSession getSession() {
+		return m_sess;
+	}
+
+	/**
+	 * Return the per worker workload state
+	 *
+	 * @return Object
+	 */
+	public final Object getWorkloadState() {
+		return m_state;
+	}
+
+	/**
+	 * Set the per worker workload state
+	 *
+	 * @param state Object
+	 */
+	public final void setWorkloadState(Object state) {
+		m_state = state;
+	}
+
+	/**
+	 * Check if the worker has been stopped
+	 *
+	 * @return boolean
+	 */
+	public final boolean isStopped() {
+		return m_stop;
+	}
+
+	/**
+	 * Stop the worker, the current operation will complete
+	 */
+	public final void stopWorker() {
+		m_stop = true;
+	}
+
+	/**
+	 * Record the time for an operation
+	 *
+	 * @param opName String
+	 * @param startNanos long
+	 */
+	public final void recordTime(String opName, long startNanos) {
+		m_metrics.recordTime(m_workload.getName(), opName, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Increment a workload specific counter
+	 *
+	 * @param name String
+	 */
+	public final void incrementCounter(String name) {
+		m_metrics.incrementCounter(name);
+	}
+
+	/**
+	 * Add a value to a workload specific counter
+	 *
+	 * @param name String
+	 * @param val long
+	 */
+	public final void addToCounter(String name, long val) {
+		m_metrics.addToCounter(name, val);
+	}
+
+	/**
+	 * Run the workload
+	 */
+	public void run() {
+
+		boolean setupOK = false;
+
+		try {
+
+			// Connect to the target share, if required
+
+			if ( m_workload.usesDiskSession())
+				m_sess = m_config.openSession(m_id);
+
+			// Setup the per worker state
+
+			m_workload.setupWorkload(this);
+			setupOK = true;
+		}
+		catch ( Exception ex) {
+			Debug.println("[Load] " + getName() + " setup failed, " + ex.toString());
+			if ( m_config.isVerbose())
+				Debug.println(ex);
+		}
+
+		// Wait for all workers to be ready
+
+		try {
+			m_startBarrier.await(BarrierWaitTimeout, TimeUnit.SECONDS);
+		}
+		catch ( Exception ex) {
+			Debug.println("[Load] " + getName() + " start barrier error, " + ex.toString());
+			setupOK = false;
+		}
+
+		// Run workload operations until stopped
+
+		String opsCounter = m_workload.getName() + CounterOperations;
+		String errCounter = m_workload.getName() + CounterErrors;
+
+		while ( setupOK && m_stop == false) {
+
+			try {
+
+				// Run an operation
+
+				m_workload.runOperation(this);
+				m_metrics.incrementCounter(opsCounter);
+			}
+			catch ( Exception ex) {
+
+				// Count the error, continue running
+
+				m_metrics.incrementCounter(errCounter);
+
+				if ( m_config.isVerbose())
+					Debug.println("[Load] " + getName() + " error, " + ex.toString());
+			}
+		}
+
+		// Cleanup the per worker state
+
+		try {
+			if ( setupOK)
+				m_workload.cleanupWorkload(this);
+		}
+		catch ( Exception ex) {
+			if ( m_config.isVerbose())
+				Debug.println("[Load] " + getName() + " cleanup error, " + ex.toString());
+		}
+
+		// Close the session
+
+		if ( m_sess != null) {
+			try {
+				m_sess.CloseSession();
+			}
+			catch ( Exception ex) {
+			}
+			m_sess = null;
+		}
+	}
+}
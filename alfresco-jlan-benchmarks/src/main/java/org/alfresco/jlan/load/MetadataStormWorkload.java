@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SMBFile;
+import org.alfresco.jlan.client.SearchContext;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.server.filesys.FileAttribute;
+import org.alfresco.jlan.client.info.FileInfo;
+import org.alfresco.jlan.smb.FileInfoLevel;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Metadata Storm Workload Class
+ *
+ * <p>Each operation creates an empty file, queries the file information, renames the file, lists the worker folder
+ * and deletes the file. The worker folder is populated with a number of resident files so that the folder
+ * listing returns a realistic number of entries.
+ *
+ * @author gkspencer
+ */
+public class MetadataStormWorkload extends Workload {
+
+	// Default number of resident files per worker folder
+
+	private static final int DefaultResidentFiles	= 100;
+
+	// Number of resident files per worker folder
+
+	private int m_residentFiles = DefaultResidentFiles;
+
+	/**
+	 * Per Worker State Class
+	 */
+	private static class WorkerState {
+
+		// Worker folder path
+
+		String m_path;
+
+		// File name sequence number
+
+		int m_seqNo;
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public MetadataStormWorkload() {
+		super("metadataStorm");
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		super.configWorkload(config);
+
+		m_residentFiles = getIntAttribute(config, "files", DefaultResidentFiles, 0, 100000);
+	}
+
+	/**
+	 * Setup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+
+		// Create the worker folder and resident files
+
+		WorkerState state = new WorkerState();
+		state.m_path = getWorkerPath(worker);
+
+		DiskSession sess = worker.getSession();
+		createFolder(sess, state.m_path);
+
+		for ( int i = 0; i < m_residentFiles; i++) {
+			SMBFile smbFile = sess.CreateFile(state.m_path + "\\resident" + i + ".txt");
+			smbFile.Close();
+		}
+
+		worker.setWorkloadState(state);
+	}
+
+	/**
+	 * Run a single workload operation
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void runOperation(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+		DiskSession sess = worker.getSession();
+
+		String fileName = state.m_path + "\\file" + state.m_seqNo++ + ".txt";
+		String newName = fileName + ".renamed";
+
+		// Create the file
+
+		long startTime = System.nanoTime();
+		SMBFile smbFile = sess.CreateFile(fileName);
+		smbFile.Close();
+		worker.recordTime("create", startTime);
+
+		// Get the file information
+
+		startTime = System.nanoTime();
+		sess.getFileInformation(fileName);
+		worker.recordTime("getInfo", startTime);
+
+		// Rename the file
+
+		startTime = System.nanoTime();
+		sess.RenameFile(fileName, newName);
+		worker.recordTime("rename", startTime);
+
+		// List the folder
+
+		startTime = System.nanoTime();
+		SearchContext srch = sess.StartSearch(state.m_path + "\\*", FileAttribute.Directory, FileInfoLevel.FindFileBothDirectory);
+
+		FileInfo finfo = srch.nextFileInfo();
+		while ( finfo != null)
+			finfo = srch.nextFileInfo();
+
+		worker.recordTime("search", startTime);
+
+		// Delete the file
+
+		startTime = System.nanoTime();
+		sess.DeleteFile(newName);
+		worker.recordTime("delete", startTime);
+	}
+
+	/**
+	 * Cleanup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void cleanupWorkload(LoadWorker worker)
+		throws Exception {
+
+		deleteTree(worker.getSession(), getWorkerPath(worker));
+	}
+}
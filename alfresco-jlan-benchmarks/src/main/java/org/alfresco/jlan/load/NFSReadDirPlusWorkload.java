@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.StringTokenizer;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SMBFile;
+import org.alfresco.jlan.oncrpc.AuthType;
+import org.alfresco.jlan.oncrpc.Rpc;
+import org.alfresco.jlan.oncrpc.RpcPacket;
+import org.alfresco.jlan.oncrpc.TcpRpcClient;
+import org.alfresco.jlan.oncrpc.mount.Mount;
+import org.alfresco.jlan.oncrpc.nfs.NFS;
+import org.alfresco.jlan.oncrpc.portmap.PortMapper;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * NFS READDIRPLUS Workload Class
+ *
+ * <p>Lists a populated folder using NFS v3 READDIRPLUS requests, following the returned cookies until the end of the
+ * folder is reached. The folder is populated via SMB before the workers start. Each worker mounts the export and
+ * looks up the folder handle during setup, then uses its own NFS connection. Each READDIRPLUS request is timed, as
+ * is the complete folder listing.
+ *
+ * @author gkspencer
+ */
+public class NFSReadDirPlusWorkload extends Workload {
+
+	// Default number of files in the folder, and READDIRPLUS entry count and reply size
+
+	private static final int DefaultFiles		= 1000;
+	private static final int DefaultDirCount	= 8192;
+	private static final int DefaultMaxCount	= 32768;
+
+	// Maximum RPC size, allow for the RPC header
+
+	private static final int MaxRpcSize		= DefaultMaxCount * 4;
+
+	// Size of the NFS v3 file attributes structure
+
+	private static final int Attributes3Length	= 84;
+
+	// Counter names
+
+	private static final String CounterEntries	= ".entries";
+
+	// Number of files, entry count and maximum reply size
+
+	private int m_files = DefaultFiles;
+	private int m_dirCount = DefaultDirCount;
+	private int m_maxCount = DefaultMaxCount;
+
+	// Export path, defaults to the share name
+
+	private String m_export;
+
+	/**
+	 * Per Worker State Class
+	 */
+	private static class WorkerState {
+
+		// NFS server connection
+
+		TcpRpcClient m_client;
+
+		// Request and response packets
+
+		RpcPacket m_txRpc;
+		RpcPacket m_rxRpc;
+
+		// Unix credentials
+
+		byte[] m_cred;
+
+		// Folder handle
+
+		byte[] m_dirHandle;
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public NFSReadDirPlusWorkload() {
+		super("nfsReadDirPlus");
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		super.configWorkload(config);
+
+		m_files = getIntAttribute(config, "files", DefaultFiles, 1, 1000000);
+		m_dirCount = getIntAttribute(config, "dirCount", DefaultDirCount, 512, 1048576);
+		m_maxCount = getIntAttribute(config, "maxCount", DefaultMaxCount, 1024, MaxRpcSize / 2);
+
+		m_export = config.getAttribute("export");
+	}
+
+	/**
+	 * The workload uses NFS, an SMB session is only used to prepare the folder
+	 *
+	 * @return boolean
+	 */
+	public boolean usesDiskSession() {
+		return false;
+	}
+
+	/**
+	 * Prepare the workload, populate the folder that will be listed
+	 *
+	 * @param sess DiskSession
+	 * @param loadConfig LoadConfiguration
+	 * @exception Exception
+	 */
+	public void prepareWorkload(DiskSession sess, LoadConfiguration loadConfig)
+		throws Exception {
+
+		super.prepareWorkload(sess, loadConfig);
+
+		for ( int i = 0; i < m_files; i++) {
+			SMBFile smbFile = sess.CreateFile(getWorkloadPath(loadConfig) + "\\file" + i + ".txt");
+			smbFile.Close();
+		}
+	}
+
+	/**
+	 * Setup the per thread workload state, mount the export and lookup the folder
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+
+		LoadConfiguration loadConfig = worker.getConfiguration();
+		InetAddress addr = InetAddress.getByName(loadConfig.getHost());
+
+		WorkerState state = new WorkerState();
+
+		state.m_txRpc = new RpcPacket(MaxRpcSize);
+		state.m_rxRpc = new RpcPacket(MaxRpcSize);
+
+		state.m_cred = buildCredentials(worker.getWorkerId());
+		byte[] cred = state.m_cred;
+
+		// Find the mount server port, if not configured
+
+		int mountPort = loadConfig.getMountPort();
+
+		if ( mountPort == 0) {
+			TcpRpcClient pmapClient = new TcpRpcClient(addr, loadConfig.getPortMapperPort(), MaxRpcSize);
+
+			try {
+				state.m_txRpc.buildRequestHeader(PortMapper.ProgramId, PortMapper.VersionId, PortMapper.ProcGetPort, AuthType.Null, null,
+						AuthType.Null, null);
+
+				state.m_txRpc.packInt(Mount.ProgramId);
+				state.m_txRpc.packInt(Mount.VersionId3);
+				state.m_txRpc.packInt(Rpc.TCP);
+				state.m_txRpc.packInt(0);
+				state.m_txRpc.setLength();
+
+				RpcPacket rxRpc = sendRequest(pmapClient, state);
+				mountPort = rxRpc.unpackInt();
+			}
+			finally {
+				pmapClient.closeConnection();
+			}
+
+			if ( mountPort == 0)
+				throw new IOException("Mount server not registered with portmapper");
+		}
+
+		// Mount the export
+
+		String export = m_export != null ? m_export : "/" + loadConfig.getShareName();
+		byte[] handle = new byte[NFS.FileHandleSize];
+
+		TcpRpcClient mountClient = new TcpRpcClient(addr, mountPort, MaxRpcSize);
+
+		try {
+			state.m_txRpc.buildRequestHeader(Mount.ProgramId, Mount.VersionId3, Mount.ProcMnt3, AuthType.Unix, cred, AuthType.Null, null);
+			state.m_txRpc.packString(export);
+			state.m_txRpc.setLength();
+
+			RpcPacket rxRpc = sendRequest(mountClient, state);
+
+			int sts = rxRpc.unpackInt();
+			if ( sts != NFS.StsSuccess)
+				throw new IOException("Mount of " + export + " failed, status=" + sts);
+
+			rxRpc.unpackByteArrayWithLength(handle);
+		}
+		finally {
+			mountClient.closeConnection();
+		}
+
+		// Connect to the NFS server, lookup the folder path a component at a time
+
+		state.m_client = new TcpRpcClient(addr, loadConfig.getNFSPort(), MaxRpcSize);
+
+		StringTokenizer tokens = new StringTokenizer(getWorkloadPath(loadConfig), "\\");
+
+		while ( tokens.hasMoreTokens()) {
+			String name = tokens.nextToken();
+
+			state.m_txRpc.buildRequestHeader(NFS.ProgramId, NFS.VersionId, NFS.ProcLookup, AuthType.Unix, cred, AuthType.Null, null);
+			state.m_txRpc.packByteArrayWithLength(handle);
+			state.m_txRpc.packUTF8String(name);
+			state.m_txRpc.setLength();
+
+			RpcPacket rxRpc = sendRequest(state.m_client, state);
+
+			int sts = rxRpc.unpackInt();
+			if ( sts != NFS.StsSuccess)
+				throw new IOException("Lookup of " + name + " failed, status=" + sts);
+
+			handle = new byte[NFS.FileHandleSize];
+			rxRpc.unpackByteArrayWithLength(handle);
+		}
+
+		state.m_dirHandle = handle;
+		worker.setWorkloadState(state);
+	}
+
+	/**
+	 * Run a single workload operation, list the folder
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void runOperation(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+
+		long cookie = 0L;
+		long cookieVerf = 0L;
+		boolean eof = false;
+		int entries = 0;
+
+		long opStart = System.nanoTime();
+
+		while ( eof == false) {
+
+			// Build the READDIRPLUS request
+
+			state.m_txRpc.buildRequestHeader(NFS.ProgramId, NFS.VersionId, NFS.ProcReadDirPlus, AuthType.Unix, state.m_cred, AuthType.Null, null);
+			state.m_txRpc.packByteArrayWithLength(state.m_dirHandle);
+			state.m_txRpc.packLong(cookie);
+			state.m_txRpc.packLong(cookieVerf);
+			state.m_txRpc.packInt(m_dirCount);
+			state.m_txRpc.packInt(m_maxCount);
+			state.m_txRpc.setLength();
+
+			// Send the request
+
+			long startTime = System.nanoTime();
+			RpcPacket rxRpc = sendRequest(state.m_client, state);
+			worker.recordTime("readdirplus", startTime);
+
+			// Check the status, skip the folder attributes
+
+			int sts = rxRpc.unpackInt();
+			if ( sts != NFS.StsSuccess)
+				throw new IOException("ReadDirPlus failed, status=" + sts);
+
+			skipPostOpAttr(rxRpc);
+			cookieVerf = rxRpc.unpackLong();
+
+			// Unpack the entries, keep the last cookie to continue the listing
+
+			int pageEntries = 0;
+
+			while ( rxRpc.unpackInt() == Rpc.True) {
+
+				rxRpc.unpackLong();
+				rxRpc.unpackUTF8String();
+				cookie = rxRpc.unpackLong();
+
+				skipPostOpAttr(rxRpc);
+
+				if ( rxRpc.unpackInt() == Rpc.True)
+					rxRpc.skipBytes(rxRpc.unpackInt());
+
+				pageEntries++;
+			}
+
+			eof = rxRpc.unpackInt() == Rpc.True ? true : false;
+
+			// Check that the server is making progress
+
+			if ( pageEntries == 0 && eof == false)
+				throw new IOException("ReadDirPlus returned no entries");
+
+			entries += pageEntries;
+		}
+
+		worker.recordTime("listFolder", opStart);
+		worker.addToCounter(getName() + CounterEntries, entries);
+
+		// Check that all files were returned, allow for the '.' and '..' entries
+
+		if ( entries < m_files)
+			throw new IOException("ReadDirPlus returned " + entries + " entries, expected " + m_files);
+	}
+
+	/**
+	 * Cleanup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void cleanupWorkload(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+		if ( state != null && state.m_client != null)
+			state.m_client.closeConnection();
+	}
+
+	/**
+	 * Send an RPC request and check the reply status, position the response at the result data
+	 *
+	 * @param client TcpRpcClient
+	 * @param state WorkerState
+	 * @return RpcPacket
+	 * @exception IOException
+	 */
+	private final RpcPacket sendRequest(TcpRpcClient client, WorkerState state)
+		throws IOException {
+
+		// Send the request, receive the response
+
+		RpcPacket rxRpc = client.sendRPC(state.m_txRpc, state.m_rxRpc);
+
+		if ( rxRpc.getXID() != state.m_txRpc.getXID())
+			throw new IOException("RPC response XID mismatch");
+
+		// Check the reply state, skip the verifier and check the accept status
+
+		rxRpc.setPosition(rxRpc.getOffset() + 8);
+
+		if ( rxRpc.unpackInt() != Rpc.CallAccepted)
+			throw new IOException("RPC request denied");
+
+		rxRpc.unpackInt();
+		rxRpc.skipBytes(rxRpc.unpackInt());
+
+		int acceptSts = rxRpc.unpackInt();
+		if ( acceptSts != Rpc.StsSuccess)
+			throw new IOException("RPC request failed, accept status=" + acceptSts);
+
+		return rxRpc;
+	}
+
+	/**
+	 * Skip a post operation attributes structure
+	 *
+	 * @param rpc RpcPacket
+	 */
+	private final void skipPostOpAttr(RpcPacket rpc) {
+		if ( rpc.unpackInt() == Rpc.True)
+			rpc.skipBytes(Attributes3Length);
+	}
+
+	/**
+	 * Build the Unix credentials for a worker
+	 *
+	 * @param id int
+	 * @return byte[]
+	 */
+	private final byte[] buildCredentials(int id) {
+
+		// Pack the stamp, machine name, uid, gid and empty group list
+
+		RpcPacket credPkt = new RpcPacket(128);
+		int startPos = credPkt.getOffset();
+
+		credPkt.setPosition(startPos);
+
+		credPkt.packInt(id);
+		credPkt.packString("loadgen" + id);
+		credPkt.packInt(0);
+		credPkt.packInt(0);
+		credPkt.packInt(0);
+
+		byte[] cred = new byte[credPkt.getPosition() - startPos];
+		System.arraycopy(credPkt.getBuffer(), startPos, cred, 0, cred.length);
+
+		return cred;
+	}
+}
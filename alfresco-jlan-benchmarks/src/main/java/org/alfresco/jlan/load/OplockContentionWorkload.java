@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.alfresco.jlan.client.CIFSDiskSession;
+import org.alfresco.jlan.client.CIFSFile;
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.OplockAdapter;
+import org.alfresco.jlan.client.SMBFile;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.server.filesys.AccessMode;
+import org.alfresco.jlan.server.filesys.FileAction;
+import org.alfresco.jlan.server.filesys.FileAttribute;
+import org.alfresco.jlan.smb.OpLock;
+import org.alfresco.jlan.smb.SharingMode;
+import org.alfresco.jlan.smb.WinNT;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Oplock Contention Workload Class
+ *
+ * <p>All workers open a small set of shared files requesting a batch oplock, write to the file and close it. Opens
+ * of a file that is oplocked by another worker cause the server to break the oplock, so the open latency
+ * includes the oplock break round trip. The number of opens that were granted an oplock, and the number of oplock
+ * break requests received from the server, are counted. The results are not valid if no oplocks were granted, the
+ * share must use a filesystem driver that supports oplocks.
+ *
+ * @author gkspencer
+ */
+public class OplockContentionWorkload extends Workload {
+
+	// Default number of shared files, and write size
+
+	private static final int DefaultSharedFiles	= 4;
+	private static final int DefaultWriteSize	= 512;
+
+	// Counter names
+
+	private static final String CounterOplockGranted	= ".oplockGranted";
+	private static final String CounterOplockBreaks		= ".oplockBreaks";
+
+	// Number of shared files, and write size
+
+	private int m_sharedFiles = DefaultSharedFiles;
+	private int m_writeSize = DefaultWriteSize;
+
+	/**
+	 * Per Worker State Class
+	 */
+	private static class WorkerState {
+
+		// Oplock break handler
+
+		OplockAdapter m_oplockHandler;
+
+		// Write buffer
+
+		byte[] m_buffer;
+
+		// Random file selection
+
+		Random m_random;
+	}
+
+	/**
+	 * Oplock Break Counter Class
+	 *
+	 * <p>Counts the oplock break requests received by a worker, the oplock break response is sent automatically.
+	 */
+	private static class OplockBreakCounter extends OplockAdapter {
+
+		// Worker, and counter name
+
+		private LoadWorker m_worker;
+		private String m_counter;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param worker LoadWorker
+		 * @param counter String
+		 */
+		OplockBreakCounter(LoadWorker worker, String counter) {
+			m_worker = worker;
+			m_counter = counter;
+		}
+
+		/**
+		 * Oplock break requested on a file
+		 *
+		 * @param file CIFSFile
+		 * @return int
+		 */
+		public int oplockBreak(CIFSFile file) {
+			m_worker.incrementCounter(m_counter);
+			return super.oplockBreak(file);
+		}
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public OplockContentionWorkload() {
+		super("oplockContention");
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		super.configWorkload(config);
+
+		m_sharedFiles = getIntAttribute(config, "files", DefaultSharedFiles, 1, 1000);
+		m_writeSize = (int) getSizeAttribute(config, "writeSize", DefaultWriteSize, 1L, 65536L);
+	}
+
+	/**
+	 * Prepare the workload, create the shared files
+	 *
+	 * @param sess DiskSession
+	 * @param loadConfig LoadConfiguration
+	 * @exception Exception
+	 */
+	public void prepareWorkload(DiskSession sess, LoadConfiguration loadConfig)
+		throws Exception {
+
+		super.prepareWorkload(sess, loadConfig);
+
+		for ( int i = 0; i < m_sharedFiles; i++) {
+			SMBFile smbFile = sess.CreateFile(getSharedFileName(loadConfig, i));
+			smbFile.Close();
+		}
+	}
+
+	/**
+	 * Setup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+
+		// NTCreateAndX is required to request an oplock
+
+		if (( worker.getSession() instanceof CIFSDiskSession) == false)
+			throw new Exception("Server does not support NT SMB dialect");
+
+		WorkerState state = new WorkerState();
+
+		state.m_oplockHandler = new OplockBreakCounter(worker, getName() + CounterOplockBreaks);
+		state.m_buffer = new byte[m_writeSize];
+		state.m_random = new Random(worker.getWorkerId());
+
+		worker.setWorkloadState(state);
+
+		// Create the oplock counters so they are reported when zero
+
+		worker.addToCounter(getName() + CounterOplockGranted, 0L);
+		worker.addToCounter(getName() + CounterOplockBreaks, 0L);
+	}
+
+	/**
+	 * Run a single workload operation
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void runOperation(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+		CIFSDiskSession sess = (CIFSDiskSession) worker.getSession();
+
+		String fileName = getSharedFileName(worker.getConfiguration(), state.m_random.nextInt(m_sharedFiles));
+
+		// Open the shared file requesting a batch oplock
+
+		long startTime = System.nanoTime();
+		CIFSFile cifsFile = sess.NTCreateWithOplock(fileName, WinNT.RequestBatchOplock + WinNT.RequestExclusiveOplock,
+				state.m_oplockHandler, AccessMode.NTReadWrite, FileAttribute.NTNormal, SharingMode.READWRITEDELETE,
+				FileAction.NTOpenIf, 0L, 0);
+		worker.recordTime("open", startTime);
+
+		if ( cifsFile.getOplockType() != OpLock.TypeNone)
+			worker.incrementCounter(getName() + CounterOplockGranted);
+
+		// Write to the file, the client buffers writes so flush the data to the server
+
+		startTime = System.nanoTime();
+		cifsFile.Write(state.m_buffer, state.m_buffer.length, 0);
+		cifsFile.Flush();
+		worker.recordTime("write", startTime);
+
+		// Close the file, releasing the oplock
+
+		startTime = System.nanoTime();
+		cifsFile.Close();
+		worker.recordTime("close", startTime);
+	}
+
+	/**
+	 * Check the workload results, the results are not valid if no oplocks were granted
+	 *
+	 * @param counters Map<String, Long>
+	 * @return String, or null if the results are valid
+	 */
+	public String checkResults(Map<String, Long> counters) {
+
+		Long granted = counters.get(getName() + CounterOplockGranted);
+
+		if ( granted == null || granted.longValue() == 0L)
+			return "No oplocks were granted, check the share filesystem driver supports oplocks";
+		return null;
+	}
+
+	/**
+	 * Return the path for a shared file
+	 *
+	 * @param loadConfig LoadConfiguration
+	 * @param idx int
+	 * @return String
+	 */
+	private final String getSharedFileName(LoadConfiguration loadConfig, int idx) {
+		return getWorkloadPath(loadConfig) + "\\shared" + idx + ".dat";
+	}
+}
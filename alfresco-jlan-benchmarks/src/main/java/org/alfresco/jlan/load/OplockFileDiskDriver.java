@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.io.IOException;
+
+import org.alfresco.jlan.server.SrvSession;
+import org.alfresco.jlan.server.core.DeviceContext;
+import org.alfresco.jlan.server.core.DeviceContextException;
+import org.alfresco.jlan.server.filesys.DiskDeviceContext;
+import org.alfresco.jlan.server.filesys.FileOpenParams;
+import org.alfresco.jlan.server.filesys.NetworkFile;
+import org.alfresco.jlan.server.filesys.TreeConnection;
+import org.alfresco.jlan.server.filesys.cache.FileState;
+import org.alfresco.jlan.server.filesys.cache.FileStateCache;
+import org.alfresco.jlan.server.filesys.cache.FileStateLockManager;
+import org.alfresco.jlan.server.locking.OpLockInterface;
+import org.alfresco.jlan.server.locking.OpLockManager;
+import org.alfresco.jlan.smb.server.disk.JavaFileDiskDriver;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Oplock File Disk Driver Class
+ *
+ * <p>Java file disk driver that grants oplocks, used by the load test server so that the oplock contention
+ * workload measures oplock breaks. Open files are counted using the file state cache, an oplock is only granted
+ * when the file has a single open, and the oplock is released when the file is closed.
+ *
+ * @author gkspencer
+ */
+public class OplockFileDiskDriver extends JavaFileDiskDriver implements OpLockInterface {
+
+	// Oplock manager, created when first used
+
+	private FileStateLockManager m_lockManager;
+
+	/**
+	 * Create the device context for the share, the share requires a file state cache
+	 *
+	 * @param shareName String
+	 * @param args ConfigElement
+	 * @return DeviceContext
+	 * @exception DeviceContextException
+	 */
+	public DeviceContext createContext(String shareName, ConfigElement args)
+		throws DeviceContextException {
+
+		DiskDeviceContext ctx = (DiskDeviceContext) super.createContext(shareName, args);
+		ctx.setRequiresStateCache(true);
+
+		return ctx;
+	}
+
+	/**
+	 * Create a new file, and count the open
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @param params FileOpenParams
+	 * @return NetworkFile
+	 * @exception IOException
+	 */
+	public NetworkFile createFile(SrvSession sess, TreeConnection tree, FileOpenParams params)
+		throws IOException {
+
+		NetworkFile netFile = super.createFile(sess, tree, params);
+		getFileState(tree, netFile.getFullName(), true).incrementOpenCount();
+
+		return netFile;
+	}
+
+	/**
+	 * Open a file, and count the open
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @param params FileOpenParams
+	 * @return NetworkFile
+	 * @exception IOException
+	 */
+	public NetworkFile openFile(SrvSession sess, TreeConnection tree, FileOpenParams params)
+		throws IOException {
+
+		NetworkFile netFile = super.openFile(sess, tree, params);
+		getFileState(tree, netFile.getFullName(), true).incrementOpenCount();
+
+		return netFile;
+	}
+
+	/**
+	 * Close a file, release the open count and any oplock on the file
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @param file NetworkFile
+	 * @exception IOException
+	 */
+	public void closeFile(SrvSession sess, TreeConnection tree, NetworkFile file)
+		throws IOException {
+
+		try {
+			super.closeFile(sess, tree, file);
+		}
+		finally {
+
+			// Release the open count
+
+			FileState fstate = getFileState(tree, file.getFullName(), false);
+			if ( fstate != null && fstate.getOpenCount() > 0)
+				fstate.decrementOpenCount();
+
+			// Release the oplock, any opens waiting for the oplock break are requeued
+
+			if ( file.hasOpLock()) {
+				getOpLockManager(sess, tree).releaseOpLock(file.getOpLock().getPath());
+				file.setOpLock(null);
+			}
+		}
+	}
+
+	/**
+	 * Return the oplock manager, create the oplock manager when first used
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @return OpLockManager
+	 */
+	public synchronized OpLockManager getOpLockManager(SrvSession sess, TreeConnection tree) {
+
+		if ( m_lockManager == null) {
+			DiskDeviceContext ctx = (DiskDeviceContext) tree.getContext();
+
+			m_lockManager = new FileStateLockManager(ctx.getStateCache());
+			m_lockManager.startLockManager("OplockExpire_" + ctx.getShareName(), null);
+		}
+
+		return m_lockManager;
+	}
+
+	/**
+	 * Oplocks are always enabled
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @return boolean
+	 */
+	public boolean isOpLocksEnabled(SrvSession sess, TreeConnection tree) {
+		return true;
+	}
+
+	/**
+	 * Return the file state for a path
+	 *
+	 * @param tree TreeConnection
+	 * @param path String
+	 * @param create boolean
+	 * @return FileState
+	 */
+	private final FileState getFileState(TreeConnection tree, String path, boolean create) {
+		FileStateCache stateCache = ((DiskDeviceContext) tree.getContext()).getStateCache();
+		return stateCache.findFileState(path, create);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SMBFile;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.server.filesys.AccessMode;
+import org.alfresco.jlan.util.MemorySize;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Sequential I/O Workload Class
+ *
+ * <p>Each operation writes a large file sequentially, then reads the file back sequentially. Each read and write
+ * request is timed, and the total bytes written and read are counted so that the transfer rate can be calculated.
+ *
+ * @author gkspencer
+ */
+public class SequentialIOWorkload extends Workload {
+
+	// Default file size and I/O request size
+
+	private static final long DefaultFileSize	= 64L * MemorySize.MEGABYTE;
+	private static final int DefaultIOSize		= 60 * (int) MemorySize.KILOBYTE;
+
+	// Counter names
+
+	private static final String CounterBytesWritten	= ".bytesWritten";
+	private static final String CounterBytesRead	= ".bytesRead";
+
+	// File size and I/O request size
+
+	private long m_fileSize = DefaultFileSize;
+	private int m_ioSize = DefaultIOSize;
+
+	/**
+	 * Per Worker State Class
+	 */
+	private static class WorkerState {
+
+		// Worker file path
+
+		String m_fileName;
+
+		// I/O buffer
+
+		byte[] m_buffer;
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public SequentialIOWorkload() {
+		super("sequentialIO");
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		super.configWorkload(config);
+
+		m_fileSize = getSizeAttribute(config, "fileSize", DefaultFileSize, MemorySize.KILOBYTE, 64L * MemorySize.GIGABYTE);
+		m_ioSize = (int) getSizeAttribute(config, "ioSize", DefaultIOSize, 512L, 16L * MemorySize.MEGABYTE);
+	}
+
+	/**
+	 * Setup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+
+		// Create the worker folder, allocate the I/O buffer
+
+		WorkerState state = new WorkerState();
+
+		createFolder(worker.getSession(), getWorkerPath(worker));
+		state.m_fileName = getWorkerPath(worker) + "\\sequential.dat";
+
+		state.m_buffer = new byte[m_ioSize];
+		for ( int i = 0; i < state.m_buffer.length; i++)
+			state.m_buffer[i] = (byte) (i & 0xFF);
+
+		worker.setWorkloadState(state);
+	}
+
+	/**
+	 * Run a single workload operation
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void runOperation(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+		DiskSession sess = worker.getSession();
+		byte[] buf = state.m_buffer;
+
+		// Create the file, and write the file sequentially
+
+		long startTime = System.nanoTime();
+		SMBFile smbFile = sess.CreateFile(state.m_fileName);
+		worker.recordTime("create", startTime);
+
+		long remaining = m_fileSize;
+		long opStart = System.nanoTime();
+
+		while ( remaining > 0L && worker.isStopped() == false) {
+			int wrLen = (int) Math.min(remaining, buf.length);
+
+			startTime = System.nanoTime();
+			smbFile.Write(buf, wrLen, 0);
+			worker.recordTime("write", startTime);
+
+			remaining -= wrLen;
+		}
+
+		startTime = System.nanoTime();
+		smbFile.Close();
+		worker.recordTime("close", startTime);
+		worker.recordTime("writeFile", opStart);
+		worker.addToCounter(getName() + CounterBytesWritten, m_fileSize - remaining);
+
+		// Re-open the file, and read the file sequentially
+
+		startTime = System.nanoTime();
+		smbFile = sess.OpenFile(state.m_fileName, AccessMode.ReadOnly);
+		worker.recordTime("open", startTime);
+
+		opStart = System.nanoTime();
+		int rdLen = 1;
+		long totalRead = 0L;
+
+		while ( rdLen > 0 && worker.isStopped() == false) {
+			startTime = System.nanoTime();
+			rdLen = smbFile.Read(buf, buf.length, 0);
+			worker.recordTime("read", startTime);
+
+			if ( rdLen > 0)
+				totalRead += rdLen;
+		}
+
+		smbFile.Close();
+		worker.recordTime("readFile", opStart);
+		worker.addToCounter(getName() + CounterBytesRead, totalRead);
+	}
+
+	/**
+	 * Cleanup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void cleanupWorkload(LoadWorker worker)
+		throws Exception {
+
+		deleteTree(worker.getSession(), getWorkerPath(worker));
+	}
+}
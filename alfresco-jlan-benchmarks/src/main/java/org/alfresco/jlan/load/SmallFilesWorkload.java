@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SMBFile;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.server.filesys.AccessMode;
+import org.alfresco.jlan.util.MemorySize;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Small Files Workload Class
+ *
+ * <p>Each operation creates and writes a batch of small files, reads each file back, then deletes the files. The
+ * files are spread over a number of sub-folders within the worker folder.
+ *
+ * @author gkspencer
+ */
+public class SmallFilesWorkload extends Workload {
+
+	// Default file size, files per operation and number of sub-folders
+
+	private static final int DefaultFileSize	= 4 * (int) MemorySize.KILOBYTE;
+	private static final int DefaultBatchSize	= 20;
+	private static final int DefaultFolders		= 10;
+
+	// File size, files per operation and number of sub-folders
+
+	private int m_fileSize = DefaultFileSize;
+	private int m_batchSize = DefaultBatchSize;
+	private int m_folders = DefaultFolders;
+
+	/**
+	 * Per Worker State Class
+	 */
+	private static class WorkerState {
+
+		// Worker folder path
+
+		String m_path;
+
+		// File data buffer
+
+		byte[] m_buffer;
+
+		// Batch sequence number
+
+		int m_seqNo;
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public SmallFilesWorkload() {
+		super("smallFiles");
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		super.configWorkload(config);
+
+		m_fileSize = (int) getSizeAttribute(config, "fileSize", DefaultFileSize, 0L, MemorySize.MEGABYTE);
+		m_batchSize = getIntAttribute(config, "files", DefaultBatchSize, 1, 10000);
+		m_folders = getIntAttribute(config, "folders", DefaultFolders, 1, 1000);
+	}
+
+	/**
+	 * Setup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+
+		// Create the worker folder and sub-folders
+
+		WorkerState state = new WorkerState();
+		state.m_path = getWorkerPath(worker);
+
+		DiskSession sess = worker.getSession();
+		createFolder(sess, state.m_path);
+
+		for ( int i = 0; i < m_folders; i++)
+			createFolder(sess, state.m_path + "\\folder" + i);
+
+		// Allocate the file data buffer, the read buffer must allow for a short read
+
+		state.m_buffer = new byte[m_fileSize + 1];
+		for ( int i = 0; i < state.m_buffer.length; i++)
+			state.m_buffer[i] = (byte) ('A' + (i % 26));
+
+		worker.setWorkloadState(state);
+	}
+
+	/**
+	 * Run a single workload operation
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void runOperation(LoadWorker worker)
+		throws Exception {
+
+		WorkerState state = (WorkerState) worker.getWorkloadState();
+		DiskSession sess = worker.getSession();
+
+		// Build the file names for this batch
+
+		String[] fileNames = new String[m_batchSize];
+		int batchNo = state.m_seqNo++;
+
+		for ( int i = 0; i < m_batchSize; i++)
+			fileNames[i] = state.m_path + "\\folder" + (i % m_folders) + "\\file" + batchNo + "_" + i + ".dat";
+
+		// Create and write the files
+
+		for ( int i = 0; i < m_batchSize; i++) {
+			long startTime = System.nanoTime();
+
+			SMBFile smbFile = sess.CreateFile(fileNames[i]);
+			if ( m_fileSize > 0)
+				smbFile.Write(state.m_buffer, m_fileSize, 0);
+			smbFile.Close();
+
+			worker.recordTime("writeFile", startTime);
+		}
+
+		// Read the files
+
+		for ( int i = 0; i < m_batchSize; i++) {
+			long startTime = System.nanoTime();
+
+			SMBFile smbFile = sess.OpenFile(fileNames[i], AccessMode.ReadOnly);
+			if ( m_fileSize > 0)
+				smbFile.Read(state.m_buffer, state.m_buffer.length, 0);
+			smbFile.Close();
+
+			worker.recordTime("readFile", startTime);
+		}
+
+		// Delete the files
+
+		for ( int i = 0; i < m_batchSize; i++) {
+			long startTime = System.nanoTime();
+			sess.DeleteFile(fileNames[i]);
+			worker.recordTime("delete", startTime);
+		}
+	}
+
+	/**
+	 * Cleanup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void cleanupWorkload(LoadWorker worker)
+		throws Exception {
+
+		deleteTree(worker.getSession(), getWorkerPath(worker));
+	}
+}
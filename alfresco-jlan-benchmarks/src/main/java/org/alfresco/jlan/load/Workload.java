@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.jlan.client.DiskSession;
+import org.alfresco.jlan.client.SearchContext;
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.alfresco.jlan.server.filesys.FileAttribute;
+import org.alfresco.jlan.client.info.FileInfo;
+import org.alfresco.jlan.smb.FileInfoLevel;
+import org.alfresco.jlan.util.MemorySize;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * Load Test Workload Base Class
+ *
+ * <p>A workload is run by a number of load worker threads, each thread calls the runOperation() method repeatedly
+ * until the load run is stopped. Each operation within the workload should be timed using the
+ * LoadWorker.recordTime() method so that the latency percentiles for each operation type can be reported.
+ *
+ * @author gkspencer
+ */
+public abstract class Workload {
+
+	// Workload name
+
+	private String m_name;
+
+	// Number of worker threads, zero to use the default from the run settings
+
+	private int m_concurrency;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 */
+	protected Workload(String name) {
+		m_name = name;
+	}
+
+	/**
+	 * Return the workload name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Set the workload name
+	 *
+	 * @param name String
+	 */
+	public final void setName(String name) {
+		m_name = name;
+	}
+
+	/**
+	 * Return the number of worker threads for this workload, or zero to use the default
+	 *
+	 * @return int
+	 */
+	public final int getConcurrency() {
+		return m_concurrency;
+	}
+
+	/**
+	 * Check if the workload uses an SMB disk session, the load worker will open a session before the workload
+	 * is setup
+	 *
+	 * @return boolean
+	 */
+	public boolean usesDiskSession() {
+		return true;
+	}
+
+	/**
+	 * Initialize the workload settings
+	 *
+	 * @param config ConfigElement
+	 * @exception InvalidConfigurationException
+	 */
+	public void configWorkload(ConfigElement config)
+		throws InvalidConfigurationException {
+
+		// Check for a workload specific thread count
+
+		m_concurrency = getIntAttribute(config, "concurrency", 0, 1, 1024);
+	}
+
+	/**
+	 * Prepare the workload before the worker threads are started, the session is connected to the target share
+	 *
+	 * @param sess DiskSession
+	 * @param loadConfig LoadConfiguration
+	 * @exception Exception
+	 */
+	public void prepareWorkload(DiskSession sess, LoadConfiguration loadConfig)
+		throws Exception {
+
+		// Create the workload folder
+
+		createFolder(sess, getWorkloadPath(loadConfig));
+	}
+
+	/**
+	 * Setup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void setupWorkload(LoadWorker worker)
+		throws Exception {
+	}
+
+	/**
+	 * Run a single workload operation, the operation may consist of a number of timed requests
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public abstract void runOperation(LoadWorker worker)
+		throws Exception;
+
+	/**
+	 * Cleanup the per thread workload state
+	 *
+	 * @param worker LoadWorker
+	 * @exception Exception
+	 */
+	public void cleanupWorkload(LoadWorker worker)
+		throws Exception {
+	}
+
+	/**
+	 * Finish the workload after all worker threads have stopped, the session is connected to the target share
+	 *
+	 * @param sess DiskSession
+	 * @param loadConfig LoadConfiguration
+	 * @exception Exception
+	 */
+	public void finishWorkload(DiskSession sess, LoadConfiguration loadConfig)
+		throws Exception {
+
+		// Delete the workload folder
+
+		deleteTree(sess, getWorkloadPath(loadConfig));
+	}
+
+	/**
+	 * Check the workload counters for the measured period, return a warning if the results are not valid
+	 *
+	 * @param counters Map<String, Long>
+	 * @return String, or null if the results are valid
+	 */
+	public String checkResults(Map<String, Long> counters) {
+		return null;
+	}
+
+	/**
+	 * Return the workload folder path
+	 *
+	 * @param loadConfig LoadConfiguration
+	 * @return String
+	 */
+	public final String getWorkloadPath(LoadConfiguration loadConfig) {
+		return loadConfig.getPath() + "\\" + getName();
+	}
+
+	/**
+	 * Return the per worker folder path
+	 *
+	 * @param worker LoadWorker
+	 * @return String
+	 */
+	public final String getWorkerPath(LoadWorker worker) {
+		return getWorkloadPath(worker.getConfiguration()) + "\\worker" + worker.getWorkerId();
+	}
+
+	/**
+	 * Create a folder, if it does not exist
+	 *
+	 * @param sess DiskSession
+	 * @param path String
+	 * @exception Exception
+	 */
+	protected final void createFolder(DiskSession sess, String path)
+		throws Exception {
+
+		if ( sess.FileExists(path) == false)
+			sess.CreateDirectory(path);
+	}
+
+	/**
+	 * Delete a folder and all files/folders below it
+	 *
+	 * @param sess DiskSession
+	 * @param path String
+	 * @exception Exception
+	 */
+	protected final void deleteTree(DiskSession sess, String path)
+		throws Exception {
+
+		// Check if the folder exists
+
+		if ( sess.FileExists(path) == false)
+			return;
+
+		// Build the list of files and folders, the search must complete before deleting
+
+		List<FileInfo> fileList = new ArrayList<FileInfo>();
+		SearchContext srch = sess.StartSearch(path + "\\*", FileAttribute.Directory + FileAttribute.Hidden + FileAttribute.System,
+				FileInfoLevel.FindFileBothDirectory);
+
+		FileInfo finfo = srch.nextFileInfo();
+
+		while ( finfo != null) {
+			if ( finfo.getFileName().equals(".") == false && finfo.getFileName().equals("..") == false)
+				fileList.add(finfo);
+			finfo = srch.nextFileInfo();
+		}
+
+		// Delete the files and sub-folders
+
+		for ( FileInfo curInfo : fileList) {
+			String curPath = path + "\\" + curInfo.getFileName();
+
+			if ( curInfo.isDirectory())
+				deleteTree(sess, curPath);
+			else
+				sess.DeleteFile(curPath);
+		}
+
+		// Delete the folder
+
+		sess.DeleteDirectory(path);
+	}
+
+	/**
+	 * Return an integer attribute value, or the default value if not specified
+	 *
+	 * @param config ConfigElement
+	 * @param name String
+	 * @param defVal int
+	 * @param minVal int
+	 * @param maxVal int
+	 * @return int
+	 * @exception InvalidConfigurationException
+	 */
+	protected static final int getIntAttribute(ConfigElement config, String name, int defVal, int minVal, int maxVal)
+		throws InvalidConfigurationException {
+
+		// Check if the attribute has been specified
+
+		String val = config != null ? config.getAttribute(name) : null;
+		if ( val == null || val.length() == 0)
+			return defVal;
+
+		// Validate the value
+
+		try {
+			int intVal = Integer.parseInt(val);
+
+			if ( intVal < minVal || intVal > maxVal)
+				throw new InvalidConfigurationException("Invalid " + name + " value, " + val + ", valid range is " + minVal + " - " + maxVal);
+
+			return intVal;
+		}
+		catch ( NumberFormatException ex) {
+			throw new InvalidConfigurationException("Invalid " + name + " value, " + val);
+		}
+	}
+
+	/**
+	 * Return a memory size attribute value, such as '64K' or '10M', or the default value if not specified
+	 *
+	 * @param config ConfigElement
+	 * @param name String
+	 * @param defVal long
+	 * @param minVal long
+	 * @param maxVal long
+	 * @return long
+	 * @exception InvalidConfigurationException
+	 */
+	protected static final long getSizeAttribute(ConfigElement config, String name, long defVal, long minVal, long maxVal)
+		throws InvalidConfigurationException {
+
+		// Check if the attribute has been specified
+
+		String val = config != null ? config.getAttribute(name) : null;
+		if ( val == null || val.length() == 0)
+			return defVal;
+
+		// Validate the value
+
+		try {
+			long sizeVal = MemorySize.getByteValue(val);
+
+			if ( sizeVal < minVal || sizeVal > maxVal)
+				throw new InvalidConfigurationException("Invalid " + name + " value, " + val + ", valid range is " + minVal + " - " + maxVal);
+
+			return sizeVal;
+		}
+		catch ( NumberFormatException ex) {
+			throw new InvalidConfigurationException("Invalid " + name + " value, " + val);
+		}
+	}
+
+	/**
+	 * Return the workload details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[");
+		str.append(getName());
+		str.append(":");
+		str.append(getClass().getName());
+
+		if ( getConcurrency() > 0) {
+			str.append(",threads=");
+			str.append(getConcurrency());
+		}
+		str.append("]");
+
+		return str.toString();
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.locking;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * File Lock List Benchmark Class
+ *
+ * <p>Measures the cost of the byte range lock checks made for each read, write and lock request on a file that has
+ * byte range locks, compared with a linear scan of the same locks, and the cost of adding and removing locks. The
+ * interval tree is checked against the linear scan by the FileLockListTest unit test.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileLockListBenchmark {
+
+	//	Size of each locked region
+
+	private static final long LockSize	= 4096L;
+
+	//	Number of locks on the file
+
+	@Param({ "1", "16", "256", "10000" })
+	public int lockCount;
+
+	//	Lock list, the same locks in a list for the linear scan, and the lock used for lock checks
+
+	private FileLockList m_lockList;
+	private ArrayList<FileLock> m_linearList;
+	private FileLock m_newLock;
+
+	/**
+	 * Create the lock list, with alternate regions locked by different processes
+	 */
+	@Setup
+	public void setup() {
+
+		m_lockList = new FileLockList();
+		m_linearList = new ArrayList<FileLock>();
+
+		for ( int idx = 0; idx < lockCount; idx++) {
+			FileLock lock = new FileLock( idx * LockSize * 2, LockSize, 100 + (idx % 4));
+			m_lockList.addLock( lock);
+			m_linearList.add( lock);
+		}
+
+		// Lock that does not overlap any existing locks
+
+		m_newLock = new FileLock( lockCount * LockSize * 2, LockSize, 200);
+	}
+
+	/**
+	 * Check if a read and a write are allowed, before and after the locked regions
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void checkReadWrite(Blackhole bh) {
+		bh.consume( m_lockList.canReadFile( LockSize, LockSize, 200));
+		bh.consume( m_lockList.canWriteFile( lockCount * LockSize * 2, LockSize, 200));
+	}
+
+	/**
+	 * Check if a read and a write are allowed using a linear scan of the locks, the original lock list algorithm
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void linearCheckReadWrite(Blackhole bh) {
+		bh.consume( linearCanAccess( LockSize, LockSize, 200));
+		bh.consume( linearCanAccess( lockCount * LockSize * 2, LockSize, 200));
+	}
+
+	/**
+	 * Check if a new lock is allowed
+	 *
+	 * @return boolean
+	 */
+	@Benchmark
+	public boolean checkLock() {
+		return m_lockList.allowsLock( m_newLock);
+	}
+
+	/**
+	 * Add a lock after the existing locks then remove it
+	 *
+	 * @return FileLock
+	 */
+	@Benchmark
+	public FileLock addRemoveLock() {
+		m_lockList.addLock( m_newLock);
+		return m_lockList.removeLock( m_newLock.getOffset(), m_newLock.getLength(), m_newLock.getProcessId());
+	}
+
+	/**
+	 * Check if a range is accessible for the process by scanning all locks
+	 *
+	 * @param offset long
+	 * @param len long
+	 * @param pid int
+	 * @return boolean
+	 */
+	private final boolean linearCanAccess( long offset, long len, int pid) {
+		for ( int idx = 0; idx < m_linearList.size(); idx++) {
+			FileLock curLock = m_linearList.get( idx);
+			if ( curLock.getProcessId() != pid && curLock.hasOverlap( offset, len))
+				return false;
+		}
+		return true;
+	}
+}
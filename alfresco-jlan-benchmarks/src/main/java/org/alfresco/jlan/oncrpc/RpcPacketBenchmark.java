@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.oncrpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.oncrpc.nfs.NFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RPC Packet Benchmark Class
+ *
+ * <p>Measures the cost of parsing an NFS lookup request and of packing an RPC request and response, as done for
+ * every request received by the NFS and mount servers.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcPacketBenchmark {
+
+	//	RPC buffer size
+
+	private static final int BufferSize	= 8192;
+
+	//	File name used in the lookup request
+
+	private static final String FileName = "Quarterly Report.docx";
+
+	//	Unix credentials and file handle
+
+	private byte[] m_creds;
+	private byte[] m_handle;
+
+	//	Request packet to parse, and packets to pack into
+
+	private RpcPacket m_reqPkt;
+	private RpcPacket m_packPkt;
+	private RpcPacket m_respPkt;
+
+	//	Length of the request header, copied to the response packet before building the response
+
+	private int m_reqHdrLen;
+
+	//	Buffer to unpack the file handle into
+
+	private byte[] m_unpackHandle;
+
+	/**
+	 * Build the request packet that is parsed by the benchmark
+	 */
+	@Setup
+	public void setup() {
+
+		// Build the Unix credentials, stamp, machine name, uid, gid and group list
+
+		RpcPacket credPkt = new RpcPacket( 256);
+
+		credPkt.packInt( 12345);
+		credPkt.packString( "client-host");
+		credPkt.packInt( 1000);
+		credPkt.packInt( 1000);
+		credPkt.packIntArrayWithLength( new int[] { 1000, 4, 24, 27 });
+
+		m_creds = new byte[credPkt.getPosition() - credPkt.getOffset()];
+		System.arraycopy( credPkt.getBuffer(), credPkt.getOffset(), m_creds, 0, m_creds.length);
+
+		// Create an NFS v3 file handle
+
+		m_handle = new byte[NFS.FileHandleSize];
+		for ( int idx = 0; idx < m_handle.length; idx++)
+			m_handle[idx] = (byte) idx;
+
+		m_unpackHandle = new byte[NFS.FileHandleSize];
+
+		// Build the lookup request
+
+		m_reqPkt = new RpcPacket( BufferSize);
+		packLookupRequest( m_reqPkt);
+
+		m_reqHdrLen = m_reqPkt.getProcedureParameterOffset();
+
+		m_packPkt = new RpcPacket( BufferSize);
+		m_respPkt = new RpcPacket( BufferSize);
+	}
+
+	/**
+	 * Parse the lookup request header and parameters
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void parseRequest(Blackhole bh) {
+
+		// Parse the RPC header
+
+		bh.consume( m_reqPkt.getXID());
+		bh.consume( m_reqPkt.getMessageType());
+		bh.consume( m_reqPkt.getProgramId());
+		bh.consume( m_reqPkt.getProgramVersion());
+		bh.consume( m_reqPkt.getProcedureId());
+
+		// Parse the Unix credentials
+
+		m_reqPkt.positionAtCredentialsData();
+
+		bh.consume( m_reqPkt.unpackInt());
+		bh.consume( m_reqPkt.unpackString());
+		bh.consume( m_reqPkt.unpackInt());
+		bh.consume( m_reqPkt.unpackInt());
+
+		// Parse the lookup parameters
+
+		m_reqPkt.positionAtParameters();
+		m_reqPkt.unpackByteArrayWithLength( m_unpackHandle);
+
+		bh.consume( m_unpackHandle);
+		bh.consume( m_reqPkt.unpackString());
+	}
+
+	/**
+	 * Pack a lookup request
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int packRequest() {
+		packLookupRequest( m_packPkt);
+		return m_packPkt.getLength();
+	}
+
+	/**
+	 * Pack a lookup response, file handle and post operation attributes
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int packResponse() {
+
+		// The response is built over the request, restore the request header
+
+		System.arraycopy( m_reqPkt.getBuffer(), 0, m_respPkt.getBuffer(), 0, m_reqHdrLen);
+
+		// Build the response header
+
+		m_respPkt.setLength( BufferSize);
+		m_respPkt.buildResponseHeader();
+
+		// Pack the status, file handle and attributes
+
+		m_respPkt.packInt( NFS.StsSuccess);
+		m_respPkt.packByteArrayWithLength( m_handle);
+
+		m_respPkt.packInt( Rpc.True);
+		for ( int idx = 0; idx < 21; idx++)
+			m_respPkt.packInt( idx);
+
+		m_respPkt.setLength();
+		return m_respPkt.getLength();
+	}
+
+	/**
+	 * Pack an NFS lookup request into the specified packet
+	 *
+	 * @param rpc RpcPacket
+	 */
+	private final void packLookupRequest(RpcPacket rpc) {
+
+		rpc.setLength( BufferSize);
+		rpc.buildRequestHeader( NFS.ProgramId, NFS.VersionId, NFS.ProcLookup, AuthType.Unix, m_creds, AuthType.Null, null);
+
+		rpc.packByteArrayWithLength( m_handle);
+		rpc.packString( FileName);
+
+		rpc.setLength();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.server.config.InvalidConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+/**
+ * File State Cache Benchmark Class
+ *
+ * <p>Measures the cost of file state lookups in the standalone file state cache, from a single thread and from
+ * multiple threads sharing the cache as the protocol handlers do.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileStateCacheBenchmark {
+
+	//	Number of file states in the cache
+
+	@Param({ "1000", "100000" })
+	public int cacheSize;
+
+	//	File state cache and paths
+
+	private StandaloneFileStateCache m_stateCache;
+	private String[] m_paths;
+
+	/**
+	 * Create and populate the file state cache
+	 *
+	 * @exception InvalidConfigurationException
+	 */
+	@Setup
+	public void setup()
+		throws InvalidConfigurationException {
+
+		// Create the file state cache
+
+		m_stateCache = new StandaloneFileStateCache();
+		m_stateCache.initializeCache( new GenericConfigElement( "stateCache"), null);
+
+		// Add the file states, spread over a folder tree
+
+		m_paths = new String[cacheSize];
+
+		for ( int idx = 0; idx < cacheSize; idx++) {
+			m_paths[idx] = "\\Folder" + (idx % 100) + "\\SubFolder" + (idx % 7) + "\\File_" + idx + ".txt";
+			m_stateCache.findFileState( m_paths[idx], true);
+		}
+	}
+
+	/**
+	 * Find an existing file state
+	 *
+	 * @return FileState
+	 */
+	@Benchmark
+	public FileState findExisting() {
+		return m_stateCache.findFileState( m_paths[ThreadLocalRandom.current().nextInt( m_paths.length)]);
+	}
+
+	/**
+	 * Find an existing file state, from multiple threads
+	 *
+	 * @return FileState
+	 */
+	@Benchmark
+	@Threads(4)
+	public FileState findExistingContended() {
+		return m_stateCache.findFileState( m_paths[ThreadLocalRandom.current().nextInt( m_paths.length)]);
+	}
+
+	/**
+	 * Find a file state that is not in the cache
+	 *
+	 * @return FileState
+	 */
+	@Benchmark
+	public FileState findMissing() {
+		return m_stateCache.findFileState( "\\Folder1\\NotCached.txt");
+	}
+}
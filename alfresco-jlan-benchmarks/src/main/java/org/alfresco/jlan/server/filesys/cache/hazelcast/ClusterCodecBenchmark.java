@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.server.filesys.FileStatus;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileLock;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+import org.alfresco.jlan.smb.OpLock;
+import org.alfresco.jlan.smb.SharingMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cluster Codec Benchmark Class
+ *
+ * <p>Compares an encode and decode round trip of cluster file states and messages using the compact cluster codecs
+ * with default Java serialization. The codec round trips are checked by the ClusterCodecTest unit test.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterCodecBenchmark {
+
+	//	Cluster node names used in the test objects
+
+	private static final String LocalNode	= "/192.168.1.10:5701";
+	private static final String RemoteNode	= "/192.168.1.11:5701";
+
+	//	Object to encode
+
+	@Param({ "FileState", "FileStateLocks", "StateUpdateMessage", "OpLockMessage", "MessageBatch" })
+	public String objectType;
+
+	//	Object to encode, and the codec for the object type
+
+	private Object m_obj;
+	private ClusterCodec<Object> m_codec;
+
+	/**
+	 * Create the object to encode
+	 *
+	 * @exception Exception
+	 */
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup()
+		throws Exception {
+
+		HazelCastClusterFileState state = createFileState( objectType.equals( "FileStateLocks") ? 8 : 0);
+
+		if ( objectType.startsWith( "FileState")) {
+			m_obj = state;
+			m_codec = (ClusterCodec<Object>) (ClusterCodec<?>) new ClusterStateCodec<HazelCastClusterFileState>();
+			return;
+		}
+
+		// Cluster messages
+
+		m_codec = (ClusterCodec<Object>) (ClusterCodec<?>) new ClusterMessageCodec();
+
+		if ( objectType.equals( "StateUpdateMessage"))
+			m_obj = new StateUpdateMessage( ClusterMessage.AllNodes, null, state,
+					ClusterFileState.UpdateFileSize + ClusterFileState.UpdateModifyDate + ClusterFileState.UpdateAllocSize);
+		else if ( objectType.equals( "OpLockMessage"))
+			m_obj = new OpLockMessage( RemoteNode, ClusterMessageType.OpLockBreakRequest, state.getPath());
+		else {
+			ArrayList<ClusterMessage> msgList = new ArrayList<ClusterMessage>();
+			for ( int idx = 0; idx < 50; idx++)
+				msgList.add( new DataUpdateMessage( ClusterMessage.AllNodes, null, state.getPath() + idx, true));
+
+			m_obj = new ClusterMessageBatch( ClusterMessage.AllNodes, null, msgList);
+		}
+	}
+
+	/**
+	 * Encode and decode the object using the cluster codec
+	 *
+	 * @return Object
+	 * @exception Exception
+	 */
+	@Benchmark
+	public Object codecRoundTrip()
+		throws Exception {
+		return m_codec.decode( m_codec.encode( m_obj));
+	}
+
+	/**
+	 * Encode and decode the object using Java serialization
+	 *
+	 * @return Object
+	 * @exception Exception
+	 */
+	@Benchmark
+	public Object javaRoundTrip()
+		throws Exception {
+
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream( 512);
+		ObjectOutputStream objOut = new ObjectOutputStream( byteOut);
+
+		objOut.writeObject( m_obj);
+		objOut.close();
+
+		ObjectInputStream objIn = new ObjectInputStream( new ByteArrayInputStream( byteOut.toByteArray()));
+		return objIn.readObject();
+	}
+
+	/**
+	 * Create a file state with byte range locks and a remote oplock
+	 *
+	 * @param lockCnt int
+	 * @return HazelCastClusterFileState
+	 * @exception Exception
+	 */
+	private static HazelCastClusterFileState createFileState( int lockCnt)
+		throws Exception {
+
+		HazelCastClusterFileState state = new HazelCastClusterFileState( "\\Projects\\Cluster\\Documents\\Budget-2012.xlsx", false);
+
+		state.setFileStatus( FileStatus.FileExists);
+		state.setSharedAccess( SharingMode.READWRITE);
+		state.setPrimaryOwner( LocalNode);
+		state.setProcessId( 1234);
+		state.setOpenCount( 2);
+		state.setFileSize( 1234567L);
+		state.setAllocationSize( 1310720L);
+		state.updateModifyDateTime();
+		state.updateChangeDateTime();
+
+		for ( int idx = 0; idx < lockCnt; idx++) {
+			ClusterFileLock lock = new ClusterFileLock();
+			lock.setOffset( idx * 4096L);
+			lock.setLength( 1024L);
+			lock.setProcessId( 0x00010000 + idx);
+
+			state.addLock( lock);
+		}
+
+		state.setOpLock( new RemoteOpLockDetails( RemoteNode, OpLock.TypeBatch, state.getPath(), null));
+		return state;
+	}
+}
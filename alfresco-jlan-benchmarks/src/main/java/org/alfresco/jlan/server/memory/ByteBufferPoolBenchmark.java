@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.memory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Byte Buffer Pool Benchmark Class
+ *
+ * <p>Measures the cost of allocating and releasing a buffer from the memory pool, as done for each request and
+ * response packet, from a single thread and from multiple threads sharing the pool.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteBufferPoolBenchmark {
+
+	//	Buffer sizes and allocations, matching the default server memory pool
+
+	private static final int[] BufSizes		= { 256, 4096, 16384, 66000 };
+	private static final int[] InitAlloc	= {  20,   20,     5,     5 };
+	private static final int[] MaxAlloc		= { 100,   50,    50,    50 };
+
+	//	Buffer pool
+
+	private ByteBufferPool m_pool;
+
+	/**
+	 * Create the buffer pool
+	 */
+	@Setup
+	public void setup() {
+		m_pool = new ByteBufferPool( BufSizes, InitAlloc, MaxAlloc);
+	}
+
+	/**
+	 * Allocate and release a small buffer
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int allocateSmall() {
+		return allocateAndRelease( 200);
+	}
+
+	/**
+	 * Allocate and release a large buffer
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int allocateLarge() {
+		return allocateAndRelease( 65000);
+	}
+
+	/**
+	 * Allocate and release a buffer, from multiple threads
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	@Threads(4)
+	public int allocateContended() {
+		return allocateAndRelease( 4000);
+	}
+
+	/**
+	 * Allocate a buffer from the pool and release it back to the pool
+	 *
+	 * @param siz int
+	 * @return int
+	 */
+	private final int allocateAndRelease(int siz) {
+		byte[] buf = m_pool.allocateBuffer( siz);
+		int len = buf != null ? buf.length : 0;
+
+		if ( buf != null)
+			m_pool.releaseBuffer( buf);
+
+		return len;
+	}
+}
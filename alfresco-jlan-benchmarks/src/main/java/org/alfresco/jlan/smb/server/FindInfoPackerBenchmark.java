@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.smb.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.server.filesys.FileAttribute;
+import org.alfresco.jlan.server.filesys.FileInfo;
+import org.alfresco.jlan.server.filesys.UnsupportedInfoLevelException;
+import org.alfresco.jlan.util.DataBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Find Information Packer Benchmark Class
+ *
+ * <p>Measures the cost of packing a page of folder search results using the information levels commonly requested
+ * by clients.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindInfoPackerBenchmark {
+
+	//	Number of file information objects packed per search page
+
+	private static final int PageSize	= 64;
+
+	//	Information level to pack, standard, directory both and directory both with file id
+
+	@Param({ "1", "260", "262" })
+	public int infoLevel;
+
+	//	File information objects and the buffer to pack into
+
+	private FileInfo[] m_files;
+	private DataBuffer m_buf;
+
+	/**
+	 * Create the file information objects and pack buffer
+	 */
+	@Setup
+	public void setup() {
+
+		// Create the file information objects
+
+		long now = System.currentTimeMillis();
+		m_files = new FileInfo[PageSize];
+
+		for ( int idx = 0; idx < PageSize; idx++) {
+
+			FileInfo info = new FileInfo( "Document_" + idx + ".txt", 1024L * idx, FileAttribute.NTArchive);
+
+			info.setFileId( idx + 1);
+			info.setAllocationSize( 4096L * (idx + 1));
+			info.setCreationDateTime( now);
+			info.setModifyDateTime( now);
+			info.setAccessDateTime( now);
+			info.setChangeDateTime( now);
+			info.setShortName( "DOCUME~" + (idx % 10) + ".TXT");
+
+			m_files[idx] = info;
+		}
+
+		// Allocate a buffer large enough for a page of results
+
+		m_buf = new DataBuffer( 65536);
+	}
+
+	/**
+	 * Pack a page of search results
+	 *
+	 * @return int
+	 * @exception UnsupportedInfoLevelException
+	 */
+	@Benchmark
+	public int packSearchPage()
+		throws UnsupportedInfoLevelException {
+
+		m_buf.setPosition( 0);
+
+		for ( int idx = 0; idx < m_files.length; idx++)
+			FindInfoPacker.packInfo( m_files[idx], m_buf, infoLevel, true);
+
+		return m_buf.getPosition();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.smb.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.smb.PacketType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SMB Server Packet Benchmark Class
+ *
+ * <p>Measures the cost of unpacking an SMB request header, parameters and data strings, and of packing an SMB
+ * response, as done for every request received by the SMB server.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SMBSrvPacketBenchmark {
+
+	//	Path name packed into the request and response
+
+	private static final String PathName = "\\Projects\\Documents\\Quarterly Report.docx";
+
+	//	Request and response packets
+
+	private SMBSrvPacket m_reqPkt;
+	private SMBSrvPacket m_respPkt;
+
+	/**
+	 * Build the request packet that is unpacked by the benchmark
+	 */
+	@Setup
+	public void setup() {
+
+		// Build an NT create style request, with a Unicode path
+
+		m_reqPkt = new SMBSrvPacket( SMBSrvPacket.DEFAULT_BUFSIZE);
+
+		m_reqPkt.setCommand( PacketType.NTCreateAndX);
+		m_reqPkt.setFlags2( SMBSrvPacket.FLG2_UNICODE + SMBSrvPacket.FLG2_LONGERRORCODE);
+		m_reqPkt.setTreeId( 2);
+		m_reqPkt.setUserId( 100);
+		m_reqPkt.setProcessId( 1234);
+		m_reqPkt.setMultiplexId( 42);
+
+		m_reqPkt.setParameterCount( 24);
+		for ( int idx = 0; idx < 24; idx++)
+			m_reqPkt.setParameter( idx, idx * 3);
+
+		m_reqPkt.resetBytePointer();
+		m_reqPkt.packString( PathName, true);
+		m_reqPkt.setByteCount();
+
+		// Allocate the response packet
+
+		m_respPkt = new SMBSrvPacket( SMBSrvPacket.DEFAULT_BUFSIZE);
+	}
+
+	/**
+	 * Unpack the request header, parameters and path
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void unpackRequest(Blackhole bh) {
+
+		// Unpack the header fields
+
+		bh.consume( m_reqPkt.getCommand());
+		bh.consume( m_reqPkt.getTreeId());
+		bh.consume( m_reqPkt.getUserId());
+		bh.consume( m_reqPkt.getProcessIdFull());
+		bh.consume( m_reqPkt.getMultiplexId());
+		bh.consume( m_reqPkt.isUnicode());
+
+		// Unpack the parameters
+
+		int paramCnt = m_reqPkt.getParameterCount();
+		for ( int idx = 0; idx < paramCnt; idx++)
+			bh.consume( m_reqPkt.getParameter( idx));
+
+		// Unpack the path
+
+		m_reqPkt.resetBytePointer();
+		bh.consume( m_reqPkt.unpackString( m_reqPkt.isUnicode()));
+	}
+
+	/**
+	 * Pack a response header, parameters and data
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int packResponse() {
+
+		// Pack the response header
+
+		m_respPkt.setCommand( PacketType.NTCreateAndX);
+		m_respPkt.setFlags( SMBSrvPacket.FLG_RESPONSE);
+		m_respPkt.setFlags2( SMBSrvPacket.FLG2_UNICODE + SMBSrvPacket.FLG2_LONGERRORCODE);
+		m_respPkt.setTreeId( 2);
+		m_respPkt.setUserId( 100);
+		m_respPkt.setMultiplexId( 42);
+		m_respPkt.setSuccessStatus();
+
+		// Pack the parameters
+
+		m_respPkt.setParameterCount( 34);
+		for ( int idx = 0; idx < 34; idx++)
+			m_respPkt.setParameter( idx, idx);
+
+		// Pack the data area
+
+		m_respPkt.resetBytePointer();
+		m_respPkt.packLong( 0x0123456789ABCDEFL);
+		m_respPkt.packInt( 0x20);
+		m_respPkt.packString( PathName, true);
+		m_respPkt.setByteCount();
+
+		return m_respPkt.getLength();
+	}
+}
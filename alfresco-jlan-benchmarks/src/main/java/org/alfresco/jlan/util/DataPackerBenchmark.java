@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Data Packer Benchmark Class
+ *
+ * <p>Measures the cost of the string and integer packing and unpacking methods used to build and parse protocol
+ * packets.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPackerBenchmark {
+
+	//	String to pack
+
+	private static final String PathName = "\\Projects\\Documents\\Quarterly Report.docx";
+
+	//	Buffers to pack into, and unpack from
+
+	private byte[] m_packBuf = new byte[1024];
+	private byte[] m_asciiBuf = new byte[1024];
+	private byte[] m_uniBuf = new byte[1024];
+	private byte[] m_intBuf = new byte[1024];
+
+	/**
+	 * Class constructor
+	 */
+	public DataPackerBenchmark() {
+
+		// Pack the strings and integers to be unpacked
+
+		DataPacker.putString( PathName, m_asciiBuf, 0, true);
+		DataPacker.putUnicodeString( PathName, m_uniBuf, 0, true);
+
+		for ( int pos = 0; pos < 256; pos += 4)
+			DataPacker.putIntelInt( pos * 7, m_intBuf, pos);
+	}
+
+	/**
+	 * Pack an ASCII string
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int putString() {
+		return DataPacker.putString( PathName, m_packBuf, 0, true);
+	}
+
+	/**
+	 * Pack a Unicode string
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int putUnicodeString() {
+		return DataPacker.putUnicodeString( PathName, m_packBuf, 0, true);
+	}
+
+	/**
+	 * Unpack an ASCII string
+	 *
+	 * @return String
+	 */
+	@Benchmark
+	public String getString() {
+		return DataPacker.getString( m_asciiBuf, 0, m_asciiBuf.length);
+	}
+
+	/**
+	 * Unpack a Unicode string
+	 *
+	 * @return String
+	 */
+	@Benchmark
+	public String getUnicodeString() {
+		return DataPacker.getUnicodeString( m_uniBuf, 0, m_uniBuf.length / 2);
+	}
+
+	/**
+	 * Pack Intel format integers, shorts and longs
+	 *
+	 * @return byte[]
+	 */
+	@Benchmark
+	public byte[] putIntelValues() {
+		for ( int pos = 0; pos < 256; pos += 16) {
+			DataPacker.putIntelInt( pos, m_packBuf, pos);
+			DataPacker.putIntelShort( pos, m_packBuf, pos + 4);
+			DataPacker.putIntelLong( (long) pos << 32, m_packBuf, pos + 8);
+		}
+		return m_packBuf;
+	}
+
+	/**
+	 * Unpack Intel format integers
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void getIntelInt(Blackhole bh) {
+		for ( int pos = 0; pos < 256; pos += 4)
+			bh.consume( DataPacker.getIntelInt( m_intBuf, pos));
+	}
+
+	/**
+	 * Pack and unpack network order integers, as used by the RPC protocols
+	 *
+	 * @param bh Blackhole
+	 */
+	@Benchmark
+	public void putGetInt(Blackhole bh) {
+		for ( int pos = 0; pos < 256; pos += 4) {
+			DataPacker.putInt( pos, m_packBuf, pos);
+			bh.consume( DataPacker.getInt( m_packBuf, pos));
+		}
+	}
+}
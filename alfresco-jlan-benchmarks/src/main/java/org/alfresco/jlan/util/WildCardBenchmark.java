@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wildcard Benchmark Class
+ *
+ * <p>Measures the cost of matching a folder of file names against the wildcard pattern types used in folder
+ * searches.
+ *
+ * @author gkspencer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WildCardBenchmark {
+
+	//	Number of file names to match
+
+	private static final int FileCount	= 256;
+
+	//	Wildcard pattern, name, extension and complex patterns
+
+	@Param({ "*.txt", "Report_1*.*", "Rep?rt_*1.d*" })
+	public String pattern;
+
+	//	Case sensitive matching
+
+	@Param({ "false", "true" })
+	public boolean caseSensitive;
+
+	//	Wildcard and file names
+
+	private WildCard m_wildcard;
+	private String[] m_names;
+
+	/**
+	 * Create the wildcard and file names
+	 */
+	@Setup
+	public void setup() {
+
+		// Create the wildcard
+
+		m_wildcard = new WildCard( pattern, caseSensitive);
+
+		// Create the file names, with a mix of extensions
+
+		String[] exts = { ".txt", ".docx", ".TXT", ".pdf" };
+		m_names = new String[FileCount];
+
+		for ( int idx = 0; idx < FileCount; idx++)
+			m_names[idx] = (idx % 3 == 0 ? "report_" : "Report_") + idx + exts[idx % exts.length];
+	}
+
+	/**
+	 * Match the file names against the wildcard
+	 *
+	 * @return int
+	 */
+	@Benchmark
+	public int matchFolder() {
+		int matchCnt = 0;
+
+		for ( int idx = 0; idx < m_names.length; idx++) {
+			if ( m_wildcard.matchesPattern( m_names[idx]))
+				matchCnt++;
+		}
+
+		return matchCnt;
+	}
+}
@@ -67,11 +67,14 @@ import org.alfresco.jlan.server.filesys.SrvDiskInfo;
 import org.alfresco.jlan.server.filesys.VolumeInfo;
 import org.alfresco.jlan.server.filesys.cache.FileStateCache;
 import org.alfresco.jlan.server.filesys.cache.StandaloneFileStateCache;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+import org.alfresco.jlan.server.metrics.MetricsReporter;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.smb.Dialect;
 import org.alfresco.jlan.smb.DialectSelector;
 import org.alfresco.jlan.smb.server.CIFSConfigSection;
 import org.alfresco.jlan.smb.server.SMBSrvSession;
+import org.alfresco.jlan.smb.server.SessionSetupDispatcher;
 import org.alfresco.jlan.smb.server.VirtualCircuitList;
 import org.alfresco.jlan.smb.util.DriveMapping;
 import org.alfresco.jlan.smb.util.DriveMappingList;
@@ -542,6 +545,114 @@ public class CifsOnlyXMLServerConfiguration extends ServerConfiguration {
 
 			coreConfig.setMemoryPool( DefaultMemoryPoolBufSizes, DefaultMemoryPoolInitAlloc, DefaultMemoryPoolMaxAlloc);
 		}
+
+		// Check if the server metrics have been enabled
+
+		elem = findChildNode("metrics", srvCore.getChildNodes());
+		if ( elem != null)
+			procMetricsElement( elem, coreConfig);
+	}
+
+	/**
+	 * Process the server metrics XML element
+	 *
+	 * @param metrics Element
+	 * @param coreConfig CoreServerConfigSection
+	 * @exception InvalidConfigurationException
+	 */
+	protected final void procMetricsElement(Element metrics, CoreServerConfigSection coreConfig)
+		throws InvalidConfigurationException {
+
+		// Create the metrics registry
+
+		MetricsRegistry registry = new MetricsRegistry();
+
+		// Check if the report interval has been specified
+
+		long reportInterval = MetricsRegistry.DefaultReportInterval;
+		String attr = metrics.getAttribute("reportInterval");
+
+		if ( attr != null && attr.length() > 0) {
+
+			// Validate the report interval
+
+			try {
+				reportInterval = Long.parseLong( attr);
+			}
+			catch (NumberFormatException ex) {
+				throw new InvalidConfigurationException("Invalid metrics report interval, " + attr);
+			}
+
+			// Range check the report interval
+
+			if ( reportInterval < MetricsRegistry.MinimumReportInterval || reportInterval > MetricsRegistry.MaximumReportInterval)
+				throw new InvalidConfigurationException("Metrics report interval out of valid range ("
+						+ MetricsRegistry.MinimumReportInterval + " - " + MetricsRegistry.MaximumReportInterval + ")");
+		}
+
+		// Load the metrics reporters
+
+		NodeList nodeList = metrics.getChildNodes();
+
+		for ( int i = 0; i < nodeList.getLength(); i++) {
+
+			// Check for a reporter element
+
+			Node curNode = nodeList.item( i);
+			if ( curNode.getNodeType() == ELEMENT_TYPE && curNode.getNodeName().equals("reporter")) {
+
+				// Get the reporter class name
+
+				String className = ((Element) curNode).getAttribute("class");
+				if ( className == null || className.length() == 0)
+					throw new InvalidConfigurationException("Metrics reporter class not specified");
+
+				// Load the reporter class
+
+				Object reporterObj = null;
+
+				try {
+					reporterObj = Class.forName( className).newInstance();
+				}
+				catch ( ClassNotFoundException ex) {
+					throw new InvalidConfigurationException("Metrics reporter class not found, " + className);
+				}
+				catch ( Exception ex) {
+					throw new InvalidConfigurationException("Failed to load metrics reporter class, " + ex);
+				}
+
+				if ( reporterObj instanceof MetricsReporter == false)
+					throw new InvalidConfigurationException("Metrics reporter class is not a MetricsReporter based class, " + className);
+
+				registry.addReporter((MetricsReporter) reporterObj);
+			}
+		}
+
+		// Check if the metrics should be exported via JMX
+
+		Element elem = findChildNode("jmx", metrics.getChildNodes());
+		if ( elem != null) {
+
+			// Get the JMX object name, or use the default name
+
+			String objName = elem.getAttribute("name");
+			if ( objName == null || objName.length() == 0)
+				objName = MetricsRegistry.DefaultObjectName;
+
+			// Register the metrics MBean
+
+			try {
+				registry.registerMBean( objName);
+			}
+			catch ( Exception ex) {
+				throw new InvalidConfigurationException("Failed to register metrics MBean, " + ex);
+			}
+		}
+
+		// Start the metrics reporters, and set the metrics registry
+
+		registry.startReporting( coreConfig.getThreadPool(), reportInterval);
+		coreConfig.setMetrics( registry);
 	}
 
 	/**
@@ -722,6 +833,49 @@ public class CifsOnlyXMLServerConfiguration extends ServerConfiguration {
 			}
 		}
 
+		// Check if the session setup authentication thread pool has been configured
+
+		elem = findChildNode("authThreads", smb.getChildNodes());
+		if ( elem != null) {
+
+			// Parse and validate the authentication thread pool size and queue limit
+
+			String authThreadsVal = elem.getAttribute( "size");
+			String maxQueuedVal = elem.getAttribute( "maxQueued");
+
+			int authThreads = SessionSetupDispatcher.DefaultAuthThreads;
+			int maxQueued = SessionSetupDispatcher.DefaultMaxQueued;
+
+			try {
+
+				// Parse the thread pool size, zero uses the CIFS worker threads for authentication
+
+				if ( authThreadsVal != null && authThreadsVal.length() > 0) {
+					authThreads = Integer.parseInt( authThreadsVal);
+
+					if ( authThreads < SessionSetupDispatcher.MinAuthThreads || authThreads > SessionSetupDispatcher.MaxAuthThreads)
+						throw new InvalidConfigurationException("Authentication threads value out of range, valid range " + SessionSetupDispatcher.MinAuthThreads + " - " +
+								SessionSetupDispatcher.MaxAuthThreads);
+				}
+
+				// Parse the queue limit
+
+				if ( maxQueuedVal != null && maxQueuedVal.length() > 0) {
+					maxQueued = Integer.parseInt( maxQueuedVal);
+
+					if ( maxQueued < 1)
+						throw new InvalidConfigurationException("Invalid authentication queue limit, " + maxQueuedVal);
+				}
+
+				// Set the authentication thread pool size and queue limit
+
+				cifsConfig.setAuthenticationThreads( authThreads, maxQueued);
+			}
+			catch (NumberFormatException ex) {
+				throw new InvalidConfigurationException("Invalid authentication threads value, " + authThreadsVal + "/" + maxQueuedVal);
+			}
+		}
+
 		// Check if an authenticator has been specified
 
 		Element authElem = findChildNode("authenticator", smb.getChildNodes());
@@ -2287,9 +2441,11 @@ public class CifsOnlyXMLServerConfiguration extends ServerConfiguration {
 				DiskDeviceContext devCtx = (DiskDeviceContext) diskDrv.createContext(name, params);
 				devCtx.setConfigurationParameters(params);
 
-				// Enable/disable change notification for this device
+				// Enable/disable change notification for this device, change events are processed by the server
+				// thread pool
 
-				devCtx.enableChangeHandler(changeNotify);
+				CoreServerConfigSection coreConfig = (CoreServerConfigSection) getConfigSection(CoreServerConfigSection.SectionName);
+				devCtx.enableChangeHandler(changeNotify, coreConfig != null ? coreConfig.getThreadPool() : null);
 
 				// Set the volume information, may be null
 
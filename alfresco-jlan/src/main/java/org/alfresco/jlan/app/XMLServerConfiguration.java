@@ -640,6 +640,38 @@ public class XMLServerConfiguration extends CifsOnlyXMLServerConfiguration {
 			ftpConfig.setRequireSecureSession( true);
 		}
 
+		// Check if data connections should use NIO socket channels
+
+		elem = findChildNode("nioDataTransfer", ftp.getChildNodes());
+		if ( elem != null) {
+
+			// Use NIO socket channels for data connections, enables zero-copy file downloads
+
+			ftpConfig.setNIODataTransfer( true);
+		}
+
+		// Check if control sessions should be processed by a selector based request handler
+
+		elem = findChildNode("nioSessions", ftp.getChildNodes());
+		if ( elem != null) {
+
+			// Process FTP commands using the core thread pool, idle sessions do not use a thread
+
+			ftpConfig.setNIOSessions( true);
+
+			// Check if the number of data transfer threads has been specified
+
+			String attr = elem.getAttribute("transferThreads");
+			if ( attr != null && attr.length() > 0) {
+				try {
+					ftpConfig.setTransferThreads( Integer.parseInt( attr));
+				}
+				catch (NumberFormatException ex) {
+					throw new InvalidConfigurationException("Invalid FTP transferThreads value, " + attr);
+				}
+			}
+		}
+
 		// Check that all the required FTPS parameters have been set
 		// MNT-7301 FTPS server requires unnecessarly to have a trustStore while a keyStore should be sufficient
 		if ( ftpConfig.getKeyStorePath() != null) {
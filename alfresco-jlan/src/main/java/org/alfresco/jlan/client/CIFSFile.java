@@ -20,6 +20,7 @@
 package org.alfresco.jlan.client;
 
 import java.io.*;
+import java.util.LinkedList;
 
 import org.alfresco.jlan.client.info.FileInfo;
 import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
@@ -46,6 +47,11 @@ import org.alfresco.jlan.smb.SeekType;
  *  <p>A remote file may also be opened as an InputStream or OutputStream using the
  *  DiskSession.OpenInputStream () and DiskSession.OpenOutputStream () methods.
  *
+ *  <p>Sequential reads and writes are pipelined when the session allows it. Up to the session read-ahead depth
+ *  of ReadAndX requests are kept in flight ahead of the reader, and up to the write-behind window of WriteAndX
+ *  requests may be outstanding before the writer waits for a response. Responses are matched to requests using
+ *  the multiplex id. Outstanding writes are completed by Flush(), Seek() and Close().
+ *
  * @author gkspencer
  */
 public final class CIFSFile extends SMBFile {
@@ -74,6 +80,19 @@ public final class CIFSFile extends SMBFile {
 	private int m_oplockType = OpLock.TypeNone;
 	private OplockInterface m_oplockIface;
 
+	// Read-ahead requests in flight, in file offset order, and the file offset for the next read-ahead request
+
+	private LinkedList<PipelinedRequest> m_readAhead;
+	private long m_readAheadPos;
+
+	// Write-behind requests waiting for a response, in file offset order
+
+	private LinkedList<PipelinedRequest> m_writeBehind;
+
+	// Spare packets used to receive pipelined responses and to build new read/write requests
+
+	private LinkedList<SMBPacket> m_freePkts;
+
 	/**
 	 * Class constructor
 	 *
@@ -125,10 +144,13 @@ public final class CIFSFile extends SMBFile {
 	public final void Close(SMBDate wrDateTime)
 		throws java.io.IOException, SMBException {
 
-		// Flush any buffered write data
+		// Flush any buffered write data, and wait for outstanding write-behind requests
 
-		if ( m_txlen > 0)
-			Flush();
+		Flush();
+
+		// Discard any read-ahead requests
+
+		cancelReadAhead();
 
 		// Determine which packet to use to send the close file SMB
 
@@ -177,6 +199,7 @@ public final class CIFSFile extends SMBFile {
 
 		m_rxpkt = null;
 		m_txpkt = null;
+		m_freePkts = null;
 
 		// Inform the session that the file has been closed
 
@@ -197,6 +220,11 @@ public final class CIFSFile extends SMBFile {
 
 		if ( m_txlen > 0)
 			WriteData();
+
+		// Wait for any outstanding write-behind requests to complete
+
+		while ( m_writeBehind != null && m_writeBehind.size() > 0)
+			completeWrite();
 	}
 
 	/**
@@ -228,9 +256,13 @@ public final class CIFSFile extends SMBFile {
 
 			if ( m_rxlen == 0) {
 
-				// Read a packet of data from the remote file
+				// Read a packet of data from the remote file, use read-ahead if enabled for the session
 
-				if ( ReadData() == false)
+				if ( m_readAhead != null || m_sess.getReadAheadDepth() > 1) {
+					if ( ReadDataPipelined() == false)
+						return -1;
+				}
+				else if ( ReadData() == false)
 					return -1;
 			}
 
@@ -291,75 +323,292 @@ public final class CIFSFile extends SMBFile {
 			m_rxpkt.setTreeId(m_sess.getTreeId());
 		}
 
-		// Read a packet of data from the remote file
+		// Build the read request
 
-		m_rxpkt.setCommand(PacketType.ReadAndX);
-		m_rxpkt.setParameterCount(isNTDialect() ? 12 : 10);
-		m_rxpkt.setAndXCommand(PacketType.NoChainedCommand);
-		m_rxpkt.setFlags(m_sess.getDefaultFlags());
-		m_rxpkt.setFlags2(m_sess.getDefaultFlags2());
 		m_rxpkt.setProcessId(m_sess.getProcessId());
+		buildReadRequest(m_rxpkt, m_rxpos);
+
+		// Exchange the read data SMB packet with the file server
+
+		m_rxpkt.ExchangeSMB(m_sess, m_rxpkt, true);
+
+		// Check if a valid response was received
+
+		if ( m_rxpkt.isValidResponse()) {
+
+			// Set the received data length and offset within the received data
+
+			m_rxlen = m_rxpkt.getParameter(5);
+			m_rxoffset = m_rxpkt.getParameter(6) + RFCNetBIOSProtocol.HEADER_LEN;
+
+			// Update the current receive file position
+
+			m_rxpos += m_rxlen;
+
+			// Check if we have reached the end of file, indicated by a zero length
+			// read.
+
+			if ( m_rxlen == 0)
+				setStateFlag(SMBFile.EndOfFile, true);
+			return true;
+		}
+
+		// Return a failure status
+
+		return false;
+	}
+
+	/**
+	 * Read a packet of data from the remote file using read-ahead. Read requests are queued up to the
+	 * read-ahead depth, the oldest request is then waited on.
+	 *
+	 * @return true if a valid data packet has been received, else false
+	 * @exception SMBException If an SMB level error occurs
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final boolean ReadDataPipelined()
+		throws SMBException, IOException {
+
+		// Initialize the read-ahead queue
+
+		if ( m_readAhead == null) {
+			m_readAhead = new LinkedList<PipelinedRequest>();
+			m_readAheadPos = m_rxpos;
+		}
+
+		// Queue read requests up to the read-ahead depth, always send at least one request so that the end of
+		// file can be detected
+
+		int depth = m_sess.getReadAheadDepth();
+
+		while ( m_readAhead.size() < depth && ( m_readAheadPos < getFileSize() || m_readAhead.size() == 0)) {
+
+			// Check if the file offset requires large file support (64bit offsets)
+
+			if ( isNTDialect() == false && m_readAheadPos > Maximum32BitOffset)
+				throw new SMBException(SMBStatus.JLANErr, SMBStatus.JLANLargeFilesNotSupported);
+
+			// Build the read request
+
+			SMBPacket pkt = getFreePacket();
+			int maxCount = buildReadRequest(pkt, m_readAheadPos);
+
+			// Send the read request, and update the next read-ahead position
+
+			m_readAhead.add(m_sess.sendPipelinedRequest(pkt, m_readAheadPos, maxCount));
+			m_readAheadPos += maxCount;
+		}
+
+		// Wait for the oldest read request to complete
+
+		PipelinedRequest req = m_readAhead.removeFirst();
+		waitForRequest(req);
+
+		// Use the response packet as the receive buffer, release the previous receive packet
+
+		if ( m_rxpkt != null)
+			releasePacket(m_rxpkt);
+		m_rxpkt = req.getPacket();
+
+		// Check if a valid response was received
+
+		if ( m_rxpkt.isValidResponse() == false) {
+
+			// Discard the remaining read-ahead requests, and throw an exception
+
+			cancelReadAhead();
+			m_rxpkt.checkForError();
+			return false;
+		}
+
+		// Set the received data length and offset within the received data
+
+		m_rxlen = m_rxpkt.getParameter(5);
+		m_rxoffset = m_rxpkt.getParameter(6) + RFCNetBIOSProtocol.HEADER_LEN;
+
+		// Update the current receive file position
+
+		m_rxpos += m_rxlen;
+
+		// Check if we have reached the end of file, indicated by a zero length read, or a short read was
+		// returned in which case the read-ahead is restarted from the new file position
+
+		if ( m_rxlen == 0) {
+			setStateFlag(SMBFile.EndOfFile, true);
+			cancelReadAhead();
+		}
+		else if ( m_rxlen < req.getLength())
+			cancelReadAhead();
+
+		return true;
+	}
+
+	/**
+	 * Build a ReadAndX request for the specified file offset
+	 *
+	 * @param pkt SMBPacket
+	 * @param pos long
+	 * @return int Requested read length
+	 */
+	private final int buildReadRequest(SMBPacket pkt, long pos) {
+
+		// Build the read request
+
+		pkt.setCommand(PacketType.ReadAndX);
+		pkt.setParameterCount(isNTDialect() ? 12 : 10);
+		pkt.setAndXCommand(PacketType.NoChainedCommand);
+		pkt.setFlags(m_sess.getDefaultFlags());
+		pkt.setFlags2(m_sess.getDefaultFlags2());
 
 		// Set the file id and read offset
 
-		m_rxpkt.setParameter(2, getFileId());
-		m_rxpkt.setParameterLong(3, (int) (m_rxpos & 0xFFFFFFFF));
+		pkt.setParameter(2, getFileId());
+		pkt.setParameterLong(3, (int) (pos & 0xFFFFFFFF));
 
 		// Set the maximum/minimum read size
 
-		int maxCount = m_rxpkt.getBuffer().length - 64;
+		int maxCount = pkt.getBuffer().length - 64;
 
-		if ( (m_rxpos + maxCount) > getFileSize())
-			maxCount = (int) (getFileSize() - m_rxpos);
+		if ( (pos + maxCount) > getFileSize())
+			maxCount = (int) (getFileSize() - pos);
+		if ( maxCount < 0)
+			maxCount = 0;
 
-		m_rxpkt.setParameter(5, maxCount);
-		m_rxpkt.setParameter(6, 0);
+		pkt.setParameter(5, maxCount);
+		pkt.setParameter(6, 0);
 
 		// Reserved value, must be zero
 
-		m_rxpkt.setParameterLong(7, 0);
+		pkt.setParameterLong(7, 0);
 
 		// Bytes remaining to satisfy request
 
-		m_rxpkt.setParameter(9, maxCount);
+		pkt.setParameter(9, maxCount);
 
 		// Set the top 32bits of the file offset for NT dialect
 
 		if ( isNTDialect())
-			m_rxpkt.setParameterLong(10, (int) ((m_rxpos >> 32) & 0x0FFFFFFFFL));
+			pkt.setParameterLong(10, (int) ((pos >> 32) & 0x0FFFFFFFFL));
 
 		// No byte data
 
-		m_rxpkt.setByteCount(0);
+		pkt.setByteCount(0);
+		return maxCount;
+	}
 
-		// Exchange the read data SMB packet with the file server
+	/**
+	 * Discard any read-ahead requests, waiting for the outstanding responses so that they are not mistaken for
+	 * the responses to later requests
+	 *
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final void cancelReadAhead()
+		throws IOException {
 
-		m_rxpkt.ExchangeSMB(m_sess, m_rxpkt, true);
+		// Check if there are any read-ahead requests
 
-		// Check if a valid response was received
+		if ( m_readAhead == null)
+			return;
 
-		if ( m_rxpkt.isValidResponse()) {
+		// Wait for the outstanding read requests, and release the packets
 
-			// Set the received data length and offset within the received data
+		while ( m_readAhead.size() > 0) {
+			PipelinedRequest req = m_readAhead.removeFirst();
+			waitForRequest(req);
+			releasePacket(req.getPacket());
+		}
 
-			m_rxlen = m_rxpkt.getParameter(5);
-			m_rxoffset = m_rxpkt.getParameter(6) + RFCNetBIOSProtocol.HEADER_LEN;
+		// Restart the read-ahead from the current read position
 
-			// Update the current receive file position
+		m_readAheadPos = m_rxpos;
+	}
 
-			m_rxpos += m_rxlen;
+	/**
+	 * Discard any read-ahead requests and buffered receive data, the next read is sent to the server from the
+	 * current read position
+	 *
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final void invalidateReadData()
+		throws IOException {
 
-			// Check if we have reached the end of file, indicated by a zero length
-			// read.
+		// Move the read position back to the start of the unread buffered data
 
-			if ( m_rxlen == 0)
-				setStateFlag(SMBFile.EndOfFile, true);
-			return true;
+		if ( m_rxlen > 0) {
+			m_rxpos -= m_rxlen;
+			m_rxlen = 0;
 		}
 
-		// Return a failure status
+		// Discard the read-ahead requests, the read-ahead restarts from the current read position
 
-		return false;
+		cancelReadAhead();
+	}
+
+	/**
+	 * Wait for a pipelined request to complete
+	 *
+	 * @param req PipelinedRequest
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final void waitForRequest(PipelinedRequest req)
+		throws IOException {
+
+		// Receive responses until the request completes, the response may have already been received
+
+		if ( req.hasCompleted())
+			return;
+
+		SMBPacket rxPkt = getFreePacket();
+
+		while ( req.hasCompleted() == false)
+			rxPkt = m_sess.receivePipelinedResponse(rxPkt);
+
+		releasePacket(rxPkt);
+	}
+
+	/**
+	 * Return a spare packet, or allocate a new packet
+	 *
+	 * @return SMBPacket
+	 */
+	private final SMBPacket getFreePacket() {
+
+		// Get a spare packet, or allocate a new packet
+
+		SMBPacket pkt = null;
+
+		if ( m_freePkts != null && m_freePkts.size() > 0) {
+
+			// Clear any status and signature left from a previous response
+
+			pkt = m_freePkts.removeFirst();
+			pkt.setLongErrorCode(0);
+			pkt.setSignature(0L);
+		}
+		else
+			pkt = m_sess.allocatePacket(PacketSize);
+
+		// Initialize the packet
+
+		pkt.setUserId(m_sess.getUserId());
+		pkt.setTreeId(m_sess.getTreeId());
+		pkt.setProcessId(m_sess.getProcessId());
+
+		return pkt;
+	}
+
+	/**
+	 * Return a packet to the spare packet list
+	 *
+	 * @param pkt SMBPacket
+	 */
+	private final void releasePacket(SMBPacket pkt) {
+
+		// Add the packet to the spare list
+
+		if ( m_freePkts == null)
+			m_freePkts = new LinkedList<SMBPacket>();
+		m_freePkts.add(pkt);
 	}
 
 	/**
@@ -380,33 +629,14 @@ public final class CIFSFile extends SMBFile {
 		if ( this.isClosed())
 			return 0;
 
-		// Allocate and initialize a transmit packet, if not already allocated
-
-		if ( m_txpkt == null) {
-
-			// Allocate a transmit packet
-
-			m_txpkt = m_sess.allocatePacket(PacketSize);
-
-			// Initialize the packet
-
-			m_txpkt.setUserId(m_sess.getUserId());
-			m_txpkt.setTreeId(m_sess.getTreeId());
-			m_txpkt.setProcessId(m_sess.getProcessId());
-
-			// Set the write SMB parameter count now, so that we can calculate the
-			// offset of the byte buffer within the packet.
+		// Discard any read-ahead requests and buffered receive data, the data may be changed by the write
 
-			m_txpkt.setParameterCount(isNTDialect() ? 14 : 12);
+		invalidateReadData();
 
-			// Clear the write packet length and initialize the write packet offset.
+		// Allocate and initialize a transmit packet, if not already allocated
 
-			m_txlen = 0;
-			m_txoffset = WriteDataOffset;
-
-			if ( isNTDialect())
-				m_txoffset += 4;
-		}
+		if ( m_txpkt == null)
+			allocateWritePacket();
 
 		// Move the data to the write packet and send write requests until the
 		// user write has been done.
@@ -445,6 +675,29 @@ public final class CIFSFile extends SMBFile {
 		return txlen;
 	}
 
+	/**
+	 * Allocate and initialize a transmit packet
+	 */
+	private final void allocateWritePacket() {
+
+		// Allocate a transmit packet
+
+		m_txpkt = getFreePacket();
+
+		// Set the write SMB parameter count now, so that we can calculate the
+		// offset of the byte buffer within the packet.
+
+		m_txpkt.setParameterCount(isNTDialect() ? 14 : 12);
+
+		// Clear the write packet length and initialize the write packet offset.
+
+		m_txlen = 0;
+		m_txoffset = WriteDataOffset;
+
+		if ( isNTDialect())
+			m_txoffset += 4;
+	}
+
 	/**
 	 * Write a packet of data to the remote file.
 	 *
@@ -460,53 +713,14 @@ public final class CIFSFile extends SMBFile {
 		if ( isNTDialect() == false && m_txpos > Maximum32BitOffset)
 			throw new SMBException(SMBStatus.JLANErr, SMBStatus.JLANLargeFilesNotSupported);
 
-		// Write a packet of data to the remote file
-
-		m_txpkt.setCommand(PacketType.WriteAndX);
-		m_txpkt.setAndXCommand(PacketType.NoChainedCommand);
-
-		m_txpkt.setFlags(m_sess.getDefaultFlags());
-		m_txpkt.setFlags2(m_sess.getDefaultFlags2());
-
-		m_txpkt.setParameterCount(isNTDialect() ? 14 : 12);
-
-		// Set the file id and file offset
-
-		m_txpkt.setParameter(2, getFileId());
-		m_txpkt.setParameterLong(3, (int) (m_txpos & 0xFFFFFFFF));
+		// Use write-behind if enabled for the session
 
-		m_txpkt.setParameterLong(5, 0);
+		if ( m_writeBehind != null || m_sess.getWriteBehindWindow() > 1)
+			return WriteDataPipelined();
 
-		// Set the write mode
-
-		m_txpkt.setParameter(6, 0); // write-through mode
-
-		// Set the bytes remaining for request and reserved area
-
-		m_txpkt.setParameterLong(8, 0);
-
-		// Set the data length and offset from start of packet
-
-		m_txpkt.setParameter(10, m_txlen);
-
-		int offset = WriteDataOffset - RFCNetBIOSProtocol.HEADER_LEN;
-		if ( isNTDialect())
-			offset += 4;
-		m_txpkt.setParameter(11, offset);
-
-		// Add the top 32bits of the file offset, for NT dialect. Set the byte count, includes any
-		// padding bytes
-
-		if ( isNTDialect()) {
-
-			// Set the top 32bits of the file offset
-
-			m_txpkt.setParameterLong(12, (int) ((m_txpos >> 32) & 0xFFFFFFFFL));
-		}
-
-		// Set the byte count, includes any padding bytes
+		// Write a packet of data to the remote file
 
-		m_txpkt.setByteCount(m_txlen + WriteDataPadding);
+		buildWriteRequest();
 
 		// Exchange the write data SMB packet with the file server
 
@@ -553,6 +767,137 @@ public final class CIFSFile extends SMBFile {
 		return false;
 	}
 
+	/**
+	 * Send a packet of data to the remote file using write-behind. The write request is sent without waiting
+	 * for the response, unless the write-behind window is full in which case the oldest write is waited on.
+	 *
+	 * @return true if the write was queued successfully, else false
+	 * @exception SMBException If an SMB level error occurs
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final boolean WriteDataPipelined()
+		throws SMBException, IOException {
+
+		// Initialize the write-behind queue
+
+		if ( m_writeBehind == null)
+			m_writeBehind = new LinkedList<PipelinedRequest>();
+
+		// Build and send the write request
+
+		buildWriteRequest();
+		m_writeBehind.add(m_sess.sendPipelinedRequest(m_txpkt, m_txpos, m_txlen));
+
+		// Update the write file position, the write is checked when the response is received
+
+		m_txpos += m_txlen;
+
+		// Allocate a new transmit packet, the current packet is in use until the response is received
+
+		allocateWritePacket();
+
+		// Wait for the oldest write requests if the write-behind window is full
+
+		int window = m_sess.getWriteBehindWindow();
+
+		while ( m_writeBehind.size() >= window)
+			completeWrite();
+		return true;
+	}
+
+	/**
+	 * Wait for the oldest write-behind request to complete and check the response
+	 *
+	 * @exception SMBException If an SMB level error occurs
+	 * @exception IOException If an I/O error occurs
+	 */
+	private final void completeWrite()
+		throws SMBException, IOException {
+
+		// Wait for the oldest write request to complete
+
+		PipelinedRequest req = m_writeBehind.removeFirst();
+		waitForRequest(req);
+
+		SMBPacket pkt = req.getPacket();
+
+		// Check if a valid response was received, and all of the data was written
+
+		if ( pkt.isValidResponse() && pkt.getParameter(2) == req.getLength()) {
+			releasePacket(pkt);
+			return;
+		}
+
+		// Wait for the remaining write requests, the write position is reset to the failed request
+
+		while ( m_writeBehind.size() > 0) {
+			PipelinedRequest nextReq = m_writeBehind.removeFirst();
+			waitForRequest(nextReq);
+			releasePacket(nextReq.getPacket());
+		}
+
+		m_txpos = req.getOffset();
+
+		// Throw an exception
+
+		pkt.checkForError();
+		throw new IOException("Short write, offset=" + req.getOffset() + ", len=" + req.getLength() + ", written=" + pkt.getParameter(2));
+	}
+
+	/**
+	 * Build a WriteAndX request using the buffered write data
+	 */
+	private final void buildWriteRequest() {
+
+		// Write a packet of data to the remote file
+
+		m_txpkt.setCommand(PacketType.WriteAndX);
+		m_txpkt.setAndXCommand(PacketType.NoChainedCommand);
+
+		m_txpkt.setFlags(m_sess.getDefaultFlags());
+		m_txpkt.setFlags2(m_sess.getDefaultFlags2());
+
+		m_txpkt.setParameterCount(isNTDialect() ? 14 : 12);
+
+		// Set the file id and file offset
+
+		m_txpkt.setParameter(2, getFileId());
+		m_txpkt.setParameterLong(3, (int) (m_txpos & 0xFFFFFFFF));
+
+		m_txpkt.setParameterLong(5, 0);
+
+		// Set the write mode
+
+		m_txpkt.setParameter(6, 0); // write-through mode
+
+		// Set the bytes remaining for request and reserved area
+
+		m_txpkt.setParameterLong(8, 0);
+
+		// Set the data length and offset from start of packet
+
+		m_txpkt.setParameter(10, m_txlen);
+
+		int offset = WriteDataOffset - RFCNetBIOSProtocol.HEADER_LEN;
+		if ( isNTDialect())
+			offset += 4;
+		m_txpkt.setParameter(11, offset);
+
+		// Add the top 32bits of the file offset, for NT dialect. Set the byte count, includes any
+		// padding bytes
+
+		if ( isNTDialect()) {
+
+			// Set the top 32bits of the file offset
+
+			m_txpkt.setParameterLong(12, (int) ((m_txpos >> 32) & 0xFFFFFFFFL));
+		}
+
+		// Set the byte count, includes any padding bytes
+
+		m_txpkt.setByteCount(m_txlen + WriteDataPadding);
+	}
+
 	/**
 	 * Seek to the specified point in the file. The seek may be relative to the start of file,
 	 * current file position or end of file.
@@ -571,9 +916,10 @@ public final class CIFSFile extends SMBFile {
 		if ( this.isClosed())
 			throw new IOException("Seek on closed file");
 
-		// Flush any buffered data
+		// Flush any buffered data, and discard any read-ahead requests
 
 		Flush();
+		cancelReadAhead();
 
 		// Reset the read/write offsets to the new file position
 
@@ -604,6 +950,8 @@ public final class CIFSFile extends SMBFile {
 		m_txlen = 0;
 		m_rxlen = 0;
 
+		m_readAheadPos = m_rxpos;
+
 		// Return the new file offset
 
 		return m_rxpos;
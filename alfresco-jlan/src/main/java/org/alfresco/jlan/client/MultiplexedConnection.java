@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.netbios.NetworkSession;
+import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
+import org.alfresco.jlan.util.DataPacker;
+
+/**
+ * Multiplexed Connection Class
+ *
+ * <p>Shares a single authenticated connection to a remote server between many SMB sessions, each session
+ * uses a MultiplexedNetworkSession to send requests over the connection. Each request is given a multiplex id
+ * that is unique on the connection, the original multiplex id is restored when the response is received. A
+ * dedicated reader thread receives the responses and dispatches them to the session that sent the request.
+ * Requests from the server, such as oplock breaks, are dispatched using the tree id.
+ *
+ * @author gkspencer
+ */
+public class MultiplexedConnection {
+
+	//	Maximum number of request ids to remember per session, used to route multi-part and delayed responses
+
+	private static final int MaxRoutesPerSession = 256;
+
+	//	Connection key, server and user details
+
+	private String m_key;
+
+	//	Network connection to the remote server, and the session that negotiated and authenticated the connection
+
+	private NetworkSession m_netSess;
+	private Session m_session;
+
+	//	Sessions using the connection
+
+	private List<MultiplexedNetworkSession> m_sessions = new ArrayList<MultiplexedNetworkSession>();
+
+	//	Connection multiplex id to sending session and original multiplex id, and per session original
+	//	multiplex id to connection multiplex id
+
+	private HashMap<Integer, RequestRoute> m_routes = new HashMap<Integer, RequestRoute>();
+	private HashMap<MultiplexedNetworkSession, LinkedHashMap<Integer, Integer>> m_sessRoutes =
+		new HashMap<MultiplexedNetworkSession, LinkedHashMap<Integer, Integer>>();
+
+	//	Tree id to session map, used to dispatch requests from the server
+
+	private HashMap<Integer, MultiplexedNetworkSession> m_treeSessions = new HashMap<Integer, MultiplexedNetworkSession>();
+
+	//	Next multiplex id to allocate
+
+	private int m_nextMID = 1;
+
+	//	Lock used to serialize sends on the network connection
+
+	private Object m_sendLock = new Object();
+
+	//	Connection active flag, and time the connection was last released by a session
+
+	private volatile boolean m_active = true;
+	private long m_lastUsed;
+
+	//	Reader thread
+
+	private ConnectionReader m_reader;
+
+	//	Statistics
+
+	private long m_txCount;
+	private long m_rxCount;
+	private long m_unroutedCount;
+
+	/**
+	 * Route details for a request sent over the connection
+	 */
+	static class RequestRoute {
+
+		// Session that sent the request, and the original multiplex id
+
+		MultiplexedNetworkSession m_sess;
+		int m_mid;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param sess MultiplexedNetworkSession
+		 * @param mid int
+		 */
+		RequestRoute(MultiplexedNetworkSession sess, int mid) {
+			m_sess = sess;
+			m_mid = mid;
+		}
+	}
+
+	/**
+	 * Connection reader thread, receives packets from the server and dispatches them to the sessions
+	 */
+	class ConnectionReader extends Thread {
+
+		/**
+		 * Default constructor
+		 */
+		ConnectionReader() {
+			setDaemon(true);
+			setName("SMBReader_" + m_session.getServer());
+		}
+
+		/**
+		 * Main thread code
+		 */
+		public void run() {
+
+			// Allocate the receive buffer
+
+			byte[] rxBuf = new byte[RFCNetBIOSProtocol.MaxPacketSize];
+
+			// Loop until the connection is closed
+
+			while ( m_active) {
+
+				try {
+
+					// Receive a packet, ignore keep-alive packets
+
+					int rxlen = m_netSess.Receive(rxBuf);
+
+					if ( rxlen >= SMBPacket.MIN_RXLEN)
+						dispatchPacket(rxBuf, rxlen);
+				}
+				catch (InterruptedIOException ex) {
+
+					// Receive timeout, continue waiting
+				}
+				catch (IOException ex) {
+
+					// DEBUG
+
+					if ( m_active && Debug.EnableInfo && Session.hasDebug())
+						Debug.println("** Multiplexed connection to " + m_session.getServer() + " failed, " + ex.toString());
+
+					// Close the connection
+
+					closeConnection();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * <p>The session must have completed the negotiate and session setup, the session network session is
+	 * replaced by a multiplexed network session.
+	 *
+	 * @param key String
+	 * @param sess Session
+	 */
+	protected MultiplexedConnection(String key, Session sess) {
+		m_key = key;
+		m_session = sess;
+		m_netSess = sess.getSession();
+
+		// Attach the session to the connection
+
+		sess.setSession(createSession());
+
+		// Start the reader thread, the reader waits for responses without a timeout
+
+		m_netSess.setTimeout(0);
+
+		m_reader = new ConnectionReader();
+		m_reader.start();
+	}
+
+	/**
+	 * Return the connection key
+	 *
+	 * @return String
+	 */
+	public final String getKey() {
+		return m_key;
+	}
+
+	/**
+	 * Return the session that negotiated and authenticated the connection
+	 *
+	 * @return Session
+	 */
+	public final Session getSession() {
+		return m_session;
+	}
+
+	/**
+	 * Return the network protocol name
+	 *
+	 * @return String
+	 */
+	public final String getProtocolName() {
+		return m_netSess.getProtocolName();
+	}
+
+	/**
+	 * Check if the connection is active
+	 *
+	 * @return boolean
+	 */
+	public final boolean isActive() {
+		return m_active;
+	}
+
+	/**
+	 * Return the number of sessions using the connection
+	 *
+	 * @return int
+	 */
+	public final synchronized int getSessionCount() {
+		return m_sessions.size();
+	}
+
+	/**
+	 * Return the time the connection was last released by a session
+	 *
+	 * @return long
+	 */
+	public final synchronized long getLastUsedTime() {
+		return m_lastUsed;
+	}
+
+	/**
+	 * Return the count of requests sent
+	 *
+	 * @return long
+	 */
+	public final synchronized long getSendCount() {
+		return m_txCount;
+	}
+
+	/**
+	 * Return the count of packets received
+	 *
+	 * @return long
+	 */
+	public final synchronized long getReceiveCount() {
+		return m_rxCount;
+	}
+
+	/**
+	 * Return the count of received packets that could not be dispatched to a session
+	 *
+	 * @return long
+	 */
+	public final synchronized long getUnroutedCount() {
+		return m_unroutedCount;
+	}
+
+	/**
+	 * Create a new session on the connection
+	 *
+	 * @return MultiplexedNetworkSession
+	 */
+	protected final synchronized MultiplexedNetworkSession createSession() {
+
+		// Create the session, use the connection timeout for receives
+
+		MultiplexedNetworkSession sess = new MultiplexedNetworkSession(this);
+		sess.setTimeout(m_netSess.getTimeout() > 0 ? m_netSess.getTimeout() : NetworkSession.getDefaultTimeout());
+
+		m_sessions.add(sess);
+		m_sessRoutes.put(sess, new LinkedHashMap<Integer, Integer>());
+
+		return sess;
+	}
+
+	/**
+	 * Release a session from the connection
+	 *
+	 * @param sess MultiplexedNetworkSession
+	 */
+	protected final synchronized void releaseSession(MultiplexedNetworkSession sess) {
+
+		// Remove the session and the request routes for the session
+
+		m_sessions.remove(sess);
+
+		LinkedHashMap<Integer, Integer> sessRoutes = m_sessRoutes.remove(sess);
+		if ( sessRoutes != null) {
+			for (Integer connMID : sessRoutes.values())
+				m_routes.remove(connMID);
+		}
+
+		Iterator<MultiplexedNetworkSession> iter = m_treeSessions.values().iterator();
+		while ( iter.hasNext()) {
+			if ( iter.next() == sess)
+				iter.remove();
+		}
+
+		// Update the last used time
+
+		m_lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Send a request for a session over the connection
+	 *
+	 * @param sess MultiplexedNetworkSession
+	 * @param data byte[]
+	 * @param siz int
+	 * @return boolean
+	 * @exception IOException If a network error occurs
+	 */
+	protected final boolean sendRequest(MultiplexedNetworkSession sess, byte[] data, int siz)
+		throws IOException {
+
+		// Get the original multiplex id and tree id, responses sent by the client such as oplock break
+		// acknowledgements do not get a reply so do not need a route
+
+		int origMID = DataPacker.getIntelShort(data, SMBPacket.MID);
+		int treeId = DataPacker.getIntelShort(data, SMBPacket.TID);
+		boolean isResponse = (data[SMBPacket.FLAGS] & SMBPacket.FLG_RESPONSE) != 0 ? true : false;
+
+		int connMID = origMID;
+
+		synchronized ( this) {
+
+			// Check if the connection is active
+
+			if ( m_active == false)
+				throw new IOException("Multiplexed connection closed");
+
+			if ( isResponse == false) {
+
+				// Allocate a multiplex id that is unique on the connection
+
+				connMID = allocateMID();
+
+				// Add the route for the response, replacing any previous route for the same original id
+
+				LinkedHashMap<Integer, Integer> sessRoutes = m_sessRoutes.get(sess);
+				Integer prevMID = sessRoutes.put(new Integer(origMID), new Integer(connMID));
+
+				if ( prevMID != null)
+					m_routes.remove(prevMID);
+				else if ( sessRoutes.size() > MaxRoutesPerSession) {
+
+					// Remove the oldest route for the session
+
+					Iterator<Map.Entry<Integer, Integer>> iter = sessRoutes.entrySet().iterator();
+					m_routes.remove(iter.next().getValue());
+					iter.remove();
+				}
+
+				m_routes.put(new Integer(connMID), new RequestRoute(sess, origMID));
+			}
+
+			// Update the tree id to session mapping
+
+			m_treeSessions.put(new Integer(treeId), sess);
+			m_txCount++;
+		}
+
+		// Send the request using the connection multiplex id, restore the original id once sent
+
+		synchronized ( m_sendLock) {
+			DataPacker.putIntelShort(connMID, data, SMBPacket.MID);
+
+			try {
+				return m_netSess.Send(data, siz);
+			}
+			finally {
+				DataPacker.putIntelShort(origMID, data, SMBPacket.MID);
+			}
+		}
+	}
+
+	/**
+	 * Allocate a multiplex id that is not in use on the connection
+	 *
+	 * @return int
+	 */
+	private final int allocateMID() {
+
+		// Skip the reserved and in use multiplex ids
+
+		int mid = m_nextMID;
+
+		do {
+			mid++;
+			if ( mid >= 0xFFFF)
+				mid = 1;
+		} while ( m_routes.containsKey(new Integer(mid)));
+
+		m_nextMID = mid;
+		return mid;
+	}
+
+	/**
+	 * Dispatch a received packet to the session that sent the request
+	 *
+	 * @param rxBuf byte[]
+	 * @param rxlen int
+	 */
+	private final void dispatchPacket(byte[] rxBuf, int rxlen) {
+
+		// Find the session for the packet
+
+		MultiplexedNetworkSession sess = null;
+		boolean isResponse = (rxBuf[SMBPacket.FLAGS] & SMBPacket.FLG_RESPONSE) != 0 ? true : false;
+
+		synchronized ( this) {
+
+			m_rxCount++;
+
+			if ( isResponse) {
+
+				// Find the route for the response, and restore the original multiplex id
+
+				RequestRoute route = m_routes.get(new Integer(DataPacker.getIntelShort(rxBuf, SMBPacket.MID)));
+
+				if ( route != null) {
+					sess = route.m_sess;
+					DataPacker.putIntelShort(route.m_mid, rxBuf, SMBPacket.MID);
+				}
+			}
+			else {
+
+				// Request from the server, such as an oplock break, dispatch using the tree id
+
+				sess = m_treeSessions.get(new Integer(DataPacker.getIntelShort(rxBuf, SMBPacket.TID)));
+			}
+
+			if ( sess == null)
+				m_unroutedCount++;
+		}
+
+		// Queue a copy of the packet to the session
+
+		if ( sess != null) {
+			byte[] pkt = new byte[rxlen + RFCNetBIOSProtocol.HEADER_LEN];
+			System.arraycopy(rxBuf, 0, pkt, 0, pkt.length);
+
+			sess.queuePacket(pkt);
+		}
+		else if ( Debug.EnableInfo && Session.hasDebug())
+			Debug.println("** Multiplexed connection, unrouted packet, cmd=0x" + Integer.toHexString(rxBuf[SMBPacket.COMMAND] & 0xFF)
+					+ ", mid=" + DataPacker.getIntelShort(rxBuf, SMBPacket.MID));
+	}
+
+	/**
+	 * Close the connection, any sessions using the connection will fail
+	 */
+	public final void closeConnection() {
+
+		// Mark the connection as closed
+
+		List<MultiplexedNetworkSession> sessList = null;
+
+		synchronized ( this) {
+			if ( m_active == false)
+				return;
+
+			m_active = false;
+			sessList = new ArrayList<MultiplexedNetworkSession>(m_sessions);
+		}
+
+		// Close the network connection, this will also release the reader thread
+
+		try {
+			m_netSess.Close();
+		}
+		catch (IOException ex) {
+		}
+
+		// Wakeup any sessions waiting for a response
+
+		for (MultiplexedNetworkSession sess : sessList)
+			sess.connectionClosed();
+	}
+
+	/**
+	 * Return the connection details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[");
+		str.append(m_session.getServer());
+		str.append(",");
+		str.append(getProtocolName());
+		str.append(isActive() ? ",Active" : ",Closed");
+		str.append(",sessions=");
+		str.append(getSessionCount());
+		str.append(",tx=");
+		str.append(getSendCount());
+		str.append(",rx=");
+		str.append(getReceiveCount());
+		str.append(",unrouted=");
+		str.append(getUnroutedCount());
+		str.append("]");
+
+		return str.toString();
+	}
+}
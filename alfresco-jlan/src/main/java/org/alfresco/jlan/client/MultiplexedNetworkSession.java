@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.client;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedList;
+
+import org.alfresco.jlan.netbios.NetworkSession;
+import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
+
+/**
+ * Multiplexed Network Session Class
+ *
+ * <p>Network session used by a pooled SMB session to share a single connection to a remote server with other
+ * pooled sessions. Requests are sent via the shared connection, responses are dispatched to the network session
+ * by the connection reader thread using the multiplex id of the request.
+ *
+ * @author gkspencer
+ */
+public class MultiplexedNetworkSession extends NetworkSession {
+
+	//	Connection that this network session is multiplexed over
+
+	private MultiplexedConnection m_conn;
+
+	//	Received packets waiting to be read by the session
+
+	private LinkedList<byte[]> m_rxQueue = new LinkedList<byte[]>();
+
+	//	Session closed flag
+
+	private boolean m_closed;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param conn MultiplexedConnection
+	 */
+	protected MultiplexedNetworkSession(MultiplexedConnection conn) {
+		super(conn.getProtocolName());
+
+		m_conn = conn;
+	}
+
+	/**
+	 * Return the connection that this session is multiplexed over
+	 *
+	 * @return MultiplexedConnection
+	 */
+	public final MultiplexedConnection getConnection() {
+		return m_conn;
+	}
+
+	/**
+	 * Open a connection to a remote host, not supported, the session uses an existing connection
+	 *
+	 * @param toName Host name/address being called
+	 * @param fromName Local host name/address
+	 * @param toAddr Optional address
+	 * @exception IOException
+	 */
+	public void Open(String toName, String fromName, String toAddr)
+		throws IOException {
+		throw new IOException("Open not supported on multiplexed session");
+	}
+
+	/**
+	 * Determine if the session is connected to a remote host
+	 *
+	 * @return boolean
+	 */
+	public boolean isConnected() {
+		return m_closed == false && m_conn.isActive();
+	}
+
+	/**
+	 * Check if the network session has data available
+	 *
+	 * @return boolean
+	 * @exception IOException
+	 */
+	public synchronized boolean hasData()
+		throws IOException {
+		return m_rxQueue.size() > 0 ? true : false;
+	}
+
+	/**
+	 * Receive a data packet from the remote host, waits for the connection reader thread to dispatch a
+	 * response for this session
+	 *
+	 * @param buf Byte buffer to receive the data into.
+	 * @return Length of the received data, not including the header.
+	 * @exception IOException I/O error occurred.
+	 */
+	public synchronized int Receive(byte[] buf)
+		throws IOException {
+
+		// Wait for a packet to be queued, or the timeout to expire
+
+		long endTime = getTimeout() > 0 ? System.currentTimeMillis() + getTimeout() : 0L;
+
+		while ( m_rxQueue.size() == 0) {
+
+			// Check if the session or connection has been closed
+
+			if ( m_closed || m_conn.isActive() == false)
+				throw new IOException("Multiplexed connection closed");
+
+			// Wait for a packet
+
+			long waitTime = 0L;
+
+			if ( endTime != 0L) {
+				waitTime = endTime - System.currentTimeMillis();
+				if ( waitTime <= 0L)
+					throw new SocketTimeoutException("Multiplexed session receive timeout");
+			}
+
+			try {
+				wait(waitTime);
+			}
+			catch (InterruptedException ex) {
+				throw new IOException("Multiplexed session receive interrupted");
+			}
+		}
+
+		// Copy the received packet to the users buffer
+
+		byte[] pkt = m_rxQueue.removeFirst();
+
+		if ( pkt.length > buf.length)
+			throw new IOException("Multiplexed session Long Read");
+
+		System.arraycopy(pkt, 0, buf, 0, pkt.length);
+
+		// Return the received data length, not including the header
+
+		return pkt.length - RFCNetBIOSProtocol.HEADER_LEN;
+	}
+
+	/**
+	 * Send a data packet to the remote host via the shared connection
+	 *
+	 * @param data Byte array containing the data to be sent.
+	 * @param siz Length of the data to send.
+	 * @return true if the data was sent successfully, else false.
+	 * @exception IOException I/O error occurred.
+	 */
+	public boolean Send(byte[] data, int siz)
+		throws IOException {
+
+		// Check if the session has been closed
+
+		if ( m_closed)
+			throw new IOException("Multiplexed session closed");
+
+		// Send the request via the connection
+
+		return m_conn.sendRequest(this, data, siz);
+	}
+
+	/**
+	 * Close the session, the shared connection remains open for use by other sessions
+	 *
+	 * @exception IOException I/O error occurred
+	 */
+	public void Close()
+		throws IOException {
+
+		// Mark the session as closed, and wakeup any waiting receive
+
+		synchronized ( this) {
+			if ( m_closed)
+				return;
+
+			m_closed = true;
+			notifyAll();
+		}
+
+		// Release the session from the connection
+
+		m_conn.releaseSession(this);
+	}
+
+	/**
+	 * Queue a received packet for the session, called by the connection reader thread
+	 *
+	 * @param pkt byte[]
+	 */
+	protected final synchronized void queuePacket(byte[] pkt) {
+		m_rxQueue.add(pkt);
+		notifyAll();
+	}
+
+	/**
+	 * Wakeup any waiting receive, called when the connection has been closed
+	 */
+	protected final synchronized void connectionClosed() {
+		notifyAll();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.client;
+
+import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
+
+/**
+ * Pipelined Request Class
+ *
+ * <p>Tracks a read or write request that has been sent to the server as part of a read-ahead or write-behind
+ * pipeline on an open file. The request is identified by its multiplex id, the response is stored in the request
+ * packet when it arrives, which may be out of order relative to other pipelined requests on the session.
+ *
+ * @author gkspencer
+ */
+public final class PipelinedRequest {
+
+	//	Multiplex id that uniquely identifies this request
+
+	private int m_id;
+
+	//	File offset and length of the read/write request
+
+	private long m_offset;
+	private int m_length;
+
+	//	Request packet, holds the response once the request has completed
+
+	private SMBPacket m_pkt;
+
+	//	Request completed flag
+
+	private boolean m_completed;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param mid int
+	 * @param pkt SMBPacket
+	 * @param offset long
+	 * @param len int
+	 */
+	protected PipelinedRequest(int mid, SMBPacket pkt, long offset, int len) {
+		m_id = mid;
+		m_pkt = pkt;
+		m_offset = offset;
+		m_length = len;
+	}
+
+	/**
+	 * Get the request id
+	 *
+	 * @return int
+	 */
+	public final int getId() {
+		return m_id;
+	}
+
+	/**
+	 * Return the request packet, or the response packet if the request has completed
+	 *
+	 * @return SMBPacket
+	 */
+	public final SMBPacket getPacket() {
+		return m_pkt;
+	}
+
+	/**
+	 * Return the file offset of the request
+	 *
+	 * @return long
+	 */
+	public final long getOffset() {
+		return m_offset;
+	}
+
+	/**
+	 * Return the requested length
+	 *
+	 * @return int
+	 */
+	public final int getLength() {
+		return m_length;
+	}
+
+	/**
+	 * Check if the request has completed
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasCompleted() {
+		return m_completed;
+	}
+
+	/**
+	 * Complete the request using the specified response packet. The response packet is swapped with the request
+	 * packet, the returned packet may be used to receive the next response.
+	 *
+	 * @param rxPkt SMBPacket
+	 * @return SMBPacket
+	 */
+	protected final SMBPacket setResponse(SMBPacket rxPkt) {
+
+		// Swap the request packet with the response packet, if the response buffer is too small to be reused
+		// then copy the response data
+
+		SMBPacket freePkt = m_pkt;
+
+		if ( rxPkt.getBuffer().length >= m_pkt.getBuffer().length) {
+
+			// Use the response packet as the request packet
+
+			m_pkt = rxPkt;
+		}
+		else {
+			copyResponse(rxPkt);
+			freePkt = rxPkt;
+		}
+
+		m_completed = true;
+		return freePkt;
+	}
+
+	/**
+	 * Complete the request by copying the response data from a packet owned by the caller
+	 *
+	 * @param rxPkt SMBPacket
+	 */
+	protected final void copyResponse(SMBPacket rxPkt) {
+
+		// Copy the response into the request packet
+
+		int len = rxPkt.getLength() + RFCNetBIOSProtocol.HEADER_LEN;
+		if ( len > m_pkt.getBuffer().length)
+			len = m_pkt.getBuffer().length;
+
+		System.arraycopy(rxPkt.getBuffer(), 0, m_pkt.getBuffer(), 0, len);
+		m_completed = true;
+	}
+
+	/**
+	 * Return the pipelined request as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[MID=");
+		str.append(getId());
+		str.append(",offset=");
+		str.append(getOffset());
+		str.append(",len=");
+		str.append(getLength());
+		str.append(hasCompleted() ? ",Completed" : ",Pending");
+		str.append("]");
+
+		return str.toString();
+	}
+}
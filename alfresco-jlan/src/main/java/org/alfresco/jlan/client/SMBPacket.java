@@ -414,6 +414,11 @@ public class SMBPacket {
 
 			if ( netSess.Receive(rxPkt.getBuffer()) >= MIN_RXLEN) {
 
+				// Check if the response is for a pipelined read/write request
+
+				if ( sess.hasPipelinedRequests() && sess.processPipelinedResponse(rxPkt))
+					continue;
+
 				// Check if the response is for the current request
 
 				if ( rxPkt.getCommand() == m_pkttype) {
@@ -1092,6 +1097,11 @@ public class SMBPacket {
 
 			if ( netSess.Receive(getBuffer()) >= MIN_RXLEN) {
 
+				// Check if the response is for a pipelined read/write request
+
+				if ( sess.hasPipelinedRequests() && sess.processPipelinedResponse(this))
+					continue;
+
 				// Check if the response is for the current request
 
 				if ( getCommand() == m_pkttype) {
@@ -1150,6 +1160,11 @@ public class SMBPacket {
 
 		if ( netSess.Receive(getBuffer()) >= MIN_RXLEN) {
 
+			// Check if the response is for a pipelined read/write request
+
+			if ( sess.hasPipelinedRequests() && sess.processPipelinedResponse(this))
+				return;
+
 			// Asynchronous response received, pass the packet to the session for processing
 
 			sess.processAsynchResponse(this);
@@ -21,6 +21,7 @@ package org.alfresco.jlan.client;
 
 import java.io.*;
 import java.security.*;
+import java.util.HashMap;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.netbios.NetworkSession;
@@ -155,6 +156,15 @@ public class Session {
 
 	private int m_transMID = NO_TRANSACTION;
 
+	//	Read-ahead depth and write-behind window for pipelined file I/O
+	//
+	//	Pipelined read/write requests that are waiting for a response, indexed by multiplex id
+
+	private int m_readAheadDepth = SessionSettings.DefaultReadAheadDepth;
+	private int m_writeBehindWindow = SessionSettings.DefaultWriteBehindWindow;
+
+	private HashMap<Integer, PipelinedRequest> m_pipelined;
+
 	//	Global session id
 
 	private static int m_sessionIdx = 1;
@@ -605,6 +615,66 @@ public class Session {
 		return (m_netSession == null) ? false : true;
 	}
 
+	/**
+	 * Return the number of read requests that may be kept in flight per file. Pipelining is limited by the
+	 * maximum multiplexed requests the server allows, and is disabled if SMB signing is enabled as signatures
+	 * depend on strict request/response ordering.
+	 *
+	 * @return int
+	 */
+	public final int getReadAheadDepth() {
+		return getPipelineLimit(m_readAheadDepth);
+	}
+
+	/**
+	 * Return the number of write requests that may be outstanding per file before the writer waits for a
+	 * response.
+	 *
+	 * @return int
+	 */
+	public final int getWriteBehindWindow() {
+		return getPipelineLimit(m_writeBehindWindow);
+	}
+
+	/**
+	 * Limit a pipeline depth using the server maximum multiplexed request count, leaving one request slot free
+	 * for synchronous requests
+	 *
+	 * @param depth int
+	 * @return int
+	 */
+	private final int getPipelineLimit(int depth) {
+
+		// Pipelining cannot be used if SMB signing is enabled
+
+		if ( depth <= 1 || hasSMBSigning())
+			return 1;
+
+		// Limit the depth to the maximum multiplexed requests the server allows
+
+		if ( m_maxMPX > 1 && depth >= m_maxMPX)
+			depth = m_maxMPX - 1;
+		return depth;
+	}
+
+	/**
+	 * Determine if there are any pipelined requests waiting for a response
+	 *
+	 * @return boolean
+	 */
+	public final synchronized boolean hasPipelinedRequests() {
+		return (m_pipelined != null && m_pipelined.size() > 0) ? true : false;
+	}
+
+	/**
+	 * Return the count of pipelined requests waiting for a response
+	 *
+	 * @return int
+	 */
+	public final synchronized int numberOfPipelinedRequests() {
+		return m_pipelined != null ? m_pipelined.size() : 0;
+	}
+
 	/**
 	 * Determine if SMB session debugging is enabled
 	 *
@@ -846,6 +916,53 @@ public class Session {
 		m_remoteShr.setNodeName(srv);
 	}
 
+	/**
+	 * Copy the negotiated protocol and authentication details from another session on the same connection
+	 *
+	 * @param sess Session
+	 */
+	protected final void copyNegotiatedParameters(Session sess) {
+
+		// Copy the negotiated dialect details and capabilities
+
+		m_diaStr = sess.m_diaStr;
+		m_defFlags = sess.m_defFlags;
+		m_defFlags2 = sess.m_defFlags2;
+		m_secMode = sess.m_secMode;
+		m_maxPktSize = sess.m_maxPktSize;
+		m_sessCaps = sess.m_sessCaps;
+		m_maxVCs = sess.m_maxVCs;
+		m_maxMPX = sess.m_maxMPX;
+
+		// Copy the server details
+
+		m_domain = sess.m_domain;
+		m_srvOS = sess.m_srvOS;
+		m_srvLM = sess.m_srvLM;
+
+		// Copy the authenticated user details
+
+		m_userId = sess.m_userId;
+		m_processId = sess.m_processId;
+		m_guest = sess.m_guest;
+
+		// Copy the pipelined I/O settings
+
+		m_readAheadDepth = sess.m_readAheadDepth;
+		m_writeBehindWindow = sess.m_writeBehindWindow;
+	}
+
+	/**
+	 * Set the read-ahead depth and write-behind window for pipelined file I/O
+	 *
+	 * @param readAhead int
+	 * @param writeBehind int
+	 */
+	protected final void setPipelineDepth(int readAhead, int writeBehind) {
+		m_readAheadDepth = readAhead;
+		m_writeBehindWindow = writeBehind;
+	}
+
 	/**
 	 * Set the network session that this SMB session is associated with
 	 *
@@ -924,6 +1041,139 @@ public class Session {
 			Debug.println("++ Asynchronous response received, command = 0x" + pkt.getCommand());
 	}
 
+	/**
+	 * Send a pipelined read/write request, the response is matched to the request using the multiplex id
+	 *
+	 * @param pkt SMBPacket
+	 * @param offset long
+	 * @param len int
+	 * @return PipelinedRequest
+	 * @exception IOException If a network error occurs
+	 */
+	protected final PipelinedRequest sendPipelinedRequest(SMBPacket pkt, long offset, int len)
+		throws IOException {
+
+		// Allocate a multiplex id that does not clash with the synchronous request id or an outstanding
+		// pipelined request
+
+		PipelinedRequest req = null;
+
+		synchronized ( this) {
+
+			if ( m_pipelined == null)
+				m_pipelined = new HashMap<Integer, PipelinedRequest>();
+
+			int mid = getNextMultiplexId() & 0xFFFF;
+			while ( mid <= 1 || mid == 0xFFFF || m_pipelined.containsKey( new Integer( mid)))
+				mid = getNextMultiplexId() & 0xFFFF;
+
+			// Set the request ids
+
+			pkt.setMultiplexId(mid);
+			pkt.setProcessId(getProcessId());
+			pkt.setUserId(getUserId());
+			pkt.setTreeId(getTreeId());
+
+			// Add the request to the pending list
+
+			req = new PipelinedRequest(mid, pkt, offset, len);
+			m_pipelined.put(new Integer(mid), req);
+		}
+
+		// Send the request, the response is received later
+
+		try {
+			pkt.SendSMB(this);
+		}
+		catch (IOException ex) {
+
+			// Remove the failed request from the pending list
+
+			synchronized ( this) {
+				m_pipelined.remove(new Integer(req.getId()));
+			}
+			throw ex;
+		}
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("++ Pipelined request sent " + PacketType.getCommandName(pkt.getCommand()) + ", req=" + req);
+
+		return req;
+	}
+
+	/**
+	 * Receive a response from the server. If the response is for a pipelined request then the request is marked
+	 * as completed and the receive packet is swapped with the request packet, any other response is passed to the
+	 * asynchronous response handler.
+	 *
+	 * @param rxPkt SMBPacket
+	 * @return SMBPacket to use for the next receive
+	 * @exception IOException If a network error occurs
+	 */
+	protected final SMBPacket receivePipelinedResponse(SMBPacket rxPkt)
+		throws IOException {
+
+		// Receive a response
+
+		if ( getSession().Receive(rxPkt.getBuffer()) < SMBPacket.MIN_RXLEN)
+			throw new IOException("Short NetBIOS receive");
+
+		// DEBUG
+
+		if ( hasDebug())
+			rxPkt.DumpPacket();
+
+		// Check if the response is for a pipelined request
+
+		PipelinedRequest req = removePipelinedRequest(rxPkt);
+		if ( req != null)
+			return req.setResponse(rxPkt);
+
+		// Asynchronous response received, pass the packet to the session for processing
+
+		processAsynchResponse(rxPkt);
+		return rxPkt;
+	}
+
+	/**
+	 * Check if a received packet is the response to a pipelined request, if so then the response is copied to
+	 * the pipelined request packet. Called when a pipelined response is received whilst waiting for the response
+	 * to a synchronous request.
+	 *
+	 * @param rxPkt SMBPacket
+	 * @return boolean
+	 */
+	protected final boolean processPipelinedResponse(SMBPacket rxPkt) {
+
+		// Check if the response is for a pipelined request
+
+		PipelinedRequest req = removePipelinedRequest(rxPkt);
+		if ( req == null)
+			return false;
+
+		// Copy the response to the pipelined request
+
+		req.copyResponse(rxPkt);
+		return true;
+	}
+
+	/**
+	 * Find and remove the pipelined request that a response is for
+	 *
+	 * @param rxPkt SMBPacket
+	 * @return PipelinedRequest, or null if the response is not for a pipelined request
+	 */
+	private final synchronized PipelinedRequest removePipelinedRequest(SMBPacket rxPkt) {
+
+		// Only responses can complete a pipelined request, a server may send requests such as oplock breaks
+
+		if ( m_pipelined == null || m_pipelined.size() == 0 || rxPkt.isResponse() == false)
+			return null;
+		return m_pipelined.remove(new Integer(rxPkt.getMultiplexId()));
+	}
+
 	/**
 	 * Enable SMB signing for this session
 	 *
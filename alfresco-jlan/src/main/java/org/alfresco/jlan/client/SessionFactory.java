@@ -143,6 +143,10 @@ public final class SessionFactory {
 
 	private static boolean m_globalPID = false;
 
+	//  Pool of multiplexed connections used by OpenPooledDisk()
+
+	private static SessionPool m_sessPool;
+
 	static {
 
 		// Use the JCE based password encryptor if available, else use the BouncyCastle API based
@@ -479,6 +483,10 @@ public final class SessionFactory {
 
 		sess.setProcessId(negpkt.getProcessId());
 
+		// Set the read-ahead depth and write-behind window for pipelined file I/O
+
+		sess.setPipelineDepth(settings.getReadAheadDepth(), settings.getWriteBehindWindow());
+
 		// Set the security mode flags
 
 		int keyLen = 0;
@@ -1796,6 +1804,91 @@ public final class SessionFactory {
 		return null;
 	}
 
+	/**
+	 * Open a connection to a remote file server disk share using a pooled connection. Disk sessions for the same
+	 * server and user credentials share a single authenticated connection, requests from concurrent callers are
+	 * multiplexed over the connection.
+	 *
+	 * @param shr Remote share information object.
+	 * @return SMBSession used to access the remote share.
+	 * @exception java.io.IOException Network I/O error occurred.
+	 * @exception java.net.UnknownHostException Remote node is unknown.
+	 * @exception SMBException Failed to setup a new SMB session
+	 */
+	static final public DiskSession OpenPooledDisk(PCShare shr)
+		throws java.io.IOException, java.net.UnknownHostException, SMBException {
+
+		// Open a disk session using the default session pool
+
+		return getSessionPool().openDisk(shr);
+	}
+
+	/**
+	 * Open a disk session on an existing multiplexed connection to a remote server
+	 *
+	 * @param shr Remote share information object.
+	 * @param conn Multiplexed connection to the remote server.
+	 * @return DiskSession, or null if the share could not be connected
+	 * @exception java.io.IOException Network I/O error occurred.
+	 * @exception SMBException Failed to connect to the remote share
+	 */
+	static final DiskSession OpenMultiplexedDisk(PCShare shr, MultiplexedConnection conn)
+		throws java.io.IOException, SMBException {
+
+		// Create a CIFS protocol disk session using the negotiated details from the connection
+
+		Session sess = conn.getSession();
+
+		CIFSDiskSession diskSess = new CIFSDiskSession(shr, sess.getDialect());
+		diskSess.copyNegotiatedParameters(sess);
+
+		// Attach a multiplexed network session to the SMB session
+
+		MultiplexedNetworkSession netSess = conn.createSession();
+		diskSess.setSession(netSess);
+
+		// Connect to the remote share/disk
+
+		boolean connected = false;
+
+		try {
+			int treeId = ConnectDevice(shr, diskSess, SMBDeviceType.Disk);
+			if ( treeId != -1) {
+
+				// Set the disk sessions allocated tree identifier, and return the session
+
+				diskSess.setTreeId(treeId);
+				connected = true;
+
+				return diskSess;
+			}
+		}
+		catch (UnsupportedDeviceTypeException ex) {
+		}
+		finally {
+
+			// Release the multiplexed session if the share was not connected
+
+			if ( connected == false)
+				netSess.Close();
+		}
+
+		// Failed to connect to the remote disk
+
+		return null;
+	}
+
+	/**
+	 * Return the session pool used by OpenPooledDisk(), the pool is created on first use
+	 *
+	 * @return SessionPool
+	 */
+	public static synchronized SessionPool getSessionPool() {
+		if ( m_sessPool == null)
+			m_sessPool = new SessionPool();
+		return m_sessPool;
+	}
+
 	/**
 	 * Open a connection to a remote pipe/IPC
 	 *
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.smb.PCShare;
+import org.alfresco.jlan.smb.SMBException;
+
+/**
+ * Session Pool Class
+ *
+ * <p>Pools connections to remote servers, keyed by server and user credentials, so that many disk sessions share
+ * a single authenticated connection rather than each session doing a connect, negotiate and session setup.
+ * Each pooled disk session has its own tree connection, requests from concurrent callers are multiplexed over the
+ * connection using the multiplex id, see MultiplexedConnection.
+ *
+ * <p>Sessions that use SMB signing, or the core protocol dialects, cannot be multiplexed and are returned as
+ * normal, non-pooled, sessions.
+ *
+ * @author gkspencer
+ */
+public class SessionPool {
+
+	//	Default and maximum sessions per connection
+
+	public static final int DefaultSessionsPerConnection	= 16;
+	public static final int MaxSessionsPerConnection		= 256;
+
+	//	Default idle timeout for connections that have no sessions, in milliseconds
+
+	public static final long DefaultIdleTimeout				= 5 * 60000L;
+
+	//	Session settings used to open new connections
+
+	private SessionSettings m_settings;
+
+	//	Pooled connections, by connection key
+
+	private HashMap<String, List<MultiplexedConnection>> m_connections = new HashMap<String, List<MultiplexedConnection>>();
+
+	//	Maximum sessions per connection, and connection idle timeout
+
+	private int m_maxSessions = DefaultSessionsPerConnection;
+	private long m_idleTimeout = DefaultIdleTimeout;
+
+	//	Statistics, count of sessions opened on an existing connection, new connections, and unpooled sessions
+
+	private long m_reuseCount;
+	private long m_connectCount;
+	private long m_unpooledCount;
+
+	/**
+	 * Default constructor
+	 */
+	public SessionPool() {
+		m_settings = SessionFactory.getDefaultSettings();
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param settings SessionSettings
+	 */
+	public SessionPool(SessionSettings settings) {
+		m_settings = settings;
+	}
+
+	/**
+	 * Return the maximum sessions per connection
+	 *
+	 * @return int
+	 */
+	public final int getMaximumSessionsPerConnection() {
+		return m_maxSessions;
+	}
+
+	/**
+	 * Return the idle timeout for connections with no sessions, in milliseconds
+	 *
+	 * @return long
+	 */
+	public final long getIdleTimeout() {
+		return m_idleTimeout;
+	}
+
+	/**
+	 * Return the count of sessions opened on an existing connection
+	 *
+	 * @return long
+	 */
+	public final synchronized long getReuseCount() {
+		return m_reuseCount;
+	}
+
+	/**
+	 * Return the count of new connections opened
+	 *
+	 * @return long
+	 */
+	public final synchronized long getConnectCount() {
+		return m_connectCount;
+	}
+
+	/**
+	 * Return the count of sessions that could not be pooled
+	 *
+	 * @return long
+	 */
+	public final synchronized long getUnpooledCount() {
+		return m_unpooledCount;
+	}
+
+	/**
+	 * Return the number of pooled connections
+	 *
+	 * @return int
+	 */
+	public final synchronized int getConnectionCount() {
+		int cnt = 0;
+		for (List<MultiplexedConnection> connList : m_connections.values())
+			cnt += connList.size();
+		return cnt;
+	}
+
+	/**
+	 * Set the maximum sessions per connection
+	 *
+	 * @param maxSess int
+	 */
+	public final void setMaximumSessionsPerConnection(int maxSess) {
+		if ( maxSess < 1)
+			maxSess = 1;
+		else if ( maxSess > MaxSessionsPerConnection)
+			maxSess = MaxSessionsPerConnection;
+		m_maxSessions = maxSess;
+	}
+
+	/**
+	 * Set the idle timeout for connections with no sessions, in milliseconds
+	 *
+	 * @param tmo long
+	 */
+	public final void setIdleTimeout(long tmo) {
+		m_idleTimeout = tmo;
+	}
+
+	/**
+	 * Open a disk session to a remote share, using a pooled connection if available
+	 *
+	 * @param shr Remote share information object.
+	 * @return DiskSession, or null if the share could not be connected
+	 * @exception IOException Network I/O error occurred.
+	 * @exception SMBException Failed to setup a new SMB session
+	 */
+	public final DiskSession openDisk(PCShare shr)
+		throws IOException, SMBException {
+
+		// Close idle connections, and find a connection with a free session slot
+
+		String connKey = getConnectionKey(shr);
+		MultiplexedConnection conn = findConnection(connKey, shr);
+
+		if ( conn != null) {
+
+			// Open a disk session on the existing connection
+
+			DiskSession diskSess = SessionFactory.OpenMultiplexedDisk(shr, conn);
+
+			if ( diskSess != null) {
+				synchronized ( this) {
+					m_reuseCount++;
+				}
+				return diskSess;
+			}
+		}
+
+		// Open a new connection to the server
+
+		DiskSession diskSess = SessionFactory.OpenDisk(shr, m_settings);
+		if ( diskSess == null)
+			return null;
+
+		// Check if the session can be multiplexed
+
+		if ( diskSess instanceof CIFSDiskSession == false || diskSess.hasSMBSigning()) {
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && Session.hasDebug())
+				Debug.println("** Session pool, session cannot be pooled, " + diskSess);
+
+			synchronized ( this) {
+				m_unpooledCount++;
+			}
+			return diskSess;
+		}
+
+		// Create a multiplexed connection using the new session, and add it to the pool
+
+		conn = new MultiplexedConnection(connKey, diskSess);
+
+		synchronized ( this) {
+			List<MultiplexedConnection> connList = m_connections.get(connKey);
+			if ( connList == null) {
+				connList = new ArrayList<MultiplexedConnection>();
+				m_connections.put(connKey, connList);
+			}
+
+			connList.add(conn);
+			m_connectCount++;
+		}
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && Session.hasDebug())
+			Debug.println("** Session pool, new connection " + conn);
+
+		return diskSess;
+	}
+
+	/**
+	 * Close all pooled connections
+	 */
+	public final void closeAll() {
+
+		// Get the current connection list, and clear the pool
+
+		List<MultiplexedConnection> closeList = new ArrayList<MultiplexedConnection>();
+
+		synchronized ( this) {
+			for (List<MultiplexedConnection> connList : m_connections.values())
+				closeList.addAll(connList);
+			m_connections.clear();
+		}
+
+		// Close the connections
+
+		for (MultiplexedConnection conn : closeList)
+			conn.closeConnection();
+	}
+
+	/**
+	 * Find a pooled connection with a free session slot, closing any failed or idle connections
+	 *
+	 * @param connKey String
+	 * @param shr PCShare
+	 * @return MultiplexedConnection, or null if there is no available connection
+	 */
+	private final MultiplexedConnection findConnection(String connKey, PCShare shr) {
+
+		MultiplexedConnection availConn = null;
+		List<MultiplexedConnection> closeList = null;
+
+		synchronized ( this) {
+
+			// Get the connections for the server and user
+
+			List<MultiplexedConnection> connList = m_connections.get(connKey);
+			if ( connList == null)
+				return null;
+
+			long idleTime = System.currentTimeMillis() - m_idleTimeout;
+			Iterator<MultiplexedConnection> iter = connList.iterator();
+
+			while ( iter.hasNext()) {
+				MultiplexedConnection conn = iter.next();
+				int sessCnt = conn.getSessionCount();
+
+				// Remove failed or idle connections
+
+				if ( conn.isActive() == false || ( sessCnt == 0 && conn.getLastUsedTime() < idleTime)) {
+					iter.remove();
+
+					if ( closeList == null)
+						closeList = new ArrayList<MultiplexedConnection>();
+					closeList.add(conn);
+				}
+				else if ( availConn == null && sessCnt < getSessionLimit(conn) && hasSamePassword(conn, shr))
+					availConn = conn;
+			}
+
+			if ( connList.size() == 0)
+				m_connections.remove(connKey);
+		}
+
+		// Close the failed/idle connections
+
+		if ( closeList != null) {
+			for (MultiplexedConnection conn : closeList)
+				conn.closeConnection();
+		}
+
+		return availConn;
+	}
+
+	/**
+	 * Return the session limit for a connection, limited by the server maximum multiplexed request count
+	 *
+	 * @param conn MultiplexedConnection
+	 * @return int
+	 */
+	private final int getSessionLimit(MultiplexedConnection conn) {
+		int maxMPX = conn.getSession().getMaximumMultiplexedRequests();
+		return ( maxMPX > 0 && maxMPX < m_maxSessions) ? maxMPX : m_maxSessions;
+	}
+
+	/**
+	 * Check if a connection was authenticated using the same password as the share details
+	 *
+	 * @param conn MultiplexedConnection
+	 * @param shr PCShare
+	 * @return boolean
+	 */
+	private final boolean hasSamePassword(MultiplexedConnection conn, PCShare shr) {
+		String connPwd = conn.getSession().getPCShare().getPassword();
+		String pwd = shr.getPassword();
+
+		if ( connPwd == null)
+			return pwd == null ? true : false;
+		return connPwd.equals(pwd);
+	}
+
+	/**
+	 * Build the connection key for the share details, using the server name, domain and user name
+	 *
+	 * @param shr PCShare
+	 * @return String
+	 */
+	private final String getConnectionKey(PCShare shr) {
+		StringBuffer str = new StringBuffer();
+
+		str.append(shr.getNodeName().toUpperCase());
+		str.append("\\");
+		if ( shr.getDomain() != null)
+			str.append(shr.getDomain().toUpperCase());
+		str.append("\\");
+		if ( shr.getUserName() != null)
+			str.append(shr.getUserName().toUpperCase());
+
+		return str.toString();
+	}
+
+	/**
+	 * Return the session pool details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[Connections=");
+		str.append(getConnectionCount());
+		str.append(",connects=");
+		str.append(getConnectCount());
+		str.append(",reused=");
+		str.append(getReuseCount());
+		str.append(",unpooled=");
+		str.append(getUnpooledCount());
+		str.append("]");
+
+		return str.toString();
+	}
+}
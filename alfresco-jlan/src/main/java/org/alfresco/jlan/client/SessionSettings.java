@@ -37,6 +37,12 @@ import org.alfresco.jlan.smb.TcpipSMB;
  */
 public class SessionSettings {
 
+    // Default and maximum read-ahead depth and write-behind window, in requests per open file
+
+    public static final int DefaultReadAheadDepth     = 4;
+    public static final int DefaultWriteBehindWindow  = 4;
+    public static final int MaxPipelinedRequests      = 32;
+
     //  Primary and secondary protocols to connect with
 
     private int m_primaryProto   = Protocol.TCPNetBIOS;
@@ -89,6 +95,12 @@ public class SessionSettings {
 
     private int m_vcircuit;
 
+    // Number of read requests to keep in flight per file, and number of write requests that may be
+    // outstanding before the writer waits for a response. A value of one disables pipelining.
+
+    private int m_readAheadDepth    = DefaultReadAheadDepth;
+    private int m_writeBehindWindow = DefaultWriteBehindWindow;
+
 	/**
 	 * Default constructor
 	 */
@@ -264,6 +276,24 @@ public class SessionSettings {
 		return m_vcircuit;
 	}
 
+	/**
+	 * Return the read-ahead depth, the number of read requests kept in flight per file
+	 *
+	 * @return int
+	 */
+	public final int getReadAheadDepth() {
+		return m_readAheadDepth;
+	}
+
+	/**
+	 * Return the write-behind window, the number of write requests that may be outstanding per file
+	 *
+	 * @return int
+	 */
+	public final int getWriteBehindWindow() {
+		return m_writeBehindWindow;
+	}
+
 	/**
 	 * Set the primary connection protocol
 	 *
@@ -399,6 +429,32 @@ public class SessionSettings {
 		m_vcircuit = vc;
 	}
 
+	/**
+	 * Set the read-ahead depth, a value of one disables read-ahead
+	 *
+	 * @param depth int
+	 */
+	public final void setReadAheadDepth(int depth) {
+		if ( depth < 1)
+			depth = 1;
+		else if ( depth > MaxPipelinedRequests)
+			depth = MaxPipelinedRequests;
+		m_readAheadDepth = depth;
+	}
+
+	/**
+	 * Set the write-behind window, a value of one disables write-behind
+	 *
+	 * @param window int
+	 */
+	public final void setWriteBehindWindow(int window) {
+		if ( window < 1)
+			window = 1;
+		else if ( window > MaxPipelinedRequests)
+			window = MaxPipelinedRequests;
+		m_writeBehindWindow = window;
+	}
+
 	/**
 	 * Return the session settings as a string
 	 *
@@ -434,6 +490,11 @@ public class SessionSettings {
 		str.append(",VC=");
 		str.append(getVirtualCircuit());
 
+		str.append(",ReadAhead=");
+		str.append(getReadAheadDepth());
+		str.append(",WriteBehind=");
+		str.append(getWriteBehindWindow());
+
 		str.append("]");
 
 		return str.toString();
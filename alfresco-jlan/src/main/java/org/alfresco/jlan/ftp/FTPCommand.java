@@ -129,6 +129,26 @@ public class FTPCommand {
 		return InvalidCmd;
 	}
 
+	/**
+	 * Check if the specified command transfers data using a data connection
+	 *
+	 * @param id int
+	 * @return boolean
+	 */
+	public final static boolean isDataTransfer(int id) {
+		switch ( id) {
+			case Retr:
+			case Stor:
+			case Stou:
+			case Appe:
+			case List:
+			case Nlst:
+			case MLsd:
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Return the FTP command name for the specified id
 	 *
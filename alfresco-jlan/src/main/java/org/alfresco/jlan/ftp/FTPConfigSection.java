@@ -45,6 +45,12 @@ public class FTPConfigSection extends ConfigSection {
   public static final String DefaultKeyStoreType	= "JKS";
   public static final String DefaultTrustStoreType	= "JKS";
 
+  // Default, minimum and maximum number of threads used for data transfers by request handler sessions
+
+  public static final int DefaultTransferThreads	= 8;
+  public static final int MinimumTransferThreads	= 4;
+  public static final int MaximumTransferThreads	= 250;
+
   //  Bind address and FTP server port. A port of -1 indicates do not start FTP server.
 
   private InetAddress m_ftpBindAddress;
@@ -101,6 +107,18 @@ public class FTPConfigSection extends ConfigSection {
 
   private boolean m_requireSecureSess;
 
+  // Use NIO socket channels for data connections, allows file data to be sent using zero-copy transfers
+
+  private boolean m_nioDataTransfer;
+
+  // Use a selector based request handler and thread pool to process FTP control sessions
+
+  private boolean m_nioSessions;
+
+  // Number of threads in the data transfer thread pool used by request handler sessions
+
+  private int m_transferThreads = DefaultTransferThreads;
+
   /**
    * Class constructor
    *
@@ -329,6 +347,33 @@ public class FTPConfigSection extends ConfigSection {
 	  return m_requireSecureSess;
   }
 
+  /**
+   * Determine if data connections use NIO socket channels
+   *
+   * @return boolean
+   */
+  public final boolean hasNIODataTransfer() {
+	  return m_nioDataTransfer;
+  }
+
+  /**
+   * Determine if FTP control sessions are processed using a selector based request handler
+   *
+   * @return boolean
+   */
+  public final boolean hasNIOSessions() {
+	  return m_nioSessions;
+  }
+
+  /**
+   * Return the number of threads used for data transfers by request handler sessions
+   *
+   * @return int
+   */
+  public final int getTransferThreads() {
+	  return m_transferThreads;
+  }
+
   /**
    * Set the FTP character set
    *
@@ -777,6 +822,79 @@ public class FTPConfigSection extends ConfigSection {
 	  return sts;
   }
 
+  /**
+   * Enable/disable NIO socket channels for data connections
+   *
+   * @param nioData boolean
+   * @return int
+   */
+  public final int setNIODataTransfer(boolean nioData)
+  	throws InvalidConfigurationException {
+
+	  //  Inform listeners, validate the configuration change
+
+	  int sts = fireConfigurationChange(ConfigId.FTPNIODataTransfer, Boolean.valueOf(nioData));
+
+	  //  Set the NIO data transfer flag
+
+	  m_nioDataTransfer = nioData;
+
+	  //  Return the change status
+
+	  return sts;
+  }
+
+  /**
+   * Enable/disable processing of FTP control sessions using a selector based request handler
+   *
+   * @param nioSess boolean
+   * @return int
+   */
+  public final int setNIOSessions(boolean nioSess)
+  	throws InvalidConfigurationException {
+
+	  //  Inform listeners, validate the configuration change
+
+	  int sts = fireConfigurationChange(ConfigId.FTPNIOSessions, Boolean.valueOf(nioSess));
+
+	  //  Set the NIO sessions flag
+
+	  m_nioSessions = nioSess;
+
+	  //  Return the change status
+
+	  return sts;
+  }
+
+  /**
+   * Set the number of threads used for data transfers by request handler sessions
+   *
+   * @param threads int
+   * @return int
+   * @exception InvalidConfigurationException
+   */
+  public final int setTransferThreads(int threads)
+  	throws InvalidConfigurationException {
+
+	  //  Check the thread count is valid
+
+	  if ( threads < MinimumTransferThreads || threads > MaximumTransferThreads)
+		  throw new InvalidConfigurationException("FTP transfer threads out of valid range (" + MinimumTransferThreads +
+				  " - " + MaximumTransferThreads + ")");
+
+	  //  Inform listeners, validate the configuration change
+
+	  int sts = fireConfigurationChange(ConfigId.FTPTransferThreads, new Integer(threads));
+
+	  //  Set the transfer thread count
+
+	  m_transferThreads = threads;
+
+	  //  Return the change status
+
+	  return sts;
+  }
+
   /**
    * Close the configuration section
    */
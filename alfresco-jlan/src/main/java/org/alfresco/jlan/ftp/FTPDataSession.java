@@ -21,9 +21,12 @@ package org.alfresco.jlan.ftp;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 /**
  * FTP Data Session Class
@@ -33,6 +36,9 @@ import java.net.UnknownHostException;
  * <p>The PORT command will actively connect to the specified address/port on the client. The PASV command will create a
  * listening socket and wait for the client to connect.
  *
+ * <p>If NIO data transfers are enabled the data connection sockets are created using socket channels, so that
+ * file data can be transferred directly between a local file channel and the data connection.
+ *
  * @author gkspencer
  */
 public class FTPDataSession implements Runnable {
@@ -71,6 +77,10 @@ public class FTPDataSession implements Runnable {
 
 	private long m_bytCount;
 
+	//	Use socket channels for the data connection
+
+	private boolean m_nio;
+
 	/**
 	 * Class constructor
 	 *
@@ -85,10 +95,11 @@ public class FTPDataSession implements Runnable {
 		//	Set the associated command session
 
 		m_cmdSess = sess;
+		m_nio = isNIOEnabled(sess);
 
 		//	Create a server socket to listen for the incoming connection
 
-		m_passiveSock = new ServerSocket(0, 1, null);
+		m_passiveSock = createServerSocket(0, null);
 	}
 
 	/**
@@ -108,11 +119,12 @@ public class FTPDataSession implements Runnable {
 		//	Set the associated command session
 
 		m_cmdSess = sess;
+		m_nio = isNIOEnabled(sess);
 
 		//	Create a server socket to listen for the incoming connection on the specified network adapter
 
 		m_localPort = localPort;
-		m_passiveSock = new ServerSocket(localPort, 1, bindAddr);
+		m_passiveSock = createServerSocket(localPort, bindAddr);
 	}
 
 	/**
@@ -131,10 +143,11 @@ public class FTPDataSession implements Runnable {
 		//	Set the associated command session
 
 		m_cmdSess = sess;
+		m_nio = isNIOEnabled(sess);
 
 		//	Create a server socket to listen for the incoming connection on the specified network adapter
 
-		m_passiveSock = new ServerSocket(0, 1, bindAddr);
+		m_passiveSock = createServerSocket(0, bindAddr);
 	}
 
 	/**
@@ -151,6 +164,7 @@ public class FTPDataSession implements Runnable {
 		//	Set the associated command session
 
 		m_cmdSess = sess;
+		m_nio = isNIOEnabled(sess);
 
 		//	Save the client address/port details, the actual connection will be made later when
 		//	the client requests/sends a file
@@ -175,6 +189,7 @@ public class FTPDataSession implements Runnable {
 		//	Set the associated command session
 
 		m_cmdSess = sess;
+		m_nio = isNIOEnabled(sess);
 
 		//	Save the local port
 
@@ -290,6 +305,24 @@ public class FTPDataSession implements Runnable {
 
 		if ( m_passiveSock != null)
 			m_activeSock = m_passiveSock.accept();
+		else if ( m_nio) {
+
+			//	Create a socket channel, bind to the local port if specified, and connect to the client
+
+			SocketChannel sockChannel = SocketChannel.open();
+
+			try {
+				if ( m_localPort != 0)
+					sockChannel.socket().bind(new InetSocketAddress(m_localPort));
+				sockChannel.connect(new InetSocketAddress(m_clientAddr, m_clientPort));
+			}
+			catch (IOException ex) {
+				sockChannel.close();
+				throw ex;
+			}
+
+			m_activeSock = sockChannel.socket();
+		}
 		else {
 		  if ( m_localPort != 0) {
 
@@ -310,6 +343,60 @@ public class FTPDataSession implements Runnable {
 		return m_activeSock;
 	}
 
+	/**
+	 * Return the socket channel for the data connection, or null if the data connection does not use
+	 * a socket channel
+	 *
+	 * @return SocketChannel
+	 */
+	public final SocketChannel getSocketChannel() {
+		if ( m_activeSock != null)
+			return m_activeSock.getChannel();
+		return null;
+	}
+
+	/**
+	 * Create the passive mode listening socket, using a server socket channel if NIO data transfers are enabled
+	 *
+	 * @param localPort int
+	 * @param bindAddr InetAddress
+	 * @return ServerSocket
+	 * @exception IOException
+	 */
+	private final ServerSocket createServerSocket(int localPort, InetAddress bindAddr)
+		throws IOException {
+
+		//	Check if the listening socket should use a server socket channel, accepted connections will then
+		//	have a socket channel
+
+		if ( m_nio == false)
+			return new ServerSocket(localPort, 1, bindAddr);
+
+		ServerSocketChannel srvChannel = ServerSocketChannel.open();
+
+		try {
+			srvChannel.socket().bind(new InetSocketAddress(bindAddr, localPort), 1);
+		}
+		catch (IOException ex) {
+			srvChannel.close();
+			throw ex;
+		}
+
+		return srvChannel.socket();
+	}
+
+	/**
+	 * Check if NIO data transfers are enabled for the FTP server
+	 *
+	 * @param sess FTPSrvSession
+	 * @return boolean
+	 */
+	private static final boolean isNIOEnabled(FTPSrvSession sess) {
+		if ( sess != null && sess.getFTPServer() != null && sess.getFTPServer().getFTPConfiguration() != null)
+			return sess.getFTPServer().getFTPConfiguration().hasNIODataTransfer();
+		return false;
+	}
+
 	/**
 	 * Close the data connection
 	 */
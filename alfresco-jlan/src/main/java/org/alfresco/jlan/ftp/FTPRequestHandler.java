@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.ftp;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Vector;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.SrvSessionQueue;
+import org.alfresco.jlan.server.thread.ThreadRequest;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+
+/**
+ * FTP Request Handler Class
+ *
+ * <p>Monitors the control connections of FTP sessions using a selector, and queues the processing of received
+ * commands to a thread pool. Idle sessions do not use a thread. Responses that cannot be written immediately are
+ * queued by the session, and sent by the request handler thread when the socket channel is writeable.
+ *
+ * @author gkspencer
+ */
+public class FTPRequestHandler implements Runnable {
+
+	// Idle session check interval, in milliseconds
+
+	private static final long IdleCheckInterval	= 30000L;
+
+	// Selector used to monitor the session socket channels for incoming commands
+
+	private Selector m_selector;
+
+	// List of thread requests, used during socket event processing
+
+	private Vector<ThreadRequest> m_reqList = new Vector<ThreadRequest>();
+
+	// Thread that the request handler runs in
+
+	private Thread m_thread;
+
+	// Thread pool for processing requests
+
+	private ThreadRequestPool m_threadPool;
+
+	// Queue of sessions that are pending setup with the selector
+
+	private SrvSessionQueue m_sessQueue;
+
+	// Idle session timeout, in milliseconds, zero if idle sessions are not closed
+
+	private int m_sessTimeout;
+	private long m_nextIdleCheck;
+
+	// Shutdown request flag
+
+	private volatile boolean m_shutdown;
+
+	// Debug enable flag
+
+	private boolean m_debug;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param threadPool ThreadRequestPool
+	 * @param sessTmo int
+	 * @param debug boolean
+	 * @exception IOException
+	 */
+	public FTPRequestHandler( ThreadRequestPool threadPool, int sessTmo, boolean debug)
+		throws IOException {
+
+		// Set the thread pool to use for request processing, and the idle session timeout
+
+		m_threadPool  = threadPool;
+		m_sessTimeout = sessTmo;
+
+		// Create the session queue and selector
+
+		m_sessQueue = new SrvSessionQueue();
+		m_selector  = Selector.open();
+
+		// Set the debug output enable
+
+		m_debug = debug;
+
+		// Start the request handler in a seperate thread
+
+		m_thread = new Thread( this);
+		m_thread.setName( "FTPRequestHandler");
+		m_thread.setDaemon( true);
+
+		m_thread.start();
+	}
+
+	/**
+	 * Return the number of sessions registered with the selector
+	 *
+	 * @return int
+	 */
+	public final int getSessionCount() {
+		return m_selector.keys().size();
+	}
+
+	/**
+	 * Determine if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Queue a new session to the request handler, wakeup the request handler thread to register it with the
+	 * selector.
+	 *
+	 * @param sess FTPSrvSession
+	 */
+	public final void queueSessionToHandler( FTPSrvSession sess) {
+
+		// Add the new session to the pending queue
+
+		m_sessQueue.addSession( sess);
+
+		// Wakeup the main thread to process the new session queue
+
+		m_selector.wakeup();
+	}
+
+	/**
+	 * Run the main processing in a seperate thread
+	 */
+	public void run() {
+
+		// Loop until shutdown
+
+		m_nextIdleCheck = System.currentTimeMillis() + IdleCheckInterval;
+
+		while ( m_shutdown == false) {
+
+			try {
+
+				// Wait for client requests
+
+				int sessCnt = 0;
+
+				try {
+					sessCnt = m_selector.select( IdleCheckInterval);
+				}
+				catch ( CancelledKeyException ex) {
+				}
+
+				// Check if the shutdown flag has been set
+
+				if ( m_shutdown == true)
+					continue;
+
+				// Queue requests for sessions with received data
+
+				if ( sessCnt > 0)
+					processSocketEvents();
+
+				// Register new sessions with the selector
+
+				if ( m_sessQueue.numberOfSessions() > 0)
+					addNewSessions();
+
+				// Check for idle sessions
+
+				if ( m_sessTimeout > 0 && System.currentTimeMillis() >= m_nextIdleCheck) {
+
+					// Close idle sessions
+
+					int remCnt = runIdleSessionsReaper();
+
+					// DEBUG
+
+					if ( remCnt > 0 && Debug.EnableInfo && hasDebug())
+						Debug.println( "[FTP] Idle session reaper removed " + remCnt + " sessions");
+
+					m_nextIdleCheck = System.currentTimeMillis() + IdleCheckInterval;
+				}
+			}
+			catch ( Throwable ex) {
+				Debug.println( Thread.currentThread().getName() + ": Exception in run() method");
+				Debug.println( ex);
+			}
+		}
+
+		// Close all sessions
+
+		Iterator<SelectionKey> selKeys = m_selector.keys().iterator();
+
+		while ( selKeys.hasNext()) {
+
+			// Get the current session via the selection key, and close the session
+
+			SelectionKey curKey = selKeys.next();
+			FTPSrvSession sess = (FTPSrvSession) curKey.attachment();
+
+			if ( sess != null)
+				sess.closeSession();
+		}
+
+		// Close the selector
+
+		try {
+			m_selector.close();
+		}
+		catch ( IOException ex) {
+		}
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println( "[FTP] Closed FTP request handler");
+	}
+
+	/**
+	 * Process socket events, queue sessions to the thread pool for processing
+	 */
+	private void processSocketEvents() {
+
+		// Clear the thread request list
+
+		m_reqList.clear();
+
+		// Iterate the selected keys
+
+		Iterator<SelectionKey> keysIter = m_selector.selectedKeys().iterator();
+		long timeNow = System.currentTimeMillis();
+
+		while ( keysIter.hasNext()) {
+
+			// Get the current selection key and check if has an incoming request
+
+			SelectionKey selKey = keysIter.next();
+			keysIter.remove();
+
+			// Send queued response data if the socket channel is writeable
+
+			if ( selKey.isValid() && selKey.isWritable()) {
+
+				FTPSrvSession sess = (FTPSrvSession) selKey.attachment();
+				int wrCnt = sess.processQueuedWrites();
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println( "[FTP] Sent " + wrCnt + " queued writes, remaining=" + sess.getQueuedWriteCount() + ", sess=" + sess.getUniqueId());
+
+				// Check if there is also a read event to process
+
+				if ( selKey.isValid() == false || selKey.isReadable() == false)
+					continue;
+			}
+
+			if ( selKey.isValid() == false) {
+
+				// Remove the selection key
+
+				selKey.cancel();
+			}
+			else if ( selKey.isReadable()) {
+
+				// Switch off read events for this channel until the current processing is complete
+
+				synchronized ( selKey) {
+					selKey.interestOps( selKey.interestOps() & ~SelectionKey.OP_READ);
+				}
+
+				// Get the associated session and queue a request to the thread pool to read and process the commands
+
+				FTPSrvSession sess = (FTPSrvSession) selKey.attachment();
+				sess.setLastIOTime( timeNow);
+
+				m_reqList.add( new FTPThreadRequest( sess, selKey));
+			}
+		}
+
+		// Queue the thread requests
+
+		if ( m_reqList.size() > 0) {
+			m_threadPool.queueRequests( m_reqList);
+			m_reqList.clear();
+		}
+	}
+
+	/**
+	 * Register new sessions with the selector
+	 */
+	private void addNewSessions() {
+
+		// Register the new sessions with the selector
+
+		while ( m_sessQueue.numberOfSessions() > 0) {
+
+			// Get a new session from the queue
+
+			FTPSrvSession sess = (FTPSrvSession) m_sessQueue.removeSessionNoWait();
+			if ( sess == null)
+				continue;
+
+			SocketChannel sessChannel = sess.getSocketChannel();
+			if ( sessChannel == null)
+				continue;
+
+			try {
+
+				// Register the session channel with the selector
+
+				sessChannel.configureBlocking( false);
+				SelectionKey selKey = sessChannel.register( m_selector, SelectionKey.OP_READ, sess);
+
+				// Responses that cannot be written immediately are queued and sent when the channel is writeable
+
+				sess.setSelectionKey( selKey);
+
+				// Update the last I/O time for the session
+
+				sess.setLastIOTime( System.currentTimeMillis());
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println( "[FTP] Registered session with request handler, sess=" + sess.getUniqueId());
+			}
+			catch ( ClosedChannelException ex) {
+
+				// DEBUG
+
+				if ( Debug.EnableError && hasDebug())
+					Debug.println( "[FTP] Failed to register session channel, closed channel");
+
+				sess.closeSession();
+			}
+			catch ( IOException ex) {
+
+				// DEBUG
+
+				if ( Debug.EnableError && hasDebug())
+					Debug.println( "[FTP] Failed to set channel blocking mode, " + ex.getMessage());
+
+				sess.closeSession();
+			}
+		}
+	}
+
+	/**
+	 * Close sessions that have not received a command within the session timeout, sessions that are currently
+	 * processing a command are not closed
+	 *
+	 * @return int
+	 */
+	private int runIdleSessionsReaper() {
+
+		// Time to check
+
+		long checkTime = System.currentTimeMillis() - (long) m_sessTimeout;
+		int idleCnt = 0;
+
+		// Enumerate the selector keys to get the session list
+
+		Iterator<SelectionKey> selKeys = m_selector.keys().iterator();
+
+		while ( selKeys.hasNext()) {
+
+			// Get the current session via the selection key
+
+			SelectionKey curKey = selKeys.next();
+			FTPSrvSession sess = (FTPSrvSession) curKey.attachment();
+
+			try {
+
+				// Check the time of the last command on this session, skip sessions that are being processed
+
+				if ( sess != null && curKey.isValid() && ( curKey.interestOps() & SelectionKey.OP_READ) != 0 && sess.getLastIOTime() < checkTime) {
+
+					// DEBUG
+
+					if ( Debug.EnableInfo && hasDebug())
+						Debug.println( "[FTP] Closing idle session, " + sess.getUniqueId());
+
+					// Close the session
+
+					sess.closeSession();
+					curKey.cancel();
+
+					// Update the idle session count
+
+					idleCnt++;
+				}
+			}
+			catch ( CancelledKeyException ex) {
+			}
+		}
+
+		// Return the count of idle sessions that were closed
+
+		return idleCnt;
+	}
+
+	/**
+	 * Close the request handler
+	 */
+	public final void closeHandler() {
+
+		// Set the shutdown flag and wakeup the main thread
+
+		m_shutdown = true;
+		m_selector.wakeup();
+	}
+}
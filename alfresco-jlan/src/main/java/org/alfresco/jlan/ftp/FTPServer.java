@@ -26,7 +26,11 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.ServerListener;
@@ -34,10 +38,14 @@ import org.alfresco.jlan.server.SrvSession;
 import org.alfresco.jlan.server.Version;
 import org.alfresco.jlan.server.config.ConfigId;
 import org.alfresco.jlan.server.config.ConfigurationListener;
+import org.alfresco.jlan.server.config.CoreServerConfigSection;
 import org.alfresco.jlan.server.config.InvalidConfigurationException;
 import org.alfresco.jlan.server.config.ServerConfiguration;
 import org.alfresco.jlan.server.core.SharedDeviceList;
 import org.alfresco.jlan.server.filesys.NetworkFileServer;
+import org.alfresco.jlan.server.memory.ByteBufferPool;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.util.UTF8Normalizer;
 
 
@@ -62,6 +70,12 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 
 	protected static final int SERVER_PORT		= 21;
 
+	//	File transfer buffer size, and initial/maximum number of pooled transfer buffers
+
+	public static final int TransferBufferSize		= 64 * 1024;
+	public static final int TransferBufferInitial	= 4;
+	public static final int TransferBufferMaximum	= 64;
+
 	//  Thread group
 
 	protected static final ThreadGroup FTPThreadGroup = new ThreadGroup( "FTPSessions");
@@ -107,6 +121,25 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 
 	private UTF8Normalizer m_normalizer;
 
+	// File transfer buffer pool
+
+	private ByteBufferPool m_xferBufPool;
+
+	// Transfer buffers currently allocated from the pool, buffers allocated when the pool is exhausted are not
+	// released to the pool
+
+	private Set<byte[]> m_pooledXferBufs = Collections.newSetFromMap( new IdentityHashMap<byte[], Boolean>());
+
+	// Server metrics registry, or null if metrics are not enabled
+
+	private MetricsRegistry m_metrics;
+
+	// Request handler for sessions processed using the thread pool, and the thread pool used for data transfers by
+	// request handler sessions so that transfers do not use the core thread pool threads
+
+	private FTPRequestHandler m_reqHandler;
+	private ThreadRequestPool m_xferThreadPool;
+
 	/**
 	 * Class constructor
 	 *
@@ -128,6 +161,17 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 		m_sessions     = new FTPSessionList();
 		m_dataSessions = new FTPDataSessionTable();
 
+		//	Create the file transfer buffer pool
+
+		m_xferBufPool = new ByteBufferPool( new int[] { TransferBufferSize }, new int[] { TransferBufferInitial },
+				new int[] { TransferBufferMaximum });
+
+		//	Get the server metrics registry, if enabled
+
+		CoreServerConfigSection coreConfig = (CoreServerConfigSection) config.getConfigSection( CoreServerConfigSection.SectionName);
+		if ( coreConfig != null)
+			m_metrics = coreConfig.getMetrics();
+
 		//  Find the FTP server configuration
 
 		m_configSection = (FTPConfigSection) config.getConfigSection( FTPConfigSection.SectionName);
@@ -211,6 +255,73 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 		}
 	}
 
+	/**
+	 * Return the server metrics registry, or null if metrics are not enabled
+	 *
+	 * @return MetricsRegistry
+	 */
+	public final MetricsRegistry getMetrics() {
+		return m_metrics;
+	}
+
+	/**
+	 * Return the thread pool used for data transfers by request handler sessions
+	 *
+	 * @return ThreadRequestPool
+	 */
+	protected final ThreadRequestPool getTransferThreadPool() {
+		return m_xferThreadPool;
+	}
+
+	/**
+	 * Allocate a file transfer buffer from the buffer pool, if all pooled buffers are in use then a buffer is
+	 * allocated for the transfer
+	 *
+	 * @return byte[]
+	 */
+	protected final byte[] allocateTransferBuffer() {
+
+		//	Allocate a buffer from the pool, do not wait for a buffer to be released
+
+		byte[] buf = m_xferBufPool.allocateBuffer( TransferBufferSize);
+
+		if ( buf != null) {
+
+			//	Track the pooled buffer so that it is returned to the pool when released
+
+			synchronized ( m_pooledXferBufs) {
+				m_pooledXferBufs.add( buf);
+			}
+		}
+		else {
+
+			//	Pool exhausted, allocate a buffer that is not returned to the pool
+
+			buf = new byte[TransferBufferSize];
+		}
+
+		return buf;
+	}
+
+	/**
+	 * Release a file transfer buffer, buffers that were allocated from the pool are returned to the pool
+	 *
+	 * @param buf byte[]
+	 */
+	protected final void releaseTransferBuffer(byte[] buf) {
+
+		//	Check if the buffer was allocated from the pool
+
+		boolean pooled = false;
+
+		synchronized ( m_pooledXferBufs) {
+			pooled = m_pooledXferBufs.remove( buf);
+		}
+
+		if ( pooled)
+			m_xferBufPool.releaseBuffer( buf);
+	}
+
 	/**
 	 * Allocate a local port for a data session
 	 *
@@ -542,9 +653,38 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 
     try {
 
+			//	Check if sessions should be processed by a request handler using the core thread pool
+
+			ThreadRequestPool threadPool = null;
+
+			if ( getFTPConfiguration().hasNIOSessions()) {
+				CoreServerConfigSection coreConfig = (CoreServerConfigSection) getConfiguration().getConfigSection( CoreServerConfigSection.SectionName);
+				if ( coreConfig != null)
+					threadPool = coreConfig.getThreadPool();
+			}
+
 			//	Create the server socket to listen for incoming FTP session requests
 
-			if ( hasBindAddress())
+			if ( threadPool != null) {
+
+				//	Create the request handler, and a server socket channel so the session sockets have channels
+
+				m_reqHandler = new FTPRequestHandler( threadPool, getFTPConfiguration().getFTPSrvSessionTimeout(), hasDebug());
+
+				//	Create the data transfer thread pool
+
+				m_xferThreadPool = new ThreadRequestPool( "FTPXfer", getFTPConfiguration().getTransferThreads());
+
+				ServerSocketChannel srvChannel = ServerSocketChannel.open();
+				srvChannel.socket().bind(new InetSocketAddress(hasBindAddress() ? getBindAddress() : null, getPort()), LISTEN_BACKLOG);
+				m_srvSock = srvChannel.socket();
+
+				//	DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println("[FTP] Using request handler and thread pool for sessions, transfer threads=" + getFTPConfiguration().getTransferThreads());
+			}
+			else if ( hasBindAddress())
 				m_srvSock = new ServerSocket(getPort(), LISTEN_BACKLOG, getBindAddress());
 			else {
 
@@ -613,6 +753,28 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 
 			fireSessionOpenEvent(srvSess);
 
+			//	Check if the session should be processed by the request handler
+
+			if ( m_reqHandler != null) {
+
+				//	Send the initial response, and queue the session to the request handler
+
+				try {
+					srvSess.startNIOSession();
+					m_reqHandler.queueSessionToHandler(srvSess);
+				}
+				catch (IOException ex) {
+
+					//	DEBUG
+
+					if ( Debug.EnableInfo && hasDebug())
+						Debug.println("[FTP] Failed to start session " + srvSess.getSessionId() + ", " + ex.getMessage());
+
+					srvSess.closeSession();
+				}
+				continue;
+			}
+
 		    //  Start the new session in a seperate thread
 
 		    Thread srvThread = new Thread(FTPThreadGroup, srvSess);
@@ -712,6 +874,20 @@ public class FTPServer extends NetworkFileServer implements Runnable, Configurat
 		catch (IOException ex) {
 		}
 
+		//	Close the request handler
+
+		if ( m_reqHandler != null) {
+			m_reqHandler.closeHandler();
+			m_reqHandler = null;
+		}
+
+		//	Shutdown the data transfer thread pool
+
+		if ( m_xferThreadPool != null) {
+			m_xferThreadPool.shutdownThreadPool();
+			m_xferThreadPool = null;
+		}
+
 		//	Wait for the main server thread to close
 
 		if ( m_srvThread != null) {
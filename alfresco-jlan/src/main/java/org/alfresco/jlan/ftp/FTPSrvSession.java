@@ -33,6 +33,9 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -43,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
@@ -73,6 +77,7 @@ import org.alfresco.jlan.server.filesys.DiskInterface;
 import org.alfresco.jlan.server.filesys.DiskSharedDevice;
 import org.alfresco.jlan.server.filesys.FileAction;
 import org.alfresco.jlan.server.filesys.FileAttribute;
+import org.alfresco.jlan.server.filesys.FileChannelInterface;
 import org.alfresco.jlan.server.filesys.FileInfo;
 import org.alfresco.jlan.server.filesys.FileOfflineException;
 import org.alfresco.jlan.server.filesys.FileOpenParams;
@@ -82,6 +87,7 @@ import org.alfresco.jlan.server.filesys.NotifyChange;
 import org.alfresco.jlan.server.filesys.SearchContext;
 import org.alfresco.jlan.server.filesys.TreeConnection;
 import org.alfresco.jlan.server.filesys.TreeConnectionHash;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.util.UTF8Normalizer;
 import org.alfresco.jlan.util.WildCard;
 
@@ -130,9 +136,10 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	private static final String DIR_SEPERATOR 		= "\\";
 	private static final char DIR_SEPERATOR_CHAR 	= '\\';
 
-	// File transfer buffer size
+	// Maximum amount of file data to send using a single zero-copy transfer, the abort check is run between
+	// transfers
 
-	private static final int DEFAULT_BUFFERSIZE = 64000;
+	private static final long DIRECT_TRANSFERSIZE = 1024L * 1024L;
 
 	// Carriage return/line feed combination required for response messages
 
@@ -187,6 +194,28 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	protected static final int DefCommandBufSize	= 1024;
 	protected static final int MaxCommandBufSize	= 0xFFFF;	// 64K
 
+	// Maximum number of received commands queued by a socket channel session, further data is left in the socket
+	// until the queued commands have been processed
+
+	protected static final int MaxQueuedCommands	= 64;
+
+	// Maximum response data queued by a socket channel session before a writer waits for the queue to drain, the
+	// wait interval, and the time to wait for the client to read responses before the session is closed
+
+	protected static final int MaxQueuedWriteBytes	= 256 * 1024;
+	protected static final long WriteQueueWait		= 1000L;
+	protected static final long WriteQueueTimeout	= 60000L;
+
+	// Maximum buffers output by a single gathering write
+
+	protected static final int MaxGatherBuffers		= 64;
+
+	// Socket channel session request processing status
+
+	protected static final int ChannelClosed		= 0;
+	protected static final int ChannelActive		= 1;
+	protected static final int ChannelTransfer		= 2;
+
 	// Session socket
 
 	private Socket m_sock;
@@ -254,6 +283,32 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	private int m_pbSize = -1;
 	private String m_protLevel;
 
+	// Socket channel for the control connection, when the session is driven by an FTP request handler
+
+	private SocketChannel m_channel;
+
+	// Received command data, and the encrypted receive/transmit and decrypted receive buffers used by an SSL/TLS
+	// session on the socket channel
+
+	private ByteBuffer m_cmdBuf;
+
+	private ByteBuffer m_sslNetIn;
+	private ByteBuffer m_sslNetOut;
+	private ByteBuffer m_sslAppIn;
+
+	// SSL engine closed by a CCC command, used to consume the client close notification
+
+	private SSLEngine m_sslClosing;
+
+	// Selection key for the socket channel, once registered with the FTP request handler selector
+
+	private SelectionKey m_selectionKey;
+
+	// Queue of response data waiting to be written to the socket channel, and the count of queued bytes
+
+	private LinkedList<ByteBuffer> m_writeQueue = new LinkedList<ByteBuffer>();
+	private int m_queuedBytes;
+
 	/**
 	 * Class constructor
 	 *
@@ -326,6 +381,15 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 			endTransaction();
 		}
 
+		// Discard any queued response data, wakeup waiting writers
+
+		synchronized ( m_writeQueue) {
+			m_writeQueue.clear();
+			m_queuedBytes = 0;
+
+			m_writeQueue.notifyAll();
+		}
+
 		// Close the socket first, if the client is still connected this should allow the
 		// input/output streams to be closed
 
@@ -848,7 +912,13 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 
             // Check if the response should be encrypted
 
-            if ( m_sslEngine != null) {
+            if ( m_sslEngine != null && m_channel != null) {
+
+                // Encrypt the response and write to the socket channel
+
+                wrapChannelData( m_sslEngine, ByteBuffer.wrap( msg.getBytes()));
+            }
+            else if ( m_sslEngine != null) {
 
                 // Encrypt the response
 
@@ -2093,42 +2163,16 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 				return;
 			}
 
-			// Allocate the buffer for the file data
-
-			byte[] buf = new byte[DEFAULT_BUFFERSIZE];
-			long filePos = m_restartPos;
+			// Check if the file data can be sent directly from the local file to the data connection, else
+			// copy the file data via a transfer buffer
 
-			int len = -1;
 			boolean abort = false;
+			SocketChannel dataChannel = m_dataSess.getSocketChannel();
 
-			while (filePos < netFile.getFileSize() && abort == false) {
-
-				// Read another block of data from the file
-
-				len = disk.readFile(this, tree, netFile, buf, 0, buf.length, filePos);
-
-				// DEBUG
-
-				if ( Debug.EnableInfo && hasDebug(DBG_FILEIO))
-					debugPrintln(" Write len=" + len + " bytes");
-
-				// Write the current data block to the client, update the file position
-
-				if ( len > 0) {
-
-					// Write the data to the client
-
-					os.write(buf, 0, len);
-
-					// Update the file position
-
-					filePos += len;
-
-					// Check if the transfer has been aborted
-
-					abort = checkForAbort();
-				}
-			}
+			if ( dataChannel != null && netFile instanceof FileChannelInterface)
+				abort = sendFileChannel(((FileChannelInterface) netFile).getFileChannel(), dataChannel, m_restartPos);
+			else
+				abort = sendFileData(disk, tree, netFile, os, m_restartPos);
 
 			// Close the output stream to the client
 
@@ -2220,6 +2264,133 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 		}
 	}
 
+	/**
+	 * Send file data to the client by reading the file via the disk interface, and writing the data to the
+	 * data connection using a transfer buffer
+	 *
+	 * @param disk DiskInterface
+	 * @param tree TreeConnection
+	 * @param netFile NetworkFile
+	 * @param os OutputStream
+	 * @param filePos long
+	 * @return boolean true if the transfer was aborted
+	 * @exception IOException
+	 */
+	private final boolean sendFileData(DiskInterface disk, TreeConnection tree, NetworkFile netFile, OutputStream os, long filePos)
+		throws IOException {
+
+		// Allocate the buffer for the file data
+
+		byte[] buf = allocateTransferBuffer();
+
+		try {
+			int len = -1;
+			boolean abort = false;
+
+			while (filePos < netFile.getFileSize() && abort == false) {
+
+				// Read another block of data from the file
+
+				len = disk.readFile(this, tree, netFile, buf, 0, buf.length, filePos);
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug(DBG_FILEIO))
+					debugPrintln(" Write len=" + len + " bytes");
+
+				// Write the current data block to the client, update the file position
+
+				if ( len > 0) {
+
+					// Write the data to the client
+
+					os.write(buf, 0, len);
+
+					// Update the file position
+
+					filePos += len;
+
+					// Check if the transfer has been aborted
+
+					abort = checkForAbort();
+				}
+			}
+
+			return abort;
+		}
+		finally {
+
+			// Release the transfer buffer
+
+			releaseTransferBuffer(buf);
+		}
+	}
+
+	/**
+	 * Send file data to the client directly from the local file channel to the data connection socket
+	 * channel, the data is not copied via a transfer buffer
+	 *
+	 * @param fileChannel FileChannel
+	 * @param dataChannel SocketChannel
+	 * @param filePos long
+	 * @return boolean true if the transfer was aborted
+	 * @exception IOException
+	 */
+	private final boolean sendFileChannel(FileChannel fileChannel, SocketChannel dataChannel, long filePos)
+		throws IOException {
+
+		// Send the file data in chunks so that the command connection can be checked for an abort
+
+		long fileSize = fileChannel.size();
+		boolean abort = false;
+
+		while (filePos < fileSize && abort == false) {
+
+			// Transfer the next chunk of file data to the client
+
+			long len = fileChannel.transferTo(filePos, Math.min(fileSize - filePos, DIRECT_TRANSFERSIZE), dataChannel);
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug(DBG_FILEIO))
+				debugPrintln(" Transfer len=" + len + " bytes");
+
+			// Check if the file has been truncated during the transfer
+
+			if ( len <= 0)
+				break;
+
+			// Update the file position, check if the transfer has been aborted
+
+			filePos += len;
+			abort = checkForAbort();
+		}
+
+		return abort;
+	}
+
+	/**
+	 * Allocate a file transfer buffer, from the server buffer pool if available
+	 *
+	 * @return byte[]
+	 */
+	private final byte[] allocateTransferBuffer() {
+
+		// Allocate a pooled buffer, if all pooled buffers are in use the server allocates a buffer for this
+		// transfer that is not added to the pool when released
+
+		return getFTPServer().allocateTransferBuffer();
+	}
+
+	/**
+	 * Release a file transfer buffer
+	 *
+	 * @param buf byte[]
+	 */
+	private final void releaseTransferBuffer(byte[] buf) {
+		getFTPServer().releaseTransferBuffer(buf);
+	}
+
 	/**
 	 * Process a store file command
 	 *
@@ -2304,6 +2475,8 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 
 	        // Transaction begins in the innards of 'disk'
 
+	        byte[] xferBuf = null;
+
 	        try
 	        {
 	            // Are we opening an existing file or creating a new one?
@@ -2364,7 +2537,9 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 
 	            // Allocate the buffer for the file data
 
-	            byte[] buf = new byte[DEFAULT_BUFFERSIZE];
+	            xferBuf = allocateTransferBuffer();
+
+	            byte[] buf = xferBuf;
 	            long filePos = 0;
 	            int len = is.read(buf, 0, buf.length);
 	            boolean abort = false;
@@ -2423,6 +2598,11 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	        }
 	        finally
 	        {
+	            // Release the transfer buffer
+
+	            if ( xferBuf != null)
+	                releaseTransferBuffer(xferBuf);
+
 	            endTransaction();
 	        }
 	    }
@@ -3963,7 +4143,17 @@ public class FTPSrvSession extends SrvSession implements Runnable {
     	// Close the SSL engine
 
         m_sslEngine.closeOutbound();
-    	getSSLCommand( m_inbuf, 0);
+
+        if ( m_channel != null) {
+
+        	// Send the close notification, the client close notification is consumed when received
+
+        	wrapChannelData( m_sslEngine, ByteBuffer.allocate( 0));
+        	if ( m_sslEngine.isInboundDone() == false)
+        		m_sslClosing = m_sslEngine;
+        }
+        else
+        	getSSLCommand( m_inbuf, 0);
 
         // Release resources used by the secure connection
 
@@ -3972,6 +4162,12 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 
         m_sslIn  = null;
         m_sslOut = null;
+
+        m_sslNetOut = null;
+        if ( m_sslClosing == null) {
+        	m_sslNetIn = null;
+        	m_sslAppIn = null;
+        }
     }
 
 	/**
@@ -4398,6 +4594,11 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	 */
 	private final boolean checkForAbort() {
 
+		// Check for an abort on a socket channel session
+
+		if ( m_channel != null)
+			return checkChannelForAbort();
+
 		try {
 
 			// Check if there is any pending data on the command socket
@@ -4858,6 +5059,14 @@ public class FTPSrvSession extends SrvSession implements Runnable {
         if ( m_inbuf.length < sslSess.getApplicationBufferSize())
             m_inbuf = new byte[sslSess.getApplicationBufferSize()];
         m_sslIn = ByteBuffer.wrap( m_inbuf);
+
+        // Allocate the buffers used by the non-blocking SSL engine processing for a socket channel session
+
+        if ( m_channel != null) {
+        	m_sslNetIn  = ByteBuffer.allocate( sslSess.getPacketBufferSize());
+        	m_sslNetOut = ByteBuffer.allocate( sslSess.getPacketBufferSize());
+        	m_sslAppIn  = ByteBuffer.allocate( sslSess.getApplicationBufferSize() + 50);
+        }
 	}
 
 	/**
@@ -5005,341 +5214,1088 @@ public class FTPSrvSession extends SrvSession implements Runnable {
 	}
 
 	/**
-	 * Start the FTP session in a seperate thread
+	 * Process an FTP command
+	 *
+	 * @param ftpReq FTPRequest
+	 * @exception IOException
 	 */
-	public void run() {
+	protected final void processCommand(FTPRequest ftpReq)
+		throws IOException {
 
-		try {
+		// Start/end times if timing debug is enabled
 
-			// Debug
+		long startTime = 0L;
+		long endTime = 0L;
 
-			if ( Debug.EnableInfo && hasDebug(DBG_STATE))
-				debugPrintln("FTP session started");
+		// Debug
 
-			// Create the input/output streams
+		if ( Debug.EnableInfo && hasDebug(DBG_TIMING))
+			startTime = System.currentTimeMillis();
 
-			m_in = m_sock.getInputStream();
-			m_out = new OutputStreamWriter(m_sock.getOutputStream());
+		if ( Debug.EnableInfo && hasDebug(DBG_RXDATA))
+			debugPrintln("Rx cmd=" + ftpReq);
 
-			m_inbuf = new byte[DefCommandBufSize];
+		// Start time if server metrics are enabled
 
-			// Return the initial response
+		MetricsRegistry metrics = getFTPServer().getMetrics();
+		long metricsStart = metrics != null ? System.nanoTime() : 0L;
 
-			sendFTPResponse(220, "FTP server ready");
+		// Parse the received command, and validate
 
-			// Start/end times if timing debug is enabled
+		switch (ftpReq.isCommand()) {
 
-			long startTime = 0L;
-			long endTime = 0L;
+			// User command
 
-			// The server session loops until the NetBIOS hangup state is set.
+			case FTPCommand.User:
+				procUser(ftpReq);
+				break;
 
-			FTPRequest ftpReq = null;
+			// Password command
 
-			while (m_sock != null) {
+			case FTPCommand.Pass:
+				procPassword(ftpReq);
+				break;
 
-				// Wait for a request
+			// Quit command
 
-				ftpReq = getNextCommand(true);
-				if ( ftpReq == null)
-					continue;
+			case FTPCommand.Quit:
+				procQuit(ftpReq);
+				break;
 
-				// Debug
+			// Type command
 
-				if ( Debug.EnableInfo && hasDebug(DBG_TIMING))
-					startTime = System.currentTimeMillis();
+			case FTPCommand.Type:
+				procType(ftpReq);
+				break;
 
-				if ( Debug.EnableInfo && hasDebug(DBG_RXDATA))
-					debugPrintln("Rx cmd=" + ftpReq);
+			// Port command
 
-				// Parse the received command, and validate
+			case FTPCommand.Port:
+				procPort(ftpReq);
+				break;
 
-				switch (ftpReq.isCommand()) {
+			// Passive command
 
-					// User command
+			case FTPCommand.Pasv:
+				procPassive(ftpReq);
+				break;
 
-					case FTPCommand.User:
-						procUser(ftpReq);
-						break;
+			// Restart position command
 
-					// Password command
+			case FTPCommand.Rest:
+				procRestart(ftpReq);
+				break;
 
-					case FTPCommand.Pass:
-						procPassword(ftpReq);
-						break;
+			// Return file command
 
-					// Quit command
+			case FTPCommand.Retr:
+				procReturnFile(ftpReq);
 
-					case FTPCommand.Quit:
-						procQuit(ftpReq);
-						break;
+				// Reset the restart position
 
-					// Type command
+				m_restartPos = 0;
+				break;
 
-					case FTPCommand.Type:
-						procType(ftpReq);
-						break;
+			// Store file command
 
-					// Port command
+			case FTPCommand.Stor:
+				procStoreFile(ftpReq, false);
+				break;
 
-					case FTPCommand.Port:
-						procPort(ftpReq);
-						break;
+			// Append file command
 
-					// Passive command
+			case FTPCommand.Appe:
+				procStoreFile(ftpReq, true);
+				break;
 
-					case FTPCommand.Pasv:
-						procPassive(ftpReq);
-						break;
+			// Print working directory command
 
-					// Restart position command
+			case FTPCommand.Pwd:
+			case FTPCommand.XPwd:
+				procPrintWorkDir(ftpReq);
+				break;
 
-					case FTPCommand.Rest:
-						procRestart(ftpReq);
-						break;
+			// Change working directory command
 
-					// Return file command
+			case FTPCommand.Cwd:
+			case FTPCommand.XCwd:
+				procChangeWorkDir(ftpReq);
+				break;
 
-					case FTPCommand.Retr:
-						procReturnFile(ftpReq);
+			// Change to previous directory command
 
-						// Reset the restart position
+			case FTPCommand.Cdup:
+			case FTPCommand.XCup:
+				procCdup(ftpReq);
+				break;
 
-						m_restartPos = 0;
-						break;
+			// Full directory listing command
 
-					// Store file command
+			case FTPCommand.List:
+				procList(ftpReq);
+				break;
 
-					case FTPCommand.Stor:
-						procStoreFile(ftpReq, false);
-						break;
+			// Short directory listing command
 
-					// Append file command
+			case FTPCommand.Nlst:
+				procNList(ftpReq);
+				break;
 
-					case FTPCommand.Appe:
-						procStoreFile(ftpReq, true);
-						break;
+			// Delete file command
 
-					// Print working directory command
+			case FTPCommand.Dele:
+				procDeleteFile(ftpReq);
+				break;
 
-					case FTPCommand.Pwd:
-					case FTPCommand.XPwd:
-						procPrintWorkDir(ftpReq);
-						break;
+			// Rename file from command
 
-					// Change working directory command
+			case FTPCommand.Rnfr:
+				procRenameFrom(ftpReq);
+				break;
 
-					case FTPCommand.Cwd:
-					case FTPCommand.XCwd:
-						procChangeWorkDir(ftpReq);
-						break;
+			// Rename file to comand
 
-					// Change to previous directory command
+			case FTPCommand.Rnto:
+				procRenameTo(ftpReq);
+				break;
 
-					case FTPCommand.Cdup:
-					case FTPCommand.XCup:
-						procCdup(ftpReq);
-						break;
+			// Create new directory command
 
-					// Full directory listing command
+			case FTPCommand.Mkd:
+			case FTPCommand.XMkd:
+				procCreateDirectory(ftpReq);
+				break;
 
-					case FTPCommand.List:
-						procList(ftpReq);
-						break;
+			// Delete directory command
 
-					// Short directory listing command
+			case FTPCommand.Rmd:
+			case FTPCommand.XRmd:
+				procRemoveDirectory(ftpReq);
+				break;
 
-					case FTPCommand.Nlst:
-						procNList(ftpReq);
-						break;
+			// Return file size command
 
-					// Delete file command
+			case FTPCommand.Size:
+				procFileSize(ftpReq);
+				break;
 
-					case FTPCommand.Dele:
-						procDeleteFile(ftpReq);
-						break;
+			// Return the modification date/time
 
-					// Rename file from command
+			case FTPCommand.Mdtm:
+				procGetModifyDateTime(ftpReq);
+				break;
 
-					case FTPCommand.Rnfr:
-						procRenameFrom(ftpReq);
-						break;
+			// Set modify date/time command
 
-					// Rename file to comand
+			case FTPCommand.Mfmt:
+				procModifyDateTime(ftpReq);
+				break;
 
-					case FTPCommand.Rnto:
-						procRenameTo(ftpReq);
-						break;
+			// System status command
 
-					// Create new directory command
+			case FTPCommand.Syst:
+				procSystemStatus(ftpReq);
+				break;
 
-					case FTPCommand.Mkd:
-					case FTPCommand.XMkd:
-						procCreateDirectory(ftpReq);
-						break;
+			// Server status command
 
-					// Delete directory command
+			case FTPCommand.Stat:
+				procServerStatus(ftpReq);
+				break;
 
-					case FTPCommand.Rmd:
-					case FTPCommand.XRmd:
-						procRemoveDirectory(ftpReq);
-						break;
+			// Help command
 
-					// Return file size command
+			case FTPCommand.Help:
+				procHelp(ftpReq);
+				break;
 
-					case FTPCommand.Size:
-						procFileSize(ftpReq);
-						break;
+			// No-op command
 
-					// Return the modification date/time
+			case FTPCommand.Noop:
+				procNoop(ftpReq);
+				break;
 
-					case FTPCommand.Mdtm:
-						procGetModifyDateTime(ftpReq);
-						break;
+			// Abort command
 
-					// Set modify date/time command
+			case FTPCommand.Abor:
+				procAbort(ftpReq);
+				break;
 
-					case FTPCommand.Mfmt:
-						procModifyDateTime(ftpReq);
-						break;
+			// Server features command
 
-					// System status command
+			case FTPCommand.Feat:
+				procFeatures(ftpReq);
+				break;
 
-					case FTPCommand.Syst:
-						procSystemStatus(ftpReq);
-						break;
+			// Options command
 
-					// Server status command
+			case FTPCommand.Opts:
+				procOptions(ftpReq);
+				break;
 
-					case FTPCommand.Stat:
-						procServerStatus(ftpReq);
-						break;
+			// Machine listing, single folder
 
-					// Help command
+			case FTPCommand.MLst:
+				procMachineListing(ftpReq);
+				break;
 
-					case FTPCommand.Help:
-						procHelp(ftpReq);
-						break;
+			// Machine listing, folder contents
 
-					// No-op command
+			case FTPCommand.MLsd:
+				procMachineListingContents(ftpReq);
+				break;
 
-					case FTPCommand.Noop:
-						procNoop(ftpReq);
-						break;
+			// Site specific commands
 
-					// Abort command
+			case FTPCommand.Site:
+				procSite(ftpReq);
+				break;
 
-					case FTPCommand.Abor:
-						procAbort(ftpReq);
-						break;
+			// Structure command (obsolete)
 
-					// Server features command
+			case FTPCommand.Stru:
+				procStructure(ftpReq);
+				break;
 
-					case FTPCommand.Feat:
-						procFeatures(ftpReq);
-						break;
+			// Mode command (obsolete)
 
-					// Options command
+			case FTPCommand.Mode:
+				procMode(ftpReq);
+				break;
 
-					case FTPCommand.Opts:
-						procOptions(ftpReq);
-						break;
+			// Allocate command (obsolete)
 
-					// Machine listing, single folder
+			case FTPCommand.Allo:
+				procAllocate(ftpReq);
+				break;
 
-					case FTPCommand.MLst:
-						procMachineListing(ftpReq);
-						break;
+			// Extended Port command
 
-					// Machine listing, folder contents
+			case FTPCommand.EPrt:
+				procExtendedPort(ftpReq);
+				break;
 
-					case FTPCommand.MLsd:
-						procMachineListingContents(ftpReq);
-						break;
+			// Extended Passive command
 
-					// Site specific commands
+			case FTPCommand.EPsv:
+				procExtendedPassive(ftpReq);
+				break;
 
-					case FTPCommand.Site:
-						procSite(ftpReq);
-						break;
+			// SSL/TLS authentication
 
-					// Structure command (obsolete)
+			case FTPCommand.Auth:
+				procAuth(ftpReq);
+				break;
 
-					case FTPCommand.Stru:
-						procStructure(ftpReq);
-						break;
+			// Protected buffer size
 
-					// Mode command (obsolete)
+			case FTPCommand.Pbsz:
+			    procProtectedBufferSize( ftpReq);
+			    break;
 
-					case FTPCommand.Mode:
-						procMode(ftpReq);
-						break;
+			// Data channel protection level
 
-					// Allocate command (obsolete)
+			case FTPCommand.Prot:
+			    procDataChannelProtection( ftpReq);
+			    break;
 
-					case FTPCommand.Allo:
-						procAllocate(ftpReq);
-						break;
+			// Clear command channel
 
-					// Extended Port command
+			case FTPCommand.Ccc:
+				procClearCommandChannel( ftpReq);
+				break;
 
-					case FTPCommand.EPrt:
-						procExtendedPort(ftpReq);
-						break;
+			// Unknown/unimplemented command
 
-					// Extended Passive command
+			default:
+				if ( ftpReq.isCommand() != FTPCommand.InvalidCmd)
+					sendFTPResponse(502, "Command " + FTPCommand.getCommandName(ftpReq.isCommand()) + " not implemented");
+				else
+					sendFTPResponse(502, "Command not implemented");
+				break;
+		}
 
-					case FTPCommand.EPsv:
-						procExtendedPassive(ftpReq);
-						break;
+		// Debug
+
+		if ( Debug.EnableInfo && hasDebug(DBG_TIMING)) {
+			endTime = System.currentTimeMillis();
+			long duration = endTime - startTime;
+			if ( duration > 20)
+				debugPrintln("Processed cmd " + FTPCommand.getCommandName(ftpReq.isCommand()) + " in " + duration + "ms");
+		}
 
-					// SSL/TLS authentication
+		// Record the command time
 
-					case FTPCommand.Auth:
-						procAuth(ftpReq);
-						break;
+		if ( metrics != null)
+			metrics.recordTime( MetricsRegistry.GroupFTP, FTPCommand.getCommandName(ftpReq.isCommand()), System.nanoTime() - metricsStart);
 
-					// Protected buffer size
+		// Commit/rollback a transaction that the filesystem driver may have stored in the
+		// session
 
-					case FTPCommand.Pbsz:
-					    procProtectedBufferSize( ftpReq);
-					    break;
+		endTransaction();
+	}
 
-					// Data channel protection level
+	/**
+	 * Check if the session is driven by an FTP request handler using a socket channel
+	 *
+	 * @return boolean
+	 */
+	public final boolean isNIOSession() {
+		return m_channel != null ? true : false;
+	}
 
-					case FTPCommand.Prot:
-					    procDataChannelProtection( ftpReq);
-					    break;
+	/**
+	 * Return the control connection socket channel
+	 *
+	 * @return SocketChannel
+	 */
+	protected final SocketChannel getSocketChannel() {
+		return m_channel;
+	}
 
-					// Clear command channel
+	/**
+	 * Set the selection key for the socket channel, the channel must be in non-blocking mode
+	 *
+	 * @param selKey SelectionKey
+	 */
+	protected final void setSelectionKey(SelectionKey selKey) {
+		m_selectionKey = selKey;
+	}
 
-					case FTPCommand.Ccc:
-						procClearCommandChannel( ftpReq);
-						break;
+	/**
+	 * Start a session that will be driven by an FTP request handler. The socket channel should be in blocking mode,
+	 * the initial response is sent to the client.
+	 *
+	 * @exception IOException
+	 */
+	protected final void startNIOSession()
+		throws IOException {
 
-					// Unknown/unimplemented command
+		// Debug
 
-					default:
-						if ( ftpReq.isCommand() != FTPCommand.InvalidCmd)
-							sendFTPResponse(502, "Command " + FTPCommand.getCommandName(ftpReq.isCommand()) + " not implemented");
-						else
-							sendFTPResponse(502, "Command not implemented");
-						break;
-				}
+		if ( Debug.EnableInfo && hasDebug(DBG_STATE))
+			debugPrintln("FTP session started (NIO)");
 
-				// Debug
+		// Get the socket channel, and create the output stream to the client
 
-				if ( Debug.EnableInfo && hasDebug(DBG_TIMING)) {
-					endTime = System.currentTimeMillis();
-					long duration = endTime - startTime;
-					if ( duration > 20)
-						debugPrintln("Processed cmd " + FTPCommand.getCommandName(ftpReq.isCommand()) + " in " + duration + "ms");
-				}
+		m_channel = m_sock.getChannel();
+		if ( m_channel == null)
+			throw new IOException("Session socket does not have a channel");
+
+		m_out = new OutputStreamWriter(new ChannelOutputStream());
+
+		m_inbuf  = new byte[DefCommandBufSize];
+		m_cmdBuf = ByteBuffer.allocate(DefCommandBufSize);
+
+		// Return the initial response
+
+		sendFTPResponse(220, "FTP server ready");
+	}
+
+	/**
+	 * Read and process the FTP commands that are available on the socket channel, called by a thread pool
+	 * thread when the FTP request handler detects data on the channel. Data transfer commands are not run using
+	 * the core thread pool, the data transfer and any following commands are queued to the transfer thread pool.
+	 *
+	 * @param xferThread boolean true if called by a transfer thread pool thread
+	 * @return int ChannelActive, ChannelClosed if the session has been closed, or ChannelTransfer if the remaining
+	 *         commands have been queued to the transfer thread pool
+	 */
+	protected final int processChannelRequests(boolean xferThread) {
+
+		try {
+
+			// Read the available data, queue any complete commands
+
+			if ( readChannelCommands() == false) {
+
+				// DEBUG
+
+				if ( Debug.EnableWarn && hasDebug(DBG_STATE))
+					debugPrintln("Socket closed by remote client");
+
+				closeSession();
+			}
+
+			// Process the queued commands
+
+			while ( m_sock != null && m_ftpCmdList.size() > 0) {
+
+				// Check if the next command is a data transfer, queue the remaining commands to the transfer thread
+				// pool so that the transfer does not block a core thread pool thread
+
+				FTPRequest ftpReq = m_ftpCmdList.get(0);
+
+				if ( xferThread == false && FTPCommand.isDataTransfer(ftpReq.isCommand()) &&
+						getFTPServer().getTransferThreadPool() != null) {
+
+					// DEBUG
+
+					if ( Debug.EnableInfo && hasDebug(DBG_DATAPORT))
+						debugPrintln("Queueing data transfer " + FTPCommand.getCommandName(ftpReq.isCommand()) + " to transfer thread pool");
+
+					getFTPServer().getTransferThreadPool().queueRequest(new FTPThreadRequest(this, m_selectionKey, true));
+					return ChannelTransfer;
+				}
+
+				// Process the next command
+
+				m_ftpCmdList.remove(0);
+				processCommand(ftpReq);
+
+				// Queue any further commands that were left in the command buffer when the command queue was full
+
+				if ( m_ftpCmdList.size() == 0 && m_sock != null && m_cmdBuf != null)
+					parseCommandBuffer();
+			}
+		}
+		catch (SocketException ex) {
+
+			// DEBUG
+
+			if ( Debug.EnableWarn && hasDebug(DBG_STATE))
+				debugPrintln("Socket closed by remote client");
+
+			closeSession();
+		}
+		catch (Exception ex) {
+
+			// Output the exception details
+
+			if ( isShutdown() == false)
+				debugPrintln(ex);
+
+			closeSession();
+		}
+
+		// Return the session status
+
+		return m_sock != null ? ChannelActive : ChannelClosed;
+	}
+
+	/**
+	 * Read the available data from the socket channel, decrypt the data if the session is in SSL/TLS mode, and
+	 * queue any complete commands to the pending command list. Reading stops when the command list is full, the
+	 * remaining data is read once the queued commands have been processed.
+	 *
+	 * @return boolean false if the client has closed the connection
+	 * @exception IOException
+	 */
+	private final boolean readChannelCommands()
+		throws IOException {
+
+		// Queue any commands left in the command buffer by a previous read
+
+		parseCommandBuffer();
+
+		// Read until there is no more data available on the channel, or the command list is full
+
+		int rdlen = 0;
+
+		do {
+
+			// Check if the command list is full
+
+			if ( m_ftpCmdList.size() >= MaxQueuedCommands)
+				break;
+
+			// Read encrypted data into the SSL receive buffer, or clear text data directly into the command buffer
+
+			boolean sslData = ( m_sslEngine != null || m_sslClosing != null) ? true : false;
+			ByteBuffer rxBuf = sslData ? m_sslNetIn : m_cmdBuf;
+
+			if ( sslData == false && m_cmdBuf.hasRemaining() == false)
+				extendCommandBuffer( 1);
+
+			rdlen = m_channel.read(rxBuf);
+
+			// Check if the client has closed the connection
+
+			if ( rdlen == -1)
+				return false;
+			else if ( rdlen > 0) {
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug(DBG_RXDATA))
+					debugPrintln("Read " + rdlen + " bytes from channel" + (sslData ? " (SSL)" : ""));
+
+				// Decrypt SSL/TLS data into the command buffer
+
+				if ( sslData && unwrapChannelData() == false)
+					return false;
+
+				// Queue any complete commands
+
+				parseCommandBuffer();
+			}
+
+		} while ( rdlen > 0);
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug(DBG_RXDATA) && m_ftpCmdList.size() >= MaxQueuedCommands)
+			debugPrintln("Command queue full, queued=" + m_ftpCmdList.size());
+
+		// Connection still open
+
+		return true;
+	}
+
+	/**
+	 * Parse complete commands from the command buffer, and add them to the pending command list. Partial commands
+	 * are left in the buffer until the remaining data is received, and parsing stops when the command list is full.
+	 *
+	 * @exception IOException
+	 */
+	private final void parseCommandBuffer()
+		throws IOException {
+
+		// Search for <LF> terminated commands in the received data
+
+		byte[] buf = m_cmdBuf.array();
+		int endPos = m_cmdBuf.position();
+		int cmdStart = 0;
+
+		for ( int pos = 0; pos < endPos && m_ftpCmdList.size() < MaxQueuedCommands; pos++) {
+
+			if ( buf[pos] == '\n') {
+
+				// Trim the trailing <CR><LF>
+
+				int cmdEnd = pos;
+				while ( cmdEnd > cmdStart && ( buf[cmdEnd - 1] == '\r' || buf[cmdEnd - 1] == '\n'))
+					cmdEnd--;
+
+				// Get the command string, create the new request
+
+				if ( cmdEnd > cmdStart) {
+
+					String cmd = null;
+
+					if ( isUTF8Enabled())
+						cmd = m_normalizer.normalize(new String(buf, cmdStart, cmdEnd - cmdStart, "UTF8"));
+					else
+						cmd = new String(buf, cmdStart, cmdEnd - cmdStart);
+
+					m_ftpCmdList.add(new FTPRequest(cmd));
+				}
+
+				// Move to the next command
+
+				cmdStart = pos + 1;
+			}
+		}
+
+		// Remove the parsed commands from the buffer, keep any partial command
+
+		if ( cmdStart > 0) {
+			m_cmdBuf.flip();
+			m_cmdBuf.position(cmdStart);
+			m_cmdBuf.compact();
+		}
+	}
+
+	/**
+	 * Make sure there is space in the command buffer for more data, the command buffer is extended up to the maximum
+	 * command size. If the buffer is already at the maximum size the partial command is discarded.
+	 *
+	 * @param len int
+	 */
+	private final void extendCommandBuffer(int len) {
+
+		// Check if there is enough space in the buffer
+
+		if ( m_cmdBuf.remaining() >= len)
+			return;
+
+		// Check if the command buffer has already been extended to the maximum size
+
+		int newLen = Math.max( m_cmdBuf.capacity() * 2, m_cmdBuf.position() + len + 50);
+		if ( newLen > MaxCommandBufSize)
+			newLen = MaxCommandBufSize;
+
+		if ( newLen >= m_cmdBuf.position() + len) {
+
+			// Allocate a new buffer and copy the existing data over to it
+
+			ByteBuffer newBuf = ByteBuffer.allocate(newLen);
+			m_cmdBuf.flip();
+			newBuf.put(m_cmdBuf);
+			m_cmdBuf = newBuf;
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug(DBG_RXDATA))
+				debugPrintln("Extended command buffer to " + m_cmdBuf.capacity() + " bytes");
+		}
+		else {
+
+			// Command is too large, discard it
+
+			m_cmdBuf.clear();
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug(DBG_RXDATA))
+				debugPrintln("Received command too large, ignored");
+		}
+	}
+
+	/**
+	 * Decrypt the received SSL/TLS data into the command buffer, and process any SSL handshake steps. Processing stops
+	 * when the SSL engine needs more data from the client.
+	 *
+	 * @return boolean false if the SSL/TLS session has been closed by the client
+	 * @exception IOException
+	 */
+	private final boolean unwrapChannelData()
+		throws IOException {
+
+		// Get the active SSL engine, or the engine being closed by a CCC command
+
+		SSLEngine sslEngine = m_sslEngine != null ? m_sslEngine : m_sslClosing;
+		boolean sessOpen = true;
+		boolean loopDone = false;
+
+		m_sslNetIn.flip();
+
+		try {
+
+			while ( loopDone == false) {
+
+				switch ( sslEngine.getHandshakeStatus()) {
+
+					// Run the SSL engine tasks in the current thread
+
+					case NEED_TASK:
+						Runnable task = null;
+						while (( task = sslEngine.getDelegatedTask()) != null)
+							task.run();
+						break;
+
+					// Send handshake data to the client
+
+					case NEED_WRAP:
+						SSLEngineResult wrapRes = wrapChannelData( sslEngine, ByteBuffer.allocate( 0));
+						if ( wrapRes.bytesProduced() == 0)
+							loopDone = true;
+						break;
+
+					// Unwrap the next record from the received data
+
+					default:
+
+						// Check if there is any more data to process
+
+						if ( m_sslNetIn.hasRemaining() == false) {
+							loopDone = true;
+							break;
+						}
+
+						m_sslAppIn.clear();
+						SSLEngineResult sslRes = sslEngine.unwrap( m_sslNetIn, m_sslAppIn);
+
+						// DEBUG
+
+						if ( Debug.EnableDbg && hasDebug(DBG_SSL))
+							debugPrintln("SSL unwrap() returned " + sslRes.bytesProduced() + " bytes, res=" + sslRes);
+
+						switch ( sslRes.getStatus()) {
+
+							// Decrypted data is added to the command buffer
+
+							case OK:
+								m_sslAppIn.flip();
+								if ( m_sslAppIn.hasRemaining()) {
+									extendCommandBuffer( m_sslAppIn.remaining());
+									if ( m_cmdBuf.remaining() >= m_sslAppIn.remaining())
+										m_cmdBuf.put( m_sslAppIn);
+								}
+								break;
+
+							// Need more data from the client to unwrap the next record
+
+							case BUFFER_UNDERFLOW:
+								loopDone = true;
+								break;
+
+							// SSL session closed
+
+							case CLOSED:
+
+								if ( sslEngine == m_sslClosing) {
+
+									// Command channel has been switched to clear text, any remaining data is a clear text command
+
+									m_sslClosing = null;
+
+									if ( m_sslNetIn.hasRemaining()) {
+										extendCommandBuffer( m_sslNetIn.remaining());
+										if ( m_cmdBuf.remaining() >= m_sslNetIn.remaining())
+											m_cmdBuf.put( m_sslNetIn);
+									}
+								}
+								else
+									sessOpen = false;
+
+								loopDone = true;
+								break;
+
+							// Decrypted data buffer too small
+
+							default:
+								throw new IOException("SSL unwrap failed, status=" + sslRes.getStatus());
+						}
+						break;
+				}
+			}
+		}
+		finally {
+
+			// Keep any partial SSL record for the next read
+
+			if ( m_sslNetIn != null)
+				m_sslNetIn.compact();
+		}
+
+		// Release the SSL buffers if the CCC close has completed
+
+		if ( m_sslEngine == null && m_sslClosing == null) {
+			m_sslNetIn  = null;
+			m_sslAppIn  = null;
+		}
+
+		return sessOpen;
+	}
+
+	/**
+	 * Encrypt data using the SSL engine and write the encrypted data to the socket channel
+	 *
+	 * @param sslEngine SSLEngine
+	 * @param src ByteBuffer
+	 * @return SSLEngineResult
+	 * @exception IOException
+	 */
+	private final SSLEngineResult wrapChannelData(SSLEngine sslEngine, ByteBuffer src)
+		throws IOException {
+
+		// Make sure there is an encrypted data buffer, the CCC command releases the buffer
+
+		if ( m_sslNetOut == null)
+			m_sslNetOut = ByteBuffer.allocate( sslEngine.getSession().getPacketBufferSize());
+
+		SSLEngineResult sslRes = null;
+
+		do {
+
+			// Encrypt the next block of data
+
+			m_sslNetOut.clear();
+			sslRes = sslEngine.wrap( src, m_sslNetOut);
+
+			// DEBUG
+
+			if ( Debug.EnableDbg && hasDebug(DBG_SSL))
+				debugPrintln("SSL wrap() returned " + sslRes.bytesProduced() + " bytes, res=" + sslRes);
+
+			// Run any SSL engine tasks in the current thread
+
+			if ( sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+				Runnable task = null;
+				while (( task = sslEngine.getDelegatedTask()) != null)
+					task.run();
+			}
+
+			// Send the encrypted data to the client
+
+			m_sslNetOut.flip();
+			writeChannelData( m_sslNetOut);
+
+		} while ( src.hasRemaining() && sslRes.getStatus() == SSLEngineResult.Status.OK);
+
+		return sslRes;
+	}
+
+	/**
+	 * Write data to the socket channel. Once the channel is registered with the request handler selector the channel
+	 * is non-blocking, data that cannot be written immediately is queued and sent by the request handler thread when
+	 * the channel is writeable.
+	 *
+	 * @param buf ByteBuffer
+	 * @exception IOException
+	 */
+	private final void writeChannelData(ByteBuffer buf)
+		throws IOException {
+
+		// Check if the channel is registered with a selector
+
+		if ( m_selectionKey == null) {
+
+			// Blocking write
+
+			while ( buf.hasRemaining())
+				m_channel.write( buf);
+			return;
+		}
+
+		synchronized ( m_writeQueue) {
+
+			// Wait if the write queue has reached the limit, the client is not reading the responses. Fail the write
+			// if the client does not read the responses within the timeout, the session will be closed.
+
+			long timeoutAt = System.currentTimeMillis() + WriteQueueTimeout;
+
+			while ( m_queuedBytes >= MaxQueuedWriteBytes) {
+
+				if ( m_channel.isOpen() == false)
+					throw new IOException("Socket channel closed");
+
+				if ( System.currentTimeMillis() >= timeoutAt)
+					throw new IOException("Timeout waiting for client to read responses");
+
+				try {
+					m_writeQueue.wait( WriteQueueWait);
+				}
+				catch ( InterruptedException ex) {
+				}
+			}
+
+			// If there is no queued data then write directly to the channel, until the socket send buffer is full
+
+			if ( m_writeQueue.isEmpty()) {
+				while ( buf.hasRemaining() && m_channel.write( buf) > 0);
+			}
+
+			// Queue a copy of any remaining data, the caller may reuse the buffer
+
+			if ( buf.hasRemaining()) {
+
+				ByteBuffer qbuf = ByteBuffer.allocate( buf.remaining());
+				qbuf.put( buf);
+				qbuf.flip();
+
+				m_writeQueue.add( qbuf);
+				m_queuedBytes += qbuf.remaining();
+
+				if ( m_selectionKey.isValid() == false)
+					throw new IOException("Socket channel closed");
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug(DBG_TXDATA))
+					debugPrintln("Queued write data len=" + qbuf.remaining() + ", queued=" + m_queuedBytes);
+
+				// Enable write events for the channel
+
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_WRITE);
+				}
+				m_selectionKey.selector().wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Return the count of queued writes
+	 *
+	 * @return int
+	 */
+	protected final int getQueuedWriteCount() {
+		synchronized ( m_writeQueue) {
+			return m_writeQueue.size();
+		}
+	}
+
+	/**
+	 * Send queued response data until the socket send buffer is full. Called by the request handler thread when the
+	 * socket channel is writeable, write events are disabled when the queue is empty.
+	 *
+	 * @return int Number of buffers that were removed from the queue
+	 */
+	protected final int processQueuedWrites() {
+
+		int procCnt = 0;
+
+		synchronized ( m_writeQueue) {
+
+			try {
+
+				// Write the queued buffers using gathering writes, until the queue is empty or the socket send
+				// buffer is full
+
+				long wrlen = 1;
+
+				while ( m_writeQueue.isEmpty() == false && wrlen > 0) {
+
+					int bufCnt = Math.min( m_writeQueue.size(), MaxGatherBuffers);
+					ByteBuffer[] bufs = m_writeQueue.subList( 0, bufCnt).toArray( new ByteBuffer[ bufCnt]);
+
+					wrlen = m_channel.write( bufs);
+					m_queuedBytes -= (int) wrlen;
+
+					// Remove the fully written buffers from the queue
+
+					while ( m_writeQueue.isEmpty() == false && m_writeQueue.getFirst().hasRemaining() == false) {
+						m_writeQueue.removeFirst();
+						procCnt++;
+					}
+				}
+			}
+			catch ( IOException ex) {
+
+				// DEBUG
+
+				if ( Debug.EnableDbg && hasDebug(DBG_ERROR))
+					debugPrintln("Failed to write queued data, " + ex.getMessage());
+
+				// Discard the queued data, the session will be closed when the socket read fails
+
+				procCnt += m_writeQueue.size();
+
+				m_writeQueue.clear();
+				m_queuedBytes = 0;
+			}
+
+			// Disable write events when the queue is empty
+
+			if ( m_writeQueue.isEmpty() && m_selectionKey != null && m_selectionKey.isValid()) {
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+				}
+			}
+
+			// Wakeup any writers waiting for the queue to drain
+
+			if ( m_queuedBytes < MaxQueuedWriteBytes)
+				m_writeQueue.notifyAll();
+		}
+
+		// Return the count of queued buffers that were written
+
+		return procCnt;
+	}
+
+	/**
+	 * Check for an abort command on a socket channel session, other commands are queued for processing after the
+	 * current command completes
+	 *
+	 * @return boolean
+	 */
+	private final boolean checkChannelForAbort() {
+
+		try {
+
+			// Read any pending command data, if the connection has been closed then abort the transfer
+
+			if ( readChannelCommands() == false)
+				return true;
+
+			// Check if an abort command has been received
+
+			for ( int idx = 0; idx < m_ftpCmdList.size(); idx++) {
+
+				if ( m_ftpCmdList.get( idx).isCommand() == FTPCommand.Abor) {
+
+					// Remove the abort command
+
+					m_ftpCmdList.remove( idx);
+
+					// DEBUG
+
+					if ( Debug.EnableDbg && hasDebug(DBG_FILEIO))
+						debugPrintln("Transfer aborted by client");
+
+					// Indicate an abort has been received
+
+					return true;
+				}
+			}
+		}
+		catch (IOException ex) {
+
+			// DEBUG
+
+			if ( Debug.EnableDbg && hasDebug(DBG_ERROR))
+				debugPrintln("Error during check for abort, " + ex.getMessage());
+		}
+
+		// No abort command received
+
+		return false;
+	}
+
+	/**
+	 * Channel Output Stream Class
+	 *
+	 * <p>Writes the FTP responses directly to the socket channel.
+	 */
+	private class ChannelOutputStream extends OutputStream {
+
+		/**
+		 * Write a byte to the socket channel
+		 *
+		 * @param byt int
+		 * @exception IOException
+		 */
+		public void write(int byt)
+			throws IOException {
+			write( new byte[] { (byte) byt }, 0, 1);
+		}
+
+		/**
+		 * Write data to the socket channel
+		 *
+		 * @param buf byte[]
+		 * @param off int
+		 * @param len int
+		 * @exception IOException
+		 */
+		public void write(byte[] buf, int off, int len)
+			throws IOException {
+			if ( m_channel != null)
+				writeChannelData( ByteBuffer.wrap( buf, off, len));
+		}
+	}
+
+	/**
+	 * Start the FTP session in a seperate thread
+	 */
+	public void run() {
+
+		try {
+
+			// Debug
+
+			if ( Debug.EnableInfo && hasDebug(DBG_STATE))
+				debugPrintln("FTP session started");
+
+			// Create the input/output streams
+
+			m_in = m_sock.getInputStream();
+			m_out = new OutputStreamWriter(m_sock.getOutputStream());
+
+			m_inbuf = new byte[DefCommandBufSize];
+
+			// Return the initial response
+
+			sendFTPResponse(220, "FTP server ready");
+
+			// The server session loops until the NetBIOS hangup state is set.
+
+			FTPRequest ftpReq = null;
+
+			while (m_sock != null) {
+
+				// Wait for a request
+
+				ftpReq = getNextCommand(true);
+				if ( ftpReq == null)
+					continue;
 
-				// Commit/rollback a transaction that the filesystem driver may have stored in the
-				// session
+				// Process the command
 
-				endTransaction();
+				processCommand(ftpReq);
 
 			} // end while state
 		}
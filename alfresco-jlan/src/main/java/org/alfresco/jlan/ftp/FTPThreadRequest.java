@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.ftp;
+
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+
+import org.alfresco.jlan.server.thread.ThreadRequest;
+
+/**
+ * FTP Thread Request Class
+ *
+ * <p>Processes the commands received on an FTP control connection using a thread pool thread, queued by the
+ * FTP request handler when data is available on the socket channel. Data transfer commands are processed using a
+ * request queued to the FTP server transfer thread pool.
+ *
+ * @author gkspencer
+ */
+public class FTPThreadRequest implements ThreadRequest {
+
+	// FTP session
+
+	private FTPSrvSession m_sess;
+
+	// Selection key for the session socket channel
+
+	private SelectionKey m_selectionKey;
+
+	// Request is run by a transfer thread pool thread
+
+	private boolean m_transfer;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param sess FTPSrvSession
+	 * @param selKey SelectionKey
+	 */
+	public FTPThreadRequest( FTPSrvSession sess, SelectionKey selKey) {
+		m_sess         = sess;
+		m_selectionKey = selKey;
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param sess FTPSrvSession
+	 * @param selKey SelectionKey
+	 * @param transfer boolean
+	 */
+	public FTPThreadRequest( FTPSrvSession sess, SelectionKey selKey, boolean transfer) {
+		m_sess         = sess;
+		m_selectionKey = selKey;
+		m_transfer     = transfer;
+	}
+
+	/**
+	 * Run the FTP request
+	 */
+	public void runRequest() {
+
+		// Read and process the available commands
+
+		int sts = m_sess.processChannelRequests( m_transfer);
+
+		if ( sts == FTPSrvSession.ChannelTransfer) {
+
+			// Remaining commands have been queued to the transfer thread pool, read events are enabled when the
+			// transfer request completes
+		}
+		else if ( sts == FTPSrvSession.ChannelActive) {
+
+			// Re-enable read events for the socket channel
+
+			try {
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_READ);
+				}
+				m_selectionKey.selector().wakeup();
+			}
+			catch ( CancelledKeyException ex) {
+			}
+		}
+		else {
+
+			// Session has been closed, cancel the selection key
+
+			m_selectionKey.cancel();
+			m_selectionKey.selector().wakeup();
+		}
+	}
+
+	/**
+	 * Return the FTP request details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append("[NIO FTP Sess=");
+		str.append( m_sess.getUniqueId());
+		if ( m_transfer)
+			str.append(",Transfer");
+		str.append("]");
+
+		return str.toString();
+	}
+}
@@ -19,6 +19,9 @@
 
 package org.alfresco.jlan.locking;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -27,23 +30,123 @@ import java.util.ArrayList;
  *
  * <p>Contains a list of the current locks on a file.
  *
+ * <p>The locks are held in an interval tree, a randomized balanced tree ordered by lock offset where each node
+ * also holds the highest end offset within its subtree. Lock conflict checks only visit the locks that can
+ * overlap the requested range, and indexed access uses the subtree sizes, so files with many record locks do
+ * not have to scan every lock on each read or write. The locks are indexed in offset order, locks with the same
+ * offset are kept in the order they were added.
+ *
+ * <p>Whole file locks, and locks with a range that cannot be represented as a signed 64bit range, are kept in
+ * a separate list that is always checked.
+ *
  * @author gkspencer
  */
 public class FileLockList implements Serializable {
 
 	// Serialization id
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
+
+	// Root of the lock interval tree
+
+	private transient LockNode m_root;
+
+	// Locks that are not held in the tree, whole file locks or locks with an irregular range
+
+	private transient ArrayList<FileLock> m_otherLocks;
+
+	// Sequence number for ordering locks with the same offset, and the tree balancing priority seed
+
+	private transient long m_lockSeq;
+	private transient int m_seed;
+
+	/**
+	 * Lock Node Class
+	 *
+	 * <p>Interval tree node for a lock.
+	 */
+	private static final class LockNode {
+
+		// File lock, range start and end offset
+
+		FileLock m_lock;
+		long m_start;
+		long m_end;
+
+		// Sequence number and balancing priority
+
+		long m_seq;
+		int m_priority;
 
-	// List of file locks
+		// Child nodes, subtree lock count and highest end offset within the subtree
 
-	private ArrayList<FileLock> m_lockList;
+		LockNode m_left;
+		LockNode m_right;
+
+		int m_size;
+		long m_maxEnd;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param lock FileLock
+		 * @param seq long
+		 * @param priority int
+		 */
+		LockNode( FileLock lock, long seq, int priority) {
+			m_lock = lock;
+			m_start = lock.getOffset();
+
+			// A zero length lock still conflicts with a range that starts at the lock offset
+
+			m_end = lock.getLength() > 0 ? m_start + ( lock.getLength() - 1) : m_start;
+
+			m_seq = seq;
+			m_priority = priority;
+
+			m_size = 1;
+			m_maxEnd = m_end;
+		}
+
+		/**
+		 * Update the subtree lock count and highest end offset
+		 */
+		final void update() {
+			m_size = 1;
+			m_maxEnd = m_end;
+
+			if ( m_left != null) {
+				m_size += m_left.m_size;
+				if ( m_left.m_maxEnd > m_maxEnd)
+					m_maxEnd = m_left.m_maxEnd;
+			}
+
+			if ( m_right != null) {
+				m_size += m_right.m_size;
+				if ( m_right.m_maxEnd > m_maxEnd)
+					m_maxEnd = m_right.m_maxEnd;
+			}
+		}
+
+		/**
+		 * Check if this node is ordered before the specified node
+		 *
+		 * @param node LockNode
+		 * @return boolean
+		 */
+		final boolean isBefore( LockNode node) {
+			if ( m_start != node.m_start)
+				return m_start < node.m_start;
+			return m_seq < node.m_seq;
+		}
+	}
 
 	/**
 	 * Construct an empty file lock list.
 	 */
 	public FileLockList() {
-		m_lockList = new ArrayList<FileLock>();
+		m_otherLocks = new ArrayList<FileLock>();
+		m_seed = System.identityHashCode( this) | 1;
 	}
 
 	/**
@@ -52,7 +155,13 @@ public class FileLockList implements Serializable {
 	 * @param lock Lock to be added to the list.
 	 */
 	public final void addLock(FileLock lock) {
-		m_lockList.add(lock);
+
+		// Whole file locks and locks with an irregular range are kept in a seperate list
+
+		if ( isTreeLock( lock) == false)
+			m_otherLocks.add( lock);
+		else
+			m_root = insertNode( m_root, new LockNode( lock, m_lockSeq++, nextPriority()));
 	}
 
 	/**
@@ -82,20 +191,13 @@ public class FileLockList implements Serializable {
 
 		// Search for the required lock
 
-		FileLock fLock = null;
-
-		for (int i = 0; i < numberOfLocks(); i++) {
-
-			// Get the current lock details
+		LockNode node = findNode( m_root, offset, len);
+		if ( node != null)
+			return node.m_lock;
 
-			fLock = getLockAt(i);
-			if ( fLock.getOffset() == offset && fLock.getLength() == len) {
-
-				// Return the matching lock
-
-				return fLock;
-			}
-		}
+		int idx = findOtherLock( offset, len);
+		if ( idx != -1)
+			return m_otherLocks.get( idx);
 
 		// Lock not found
 
@@ -129,20 +231,20 @@ public class FileLockList implements Serializable {
 
 		// Search for the required lock
 
-		for (int i = 0; i < numberOfLocks(); i++) {
+		LockNode node = findNode( m_root, offset, len);
 
-			// Get the current lock details
+		if ( node != null) {
 
-			FileLock curLock = getLockAt(i);
-			if ( curLock.getOffset() == offset && curLock.getLength() == len) {
+			// Remove the lock from the tree
 
-				// Remove the lock from the list
-
-				m_lockList.remove(i);
-				return curLock;
-			}
+			m_root = deleteNode( m_root, node);
+			return node.m_lock;
 		}
 
+		int idx = findOtherLock( offset, len);
+		if ( idx != -1)
+			return m_otherLocks.remove( idx);
+
 		// Lock not found
 
 		return null;
@@ -152,7 +254,8 @@ public class FileLockList implements Serializable {
 	 * Remove all locks from the list
 	 */
 	public final void removeAllLocks() {
-		m_lockList.clear();
+		m_root = null;
+		m_otherLocks.clear();
 	}
 
 	/**
@@ -162,8 +265,22 @@ public class FileLockList implements Serializable {
 	 * @return FileLock
 	 */
 	public final FileLock getLockAt(int idx) {
-		if ( idx < m_lockList.size())
-			return m_lockList.get(idx);
+
+		// Check for a lock in the tree
+
+		int treeSize = treeSize();
+
+		if ( idx < treeSize) {
+			LockNode node = getNodeAt( idx);
+			return node != null ? node.m_lock : null;
+		}
+
+		// Check for a whole file/irregular lock
+
+		idx -= treeSize;
+
+		if ( idx < m_otherLocks.size())
+			return m_otherLocks.get( idx);
 		return null;
 	}
 
@@ -174,8 +291,26 @@ public class FileLockList implements Serializable {
 	 * @return FileLock
 	 */
 	public final FileLock removeLockAt(int idx) {
-		if ( idx < m_lockList.size())
-			return m_lockList.remove(idx);
+
+		// Check for a lock in the tree
+
+		int treeSize = treeSize();
+
+		if ( idx < treeSize) {
+			LockNode node = getNodeAt( idx);
+			if ( node == null)
+				return null;
+
+			m_root = deleteNode( m_root, node);
+			return node.m_lock;
+		}
+
+		// Check for a whole file/irregular lock
+
+		idx -= treeSize;
+
+		if ( idx < m_otherLocks.size())
+			return m_otherLocks.remove(idx);
 		return null;
 	}
 
@@ -194,18 +329,7 @@ public class FileLockList implements Serializable {
 
 		// Search for any overlapping locks
 
-		for (int i = 0; i < numberOfLocks(); i++) {
-
-			// Get the current lock details
-
-			FileLock curLock = getLockAt(i);
-			if ( curLock.hasOverlap(lock))
-				return false;
-		}
-
-		// The lock does not overlap with any existing locks
-
-		return true;
+		return hasConflict( lock.getOffset(), lock.getLength(), 0, false) ? false : true;
 	}
 
 	/**
@@ -233,28 +357,9 @@ public class FileLockList implements Serializable {
 		if ( numberOfLocks() == 0)
 			return true;
 
-		// Search for a lock that prevents the read
-
-		for (int i = 0; i < numberOfLocks(); i++) {
-
-			// Get the current lock details
-
-			FileLock curLock = getLockAt(i);
-
-			// Check if the process owns the lock, if not then check if there is an overlap
-
-			if ( curLock.getProcessId() != pid) {
+		// Search for a lock owned by another process that prevents the read
 
-				// Check if the read overlaps with the locked area
-
-				if ( curLock.hasOverlap(offset, len) == true)
-					return false;
-			}
-		}
-
-		// The lock does not overlap with any existing locks
-
-		return true;
+		return hasConflict( offset, len, pid, true) ? false : true;
 	}
 
 	/**
@@ -277,42 +382,381 @@ public class FileLockList implements Serializable {
 	 */
 	public final boolean canWriteFile(long offset, long len, int pid) {
 
-		// If the list is empty we can allow the read request
+		// If the list is empty we can allow the write request
 
 		if ( numberOfLocks() == 0)
 			return true;
 
-		// Search for a lock that prevents the read
+		// Search for a lock owned by another process that prevents the write
+
+		return hasConflict( offset, len, pid, true) ? false : true;
+	}
+
+	/**
+	 * Return the count of locks in the list.
+	 *
+	 * @return int Number of locks in the list.
+	 */
+	public final int numberOfLocks() {
+		return treeSize() + m_otherLocks.size();
+	}
+
+	/**
+	 * Check if there is a lock that overlaps the specified range
+	 *
+	 * @param offset long
+	 * @param len long
+	 * @param pid int
+	 * @param checkPid boolean Ignore locks owned by the process id
+	 * @return boolean
+	 */
+	private final boolean hasConflict( long offset, long len, int pid, boolean checkPid) {
+
+		// Check the whole file/irregular locks
 
-		for (int i = 0; i < numberOfLocks(); i++) {
+		for ( int i = 0; i < m_otherLocks.size(); i++) {
+			FileLock curLock = m_otherLocks.get( i);
+			if (( checkPid == false || curLock.getProcessId() != pid) && curLock.hasOverlap( offset, len))
+				return true;
+		}
 
-			// Get the current lock details
+		// Get the range of the tree to search. If the range cannot be represented then search all locks, the
+		// overlap check on each lock decides if there is a conflict.
 
-			FileLock curLock = getLockAt(i);
+		long rangeStart = offset;
+		long rangeEnd = len > 0 ? offset + ( len - 1) : offset;
 
-			// Check if the process owns the lock, if not then check if there is an overlap
+		if ( len < 0 || rangeEnd < rangeStart) {
+			rangeStart = Long.MIN_VALUE;
+			rangeEnd = Long.MAX_VALUE;
+		}
 
-			if ( curLock.getProcessId() != pid) {
+		// Search the tree for overlapping locks
 
-				// Check if the read overlaps with the locked area
+		return searchTree( m_root, rangeStart, rangeEnd, offset, len, pid, checkPid);
+	}
 
-				if ( curLock.hasOverlap(offset, len) == true)
-					return false;
-			}
+	/**
+	 * Search a subtree for a lock that overlaps the specified range
+	 *
+	 * @param node LockNode
+	 * @param rangeStart long
+	 * @param rangeEnd long
+	 * @param offset long
+	 * @param len long
+	 * @param pid int
+	 * @param checkPid boolean
+	 * @return boolean
+	 */
+	private final boolean searchTree( LockNode node, long rangeStart, long rangeEnd, long offset, long len, int pid, boolean checkPid) {
+
+		while ( node != null) {
+
+			// No lock in the subtree ends at or after the start of the range
+
+			if ( node.m_maxEnd < rangeStart)
+				return false;
+
+			// Search the left subtree
+
+			if ( node.m_left != null && searchTree( node.m_left, rangeStart, rangeEnd, offset, len, pid, checkPid))
+				return true;
+
+			// Locks in the right subtree start at or after this lock, so if this lock starts after the end
+			// of the range then there are no more overlapping locks
+
+			if ( node.m_start > rangeEnd)
+				return false;
+
+			// Check the current lock
+
+			FileLock curLock = node.m_lock;
+
+			if ( node.m_end >= rangeStart && ( checkPid == false || curLock.getProcessId() != pid) &&
+					curLock.hasOverlap( offset, len))
+				return true;
+
+			// Continue with the right subtree
+
+			node = node.m_right;
 		}
 
-		// The lock does not overlap with any existing locks
+		// No overlapping locks
 
+		return false;
+	}
+
+	/**
+	 * Check if a lock can be held in the interval tree
+	 *
+	 * @param lock FileLock
+	 * @return boolean
+	 */
+	private static final boolean isTreeLock( FileLock lock) {
+
+		// Whole file locks always overlap
+
+		if ( lock.isWholeFile())
+			return false;
+
+		// Check for a lock range that overflows
+
+		long len = lock.getLength();
+		if ( len < 0 || ( len > 0 && lock.getOffset() + ( len - 1) < lock.getOffset()))
+			return false;
 		return true;
 	}
 
 	/**
-	 * Return the count of locks in the list.
+	 * Return the number of locks in the tree
 	 *
-	 * @return int Number of locks in the list.
+	 * @return int
 	 */
-	public final int numberOfLocks() {
-		return m_lockList.size();
+	private final int treeSize() {
+		return m_root != null ? m_root.m_size : 0;
+	}
+
+	/**
+	 * Return the next tree balancing priority
+	 *
+	 * @return int
+	 */
+	private final int nextPriority() {
+
+		// Xorshift pseudo random sequence
+
+		int x = m_seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		m_seed = x;
+
+		return x;
+	}
+
+	/**
+	 * Insert a node into a subtree
+	 *
+	 * @param root LockNode
+	 * @param node LockNode
+	 * @return LockNode New subtree root
+	 */
+	private static final LockNode insertNode( LockNode root, LockNode node) {
+
+		if ( root == null)
+			return node;
+
+		if ( node.isBefore( root)) {
+			root.m_left = insertNode( root.m_left, node);
+
+			if ( root.m_left.m_priority > root.m_priority)
+				root = rotateRight( root);
+		}
+		else {
+			root.m_right = insertNode( root.m_right, node);
+
+			if ( root.m_right.m_priority > root.m_priority)
+				root = rotateLeft( root);
+		}
+
+		root.update();
+		return root;
+	}
+
+	/**
+	 * Delete a node from a subtree
+	 *
+	 * @param root LockNode
+	 * @param node LockNode
+	 * @return LockNode New subtree root
+	 */
+	private static final LockNode deleteNode( LockNode root, LockNode node) {
+
+		if ( root == null)
+			return null;
+
+		if ( root == node)
+			return mergeNodes( root.m_left, root.m_right);
+
+		if ( node.isBefore( root))
+			root.m_left = deleteNode( root.m_left, node);
+		else
+			root.m_right = deleteNode( root.m_right, node);
+
+		root.update();
+		return root;
+	}
+
+	/**
+	 * Merge two subtrees, all nodes in the left subtree are ordered before the nodes in the right subtree
+	 *
+	 * @param left LockNode
+	 * @param right LockNode
+	 * @return LockNode
+	 */
+	private static final LockNode mergeNodes( LockNode left, LockNode right) {
+
+		if ( left == null)
+			return right;
+		if ( right == null)
+			return left;
+
+		if ( left.m_priority > right.m_priority) {
+			left.m_right = mergeNodes( left.m_right, right);
+			left.update();
+			return left;
+		}
+
+		right.m_left = mergeNodes( left, right.m_left);
+		right.update();
+		return right;
+	}
+
+	/**
+	 * Rotate a subtree right
+	 *
+	 * @param node LockNode
+	 * @return LockNode
+	 */
+	private static final LockNode rotateRight( LockNode node) {
+		LockNode left = node.m_left;
+
+		node.m_left = left.m_right;
+		node.update();
+
+		left.m_right = node;
+		return left;
+	}
+
+	/**
+	 * Rotate a subtree left
+	 *
+	 * @param node LockNode
+	 * @return LockNode
+	 */
+	private static final LockNode rotateLeft( LockNode node) {
+		LockNode right = node.m_right;
+
+		node.m_right = right.m_left;
+		node.update();
+
+		right.m_left = node;
+		return right;
+	}
+
+	/**
+	 * Find the first lock in the subtree with the specified offset and length
+	 *
+	 * @param node LockNode
+	 * @param offset long
+	 * @param len long
+	 * @return LockNode
+	 */
+	private static final LockNode findNode( LockNode node, long offset, long len) {
+
+		while ( node != null) {
+
+			if ( offset < node.m_start)
+				node = node.m_left;
+			else if ( offset > node.m_start)
+				node = node.m_right;
+			else {
+
+				// Locks with the same offset may be in both subtrees, check the earlier locks first
+
+				LockNode match = findNode( node.m_left, offset, len);
+				if ( match != null)
+					return match;
+
+				if ( node.m_lock.getLength() == len)
+					return node;
+
+				node = node.m_right;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Return the tree node at the specified index
+	 *
+	 * @param idx int
+	 * @return LockNode
+	 */
+	private final LockNode getNodeAt( int idx) {
+
+		LockNode node = m_root;
+
+		while ( node != null) {
+			int leftSize = node.m_left != null ? node.m_left.m_size : 0;
+
+			if ( idx < leftSize)
+				node = node.m_left;
+			else if ( idx == leftSize)
+				return node;
+			else {
+				idx -= leftSize + 1;
+				node = node.m_right;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Find a whole file/irregular lock with the specified offset and length
+	 *
+	 * @param offset long
+	 * @param len long
+	 * @return int Index of the lock, or -1 if not found
+	 */
+	private final int findOtherLock( long offset, long len) {
+		for ( int i = 0; i < m_otherLocks.size(); i++) {
+			FileLock curLock = m_otherLocks.get( i);
+			if ( curLock.getOffset() == offset && curLock.getLength() == len)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Write the lock list, as a count followed by the locks in index order
+	 *
+	 * @param out ObjectOutputStream
+	 * @exception IOException
+	 */
+	private void writeObject( ObjectOutputStream out)
+		throws IOException {
+
+		out.defaultWriteObject();
+
+		int lockCnt = numberOfLocks();
+		out.writeInt( lockCnt);
+
+		for ( int i = 0; i < lockCnt; i++)
+			out.writeObject( getLockAt( i));
+	}
+
+	/**
+	 * Read the lock list, and rebuild the lock tree
+	 *
+	 * @param in ObjectInputStream
+	 * @exception IOException
+	 * @exception ClassNotFoundException
+	 */
+	private void readObject( ObjectInputStream in)
+		throws IOException, ClassNotFoundException {
+
+		in.defaultReadObject();
+
+		m_otherLocks = new ArrayList<FileLock>();
+		m_seed = System.identityHashCode( this) | 1;
+
+		int lockCnt = in.readInt();
+
+		for ( int i = 0; i < lockCnt; i++)
+			addLock(( FileLock) in.readObject());
 	}
 
 	/**
@@ -41,6 +41,7 @@ import org.alfresco.jlan.server.SrvSession;
 import org.alfresco.jlan.server.Version;
 import org.alfresco.jlan.server.auth.acl.AccessControl;
 import org.alfresco.jlan.server.auth.acl.AccessControlManager;
+import org.alfresco.jlan.server.config.CoreServerConfigSection;
 import org.alfresco.jlan.server.config.ServerConfiguration;
 import org.alfresco.jlan.server.core.InvalidDeviceInterfaceException;
 import org.alfresco.jlan.server.core.ShareType;
@@ -68,6 +69,7 @@ import org.alfresco.jlan.server.filesys.SrvDiskInfo;
 import org.alfresco.jlan.server.filesys.SymbolicLinkInterface;
 import org.alfresco.jlan.server.filesys.TreeConnection;
 import org.alfresco.jlan.server.filesys.TreeConnectionHash;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.util.HexDump;
 
 /**
@@ -186,8 +188,8 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
 
   //	Session tables for the various authentication types
 
-  private NFSSessionTable m_sessAuthNull;
-  private NFSSessionTable m_sessAuthUnix;
+  private final NFSSessionTable m_sessAuthNull = new NFSSessionTable();
+  private final NFSSessionTable m_sessAuthUnix = new NFSSessionTable();
 
   //	Session id generator
 
@@ -213,6 +215,10 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
 
   private long m_writeVerifier;
 
+  //	Server metrics registry, or null if metrics are not enabled
+
+  private MetricsRegistry m_metrics;
+
   /**
    * Class constructor
    *
@@ -253,6 +259,12 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
 	  // Set the port mapper port
 
       setPortMapper( getNFSConfiguration().getPortMapperPort());
+
+      //  Get the server metrics registry, if enabled
+
+      CoreServerConfigSection coreConfig = (CoreServerConfigSection) config.getConfigSection( CoreServerConfigSection.SectionName);
+      if ( coreConfig != null)
+        m_metrics = coreConfig.getMetrics();
     }
     else
       setEnabled( false);
@@ -485,7 +497,10 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
 
     RpcPacket response = null;
 
-    switch (rpc.getProcedureId()) {
+    int procId = rpc.getProcedureId();
+    long metricsStart = m_metrics != null ? System.nanoTime() : 0L;
+
+    switch (procId) {
 
 	    //	Null request
 
@@ -620,6 +635,11 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
 	      break;
     }
 
+    //  Record the request time, if server metrics are enabled
+
+    if ( m_metrics != null)
+      m_metrics.recordTime( MetricsRegistry.GroupNFS, NFS.getProcedureName( procId), System.nanoTime() - metricsStart);
+
     // Commit/rollback a transaction that the filesystem driver may have stored in the session
 
     if ( nfsSess != null)
@@ -4265,22 +4285,9 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
    */
   private final NFSSrvSession findAuthNullSession(RpcPacket rpc, Object sessKey) {
 
-    //	Check if the null authentication session table is valid
-
-    NFSSrvSession sess = null;
-
-    if (m_sessAuthNull != null) {
+    //	Search for the required session using the client IP address
 
-      //	Search for the required session using the client IP address
-
-      sess = m_sessAuthNull.findSession(sessKey);
-    }
-    else {
-
-      //	Allocate the null authentication session table
-
-      m_sessAuthNull = new NFSSessionTable();
-    }
+    NFSSrvSession sess = m_sessAuthNull.findSession(sessKey);
 
     //	Check if we found the required session object
 
@@ -4291,20 +4298,23 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
       sess = new NFSSrvSession(this, rpc.getClientAddress(), rpc.getClientPort(), rpc.getClientProtocol());
       sess.setAuthIdentifier(sessKey);
 
-      //	Get the client information from the RPC
-
-      sess.setClientInformation(getRpcAuthenticator().getRpcClientInformation(sessKey, rpc));
-
-      //	Add the new session to the session table
-
-      m_sessAuthNull.addSession(sess);
-
       //	Set the session id and debug output prefix
 
 	    sess.setUniqueId("" + sessKey.hashCode());
 	    sess.setDebugPrefix("[NFS_AN_" + getNextSessionId() + "] ");
 	    sess.setDebug(getNFSConfiguration().getNFSDebug());
 
+      //	Get the client information from the RPC
+
+      sess.setClientInformation(getRpcAuthenticator().getRpcClientInformation(sessKey, rpc));
+
+      //	Add the new session to the session table, use the existing session if another request added a session
+      //	for the same client
+
+      NFSSrvSession curSess = m_sessAuthNull.addSessionIfAbsent(sess);
+      if ( curSess != null)
+        return curSess;
+
       //	DEBUG
 
       if (Debug.EnableInfo && hasDebugFlag(DBG_SESSION))
@@ -4325,22 +4335,9 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
    */
   private final NFSSrvSession findAuthUnixSession(RpcPacket rpc, Object sessKey) {
 
-    //	Check if the Unix authentication session table is valid
+    //	Search for the required session using the client IP address + gid + uid
 
-    NFSSrvSession sess = null;
-
-    if (m_sessAuthUnix != null) {
-
-      //	Search for the required session using the client IP address + gid + uid
-
-      sess = m_sessAuthUnix.findSession(sessKey);
-    }
-    else {
-
-      //	Allocate the Unix authentication session table
-
-      m_sessAuthUnix = new NFSSessionTable();
-    }
+    NFSSrvSession sess = m_sessAuthUnix.findSession(sessKey);
 
     //	Check if we found the required session object
 
@@ -4362,9 +4359,14 @@ public class NFSServer extends RpcNetworkServer implements RpcProcessor {
       sess.setNFSClientInformation(getRpcAuthenticator().getRpcClientInformation(sessKey, rpc));
       sess.setClientInformation( sess.getNFSClientInformation());
 
-      //	Add the new session to the session table
+      //	Add the new session to the session table, use the existing session if another request added a session
+      //	for the same client
 
-      m_sessAuthUnix.addSession(sess);
+      NFSSrvSession curSess = m_sessAuthUnix.addSessionIfAbsent(sess);
+      if ( curSess != null) {
+        curSess.setClientInformation( curSess.getNFSClientInformation());
+        return curSess;
+      }
 
       //	DEBUG
 
@@ -20,7 +20,7 @@
 package org.alfresco.jlan.oncrpc.nfs;
 
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * NFS Server Session Table Class
@@ -29,15 +29,15 @@ import java.util.Hashtable;
  */
 public class NFSSessionTable {
 
-	//	Session list
+	//	Session list, lookups do not lock the session table
 
-	private Hashtable<Object, NFSSrvSession> m_sessions;
+	private ConcurrentHashMap<Object, NFSSrvSession> m_sessions;
 
 	/**
 	 * Class constructor
 	 */
 	public NFSSessionTable() {
-		m_sessions = new Hashtable<Object, NFSSrvSession>();
+		m_sessions = new ConcurrentHashMap<Object, NFSSrvSession>();
 	}
 
 	/**
@@ -58,6 +58,16 @@ public class NFSSessionTable {
 		m_sessions.put(sess.getAuthIdentifier(), sess);
 	}
 
+	/**
+	 * Add a session to the list if there is no session with the same authentication identifier
+	 *
+	 * @param sess NFSSrvSession
+	 * @return NFSSrvSession Existing session, or null if the new session was added
+	 */
+	public final NFSSrvSession addSessionIfAbsent(NFSSrvSession sess) {
+		return m_sessions.putIfAbsent(sess.getAuthIdentifier(), sess);
+	}
+
 	/**
 	 * Find the session using the authentication identifier
 	 *
@@ -86,14 +96,9 @@ public class NFSSessionTable {
 	 */
 	public final NFSSrvSession removeSession(Object authIdent) {
 
-		//	Find the required session
-
-		NFSSrvSession sess = findSession(authIdent);
-
 		//	Remove the session and return the removed session
 
-		m_sessions.remove(authIdent);
-		return sess;
+		return m_sessions.remove(authIdent);
 	}
 
 	/**
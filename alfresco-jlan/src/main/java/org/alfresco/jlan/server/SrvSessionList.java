@@ -21,8 +21,8 @@ package org.alfresco.jlan.server;
 
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Server Session List Class
@@ -31,15 +31,15 @@ import java.util.LinkedList;
  */
 public class SrvSessionList {
 
-	//	Session list
+	//	Session list, lookups do not lock the session table
 
-	private Hashtable<Integer, SrvSession> m_sessions;
+	private ConcurrentHashMap<Integer, SrvSession> m_sessions;
 
 	/**
 	 * Class constructor
 	 */
 	public SrvSessionList() {
-	  m_sessions = new Hashtable<Integer, SrvSession>();
+	  m_sessions = new ConcurrentHashMap<Integer, SrvSession>();
 	}
 
 	/**
@@ -97,10 +97,7 @@ public class SrvSessionList {
      * @return Enumeration<SrvSession>
 	 */
     public final Enumeration<SrvSession> enumerateSessions() {
-      // An atomic operation
-      synchronized (m_sessions)
-      {
-         return Collections.enumeration(new LinkedList<SrvSession>(m_sessions.values()));
-      }
+      // Snapshot of the current sessions
+      return Collections.enumeration(new LinkedList<SrvSession>(m_sessions.values()));
 	}
 }
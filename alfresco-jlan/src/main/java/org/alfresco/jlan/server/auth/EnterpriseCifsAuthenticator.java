@@ -40,6 +40,7 @@ import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
 import org.alfresco.jlan.server.auth.kerberos.KerberosApReq;
 import org.alfresco.jlan.server.auth.kerberos.KerberosDetails;
+import org.alfresco.jlan.server.auth.kerberos.KerberosTicketCache;
 import org.alfresco.jlan.server.auth.kerberos.KrbAuthContext;
 import org.alfresco.jlan.server.auth.kerberos.SessionSetupPrivilegedAction;
 import org.alfresco.jlan.server.auth.ntlm.NTLM;
@@ -124,6 +125,10 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
 	// Strip realm from username
 	private boolean m_stripRealmFromUsername = false;
 
+	// Kerberos ticket cache, null if not enabled
+
+	private KerberosTicketCache m_ticketCache;
+
 	// Server login context
 
 	private LoginContext m_loginContext;
@@ -413,6 +418,49 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
 
 		if ( Debug.EnableInfo && hasDebug() && m_enableTicketCracking == true)
 			Debug.println("[SMB] Kerberos ticket cracking enabled");
+
+		// Check if the Kerberos ticket cache should be enabled
+
+		ConfigElement tktCache = params.getChild( "ticketCache");
+
+		if ( tktCache != null && m_loginContext != null) {
+
+			// Get the cache size and maximum entry age
+
+			int maxTickets = KerberosTicketCache.DefaultMaxTickets;
+			int maxAge = KerberosTicketCache.DefaultMaxAge;
+
+			try {
+				String val = tktCache.getAttribute( "size");
+				if ( val != null && val.length() > 0)
+					maxTickets = Integer.parseInt( val);
+
+				val = tktCache.getAttribute( "maxAge");
+				if ( val != null && val.length() > 0)
+					maxAge = Integer.parseInt( val);
+			}
+			catch ( NumberFormatException ex) {
+				throw new InvalidConfigurationException( "Invalid Kerberos ticket cache setting");
+			}
+
+			// Range check the values
+
+			if ( maxTickets < KerberosTicketCache.MinMaxTickets || maxTickets > KerberosTicketCache.MaxMaxTickets)
+				throw new InvalidConfigurationException( "Invalid Kerberos ticket cache size, valid range is " + KerberosTicketCache.MinMaxTickets +
+						" to " + KerberosTicketCache.MaxMaxTickets);
+
+			if ( maxAge <= 0)
+				throw new InvalidConfigurationException( "Invalid Kerberos ticket cache maximum age, " + maxAge);
+
+			// Create the ticket cache
+
+			m_ticketCache = new KerberosTicketCache( maxTickets, maxAge);
+
+			// Debug
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("[SMB] Kerberos ticket cache enabled, size=" + maxTickets + ", maxAge=" + maxAge + "s");
+		}
 	}
 
 	/**
@@ -1263,6 +1311,19 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
         	if ( Debug.EnableDbg && hasDebug())
         		Debug.println( "[SMB] Kerberos AP-REQ - " + krbApReq);
 
+        	// Check if the ticket has been validated by a previous logon
+
+        	String tktKey = null;
+
+        	if ( m_ticketCache != null) {
+
+        		tktKey = KerberosTicketCache.getTicketKey( krbApReq.getTicket());
+        		negTokenTarg = doCachedKerberosLogon(sess, negToken, krbApReq, tktKey, client);
+
+        		if ( negTokenTarg != null)
+        			return negTokenTarg;
+        	}
+
         	// Check if mutual authentication is required
 
         	KrbAuthContext krbAuthCtx = null;
@@ -1311,26 +1372,7 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
 
                 // Determine the response OID
 
-                Oid respOid = null;
-
-                if ( negToken.hasOid( OID.MSKERBEROS5))
-                {
-                	respOid = OID.MSKERBEROS5;
-
-                	// DEBUG
-
-                	if ( Debug.EnableDbg && hasDebug())
-                		Debug.println("[SMB] Using OID MS Kerberos5 for NegTokenTarg");
-                }
-                else
-                {
-                	respOid = OID.KERBEROS5;
-
-                	// DEBUG
-
-                	if ( Debug.EnableDbg && hasDebug())
-                		Debug.println("[SMB] Using OID Kerberos5 for NegTokenTarg");
-                }
+                Oid respOid = getResponseOid( negToken);
 
                 // If mutual authentication is required then we unpack the AP-REP and add in the missing
                 // subkey that the AD client requires
@@ -1373,56 +1415,24 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
 	                	Debug.println("[SMB] Created NegTokenTarg using standard Krb5 API response");
                 }
 
-            	// Check if this is a null logon
-
-            	String userName = krbDetails.getUserName();
-
-            	if ( userName != null)
-            	{
-            		// Check for the machine account name
-
-            		if ( userName.endsWith( "$") && userName.equals( userName.toUpperCase()))
-            		{
-            			// Null logon
+            	// Add the validated ticket to the ticket cache, the authenticator may have been used by a previous
+            	// logon that used the cached ticket
 
-                		client.setLogonType( ClientInfo.LogonNull);
+            	if ( tktKey != null && cacheKerberosTicket( krbApReq, krbAuthCtx, tktKey, krbDetails) == false) {
 
-                		//  Debug
+            		// DEBUG
 
-                        if ( Debug.EnableDbg && hasDebug())
-                            Debug.println("[SMB] Machine account logon, " + userName + ", as null logon");
-            		}
-            		else
-            		{
-                        // Store the full user name in the client information, indicate that this is not a guest logon
+            		if ( Debug.EnableError && hasDebug())
+            			Debug.println("[SMB] Kerberos logon rejected, replayed authenticator, user " + krbDetails.getSourceName());
 
-                        if (m_stripRealmFromUsername) {
-                            client.setUserName( userName);
-                        } else {
-                            client.setUserName( krbDetails.getSourceName());
-                        }
-                        client.setGuest( false);
+            		// Return a logon failure status
 
-                        // Indicate that the session is logged on
-
-                        sess.setLoggedOn(true);
-            		}
-            	}
-            	else
-            	{
-            		// Null logon
-
-            		client.setLogonType( ClientInfo.LogonNull);
+            		throw new SMBSrvException( SMBStatus.NTLogonFailure, SMBStatus.ErrDos, SMBStatus.DOSAccessDenied);
             	}
 
-                // Indicate that the session is logged on
-
-                sess.setLoggedOn(true);
+            	// Set the logged on user details
 
-                //  Debug
-
-                if ( Debug.EnableDbg && hasDebug())
-                	Debug.println("[SMB] Logged on using Kerberos, user " + userName);
+            	setKerberosLogon( sess, client, krbDetails.getUserName(), krbDetails.getSourceName());
             }
             else
             {
@@ -1455,6 +1465,234 @@ public class EnterpriseCifsAuthenticator extends CifsAuthenticator implements Ca
         return negTokenTarg;
 	}
 
+	/**
+	 * Perform a Kerberos logon using a ticket that has been validated by a previous logon. Only the authenticator
+	 * is decrypted, using the cached session key.
+	 *
+	 * @param sess SMBSrvSession
+	 * @param negToken NegTokenInit
+	 * @param krbApReq KerberosApReq
+	 * @param tktKey String
+	 * @param client ClientInfo
+	 * @return NegTokenTarg, or null if the ticket is not cached and a full logon is required
+	 * @exception SMBSrvException
+	 */
+	private final NegTokenTarg doCachedKerberosLogon(SMBSrvSession sess, NegTokenInit negToken, KerberosApReq krbApReq, String tktKey, ClientInfo client)
+		throws SMBSrvException {
+
+		// Check if the ticket is cached
+
+		KerberosTicketCache.TicketEntry tktEntry = m_ticketCache.findTicket( tktKey);
+		if ( tktEntry == null)
+			return null;
+
+		// Decrypt the authenticator using the cached session key
+
+		KrbAuthContext krbAuthCtx = new KrbAuthContext();
+		krbAuthCtx.setDebug(hasDebug());
+
+		try {
+			krbAuthCtx.parseKerberosApReq( krbApReq, tktEntry.getKeyType(), tktEntry.getSessionKey());
+		}
+		catch ( IOException ex) {
+
+			// Failed to decrypt the authenticator, the ticket session key is known so the authenticator is not
+			// valid. The cached ticket is kept, so a ticket sent with an invalid authenticator cannot be used to
+			// remove the ticket from the cache.
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("[SMB] Cached Kerberos logon rejected, failed to decrypt authenticator, " + ex.getMessage());
+
+			throw new SMBSrvException( SMBStatus.NTLogonFailure, SMBStatus.ErrDos, SMBStatus.DOSAccessDenied);
+		}
+
+		// Build the mutual authentication response, if required. Done before the authenticator is recorded so that
+		// a full logon can still use the authenticator if the response cannot be built.
+
+		byte[] respToken = null;
+
+		if ( krbApReq.hasMutualAuthentication()) {
+
+			try {
+				respToken = krbAuthCtx.buildKerberosApRep();
+			}
+			catch ( Exception ex) {
+
+				// Failed to build the AP-REP, use a full logon
+
+				if ( Debug.EnableDbg && hasDebug())
+					Debug.println("[SMB] Cached Kerberos ticket, failed to build AP-REP, " + ex.getMessage());
+
+				return null;
+			}
+		}
+
+		// Check the authenticator time and that it has not been used before
+
+		int authSts = m_ticketCache.checkAuthenticator( tktKey, krbAuthCtx.getAuthenticator());
+
+		if ( authSts != KerberosTicketCache.AuthValid) {
+
+			// DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("[SMB] Cached Kerberos logon rejected, " + ( authSts == KerberosTicketCache.AuthReplay ? "replayed authenticator" : "clock skew") +
+						", user " + tktEntry.getSourceName());
+
+			// Return a logon failure status
+
+			throw new SMBSrvException( SMBStatus.NTLogonFailure, SMBStatus.ErrDos, SMBStatus.DOSAccessDenied);
+		}
+
+		// Set the logged on user details
+
+		setKerberosLogon( sess, client, tktEntry.getUserName(), tktEntry.getSourceName());
+
+		// DEBUG
+
+		if ( Debug.EnableDbg && hasDebug())
+			Debug.println("[SMB] Logged on using cached Kerberos ticket, user " + tktEntry.getUserName());
+
+		// Return the SPNEGO response
+
+		return new NegTokenTarg( SPNEGO.AcceptCompleted, getResponseOid( negToken), respToken);
+	}
+
+	/**
+	 * Add a ticket that has been validated to the ticket cache, and record the authenticator
+	 *
+	 * @param krbApReq KerberosApReq
+	 * @param krbAuthCtx KrbAuthContext
+	 * @param tktKey String
+	 * @param krbDetails KerberosDetails
+	 * @return boolean false if the authenticator has already been used
+	 */
+	private final boolean cacheKerberosTicket(KerberosApReq krbApReq, KrbAuthContext krbAuthCtx, String tktKey, KerberosDetails krbDetails) {
+
+		try {
+
+			// Decrypt the ticket to get the session key, if not already decrypted
+
+			if ( krbAuthCtx == null) {
+				krbAuthCtx = new KrbAuthContext();
+				krbAuthCtx.setDebug(hasDebug());
+
+				krbAuthCtx.parseKerberosApReq( m_loginContext.getSubject(), krbApReq);
+			}
+
+			// Add the ticket to the cache, and record the authenticator used so it cannot be replayed
+
+			if ( krbAuthCtx.getEncryptedTicket() != null && krbAuthCtx.getAuthenticator() != null) {
+
+				if ( m_ticketCache.checkAuthenticator( tktKey, krbAuthCtx.getAuthenticator()) == KerberosTicketCache.AuthReplay)
+					return false;
+
+				m_ticketCache.addTicket( tktKey, krbAuthCtx.getEncryptedTicket(), krbDetails.getSourceName(), krbDetails.getUserName());
+			}
+		}
+		catch ( IOException ex) {
+
+			// Ticket cannot be decrypted, the server keys may not be available
+
+			if ( Debug.EnableDbg && hasDebug())
+				Debug.println("[SMB] Failed to cache Kerberos ticket, " + ex.getMessage());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the OID to use for the Kerberos NegTokenTarg response
+	 *
+	 * @param negToken NegTokenInit
+	 * @return Oid
+	 */
+	private final Oid getResponseOid(NegTokenInit negToken) {
+
+        Oid respOid = null;
+
+        if ( negToken.hasOid( OID.MSKERBEROS5))
+        {
+        	respOid = OID.MSKERBEROS5;
+
+        	// DEBUG
+
+        	if ( Debug.EnableDbg && hasDebug())
+        		Debug.println("[SMB] Using OID MS Kerberos5 for NegTokenTarg");
+        }
+        else
+        {
+        	respOid = OID.KERBEROS5;
+
+        	// DEBUG
+
+        	if ( Debug.EnableDbg && hasDebug())
+        		Debug.println("[SMB] Using OID Kerberos5 for NegTokenTarg");
+        }
+
+        return respOid;
+	}
+
+	/**
+	 * Set the logged on user details for a Kerberos logon
+	 *
+	 * @param sess SMBSrvSession
+	 * @param client ClientInfo
+	 * @param userName String
+	 * @param sourceName String
+	 */
+	private final void setKerberosLogon(SMBSrvSession sess, ClientInfo client, String userName, String sourceName) {
+
+    	// Check if this is a null logon
+
+    	if ( userName != null)
+    	{
+    		// Check for the machine account name
+
+    		if ( userName.endsWith( "$") && userName.equals( userName.toUpperCase()))
+    		{
+    			// Null logon
+
+        		client.setLogonType( ClientInfo.LogonNull);
+
+        		//  Debug
+
+                if ( Debug.EnableDbg && hasDebug())
+                    Debug.println("[SMB] Machine account logon, " + userName + ", as null logon");
+    		}
+    		else
+    		{
+                // Store the full user name in the client information, indicate that this is not a guest logon
+
+                if (m_stripRealmFromUsername) {
+                    client.setUserName( userName);
+                } else {
+                    client.setUserName( sourceName);
+                }
+                client.setGuest( false);
+
+                // Indicate that the session is logged on
+
+                sess.setLoggedOn(true);
+    		}
+    	}
+    	else
+    	{
+    		// Null logon
+
+    		client.setLogonType( ClientInfo.LogonNull);
+    	}
+
+        // Indicate that the session is logged on
+
+        sess.setLoggedOn(true);
+
+        //  Debug
+
+        if ( Debug.EnableDbg && hasDebug())
+        	Debug.println("[SMB] Logged on using Kerberos, user " + userName);
+	}
+
 	/**
 	 * Perform an NTLMv1 logon using the NTLMSSP type3 message
 	 *
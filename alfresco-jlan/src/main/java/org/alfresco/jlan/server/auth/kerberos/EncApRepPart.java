@@ -110,6 +110,26 @@ public class EncApRepPart {
 		return m_seqNo;
 	}
 
+	/**
+	 * Set the timestamp and microseconds
+	 *
+	 * @param timestamp String
+	 * @param usec int
+	 */
+	public final void setTimestamp(String timestamp, int usec) {
+		m_timestamp = timestamp;
+		m_microseconds = usec;
+	}
+
+	/**
+	 * Set the sequence number
+	 *
+	 * @param seqNo int
+	 */
+	public final void setSequenceNumber(int seqNo) {
+		m_seqNo = seqNo;
+	}
+
 	/**
 	 * Set the sub-key and type
 	 *
@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.alfresco.jlan.server.auth.asn.DERBitString;
 import org.alfresco.jlan.server.auth.asn.DERBuffer;
 import org.alfresco.jlan.server.auth.asn.DERGeneralString;
+import org.alfresco.jlan.server.auth.asn.DERGeneralizedTime;
 import org.alfresco.jlan.server.auth.asn.DERInteger;
 import org.alfresco.jlan.server.auth.asn.DERObject;
 import org.alfresco.jlan.server.auth.asn.DEROctetString;
@@ -60,6 +61,10 @@ public class EncKrbTicket {
 	private int m_authType = -1;
 	private byte[] m_authData;
 
+	// Ticket end time
+
+	private String m_endTime;
+
 	/**
 	 * Default constructor
 	 */
@@ -139,6 +144,16 @@ public class EncKrbTicket {
 		return m_authData;
 	}
 
+	/**
+	 * Return the ticket end time, in Kerberos time format
+	 *
+	 * @return String
+	 */
+	public final String getEndTime()
+	{
+		return m_endTime;
+	}
+
 	/**
 	 * Parse an encrypted Kerberos ticket part
 	 *
@@ -256,6 +271,11 @@ public class EncKrbTicket {
 						// End time
 
 						case 7:
+							if ( derObj instanceof DERGeneralizedTime)
+							{
+								DERGeneralizedTime derTime = (DERGeneralizedTime) derObj;
+								m_endTime = derTime.getValue();
+							}
 							break;
 
 						// Renew till
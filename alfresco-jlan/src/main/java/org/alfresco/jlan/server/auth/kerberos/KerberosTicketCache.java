@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.auth.kerberos;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.alfresco.jlan.util.HexDump;
+
+/**
+ * Kerberos Ticket Cache Class
+ *
+ * <p>Caches the client principal and session key from Kerberos service tickets that have been validated, keyed by
+ * a hash of the ticket. When a client logs on again using the same ticket only the authenticator needs to be
+ * decrypted, using the cached session key, rather than decrypting the ticket and running the GSS accept.
+ *
+ * <p>Each authenticator is checked against the clock skew limit and a cache wide replay list, so a captured AP-REQ
+ * cannot be replayed. Entries are removed when the ticket expires, or after the maximum cache age if that is sooner,
+ * and the cache is limited in size with the least recently used tickets removed first. The replay list is keyed by the
+ * ticket hash and authenticator time and is independent of the ticket entries, authenticators are only removed from
+ * it once they are outside the clock skew window, so removing or replacing a ticket entry does not allow an
+ * authenticator to be used again.
+ *
+ * @author gkspencer
+ */
+public class KerberosTicketCache {
+
+	// Default, minimum and maximum number of cached tickets
+
+	public static final int DefaultMaxTickets	= 1024;
+	public static final int MinMaxTickets		= 16;
+	public static final int MaxMaxTickets		= 65536;
+
+	// Default maximum age of a cache entry, in seconds
+
+	public static final int DefaultMaxAge		= 10 * 60;	// 10 minutes
+
+	// Allowed clock skew between the client and server
+
+	public static final long ClockSkew			= 5 * 60 * 1000L;	// 5 minutes
+
+	// Authenticator check status
+
+	public static final int AuthValid		= 0;
+	public static final int AuthReplay		= 1;
+	public static final int AuthClockSkew	= 2;
+
+	// Cached tickets, in least recently used order
+
+	private LinkedHashMap<String, TicketEntry> m_tickets;
+
+	// Maximum number of cached tickets and maximum age, in milliseconds
+
+	private int m_maxTickets;
+	private long m_maxAge;
+
+	// Authenticators that have been used, keyed by ticket hash and authenticator time, with the time each was
+	// seen. Held in the order seen so that old authenticators can be removed from the head of the list.
+
+	private LinkedHashMap<String, Long> m_authSeen = new LinkedHashMap<String, Long>();
+
+	// Statistics
+
+	private long m_hits;
+	private long m_misses;
+	private long m_replays;
+
+	/**
+	 * Ticket Entry Class
+	 *
+	 * <p>Details of a validated Kerberos ticket.
+	 */
+	public static class TicketEntry {
+
+		// Client principal name and user name
+
+		private String m_sourceName;
+		private String m_userName;
+
+		// Session key
+
+		private int m_keyType;
+		private byte[] m_sessKey;
+
+		// Time the entry expires
+
+		private long m_expiresAt;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param sourceName String
+		 * @param userName String
+		 * @param keyType int
+		 * @param sessKey byte[]
+		 * @param expiresAt long
+		 */
+		protected TicketEntry( String sourceName, String userName, int keyType, byte[] sessKey, long expiresAt) {
+			m_sourceName = sourceName;
+			m_userName   = userName;
+			m_keyType    = keyType;
+			m_sessKey    = sessKey;
+			m_expiresAt  = expiresAt;
+		}
+
+		/**
+		 * Return the client principal name
+		 *
+		 * @return String
+		 */
+		public final String getSourceName() {
+			return m_sourceName;
+		}
+
+		/**
+		 * Return the user name
+		 *
+		 * @return String
+		 */
+		public final String getUserName() {
+			return m_userName;
+		}
+
+		/**
+		 * Return the session key type
+		 *
+		 * @return int
+		 */
+		public final int getKeyType() {
+			return m_keyType;
+		}
+
+		/**
+		 * Return the session key
+		 *
+		 * @return byte[]
+		 */
+		public final byte[] getSessionKey() {
+			return m_sessKey;
+		}
+
+		/**
+		 * Return the time the entry expires
+		 *
+		 * @return long
+		 */
+		public final long getExpiryTime() {
+			return m_expiresAt;
+		}
+
+		/**
+		 * Return the ticket entry as a string
+		 *
+		 * @return String
+		 */
+		public String toString() {
+			return "[Ticket " + getSourceName() + ",expires=" + getExpiryTime() + "]";
+		}
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public KerberosTicketCache() {
+		this( DefaultMaxTickets, DefaultMaxAge);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param maxTickets int
+	 * @param maxAge int Maximum age of a cached ticket, in seconds
+	 */
+	public KerberosTicketCache( int maxTickets, int maxAge) {
+		m_maxTickets = maxTickets;
+		m_maxAge     = maxAge * 1000L;
+
+		m_tickets = new LinkedHashMap<String, TicketEntry>( 64, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry( Map.Entry<String, TicketEntry> eldest) {
+				return size() > m_maxTickets ? true : false;
+			}
+		};
+	}
+
+	/**
+	 * Return the key for a Kerberos ticket
+	 *
+	 * @param ticket byte[]
+	 * @return String
+	 */
+	public static final String getTicketKey( byte[] ticket) {
+
+		try {
+
+			// Hash the ticket, the ticket includes the encrypted part so is unique per ticket issued
+
+			MessageDigest digest = MessageDigest.getInstance( "SHA-256");
+			return HexDump.hexString( digest.digest( ticket));
+		}
+		catch ( NoSuchAlgorithmException ex) {
+			throw new RuntimeException( "SHA-256 not available");
+		}
+	}
+
+	/**
+	 * Convert a Kerberos time string to a Java time value
+	 *
+	 * @param krbTime String
+	 * @return long, or -1 if the time is not valid
+	 */
+	public static final long parseKerberosTime( String krbTime) {
+
+		if ( krbTime == null)
+			return -1L;
+
+		try {
+			SimpleDateFormat dateFmt = new SimpleDateFormat( "yyyyMMddHHmmss'Z'");
+			dateFmt.setTimeZone( TimeZone.getTimeZone( "UTC"));
+			return dateFmt.parse( krbTime).getTime();
+		}
+		catch ( ParseException ex) {
+			return -1L;
+		}
+	}
+
+	/**
+	 * Find a cached ticket
+	 *
+	 * @param tktKey String
+	 * @return TicketEntry, or null if not cached or expired
+	 */
+	public final synchronized TicketEntry findTicket( String tktKey) {
+
+		// Find the ticket, and check if it has expired
+
+		TicketEntry tktEntry = m_tickets.get( tktKey);
+
+		if ( tktEntry != null && tktEntry.getExpiryTime() <= System.currentTimeMillis()) {
+			m_tickets.remove( tktKey);
+			tktEntry = null;
+		}
+
+		// Update the statistics
+
+		if ( tktEntry != null)
+			m_hits++;
+		else
+			m_misses++;
+
+		return tktEntry;
+	}
+
+	/**
+	 * Add a validated ticket to the cache, an existing entry for the ticket is kept
+	 *
+	 * @param tktKey String
+	 * @param encTkt EncKrbTicket
+	 * @param sourceName String
+	 * @param userName String
+	 * @return TicketEntry, or null if the ticket has expired
+	 */
+	public final synchronized TicketEntry addTicket( String tktKey, EncKrbTicket encTkt, String sourceName, String userName) {
+
+		// Check if the ticket is already cached
+
+		long now = System.currentTimeMillis();
+		TicketEntry tktEntry = m_tickets.get( tktKey);
+
+		if ( tktEntry != null && tktEntry.getExpiryTime() > now)
+			return tktEntry;
+
+		// Expire the entry at the ticket end time, or the maximum cache age if that is sooner
+
+		long expiresAt = now + m_maxAge;
+		long endTime = parseKerberosTime( encTkt.getEndTime());
+
+		if ( endTime != -1L && endTime < expiresAt)
+			expiresAt = endTime;
+
+		if ( expiresAt <= now)
+			return null;
+
+		// Add the ticket to the cache
+
+		tktEntry = new TicketEntry( sourceName, userName, encTkt.getEncryptionKeyType(), encTkt.getEncryptionKey(), expiresAt);
+		m_tickets.put( tktKey, tktEntry);
+
+		return tktEntry;
+	}
+
+	/**
+	 * Check that an authenticator is within the allowed clock skew and has not been used before with the ticket, and
+	 * record the authenticator
+	 *
+	 * <p>The replay list is only added to once an authenticator has been decrypted using the ticket session key, so
+	 * its size is limited by the rate of valid logons within the clock skew window.
+	 *
+	 * @param tktKey String
+	 * @param krbAuth KrbAuthenticator
+	 * @return int
+	 */
+	public final int checkAuthenticator( String tktKey, KrbAuthenticator krbAuth) {
+
+		// Check the authenticator time is within the allowed clock skew
+
+		long now = System.currentTimeMillis();
+		long authTime = parseKerberosTime( krbAuth.getTimestamp());
+
+		if ( authTime == -1L || Math.abs( now - authTime) > ClockSkew)
+			return AuthClockSkew;
+
+		// Check if the authenticator has been used before, remove authenticators that are outside the clock skew
+		// window as they would fail the clock skew check
+
+		String authId = tktKey + "/" + krbAuth.getTimestamp() + "." + krbAuth.getMicroseconds();
+
+		synchronized ( this) {
+
+			Iterator<Long> iterSeen = m_authSeen.values().iterator();
+
+			while ( iterSeen.hasNext()) {
+				if ( iterSeen.next().longValue() >= now - ( 2 * ClockSkew))
+					break;
+				iterSeen.remove();
+			}
+
+			if ( m_authSeen.containsKey( authId)) {
+				m_replays++;
+				return AuthReplay;
+			}
+
+			m_authSeen.put( authId, new Long( now));
+		}
+
+		return AuthValid;
+	}
+
+	/**
+	 * Remove a ticket from the cache
+	 *
+	 * @param tktKey String
+	 */
+	public final synchronized void removeTicket( String tktKey) {
+		m_tickets.remove( tktKey);
+	}
+
+	/**
+	 * Return the number of cached tickets
+	 *
+	 * @return int
+	 */
+	public final synchronized int numberOfTickets() {
+		return m_tickets.size();
+	}
+
+	/**
+	 * Return the number of authenticators in the replay list
+	 *
+	 * @return int
+	 */
+	public final synchronized int numberOfAuthenticators() {
+		return m_authSeen.size();
+	}
+
+	/**
+	 * Return the count of logons that used a cached ticket
+	 *
+	 * @return long
+	 */
+	public final synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	/**
+	 * Return the count of logons that did not find a cached ticket
+	 *
+	 * @return long
+	 */
+	public final synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	/**
+	 * Return the count of replayed authenticators rejected
+	 *
+	 * @return long
+	 */
+	public final synchronized long getReplayCount() {
+		return m_replays;
+	}
+
+	/**
+	 * Return the ticket cache details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[KerberosTicketCache tickets=");
+		str.append( numberOfTickets());
+		str.append( "/");
+		str.append( m_maxTickets);
+		str.append( ",auths=");
+		str.append( numberOfAuthenticators());
+		str.append( ",hits=");
+		str.append( getHitCount());
+		str.append( ",misses=");
+		str.append( getMissCount());
+		str.append( ",replays=");
+		str.append( getReplayCount());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
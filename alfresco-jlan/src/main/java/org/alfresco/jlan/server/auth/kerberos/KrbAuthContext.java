@@ -32,6 +32,7 @@ import org.alfresco.jlan.server.auth.asn.DER;
 import org.alfresco.jlan.server.auth.asn.DERBuffer;
 import org.alfresco.jlan.server.auth.asn.DERObject;
 import org.alfresco.jlan.server.auth.asn.DEROid;
+import org.alfresco.jlan.server.auth.spnego.OID;
 import org.alfresco.jlan.util.HexDump;
 
 import sun.security.krb5.EncryptedData;
@@ -53,6 +54,10 @@ public class KrbAuthContext extends AuthContext {
     private EncKrbTicket m_encTkt;
     private KrbAuthenticator m_krbAuth;
 
+    // Session key
+
+    private EncryptionKey m_sessKey;
+
     // Enable debug output
 
     private boolean m_debug;
@@ -139,43 +144,149 @@ public class KrbAuthContext extends AuthContext {
 
     	if ( m_encTkt != null)
     	{
-    		// Create the session key
+    		// Create the session key, and decrypt the authenticator
 
-    		EncryptionKey encKey = new EncryptionKey( m_encTkt.getEncryptionKeyType(), m_encTkt.getEncryptionKey());
+    		m_sessKey = new EncryptionKey( m_encTkt.getEncryptionKeyType(), m_encTkt.getEncryptionKey());
+    		decryptAuthenticator( apReq);
+    	}
+    	else
+    		throw new IOException("Failed to decrypt Kerberos ticket");
+	}
 
-    		// Decrypt the authenticator
+	/**
+	 * Parse the AP-REQ blob using the session key from a previously decrypted ticket, the ticket is not decrypted
+	 *
+	 * @param apReq KerberosApReq
+	 * @param keyType int
+	 * @param sessKey byte[]
+	 * @exception IOException
+	 */
+	public final void parseKerberosApReq( KerberosApReq apReq, int keyType, byte[] sessKey)
+		throws IOException
+	{
+		// Save the AP-REQ
 
-    		try
-    		{
-	        	// Decrypt the authenticator
+		m_apReq = apReq;
 
-	        	EncryptedData encPart = new EncryptedData( apReq.getAuthenticatorEncType(), apReq.getAuthenticatorKeyVersion() != -1 ? new Integer(apReq.getAuthenticatorKeyVersion()) : null,
-	        											   apReq.getAuthenticator());
-	        	byte[] decPart = encPart.decrypt( encKey, 11);
+		// Decrypt the authenticator using the session key
 
-	        	if ( Debug.EnableDbg && hasDebug())
-	        		Debug.println( "Decrypted authenticator = Len=" + decPart.length + ", key=[Type=" + encKey.getEType() + ", Kvno=" + encKey.getKeyVersionNumber() + ", Key=" + HexDump.hexString(encKey.getBytes()) + "]");
+		m_sessKey = new EncryptionKey( keyType, sessKey);
+		decryptAuthenticator( apReq);
 
-	        	DERBuffer derBuf = new DERBuffer( decPart);
-	        	byte[] krbAuthByts = derBuf.unpackApplicationSpecificBytes();
+		if ( m_krbAuth == null)
+			throw new IOException("Failed to decrypt Kerberos authenticator");
+	}
 
-	        	if ( krbAuthByts != null) {
+	/**
+	 * Decrypt the authenticator from the AP-REQ using the session key
+	 *
+	 * @param apReq KerberosApReq
+	 */
+	private final void decryptAuthenticator( KerberosApReq apReq)
+	{
+		try
+		{
+        	// Decrypt the authenticator
 
-	        		// Parse the authenticator
+        	EncryptedData encPart = new EncryptedData( apReq.getAuthenticatorEncType(), apReq.getAuthenticatorKeyVersion() != -1 ? new Integer(apReq.getAuthenticatorKeyVersion()) : null,
+        											   apReq.getAuthenticator());
+        	byte[] decPart = encPart.decrypt( m_sessKey, 11);
 
-	        		m_krbAuth = new KrbAuthenticator( krbAuthByts);
-	        		if ( Debug.EnableDbg && hasDebug())
-		        		Debug.println( "Krb Authenticator = " + m_krbAuth);
-	        	}
-    		}
-    		catch (Exception ex)
-    		{
-    			if ( Debug.EnableDbg && hasDebug())
-    				Debug.println("Auth Error: " + ex);
-    		}
-    	}
-    	else
-    		throw new IOException("Failed to decrypt Kerberos ticket");
+        	if ( Debug.EnableDbg && hasDebug())
+        		Debug.println( "Decrypted authenticator = Len=" + decPart.length + ", key=[Type=" + m_sessKey.getEType() + ", Kvno=" + m_sessKey.getKeyVersionNumber() + ", Key=" + HexDump.hexString(m_sessKey.getBytes()) + "]");
+
+        	DERBuffer derBuf = new DERBuffer( decPart);
+        	byte[] krbAuthByts = derBuf.unpackApplicationSpecificBytes();
+
+        	if ( krbAuthByts != null) {
+
+        		// Parse the authenticator
+
+        		m_krbAuth = new KrbAuthenticator( krbAuthByts);
+        		if ( Debug.EnableDbg && hasDebug())
+	        		Debug.println( "Krb Authenticator = " + m_krbAuth);
+        	}
+		}
+		catch (Exception ex)
+		{
+			if ( Debug.EnableDbg && hasDebug())
+				Debug.println("Auth Error: " + ex);
+		}
+	}
+
+	/**
+	 * Return the decrypted ticket part, or null if the ticket was not decrypted
+	 *
+	 * @return EncKrbTicket
+	 */
+	public final EncKrbTicket getEncryptedTicket()
+	{
+		return m_encTkt;
+	}
+
+	/**
+	 * Return the decrypted authenticator
+	 *
+	 * @return KrbAuthenticator
+	 */
+	public final KrbAuthenticator getAuthenticator()
+	{
+		return m_krbAuth;
+	}
+
+	/**
+	 * Build the mutual authentication AP-REP response token using the client timestamp and sub-key from the
+	 * authenticator, encrypted using the session key
+	 *
+	 * @return byte[]
+	 * @exception Exception
+	 */
+	public final byte[] buildKerberosApRep()
+		throws Exception
+	{
+		// Build the AP-REP encrypted part, return the client timestamp and sub-key
+
+		if ( m_krbAuth == null || m_krbAuth.getSubKey() == null)
+			throw new IOException("No authenticator sub-key for AP-REP");
+
+		EncApRepPart encApRep = new EncApRepPart();
+
+		encApRep.setTimestamp( m_krbAuth.getTimestamp(), m_krbAuth.getMicroseconds());
+		encApRep.setSubkey( m_krbAuth.getSubKeyType(), m_krbAuth.getSubKey());
+		encApRep.setSequenceNumber( m_krbAuth.getSequenceNumber());
+
+		// Encrypt the AP-REP part using the session key
+
+		EncryptedData encPart = new EncryptedData( m_sessKey, encApRep.encodeApRep(), 12);
+
+		KerberosApRep krbApRep = new KerberosApRep();
+		krbApRep.setEncryptedPart( m_sessKey.getEType(), encPart.getBytes(), -1);
+
+		byte[] aprepBlob = krbApRep.encodeApRep();
+
+		// Build the GSS response token, Kerberos 5 OID, AP-REP token id and the AP-REP
+
+		DERBuffer oidBuf = new DERBuffer();
+		new DEROid( OID.ID_KERBEROS5).derEncode( oidBuf);
+	    byte[] oidBytes = oidBuf.getBytes();
+
+		byte[] respTok = new byte[ aprepBlob.length + 2 + oidBytes.length];
+
+		int pos = 0;
+		System.arraycopy( oidBytes, 0, respTok, pos, oidBytes.length);
+		pos += oidBytes.length;
+
+		respTok[ pos++] = (byte) 0x02;
+		respTok[ pos++] = (byte) 0x00;
+
+		System.arraycopy( aprepBlob, 0, respTok, pos, aprepBlob.length);
+
+		// Wrap up as an application specific object
+
+		DERBuffer appBuf = new DERBuffer();
+		appBuf.packApplicationSpecific( respTok);
+
+		return appBuf.getBytes();
 	}
 
 	/**
@@ -222,9 +333,9 @@ public class KrbAuthContext extends AuthContext {
         if ( Debug.EnableDbg && hasDebug())
         	Debug.println("Kerberos AP-REP - " + krbApRep);
 
-		// Create the session key
+		// Use the session key
 
-		EncryptionKey encKey = new EncryptionKey( m_encTkt.getEncryptionKeyType(), m_encTkt.getEncryptionKey());
+		EncryptionKey encKey = m_sessKey;
 
 		// Decrypt the AP-REP
 
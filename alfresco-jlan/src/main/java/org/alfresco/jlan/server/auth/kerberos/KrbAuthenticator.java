@@ -112,6 +112,16 @@ public class KrbAuthenticator {
 		return m_timestamp;
 	}
 
+	/**
+	 * Return the microseconds part of the timestamp
+	 *
+	 * @return int
+	 */
+	public final int getMicroseconds()
+	{
+		return (int) m_microseconds;
+	}
+
 	/**
 	 * Return the sub-key type
 	 *
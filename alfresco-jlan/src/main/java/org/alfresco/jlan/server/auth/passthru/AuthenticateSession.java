@@ -153,6 +153,10 @@ public class AuthenticateSession {
 
   private Type2NTLMMessage m_type2Msg;
 
+  // Passthru server that the session is counted against as an outstanding request
+
+  private PassthruServerDetails m_passthruServer;
+
 	//	Global session id
 
   private static int m_sessionIdx = 1;
@@ -325,6 +329,10 @@ public class AuthenticateSession {
   public void CloseSession()
    	throws java.io.IOException, SMBException {
 
+    //  Release the outstanding request count on the passthru server
+
+    releasePassthruServer();
+
     //  If the session is valid then hangup the session
 
     if (isActive()) {
@@ -339,6 +347,25 @@ public class AuthenticateSession {
     }
   }
 
+  /**
+   * Set the passthru server that the session is counted against as an outstanding request
+   *
+   * @param server PassthruServerDetails
+   */
+  final synchronized void setPassthruServer(PassthruServerDetails server) {
+    m_passthruServer = server;
+  }
+
+  /**
+   * Release the outstanding request count on the associated passthru server, if set
+   */
+  private final synchronized void releasePassthruServer() {
+    if ( m_passthruServer != null) {
+      m_passthruServer.decrementOutstanding();
+      m_passthruServer = null;
+    }
+  }
+
 	/**
 	 * Return the default flags settings for this session
 	 *
@@ -82,6 +82,11 @@ public class PassthruAuthenticator extends CifsAuthenticator implements SessionL
 	public final static int MinCheckInterval 	= 10; // 10 seconds
 	public final static int MaxCheckInterval 	= 15 * 60; // 15 minutes
 
+	public final static int MaxSessionPoolSize	= 32;
+
+	public final static int MinKeepAliveInterval	= 5; // 5 seconds
+	public final static int MaxKeepAliveInterval	= 5 * 60; // 5 minutes
+
 	// Passthru keep alive interval
 
 	public final static long PassthruKeepAliveInterval = 60000L; // 60 seconds
@@ -1350,6 +1355,53 @@ public class PassthruAuthenticator extends CifsAuthenticator implements SessionL
 			}
 		}
 
+		// Check if the session pool size has been specified
+
+		ConfigElement poolSizeElem = params.getChild("sessionPoolSize");
+		if ( poolSizeElem != null) {
+
+			try {
+
+				// Validate the session pool size, zero disables session pooling
+
+				int poolSize = Integer.parseInt(poolSizeElem.getValue());
+
+				if ( poolSize < 0 || poolSize > MaxSessionPoolSize)
+					throw new InvalidConfigurationException("Invalid session pool size, valid range is 0 to " + MaxSessionPoolSize);
+
+				// Set the number of pre-connected sessions to keep for each authentication server
+
+				m_passthruServers.setSessionPoolSize(poolSize);
+			}
+			catch (NumberFormatException ex) {
+				throw new InvalidConfigurationException("Invalid session pool size specified");
+			}
+		}
+
+		// Check if the pooled session keep-alive interval has been specified
+
+		ConfigElement keepAliveElem = params.getChild("keepAliveInterval");
+		if ( keepAliveElem != null) {
+
+			try {
+
+				// Validate the keep-alive interval
+
+				int keepAlive = Integer.parseInt(keepAliveElem.getValue());
+
+				if ( keepAlive < MinKeepAliveInterval || keepAlive > MaxKeepAliveInterval)
+					throw new InvalidConfigurationException("Invalid keep-alive interval, valid range is " + MinKeepAliveInterval
+							+ " to " + MaxKeepAliveInterval);
+
+				// Set the keep-alive interval for idle pooled sessions
+
+				m_passthruServers.setKeepAliveInterval(keepAlive);
+			}
+			catch (NumberFormatException ex) {
+				throw new InvalidConfigurationException("Invalid keep-alive interval specified");
+			}
+		}
+
 		// Check if a server name has been specified
 
 		String srvList = null;
@@ -21,11 +21,17 @@ package org.alfresco.jlan.server.auth.passthru;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * <p>Contains the details of a server used for passthru authentication, the current status of the server
  * and count of authentications done via this server.
  *
+ * <p>Also tracks the load and health of the server, the number of outstanding authentication sessions and
+ * a smoothed connection latency, and holds a pool of pre-connected authentication sessions.
+ *
  * @author GKSpencer
  */
 public class PassthruServerDetails
@@ -45,6 +51,91 @@ public class PassthruServerDetails
     private int m_authCount;
     private long m_lastAuthTime;
 
+    // Load and health statistics, count of outstanding authentication sessions, smoothed latency in
+    // milliseconds and count of consecutive connection failures
+
+    private int m_outstanding;
+    private long m_avgLatency;
+    private int m_failCount;
+
+    // Time that the server should next be checked, if offline
+
+    private long m_nextCheckTime;
+
+    // Pool of pre-connected authentication sessions, oldest first
+
+    private LinkedList<PooledSession> m_sessPool = new LinkedList<PooledSession>();
+
+    /**
+     * Pooled Session Class
+     *
+     * <p>Contains a pre-connected authentication session and the time it was created and last checked.
+     */
+    static class PooledSession
+    {
+        // Authentication session
+
+        private AuthenticateSession m_authSess;
+
+        // Time the session was created and last checked using a keep-alive
+
+        private long m_createTime;
+        private long m_checkTime;
+
+        /**
+         * Class constructor
+         *
+         * @param authSess AuthenticateSession
+         * @param createTime long
+         */
+        PooledSession(AuthenticateSession authSess, long createTime)
+        {
+            m_authSess   = authSess;
+            m_createTime = createTime;
+            m_checkTime  = createTime;
+        }
+
+        /**
+         * Return the authentication session
+         *
+         * @return AuthenticateSession
+         */
+        final AuthenticateSession getSession()
+        {
+            return m_authSess;
+        }
+
+        /**
+         * Return the session creation time
+         *
+         * @return long
+         */
+        final long getCreateTime()
+        {
+            return m_createTime;
+        }
+
+        /**
+         * Return the time the session was last checked
+         *
+         * @return long
+         */
+        final long getCheckTime()
+        {
+            return m_checkTime;
+        }
+
+        /**
+         * Set the time the session was last checked
+         *
+         * @param checkTime long
+         */
+        final void setCheckTime(long checkTime)
+        {
+            m_checkTime = checkTime;
+        }
+    }
+
     /**
      * Class constructor
      *
@@ -121,6 +212,190 @@ public class PassthruServerDetails
         return m_lastAuthTime;
     }
 
+    /**
+     * Return the count of outstanding authentication sessions using this server
+     *
+     * @return int
+     */
+    public synchronized final int getOutstandingCount()
+    {
+        return m_outstanding;
+    }
+
+    /**
+     * Return the smoothed connection latency, in milliseconds
+     *
+     * @return long
+     */
+    public synchronized final long getAverageLatency()
+    {
+        return m_avgLatency;
+    }
+
+    /**
+     * Return the count of consecutive connection failures
+     *
+     * @return int
+     */
+    public synchronized final int getFailureCount()
+    {
+        return m_failCount;
+    }
+
+    /**
+     * Return the health score for the server, lower values indicate a less loaded, more responsive server
+     *
+     * @return long
+     */
+    public synchronized final long getHealthScore()
+    {
+        return ((long) m_outstanding + 1L) * ( m_avgLatency + 1L);
+    }
+
+    /**
+     * Return the time that the server should next be checked, if offline
+     *
+     * @return long
+     */
+    public synchronized final long getNextCheckTime()
+    {
+        return m_nextCheckTime;
+    }
+
+    /**
+     * Set the time that the server should next be checked
+     *
+     * @param checkTime long
+     */
+    public synchronized final void setNextCheckTime(long checkTime)
+    {
+        m_nextCheckTime = checkTime;
+    }
+
+    /**
+     * Increment the outstanding authentication session count
+     */
+    synchronized final void incrementOutstanding()
+    {
+        m_outstanding++;
+    }
+
+    /**
+     * Decrement the outstanding authentication session count
+     */
+    synchronized final void decrementOutstanding()
+    {
+        if ( m_outstanding > 0)
+            m_outstanding--;
+    }
+
+    /**
+     * Record a successful request to the server, and update the smoothed latency
+     *
+     * @param latency long
+     */
+    synchronized final void recordSuccess(long latency)
+    {
+        // Update the latency using an exponentially weighted moving average, weight 1/8 for the new sample
+
+        if ( m_avgLatency == 0L)
+            m_avgLatency = latency;
+        else
+            m_avgLatency = ( m_avgLatency * 7L + latency) / 8L;
+
+        m_failCount = 0;
+    }
+
+    /**
+     * Record a failed request to the server
+     *
+     * @return int Count of consecutive failures
+     */
+    synchronized final int recordFailure()
+    {
+        return ++m_failCount;
+    }
+
+    /**
+     * Return the count of pooled sessions
+     *
+     * @return int
+     */
+    public synchronized final int getPooledSessionCount()
+    {
+        return m_sessPool.size();
+    }
+
+    /**
+     * Add a pre-connected session to the pool
+     *
+     * @param pooled PooledSession
+     */
+    synchronized final void addPooledSession(PooledSession pooled)
+    {
+        m_sessPool.addLast( pooled);
+    }
+
+    /**
+     * Remove the most recently checked session from the pool
+     *
+     * @return AuthenticateSession, or null if the pool is empty
+     */
+    synchronized final AuthenticateSession removePooledSession()
+    {
+        while ( m_sessPool.size() > 0)
+        {
+            // Use the newest session, least likely to have been dropped by the server
+
+            AuthenticateSession authSess = m_sessPool.removeLast().getSession();
+            if ( authSess.isActive())
+                return authSess;
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove pooled sessions that were created before the specified time, or that have not been checked since
+     * the specified check time
+     *
+     * @param createdBefore long
+     * @param checkedBefore long
+     * @param expiredList List<PooledSession>
+     * @param checkList List<PooledSession>
+     */
+    synchronized final void removeIdleSessions(long createdBefore, long checkedBefore, List<PooledSession> expiredList, List<PooledSession> checkList)
+    {
+        Iterator<PooledSession> iter = m_sessPool.iterator();
+
+        while ( iter.hasNext())
+        {
+            PooledSession pooled = iter.next();
+
+            if ( pooled.getCreateTime() < createdBefore || pooled.getSession().isActive() == false)
+            {
+                iter.remove();
+                expiredList.add( pooled);
+            }
+            else if ( pooled.getCheckTime() < checkedBefore)
+            {
+                iter.remove();
+                checkList.add( pooled);
+            }
+        }
+    }
+
+    /**
+     * Remove all pooled sessions
+     *
+     * @param sessList List<PooledSession>
+     */
+    synchronized final void removeAllPooledSessions(List<PooledSession> sessList)
+    {
+        sessList.addAll( m_sessPool);
+        m_sessPool.clear();
+    }
+
     /**
      * Set the domain that the offline server belongs to
      *
@@ -186,6 +461,13 @@ public class PassthruServerDetails
         str.append(getAuthenticationCount());
         str.append(",");
         str.append(getAuthenticationDateTime() != 0L ? new Date(getAuthenticationDateTime()).toString() : "0");
+
+        str.append(",Outstanding=");
+        str.append(getOutstandingCount());
+        str.append(",Latency=");
+        str.append(getAverageLatency());
+        str.append("ms,Pooled=");
+        str.append(getPooledSessionCount());
         str.append("]");
 
         return str.toString();
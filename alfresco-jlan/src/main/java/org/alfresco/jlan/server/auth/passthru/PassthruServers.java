@@ -40,6 +40,11 @@ import org.alfresco.jlan.util.IPAddress;
  * servers is tracked so that offline servers are not used but periodically monitored so that they can be
  * returned to the online list of servers.
  *
+ * <p>Each online server has a pool of pre-connected authentication sessions, that have completed the connect and
+ * negotiate exchanges, which are handed out to new logons and refilled in the background. The server with the
+ * lowest health score, based on the count of outstanding sessions and the smoothed connection latency, is
+ * selected for each new logon.
+ *
  * <p>The server list may be initialized from a list of server names or addresses, or by specifying a domain
  * name in which case the primary and backup domain controllers will be used.
  *
@@ -56,6 +61,18 @@ public class PassthruServers
 
     private static final long DefaultOfflineCheckInterval = 5 * 60000;  // 5 minutes
 
+    // Initial interval to check a server that has gone offline, doubled for each failed check up to the
+    // offline check interval
+
+    private static final long MinOfflineCheckInterval = 5000L;  // 5 seconds
+
+    // Default number of pre-connected sessions to keep for each online server, keep-alive interval for idle
+    // pooled sessions and maximum age of a pooled session
+
+    private static final int DefaultSessionPoolSize = 2;
+    private static final long DefaultKeepAliveInterval = 30000L;  // 30 seconds
+    private static final long DefaultSessionMaxAge = 5 * 60000L;  // 5 minutes
+
     // List of online and offline authentication servers
 
     private List<PassthruServerDetails> m_onlineList;
@@ -73,9 +90,20 @@ public class PassthruServers
 
     private long m_offlineCheckInterval = DefaultOfflineCheckInterval;
 
-    // Offline server checker thread
+    // Session pool size, keep-alive interval and maximum pooled session age
+
+    private int m_sessPoolSize = DefaultSessionPoolSize;
+    private long m_keepAliveInterval = DefaultKeepAliveInterval;
+    private long m_sessMaxAge = DefaultSessionMaxAge;
+
+    // Session pool statistics
+
+    private long m_poolHits;
+    private long m_poolMisses;
+
+    // Offline server checker and session pool monitor thread
 
-    PassthruOfflineChecker m_offlineChecker;
+    PassthruServerMonitor m_monitor;
 
     // Debug output enable
 
@@ -86,21 +114,32 @@ public class PassthruServers
     private boolean m_nullDomainUseAnyServer;
 
     /**
-     * Inner class used to periodically check offline servers to see if they are back online
+     * Inner class used to check offline servers to see if they are back online, and to maintain the pools
+     * of pre-connected authentication sessions for the online servers
+     *
+     * <p>Offline servers are checked using an increasing backoff, starting at the minimum check interval and
+     * doubling for each failed check up to the configured offline check interval. Pooled sessions are checked
+     * using an echo request at the keep-alive interval, the echo latency is used to update the server health
+     * score and a failed echo marks the server as offline.
      */
-    class PassthruOfflineChecker extends Thread
+    class PassthruServerMonitor extends Thread
     {
         // Thread shutdown request flag
 
-        private boolean m_ishutdown;
+        private volatile boolean m_ishutdown;
+
+        // Wakeup request flag and lock
+
+        private boolean m_wakeup;
+        private Object m_wakeLock = new Object();
 
         /**
          * Default constructor
          */
-        PassthruOfflineChecker()
+        PassthruServerMonitor()
         {
             setDaemon(true);
-            setName("PassthruOfflineChecker");
+            setName("PassthruServerMonitor");
             start();
         }
 
@@ -111,106 +150,259 @@ public class PassthruServers
         {
             // Loop until shutdown
 
-            m_ishutdown = false;
-
             while ( m_ishutdown == false)
             {
-                // Sleep for a while
+                long nextRun = System.currentTimeMillis() + m_offlineCheckInterval;
 
                 try
                 {
-                    sleep( m_offlineCheckInterval);
+                    // Check the offline servers that are due to be checked
+
+                    nextRun = Math.min( nextRun, checkOfflineServers());
+
+                    // Check and refill the session pools for the online servers
+
+                    if ( getSessionPoolSize() > 0)
+                        nextRun = Math.min( nextRun, checkSessionPools());
+                }
+                catch ( Throwable ex)
+                {
+                    // Debug
+
+                    if ( hasDebug())
+                        Debug.println("Passthru server monitor error, " + ex.toString());
                 }
-                catch ( InterruptedException ex)
+
+                // Wait until the next check is due, or a wakeup request
+
+                synchronized ( m_wakeLock)
                 {
+                    long waitTime = nextRun - System.currentTimeMillis();
+
+                    if ( m_wakeup == false && m_ishutdown == false && waitTime > 0L)
+                    {
+                        try
+                        {
+                            m_wakeLock.wait( waitTime);
+                        }
+                        catch ( InterruptedException ex)
+                        {
+                        }
+                    }
+
+                    m_wakeup = false;
                 }
+            }
 
-                // Check if shutdown has been requested
+            // Debug
+
+            if( hasDebug())
+                Debug.println("Passthru server monitor thread closed");
+        }
 
-                if( m_ishutdown == true)
+        /**
+         * Check offline servers that are due to be checked, and return the time of the next offline check
+         *
+         * @return long
+         */
+        private final long checkOfflineServers()
+        {
+            // Take a copy of the offline server list
+
+            List<PassthruServerDetails> offlineList = null;
+
+            synchronized ( m_offlineList)
+            {
+                offlineList = new ArrayList<PassthruServerDetails>( m_offlineList);
+            }
+
+            // Check each offline server that is due
+
+            long nextCheck = Long.MAX_VALUE;
+            PCShare authShare = new PCShare("", "IPC$", "", "");
+
+            for ( PassthruServerDetails offlineServer : offlineList)
+            {
+                // Check if the server is due to be checked
+
+                if ( offlineServer.getNextCheckTime() > System.currentTimeMillis())
+                {
+                    nextCheck = Math.min( nextCheck, offlineServer.getNextCheckTime());
                     continue;
+                }
+
+                try
+                {
+                    // Set the target host name
+
+                    authShare.setNodeName(offlineServer.getAddress().getHostAddress());
 
-                // Check if there are any offline servers to check
+                    // Try and connect to the authentication server
 
-                if ( getOfflineServerCount() > 0)
+                    long startTime = System.currentTimeMillis();
+                    AuthenticateSession authSess = AuthSessionFactory.OpenAuthenticateSession( authShare, getConnectionTimeout());
+                    long endTime = System.currentTimeMillis();
+
+                    offlineServer.recordSuccess( endTime - startTime);
+
+                    // Keep the session in the session pool, if enabled, else close the session
+
+                    if ( getSessionPoolSize() > 0)
+                        offlineServer.addPooledSession( new PassthruServerDetails.PooledSession( authSess, endTime));
+                    else
+                        closeSession( authSess);
+
+                    // Authentication server is online, move it to the online list
+
+                    serverOnline(offlineServer);
+                }
+                catch ( Exception ex)
                 {
-                    // Enumerate the offline server list
+                    // Debug
 
-                    int idx = 0;
-                    PassthruServerDetails offlineServer = null;
-                    PCShare authShare = new PCShare("", "IPC$", "", "");
-                    AuthenticateSession authSess = null;
+                    if ( hasDebug())
+                        Debug.println("Passthru offline check failed for " + offlineServer.getName());
 
-                    while ( idx < getOfflineServerCount())
-                    {
-                        // Get an offline server from the list
+                    // Schedule the next check for the server
 
-                        offlineServer = (PassthruServerDetails) m_offlineList.get(idx);
+                    scheduleOfflineCheck( offlineServer);
+                    nextCheck = Math.min( nextCheck, offlineServer.getNextCheckTime());
+                }
+            }
 
-                        if ( offlineServer != null)
-                        {
-                            try
-                            {
-                                // Set the target host name
+            // Return the time of the next offline server check
 
-                                authShare.setNodeName(offlineServer.getAddress().getHostAddress());
+            return nextCheck;
+        }
 
-                                // Try and connect to the authentication server
+        /**
+         * Expire, keep-alive and refill the session pools for the online servers, and return the time of the next
+         * pool check
+         *
+         * @return long
+         */
+        private final long checkSessionPools()
+        {
+            // Take a copy of the online server list
 
-                                authSess = AuthSessionFactory.OpenAuthenticateSession( authShare, getConnectionTimeout());
+            List<PassthruServerDetails> onlineList = null;
 
-                                // Close the session
+            synchronized ( m_onlineList)
+            {
+                onlineList = new ArrayList<PassthruServerDetails>( m_onlineList);
+            }
+
+            // Check the session pool for each online server
+
+            List<PassthruServerDetails.PooledSession> expiredList = new ArrayList<PassthruServerDetails.PooledSession>();
+            List<PassthruServerDetails.PooledSession> checkList = new ArrayList<PassthruServerDetails.PooledSession>();
+            PCShare authShare = new PCShare("", "IPC$", "", "");
+
+            for ( PassthruServerDetails onlineServer : onlineList)
+            {
+                // Remove sessions that have reached the maximum age and sessions that are due a keep-alive check
+
+                long curTime = System.currentTimeMillis();
+
+                expiredList.clear();
+                checkList.clear();
+
+                onlineServer.removeIdleSessions( curTime - m_sessMaxAge, curTime - m_keepAliveInterval, expiredList, checkList);
 
-                                try
-                                {
-                                    authSess.CloseSession();
-                                }
-                                catch ( Exception ex)
-                                {
-                                }
+                for ( PassthruServerDetails.PooledSession pooled : expiredList)
+                    closeSession( pooled.getSession());
 
-                                // Authentication server is online, move it to the online list
+                // Send a keep-alive to the remaining idle sessions, and return them to the pool
 
-                                serverOnline(offlineServer);
-                            }
-                            catch ( Exception ex)
-                            {
-                                // Debug
+                boolean failed = false;
 
-                                if ( hasDebug())
-                                    Debug.println("Passthru offline check failed for " + offlineServer.getName());
-                            }
+                for ( PassthruServerDetails.PooledSession pooled : checkList)
+                {
+                    if ( failed == false)
+                    {
+                        try
+                        {
+                            long startTime = System.currentTimeMillis();
+                            pooled.getSession().pingServer();
+                            long endTime = System.currentTimeMillis();
 
-                            // Check if the server is now online
+                            onlineServer.recordSuccess( endTime - startTime);
 
-                            if ( offlineServer.isOnline() == false)
-                                idx++;
+                            pooled.setCheckTime( endTime);
+                            onlineServer.addPooledSession( pooled);
+                            continue;
+                        }
+                        catch ( Exception ex)
+                        {
+                            // Debug
+
+                            if ( hasDebug())
+                                Debug.println("Passthru keep-alive failed for " + onlineServer.getName() + " : " + ex.getMessage());
+
+                            failed = true;
                         }
                     }
+
+                    closeSession( pooled.getSession());
                 }
+
+                // Refill the session pool
+
+                try
+                {
+                    authShare.setNodeName(onlineServer.getAddress().getHostAddress());
+
+                    while ( failed == false && onlineServer.isOnline() && m_ishutdown == false &&
+                            onlineServer.getPooledSessionCount() < getSessionPoolSize())
+                    {
+                        long startTime = System.currentTimeMillis();
+                        AuthenticateSession authSess = AuthSessionFactory.OpenAuthenticateSession( authShare, getConnectionTimeout());
+                        long endTime = System.currentTimeMillis();
+
+                        onlineServer.recordSuccess( endTime - startTime);
+                        onlineServer.addPooledSession( new PassthruServerDetails.PooledSession( authSess, endTime));
+                    }
+                }
+                catch ( Exception ex)
+                {
+                    // Debug
+
+                    if ( hasDebug())
+                        Debug.println("Passthru pool connect failed for " + onlineServer.getName() + " : " + ex.getMessage());
+
+                    failed = true;
+                }
+
+                // Mark the server as offline if a keep-alive or connect failed
+
+                if ( failed == true && onlineServer.isOnline())
+                    serverOffline( onlineServer);
             }
 
-            // Debug
+            // Return the time of the next keep-alive check
 
-            if( hasDebug())
-                Debug.println("Passthru offline checker thread closed");
+            return System.currentTimeMillis() + m_keepAliveInterval;
         }
 
         /**
-         * Shutdown the checker thread
+         * Shutdown the monitor thread
          */
         public final void shutdownRequest()
         {
             m_ishutdown = true;
-            this.interrupt();
+            wakeupMonitor();
         }
 
         /**
-         * Wakeup the offline checker thread to process the offline server list
+         * Wakeup the monitor thread to process the offline server list and refill the session pools
          */
-        public final void processOfflineServers()
+        public final void wakeupMonitor()
         {
-            this.interrupt();
+            synchronized ( m_wakeLock)
+            {
+                m_wakeup = true;
+                m_wakeLock.notify();
+            }
         }
     }
 
@@ -224,7 +416,7 @@ public class PassthruServers
     /**
      * Class constructor
      *
-     * @param checkInterval In seconds
+     * @param checkInterval Maximum offline server check interval, in seconds
      */
     public PassthruServers(int checkInterval) {
 
@@ -247,9 +439,9 @@ public class PassthruServers
         m_onlineList  = new ArrayList<PassthruServerDetails>();
         m_offlineList = new ArrayList<PassthruServerDetails>();
 
-        // Create and start the offline server checker thread
+        // Create and start the offline server checker and session pool monitor thread
 
-        m_offlineChecker = new PassthruOfflineChecker();
+        m_monitor = new PassthruServerMonitor();
     }
 
     /**
@@ -322,6 +514,46 @@ public class PassthruServers
         return m_domain;
     }
 
+    /**
+     * Return the number of pre-connected sessions to keep for each online server
+     *
+     * @return int
+     */
+    public final int getSessionPoolSize()
+    {
+        return m_sessPoolSize;
+    }
+
+    /**
+     * Return the keep-alive interval for idle pooled sessions, in milliseconds
+     *
+     * @return long
+     */
+    public final long getKeepAliveInterval()
+    {
+        return m_keepAliveInterval;
+    }
+
+    /**
+     * Return the count of logons that used a pooled session
+     *
+     * @return long
+     */
+    public synchronized final long getPoolHitCount()
+    {
+        return m_poolHits;
+    }
+
+    /**
+     * Return the count of logons that had to connect a new session
+     *
+     * @return long
+     */
+    public synchronized final long getPoolMissCount()
+    {
+        return m_poolMisses;
+    }
+
     /**
      * Check if debug output is enabled
      *
@@ -377,43 +609,77 @@ public class PassthruServers
         if ( hasDebug())
             Debug.println("Open authenticate session to " + passthruServer + ( clientDomain != null ? " (routed for client domain " + clientDomain + ")" : ""));
 
-        // Open a new authentication session to the server
+        // Open a new authentication session to the server, the selected server has already had the outstanding
+        // session count incremented
 
         AuthenticateSession authSess = null;
 
         while ( authSess == null && passthruServer != null && hasOnlineServers()) {
 
-            PCShare authShare = new PCShare(passthruServer.getAddress().getHostAddress(), "IPC$", "", "");
+            // Use a pre-connected session from the server session pool, if available
 
-            try
+            authSess = passthruServer.removePooledSession();
+
+            if ( authSess != null)
+            {
+                synchronized ( this)
+                {
+                    m_poolHits++;
+                }
+            }
+            else
             {
-                // Open a session to the current authentication server
+                PCShare authShare = new PCShare(passthruServer.getAddress().getHostAddress(), "IPC$", "", "");
 
-                authSess = AuthSessionFactory.OpenAuthenticateSession( authShare, getConnectionTimeout());
+                try
+                {
+                    // Open a session to the current authentication server
 
-                // Update the passthru statistics
+                    long startTime = System.currentTimeMillis();
+                    authSess = AuthSessionFactory.OpenAuthenticateSession( authShare, getConnectionTimeout());
 
-                passthruServer.incrementAuthenticationCount();
-            }
-            catch ( Exception ex)
-            {
-                // Debug
+                    passthruServer.recordSuccess( System.currentTimeMillis() - startTime);
 
-                if ( hasDebug())
-                    Debug.println("Failed to connect to " + passthruServer + " : " + ex.getMessage());
+                    synchronized ( this)
+                    {
+                        m_poolMisses++;
+                    }
+                }
+                catch ( Exception ex)
+                {
+                    // Debug
+
+                    if ( hasDebug())
+                        Debug.println("Failed to connect to " + passthruServer + " : " + ex.getMessage());
 
-                // Failed to connect to the current authentication server, mark the server as offline
+                    // Failed to connect to the current authentication server, mark the server as offline
 
-                serverOffline(passthruServer);
+                    serverOffline(passthruServer);
+                }
             }
 
             // Check if we have a valid session
 
-            if ( authSess == null)
+            if ( authSess != null)
             {
+                // Update the passthru statistics, the outstanding session count is released when the session is
+                // closed
+
+                passthruServer.incrementAuthenticationCount();
+                authSess.setPassthruServer( passthruServer);
+            }
+            else
+            {
+                // Release the outstanding session count on the failed server
+
+                passthruServer.decrementOutstanding();
+
                 // Try another authentication server
 
-                passthruServer = getAuthenticationServer();
+                if ( clientDomain != null)
+                    passthruServer = getAuthenticationServer( clientDomain);
+                else
+                    passthruServer = getAuthenticationServer();
 
                 // Debug
 
@@ -422,6 +688,16 @@ public class PassthruServers
             }
         }
 
+        // Release the outstanding session count if the last server selected was not used
+
+        if ( authSess == null && passthruServer != null)
+            passthruServer.decrementOutstanding();
+
+        // Wakeup the monitor thread to refill the session pool
+
+        if ( getSessionPoolSize() > 0)
+            m_monitor.wakeupMonitor();
+
         // Return the authentication session
 
         return authSess;
@@ -430,6 +706,8 @@ public class PassthruServers
     /**
      * Return the details of an online server to use for authentication
      *
+     * <p>The outstanding session count of the returned server is incremented, and must be released by the caller.
+     *
      * @return PassthruServerDetails
      */
     protected PassthruServerDetails getAuthenticationServer()
@@ -437,103 +715,86 @@ public class PassthruServers
         // Check if any available passthru server or a passthru server that does not have a domain name set
         // should be used
 
-        PassthruServerDetails passthruServer = null;
-
-        if ( getNullDomainUseAnyServer())
-        {
-        	// Use the first available passthru server
+        return selectServer( null, getNullDomainUseAnyServer());
+    }
 
-	        synchronized ( m_onlineList)
-	        {
-	            // Rotate the head of the list and return the new head of list server details
+    /**
+     * Return the details of an online server to use for authentication of the specified client
+     * domain
+     *
+     * <p>The outstanding session count of the returned server is incremented, and must be released by the caller.
+     *
+     * @param clientDomain String
+     * @return PassthruServerDetails
+     */
+    protected PassthruServerDetails getAuthenticationServer( String clientDomain)
+    {
+        PassthruServerDetails passthruServer = selectServer( clientDomain, false);
 
-	            if ( m_onlineList.size() > 1)
-	                m_onlineList.add(m_onlineList.remove(0));
-	            if ( m_onlineList.size() > 0)
-	                passthruServer = (PassthruServerDetails) m_onlineList.get(0);
-	        }
-        }
-        else
+        if (passthruServer == null)
         {
-        	// Search for an online passthru server that does not have a domain name set
-
-            synchronized ( m_onlineList)
-            {
-              int idx = 0;
-
-              while ( idx < m_onlineList.size() && passthruServer == null)
-              {
-                // Get the current passthru server details
-
-                PassthruServerDetails curServer = m_onlineList.get( idx);
-
-                if ( curServer.getDomain() == null || curServer.getDomain().length() == 0)
-                {
-                  // Use this passthru server
-
-                  passthruServer = curServer;
-
-                  // Move to the back of the list
-
-                  m_onlineList.add( m_onlineList.remove( idx));
-                }
-
-                // Update the server index
-
-                idx++;
-              }
-            }
+            Debug.println("No server found for domain " + clientDomain);
         }
-
-        // Return the selected passthru server, or null if not available
-
         return passthruServer;
     }
 
     /**
-     * Return the details of an online server to use for authentication of the specified client
-     * domain
+     * Select the online server with the lowest health score, from the servers for the specified domain, servers
+     * without a domain if the domain is null, or any server
      *
      * @param clientDomain String
+     * @param anyServer boolean
      * @return PassthruServerDetails
      */
-    protected PassthruServerDetails getAuthenticationServer( String clientDomain)
+    private final PassthruServerDetails selectServer( String clientDomain, boolean anyServer)
     {
-        // Rotate the head of the list and return the new head of list server details
-
         PassthruServerDetails passthruServer = null;
 
         synchronized ( m_onlineList)
         {
-          int idx = 0;
+            int bestIdx = -1;
+            long bestScore = Long.MAX_VALUE;
 
-          while ( idx < m_onlineList.size() && passthruServer == null)
-          {
-            // Get the current passthru server details
+            for ( int idx = 0; idx < m_onlineList.size(); idx++)
+            {
+                // Get the current passthru server details, and check if it is a candidate server
 
-            PassthruServerDetails curServer = m_onlineList.get( idx);
+                PassthruServerDetails curServer = m_onlineList.get( idx);
+                String curDomain = curServer.getDomain();
 
-            if ( curServer.getDomain() != null && curServer.getDomain().equals( clientDomain))
-            {
-              // Use this passthru server
+                if ( anyServer == false)
+                {
+                    if ( clientDomain != null && ( curDomain == null || curDomain.equals( clientDomain) == false))
+                        continue;
+                    else if ( clientDomain == null && curDomain != null && curDomain.length() > 0)
+                        continue;
+                }
 
-              passthruServer = curServer;
+                // Check if the server has the lowest score so far
 
-              // Move to the back of the list
+                long curScore = curServer.getHealthScore();
 
-              m_onlineList.add( m_onlineList.remove( idx));
+                if ( curScore < bestScore)
+                {
+                    bestIdx = idx;
+                    bestScore = curScore;
+                }
             }
 
-            // Update the server index
+            // Use the best server, and move it to the back of the list so servers with equal scores are used
+            // in turn
 
-            idx++;
-          }
-        }
+            if ( bestIdx != -1)
+            {
+                passthruServer = m_onlineList.remove( bestIdx);
+                m_onlineList.add( passthruServer);
 
-        if (passthruServer == null)
-        {
-            Debug.println("No server found for domain " + clientDomain);
+                passthruServer.incrementOutstanding();
+            }
         }
+
+        // Return the selected passthru server, or null if not available
+
         return passthruServer;
     }
 
@@ -544,17 +805,30 @@ public class PassthruServers
      */
     protected final void serverOffline(PassthruServerDetails server)
     {
-        // Set the server status
-
-        server.setOnline(false);
-
-        // Remove the server from the online list
+        // Remove the server from the online list, check if another thread has already marked the server offline
 
         synchronized( m_onlineList)
         {
-            m_onlineList.remove(server);
+            if ( m_onlineList.remove(server) == false)
+                return;
+
+            // Set the server status
+
+            server.setOnline(false);
         }
 
+        // Close any pooled sessions to the server
+
+        List<PassthruServerDetails.PooledSession> pooledList = new ArrayList<PassthruServerDetails.PooledSession>();
+        server.removeAllPooledSessions( pooledList);
+
+        for ( PassthruServerDetails.PooledSession pooled : pooledList)
+            closeSession( pooled.getSession());
+
+        // Schedule the first check of the offline server
+
+        scheduleOfflineCheck( server);
+
         // Add it to the offline list
 
         synchronized( m_offlineList)
@@ -562,6 +836,10 @@ public class PassthruServers
             m_offlineList.add( server);
         }
 
+        // Wakeup the monitor thread to pickup the new offline check time
+
+        m_monitor.wakeupMonitor();
+
         // Debug
 
         if ( hasDebug())
@@ -599,6 +877,36 @@ public class PassthruServers
             Debug.println("Passthru server online, " + server);
     }
 
+    /**
+     * Schedule the next check of an offline server, the check interval doubles for each consecutive failure
+     * up to the offline check interval
+     *
+     * @param server PassthruServerDetails
+     */
+    private final void scheduleOfflineCheck(PassthruServerDetails server)
+    {
+        int failCnt = server.recordFailure();
+        long interval = MinOfflineCheckInterval << Math.min( failCnt - 1, 16);
+
+        server.setNextCheckTime( System.currentTimeMillis() + Math.min( interval, m_offlineCheckInterval));
+    }
+
+    /**
+     * Close an authentication session, ignoring errors
+     *
+     * @param authSess AuthenticateSession
+     */
+    private final void closeSession(AuthenticateSession authSess)
+    {
+        try
+        {
+            authSess.CloseSession();
+        }
+        catch ( Exception ex)
+        {
+        }
+    }
+
     /**
      * Set the session connect timeout value, in milliseconds
      *
@@ -610,7 +918,7 @@ public class PassthruServers
     }
 
     /**
-     * Set the offline check interval, in seconds
+     * Set the maximum offline check interval, in seconds
      *
      * @param interval long
      */
@@ -618,9 +926,33 @@ public class PassthruServers
     {
         m_offlineCheckInterval = interval * 1000L;
 
-        // Wakeup the offline checked thread to pickup the new interval
+        // Wakeup the monitor thread to pickup the new interval
 
-        m_offlineChecker.processOfflineServers();
+        m_monitor.wakeupMonitor();
+    }
+
+    /**
+     * Set the number of pre-connected sessions to keep for each online server, zero disables session pooling
+     *
+     * @param poolSize int
+     */
+    public final void setSessionPoolSize(int poolSize)
+    {
+        m_sessPoolSize = poolSize;
+
+        // Wakeup the monitor thread to fill the session pools
+
+        m_monitor.wakeupMonitor();
+    }
+
+    /**
+     * Set the keep-alive interval for idle pooled sessions, in seconds
+     *
+     * @param interval long
+     */
+    public final void setKeepAliveInterval(long interval)
+    {
+        m_keepAliveInterval = interval * 1000L;
     }
 
     /**
@@ -709,10 +1041,10 @@ public class PassthruServers
             }
         }
 
-        // Wakeup the server checker thread to check each of the servers just added and move servers that are
+        // Wakeup the server monitor thread to check each of the servers just added and move servers that are
         // accessible to the online list
 
-        m_offlineChecker.processOfflineServers();
+        m_monitor.wakeupMonitor();
     }
 
     /**
@@ -830,10 +1162,10 @@ public class PassthruServers
             }
         }
 
-        // Wakeup the server checker thread to check each of the servers just added and move servers that are
+        // Wakeup the server monitor thread to check each of the servers just added and move servers that are
         // accessible to the online list
 
-        m_offlineChecker.processOfflineServers();
+        m_monitor.wakeupMonitor();
     }
 
     /**
@@ -860,9 +1192,28 @@ public class PassthruServers
      */
     public final void shutdown()
     {
-        // Shutdown the offline server checker thread
+        // Shutdown the server monitor thread
+
+        m_monitor.shutdownRequest();
 
-        m_offlineChecker.shutdownRequest();
+        // Close the pooled sessions
+
+        List<PassthruServerDetails.PooledSession> pooledList = new ArrayList<PassthruServerDetails.PooledSession>();
+
+        synchronized ( m_onlineList)
+        {
+            for ( PassthruServerDetails server : m_onlineList)
+                server.removeAllPooledSessions( pooledList);
+        }
+
+        synchronized ( m_offlineList)
+        {
+            for ( PassthruServerDetails server : m_offlineList)
+                server.removeAllPooledSessions( pooledList);
+        }
+
+        for ( PassthruServerDetails.PooledSession pooled : pooledList)
+            closeSession( pooled.getSession());
 
         // Clear the online and offline server lists
 
@@ -897,6 +1248,13 @@ public class PassthruServers
         str.append(",nullDomain=");
         str.append( getNullDomainUseAnyServer() ? "On" : "Off");
 
+        str.append(",Pool=");
+        str.append(getSessionPoolSize());
+        str.append(",Hits=");
+        str.append(getPoolHitCount());
+        str.append(",Misses=");
+        str.append(getPoolMissCount());
+
         str.append("]");
 
         return str.toString();
@@ -84,6 +84,7 @@ public class ConfigId {
 	public static final int SMBMaxVirtualCircuit= GroupSMB + 29;
         public static final int SMBLoadBalancerList     = GroupSMB + 30;
         public static final int SMBTerminalServerList   = GroupSMB + 31;
+	public static final int SMBAuthThreads		= GroupSMB + 32;
 
 	// FTP server variables
 
@@ -109,6 +110,9 @@ public class ConfigId {
 	public static final int FTPKeyProvider		= GroupFTP + 20;
 	public static final int FTPTrustProvider	= GroupFTP + 21;
         public static final int FTPSrvSessionTimeout= GroupFTP + 22;
+	public static final int FTPNIODataTransfer	= GroupFTP + 23;
+	public static final int FTPNIOSessions		= GroupFTP + 24;
+	public static final int FTPTransferThreads	= GroupFTP + 25;
 
 	// NFS server variables
 
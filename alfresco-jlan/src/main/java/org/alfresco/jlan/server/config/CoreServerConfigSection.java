@@ -20,6 +20,7 @@
 package org.alfresco.jlan.server.config;
 
 import org.alfresco.jlan.server.memory.ByteBufferPool;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 
 /**
@@ -41,6 +42,10 @@ public class CoreServerConfigSection extends ConfigSection {
 
 	private ByteBufferPool m_memoryPool;
 
+	// Metrics registry, optional
+
+	private MetricsRegistry m_metrics;
+
 	/**
 	 * Class constructor
 	 *
@@ -68,6 +73,33 @@ public class CoreServerConfigSection extends ConfigSection {
 		return m_memoryPool;
 	}
 
+	/**
+	 * Determine if the server metrics are enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasMetrics() {
+		return m_metrics != null ? true : false;
+	}
+
+	/**
+	 * Return the server metrics registry, or null if metrics are not enabled
+	 *
+	 * @return MetricsRegistry
+	 */
+	public final MetricsRegistry getMetrics() {
+		return m_metrics;
+	}
+
+	/**
+	 * Set the server metrics registry
+	 *
+	 * @param metrics MetricsRegistry
+	 */
+	public final void setMetrics(MetricsRegistry metrics) {
+		m_metrics = metrics;
+	}
+
 	/**
 	 * Set the thread pool initial and maximum size
 	 *
@@ -129,4 +161,17 @@ public class CoreServerConfigSection extends ConfigSection {
 
 		m_memoryPool = new ByteBufferPool( pktSizes, initAlloc, maxAlloc);
 	}
+
+	/**
+	 * Close the configuration section
+	 */
+	public void closeConfig() {
+
+		// Close the metrics registry, runs a final report
+
+		if ( m_metrics != null) {
+			m_metrics.closeRegistry();
+			m_metrics = null;
+		}
+	}
 }
@@ -26,6 +26,7 @@ import org.alfresco.jlan.server.filesys.cache.FileStateCacheListener;
 import org.alfresco.jlan.server.filesys.quota.QuotaManager;
 import org.alfresco.jlan.server.locking.LockManager;
 import org.alfresco.jlan.server.locking.OpLockManager;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.smb.server.notify.NotifyChangeHandler;
 import org.alfresco.jlan.smb.server.notify.NotifyRequest;
 
@@ -183,8 +184,19 @@ public class DiskDeviceContext extends DeviceContext {
 	 * @param ena boolean
 	 */
 	public final void enableChangeHandler(boolean ena) {
+		enableChangeHandler(ena, null);
+	}
+
+	/**
+	 * Enable/disable the change notification handler for this device, change events are processed using the
+	 * specified thread pool
+	 *
+	 * @param ena boolean
+	 * @param threadPool ThreadRequestPool, or null to create a thread pool for the change handler
+	 */
+	public final void enableChangeHandler(boolean ena, ThreadRequestPool threadPool) {
 		if ( ena == true)
-			m_changeHandler = new NotifyChangeHandler(this);
+			m_changeHandler = new NotifyChangeHandler(this, threadPool);
 		else {
 
 			//	Shutdown the change handler, if valid
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * File Channel Interface
+ *
+ * <p>Optional interface that a NetworkFile implementation can implement to provide direct access to the
+ * underlying local file channel. Protocol handlers can use the file channel to transfer file data directly
+ * to/from a socket channel without copying the data through a buffer.
+ *
+ * @author gkspencer
+ */
+public interface FileChannelInterface {
+
+	/**
+	 * Return the file channel for the local file, the file will be opened if not already open
+	 *
+	 * @return FileChannel
+	 * @exception IOException
+	 */
+	public FileChannel getFileChannel()
+		throws IOException;
+}
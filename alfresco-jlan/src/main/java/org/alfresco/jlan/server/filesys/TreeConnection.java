@@ -19,11 +19,14 @@
 
 package org.alfresco.jlan.server.filesys;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.alfresco.jlan.server.SrvSession;
 import org.alfresco.jlan.server.core.DeviceContext;
 import org.alfresco.jlan.server.core.DeviceInterface;
 import org.alfresco.jlan.server.core.InvalidDeviceInterfaceException;
 import org.alfresco.jlan.server.core.SharedDevice;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 
 /**
  * The tree connection class holds the details of a single SMB tree connection. A tree connection
@@ -35,26 +38,54 @@ public class TreeConnection {
 
   //	Maximum number of open files allowed per connection.
 
-  public static final int MAXFILES 		= 8192;
+  public static final int MAXFILES 		= 16384;
 
   // Number of initial file slots to allocate. Number of allocated slots will be doubled
   // when required until MAXFILES is reached.
 
   public static final int INITIALFILES = 32;
 
+  // File ids are 16 bits, the low bits are the file table slot index and the high bits are a generation
+  // count that is bumped each time the slot is released, so a stale file id does not match a new open
+
+  private static final int FileIdBits     = 16;
+  private static final int IndexBits      = 14;
+  private static final int IndexMask      = MAXFILES - 1;
+  private static final int GenerationMask = ( 1 << ( FileIdBits - IndexBits)) - 1;
+
+  // File id that is reserved by the protocol and never allocated
+
+  private static final int ReservedFileId = 0xFFFF;
+
+  // End of free list marker
+
+  private static final int EndOfList      = -1;
+
   //	Shared device that the connection is associated with
 
   private SharedDevice m_shareDev;
 
-  //	List of open files on this connection. Count of open file slots used.
+  //	List of open files on this connection, lookups do not lock the table. Count of open file slots used.
 
-  private NetworkFile[] m_files;
+  private volatile AtomicReferenceArray<NetworkFile> m_files;
   private int m_fileCount;
 
+  // Per slot generation counts, and the free slot list. Free slots are reused in first in first out order
+  // to give the longest possible time before a slot, and file id, is reused.
+
+  private int[] m_generation;
+  private int[] m_nextFree;
+  private int m_freeHead = EndOfList;
+  private int m_freeTail = EndOfList;
+
   //	Access permission that the user has been granted
 
   private int m_permission;
 
+  //  Metrics timer group for requests on this connection
+
+  private String m_metricsGroup;
+
   /**
    * Construct a tree connection using the specified shared device.
    *
@@ -63,6 +94,17 @@ public class TreeConnection {
   public TreeConnection(SharedDevice shrDev) {
     m_shareDev = shrDev;
     m_shareDev.incrementConnectionCount();
+
+    m_metricsGroup = MetricsRegistry.GroupSMB + "." + shrDev.getName();
+  }
+
+  /**
+   * Return the metrics timer group for requests on this connection
+   *
+   * @return String
+   */
+  public final String getMetricsGroup() {
+    return m_metricsGroup;
   }
 
   /**
@@ -75,33 +117,33 @@ public class TreeConnection {
   public synchronized int addFile(NetworkFile file, SrvSession sess)
     throws TooManyFilesException {
 
-    //  Check if the file array has been allocated
+    //  Check if the file table has been allocated
 
     if (m_files == null)
-      m_files = new NetworkFile[INITIALFILES];
+      growFileTable(INITIALFILES);
 
-    //  Find a free slot for the network file
+    //  Check if there is a free slot, if not the file table needs to be extended
 
-    int idx = 0;
+    if (m_freeHead == EndOfList) {
 
-    while (idx < m_files.length && m_files[idx] != null)
-      idx++;
+      //  Check if we reached the limit
 
-    //  Check if we found a free slot
+      if (m_files.length() >= MAXFILES)
+        throw new TooManyFilesException();
 
-    if (idx == m_files.length) {
+      //  Extend the file table
 
-      //  The file array needs to be extended, check if we reached the limit.
+      growFileTable(m_files.length() * 2);
+    }
 
-      if (m_files.length >= MAXFILES)
-        throw new TooManyFilesException();
+    //  Take the slot from the head of the free list
 
-      //  Extend the file array
+    int idx = m_freeHead;
 
-      NetworkFile[] newFiles = new NetworkFile[m_files.length * 2];
-      System.arraycopy(m_files, 0, newFiles, 0, m_files.length);
-      m_files = newFiles;
-    }
+    m_freeHead = m_nextFree[idx];
+    if (m_freeHead == EndOfList)
+      m_freeTail = EndOfList;
+    m_nextFree[idx] = EndOfList;
 
     //	Inform listeners that a file has been opened
 
@@ -109,15 +151,17 @@ public class TreeConnection {
 		if ( fileSrv != null)
     	fileSrv.fireOpenFileEvent(sess, file);
 
-    //  Store the network file, update the open file count and return the index
+    // Save the protocol level id, combines the slot index and slot generation
 
-    m_files[idx] = file;
-    m_fileCount++;
+    int fid = (m_generation[idx] << IndexBits) + idx;
+    file.setProtocolId( fid);
 
-    // Save the protocol level id
+    //  Store the network file, update the open file count and return the file id
 
-    file.setProtocolId( idx);
-    return idx;
+    m_files.set(idx, file);
+    m_fileCount++;
+
+    return fid;
   }
 
   /**
@@ -133,11 +177,13 @@ public class TreeConnection {
 
       //  Close all open files
 
-      for (int idx = 0; idx < m_files.length; idx++) {
+      for (int idx = 0; idx < m_files.length(); idx++) {
 
    	    //  Make sure the file is closed
 
-   	    if (m_files[idx] != null) {
+        NetworkFile file = m_files.get(idx);
+
+   	    if (file != null) {
 
    	      //  Close the file
 
@@ -146,16 +192,16 @@ public class TreeConnection {
    	        //  Access the disk interface and close the file
 
    	        DiskInterface disk = (DiskInterface) m_shareDev.getInterface();
-   	        m_files[idx].setForce(true);
-   	        disk.closeFile(sess, this, m_files[idx]);
-   	        m_files[idx].setClosed(true);
+   	        file.setForce(true);
+   	        disk.closeFile(sess, this, file);
+   	        file.setClosed(true);
    	      }
    	      catch (Exception ex) {
     	  }
 
    	      // Remove the file from the open file table
 
-          removeFile(idx, sess);
+          removeFile(file.getProtocolId(), sess);
     	}
       }
     }
@@ -166,20 +212,29 @@ public class TreeConnection {
   }
 
   /**
-   * Return the specified network file.
+   * Return the specified network file. Lookups do not lock the file table, a file id from a previous use
+   * of the file table slot does not match.
    *
+   * @param fid int
    * @return NetworkFile
    */
-  public synchronized NetworkFile findFile(int fid) {
+  public NetworkFile findFile(int fid) {
+
+    //  Check if the file id and file table are valid
 
-    //  Check if the file id and file array are valid
+    AtomicReferenceArray<NetworkFile> files = m_files;
+    int idx = fid & IndexMask;
 
-    if (m_files == null || fid >= m_files.length)
+    if (files == null || fid < 0 || idx >= files.length())
       return null;
 
-    //  Get the required file details
+    //  Get the required file details, check the file id matches the current use of the slot
 
-    return m_files[fid];
+    NetworkFile file = files.get(idx);
+
+    if (file != null && file.getProtocolId() != fid)
+      return null;
+    return file;
   }
 
 	/**
@@ -187,10 +242,65 @@ public class TreeConnection {
 	 *
 	 * @return int
 	 */
-	public synchronized int getFileTableLength() {
-		if ( m_files == null)
+	public int getFileTableLength() {
+		AtomicReferenceArray<NetworkFile> files = m_files;
+		if ( files == null)
 			return 0;
-		return m_files.length;
+		return files.length();
+	}
+
+	/**
+	 * Extend the file table to the specified number of slots, and add the new slots to the free list. The
+	 * new table is published once populated so that lookups do not see a partial table.
+	 *
+	 * @param newLen int
+	 */
+	private final void growFileTable(int newLen) {
+
+		// Allocate the new file table and generation/free list arrays, copy the existing entries
+
+		AtomicReferenceArray<NetworkFile> newFiles = new AtomicReferenceArray<NetworkFile>(newLen);
+		int[] newGeneration = new int[newLen];
+		int[] newNextFree = new int[newLen];
+
+		int oldLen = 0;
+
+		if ( m_files != null) {
+			oldLen = m_files.length();
+
+			for ( int idx = 0; idx < oldLen; idx++)
+				newFiles.set(idx, m_files.get(idx));
+
+			System.arraycopy(m_generation, 0, newGeneration, 0, oldLen);
+			System.arraycopy(m_nextFree, 0, newNextFree, 0, oldLen);
+		}
+
+		m_generation = newGeneration;
+		m_nextFree = newNextFree;
+
+		// Add the new slots to the tail of the free list
+
+		for ( int idx = oldLen; idx < newLen; idx++) {
+			m_nextFree[idx] = EndOfList;
+			releaseSlot(idx);
+		}
+
+		// Publish the new file table
+
+		m_files = newFiles;
+	}
+
+	/**
+	 * Add a slot to the tail of the free list
+	 *
+	 * @param idx int
+	 */
+	private final void releaseSlot(int idx) {
+		if ( m_freeTail == EndOfList)
+			m_freeHead = idx;
+		else
+			m_nextFree[m_freeTail] = idx;
+		m_freeTail = idx;
 	}
 
 	/**
@@ -298,44 +408,75 @@ public class TreeConnection {
    */
   public synchronized final void removeAllFiles() {
 
-    //  Check if the file array has been allocated
+    //  Check if the file table has been allocated
 
     if (m_files == null)
       return;
 
-    //  Clear the file list
+    //  Clear the file list, release the used slots
 
-    for (int idx = 0; idx < m_files.length; m_files[idx++] = null);
+    for (int idx = 0; idx < m_files.length(); idx++) {
+      if (m_files.get(idx) != null)
+        freeSlot(idx);
+    }
     m_fileCount = 0;
   }
 
   /**
    * Remove a network file from the list of open files for this connection.
    *
-   * @param idx int
+   * @param fid int
    * @param sess SrvSession
    */
-  public synchronized void removeFile(int idx, SrvSession sess) {
+  public synchronized void removeFile(int fid, SrvSession sess) {
+
+    //  Range check the file id, and check the file id matches the current use of the slot
 
-    //  Range check the file index
+    int idx = fid & IndexMask;
+
+    if (m_files == null || fid < 0 || idx >= m_files.length())
+      return;
 
-    if (m_files == null || idx >= m_files.length)
+    NetworkFile file = m_files.get(idx);
+    if (file == null || file.getProtocolId() != fid)
       return;
 
     //	Inform listeners of the file closure
 
 	NetworkFileServer fileSrv = (NetworkFileServer) sess.getServer();
 	if ( fileSrv != null)
-		fileSrv.fireCloseFileEvent(sess, m_files[idx]);
+		fileSrv.fireCloseFileEvent(sess, file);
 
-    //  Remove the file and update the open file count.
+    //  Remove the file, release the slot and update the open file count.
 
-	if ( m_files[idx] != null)
-	    m_files[idx].setProtocolId( -1);
-    m_files[idx] = null;
+    freeSlot(idx);
+    file.setProtocolId( -1);
     m_fileCount--;
   }
 
+  /**
+   * Clear a file table slot, bump the slot generation and return the slot to the free list
+   *
+   * @param idx int
+   */
+  private final void freeSlot(int idx) {
+
+    //  Clear the slot
+
+    m_files.set(idx, null);
+
+    //  Bump the slot generation, skip the generation that would give the reserved file id
+
+    int gen = (m_generation[idx] + 1) & GenerationMask;
+    if (((gen << IndexBits) + idx) == ReservedFileId)
+      gen = (gen + 1) & GenerationMask;
+    m_generation[idx] = gen;
+
+    //  Add the slot to the free list
+
+    releaseSlot(idx);
+  }
+
   /**
    * Set the access permission for this share that the user has been granted.
    *
@@ -19,6 +19,9 @@
 
 package org.alfresco.jlan.server.filesys.cache;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -36,6 +39,7 @@ import org.alfresco.jlan.server.filesys.pseudo.PseudoFile;
 import org.alfresco.jlan.server.filesys.pseudo.PseudoFileList;
 import org.alfresco.jlan.server.locking.OpLockDetails;
 import org.alfresco.jlan.smb.SharingMode;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * File State Class
@@ -996,6 +1000,53 @@ public abstract class FileState implements Serializable {
     	return false;
     }
 
+    /**
+     * Write the file state details to a compact binary stream. The lock list and oplock details are not
+     * written, the lock/oplock classes are only known by the subclass.
+     *
+     * @param out DataOutput
+     * @exception IOException
+     */
+    public void writeState( DataOutput out)
+    	throws IOException {
+
+    	CompactDataIO.writeString( out, m_path);
+    	CompactDataIO.writeVarLong( out, m_tmo);
+    	CompactDataIO.writeVarInt( out, m_fileStatus);
+    	CompactDataIO.writeVarInt( out, m_openCount);
+    	CompactDataIO.writeVarInt( out, m_sharedAccess);
+    	CompactDataIO.writeVarInt( out, m_pid);
+    	CompactDataIO.writeVarLong( out, m_retainUntil);
+    	CompactDataIO.writeVarLong( out, m_accessDate);
+    	CompactDataIO.writeVarLong( out, m_modifyDate);
+    	CompactDataIO.writeVarLong( out, m_changeDate);
+    	CompactDataIO.writeVarLong( out, m_fileSize);
+    	CompactDataIO.writeVarLong( out, m_allocSize);
+    }
+
+    /**
+     * Read the file state details from a compact binary stream
+     *
+     * @param in DataInput
+     * @exception IOException
+     */
+    public void readState( DataInput in)
+    	throws IOException {
+
+    	m_path         = CompactDataIO.readString( in);
+    	m_tmo          = CompactDataIO.readVarLong( in);
+    	m_fileStatus   = CompactDataIO.readVarInt( in);
+    	m_openCount    = CompactDataIO.readVarInt( in);
+    	m_sharedAccess = CompactDataIO.readVarInt( in);
+    	m_pid          = CompactDataIO.readVarInt( in);
+    	m_retainUntil  = CompactDataIO.readVarLong( in);
+    	m_accessDate   = CompactDataIO.readVarLong( in);
+    	m_modifyDate   = CompactDataIO.readVarLong( in);
+    	m_changeDate   = CompactDataIO.readVarLong( in);
+    	m_fileSize     = CompactDataIO.readVarLong( in);
+    	m_allocSize    = CompactDataIO.readVarLong( in);
+    }
+
     /**
      * Normalize the path to uppercase the directory names and keep the case of the file name.
      *
@@ -20,8 +20,8 @@
 package org.alfresco.jlan.server.filesys.cache;
 
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.TreeSet;
 
 import org.alfresco.jlan.locking.FileLock;
 import org.alfresco.jlan.locking.LockConflictException;
@@ -34,9 +34,11 @@ import org.alfresco.jlan.server.filesys.TreeConnection;
 import org.alfresco.jlan.server.locking.LockManager;
 import org.alfresco.jlan.server.locking.OpLockDetails;
 import org.alfresco.jlan.server.locking.OpLockManager;
+import org.alfresco.jlan.server.metrics.LatencyHistogram;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.server.thread.TimedThreadRequest;
 import org.alfresco.jlan.smb.OpLock;
+import org.alfresco.jlan.smb.server.CIFSPacketPool;
 import org.alfresco.jlan.smb.server.SMBSrvPacket;
 import org.alfresco.jlan.smb.server.SMBSrvSession;
 
@@ -46,6 +48,10 @@ import org.alfresco.jlan.smb.server.SMBSrvSession;
  * <p>Lock manager implementation for byte range locking and oplocks that uses the file state cache to
  * track locks/oplocks.
  *
+ * <p>Oplock breaks in progress are held in a single timer queue ordered by the time of the next action for
+ * each break, either the break timeout or a refresh of the deferred packet lease, so the expiry checker only
+ * looks at the breaks that are due.
+ *
  * @author gkspencer
  */
 public class FileStateLockManager implements LockManager, OpLockManager, Runnable {
@@ -53,15 +59,30 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 	// Oplock break timeout
 
 	private static final long OpLockBreakTimeout	= 5000L;	// 5 seconds
-	private static final long OpLockBreakTimeoutSecs= OpLockBreakTimeout / 1000L;
+
+	// Deferred packet lease refresh interval, and the timed request check interval
+
+	private static final long LeaseRefreshInterval	= CIFSPacketPool.CIFSLeaseTime / 2L;
+	private static final long BreakCheckIntervalSecs= 1L;
 
 	// File state cache used for byte range locks/oplocks
 
 	private FileStateCache m_stateCache;
 
-	// Oplock breaks in progress
+	// Oplock breaks in progress, by path, and ordered by the next action time
+
+	private HashMap<String, OplockBreakEntry> m_oplockQueue;
+	private TreeSet<OplockBreakEntry> m_breakTimers;
+
+	// Oplock break sequence number, used to order breaks with the same action time
+
+	private long m_breakSeqNo;
 
-	private Hashtable<String, OpLockDetails> m_oplockQueue;
+	// Oplock break latency, from the break request to the oplock being released or changed, and the
+	// count of oplock breaks that timed out
+
+	private LatencyHistogram m_breakLatency;
+	private long m_breakTimeouts;
 
 	// Oplock break timeout thread
 
@@ -106,7 +127,7 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
 	            setRepeatInterval( 0L);
 	        }
-	        else if ( m_oplockQueue.size() == 0) {
+	        else if ( getBreaksInProgress() == 0) {
 
 	            // Pause the timed checker request
 
@@ -115,20 +136,103 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 	    }
 	}
 
+	/**
+	 * Oplock Break Entry Class
+	 *
+	 * <p>Oplock break in progress, with the break timeout and the next deferred packet lease refresh time.
+	 */
+	private static class OplockBreakEntry implements Comparable<OplockBreakEntry> {
+
+		// Path and oplock details
+
+		private String m_path;
+		private OpLockDetails m_oplock;
+
+		// Time the break was requested, the break timeout and the next lease refresh time
+
+		private long m_startTime;
+		private long m_deadline;
+		private long m_leaseTime;
+
+		// Sequence number
+
+		private long m_seqNo;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param path String
+		 * @param oplock OpLockDetails
+		 * @param startTime long
+		 * @param seqNo long
+		 */
+		public OplockBreakEntry( String path, OpLockDetails oplock, long startTime, long seqNo) {
+			m_path = path;
+			m_oplock = oplock;
+			m_startTime = startTime;
+			m_seqNo = seqNo;
+
+			// Set the break timeout from the time the oplock break was sent
+
+			long breakTime = oplock.getOplockBreakTime();
+			m_deadline = ( breakTime != 0L ? breakTime : startTime) + OpLockBreakTimeout;
+
+			m_leaseTime = startTime + LeaseRefreshInterval;
+		}
+
+		/**
+		 * Return the time of the next action for this oplock break
+		 *
+		 * @return long
+		 */
+		public final long getNextActionTime() {
+			return m_deadline < m_leaseTime ? m_deadline : m_leaseTime;
+		}
+
+		/**
+		 * Compare oplock break entries by next action time
+		 *
+		 * @param entry OplockBreakEntry
+		 * @return int
+		 */
+		public int compareTo( OplockBreakEntry entry) {
+			long time1 = getNextActionTime();
+			long time2 = entry.getNextActionTime();
+
+			if ( time1 != time2)
+				return time1 < time2 ? -1 : 1;
+			if ( m_seqNo != entry.m_seqNo)
+				return m_seqNo < entry.m_seqNo ? -1 : 1;
+			return 0;
+		}
+	}
+
 	/**
 	 * Class constructor
 	 *
 	 * @param stateCache FileStateCache
 	 */
 	public FileStateLockManager(FileStateCache stateCache) {
+		this( stateCache, new LatencyHistogram( "OplockBreak"));
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param stateCache FileStateCache
+	 * @param breakLatency LatencyHistogram
+	 */
+	public FileStateLockManager(FileStateCache stateCache, LatencyHistogram breakLatency) {
 
-		// Save the associated state cache
+		// Save the associated state cache, and the oplock break latency timer
 
 		m_stateCache = stateCache;
+		m_breakLatency = breakLatency;
 
 		// Create the oplock break queue
 
-		m_oplockQueue = new Hashtable<String, OpLockDetails>();
+		m_oplockQueue = new HashMap<String, OplockBreakEntry>();
+		m_breakTimers = new TreeSet<OplockBreakEntry>();
 	}
 
 	/**
@@ -342,7 +446,17 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 		// Add the oplock to the break in progress queue
 
 		synchronized ( m_oplockQueue) {
-			m_oplockQueue.put( path, oplock);
+
+			// Replace any existing break for the path
+
+			OplockBreakEntry breakEntry = m_oplockQueue.remove( path);
+			if ( breakEntry != null)
+				m_breakTimers.remove( breakEntry);
+
+			breakEntry = new OplockBreakEntry( path, oplock, System.currentTimeMillis(), m_breakSeqNo++);
+
+			m_oplockQueue.put( path, breakEntry);
+			m_breakTimers.add( breakEntry);
 
 			// Inform the checker thread or restart the timed request
 
@@ -372,7 +486,8 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
 			// Remove any active oplock break from the queue
 
-			OpLockDetails oplock = m_oplockQueue.remove( path);
+			OplockBreakEntry breakEntry = removeOplockBreak( path, true);
+			OpLockDetails oplock = breakEntry != null ? breakEntry.m_oplock : null;
 
 			// Check if there is a deferred CIFS request pending for this oplock
 
@@ -403,7 +518,7 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
 			// Remove any active oplock break from the queue
 
-			if ( m_oplockQueue.remove( oplock.getPath()) != null) {
+			if ( removeOplockBreak( oplock.getPath(), true) != null) {
 
 				// Check if there are deferred CIFS request(s) pending for this oplock
 
@@ -430,8 +545,33 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
 			// Remove any active oplock break from the queue
 
-			m_oplockQueue.remove( path);
+			removeOplockBreak( path, false);
+		}
+	}
+
+	/**
+	 * Remove an oplock break from the queue and timer list, the oplock break queue must be locked by the caller
+	 *
+	 * @param path String
+	 * @param released boolean
+	 * @return OplockBreakEntry
+	 */
+	private final OplockBreakEntry removeOplockBreak( String path, boolean released) {
+
+		// Remove the oplock break
+
+		OplockBreakEntry breakEntry = m_oplockQueue.remove( path);
+
+		if ( breakEntry != null) {
+			m_breakTimers.remove( breakEntry);
+
+			// Update the oplock break latency if the client released or changed the oplock
+
+			if ( released)
+				m_breakLatency.recordMicros(( System.currentTimeMillis() - breakEntry.m_startTime) * 1000L);
 		}
+
+		return breakEntry;
 	}
 
 	/**
@@ -455,51 +595,59 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 			if ( m_oplockQueue.size() == 0)
 				return 0;
 
-			// Check for oplock break requests that have expired
+			// Check the oplock breaks that are due, in next action time order
 
 			long timeNow = System.currentTimeMillis();
-			Enumeration<String> opBreakKeys = m_oplockQueue.keys();
 
-			while ( opBreakKeys.hasMoreElements()) {
+			while ( m_breakTimers.size() > 0 && m_breakTimers.first().getNextActionTime() <= timeNow) {
 
-				// Check the current oplock break
+				// Remove the oplock break from the timer list, it is added back with a new action time if
+				// the break is still pending
 
-				String path = opBreakKeys.nextElement();
-				OpLockDetails opLock = m_oplockQueue.get( path);
-				if ( opLock != null) {
+				OplockBreakEntry breakEntry = m_breakTimers.pollFirst();
+				OpLockDetails opLock = breakEntry.m_oplock;
 
-					// Check if the oplock break has timed out
+				if ( breakEntry.m_deadline <= timeNow) {
+
+					// Check if the oplock break has deferred requests
 
 					if ( opLock.hasDeferredSessions()) {
 
-						// Check if the oplock break has timed out
+						// Fail the deferred requests
 
-						if (( opLock.getOplockBreakTime() + OpLockBreakTimeout) <= timeNow) {
+						opLock.failDeferredRequests();
 
-							// Fail the deferred requests
+						// Remove the oplock break from the queue
 
-							opLock.failDeferredRequests();
+						m_oplockQueue.remove( breakEntry.m_path);
 
-							// Remove the oplock break from the queue
+						// Mark the oplock has having a failed oplock break
 
-							m_oplockQueue.remove( path);
+						opLock.setOplockBreakFailed();
 
-							// Mark the oplock has having a failed oplock break
+						// Update the expired oplock break count
 
-							opLock.setOplockBreakFailed();
+						expireCnt++;
+						m_breakTimeouts++;
+						continue;
+					}
 
-							// Update the expired oplock break count
+					// No deferred requests, check the oplock break again on the next timer tick
 
-							expireCnt++;
-						}
-						else {
+					breakEntry.m_deadline = timeNow + BreakCheckIntervalSecs * 1000L;
+				}
+				else {
 
-							// Update the deferred packet(s) lease timeout
+					// Update the deferred packet(s) lease timeout
 
-							opLock.updateDeferredPacketLease();
-						}
-					}
+					if ( opLock.hasDeferredSessions())
+						opLock.updateDeferredPacketLease();
+					breakEntry.m_leaseTime = timeNow + LeaseRefreshInterval;
 				}
+
+				// Requeue the oplock break
+
+				m_breakTimers.add( breakEntry);
 			}
 		}
 
@@ -519,19 +667,22 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
         while ( m_shutdown == false)
         {
-            // Wait for an oplock break or sleep for a while if there are active oplock break requests
+            // Wait for an oplock break or until the next oplock break is due
 
         	try
             {
         		synchronized ( m_oplockQueue) {
-        			if ( m_oplockQueue.size() == 0)
-        				m_oplockQueue.wait();
-        		}
 
-        		// Oplock break added to the queue, wait a while before checking the queue
+        			// Wait until the next oplock break action is due
 
-        		if ( m_oplockQueue.size() > 0)
-        			Thread.sleep( OpLockBreakTimeout);
+        			if ( m_breakTimers.size() == 0)
+        				m_oplockQueue.wait();
+        			else {
+        				long waitTime = m_breakTimers.first().getNextActionTime() - System.currentTimeMillis();
+        				if ( waitTime > 0L)
+        					m_oplockQueue.wait( waitTime);
+        			}
+        		}
             }
             catch (InterruptedException ex)
             {
@@ -548,6 +699,37 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
         }
     }
 
+	/**
+	 * Return the oplock break latency histogram
+	 *
+	 * @return LatencyHistogram
+	 */
+	public final LatencyHistogram getBreakLatencyHistogram() {
+		return m_breakLatency;
+	}
+
+	/**
+	 * Return the count of oplock breaks that timed out
+	 *
+	 * @return long
+	 */
+	public final long getBreakTimeoutCount() {
+		synchronized ( m_oplockQueue) {
+			return m_breakTimeouts;
+		}
+	}
+
+	/**
+	 * Return the count of oplock breaks in progress
+	 *
+	 * @return int
+	 */
+	public final int getBreaksInProgress() {
+		synchronized ( m_oplockQueue) {
+			return m_oplockQueue.size();
+		}
+	}
+
 	/**
 	 * Request the oplock break expiry thread to shutdown
 	 */
@@ -591,7 +773,7 @@ public class FileStateLockManager implements LockManager, OpLockManager, Runnabl
 
             // Queue a timed request to the thread pool to run the oplock expiry check
 
-            m_threadReq = new OplockExpiryTimedRequest( threadName, OpLockBreakTimeoutSecs/2);
+            m_threadReq = new OplockExpiryTimedRequest( threadName, BreakCheckIntervalSecs);
             m_threadPool.queueTimedRequest( m_threadReq);
         }
 
@@ -19,9 +19,13 @@
 
 package org.alfresco.jlan.server.filesys.cache.cluster;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.alfresco.jlan.locking.FileLock;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * Cluster File Lock
@@ -74,6 +78,36 @@ public class ClusterFileLock extends FileLock implements Serializable {
 		return m_ownerNode;
 	}
 
+	/**
+	 * Write the lock details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeLock( DataOutput out)
+		throws IOException {
+
+		CompactDataIO.writeVarLong( out, getOffset());
+		CompactDataIO.writeVarLong( out, getLength());
+		CompactDataIO.writeVarInt( out, getProcessId());
+		CompactDataIO.writeString( out, m_ownerNode);
+	}
+
+	/**
+	 * Read the lock details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readLock( DataInput in)
+		throws IOException {
+
+		setOffset( CompactDataIO.readVarLong( in));
+		setLength( CompactDataIO.readVarLong( in));
+		setProcessId( CompactDataIO.readVarInt( in));
+		m_ownerNode = CompactDataIO.readString( in);
+	}
+
 	/**
 	 * Return the lock details as a string
 	 *
@@ -19,9 +19,15 @@
 
 package org.alfresco.jlan.server.filesys.cache.cluster;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 
+import org.alfresco.jlan.locking.FileLock;
+import org.alfresco.jlan.locking.FileLockList;
+import org.alfresco.jlan.locking.LockConflictException;
 import org.alfresco.jlan.server.filesys.ExistingOpLockException;
 import org.alfresco.jlan.server.filesys.FileStatus;
 import org.alfresco.jlan.server.filesys.cache.FileState;
@@ -29,6 +35,7 @@ import org.alfresco.jlan.server.filesys.cache.hazelcast.RemoteOpLockDetails;
 import org.alfresco.jlan.server.filesys.pseudo.PseudoFileList;
 import org.alfresco.jlan.server.locking.LocalOpLockDetails;
 import org.alfresco.jlan.server.locking.OpLockDetails;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * Cluster File State Class
@@ -495,6 +502,112 @@ public abstract class ClusterFileState extends FileState implements Serializable
     	m_dataUpdateNode = updateNode;
     }
 
+    /**
+     * Write the file state details to a compact binary stream
+     *
+     * @param out DataOutput
+     * @exception IOException
+     */
+    public void writeState( DataOutput out)
+    	throws IOException {
+
+    	// Write the base file state details
+
+    	super.writeState( out);
+
+    	// Write the primary owner and data update node names
+
+    	if ( m_primaryOwner != null && m_primaryOwner instanceof String == false)
+    		throw new IOException( "Unsupported primary owner type, " + m_primaryOwner.getClass().getName());
+    	CompactDataIO.writeString( out, (String) m_primaryOwner);
+
+    	String updateNode = null;
+    	if ( m_dataUpdateNode instanceof ClusterNode)
+    		updateNode = ((ClusterNode) m_dataUpdateNode).getName();
+    	else if ( m_dataUpdateNode != null)
+    		updateNode = m_dataUpdateNode.toString();
+    	CompactDataIO.writeString( out, updateNode);
+
+    	// Write the byte range locks
+
+    	FileLockList lockList = getLockList();
+
+    	if ( lockList != null) {
+    		synchronized ( lockList) {
+    			CompactDataIO.writeVarInt( out, lockList.numberOfLocks());
+
+    			for ( int idx = 0; idx < lockList.numberOfLocks(); idx++) {
+    				FileLock lock = lockList.getLockAt( idx);
+    				if ( lock instanceof ClusterFileLock == false)
+    					throw new IOException( "Unsupported lock type, " + lock.getClass().getName());
+    				((ClusterFileLock) lock).writeLock( out);
+    			}
+    		}
+    	}
+    	else
+    		CompactDataIO.writeVarInt( out, 0);
+
+    	// Write the oplock details, only remote oplocks are stored in the clustered state
+
+    	OpLockDetails oplock = super.getOpLock();
+
+    	if ( oplock instanceof RemoteOpLockDetails) {
+    		out.writeBoolean( true);
+    		((RemoteOpLockDetails) oplock).writeOpLock( out);
+    	}
+    	else if ( oplock == null)
+    		out.writeBoolean( false);
+    	else
+    		throw new IOException( "Unsupported oplock type, " + oplock.getClass().getName());
+    }
+
+    /**
+     * Read the file state details from a compact binary stream
+     *
+     * @param in DataInput
+     * @exception IOException
+     */
+    public void readState( DataInput in)
+    	throws IOException {
+
+    	// Read the base file state details
+
+    	super.readState( in);
+
+    	// Read the primary owner and data update node names
+
+    	m_primaryOwner = CompactDataIO.readString( in);
+    	m_dataUpdateNode = CompactDataIO.readString( in);
+
+    	// Read the byte range locks
+
+    	int lockCnt = CompactDataIO.readVarInt( in);
+
+    	try {
+    		for ( int idx = 0; idx < lockCnt; idx++) {
+    			ClusterFileLock lock = new ClusterFileLock();
+    			lock.readLock( in);
+
+    			addLock( lock);
+    		}
+
+    		// Read the oplock details
+
+    		if ( in.readBoolean()) {
+    			RemoteOpLockDetails oplock = new RemoteOpLockDetails();
+    			oplock.readOpLock( in);
+
+    			super.setOpLock( oplock);
+    		}
+    	}
+    	catch ( LockConflictException ex) {
+    		throw new IOException( "Lock conflict reading state, path=" + getPath());
+    	}
+    	catch ( ExistingOpLockException ex) {
+    		throw new IOException( "Existing oplock reading state, path=" + getPath());
+    	}
+    }
+
     /**
      * Return the update mask as a string
      *
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.io.IOException;
+
+/**
+ * Cluster Codec Interface
+ *
+ * <p>Converts clustered map values and topic messages to/from a compact binary form. A codec can be registered
+ * when a map or topic is obtained from the cluster transport, values are then sent over the wire as the
+ * encoded bytes rather than using the default Java serialization.
+ *
+ * @author gkspencer
+ */
+public interface ClusterCodec<T> {
+
+	/**
+	 * Encode an object
+	 *
+	 * @param obj T
+	 * @return byte[]
+	 * @exception IOException
+	 */
+	public byte[] encode( T obj)
+		throws IOException;
+
+	/**
+	 * Decode an object
+	 *
+	 * @param buf byte[]
+	 * @return T
+	 * @exception IOException
+	 */
+	public T decode( byte[] buf)
+		throws IOException;
+}
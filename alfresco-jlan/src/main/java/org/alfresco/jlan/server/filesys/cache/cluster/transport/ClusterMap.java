@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.util.Set;
+
+/**
+ * Cluster Map Interface
+ *
+ * <p>Key partitioned map that is shared by all cluster members. Values returned by the map are copies, updated
+ * values must be put back into the map.
+ *
+ * @author gkspencer
+ */
+public interface ClusterMap<K, V> {
+
+	/**
+	 * Return the value for the specified key
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V get( K key);
+
+	/**
+	 * Store a value, return the previous value
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V put( K key, V value);
+
+	/**
+	 * Store a value if there is no existing value for the key, return the existing value
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V putIfAbsent( K key, V value);
+
+	/**
+	 * Remove a value, return the removed value
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V remove( K key);
+
+	/**
+	 * Lock the specified key, cluster wide
+	 *
+	 * @param key K
+	 */
+	public void lock( K key);
+
+	/**
+	 * Unlock the specified key
+	 *
+	 * @param key K
+	 */
+	public void unlock( K key);
+
+	/**
+	 * Return the number of entries in the map
+	 *
+	 * @return int
+	 */
+	public int size();
+
+	/**
+	 * Return the set of keys owned by the local cluster member
+	 *
+	 * @return Set<K>
+	 */
+	public Set<K> localKeySet();
+
+	/**
+	 * Add a listener for map entry events
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void addEntryListener( ClusterMapListener<K, V> listener);
+
+	/**
+	 * Remove a map entry listener
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void removeEntryListener( ClusterMapListener<K, V> listener);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+/**
+ * Cluster Map Listener Interface
+ *
+ * <p>Receives map entry events from all cluster members. The value may not be available, depending on the transport.
+ *
+ * @author gkspencer
+ */
+public interface ClusterMapListener<K, V> {
+
+	/**
+	 * Map entry added
+	 *
+	 * @param key K
+	 * @param value V
+	 */
+	public void entryAdded( K key, V value);
+
+	/**
+	 * Map entry removed
+	 *
+	 * @param key K
+	 * @param value V
+	 */
+	public void entryRemoved( K key, V value);
+
+	/**
+	 * Map entry updated
+	 *
+	 * @param key K
+	 * @param value V
+	 */
+	public void entryUpdated( K key, V value);
+
+	/**
+	 * Map entry evicted
+	 *
+	 * @param key K
+	 * @param value V
+	 */
+	public void entryEvicted( K key, V value);
+}
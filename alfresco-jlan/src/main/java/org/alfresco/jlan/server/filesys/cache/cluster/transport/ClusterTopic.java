@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+/**
+ * Cluster Topic Interface
+ *
+ * <p>Pub/sub message topic, messages are delivered to the listeners on all cluster members in the order they
+ * were published by a member.
+ *
+ * @author gkspencer
+ */
+public interface ClusterTopic<M> {
+
+	/**
+	 * Publish a message to all cluster members
+	 *
+	 * @param msg M
+	 */
+	public void publish( M msg);
+
+	/**
+	 * Add a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void addMessageListener( ClusterTopicListener<M> listener);
+
+	/**
+	 * Remove a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void removeMessageListener( ClusterTopicListener<M> listener);
+}
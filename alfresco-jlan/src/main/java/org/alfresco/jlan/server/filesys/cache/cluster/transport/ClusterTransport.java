@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Cluster Transport Interface
+ *
+ * <p>Provides the clustering services used by the clustered file state cache, a key partitioned map, execution
+ * of tasks on the cluster member that owns a key, pub/sub messaging and cluster membership details.
+ *
+ * @author gkspencer
+ */
+public interface ClusterTransport {
+
+	/**
+	 * Start the transport, join the cluster
+	 *
+	 * @exception Exception
+	 */
+	public void startTransport()
+		throws Exception;
+
+	/**
+	 * Shutdown the transport, leave the cluster
+	 *
+	 * @exception Exception
+	 */
+	public void shutdownTransport()
+		throws Exception;
+
+	/**
+	 * Return the clustered map with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name);
+
+	/**
+	 * Return the clustered map with the specified name, map values are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<V>
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name, ClusterCodec<V> codec);
+
+	/**
+	 * Return the pub/sub topic with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name);
+
+	/**
+	 * Return the pub/sub topic with the specified name, messages are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<M>
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name, ClusterCodec<M> codec);
+
+	/**
+	 * Run a task on the cluster member that owns the specified key
+	 *
+	 * @param task Callable<T>
+	 * @param key Object
+	 * @return Future<T>
+	 */
+	public <T> Future<T> executeOnKeyOwner( Callable<T> task, Object key);
+
+	/**
+	 * Check if the specified key is owned by the local cluster member
+	 *
+	 * @param key Object
+	 * @return boolean
+	 */
+	public boolean isLocalKey( Object key);
+
+	/**
+	 * Return the current cluster members
+	 *
+	 * @return List<ClusterMember>
+	 */
+	public List<ClusterMember> getMembers();
+
+	/**
+	 * Return the local cluster member
+	 *
+	 * @return ClusterMember
+	 */
+	public ClusterMember getLocalMember();
+
+	/**
+	 * Add a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void addMembershipListener( ClusterMembershipListener listener);
+
+	/**
+	 * Remove a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void removeMembershipListener( ClusterMembershipListener listener);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+/**
+ * Cluster Transport Aware Interface
+ *
+ * <p>Tasks run via the cluster transport that implement this interface are given the transport of the cluster
+ * member that is running the task.
+ *
+ * @author gkspencer
+ */
+public interface ClusterTransportAware {
+
+	/**
+	 * Set the cluster transport
+	 *
+	 * @param transport ClusterTransport
+	 */
+	public void setClusterTransport( ClusterTransport transport);
+}
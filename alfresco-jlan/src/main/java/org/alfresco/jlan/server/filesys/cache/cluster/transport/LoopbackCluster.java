@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loopback Cluster Class
+ *
+ * <p>In-process cluster shared by a number of loopback cluster transports running in the same JVM. Map entries,
+ * remote tasks and topic messages are copied using serialization, so cluster members see the same copy semantics
+ * as a networked cluster.
+ *
+ * <p>Keys are assigned to a fixed number of partitions, the partitions are spread across the current cluster
+ * members in the order the members joined the cluster.
+ *
+ * @author gkspencer
+ */
+public class LoopbackCluster {
+
+	// Number of key partitions
+
+	public static final int NumberOfPartitions	= 271;
+
+	// Base port number used to generate member names
+
+	public static final int BaseMemberPort		= 5701;
+
+	// Active loopback clusters, by name
+
+	private static HashMap<String, LoopbackCluster> _clusters = new HashMap<String, LoopbackCluster>();
+
+	// Cluster name
+
+	private String m_name;
+
+	// Cluster members, in join order
+
+	private CopyOnWriteArrayList<LoopbackClusterTransport> m_members;
+
+	// Next member port number
+
+	private int m_nextPort = BaseMemberPort;
+
+	// Clustered map data, by map name
+
+	private HashMap<String, MapStore> m_maps;
+
+	/**
+	 * Map Store Class
+	 *
+	 * <p>Contains the serialized entries, key locks and entry listeners for a clustered map.
+	 */
+	protected static class MapStore {
+
+		// Map entries, stored in serialized form
+
+		ConcurrentHashMap<Object, byte[]> m_data = new ConcurrentHashMap<Object, byte[]>();
+
+		// Key locks
+
+		ConcurrentHashMap<Object, ReentrantLock> m_locks = new ConcurrentHashMap<Object, ReentrantLock>();
+
+		// Entry listeners, with the member the listener belongs to
+
+		CopyOnWriteArrayList<ListenerDetails> m_listeners = new CopyOnWriteArrayList<ListenerDetails>();
+
+		/**
+		 * Return the lock for the specified key, create the lock if required
+		 *
+		 * @param key Object
+		 * @return ReentrantLock
+		 */
+		final ReentrantLock getKeyLock( Object key) {
+			ReentrantLock keyLock = m_locks.get( key);
+			if ( keyLock == null) {
+				keyLock = new ReentrantLock();
+				ReentrantLock curLock = m_locks.putIfAbsent( key, keyLock);
+				if ( curLock != null)
+					keyLock = curLock;
+			}
+			return keyLock;
+		}
+	}
+
+	/**
+	 * Listener Details Class
+	 */
+	protected static class ListenerDetails {
+
+		// Member that owns the listener, events are delivered via the members event thread
+
+		LoopbackClusterTransport m_member;
+
+		// Listener
+
+		Object m_listener;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param member LoopbackClusterTransport
+		 * @param listener Object
+		 */
+		ListenerDetails( LoopbackClusterTransport member, Object listener) {
+			m_member = member;
+			m_listener = listener;
+		}
+	}
+
+	/**
+	 * Return the loopback cluster with the specified name, create the cluster if it does not exist
+	 *
+	 * @param name String
+	 * @return LoopbackCluster
+	 */
+	public static synchronized LoopbackCluster getCluster( String name) {
+		LoopbackCluster cluster = _clusters.get( name);
+		if ( cluster == null) {
+			cluster = new LoopbackCluster( name);
+			_clusters.put( name, cluster);
+		}
+		return cluster;
+	}
+
+	/**
+	 * Remove a loopback cluster, if the cluster has no members
+	 *
+	 * @param name String
+	 * @return boolean
+	 */
+	public static synchronized boolean removeCluster( String name) {
+		LoopbackCluster cluster = _clusters.get( name);
+		if ( cluster != null && cluster.numberOfMembers() == 0) {
+			_clusters.remove( name);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 */
+	protected LoopbackCluster( String name) {
+		m_name = name;
+		m_members = new CopyOnWriteArrayList<LoopbackClusterTransport>();
+		m_maps = new HashMap<String, MapStore>();
+	}
+
+	/**
+	 * Return the cluster name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Return the number of cluster members
+	 *
+	 * @return int
+	 */
+	public final int numberOfMembers() {
+		return m_members.size();
+	}
+
+	/**
+	 * Return the current cluster members, in join order
+	 *
+	 * @return List<LoopbackClusterTransport>
+	 */
+	protected final List<LoopbackClusterTransport> getMembers() {
+		return m_members;
+	}
+
+	/**
+	 * Add a member to the cluster, and return the member name
+	 *
+	 * @param member LoopbackClusterTransport
+	 * @return String
+	 */
+	protected synchronized String joinCluster( LoopbackClusterTransport member) {
+
+		// Allocate the member name
+
+		String memberName = "/127.0.0.1:" + m_nextPort++;
+
+		// Inform the existing members
+
+		for ( LoopbackClusterTransport curMember : m_members)
+			curMember.fireMemberAdded( memberName);
+
+		// Add the new member
+
+		m_members.add( member);
+		return memberName;
+	}
+
+	/**
+	 * Remove a member from the cluster
+	 *
+	 * @param member LoopbackClusterTransport
+	 */
+	protected synchronized void leaveCluster( LoopbackClusterTransport member) {
+
+		// Remove the member, and any entry listeners owned by the member
+
+		if ( m_members.remove( member) == false)
+			return;
+
+		for ( MapStore mapStore : m_maps.values()) {
+			ArrayList<ListenerDetails> memberListeners = new ArrayList<ListenerDetails>();
+			for ( ListenerDetails listener : mapStore.m_listeners) {
+				if ( listener.m_member == member)
+					memberListeners.add( listener);
+			}
+			mapStore.m_listeners.removeAll( memberListeners);
+		}
+
+		// Inform the remaining members
+
+		for ( LoopbackClusterTransport curMember : m_members)
+			curMember.fireMemberRemoved( member.getMemberName());
+	}
+
+	/**
+	 * Return the map store for the specified map, create the map if it does not exist
+	 *
+	 * @param name String
+	 * @return MapStore
+	 */
+	protected synchronized MapStore getMapStore( String name) {
+		MapStore mapStore = m_maps.get( name);
+		if ( mapStore == null) {
+			mapStore = new MapStore();
+			m_maps.put( name, mapStore);
+		}
+		return mapStore;
+	}
+
+	/**
+	 * Return the member that owns the specified key, or null if there are no members
+	 *
+	 * @param key Object
+	 * @return LoopbackClusterTransport
+	 */
+	protected final LoopbackClusterTransport getKeyOwner( Object key) {
+
+		// Take a copy of the member list, may be updated by another thread
+
+		Object[] members = m_members.toArray();
+		if ( members.length == 0)
+			return null;
+
+		// Find the partition for the key, and the member that owns the partition
+
+		int partition = ( key.hashCode() & 0x7FFFFFFF) % NumberOfPartitions;
+		return (LoopbackClusterTransport) members[ partition % members.length];
+	}
+
+	/**
+	 * Publish an encoded topic message to all cluster members, each member decodes its own copy
+	 *
+	 * @param topicName String
+	 * @param msgBytes byte[]
+	 */
+	protected final void publishMessage( String topicName, byte[] msgBytes) {
+		for ( LoopbackClusterTransport member : m_members)
+			member.deliverMessage( topicName, msgBytes);
+	}
+
+	/**
+	 * Serialize an object
+	 *
+	 * @param obj Object
+	 * @return byte[]
+	 */
+	public static byte[] serializeObject( Object obj) {
+		if ( obj == null)
+			return null;
+
+		try {
+			ByteArrayOutputStream byteOut = new ByteArrayOutputStream( 512);
+			ObjectOutputStream objOut = new ObjectOutputStream( byteOut);
+
+			objOut.writeObject( obj);
+			objOut.close();
+
+			return byteOut.toByteArray();
+		}
+		catch ( IOException ex) {
+			throw new RuntimeException( "Failed to serialize " + obj.getClass().getName(), ex);
+		}
+	}
+
+	/**
+	 * Deserialize an object
+	 *
+	 * @param objBytes byte[]
+	 * @return Object
+	 */
+	public static Object deserializeObject( byte[] objBytes) {
+		if ( objBytes == null)
+			return null;
+
+		try {
+			ObjectInputStream objIn = new ObjectInputStream( new ByteArrayInputStream( objBytes));
+			return objIn.readObject();
+		}
+		catch ( Exception ex) {
+			throw new RuntimeException( "Failed to deserialize object", ex);
+		}
+	}
+
+	/**
+	 * Copy an object using serialization
+	 *
+	 * @param obj T
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copyObject( T obj) {
+		return (T) deserializeObject( serializeObject( obj));
+	}
+
+	/**
+	 * Return the loopback cluster as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[Loopback ");
+		str.append( getName());
+		str.append( ",members=");
+		str.append( numberOfMembers());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
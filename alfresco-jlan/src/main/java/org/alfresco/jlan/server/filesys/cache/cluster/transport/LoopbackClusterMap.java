@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.LoopbackCluster.ListenerDetails;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.LoopbackCluster.MapStore;
+
+/**
+ * Loopback Cluster Map Class
+ *
+ * <p>View of a loopback clustered map for a cluster member. Entries are stored in encoded form, using the codec
+ * or Java serialization if there is no codec, so each get returns a new copy of the value.
+ *
+ * @author gkspencer
+ */
+public class LoopbackClusterMap<K, V> implements ClusterMap<K, V> {
+
+	// Entry event types
+
+	private static final int EventAdded		= 0;
+	private static final int EventRemoved	= 1;
+	private static final int EventUpdated	= 2;
+
+	// Map name
+
+	private String m_name;
+
+	// Shared map store
+
+	private MapStore m_store;
+
+	// Value codec, or null to use Java serialization
+
+	private ClusterCodec<V> m_codec;
+
+	// Member that is using the map
+
+	private LoopbackClusterTransport m_member;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 * @param store MapStore
+	 * @param codec ClusterCodec<V>
+	 * @param member LoopbackClusterTransport
+	 */
+	protected LoopbackClusterMap( String name, MapStore store, ClusterCodec<V> codec, LoopbackClusterTransport member) {
+		m_name = name;
+		m_store = store;
+		m_codec = codec;
+		m_member = member;
+	}
+
+	/**
+	 * Return the map name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Return the value for the specified key
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V get( K key) {
+		return decodeValue( m_store.m_data.get( key));
+	}
+
+	/**
+	 * Store a value, return the previous value
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V put( K key, V value) {
+		byte[] valBytes = encodeValue( value);
+		byte[] oldBytes = m_store.m_data.put( key, valBytes);
+
+		fireEntryEvent( oldBytes == null ? EventAdded : EventUpdated, key, valBytes);
+		return decodeValue( oldBytes);
+	}
+
+	/**
+	 * Store a value if there is no existing value for the key, return the existing value
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V putIfAbsent( K key, V value) {
+		byte[] valBytes = encodeValue( value);
+		byte[] curBytes = m_store.m_data.putIfAbsent( key, valBytes);
+
+		if ( curBytes == null)
+			fireEntryEvent( EventAdded, key, valBytes);
+		return decodeValue( curBytes);
+	}
+
+	/**
+	 * Remove a value, return the removed value
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V remove( K key) {
+		byte[] oldBytes = m_store.m_data.remove( key);
+
+		if ( oldBytes != null)
+			fireEntryEvent( EventRemoved, key, oldBytes);
+		return decodeValue( oldBytes);
+	}
+
+	/**
+	 * Lock the specified key, the lock is owned by the current thread
+	 *
+	 * @param key K
+	 */
+	public void lock( K key) {
+		m_store.getKeyLock( key).lock();
+	}
+
+	/**
+	 * Unlock the specified key
+	 *
+	 * @param key K
+	 */
+	public void unlock( K key) {
+		m_store.getKeyLock( key).unlock();
+	}
+
+	/**
+	 * Return the number of entries in the map
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return m_store.m_data.size();
+	}
+
+	/**
+	 * Return the set of keys owned by the local cluster member
+	 *
+	 * @return Set<K>
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<K> localKeySet() {
+		HashSet<K> localKeys = new HashSet<K>();
+
+		for ( Object key : m_store.m_data.keySet()) {
+			if ( m_member.isLocalKey( key))
+				localKeys.add((K) key);
+		}
+
+		return localKeys;
+	}
+
+	/**
+	 * Add a listener for map entry events
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void addEntryListener( ClusterMapListener<K, V> listener) {
+		m_store.m_listeners.add( new ListenerDetails( m_member, listener));
+	}
+
+	/**
+	 * Remove a map entry listener
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void removeEntryListener( ClusterMapListener<K, V> listener) {
+		for ( ListenerDetails details : m_store.m_listeners) {
+			if ( details.m_member == m_member && details.m_listener == listener)
+				m_store.m_listeners.remove( details);
+		}
+	}
+
+	/**
+	 * Encode a value to be stored in the map
+	 *
+	 * @param value V
+	 * @return byte[]
+	 */
+	private byte[] encodeValue( V value) {
+		if ( m_codec == null || value == null)
+			return LoopbackCluster.serializeObject( value);
+
+		try {
+			return m_codec.encode( value);
+		}
+		catch ( IOException ex) {
+			throw new RuntimeException( "Failed to encode map value, " + value.getClass().getName(), ex);
+		}
+	}
+
+	/**
+	 * Decode a value from the map
+	 *
+	 * @param valBytes byte[]
+	 * @return V
+	 */
+	@SuppressWarnings("unchecked")
+	private V decodeValue( byte[] valBytes) {
+		if ( m_codec == null || valBytes == null)
+			return (V) LoopbackCluster.deserializeObject( valBytes);
+
+		try {
+			return m_codec.decode( valBytes);
+		}
+		catch ( IOException ex) {
+			throw new RuntimeException( "Failed to decode map value", ex);
+		}
+	}
+
+	/**
+	 * Queue an entry event to the listeners on all members
+	 *
+	 * @param evType int
+	 * @param key K
+	 * @param valBytes byte[]
+	 */
+	private void fireEntryEvent( final int evType, final K key, final byte[] valBytes) {
+
+		for ( ListenerDetails details : m_store.m_listeners) {
+
+			// Deliver the event via the event thread of the member that owns the listener
+
+			@SuppressWarnings("unchecked")
+			final ClusterMapListener<K, V> listener = (ClusterMapListener<K, V>) details.m_listener;
+
+			details.m_member.queueEvent( new Runnable() {
+				public void run() {
+					V value = decodeValue( valBytes);
+
+					switch ( evType) {
+						case EventAdded:
+							listener.entryAdded( key, value);
+							break;
+						case EventRemoved:
+							listener.entryRemoved( key, value);
+							break;
+						case EventUpdated:
+							listener.entryUpdated( key, value);
+							break;
+					}
+				}
+			});
+		}
+	}
+}
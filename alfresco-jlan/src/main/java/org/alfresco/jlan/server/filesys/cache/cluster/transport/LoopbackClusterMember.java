@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+/**
+ * Loopback Cluster Member Class
+ *
+ * @author gkspencer
+ */
+public class LoopbackClusterMember implements ClusterMember {
+
+	// Member name and local member flag
+
+	private String m_name;
+	private boolean m_local;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 * @param local boolean
+	 */
+	public LoopbackClusterMember( String name, boolean local) {
+		m_name = name;
+		m_local = local;
+	}
+
+	/**
+	 * Return the member name
+	 *
+	 * @return String
+	 */
+	public String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Check if this is the local cluster member
+	 *
+	 * @return boolean
+	 */
+	public boolean isLocalMember() {
+		return m_local;
+	}
+
+	/**
+	 * Compare cluster members
+	 *
+	 * @param obj Object
+	 * @return boolean
+	 */
+	public boolean equals( Object obj) {
+		if ( obj instanceof LoopbackClusterMember)
+			return m_name.equals((( LoopbackClusterMember) obj).getName());
+		return false;
+	}
+
+	/**
+	 * Return the hash code
+	 *
+	 * @return int
+	 */
+	public int hashCode() {
+		return m_name.hashCode();
+	}
+
+	/**
+	 * Return the member as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		return "[Loopback " + m_name + ( m_local ? ",local" : "") + "]";
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Loopback Cluster Topic Class
+ *
+ * <p>Messages are encoded using the codec, or Java serialization if there is no codec, and each member
+ * decodes its own copy of the message.
+ *
+ * @author gkspencer
+ */
+public class LoopbackClusterTopic<M> implements ClusterTopic<M> {
+
+	// Topic name
+
+	private String m_name;
+
+	// Message codec, or null to use Java serialization
+
+	private ClusterCodec<M> m_codec;
+
+	// Member that is using the topic
+
+	private LoopbackClusterTransport m_member;
+
+	// Listener adapters
+
+	private HashMap<ClusterTopicListener<M>, ClusterTopicListener<byte[]>> m_listeners;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<M>
+	 * @param member LoopbackClusterTransport
+	 */
+	protected LoopbackClusterTopic( String name, ClusterCodec<M> codec, LoopbackClusterTransport member) {
+		m_name = name;
+		m_codec = codec;
+		m_member = member;
+		m_listeners = new HashMap<ClusterTopicListener<M>, ClusterTopicListener<byte[]>>();
+	}
+
+	/**
+	 * Return the topic name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Publish a message to all cluster members
+	 *
+	 * @param msg M
+	 */
+	public void publish( M msg) {
+		byte[] msgBytes = null;
+
+		if ( m_codec != null) {
+			try {
+				msgBytes = m_codec.encode( msg);
+			}
+			catch ( IOException ex) {
+				throw new RuntimeException( "Failed to encode message, " + msg.getClass().getName(), ex);
+			}
+		}
+		else
+			msgBytes = LoopbackCluster.serializeObject( msg);
+
+		m_member.publishMessage( m_name, msgBytes);
+	}
+
+	/**
+	 * Add a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void addMessageListener( final ClusterTopicListener<M> listener) {
+		ClusterTopicListener<byte[]> byteListener = new ClusterTopicListener<byte[]>() {
+			@SuppressWarnings("unchecked")
+			public void onMessage( byte[] msgBytes) {
+				M msg = null;
+
+				if ( m_codec != null) {
+					try {
+						msg = m_codec.decode( msgBytes);
+					}
+					catch ( IOException ex) {
+						throw new RuntimeException( "Failed to decode message", ex);
+					}
+				}
+				else
+					msg = (M) LoopbackCluster.deserializeObject( msgBytes);
+
+				listener.onMessage( msg);
+			}
+		};
+
+		synchronized ( m_listeners) {
+			m_listeners.put( listener, byteListener);
+		}
+
+		m_member.addTopicListener( m_name, byteListener);
+	}
+
+	/**
+	 * Remove a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void removeMessageListener( ClusterTopicListener<M> listener) {
+		ClusterTopicListener<byte[]> byteListener = null;
+
+		synchronized ( m_listeners) {
+			byteListener = m_listeners.remove( listener);
+		}
+
+		if ( byteListener != null)
+			m_member.removeTopicListener( m_name, byteListener);
+	}
+}
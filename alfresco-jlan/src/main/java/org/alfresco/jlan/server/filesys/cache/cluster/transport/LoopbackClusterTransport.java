@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.alfresco.jlan.debug.Debug;
+
+/**
+ * Loopback Cluster Transport Class
+ *
+ * <p>Cluster transport for a member of an in-process loopback cluster. Allows a number of clustered file state
+ * caches to run in a single JVM without any network setup, for testing and benchmarking.
+ *
+ * <p>Each member delivers topic messages, map entry events and membership events on a single event thread, so
+ * events are delivered in order. Remote tasks are run by a pool of task threads on the member that owns the key.
+ *
+ * @author gkspencer
+ */
+public class LoopbackClusterTransport implements ClusterTransport {
+
+	// Default loopback cluster name
+
+	public static final String DefaultClusterName	= "loopback";
+
+	// Default number of task threads per member
+
+	public static final int DefaultTaskThreads		= 4;
+
+	// Loopback cluster name, and the cluster once joined
+
+	private String m_clusterName;
+	private LoopbackCluster m_cluster;
+
+	// Member name, allocated when the member joins the cluster
+
+	private String m_memberName;
+
+	// Number of task threads
+
+	private int m_taskThreads = DefaultTaskThreads;
+
+	// Event thread and task threads
+
+	private ExecutorService m_eventThread;
+	private ExecutorService m_taskPool;
+
+	// Topic listeners, by topic name
+
+	private HashMap<String, CopyOnWriteArrayList<ClusterTopicListener<byte[]>>> m_topicListeners;
+
+	// Membership listeners
+
+	private CopyOnWriteArrayList<ClusterMembershipListener> m_memberListeners;
+
+	/**
+	 * Loopback Thread Factory Class
+	 */
+	private class LoopbackThreadFactory implements ThreadFactory {
+
+		// Thread name prefix and thread count
+
+		private String mi_prefix;
+		private int mi_threadCnt;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param prefix String
+		 */
+		public LoopbackThreadFactory( String prefix) {
+			mi_prefix = prefix;
+		}
+
+		/**
+		 * Create a new thread
+		 *
+		 * @param r Runnable
+		 * @return Thread
+		 */
+		public synchronized Thread newThread( Runnable r) {
+			Thread thread = new Thread( r);
+			thread.setName( mi_prefix + "_" + m_memberName + "_" + ++mi_threadCnt);
+			thread.setDaemon( true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param clusterName String
+	 */
+	public LoopbackClusterTransport( String clusterName) {
+		m_clusterName = clusterName;
+
+		m_topicListeners = new HashMap<String, CopyOnWriteArrayList<ClusterTopicListener<byte[]>>>();
+		m_memberListeners = new CopyOnWriteArrayList<ClusterMembershipListener>();
+	}
+
+	/**
+	 * Return the loopback cluster name
+	 *
+	 * @return String
+	 */
+	public final String getClusterName() {
+		return m_clusterName;
+	}
+
+	/**
+	 * Return the member name
+	 *
+	 * @return String
+	 */
+	public final String getMemberName() {
+		return m_memberName;
+	}
+
+	/**
+	 * Set the number of task threads, must be set before the transport is started
+	 *
+	 * @param threads int
+	 */
+	public final void setTaskThreads( int threads) {
+		m_taskThreads = threads;
+	}
+
+	/**
+	 * Start the transport, join the loopback cluster
+	 *
+	 * @exception Exception
+	 */
+	public synchronized void startTransport()
+		throws Exception {
+
+		// Check if the transport is already running
+
+		if ( m_cluster != null)
+			return;
+
+		// Create the event thread and task thread pool
+
+		m_eventThread = Executors.newSingleThreadExecutor( new LoopbackThreadFactory( "LoopbackEvent"));
+		m_taskPool = Executors.newFixedThreadPool( m_taskThreads, new LoopbackThreadFactory( "LoopbackTask"));
+
+		// Join the cluster
+
+		m_cluster = LoopbackCluster.getCluster( m_clusterName);
+		m_memberName = m_cluster.joinCluster( this);
+	}
+
+	/**
+	 * Shutdown the transport, leave the loopback cluster
+	 *
+	 * @exception Exception
+	 */
+	public synchronized void shutdownTransport()
+		throws Exception {
+
+		// Check if the transport is running
+
+		if ( m_cluster == null)
+			return;
+
+		// Leave the cluster, remove the cluster if this was the last member
+
+		m_cluster.leaveCluster( this);
+		LoopbackCluster.removeCluster( m_clusterName);
+		m_cluster = null;
+
+		// Stop the event and task threads
+
+		m_eventThread.shutdown();
+		m_taskPool.shutdown();
+	}
+
+	/**
+	 * Return the clustered map with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name) {
+		return getMap( name, null);
+	}
+
+	/**
+	 * Return the clustered map with the specified name, map values are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<V>
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name, ClusterCodec<V> codec) {
+		return new LoopbackClusterMap<K, V>( name, m_cluster.getMapStore( name), codec, this);
+	}
+
+	/**
+	 * Return the pub/sub topic with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name) {
+		return getTopic( name, null);
+	}
+
+	/**
+	 * Return the pub/sub topic with the specified name, messages are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<M>
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name, ClusterCodec<M> codec) {
+		return new LoopbackClusterTopic<M>( name, codec, this);
+	}
+
+	/**
+	 * Run a task on the cluster member that owns the specified key
+	 *
+	 * @param task Callable<T>
+	 * @param key Object
+	 * @return Future<T>
+	 */
+	public <T> Future<T> executeOnKeyOwner( Callable<T> task, final Object key) {
+
+		// Find the member that owns the key
+
+		LoopbackClusterTransport owner = m_cluster.getKeyOwner( key);
+		if ( owner == null)
+			throw new RuntimeException( "No cluster members available, key=" + key);
+
+		// Run a copy of the task on the owner node, the task result is also copied
+
+		final Callable<T> remoteTask = LoopbackCluster.copyObject( task);
+		if ( remoteTask instanceof ClusterTransportAware)
+			(( ClusterTransportAware) remoteTask).setClusterTransport( owner);
+
+		return owner.m_taskPool.submit( new Callable<T>() {
+			public T call()
+				throws Exception {
+				return LoopbackCluster.copyObject( remoteTask.call());
+			}
+		});
+	}
+
+	/**
+	 * Check if the specified key is owned by the local cluster member
+	 *
+	 * @param key Object
+	 * @return boolean
+	 */
+	public boolean isLocalKey( Object key) {
+		return m_cluster.getKeyOwner( key) == this;
+	}
+
+	/**
+	 * Return the current cluster members
+	 *
+	 * @return List<ClusterMember>
+	 */
+	public List<ClusterMember> getMembers() {
+		ArrayList<ClusterMember> members = new ArrayList<ClusterMember>();
+
+		for ( LoopbackClusterTransport member : m_cluster.getMembers())
+			members.add( new LoopbackClusterMember( member.getMemberName(), member == this));
+
+		return members;
+	}
+
+	/**
+	 * Return the local cluster member
+	 *
+	 * @return ClusterMember
+	 */
+	public ClusterMember getLocalMember() {
+		return new LoopbackClusterMember( getMemberName(), true);
+	}
+
+	/**
+	 * Add a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void addMembershipListener( ClusterMembershipListener listener) {
+		m_memberListeners.add( listener);
+	}
+
+	/**
+	 * Remove a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void removeMembershipListener( ClusterMembershipListener listener) {
+		m_memberListeners.remove( listener);
+	}
+
+	/**
+	 * Add a topic listener
+	 *
+	 * @param topicName String
+	 * @param listener ClusterTopicListener<byte[]>
+	 */
+	protected final void addTopicListener( String topicName, ClusterTopicListener<byte[]> listener) {
+		CopyOnWriteArrayList<ClusterTopicListener<byte[]>> listeners = null;
+
+		synchronized ( m_topicListeners) {
+			listeners = m_topicListeners.get( topicName);
+			if ( listeners == null) {
+				listeners = new CopyOnWriteArrayList<ClusterTopicListener<byte[]>>();
+				m_topicListeners.put( topicName, listeners);
+			}
+		}
+
+		listeners.add( listener);
+	}
+
+	/**
+	 * Remove a topic listener
+	 *
+	 * @param topicName String
+	 * @param listener ClusterTopicListener<byte[]>
+	 */
+	protected final void removeTopicListener( String topicName, ClusterTopicListener<byte[]> listener) {
+		synchronized ( m_topicListeners) {
+			CopyOnWriteArrayList<ClusterTopicListener<byte[]>> listeners = m_topicListeners.get( topicName);
+			if ( listeners != null)
+				listeners.remove( listener);
+		}
+	}
+
+	/**
+	 * Publish an encoded topic message to all cluster members
+	 *
+	 * @param topicName String
+	 * @param msgBytes byte[]
+	 */
+	protected final void publishMessage( String topicName, byte[] msgBytes) {
+		m_cluster.publishMessage( topicName, msgBytes);
+	}
+
+	/**
+	 * Deliver a topic message to the local listeners, via the event thread
+	 *
+	 * @param topicName String
+	 * @param msgBytes byte[]
+	 */
+	protected final void deliverMessage( String topicName, final byte[] msgBytes) {
+
+		// Get the listeners for the topic
+
+		final CopyOnWriteArrayList<ClusterTopicListener<byte[]>> listeners;
+
+		synchronized ( m_topicListeners) {
+			listeners = m_topicListeners.get( topicName);
+		}
+
+		if ( listeners == null || listeners.size() == 0)
+			return;
+
+		// Queue the message to the event thread
+
+		queueEvent( new Runnable() {
+			public void run() {
+				for ( ClusterTopicListener<byte[]> listener : listeners)
+					listener.onMessage( msgBytes);
+			}
+		});
+	}
+
+	/**
+	 * Queue a member added event to the local listeners
+	 *
+	 * @param memberName String
+	 */
+	protected final void fireMemberAdded( final String memberName) {
+
+		// Only listeners registered when the event occurs receive the event
+
+		final ClusterMembershipListener[] listeners = m_memberListeners.toArray( new ClusterMembershipListener[0]);
+
+		queueEvent( new Runnable() {
+			public void run() {
+				ClusterMember member = new LoopbackClusterMember( memberName, false);
+				for ( ClusterMembershipListener listener : listeners)
+					listener.memberAdded( member);
+			}
+		});
+	}
+
+	/**
+	 * Queue a member removed event to the local listeners
+	 *
+	 * @param memberName String
+	 */
+	protected final void fireMemberRemoved( final String memberName) {
+
+		// Only listeners registered when the event occurs receive the event
+
+		final ClusterMembershipListener[] listeners = m_memberListeners.toArray( new ClusterMembershipListener[0]);
+
+		queueEvent( new Runnable() {
+			public void run() {
+				ClusterMember member = new LoopbackClusterMember( memberName, false);
+				for ( ClusterMembershipListener listener : listeners)
+					listener.memberRemoved( member);
+			}
+		});
+	}
+
+	/**
+	 * Queue an event to the event thread
+	 *
+	 * @param event Runnable
+	 */
+	protected final void queueEvent( final Runnable event) {
+
+		// Check if the transport has been shutdown
+
+		ExecutorService eventThread = m_eventThread;
+		if ( eventThread == null || eventThread.isShutdown())
+			return;
+
+		eventThread.execute( new Runnable() {
+			public void run() {
+				try {
+					event.run();
+				}
+				catch ( Throwable ex) {
+					Debug.println( "Loopback cluster event failed, member=" + getMemberName());
+					Debug.println( ex);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Return the transport as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[Loopback ");
+		str.append( getClusterName());
+		str.append( ",member=");
+		str.append( getMemberName());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
@@ -21,11 +21,10 @@ package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
 import org.alfresco.jlan.server.locking.OpLockDetails;
 import org.alfresco.jlan.smb.OpLock;
 
-import com.hazelcast.core.IMap;
-
 /**
  * Change OpLock Type Remote Task Class
  *
@@ -68,12 +67,12 @@ public class ChangeOpLockTypeTask extends RemoteStateTask<Integer> {
 	/**
 	 * Run a remote task against a file state
 	 *
-	 * @param stateCache IMap<String, ClusterFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param fState ClusterFileState
 	 * @return Integer
 	 * @exception Exception
 	 */
-	protected Integer runRemoteTaskAgainstState(IMap<String, ClusterFileState> stateCache, ClusterFileState fState)
+	protected Integer runRemoteTaskAgainstState(ClusterMap<String, ClusterFileState> stateCache, ClusterFileState fState)
 		throws Exception {
 
 		// DEBUG
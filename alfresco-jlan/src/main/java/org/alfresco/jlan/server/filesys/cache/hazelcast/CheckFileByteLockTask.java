@@ -22,8 +22,7 @@ package org.alfresco.jlan.server.filesys.cache.hazelcast;
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileLock;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
-
-import com.hazelcast.core.IMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
 
 /**
  * Check File Byte Range Lock Remote Task Class
@@ -73,12 +72,12 @@ public class CheckFileByteLockTask extends RemoteStateTask<Boolean> {
 	/**
 	 * Run a remote task against a file state
 	 *
-	 * @param stateCache IMap<String, ClusterFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param fState ClusterFileState
 	 * @return Boolean
 	 * @exception Exception
 	 */
-	protected Boolean runRemoteTaskAgainstState( IMap<String, ClusterFileState> stateCache, ClusterFileState fState)
+	protected Boolean runRemoteTaskAgainstState( ClusterMap<String, ClusterFileState> stateCache, ClusterFileState fState)
 		throws Exception {
 
 		// DEBUG
@@ -19,9 +19,13 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * Cluster Message Class
@@ -153,6 +157,34 @@ public class ClusterMessage implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Write the message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		CompactDataIO.writeString( out, m_targetNode);
+		CompactDataIO.writeString( out, m_fromNode);
+		CompactDataIO.writeVarInt( out, m_msgType);
+	}
+
+	/**
+	 * Read the message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		m_targetNode = CompactDataIO.readString( in);
+		m_fromNode   = CompactDataIO.readString( in);
+		m_msgType    = CompactDataIO.readVarInt( in);
+	}
+
 	/**
 	 * Return the cluster message as a string
 	 *
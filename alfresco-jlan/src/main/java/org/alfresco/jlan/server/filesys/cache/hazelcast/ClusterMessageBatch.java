@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.util.CompactDataIO;
+
+/**
+ * Cluster Message Batch Class
+ *
+ * <p>Contains a number of cluster messages that are published to the cluster as a single topic message. The
+ * messages are held in the order they were queued, and are processed in that order by the receiving nodes.
+ *
+ * @author gkspencer
+ */
+public class ClusterMessageBatch extends ClusterMessage {
+
+	// Serialization id
+
+	private static final long serialVersionUID = 1L;
+
+	// List of batched messages
+
+	private ArrayList<ClusterMessage> m_messages;
+
+	/**
+	 * Default constructor
+	 */
+	public ClusterMessageBatch() {
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param targetNode String
+	 * @param fromNode ClusterNode
+	 * @param msgList List<ClusterMessage>
+	 */
+	public ClusterMessageBatch( String targetNode, ClusterNode fromNode, List<ClusterMessage> msgList) {
+		super ( targetNode, fromNode, ClusterMessageType.MessageBatch);
+
+		m_messages = new ArrayList<ClusterMessage>( msgList);
+	}
+
+	/**
+	 * Return the number of messages in the batch
+	 *
+	 * @return int
+	 */
+	public final int numberOfMessages() {
+		return m_messages != null ? m_messages.size() : 0;
+	}
+
+	/**
+	 * Return the batched messages
+	 *
+	 * @return List<ClusterMessage>
+	 */
+	public final List<ClusterMessage> getMessages() {
+		return m_messages;
+	}
+
+	/**
+	 * Write the message batch details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+
+		// Write the batched messages
+
+		CompactDataIO.writeVarInt( out, numberOfMessages());
+
+		for ( int idx = 0; idx < numberOfMessages(); idx++)
+			ClusterMessageCodec.writeClusterMessage( out, m_messages.get( idx));
+	}
+
+	/**
+	 * Read the message batch details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+
+		// Read the batched messages
+
+		int msgCnt = CompactDataIO.readVarInt( in);
+		m_messages = new ArrayList<ClusterMessage>( msgCnt);
+
+		for ( int idx = 0; idx < msgCnt; idx++)
+			m_messages.add( ClusterMessageCodec.readClusterMessage( in));
+	}
+
+	/**
+	 * Return the message batch as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[");
+		str.append( super.toString());
+		str.append( ",messages=");
+		str.append( numberOfMessages());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
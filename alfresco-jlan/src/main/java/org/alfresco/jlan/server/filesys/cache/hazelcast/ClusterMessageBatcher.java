@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopic;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.server.thread.TimedThreadRequest;
+
+/**
+ * Cluster Message Batcher Class
+ *
+ * <p>Collects file state update and file data update messages that are sent to all cluster nodes and publishes
+ * them as a single batch message once the batch window expires, or the batch is full. State updates to the same
+ * path within the batch window are merged into a single update.
+ *
+ * <p>Messages that are not batched must be sent via the publish() method, so that any queued messages are sent
+ * out first and the order of messages from this node is preserved.
+ *
+ * @author gkspencer
+ */
+public class ClusterMessageBatcher {
+
+	// Default/minimum/maximum batch window, in milliseconds
+
+	public static final long DefaultBatchWindow		= 50L;
+	public static final long MinimumBatchWindow		= 5L;
+	public static final long MaximumBatchWindow		= 1000L;
+
+	// Default/minimum/maximum number of messages in a batch
+
+	public static final int DefaultBatchSize		= 500;
+	public static final int MinimumBatchSize		= 10;
+	public static final int MaximumBatchSize		= 10000;
+
+	// Cluster topic to publish messages to
+
+	private ClusterTopic<ClusterMessage> m_topic;
+
+	// Local cluster node
+
+	private ClusterNode m_localNode;
+
+	// Thread pool used to run the batch flush timer
+
+	private ThreadRequestPool m_threadPool;
+
+	// Batch window and maximum batch size
+
+	private long m_batchWindow = DefaultBatchWindow;
+	private int m_batchSize = DefaultBatchSize;
+
+	// Queued messages, in send order, and the last queued message for each path
+
+	private ArrayList<ClusterMessage> m_batch;
+	private HashMap<String, ClusterMessage> m_pathMessages;
+
+	// Flush timer for the current batch
+
+	private BatchFlushTimedRequest m_flushRequest;
+
+	// Statistics
+
+	private long m_queuedCount;
+	private long m_mergedCount;
+	private long m_batchCount;
+
+	// Debug enable
+
+	private boolean m_debug;
+
+	/**
+	 * Batch Flush Timed Thread Request Class
+	 */
+	private class BatchFlushTimedRequest extends TimedThreadRequest {
+
+		/**
+		 * Class constructor
+		 *
+		 * @param runAt long
+		 */
+		public BatchFlushTimedRequest( long runAt) {
+			super( "ClusterMessageBatchFlush", runAt);
+		}
+
+		/**
+		 * Send out the queued messages
+		 */
+		protected void runTimedRequest() {
+			flushBatch( this);
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param topic ClusterTopic<ClusterMessage>
+	 * @param localNode ClusterNode
+	 * @param threadPool ThreadRequestPool
+	 * @param batchWindow long
+	 * @param batchSize int
+	 */
+	public ClusterMessageBatcher( ClusterTopic<ClusterMessage> topic, ClusterNode localNode, ThreadRequestPool threadPool, long batchWindow, int batchSize) {
+		m_topic = topic;
+		m_localNode = localNode;
+		m_threadPool = threadPool;
+
+		m_batchWindow = batchWindow;
+		m_batchSize = batchSize;
+
+		m_batch = new ArrayList<ClusterMessage>( batchSize);
+		m_pathMessages = new HashMap<String, ClusterMessage>();
+	}
+
+	/**
+	 * Return the batch window, in milliseconds
+	 *
+	 * @return long
+	 */
+	public final long getBatchWindow() {
+		return m_batchWindow;
+	}
+
+	/**
+	 * Return the maximum number of messages in a batch
+	 *
+	 * @return int
+	 */
+	public final int getBatchSize() {
+		return m_batchSize;
+	}
+
+	/**
+	 * Return the count of messages queued to the batcher
+	 *
+	 * @return long
+	 */
+	public final long getQueuedCount() {
+		return m_queuedCount;
+	}
+
+	/**
+	 * Return the count of messages that were merged into an already queued message
+	 *
+	 * @return long
+	 */
+	public final long getMergedCount() {
+		return m_mergedCount;
+	}
+
+	/**
+	 * Return the count of batches published
+	 *
+	 * @return long
+	 */
+	public final long getBatchCount() {
+		return m_batchCount;
+	}
+
+	/**
+	 * Check if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Enable/disable debug output
+	 *
+	 * @param dbg boolean
+	 */
+	public final void setDebug( boolean dbg) {
+		m_debug = dbg;
+	}
+
+	/**
+	 * Check if a message can be batched
+	 *
+	 * @param msg ClusterMessage
+	 * @return boolean
+	 */
+	public static boolean isBatchable( ClusterMessage msg) {
+
+		// Only batch state updates and file data updates that are sent to all nodes
+
+		if ( msg.isAllNodes() == false)
+			return false;
+		return msg.isType() == ClusterMessageType.FileStateUpdate || msg.isType() == ClusterMessageType.DataUpdate;
+	}
+
+	/**
+	 * Publish a message to the cluster. Batchable messages are queued, other messages are sent
+	 * immediately after any queued messages.
+	 *
+	 * @param msg ClusterMessage
+	 */
+	public final void publish( ClusterMessage msg) {
+
+		// Queue the message if it can be batched
+
+		if ( isBatchable( msg)) {
+			queueMessage( msg);
+			return;
+		}
+
+		// Send out any queued messages, then the new message, keep the message order
+
+		synchronized ( this) {
+			flushBatch( null);
+			m_topic.publish( msg);
+		}
+	}
+
+	/**
+	 * Queue a message to the current batch
+	 *
+	 * @param msg ClusterMessage
+	 */
+	protected final synchronized void queueMessage( ClusterMessage msg) {
+
+		// Check if there is a queued message for the same path that the new message can be merged with
+
+		String path = getMessagePath( msg);
+		ClusterMessage curMsg = path != null ? m_pathMessages.get( path) : null;
+
+		m_queuedCount++;
+
+		if ( curMsg != null && curMsg.isType() == msg.isType()) {
+
+			if ( msg.isType() == ClusterMessageType.FileStateUpdate) {
+
+				// Merge the state update with the queued update
+
+				StateUpdateMessage curUpd = (StateUpdateMessage) curMsg;
+				StateUpdateMessage newUpd = (StateUpdateMessage) msg;
+
+				if ( curUpd.canMerge( newUpd)) {
+					curUpd.mergeUpdate( newUpd);
+					m_mergedCount++;
+
+					// DEBUG
+
+					if ( hasDebug())
+						Debug.println( "Merged state update into queued update=" + curUpd);
+					return;
+				}
+			}
+			else if ( msg.isType() == ClusterMessageType.DataUpdate) {
+
+				// Only the latest data update status is required, replace the queued message
+
+				int idx = m_batch.lastIndexOf( curMsg);
+				if ( idx != -1) {
+					m_batch.set( idx, msg);
+					m_pathMessages.put( path, msg);
+					m_mergedCount++;
+
+					// DEBUG
+
+					if ( hasDebug())
+						Debug.println( "Replaced queued data update with msg=" + msg);
+					return;
+				}
+			}
+		}
+
+		// Add the message to the batch
+
+		m_batch.add( msg);
+		if ( path != null)
+			m_pathMessages.put( path, msg);
+
+		// Send the batch if it is full, else make sure the flush timer is running
+
+		if ( m_batch.size() >= m_batchSize)
+			flushBatch( null);
+		else if ( m_flushRequest == null) {
+			m_flushRequest = new BatchFlushTimedRequest( System.currentTimeMillis() + m_batchWindow);
+			m_threadPool.queueTimedRequest( m_flushRequest);
+		}
+	}
+
+	/**
+	 * Send out any queued messages
+	 */
+	public final void flush() {
+		flushBatch( null);
+	}
+
+	/**
+	 * Send out the queued messages
+	 *
+	 * @param timer BatchFlushTimedRequest
+	 */
+	private synchronized void flushBatch( BatchFlushTimedRequest timer) {
+
+		// Cancel the flush timer, unless this is the timer running
+
+		if ( m_flushRequest != null) {
+			if ( m_flushRequest != timer)
+				m_threadPool.removeTimedRequest( m_flushRequest);
+			m_flushRequest = null;
+		}
+
+		// Check if there are any queued messages
+
+		if ( m_batch.size() == 0)
+			return;
+
+		// Send a single message without the batch wrapper
+
+		ClusterMessage msg = null;
+
+		if ( m_batch.size() == 1)
+			msg = m_batch.get( 0);
+		else
+			msg = new ClusterMessageBatch( ClusterMessage.AllNodes, m_localNode, m_batch);
+
+		m_batch.clear();
+		m_pathMessages.clear();
+
+		m_topic.publish( msg);
+		m_batchCount++;
+
+		// DEBUG
+
+		if ( hasDebug())
+			Debug.println( "Sent cluster message batch msg=" + msg);
+	}
+
+	/**
+	 * Return the path that a batchable message refers to
+	 *
+	 * @param msg ClusterMessage
+	 * @return String
+	 */
+	private final String getMessagePath( ClusterMessage msg) {
+		if ( msg instanceof StateUpdateMessage)
+			return ((StateUpdateMessage) msg).getPath();
+		else if ( msg instanceof DataUpdateMessage)
+			return ((DataUpdateMessage) msg).getPath();
+		return null;
+	}
+
+	/**
+	 * Return the batcher details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[Window=");
+		str.append( getBatchWindow());
+		str.append( "ms,size=");
+		str.append( getBatchSize());
+		str.append( ",queued=");
+		str.append( getQueuedCount());
+		str.append( ",merged=");
+		str.append( getMergedCount());
+		str.append( ",batches=");
+		str.append( getBatchCount());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+
+/**
+ * Cluster Message Codec Class
+ *
+ * <p>Compact binary encoding of the cluster messages published on the cluster topic. Each message is written as
+ * a class tag followed by the message details. Message classes that are not known by the codec are written
+ * using Java serialization.
+ *
+ * @author gkspencer
+ */
+public class ClusterMessageCodec implements ClusterCodec<ClusterMessage> {
+
+	// Encoding format version
+
+	public static final int FormatVersion	= 1;
+
+	// Message class tags
+
+	private static final int TagClusterMessage	= 0;
+	private static final int TagOpLock			= 1;
+	private static final int TagFileStatus		= 2;
+	private static final int TagStateUpdate		= 3;
+	private static final int TagStateRename		= 4;
+	private static final int TagDataUpdate		= 5;
+	private static final int TagMessageBatch	= 6;
+	private static final int TagSerialized		= 0x7F;
+
+	// Initial encode buffer size
+
+	private static final int EncodeBufferSize	= 128;
+
+	/**
+	 * Encode a cluster message
+	 *
+	 * @param msg ClusterMessage
+	 * @return byte[]
+	 * @exception IOException
+	 */
+	public byte[] encode( ClusterMessage msg)
+		throws IOException {
+
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream( EncodeBufferSize);
+		DataOutputStream out = new DataOutputStream( byteOut);
+
+		out.writeByte( FormatVersion);
+		writeClusterMessage( out, msg);
+		out.flush();
+
+		return byteOut.toByteArray();
+	}
+
+	/**
+	 * Decode a cluster message
+	 *
+	 * @param buf byte[]
+	 * @return ClusterMessage
+	 * @exception IOException
+	 */
+	public ClusterMessage decode( byte[] buf)
+		throws IOException {
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( buf));
+
+		// Check the format version
+
+		int version = in.readUnsignedByte();
+		if ( version != FormatVersion)
+			throw new IOException( "Unsupported cluster message format version " + version);
+
+		return readClusterMessage( in);
+	}
+
+	/**
+	 * Write a cluster message, with the class tag
+	 *
+	 * @param out DataOutput
+	 * @param msg ClusterMessage
+	 * @exception IOException
+	 */
+	public static final void writeClusterMessage( DataOutput out, ClusterMessage msg)
+		throws IOException {
+
+		// Get the class tag for the message, use exact class matches so that a subclass is not written
+		// without its own details
+
+		Class<?> msgClass = msg.getClass();
+		int tag = TagSerialized;
+
+		if ( msgClass == StateUpdateMessage.class)
+			tag = TagStateUpdate;
+		else if ( msgClass == OpLockMessage.class)
+			tag = TagOpLock;
+		else if ( msgClass == DataUpdateMessage.class)
+			tag = TagDataUpdate;
+		else if ( msgClass == FileStatusMessage.class)
+			tag = TagFileStatus;
+		else if ( msgClass == StateRenameMessage.class)
+			tag = TagStateRename;
+		else if ( msgClass == ClusterMessageBatch.class)
+			tag = TagMessageBatch;
+		else if ( msgClass == ClusterMessage.class)
+			tag = TagClusterMessage;
+
+		out.writeByte( tag);
+
+		// Write the message details
+
+		if ( tag == TagSerialized) {
+
+			// Unknown message class, use Java serialization
+
+			ByteArrayOutputStream byteOut = new ByteArrayOutputStream( EncodeBufferSize);
+			ObjectOutputStream objOut = new ObjectOutputStream( byteOut);
+
+			objOut.writeObject( msg);
+			objOut.close();
+
+			byte[] objBytes = byteOut.toByteArray();
+
+			out.writeInt( objBytes.length);
+			out.write( objBytes);
+		}
+		else
+			msg.writeMessage( out);
+	}
+
+	/**
+	 * Read a cluster message
+	 *
+	 * @param in DataInput
+	 * @return ClusterMessage
+	 * @exception IOException
+	 */
+	public static final ClusterMessage readClusterMessage( DataInput in)
+		throws IOException {
+
+		// Create the message using the class tag
+
+		int tag = in.readUnsignedByte();
+		ClusterMessage msg = null;
+
+		switch ( tag) {
+			case TagClusterMessage:
+				msg = new ClusterMessage();
+				break;
+			case TagOpLock:
+				msg = new OpLockMessage();
+				break;
+			case TagFileStatus:
+				msg = new FileStatusMessage();
+				break;
+			case TagStateUpdate:
+				msg = new StateUpdateMessage();
+				break;
+			case TagStateRename:
+				msg = new StateRenameMessage();
+				break;
+			case TagDataUpdate:
+				msg = new DataUpdateMessage();
+				break;
+			case TagMessageBatch:
+				msg = new ClusterMessageBatch();
+				break;
+			case TagSerialized:
+				return readSerializedMessage( in);
+			default:
+				throw new IOException( "Unknown cluster message tag " + tag);
+		}
+
+		// Load the message details
+
+		msg.readMessage( in);
+		return msg;
+	}
+
+	/**
+	 * Read a Java serialized cluster message
+	 *
+	 * @param in DataInput
+	 * @return ClusterMessage
+	 * @exception IOException
+	 */
+	private static final ClusterMessage readSerializedMessage( DataInput in)
+		throws IOException {
+
+		byte[] objBytes = new byte[ in.readInt()];
+		in.readFully( objBytes);
+
+		ObjectInputStream objIn = new ObjectInputStream( new ByteArrayInputStream( objBytes));
+
+		try {
+			return (ClusterMessage) objIn.readObject();
+		}
+		catch ( ClassNotFoundException ex) {
+			throw new IOException( "Failed to load cluster message class, " + ex.getMessage());
+		}
+	}
+}
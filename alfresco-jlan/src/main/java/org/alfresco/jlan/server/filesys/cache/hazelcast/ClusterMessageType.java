@@ -37,6 +37,7 @@ public class ClusterMessageType {
 	public final static int RenameState			= 4;
 	public final static int DataUpdate			= 5;
 	public final static int OplockTypeChange	= 6;
+	public final static int MessageBatch		= 7;
 
 	/**
 	 * Return a message type as a string
@@ -69,6 +70,9 @@ public class ClusterMessageType {
 			case OplockTypeChange:
 				typStr = "OplockTypeChange";
 				break;
+			case MessageBatch:
+				typStr = "MessageBatch";
+				break;
 		}
 
 		return typStr;
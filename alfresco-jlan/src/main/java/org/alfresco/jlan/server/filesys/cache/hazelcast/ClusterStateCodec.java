@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+
+/**
+ * Cluster State Codec Class
+ *
+ * <p>Compact binary encoding of the clustered file state, including the byte range locks and remote oplock
+ * details. Replaces the default Java serialization of the file state objects stored in the clustered map.
+ *
+ * @author gkspencer
+ */
+public class ClusterStateCodec<T extends ClusterFileState> implements ClusterCodec<T> {
+
+	// Encoding format version
+
+	public static final int FormatVersion	= 1;
+
+	// Initial encode buffer size
+
+	private static final int EncodeBufferSize	= 128;
+
+	/**
+	 * Encode a file state
+	 *
+	 * @param state T
+	 * @return byte[]
+	 * @exception IOException
+	 */
+	public byte[] encode( T state)
+		throws IOException {
+
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream( EncodeBufferSize);
+		DataOutputStream out = new DataOutputStream( byteOut);
+
+		out.writeByte( FormatVersion);
+		state.writeState( out);
+		out.flush();
+
+		return byteOut.toByteArray();
+	}
+
+	/**
+	 * Decode a file state
+	 *
+	 * @param buf byte[]
+	 * @return T
+	 * @exception IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public T decode( byte[] buf)
+		throws IOException {
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( buf));
+
+		// Check the format version
+
+		int version = in.readUnsignedByte();
+		if ( version != FormatVersion)
+			throw new IOException( "Unsupported file state format version " + version);
+
+		// Create the file state and load the state details
+
+		HazelCastClusterFileState state = new HazelCastClusterFileState();
+		state.readState( in);
+
+		return (T) state;
+	}
+}
@@ -19,7 +19,12 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * File Data Update Message Class
@@ -77,6 +82,34 @@ public class DataUpdateMessage extends ClusterMessage {
 		return m_startUpdate;
 	}
 
+	/**
+	 * Write the data update message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+		CompactDataIO.writeString( out, m_path);
+		out.writeBoolean( m_startUpdate);
+	}
+
+	/**
+	 * Read the data update message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+		m_path        = CompactDataIO.readString( in);
+		m_startUpdate = in.readBoolean();
+	}
+
 	/**
 	 * Return the file status message as a string
 	 *
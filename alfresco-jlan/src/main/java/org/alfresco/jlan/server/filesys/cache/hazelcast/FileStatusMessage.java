@@ -19,7 +19,12 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.alfresco.jlan.server.filesys.FileStatus;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * File Status Update Message Class
@@ -76,6 +81,34 @@ public class FileStatusMessage extends ClusterMessage {
 		return m_fileStatus;
 	}
 
+	/**
+	 * Write the file status message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+		CompactDataIO.writeString( out, m_path);
+		CompactDataIO.writeVarInt( out, m_fileStatus);
+	}
+
+	/**
+	 * Read the file status message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+		m_path       = CompactDataIO.readString( in);
+		m_fileStatus = CompactDataIO.readVarInt( in);
+	}
+
 	/**
 	 * Return the file status message as a string
 	 *
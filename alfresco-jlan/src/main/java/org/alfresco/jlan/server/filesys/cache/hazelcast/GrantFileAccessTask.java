@@ -28,12 +28,11 @@ import org.alfresco.jlan.server.filesys.FileSharingException;
 import org.alfresco.jlan.server.filesys.FileStatus;
 import org.alfresco.jlan.server.filesys.cache.FileState;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
 import org.alfresco.jlan.smb.OpLock;
 import org.alfresco.jlan.smb.SharingMode;
 import org.alfresco.jlan.smb.WinNT;
 
-import com.hazelcast.core.IMap;
-
 /**
  * Grant File Access Task Class
  *
@@ -76,12 +75,12 @@ public class GrantFileAccessTask extends RemoteStateTask<FileAccessToken> {
 	/**
 	 * Run a remote task against a file state
 	 *
-	 * @param stateCache IMap<String, HazelCastFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param fState HazelCastFileState
 	 * @return FileAccessToken
 	 * @exception Exception
 	 */
-	protected FileAccessToken runRemoteTaskAgainstState( IMap<String, ClusterFileState> stateCache, ClusterFileState fState)
+	protected FileAccessToken runRemoteTaskAgainstState( ClusterMap<String, ClusterFileState> stateCache, ClusterFileState fState)
 		throws Exception {
 
 		// DEBUG
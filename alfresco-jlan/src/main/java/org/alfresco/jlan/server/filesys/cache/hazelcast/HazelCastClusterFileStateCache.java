@@ -23,13 +23,13 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.locking.FileLock;
@@ -61,6 +61,14 @@ import org.alfresco.jlan.server.filesys.cache.cluster.ClusterInterface;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNodeList;
 import org.alfresco.jlan.server.filesys.cache.cluster.PerNodeState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMapListener;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMember;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMembershipListener;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopic;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopicListener;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTransport;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.LoopbackClusterTransport;
 import org.alfresco.jlan.server.locking.LocalOpLockDetails;
 import org.alfresco.jlan.server.locking.OpLockDetails;
 import org.alfresco.jlan.server.locking.OpLockManager;
@@ -72,28 +80,17 @@ import org.alfresco.jlan.smb.server.SMBSrvSession;
 import org.alfresco.jlan.smb.server.notify.NotifyChangeHandler;
 import org.springframework.extensions.config.ConfigElement;
 
-import com.hazelcast.core.Cluster;
-import com.hazelcast.core.DistributedTask;
-import com.hazelcast.core.EntryEvent;
-import com.hazelcast.core.EntryListener;
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.ITopic;
-import com.hazelcast.core.Member;
-import com.hazelcast.core.MembershipEvent;
-import com.hazelcast.core.MembershipListener;
-import com.hazelcast.core.Message;
-import com.hazelcast.core.MessageListener;
-import com.hazelcast.partition.Partition;
-
 /**
  * HazelCast Clustered File State Cache Class
  *
+ * <p>The clustered map, remote tasks and cluster messaging are accessed via a cluster transport. HazelCast is
+ * used as the transport unless another transport is configured.
+ *
  * @author gkspencer
  */
-public class HazelCastClusterFileStateCache extends ClusterFileStateCache implements ClusterInterface, MembershipListener,
-																				EntryListener<String, HazelCastClusterFileState>,
-																				MessageListener<ClusterMessage> {
+public class HazelCastClusterFileStateCache extends ClusterFileStateCache implements ClusterInterface, ClusterMembershipListener,
+																				ClusterMapListener<String, HazelCastClusterFileState>,
+																				ClusterTopicListener<ClusterMessage> {
 
 	// Debug levels
 
@@ -113,6 +110,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 	public static final int DebugRename				= 0x00002000;	// rename state
 	public static final int DebugFileDataUpdate		= 0x00004000;	// file data updates
 	public static final int DebugFileStatus			= 0x00008000;	// file status changes (exist/not exist)
+	public static final int DebugMessageBatch		= 0x00010000;	// cluster message batching
 
 	// Debug level names
 	//
@@ -120,7 +118,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 	private static final String[] _debugLevels = { "StateCache", "Expire", "NearCache", "Oplock", "ByteLock", "FileAccess", "Membership",
 												   "Cleanup", "PerNode", "ClusterEntry", "ClusterMessage", "RemoteTask", "RemoteTiming",
-												   "Rename", "FileDataUpdate", "FileStatus"
+												   "Rename", "FileDataUpdate", "FileStatus", "MessageBatch"
 	};
 
 	// Near-cache timeout values
@@ -143,18 +141,30 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 	private ClusterConfigSection m_clusterConfig;
 
-	// HazelCast instance and cluster
+	// Cluster transport type names
+
+	public static final String TransportHazelCast	= "hazelcast";
+	public static final String TransportLoopback	= "loopback";
+
+	// Cluster transport, provides the clustered map, remote task execution and messaging
 
-	private HazelcastInstance m_hazelCastInstance;
-	private Cluster m_cluster;
+	private ClusterTransport m_transport;
 
 	// Clustered state cache
 
-	private IMap<String, HazelCastClusterFileState> m_stateCache;
+	private ClusterMap<String, HazelCastClusterFileState> m_stateCache;
 
 	// Pub/sub message topic used to receive oplock break requests from remote nodes
 
-	private ITopic<ClusterMessage> m_clusterTopic;
+	private ClusterTopic<ClusterMessage> m_clusterTopic;
+
+	// Outbound message batcher, merges state updates and publishes batches of messages to the cluster topic
+
+	private ClusterMessageBatcher m_msgBatcher;
+
+	private boolean m_batchMessages = true;
+	private long m_batchWindow = ClusterMessageBatcher.DefaultBatchWindow;
+	private int m_batchSize = ClusterMessageBatcher.DefaultBatchSize;
 
 	// Per node state cache, data that is not shared with the cluster, or cannot be shared
 
@@ -214,16 +224,41 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		super.initializeCache( config, srvConfig);
 
-		// Make sure there is a valid cluster configuration
+		// Check if the cluster transport has been specified
+
+		ConfigElement elem = config.getChild( "transport");
+		if ( elem != null && m_transport == null) {
+
+			// Get the transport type
+
+			String transType = elem.getAttribute( "type");
+
+			if ( transType == null || transType.equalsIgnoreCase( TransportHazelCast)) {
+
+				// Use the default HazelCast transport
+			}
+			else if ( transType.equalsIgnoreCase( TransportLoopback)) {
+
+				// Create an in-process loopback transport, nodes in the same JVM with the same loopback cluster name
+				// form a cluster
+
+				String loopName = elem.getAttribute( "name");
+				m_transport = new LoopbackClusterTransport( loopName != null ? loopName : LoopbackClusterTransport.DefaultClusterName);
+			}
+			else
+				throw new InvalidConfigurationException( "Invalid cluster transport type, " + transType);
+		}
+
+		// Make sure there is a valid cluster configuration, required by the HazelCast transport
 
 		m_clusterConfig = (ClusterConfigSection) srvConfig.getConfigSection( ClusterConfigSection.SectionName);
 
-		if ( m_clusterConfig == null)
+		if ( m_clusterConfig == null && m_transport == null)
 			throw new InvalidConfigurationException( "Cluster configuration not available");
 
 		// Check if the cluster name has been specfied
 
-		ConfigElement elem = config.getChild( "clusterName");
+		elem = config.getChild( "clusterName");
 		if ( elem != null && elem.getValue() != null) {
 
 			// Set the cluster name
@@ -291,6 +326,56 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		if ( useNearCache == true)
 			m_nearCache = new ConcurrentHashMap<String, HazelCastClusterFileState>();
 
+		// Check if the cluster message batching settings have been specified
+
+		elem = config.getChild( "messageBatch");
+
+		if ( elem != null) {
+
+			// Check if message batching has been disabled
+
+			String disableBatch = elem.getAttribute( "disable");
+
+			if ( Boolean.parseBoolean( disableBatch) == true)
+				m_batchMessages = false;
+
+			// Check if the batch window has been specified
+
+			String batchWindow = elem.getAttribute( "window");
+			if ( batchWindow != null) {
+				try {
+
+					// Convert, validate, the batch window value
+
+					m_batchWindow = Long.parseLong( batchWindow);
+					if ( m_batchWindow < ClusterMessageBatcher.MinimumBatchWindow || m_batchWindow > ClusterMessageBatcher.MaximumBatchWindow)
+						throw new InvalidConfigurationException("Message batch window value out of valid range (" + ClusterMessageBatcher.MinimumBatchWindow +
+																"-" + ClusterMessageBatcher.MaximumBatchWindow + ")");
+				}
+				catch ( NumberFormatException ex) {
+					throw new InvalidConfigurationException("Invalid message batch window value specified, " + batchWindow);
+				}
+			}
+
+			// Check if the maximum batch size has been specified
+
+			String batchSize = elem.getAttribute( "size");
+			if ( batchSize != null) {
+				try {
+
+					// Convert, validate, the batch size value
+
+					m_batchSize = Integer.parseInt( batchSize);
+					if ( m_batchSize < ClusterMessageBatcher.MinimumBatchSize || m_batchSize > ClusterMessageBatcher.MaximumBatchSize)
+						throw new InvalidConfigurationException("Message batch size value out of valid range (" + ClusterMessageBatcher.MinimumBatchSize +
+																"-" + ClusterMessageBatcher.MaximumBatchSize + ")");
+				}
+				catch ( NumberFormatException ex) {
+					throw new InvalidConfigurationException("Invalid message batch size value specified, " + batchSize);
+				}
+			}
+		}
+
 		// Get the global thread pool
 
 		CoreServerConfigSection coreConfig = (CoreServerConfigSection) srvConfig.getConfigSection( CoreServerConfigSection.SectionName);
@@ -616,11 +701,8 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Rename the state via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Boolean> callable = new RenameStateTask( getClusterName(), state.getPath(), newPathNorm, isDir, hasTaskDebug(), hasTaskTiming());
-		FutureTask<Boolean> renameStateTask = new DistributedTask<Boolean>( callable, state.getPath());
-
-		execService.execute( renameStateTask);
+		Future<Boolean> renameStateTask = m_transport.executeOnKeyOwner( callable, state.getPath());
 
 		try {
 
@@ -696,7 +778,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 				// Notify cluster of the rename
 
 				StateRenameMessage stateRenameMsg = new StateRenameMessage( ClusterMessage.AllNodes, m_localNode, state.getPath(), newPath, isDir);
-				m_clusterTopic.publish( stateRenameMsg);
+				publishMessage( stateRenameMsg);
 
 				// DEBUG
 
@@ -1033,11 +1115,8 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Add the oplock via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Boolean> callable = new AddOpLockTask( getClusterName(), fstate.getPath(), remoteOpLock, hasTaskDebug(), hasTaskTiming());
-		FutureTask<Boolean> addOpLockTask = new DistributedTask<Boolean>( callable,	fstate.getPath());
-
-		execService.execute( addOpLockTask);
+		Future<Boolean> addOpLockTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 		boolean sts = false;
 
@@ -1132,11 +1211,8 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 			// Remove the oplock using a remote call to the node that owns the file state
 
-			ExecutorService execService = m_hazelCastInstance.getExecutorService();
 			Callable<Boolean> callable = new RemoveOpLockTask( getClusterName(), fstate.getPath(), hasTaskDebug(), hasTaskTiming());
-			FutureTask<Boolean> removeOpLockTask = new DistributedTask<Boolean>( callable, fstate.getPath());
-
-			execService.execute( removeOpLockTask);
+			Future<Boolean> removeOpLockTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 			try {
 
@@ -1174,7 +1250,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 			// Inform cluster nodes that an oplock has been released
 
 			OpLockMessage oplockMsg = new OpLockMessage( ClusterMessage.AllNodes, ClusterMessageType.OpLockBreakNotify, clState.getPath());
-			m_clusterTopic.publish( oplockMsg);
+			publishMessage( oplockMsg);
 		}
 		else if ( hasDebugLevel( DebugOplock))
 			Debug.println("No local oplock found for " + fstate);
@@ -1227,12 +1303,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Add the oplock via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<ClusterFileState> callable = new AddFileByteLockTask( getClusterName(), fstate.getPath(), (ClusterFileLock) lock,
 																		hasDebugLevel( DebugByteLock), hasTaskTiming());
-		FutureTask<ClusterFileState> addLockTask = new DistributedTask<ClusterFileState>( callable, fstate.getPath());
-
-		execService.execute( addLockTask);
+		Future<ClusterFileState> addLockTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 		try {
 
@@ -1294,12 +1367,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Add the oplock via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<ClusterFileState> callable = new RemoveFileByteLockTask( getClusterName(), fstate.getPath(), (ClusterFileLock) lock,
 																	hasDebugLevel( DebugByteLock), hasTaskTiming());
-		FutureTask<ClusterFileState> removeLockTask = new DistributedTask<ClusterFileState>( callable, fstate.getPath());
-
-		execService.execute( removeLockTask);
+		Future<ClusterFileState> removeLockTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 		try {
 
@@ -1352,10 +1422,13 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		if ( Debug.EnableDbg && hasDebug())
 			Debug.println( "Starting cluster, name=" + getClusterName());
 
-		// Create/join a cluster using the specified configuration
+		// Create/join a cluster using the specified configuration, use the HazelCast transport if no other
+		// transport has been configured
+
+		if ( m_transport == null)
+			m_transport = new HazelCastClusterTransport( m_clusterConfig.getHazelcastInstance());
 
-		m_hazelCastInstance = m_clusterConfig.getHazelcastInstance();
-		m_cluster = m_hazelCastInstance.getCluster();
+		m_transport.startTransport();
 
 		// Build the initial cluster node list
 
@@ -1363,17 +1436,17 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Add a listener to receive cluster membership events
 
-		m_cluster.addMembershipListener( this);
+		m_transport.addMembershipListener( this);
 
 		// Create the clustered state cache map
 
-		m_stateCache = m_hazelCastInstance.getMap( getClusterName());
+		m_stateCache = m_transport.getMap( getClusterName(), new ClusterStateCodec<HazelCastClusterFileState>());
 		if ( m_stateCache == null)
 			throw new Exception("Failed to initialize state cache, " + getClusterName());
 
 		// Create the pub/sub message topic for cluster messages
 
-		m_clusterTopic = m_hazelCastInstance.getTopic( m_topicName);
+		m_clusterTopic = m_transport.getTopic( m_topicName, new ClusterMessageCodec());
 		if ( m_clusterTopic == null)
 			throw new Exception("Failed to initialize cluster topic, " + m_topicName);
 
@@ -1383,12 +1456,19 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 			// Add a listener to receive cluster cache entry events
 
-			m_stateCache.addEntryListener( this, false);
+			m_stateCache.addEntryListener( this);
 
 			// Add a listener to receive cluster messages via the topic
 
 			m_clusterTopic.addMessageListener( this);
 
+			// Create the outbound message batcher, if enabled
+
+			if ( m_batchMessages == true) {
+				m_msgBatcher = new ClusterMessageBatcher( m_clusterTopic, m_localNode, m_threadPool, m_batchWindow, m_batchSize);
+				m_msgBatcher.setDebug( hasDebugLevel( DebugMessageBatch));
+			}
+
 	    	// Indicate that the cluster is running
 
 	    	getStateCache().clusterRunning();
@@ -1406,8 +1486,26 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		if ( Debug.EnableDbg && hasDebug())
 			Debug.println( "Shutting cluster, name=" + getClusterName());
 
-		// Hazelcast will be shutdown when the cluster configuration section is closed, it may be shared
-		// by multiple components/filessytems.
+		// Send out any queued cluster messages
+
+		if ( m_msgBatcher != null) {
+			m_msgBatcher.flush();
+
+			// DEBUG
+
+			if ( hasDebugLevel( DebugMessageBatch))
+				Debug.println( "Cluster message batcher stats " + m_msgBatcher);
+		}
+
+		// Shutdown the cluster transport
+		//
+		// Note: Hazelcast will be shutdown when the cluster configuration section is closed, it may be shared
+		//       by multiple components/filessytems.
+
+		if ( m_transport != null) {
+			m_transport.removeMembershipListener( this);
+			m_transport.shutdownTransport();
+		}
 	}
 
 	/**
@@ -1490,7 +1588,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 			// Send an oplock break request to the cluster
 
 			OpLockMessage oplockMsg = new OpLockMessage( clNode.getName(), ClusterMessageType.OpLockBreakRequest, normPath);
-			m_clusterTopic.publish( oplockMsg);
+			publishMessage( oplockMsg);
 		}
 		else if ( hasDebugLevel( DebugOplock))
 			Debug.println( "Unable to send oplock break, oplock=" + oplock);
@@ -1513,11 +1611,8 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		String normPath = FileState.normalizePath( oplock.getPath(), isCaseSensitive());
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Integer> callable = new ChangeOpLockTypeTask( getClusterName(), normPath, newTyp, hasTaskDebug(), hasTaskTiming());
-		FutureTask<Integer> changeOpLockTask = new DistributedTask<Integer>( callable, oplock.getPath());
-
-		execService.execute( changeOpLockTask);
+		Future<Integer> changeOpLockTask = m_transport.executeOnKeyOwner( callable, oplock.getPath());
 
 		try {
 
@@ -1583,7 +1678,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 				// Inform all nodes of the oplock type change
 
 				OpLockMessage oplockMsg = new OpLockMessage( ClusterMessage.AllNodes, ClusterMessageType.OplockTypeChange, normPath);
-				m_clusterTopic.publish( oplockMsg);
+				publishMessage( oplockMsg);
 			}
 			else {
 
@@ -1607,14 +1702,14 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 	/**
 	 * Cluster member added
 	 *
-	 * @param membershipEvent MembershipEvent
+	 * @param member ClusterMember
 	 */
-	public void memberAdded(MembershipEvent membershipEvent) {
+	public void memberAdded(ClusterMember member) {
 
 		// DEBUG
 
 		if ( Debug.EnableDbg && hasDebugLevel( DebugMembership))
-			Debug.println( "Cluster added member " + membershipEvent.getMember());
+			Debug.println( "Cluster added member " + member);
 
 		// Rebuild the cluster node list
 
@@ -1624,14 +1719,14 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 	/**
 	 * Cluster member removed
 	 *
-	 * @param membershipEvent MembershipEvent
+	 * @param member ClusterMember
 	 */
-	public void memberRemoved(MembershipEvent membershipEvent) {
+	public void memberRemoved(ClusterMember member) {
 
 		// DEBUG
 
 		if ( Debug.EnableDbg && hasDebugLevel( DebugMembership))
-			Debug.println( "Cluster removed member " + membershipEvent.getMember());
+			Debug.println( "Cluster removed member " + member);
 
 		// Rebuild the cluster node list
 
@@ -1640,7 +1735,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		// Remove file state resources owned by the node that has just left the cluster, such as
 		// oplocks, byte range locks
 
-		removeMemberData( membershipEvent.getMember());
+		removeMemberData( member);
 	}
 
 	/**
@@ -1663,17 +1758,17 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Get the current cluster member list
 
-		Set<Member> members = m_cluster.getMembers();
-		Iterator<Member> iterMembers = members.iterator();
+		List<ClusterMember> members = m_transport.getMembers();
+		Iterator<ClusterMember> iterMembers = members.iterator();
 		int nodeId = 1;
 
 		while ( iterMembers.hasNext()) {
 
 			// Get the next cluster member
 
-			Member curMember = iterMembers.next();
+			ClusterMember curMember = iterMembers.next();
 			ClusterNode clNode = null;
-			String clName = curMember.getInetSocketAddress().toString();
+			String clName = curMember.getName();
 
 			if ( curList != null && curList.numberOfNodes() > 0) {
 
@@ -1720,10 +1815,10 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 	 * As the cache data is spread across the cluster we remove data that is on the file states that
 	 * are stored on the local node.
 	 *
-	 * @param member Member
+	 * @param member ClusterMember
 	 * @return int
 	 */
-	protected int removeMemberData( Member member) {
+	protected int removeMemberData( ClusterMember member) {
 
 		// Only check the file states that are being stored on the local node
 
@@ -1744,7 +1839,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Get the member name
 
-		String memberName = member.toString();
+		String memberName = member.getName();
 
 		// Enumerate the file state cache and remove expired file state objects
 
@@ -1951,11 +2046,8 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Run the file access checks via the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<FileAccessToken> callable = new GrantFileAccessTask( getClusterName(), fstate.getPath(), grantParams, hasTaskDebug(), hasTaskTiming());
-		FutureTask<FileAccessToken> grantAccessTask = new DistributedTask<FileAccessToken>( callable, fstate.getPath());
-
-		execService.execute( grantAccessTask);
+		Future<FileAccessToken> grantAccessTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 		HazelCastAccessToken accessToken = null;
 
@@ -2112,12 +2204,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Run the file access checks via the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Integer> callable = new ReleaseFileAccessTask( getClusterName(), fstate.getPath(), (HazelCastAccessToken) token, m_topicName,
 																hasDebugLevel( DebugFileAccess), hasTaskTiming());
-		FutureTask<Integer> releaseAccessTask = new DistributedTask<Integer>( callable, fstate.getPath());
-
-		execService.execute( releaseAccessTask);
+		Future<Integer> releaseAccessTask = m_transport.executeOnKeyOwner( callable, fstate.getPath());
 
 		int openCnt = -1;
 
@@ -2148,7 +2237,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 						// Inform cluster nodes that an oplock has been released
 
 						OpLockMessage oplockMsg = new OpLockMessage( ClusterMessage.AllNodes, ClusterMessageType.OpLockBreakNotify, fstate.getPath());
-						m_clusterTopic.publish( oplockMsg);
+						publishMessage( oplockMsg);
 
 						// DEBUG
 
@@ -2297,12 +2386,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Check the file access via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Boolean> callable = new CheckFileByteLockTask( getClusterName(), clState.getPath(), checkLock, writeCheck,
 																hasDebugLevel( DebugFileAccess), hasTaskTiming());
-		FutureTask<Boolean> checkLockTask = new DistributedTask<Boolean>( callable, clState.getPath());
-
-		execService.execute( checkLockTask);
+		Future<Boolean> checkLockTask = m_transport.executeOnKeyOwner( callable, clState.getPath());
 		boolean canAccess = false;
 
 		try {
@@ -2347,12 +2433,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Update the file status via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Boolean> callable = new UpdateStateTask( getClusterName(), clState.getPath(), clState.getFileStatus(),
 																hasDebugLevel( DebugRemoteTask | DebugFileStatus), hasTaskTiming());
-		FutureTask<Boolean> updateStateTask = new DistributedTask<Boolean>( callable, clState.getPath());
-
-		execService.execute( updateStateTask);
+		Future<Boolean> updateStateTask = m_transport.executeOnKeyOwner( callable, clState.getPath());
 		boolean stateUpdated = false;
 
 		try {
@@ -2429,7 +2512,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		// Create a file status update message and broadcast to the cluster
 
 		StateUpdateMessage stateUpdMsg = new StateUpdateMessage( ClusterMessage.AllNodes, m_localNode, clState, updateMask);
-		m_clusterTopic.publish( stateUpdMsg);
+		publishMessage( stateUpdMsg);
 
 		// DEBUG
 
@@ -2437,6 +2520,37 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 			Debug.println( "Sent file state update to cluster, state=" + clState + ", update=" + ClusterFileState.getUpdateMaskAsString( updateMask));
 	}
 
+	/**
+	 * Return the cluster transport
+	 *
+	 * @return ClusterTransport
+	 */
+	public final ClusterTransport getClusterTransport() {
+		return m_transport;
+	}
+
+	/**
+	 * Set the cluster transport, must be set before the cache is initialized. If no transport is set then
+	 * the HazelCast transport is used.
+	 *
+	 * @param transport ClusterTransport
+	 */
+	public final void setClusterTransport( ClusterTransport transport) {
+		m_transport = transport;
+	}
+
+	/**
+	 * Publish a message to the cluster, via the message batcher if enabled
+	 *
+	 * @param msg ClusterMessage
+	 */
+	protected final void publishMessage( ClusterMessage msg) {
+		if ( m_msgBatcher != null)
+			m_msgBatcher.publish( msg);
+		else
+			m_clusterTopic.publish( msg);
+	}
+
 	/**
 	 * Return the cluster name
 	 *
@@ -2594,36 +2708,38 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
     /**
      * Invoked when an entry is added to the clustered cache
      *
-     * @param event entry event
+     * @param key String
+     * @param value HazelCastClusterFileState
      */
-    public void entryAdded(EntryEvent<String, HazelCastClusterFileState> event) {
+    public void entryAdded(String key, HazelCastClusterFileState value) {
 
     	// DEBUG
 
     	if ( hasDebugLevel( DebugClusterEntry))
-    		Debug.println( "EntryAdded: key=" + event.getKey());
+    		Debug.println( "EntryAdded: key=" + key);
     }
 
     /**
      * Invoked when an entry is removed from the clustered cache
      *
-     * @param event entry event
+     * @param key String
+     * @param value HazelCastClusterFileState
      */
-    public void entryRemoved(EntryEvent<String, HazelCastClusterFileState> event) {
+    public void entryRemoved(String key, HazelCastClusterFileState value) {
 
     	// DEBUG
 
     	if ( hasDebugLevel( DebugClusterEntry))
-    		Debug.println( "EntryRemoved: key=" + event.getKey());
+    		Debug.println( "EntryRemoved: key=" + key);
 
     	// Check if there is an entry in the local per-node cache
 
-    	PerNodeState perNode = m_perNodeCache.remove( event.getKey());
+    	PerNodeState perNode = m_perNodeCache.remove( key);
 
     	// DEBUG
 
 		if ( perNode != null && hasDebugLevel( DebugPerNode))
-			Debug.println("Removed entry " + event.getKey() + " from per-node cache (remote remove), perNode=" + perNode);
+			Debug.println("Removed entry " + key + " from per-node cache (remote remove), perNode=" + perNode);
 
     	// Check if the near-cache is enabled, remove from the near-cache
 
@@ -2631,7 +2747,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
     		// Remove the state from the near-cache
 
-    		HazelCastClusterFileState hcState = m_nearCache.remove( event.getKey());
+    		HazelCastClusterFileState hcState = m_nearCache.remove( key);
 
     		// DEBUG
 
@@ -2643,14 +2759,15 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
     /**
      * Invoked when an entry is updated in the clustered cache
      *
-     * @param event entry event
+     * @param key String
+     * @param value HazelCastClusterFileState
      */
-    public void entryUpdated(EntryEvent<String, HazelCastClusterFileState> event) {
+    public void entryUpdated(String key, HazelCastClusterFileState value) {
 
     	// DEBUG
 
     	if ( hasDebugLevel( DebugClusterEntry))
-    		Debug.println( "EntryUpdated: key=" + event.getKey());
+    		Debug.println( "EntryUpdated: key=" + key);
 
     	// If the near cache is enabled then check if we have the entry cached
 
@@ -2658,7 +2775,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
     		// Check if the entry is in the near cache
 
-    		HazelCastClusterFileState hcState = getStateFromNearCache( event.getKey());
+    		HazelCastClusterFileState hcState = getStateFromNearCache( key);
     		if ( hcState != null) {
 
     			// Update the remote update time for the near cache version of the file state
@@ -2676,14 +2793,15 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
     /**
      * Invoked when an entry is evicted from the clustered cache
      *
-     * @param event entry event
+     * @param key String
+     * @param value HazelCastClusterFileState
      */
-    public void entryEvicted(EntryEvent<String, HazelCastClusterFileState> event) {
+    public void entryEvicted(String key, HazelCastClusterFileState value) {
 
     	// DEBUG
 
     	if ( hasDebugLevel( DebugClusterEntry))
-    		Debug.println( "EntryEvicted: key=" + event.getKey());
+    		Debug.println( "EntryEvicted: key=" + key);
 
     	// Check if the near-cache is enabled, remove from the near-cache
 
@@ -2691,24 +2809,33 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
     		// Remove the state from the near-cache
 
-    		HazelCastClusterFileState hcState = m_nearCache.remove( event.getKey());
+    		HazelCastClusterFileState hcState = m_nearCache.remove( key);
 
     		// DEBUG
 
     		if ( hcState != null && hasDebugLevel( DebugNearCache))
-    			Debug.println("Removed entry " + event.getKey() + " from near-cache (remote evict), state=" + hcState);
+    			Debug.println("Removed entry " + key + " from near-cache (remote evict), state=" + hcState);
     	}
     }
 
     /**
      * Cluster topic message listener
      *
-     * @param hzMessage ClusterMessage
+     * @param msg ClusterMessage
      */
-	public void onMessage(Message<ClusterMessage> hzMessage) {
+	public void onMessage(ClusterMessage msg) {
+		processMessage( msg);
+	}
+
+	/**
+	 * Process a cluster message
+	 *
+	 * @param msg ClusterMessage
+	 */
+	protected void processMessage( ClusterMessage msg) {
 
 		// Check is the message is addressed to this node, or all nodes
-		ClusterMessage msg = hzMessage.getMessageObject();
+
 		if ( msg.isAllNodes() || m_localNode.nameMatches( msg.getTargetNode())) {
 
 			// Process the message
@@ -2751,6 +2878,12 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 					procDataUpdate(( DataUpdateMessage) msg);
 					break;
 
+				// Batch of messages
+
+				case ClusterMessageType.MessageBatch:
+					procMessageBatch(( ClusterMessageBatch) msg);
+					break;
+
 				// Unknown message type
 
 				default:
@@ -2764,6 +2897,40 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 		}
 	}
 
+	/**
+	 * Process a batch of cluster messages, in the order they were queued by the sending node
+	 *
+	 * @param msg ClusterMessageBatch
+	 */
+	protected void procMessageBatch( ClusterMessageBatch msg) {
+
+		// DEBUG
+
+		if ( hasDebugLevel( DebugClusterMessage | DebugMessageBatch))
+			Debug.println("Process message batch msg=" + msg);
+
+		// Process each message in the batch
+
+		List<ClusterMessage> msgList = msg.getMessages();
+		if ( msgList == null)
+			return;
+
+		for ( ClusterMessage batchMsg : msgList) {
+			try {
+				processMessage( batchMsg);
+			}
+			catch ( Exception ex) {
+
+				// DEBUG
+
+				if ( hasDebugLevel( DebugClusterMessage | DebugMessageBatch)) {
+					Debug.println("Error processing batched message msg=" + batchMsg);
+					Debug.println( ex);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Process a remote oplock break request message
 	 *
@@ -2810,7 +2977,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 			// Send back an oplock break response to the requestor, oplock already released
 
 			OpLockMessage oplockMsg = new OpLockMessage( msg.getFromNode(), ClusterMessageType.OpLockBreakNotify, msg.getPath());
-			m_clusterTopic.publish( oplockMsg);
+			publishMessage( oplockMsg);
 
 			// DEBUG
 
@@ -3298,10 +3465,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Check if the local node owns the partition that the path/key belongs to
 
-		Partition keyPart = m_hazelCastInstance.getPartitionService().getPartition( path);
-		if ( keyPart.getOwner().equals(( Member) m_localNode.getAddress()))
-			return true;
-		return false;
+		return m_transport.isLocalKey( path);
 	}
 
 	/**
@@ -3425,12 +3589,9 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 
 		// Set the file data update status via a remote call to the node that owns the file state
 
-		ExecutorService execService = m_hazelCastInstance.getExecutorService();
 		Callable<Boolean> callable = new FileDataUpdateTask( getClusterName(), fState.getPath(), getLocalNode(), startUpdate,
 																		hasDebugLevel( DebugFileDataUpdate), hasTaskTiming());
-		FutureTask<Boolean> fileDataUpdateTask = new DistributedTask<Boolean>( callable, fState.getPath());
-
-		execService.execute( fileDataUpdateTask);
+		Future<Boolean> fileDataUpdateTask = m_transport.executeOnKeyOwner( callable, fState.getPath());
 
 		try {
 
@@ -3461,7 +3622,7 @@ public class HazelCastClusterFileStateCache extends ClusterFileStateCache implem
 				// Create a file data update message and broadcast to the cluster
 
 				DataUpdateMessage dataUpdMsg = new DataUpdateMessage( ClusterMessage.AllNodes, m_localNode, fState.getPath(), startUpdate);
-				m_clusterTopic.publish( dataUpdMsg);
+				publishMessage( dataUpdMsg);
 
 				// DEBUG
 
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMapListener;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IMap;
+
+/**
+ * HazelCast Cluster Map Class
+ *
+ * <p>Cluster map using a HazelCast distributed map. If a codec is specified the map values are stored in
+ * the HazelCast map in their encoded form.
+ *
+ * @author gkspencer
+ */
+public class HazelCastClusterMap<K, V> implements ClusterMap<K, V> {
+
+	// HazelCast map
+
+	private IMap<K, Object> m_map;
+
+	// Value codec, or null to store the value objects
+
+	private ClusterCodec<V> m_codec;
+
+	// Entry listener adapters
+
+	private HashMap<ClusterMapListener<K, V>, EntryListener<K, Object>> m_listeners;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param map IMap<K, Object>
+	 * @param codec ClusterCodec<V>
+	 */
+	public HazelCastClusterMap( IMap<K, Object> map, ClusterCodec<V> codec) {
+		m_map = map;
+		m_codec = codec;
+		m_listeners = new HashMap<ClusterMapListener<K, V>, EntryListener<K, Object>>();
+	}
+
+	/**
+	 * Return the HazelCast map
+	 *
+	 * @return IMap<K, Object>
+	 */
+	public final IMap<K, Object> getHazelCastMap() {
+		return m_map;
+	}
+
+	/**
+	 * Return the value for the specified key
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V get( K key) {
+		return decodeValue( m_map.get( key));
+	}
+
+	/**
+	 * Store a value, return the previous value
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V put( K key, V value) {
+		return decodeValue( m_map.put( key, encodeValue( value)));
+	}
+
+	/**
+	 * Store a value if there is no existing value for the key
+	 *
+	 * @param key K
+	 * @param value V
+	 * @return V
+	 */
+	public V putIfAbsent( K key, V value) {
+		return decodeValue( m_map.putIfAbsent( key, encodeValue( value)));
+	}
+
+	/**
+	 * Remove a value, return the removed value
+	 *
+	 * @param key K
+	 * @return V
+	 */
+	public V remove( K key) {
+		return decodeValue( m_map.remove( key));
+	}
+
+	/**
+	 * Lock the specified key
+	 *
+	 * @param key K
+	 */
+	public void lock( K key) {
+		m_map.lock( key);
+	}
+
+	/**
+	 * Unlock the specified key
+	 *
+	 * @param key K
+	 */
+	public void unlock( K key) {
+		m_map.unlock( key);
+	}
+
+	/**
+	 * Return the number of entries in the map
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return m_map.size();
+	}
+
+	/**
+	 * Return the set of keys owned by the local cluster member
+	 *
+	 * @return Set<K>
+	 */
+	public Set<K> localKeySet() {
+		return m_map.localKeySet();
+	}
+
+	/**
+	 * Add a listener for map entry events, the entry values are not included in the events
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void addEntryListener( final ClusterMapListener<K, V> listener) {
+
+		// Create a HazelCast listener that passes the events to the transport listener
+
+		EntryListener<K, Object> hcListener = new EntryListener<K, Object>() {
+			public void entryAdded( EntryEvent<K, Object> event) {
+				listener.entryAdded( event.getKey(), decodeValue( event.getValue()));
+			}
+
+			public void entryRemoved( EntryEvent<K, Object> event) {
+				listener.entryRemoved( event.getKey(), decodeValue( event.getValue()));
+			}
+
+			public void entryUpdated( EntryEvent<K, Object> event) {
+				listener.entryUpdated( event.getKey(), decodeValue( event.getValue()));
+			}
+
+			public void entryEvicted( EntryEvent<K, Object> event) {
+				listener.entryEvicted( event.getKey(), decodeValue( event.getValue()));
+			}
+		};
+
+		synchronized ( m_listeners) {
+			m_listeners.put( listener, hcListener);
+		}
+
+		m_map.addEntryListener( hcListener, false);
+	}
+
+	/**
+	 * Remove a map entry listener
+	 *
+	 * @param listener ClusterMapListener<K, V>
+	 */
+	public void removeEntryListener( ClusterMapListener<K, V> listener) {
+
+		EntryListener<K, Object> hcListener = null;
+
+		synchronized ( m_listeners) {
+			hcListener = m_listeners.remove( listener);
+		}
+
+		if ( hcListener != null)
+			m_map.removeEntryListener( hcListener);
+	}
+
+	/**
+	 * Encode a value to be stored in the HazelCast map
+	 *
+	 * @param value V
+	 * @return Object
+	 */
+	private Object encodeValue( V value) {
+		if ( m_codec == null || value == null)
+			return value;
+
+		try {
+			return m_codec.encode( value);
+		}
+		catch ( IOException ex) {
+			throw new RuntimeException( "Failed to encode map value, " + value.getClass().getName(), ex);
+		}
+	}
+
+	/**
+	 * Decode a value from the HazelCast map
+	 *
+	 * @param value Object
+	 * @return V
+	 */
+	@SuppressWarnings("unchecked")
+	private V decodeValue( Object value) {
+		if ( m_codec == null || value == null)
+			return (V) value;
+
+		try {
+			return m_codec.decode((byte[]) value);
+		}
+		catch ( IOException ex) {
+			throw new RuntimeException( "Failed to decode map value", ex);
+		}
+	}
+}
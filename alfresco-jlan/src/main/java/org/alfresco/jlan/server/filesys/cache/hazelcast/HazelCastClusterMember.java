@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMember;
+
+import com.hazelcast.core.Member;
+
+/**
+ * HazelCast Cluster Member Class
+ *
+ * @author gkspencer
+ */
+public class HazelCastClusterMember implements ClusterMember {
+
+	// HazelCast member
+
+	private Member m_member;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param member Member
+	 */
+	public HazelCastClusterMember( Member member) {
+		m_member = member;
+	}
+
+	/**
+	 * Return the HazelCast member
+	 *
+	 * @return Member
+	 */
+	public final Member getHazelCastMember() {
+		return m_member;
+	}
+
+	/**
+	 * Return the member name, in the '/ip-addr:port' format
+	 *
+	 * @return String
+	 */
+	public String getName() {
+		return m_member.getInetSocketAddress().toString();
+	}
+
+	/**
+	 * Check if this is the local cluster member
+	 *
+	 * @return boolean
+	 */
+	public boolean isLocalMember() {
+		return m_member.localMember();
+	}
+
+	/**
+	 * Compare cluster members
+	 *
+	 * @param obj Object
+	 * @return boolean
+	 */
+	public boolean equals( Object obj) {
+		if ( obj instanceof HazelCastClusterMember)
+			return m_member.equals((( HazelCastClusterMember) obj).getHazelCastMember());
+		return false;
+	}
+
+	/**
+	 * Return the hash code
+	 *
+	 * @return int
+	 */
+	public int hashCode() {
+		return m_member.hashCode();
+	}
+
+	/**
+	 * Return the member as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		return m_member.toString();
+	}
+}
@@ -21,8 +21,7 @@ package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterInterface;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
-
-import com.hazelcast.core.Member;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMember;
 
 /**
  * HazelCast Cluster Node Class
@@ -37,14 +36,14 @@ public class HazelCastClusterNode extends ClusterNode {
 	 * @param name String
 	 * @param priority int
 	 * @param cluster ClusterInterface
-	 * @param addr Member
+	 * @param addr ClusterMember
 	 */
-	public HazelCastClusterNode(String name, int priority, ClusterInterface cluster, Member addr) {
+	public HazelCastClusterNode(String name, int priority, ClusterInterface cluster, ClusterMember addr) {
 		super( name, priority, cluster, addr);
 
 		// Check for the local node
 
-		if ( addr.localMember())
+		if ( addr.isLocalMember())
 			setLocalNode( true);
 	}
 
@@ -58,12 +57,12 @@ public class HazelCastClusterNode extends ClusterNode {
 	}
 
 	/**
-	 * Return the HazelCast node details
+	 * Return the cluster transport member details
 	 *
-	 * @return Member
+	 * @return ClusterMember
 	 */
-	public final Member getHazelCastAddress() {
-		return (Member) getAddress();
+	public final ClusterMember getClusterMember() {
+		return (ClusterMember) getAddress();
 	}
 
 	/**
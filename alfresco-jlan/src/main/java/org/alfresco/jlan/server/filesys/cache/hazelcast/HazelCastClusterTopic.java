@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopic;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopicListener;
+
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+/**
+ * HazelCast Cluster Topic Class
+ *
+ * <p>Cluster pub/sub topic using a HazelCast topic. If a codec is specified the messages are published in
+ * their encoded form.
+ *
+ * @author gkspencer
+ */
+public class HazelCastClusterTopic<M> implements ClusterTopic<M> {
+
+	// HazelCast topic
+
+	private ITopic<Object> m_topic;
+
+	// Message codec, or null to publish the message objects
+
+	private ClusterCodec<M> m_codec;
+
+	// Message listener adapters
+
+	private HashMap<ClusterTopicListener<M>, MessageListener<Object>> m_listeners;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param topic ITopic<Object>
+	 * @param codec ClusterCodec<M>
+	 */
+	public HazelCastClusterTopic( ITopic<Object> topic, ClusterCodec<M> codec) {
+		m_topic = topic;
+		m_codec = codec;
+		m_listeners = new HashMap<ClusterTopicListener<M>, MessageListener<Object>>();
+	}
+
+	/**
+	 * Publish a message to all cluster members
+	 *
+	 * @param msg M
+	 */
+	public void publish( M msg) {
+		// Encode the message, if there is a codec
+
+		if ( m_codec != null) {
+			try {
+				m_topic.publish( m_codec.encode( msg));
+			}
+			catch ( IOException ex) {
+				throw new RuntimeException( "Failed to encode message, " + msg.getClass().getName(), ex);
+			}
+		}
+		else
+			m_topic.publish( msg);
+	}
+
+	/**
+	 * Add a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void addMessageListener( final ClusterTopicListener<M> listener) {
+
+		// Create a HazelCast listener that passes the message to the transport listener
+
+		MessageListener<Object> hcListener = new MessageListener<Object>() {
+			@SuppressWarnings("unchecked")
+			public void onMessage( Message<Object> hzMessage) {
+				Object msg = hzMessage.getMessageObject();
+
+				if ( m_codec != null) {
+					try {
+						msg = m_codec.decode((byte[]) msg);
+					}
+					catch ( IOException ex) {
+						throw new RuntimeException( "Failed to decode message", ex);
+					}
+				}
+
+				listener.onMessage((M) msg);
+			}
+		};
+
+		synchronized ( m_listeners) {
+			m_listeners.put( listener, hcListener);
+		}
+
+		m_topic.addMessageListener( hcListener);
+	}
+
+	/**
+	 * Remove a message listener
+	 *
+	 * @param listener ClusterTopicListener<M>
+	 */
+	public void removeMessageListener( ClusterTopicListener<M> listener) {
+
+		MessageListener<Object> hcListener = null;
+
+		synchronized ( m_listeners) {
+			hcListener = m_listeners.remove( listener);
+		}
+
+		if ( hcListener != null)
+			m_topic.removeMessageListener( hcListener);
+	}
+}
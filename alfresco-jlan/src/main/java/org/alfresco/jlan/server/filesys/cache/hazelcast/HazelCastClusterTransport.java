@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterCodec;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMember;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMembershipListener;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopic;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTransport;
+
+import com.hazelcast.core.DistributedTask;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.hazelcast.partition.Partition;
+
+/**
+ * HazelCast Cluster Transport Class
+ *
+ * <p>Cluster transport using a HazelCast instance, the instance is shared and is not started or shutdown by
+ * the transport.
+ *
+ * @author gkspencer
+ */
+public class HazelCastClusterTransport implements ClusterTransport {
+
+	// HazelCast instance
+
+	private HazelcastInstance m_hcInstance;
+
+	// Membership listener adapters
+
+	private HashMap<ClusterMembershipListener, MembershipListener> m_memberListeners;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param hcInstance HazelcastInstance
+	 */
+	public HazelCastClusterTransport( HazelcastInstance hcInstance) {
+		m_hcInstance = hcInstance;
+		m_memberListeners = new HashMap<ClusterMembershipListener, MembershipListener>();
+	}
+
+	/**
+	 * Return the HazelCast instance
+	 *
+	 * @return HazelcastInstance
+	 */
+	public final HazelcastInstance getHazelcastInstance() {
+		return m_hcInstance;
+	}
+
+	/**
+	 * Start the transport
+	 *
+	 * @exception Exception
+	 */
+	public void startTransport()
+		throws Exception {
+
+		// HazelCast instance is started by the cluster configuration
+	}
+
+	/**
+	 * Shutdown the transport
+	 *
+	 * @exception Exception
+	 */
+	public void shutdownTransport()
+		throws Exception {
+
+		// HazelCast will be shutdown when the cluster configuration section is closed, it may be shared
+		// by multiple components/filessytems.
+	}
+
+	/**
+	 * Return the clustered map with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name) {
+		return getMap( name, null);
+	}
+
+	/**
+	 * Return the clustered map with the specified name, map values are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<V>
+	 * @return ClusterMap<K, V>
+	 */
+	public <K, V> ClusterMap<K, V> getMap( String name, ClusterCodec<V> codec) {
+		return new HazelCastClusterMap<K, V>( m_hcInstance.<K, Object>getMap( name), codec);
+	}
+
+	/**
+	 * Return the pub/sub topic with the specified name
+	 *
+	 * @param name String
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name) {
+		return getTopic( name, null);
+	}
+
+	/**
+	 * Return the pub/sub topic with the specified name, messages are encoded using the codec
+	 *
+	 * @param name String
+	 * @param codec ClusterCodec<M>
+	 * @return ClusterTopic<M>
+	 */
+	public <M> ClusterTopic<M> getTopic( String name, ClusterCodec<M> codec) {
+		return new HazelCastClusterTopic<M>( m_hcInstance.<Object>getTopic( name), codec);
+	}
+
+	/**
+	 * Run a task on the cluster member that owns the specified key
+	 *
+	 * @param task Callable<T>
+	 * @param key Object
+	 * @return Future<T>
+	 */
+	public <T> Future<T> executeOnKeyOwner( Callable<T> task, Object key) {
+
+		// Wrap the task so it receives the transport on the remote node
+
+		ExecutorService execService = m_hcInstance.getExecutorService();
+		FutureTask<T> distTask = new DistributedTask<T>( new HazelCastTransportTask<T>( task), key);
+
+		execService.execute( distTask);
+		return distTask;
+	}
+
+	/**
+	 * Check if the specified key is owned by the local cluster member
+	 *
+	 * @param key Object
+	 * @return boolean
+	 */
+	public boolean isLocalKey( Object key) {
+		Partition keyPart = m_hcInstance.getPartitionService().getPartition( key);
+		return keyPart.getOwner().equals( m_hcInstance.getCluster().getLocalMember());
+	}
+
+	/**
+	 * Return the current cluster members
+	 *
+	 * @return List<ClusterMember>
+	 */
+	public List<ClusterMember> getMembers() {
+		ArrayList<ClusterMember> members = new ArrayList<ClusterMember>();
+
+		for ( Member member : m_hcInstance.getCluster().getMembers())
+			members.add( new HazelCastClusterMember( member));
+
+		return members;
+	}
+
+	/**
+	 * Return the local cluster member
+	 *
+	 * @return ClusterMember
+	 */
+	public ClusterMember getLocalMember() {
+		return new HazelCastClusterMember( m_hcInstance.getCluster().getLocalMember());
+	}
+
+	/**
+	 * Add a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void addMembershipListener( final ClusterMembershipListener listener) {
+
+		// Create a HazelCast listener that passes the events to the transport listener
+
+		MembershipListener hcListener = new MembershipListener() {
+			public void memberAdded( MembershipEvent event) {
+				listener.memberAdded( new HazelCastClusterMember( event.getMember()));
+			}
+
+			public void memberRemoved( MembershipEvent event) {
+				listener.memberRemoved( new HazelCastClusterMember( event.getMember()));
+			}
+		};
+
+		synchronized ( m_memberListeners) {
+			m_memberListeners.put( listener, hcListener);
+		}
+
+		m_hcInstance.getCluster().addMembershipListener( hcListener);
+	}
+
+	/**
+	 * Remove a cluster membership listener
+	 *
+	 * @param listener ClusterMembershipListener
+	 */
+	public void removeMembershipListener( ClusterMembershipListener listener) {
+
+		MembershipListener hcListener = null;
+
+		synchronized ( m_memberListeners) {
+			hcListener = m_memberListeners.remove( listener);
+		}
+
+		if ( hcListener != null)
+			m_hcInstance.getCluster().removeMembershipListener( hcListener);
+	}
+}
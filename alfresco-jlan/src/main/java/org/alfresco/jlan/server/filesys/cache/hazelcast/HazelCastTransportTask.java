@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTransportAware;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+/**
+ * HazelCast Transport Task Class
+ *
+ * <p>Wraps a task that is run on a remote node via the HazelCast executor, the task is given a cluster
+ * transport for the HazelCast instance on the node that runs the task.
+ *
+ * @author gkspencer
+ */
+public class HazelCastTransportTask<T> implements Callable<T>, HazelcastInstanceAware, Serializable {
+
+	// Serialization id
+
+	private static final long serialVersionUID = 1L;
+
+	// Task to run
+
+	private Callable<T> m_task;
+
+	/**
+	 * Default constructor
+	 */
+	public HazelCastTransportTask() {
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param task Callable<T>
+	 */
+	public HazelCastTransportTask( Callable<T> task) {
+		m_task = task;
+	}
+
+	/**
+	 * Set the HazelCast instance
+	 *
+	 * @param hcInstance HazelcastInstance
+	 */
+	public void setHazelcastInstance( HazelcastInstance hcInstance) {
+		if ( m_task instanceof ClusterTransportAware)
+			(( ClusterTransportAware) m_task).setClusterTransport( new HazelCastClusterTransport( hcInstance));
+	}
+
+	/**
+	 * Run the task
+	 *
+	 * @return T
+	 * @exception Exception
+	 */
+	public T call()
+		throws Exception {
+		return m_task.call();
+	}
+}
@@ -19,6 +19,12 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.alfresco.jlan.util.CompactDataIO;
+
 /**
  * OpLock Message Class
  *
@@ -63,6 +69,32 @@ public class OpLockMessage extends ClusterMessage {
 		return m_path;
 	}
 
+	/**
+	 * Write the oplock message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+		CompactDataIO.writeString( out, m_path);
+	}
+
+	/**
+	 * Read the oplock message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+		m_path = CompactDataIO.readString( in);
+	}
+
 	/**
 	 * Return the oplock message as a string
 	 *
@@ -22,12 +22,11 @@ package org.alfresco.jlan.server.filesys.cache.hazelcast;
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.filesys.FileAccessToken;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTopic;
 import org.alfresco.jlan.smb.OpLock;
 import org.alfresco.jlan.smb.SharingMode;
 
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.ITopic;
-
 /**
  * Release File Access Task Class
  *
@@ -69,17 +68,18 @@ public class ReleaseFileAccessTask extends RemoteStateTask<Integer> {
 		super( mapName, key, true, false, debug, timingDebug);
 
 		m_token = token;
+		m_clusterTopic = clusterTopic;
 	}
 
 	/**
 	 * Run a remote task against a file state
 	 *
-	 * @param stateCache IMap<String, ClusterFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param fState ClusterFileState
 	 * @return Integer
 	 * @exception Exception
 	 */
-	protected Integer runRemoteTaskAgainstState( IMap<String, ClusterFileState> stateCache, ClusterFileState fState)
+	protected Integer runRemoteTaskAgainstState( ClusterMap<String, ClusterFileState> stateCache, ClusterFileState fState)
 		throws Exception {
 
 		// DEBUG
@@ -124,7 +124,7 @@ public class ReleaseFileAccessTask extends RemoteStateTask<Integer> {
 
 				// Inform cluster nodes that an oplock has been released
 
-				ITopic<ClusterMessage> clusterTopic = getHazelcastInstance().getTopic( m_clusterTopic);
+				ClusterTopic<ClusterMessage> clusterTopic = getClusterTransport().getTopic( m_clusterTopic, new ClusterMessageCodec());
 				OpLockMessage oplockMsg = new OpLockMessage( ClusterMessage.AllNodes, ClusterMessageType.OpLockBreakNotify, fState.getPath());
 				clusterTopic.publish( oplockMsg);
 
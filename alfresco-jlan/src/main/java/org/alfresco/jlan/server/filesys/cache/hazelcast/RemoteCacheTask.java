@@ -24,10 +24,9 @@ import java.util.concurrent.Callable;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
-
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.HazelcastInstanceAware;
-import com.hazelcast.core.IMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTransport;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterTransportAware;
 
 /**
  * Remote Cache Task Class
@@ -36,7 +35,7 @@ import com.hazelcast.core.IMap;
  *
  * @author gkspencer
  */
-public abstract class RemoteCacheTask<T> implements Callable<T>, HazelcastInstanceAware, Serializable {
+public abstract class RemoteCacheTask<T> implements Callable<T>, ClusterTransportAware, Serializable {
 
 	// Serialization id
 
@@ -52,9 +51,9 @@ public abstract class RemoteCacheTask<T> implements Callable<T>, HazelcastInstan
 	private String m_mapName;
 	private String m_keyName;
 
-	// Hazelcast instance
+	// Cluster transport of the node running the task
 
-	private transient HazelcastInstance m_hcInstance;
+	private transient ClusterTransport m_transport;
 
 	// Task options
 
@@ -104,21 +103,21 @@ public abstract class RemoteCacheTask<T> implements Callable<T>, HazelcastInstan
 	}
 
 	/**
-	 * Get the Hazelcast instance
+	 * Get the cluster transport
 	 *
-	 * @return HazelcastInstance
+	 * @return ClusterTransport
 	 */
-	public HazelcastInstance getHazelcastInstance() {
-		return m_hcInstance;
+	public ClusterTransport getClusterTransport() {
+		return m_transport;
 	}
 
 	/**
-	 * Set the Hazelcast instance
+	 * Set the cluster transport
 	 *
-	 * @param hcInstance HazelcastInstance
+	 * @param transport ClusterTransport
 	 */
-	public void setHazelcastInstance(HazelcastInstance hcInstance) {
-		m_hcInstance = hcInstance;
+	public void setClusterTransport(ClusterTransport transport) {
+		m_transport = transport;
 	}
 
 	/**
@@ -192,7 +191,7 @@ public abstract class RemoteCacheTask<T> implements Callable<T>, HazelcastInstan
 
 		// Get the clustered cache
 
-		IMap<String, ClusterFileState> cache = getHazelcastInstance().getMap( getMapName());
+		ClusterMap<String, ClusterFileState> cache = getClusterTransport().getMap( getMapName(), new ClusterStateCodec<ClusterFileState>());
 		if ( cache == null)
 			throw new Exception( "Failed to find clustered map " + getMapName());
 
@@ -222,11 +221,11 @@ public abstract class RemoteCacheTask<T> implements Callable<T>, HazelcastInstan
 	/**
 	 * Run a remote task
 	 *
-	 * @param stateCache IMap<String, ClusterFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param key String
 	 * @return T
 	 * @exception Exception
 	 */
-	protected abstract T runRemoteTask( IMap<String, ClusterFileState> stateCache, String key)
+	protected abstract T runRemoteTask( ClusterMap<String, ClusterFileState> stateCache, String key)
 		throws Exception;
 }
@@ -19,6 +19,8 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -31,6 +33,7 @@ import org.alfresco.jlan.server.locking.OpLockDetailsAdapter;
 import org.alfresco.jlan.smb.OpLock;
 import org.alfresco.jlan.smb.server.SMBSrvPacket;
 import org.alfresco.jlan.smb.server.SMBSrvSession;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * Remote OpLock Details Class
@@ -315,6 +318,34 @@ public class RemoteOpLockDetails extends OpLockDetailsAdapter implements Seriali
 		m_lockType = lockTyp;
 	}
 
+	/**
+	 * Write the remote oplock details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeOpLock( DataOutput out)
+		throws IOException {
+
+		CompactDataIO.writeVarInt( out, m_lockType);
+		CompactDataIO.writeString( out, m_ownerName);
+		CompactDataIO.writeString( out, m_path);
+	}
+
+	/**
+	 * Read the remote oplock details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readOpLock( DataInput in)
+		throws IOException {
+
+		m_lockType  = CompactDataIO.readVarInt( in);
+		m_ownerName = CompactDataIO.readString( in);
+		m_path      = CompactDataIO.readString( in);
+	}
+
 	/**
 	 * Return the remote oplock as a string
 	 *
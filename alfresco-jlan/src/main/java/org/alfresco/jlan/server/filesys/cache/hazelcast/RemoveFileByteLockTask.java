@@ -24,8 +24,7 @@ import org.alfresco.jlan.locking.FileLockList;
 import org.alfresco.jlan.locking.NotLockedException;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileLock;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
-
-import com.hazelcast.core.IMap;
+import org.alfresco.jlan.server.filesys.cache.cluster.transport.ClusterMap;
 
 /**
  * Remove File Byte Range Lock Remote Task Class
@@ -69,12 +68,12 @@ public class RemoveFileByteLockTask extends RemoteStateTask<ClusterFileState> {
 	/**
 	 * Run a remote task against a file state
 	 *
-	 * @param stateCache IMap<String, ClusterFileState>
+	 * @param stateCache ClusterMap<String, ClusterFileState>
 	 * @param fState ClusterFileState
 	 * @return ClusterFileState
 	 * @exception Exception
 	 */
-	protected ClusterFileState runRemoteTaskAgainstState( IMap<String, ClusterFileState> stateCache, ClusterFileState fState)
+	protected ClusterFileState runRemoteTaskAgainstState( ClusterMap<String, ClusterFileState> stateCache, ClusterFileState fState)
 		throws Exception {
 
 		// DEBUG
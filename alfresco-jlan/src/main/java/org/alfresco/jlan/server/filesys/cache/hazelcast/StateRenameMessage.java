@@ -19,7 +19,12 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * File State Rename Message Class
@@ -97,6 +102,36 @@ public class StateRenameMessage extends ClusterMessage {
 		return m_isFolder;
 	}
 
+	/**
+	 * Write the rename message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+		CompactDataIO.writeString( out, m_oldPath);
+		CompactDataIO.writeString( out, m_newPath);
+		out.writeBoolean( m_isFolder);
+	}
+
+	/**
+	 * Read the rename message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+		m_oldPath  = CompactDataIO.readString( in);
+		m_newPath  = CompactDataIO.readString( in);
+		m_isFolder = in.readBoolean();
+	}
+
 	/**
 	 * Return the rename state message as a string
 	 *
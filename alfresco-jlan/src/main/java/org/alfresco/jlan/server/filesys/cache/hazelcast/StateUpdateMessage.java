@@ -19,10 +19,15 @@
 
 package org.alfresco.jlan.server.filesys.cache.hazelcast;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.alfresco.jlan.server.filesys.FileStatus;
 import org.alfresco.jlan.server.filesys.cache.FileState;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
 import org.alfresco.jlan.server.filesys.cache.cluster.ClusterNode;
+import org.alfresco.jlan.util.CompactDataIO;
 
 /**
  * File State Update Message Class
@@ -190,6 +195,125 @@ public class StateUpdateMessage extends ClusterMessage {
 		return m_retentionDate;
 	}
 
+	/**
+	 * Check if a later update for the same path can be merged into this update
+	 *
+	 * <p>File status updates are not merged, each status change may generate change notifications on the
+	 * receiving nodes.
+	 *
+	 * @param updMsg StateUpdateMessage
+	 * @return boolean
+	 */
+	public final boolean canMerge( StateUpdateMessage updMsg) {
+
+		// Check that the update is for the same path
+
+		if ( getPath() == null || getPath().equals( updMsg.getPath()) == false)
+			return false;
+
+		// Do not merge file status updates
+
+		if ( hasUpdate( ClusterFileState.UpdateFileStatus) || updMsg.hasUpdate( ClusterFileState.UpdateFileStatus))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Merge a later update for the same path into this update, the later update values replace any
+	 * existing values
+	 *
+	 * @param updMsg StateUpdateMessage
+	 */
+	public final void mergeUpdate( StateUpdateMessage updMsg) {
+
+		// Copy the updated values
+
+		if ( updMsg.hasUpdate( ClusterFileState.UpdateFileSize))
+			m_fileSize = updMsg.getFileSize();
+		if ( updMsg.hasUpdate( ClusterFileState.UpdateAllocSize))
+			m_allocSize = updMsg.getAllocationSize();
+
+		if ( updMsg.hasUpdate( ClusterFileState.UpdateChangeDate))
+			m_changeDate = updMsg.getChangeDateTime();
+		if ( updMsg.hasUpdate( ClusterFileState.UpdateModifyDate))
+			m_modifyDate = updMsg.getModificationDateTime();
+
+		if ( updMsg.hasUpdate( ClusterFileState.UpdateRetentionExpire))
+			m_retentionDate = updMsg.getRetentionDateTime();
+
+		// Combine the update masks
+
+		m_updateMask |= updMsg.getUpdateMask();
+	}
+
+	/**
+	 * Write the state update message details to a compact binary stream
+	 *
+	 * @param out DataOutput
+	 * @exception IOException
+	 */
+	public void writeMessage( DataOutput out)
+		throws IOException {
+
+		super.writeMessage( out);
+		CompactDataIO.writeString( out, m_path);
+		CompactDataIO.writeVarInt( out, m_updateMask);
+
+		// Only write the values that have been updated
+
+		if ( hasUpdate ( ClusterFileState.UpdateFileStatus)) {
+			CompactDataIO.writeVarInt( out, m_fileStatus);
+			CompactDataIO.writeVarInt( out, m_fileStsReason);
+		}
+
+		if ( hasUpdate( ClusterFileState.UpdateFileSize))
+			CompactDataIO.writeVarLong( out, m_fileSize);
+		if ( hasUpdate( ClusterFileState.UpdateAllocSize))
+			CompactDataIO.writeVarLong( out, m_allocSize);
+
+		if ( hasUpdate( ClusterFileState.UpdateChangeDate))
+			CompactDataIO.writeVarLong( out, m_changeDate);
+		if ( hasUpdate( ClusterFileState.UpdateModifyDate))
+			CompactDataIO.writeVarLong( out, m_modifyDate);
+
+		if ( hasUpdate( ClusterFileState.UpdateRetentionExpire))
+			CompactDataIO.writeVarLong( out, m_retentionDate);
+	}
+
+	/**
+	 * Read the state update message details from a compact binary stream
+	 *
+	 * @param in DataInput
+	 * @exception IOException
+	 */
+	public void readMessage( DataInput in)
+		throws IOException {
+
+		super.readMessage( in);
+		m_path       = CompactDataIO.readString( in);
+		m_updateMask = CompactDataIO.readVarInt( in);
+
+		// Only the updated values are available
+
+		if ( hasUpdate ( ClusterFileState.UpdateFileStatus)) {
+			m_fileStatus    = CompactDataIO.readVarInt( in);
+			m_fileStsReason = CompactDataIO.readVarInt( in);
+		}
+
+		if ( hasUpdate( ClusterFileState.UpdateFileSize))
+			m_fileSize = CompactDataIO.readVarLong( in);
+		if ( hasUpdate( ClusterFileState.UpdateAllocSize))
+			m_allocSize = CompactDataIO.readVarLong( in);
+
+		if ( hasUpdate( ClusterFileState.UpdateChangeDate))
+			m_changeDate = CompactDataIO.readVarLong( in);
+		if ( hasUpdate( ClusterFileState.UpdateModifyDate))
+			m_modifyDate = CompactDataIO.readVarLong( in);
+
+		if ( hasUpdate( ClusterFileState.UpdateRetentionExpire))
+			m_retentionDate = CompactDataIO.readVarLong( in);
+	}
+
 	/**
 	 * Return the state update message as a string
 	 *
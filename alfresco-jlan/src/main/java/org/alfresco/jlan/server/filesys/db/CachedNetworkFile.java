@@ -293,14 +293,13 @@ public class CachedNetworkFile extends DBNetworkFile {
 
 			if ( dataAvailable == false) {
 
-				// File loader thread is still loading the file data, check the file length to see if
-				// there is enough data to satisfy the read request. Check that there is more data available
-				// than required as the loader may have extended the file and still be writing the last block
-				// of data.
+				// File loader thread is still loading the file data, check the readable length to see if
+				// any of the requested data is available. The file segment limits the read to the data that
+				// the loader has written.
 
 				long fileLen = m_cacheFile.getReadableLength();
 
-				if ( fileLen != -1 && (fileLen + 0xFFFF) > (fileOff + len))
+				if ( fileLen != -1 && fileLen > fileOff)
 					rdlen = m_cacheFile.readBytes(buf, len, pos, fileOff);
 			}
 			else
@@ -323,9 +322,10 @@ public class CachedNetworkFile extends DBNetworkFile {
 
 				readDone = true;
 			}
-			else {
 
-				// Wait for some data to be loaded
+			// Wait for more data to be loaded if none, or only part, of the requested data is available
+
+			if ( readDone == false) {
 
 				try {
 
@@ -39,6 +39,7 @@ import org.alfresco.jlan.server.filesys.loader.FileRequestQueue;
 import org.alfresco.jlan.server.filesys.quota.QuotaManagerException;
 import org.alfresco.jlan.server.locking.LockManager;
 import org.alfresco.jlan.server.locking.OpLockManager;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.util.MemorySize;
 import org.springframework.extensions.config.ConfigElement;
@@ -307,9 +308,20 @@ public class DBDeviceContext extends DiskDeviceContext implements FileStateCache
 
 			boolean quotaDebug = args.getChild("QuotaDebug") != null ? true : false;
 
-			// Create the default quota manager
+			// Check if per-user or per-folder quotas are configured, else create the default quota manager
 
-			setQuotaManager(new DBQuotaManager(this, quotaDebug));
+			ConfigElement quotaElem = args.getChild("QuotaManagement");
+
+			if ( quotaElem.hasChildren()) {
+				try {
+					setQuotaManager(new DBUserQuotaManager(this, quotaElem, quotaDebug));
+				}
+				catch (QuotaManagerException ex) {
+					throw new DeviceContextException(ex.getMessage());
+				}
+			}
+			else
+				setQuotaManager(new DBQuotaManager(this, quotaDebug));
 		}
 
 		// Get the retention period in days, if specified
@@ -790,6 +802,17 @@ public class DBDeviceContext extends DiskDeviceContext implements FileStateCache
 	 */
 	public void CloseContext() {
 
+		// Stop the quota manager, save any quota usage
+
+		if ( hasQuotaManager()) {
+			try {
+				getQuotaManager().stopManager(null, this);
+			}
+			catch (QuotaManagerException ex) {
+				Debug.println("Quota manager shutdown error, " + ex.getMessage());
+			}
+		}
+
 		// Close the file loader
 
 		if ( getFileLoader() != null)
@@ -824,12 +847,30 @@ public class DBDeviceContext extends DiskDeviceContext implements FileStateCache
 
 		getFileLoader().startLoader( this);
 
+		// Get the thread pool, if available
+
+		ThreadRequestPool threadPool = null;
+		MetricsRegistry metrics = null;
+		ServerConfiguration config = disk.getConfiguration();
+		if ( config != null) {
+			CoreServerConfigSection coreConfig = ( CoreServerConfigSection) config.getConfigSection( CoreServerConfigSection.SectionName);
+			if ( coreConfig != null) {
+				threadPool = coreConfig.getThreadPool();
+				metrics = coreConfig.getMetrics();
+			}
+		}
+
 		// Start the quota manager, if configured
 
 		if ( hasQuotaManager()) {
 
 			try {
 
+				// Set the thread pool used to save the quota usage
+
+				if ( getQuotaManager() instanceof DBUserQuotaManager)
+					((DBUserQuotaManager) getQuotaManager()).setThreadPool(threadPool);
+
 				// Start the quota manager
 
 				getQuotaManager().startManager(disk.getDiskInterface(), this);
@@ -839,24 +880,17 @@ public class DBDeviceContext extends DiskDeviceContext implements FileStateCache
 			}
 		}
 
-		// Create the file state based lock manager
+		// Create the file state based lock manager, record the oplock break latency in the share metrics if enabled
 
-		setFileStateLockManager( new FileStateLockManager( getStateCache()));
+		if ( metrics != null)
+			setFileStateLockManager( new FileStateLockManager( getStateCache(), metrics.getTimer( MetricsRegistry.GroupSMB + "." + disk.getName(), "OplockBreak")));
+		else
+			setFileStateLockManager( new FileStateLockManager( getStateCache()));
 
 		// Start the lock manager, use the thread pool if available
 
 		if ( getLockManager() != null) {
 
-		    // Get the thread pool, if available
-
-    		ThreadRequestPool threadPool = null;
-    		ServerConfiguration config = disk.getConfiguration();
-    		if ( config != null) {
-    		    CoreServerConfigSection coreConfig = ( CoreServerConfigSection) config.getConfigSection( CoreServerConfigSection.SectionName);
-    		    if ( coreConfig != null)
-    		        threadPool = coreConfig.getThreadPool();
-    		}
-
     		// Start the lock manager
 
     		getFileStateLockManager().startLockManager( "OplockExpire_" + disk.getName(), threadPool);
@@ -142,6 +142,11 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
     dbCtx.getFileLoader().closeFile(sess, file);
     file.setClosed( true);
 
+    //  Return any unused quota space reserved by the file
+
+    if ( dbCtx.getQuotaManager() instanceof DBUserQuotaManager)
+      ((DBUserQuotaManager) dbCtx.getQuotaManager()).fileClosed(file);
+
     //  Access the JDBC file
 
     DBNetworkFile jdbcFile = null;
@@ -852,7 +857,7 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
 
         //  Release the file space back to the filesystem free space
 
-        dbCtx.getQuotaManager().releaseSpace(sess, tree, fstate.getFileId(), null, dbInfo.getSize());
+        dbCtx.getQuotaManager().releaseSpace(sess, tree, fstate.getFileId(), name, dbInfo.getSize());
       }
     }
     catch (DBException ex) {
@@ -1431,32 +1436,57 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
       if ( newInfo != null)
         throw new FileExistsException("Rename to file/folder already exists," + newName);
 
-      //  Check if the loader handles rename requests, an exception may be thrown by the loader
-      //  to prevent the file/directory rename.
+      //  Move the file usage between folder quotas, the quota manager may prevent the rename
 
-      if ( dbCtx.getFileLoader() instanceof NamedFileLoader) {
+      DBUserQuotaManager quotaMgr = null;
+      long fileSize = curInfo.isDirectory() ? 0L : curInfo.getSize();
 
-        //  Rename the file/directory
-
-        NamedFileLoader namedLoader = (NamedFileLoader) dbCtx.getFileLoader();
-        namedLoader.renameFileDirectory(oldName, fid, newName, curInfo.isDirectory());
+      if ( dbCtx.getQuotaManager() instanceof DBUserQuotaManager) {
+        quotaMgr = (DBUserQuotaManager) dbCtx.getQuotaManager();
+        quotaMgr.renameStart(fid, oldName, newName, curInfo.isDirectory(), fileSize);
       }
 
-      //  Get the new file/directory name
+      boolean renamed = false;
+
+      try {
+
+        //  Check if the loader handles rename requests, an exception may be thrown by the loader
+        //  to prevent the file/directory rename.
+
+        if ( dbCtx.getFileLoader() instanceof NamedFileLoader) {
 
-      int newDirId = findParentDirectoryId(dbCtx, newName, true);
-      if ( newDirId == -1)
-        throw new FileNotFoundException(newName);
-      String[] newPaths = FileName.splitPath(newName);
-      String newFname = newPaths[1];
+          //  Rename the file/directory
 
-      //  Rename the file/folder, this may also link the file/folder to a new parent directory
+          NamedFileLoader namedLoader = (NamedFileLoader) dbCtx.getFileLoader();
+          namedLoader.renameFileDirectory(oldName, fid, newName, curInfo.isDirectory());
+        }
+
+        //  Get the new file/directory name
+
+        int newDirId = findParentDirectoryId(dbCtx, newName, true);
+        if ( newDirId == -1)
+          throw new FileNotFoundException(newName);
+        String[] newPaths = FileName.splitPath(newName);
+        String newFname = newPaths[1];
+
+        //  Rename the file/folder, this may also link the file/folder to a new parent directory
+
+        dbCtx.getDBInterface().renameFileRecord(dirId, fid, newFname, newDirId);
 
-      dbCtx.getDBInterface().renameFileRecord(dirId, fid, newFname, newDirId);
+        //  Update the file state with the new file name/path
 
-      //  Update the file state with the new file name/path
+        dbCtx.getStateCache().renameFileState(newName, fstate, curInfo.isDirectory());
 
-      dbCtx.getStateCache().renameFileState(newName, fstate, curInfo.isDirectory());
+        renamed = true;
+      }
+      finally {
+
+        //  Release the file usage from the folder quotas the file has moved out of, or the reserved usage if the
+        //  rename failed
+
+        if ( quotaMgr != null)
+          quotaMgr.renameComplete(fid, oldName, newName, fileSize, renamed);
+      }
     }
     catch (DBException ex) {
       throw new FileNotFoundException(oldName);
@@ -1837,7 +1867,7 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
         //  Check if we allocated space to the file
 
         if ( allocSize > 0 && quotaMgr != null)
-          quotaMgr.releaseSpace(sess, tree, file.getFileId(), null, allocSize);
+          quotaMgr.releaseSpace(sess, tree, file.getFileId(), file.getFullName(), allocSize);
 
         //  Rethrow the exception
 
@@ -1847,7 +1877,7 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
       //  Check if space has been released by the file resizing
 
       if ( releaseSize > 0 && quotaMgr != null)
-        quotaMgr.releaseSpace(sess, tree, file.getFileId(), null, releaseSize);
+        quotaMgr.releaseSpace(sess, tree, file.getFileId(), file.getFullName(), releaseSize);
 
       //  Update the file information
 
@@ -1978,7 +2008,7 @@ public class DBDiskDriver implements DiskInterface, DiskSizeInterface, DiskVolum
           //  Check if we allocated space to the file
 
           if ( extendSize > 0 && quotaMgr != null)
-            quotaMgr.releaseSpace(sess, tree, file.getFileId(), null, extendSize);
+            quotaMgr.releaseSpace(sess, tree, file.getFileId(), file.getFullName(), extendSize);
 
           //  Rethrow the exception
 
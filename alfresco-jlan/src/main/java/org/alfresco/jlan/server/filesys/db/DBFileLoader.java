@@ -34,6 +34,7 @@ import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.SrvSession;
 import org.alfresco.jlan.server.core.DeviceContext;
 import org.alfresco.jlan.server.filesys.DiskDeviceContext;
+import org.alfresco.jlan.server.filesys.FileInfo;
 import org.alfresco.jlan.server.filesys.FileName;
 import org.alfresco.jlan.server.filesys.FileOpenParams;
 import org.alfresco.jlan.server.filesys.FileStatus;
@@ -44,6 +45,7 @@ import org.alfresco.jlan.server.filesys.cache.FileStateListener;
 import org.alfresco.jlan.server.filesys.cache.FileStateProxy;
 import org.alfresco.jlan.server.filesys.loader.BackgroundFileLoader;
 import org.alfresco.jlan.server.filesys.loader.CachedFileInfo;
+import org.alfresco.jlan.server.filesys.loader.FileContentCache;
 import org.alfresco.jlan.server.filesys.loader.FileLoader;
 import org.alfresco.jlan.server.filesys.loader.FileLoaderException;
 import org.alfresco.jlan.server.filesys.loader.FileProcessor;
@@ -249,6 +251,10 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 
 	private FileProcessorList m_fileProcessors;
 
+	// Local file content cache, survives file state expiry and server restarts
+
+	private FileContentCache m_contentCache;
+
 	/**
 	 * Transaction Timer Thread Inner Class
 	 */
@@ -571,6 +577,90 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 		return m_tempFilePrefix;
 	}
 
+	/**
+	 * Return the local file content cache, or null if not configured
+	 *
+	 * @return FileContentCache
+	 */
+	public final FileContentCache getContentCache() {
+		return m_contentCache;
+	}
+
+	/**
+	 * Load the file data from the local content cache. The cached data version is a hash of the file data
+	 * calculated by the server when the data was saved or loaded, the copied data is checked against the hash and
+	 * the file size so that a damaged or out of date cache entry is not used.
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @param state FileState
+	 * @param tempFile File
+	 * @return long Length of the data loaded, or -1 if the data was not loaded from the cache
+	 */
+	protected final long loadFromContentCache(int fid, int stid, FileState state, File tempFile) {
+
+		// Check if the file/stream is cached
+
+		String dataVer = m_contentCache.getVersion(fid, stid);
+		if ( dataVer == null)
+			return -1L;
+
+		// Copy the cached data to the temporary file
+
+		long cacheLen = m_contentCache.loadFile(fid, stid, dataVer, tempFile);
+		if ( cacheLen == -1L)
+			return -1L;
+
+		// Check the cached data length matches the file size, if known
+
+		FileInfo finfo = state != null ? (FileInfo) state.findAttribute(FileState.FileInformation) : null;
+		boolean valid = finfo == null || stid != 0 || finfo.getSize() == cacheLen;
+
+		// Check the copied data matches the cached data version
+
+		try {
+			if ( valid && dataVer.equals(FileContentCache.getContentHash(tempFile)) == false)
+				valid = false;
+		}
+		catch (IOException ex) {
+			valid = false;
+		}
+
+		// Remove an invalid cache entry, the file data is loaded from the database
+
+		if ( valid == false) {
+			m_contentCache.removeFile(fid, stid);
+
+			// DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("## DBFileLoader content cache data invalid, fid=" + fid + ", stream=" + stid);
+
+			return -1L;
+		}
+
+		// Return the loaded data length
+
+		return cacheLen;
+	}
+
+	/**
+	 * Add the file data to the local content cache, using a hash of the file data as the data version
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @param tempFile File
+	 */
+	protected final void addToContentCache(int fid, int stid, File tempFile) {
+
+		try {
+			m_contentCache.addFile(fid, stid, FileContentCache.getContentHash(tempFile), tempFile);
+		}
+		catch (IOException ex) {
+			m_contentCache.removeFile(fid, stid);
+		}
+	}
+
 	/**
 	 * Set the worker thread name prefix
 	 *
@@ -807,6 +897,11 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 				}
 			}
 
+			// Remove any locally cached copy of the file data
+
+			if ( m_contentCache != null)
+				m_contentCache.removeFile(fid, stid);
+
 			// Delete the data from the database table
 
 			getDBDataInterface().deleteFileData(fid, stid);
@@ -877,50 +972,75 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 		FileOutputStream fileOut = null;
 		int loadSts = StsRequeue;
 
+		long cacheLen = -1L;
+
 		try {
 
 			// Update the segment status
 
 			fileSeg.setStatus(FileSegmentInfo.Loading);
 
-			// Get the file data details
+			// Check if the required version of the file data is in the local content cache
 
-			DBDataDetails dataDetails = getDBDataInterface().getFileDataDetails(loadReq.getFileId(), loadReq.getStreamId());
+			if ( m_contentCache != null)
+				cacheLen = loadFromContentCache(loadReq.getFileId(), loadReq.getStreamId(), loadReq.getFileState(), tempFile);
 
-			// DEBUG
+			if ( cacheLen != -1L) {
 
-			if ( Debug.EnableInfo && hasDebug())
-				Debug.println("  Data details: " + dataDetails);
+				// File data loaded from the content cache
 
-			// Check if the file is packaged in a Jar
+				fileSeg.setReadableLength(cacheLen);
+				loadSts = StsSuccess;
 
-			if ( dataDetails.isStoredInJar()) {
+				// DEBUG
 
-				// Load the file data from a Jar file
+				if ( Debug.EnableInfo && hasDebug()) {
+					long endTime = System.currentTimeMillis();
+					Debug.println("## DBFileLoader loaded fid=" + loadReq.getFileId() + ", stream=" + loadReq.getStreamId()
+							+ " from content cache, time=" + (endTime - startTime) + "ms");
+				}
+			}
+			else {
 
-				loadSts = loadFileFromJar(loadReq, tempFile, dataDetails);
+				// Get the file data details
 
-				// Update the file status, and clear the queued flag
+				DBDataDetails dataDetails = getDBDataInterface().getFileDataDetails(loadReq.getFileId(), loadReq.getStreamId());
 
-				fileSeg.setStatus(FileSegmentInfo.Available, false);
-				fileSeg.signalDataAvailable();
-			}
-			else {
+				// DEBUG
 
-				// Load the file data from the main file record(s)
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println("  Data details: " + dataDetails);
 
-				getDBDataInterface().loadFileData(loadReq.getFileId(), loadReq.getStreamId(), fileSeg);
+				// Check if the file is packaged in a Jar
 
-				// Set the load status
+				if ( dataDetails.isStoredInJar()) {
 
-				loadSts = StsSuccess;
+					// Load the file data from a Jar file
 
-				// DEBUG
+					loadSts = loadFileFromJar(loadReq, tempFile, dataDetails);
 
-				if ( Debug.EnableInfo && hasDebug()) {
-					long endTime = System.currentTimeMillis();
-					Debug.println("## DBFileLoader loaded fid=" + loadReq.getFileId() + ", stream=" + loadReq.getStreamId()
-							+ ", frags=" + dataDetails.numberOfDataFragments() + ", time=" + (endTime - startTime) + "ms");
+					// Update the file status, and clear the queued flag
+
+					fileSeg.setStatus(FileSegmentInfo.Available, false);
+					fileSeg.signalDataAvailable();
+				}
+				else {
+
+					// Load the file data from the main file record(s)
+
+					getDBDataInterface().loadFileData(loadReq.getFileId(), loadReq.getStreamId(), fileSeg);
+
+					// Set the load status
+
+					loadSts = StsSuccess;
+
+					// DEBUG
+
+					if ( Debug.EnableInfo && hasDebug()) {
+						long endTime = System.currentTimeMillis();
+						Debug.println("## DBFileLoader loaded fid=" + loadReq.getFileId() + ", stream=" + loadReq.getStreamId()
+								+ ", frags=" + dataDetails.numberOfDataFragments() + ", time=" + (endTime - startTime) + "ms");
+					}
 				}
 			}
 		}
@@ -962,6 +1082,11 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 			// Run the file load processors
 
 			runFileLoadedProcessors(getContext(), loadReq.getFileState(), fileSeg);
+
+			// Add the file data to the local content cache, if not loaded from the cache
+
+			if ( m_contentCache != null && cacheLen == -1L)
+				addToContentCache(loadReq.getFileId(), loadReq.getStreamId(), tempFile);
 		}
 
 		// Return the load file status
@@ -1463,11 +1588,27 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 		fileSeg.setStatus(FileSegmentInfo.Saving);
 		fileSeg.getInfo().setUpdated(false);
 
+		// Calculate the data version for the local content cache, after the updated flag has been cleared so that
+		// any write during the save is detected
+
+		String dataVer = null;
+
+		if ( m_contentCache != null) {
+			try {
+				dataVer = FileContentCache.getContentHash(tempFile);
+			}
+			catch (IOException ex) {
+			}
+		}
+
+		boolean saved = false;
+
 		try {
 
 			// Save the file data to the database
 
 			getDBDataInterface().saveFileData(saveReq.getFileId(), saveReq.getStreamId(), fileSeg);
+			saved = true;
 		}
 		catch (DBException ex) {
 			Debug.println(ex);
@@ -1476,6 +1617,17 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 			Debug.println(ex);
 		}
 
+		// Update the local content cache with the saved file data, if the file was not updated whilst the data was
+		// being saved, else remove the out of date cached data
+
+		if ( m_contentCache != null) {
+			if ( saved && dataVer != null && fileSeg.isUpdated() == false)
+				m_contentCache.addFile(saveReq.getFileId(), saveReq.getStreamId(), dataVer, tempFile);
+
+			if ( saved == false || dataVer == null || fileSeg.isUpdated())
+				m_contentCache.removeFile(saveReq.getFileId(), saveReq.getStreamId());
+		}
+
 		// DEBUG
 
 		if ( Debug.EnableInfo && hasDebug()) {
@@ -1629,6 +1781,11 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 				// Add details of the file/stream to the Jar file list
 
 				fileList.addFile(new DBDataDetails(finfo.getFileId(), finfo.getStreamId()));
+
+				// Remove any out of date cached data for the file/stream, the data is cached when next loaded
+
+				if ( m_contentCache != null)
+					m_contentCache.removeFile(finfo.getFileId(), finfo.getStreamId());
 			}
 
 			// Save the Jar file data to the database
@@ -1793,6 +1950,10 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 		else
 			m_tempMax = MaximumFilesPerSubDir;
 
+		// Check if the local file content cache is enabled
+
+		m_contentCache = FileContentCache.createContentCache(params, m_tempDirName);
+
 		// Check if transaction support should be enabled. If enabled small files are bundled
 		// together into a single
 		// file request for special processing by the file loader storeFile() method.
@@ -2125,6 +2286,11 @@ public class DBFileLoader implements FileLoader, BackgroundFileLoader, FileState
 
 		if ( m_transTimer != null)
 			m_transTimer.shutdownRequest();
+
+		// Close the local content cache, the cached file data is kept for the next server run
+
+		if ( m_contentCache != null)
+			m_contentCache.closeCache();
 	}
 
 	/**
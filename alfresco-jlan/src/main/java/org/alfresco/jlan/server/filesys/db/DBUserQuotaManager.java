@@ -0,0 +1,1419 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.db;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.SrvSession;
+import org.alfresco.jlan.server.filesys.AccessDeniedException;
+import org.alfresco.jlan.server.filesys.DiskDeviceContext;
+import org.alfresco.jlan.server.filesys.DiskFullException;
+import org.alfresco.jlan.server.filesys.DiskInterface;
+import org.alfresco.jlan.server.filesys.DiskSizeInterface;
+import org.alfresco.jlan.server.filesys.NetworkFile;
+import org.alfresco.jlan.server.filesys.SrvDiskInfo;
+import org.alfresco.jlan.server.filesys.TreeConnection;
+import org.alfresco.jlan.server.filesys.quota.QuotaCounter;
+import org.alfresco.jlan.server.filesys.quota.QuotaManager;
+import org.alfresco.jlan.server.filesys.quota.QuotaManagerException;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.server.thread.TimedThreadRequest;
+import org.alfresco.jlan.util.MemorySize;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * JDBC User Quota Manager Class
+ *
+ * <p>Filesystem quota management implementation with per-user and per-folder quota limits, in addition to the
+ * filesystem size limit. Space is tracked using lock-free quota counters, each open file reserves space from the
+ * counters in batches so that most file extending writes are satisfied from the file reservation without
+ * updating the shared counters. Unused reserved space is returned when the file is closed.
+ *
+ * <p>Space allocated to a file is charged to the user that first extended the file, and the amount charged is
+ * recorded by file id. When space is released, by any user, the file owner is credited with up to the amount
+ * charged. Folder quotas are charged using the file path, renaming a file moves the file usage between folder quotas
+ * and the rename fails if the file would exceed a folder quota. Renaming a folder into, or out of, a quota folder is
+ * not allowed as the usage of the folder contents is not known.
+ *
+ * <p>Counter usage is saved to a usage file at a regular interval, when the usage has changed, and when the
+ * filesystem is closed. The file charges are appended to a charges file, only the charges that have changed since
+ * the last save are written, and the charges file is compacted when most of the entries have been superseded. The
+ * per-user usage cannot be recalculated using the database so the usage file must be configured. At startup the
+ * saved usage is loaded, the filesystem used space is only recalculated using the database if there is no usage
+ * file or the server did not shutdown cleanly.
+ *
+ * @author gkspencer
+ */
+public class DBUserQuotaManager implements QuotaManager {
+
+	//	Default, minimum and maximum reservation batch size
+
+	public static final long DefaultReserveSize		= MemorySize.MEGABYTE;
+	public static final long MinimumReserveSize		= 64L * MemorySize.KILOBYTE;
+	public static final long MaximumReserveSize		= 64L * MemorySize.MEGABYTE;
+
+	//	Default, minimum and maximum usage save interval, in seconds
+
+	public static final long DefaultSaveInterval	= 60L;
+	public static final long MinimumSaveInterval	= 5L;
+	public static final long MaximumSaveInterval	= 3600L;
+
+	//	Minimum number of entries in the charges file before it is compacted
+
+	public static final int MinimumCompactEntries	= 10000;
+
+	//	Usage file property names
+
+	private static final String PropClean			= "clean";
+	private static final String PropShare			= "share";
+	private static final String PropUserPrefix		= "user.";
+	private static final String PropFolderPrefix	= "folder.";
+
+	//	Charges file extension
+
+	private static final String ChargesFileExtension	= ".charges";
+
+	//	Filesystem disk size information
+
+	private SrvDiskInfo m_diskInfo;
+
+	//	Filesystem quota counter
+
+	private QuotaCounter m_shareCounter;
+
+	//	Default user quota, configured user quotas and active user counters, by upper case user name
+
+	private long m_defUserQuota = QuotaCounter.Unlimited;
+	private HashMap<String, Long> m_userQuotas = new HashMap<String, Long>();
+	private ConcurrentHashMap<String, QuotaCounter> m_userCounters = new ConcurrentHashMap<String, QuotaCounter>();
+
+	//	Folder quota counters, by upper case folder path
+
+	private List<QuotaCounter> m_folderCounters = new ArrayList<QuotaCounter>();
+
+	//	Space reservations for open files
+
+	private ConcurrentHashMap<NetworkFile, FileReservation> m_reservations = new ConcurrentHashMap<NetworkFile, FileReservation>();
+
+	//	Space charged to the file owners, by file id
+
+	private ConcurrentHashMap<Integer, FileCharge> m_fileCharges = new ConcurrentHashMap<Integer, FileCharge>();
+
+	//	File ids of the charges that have changed since the last save, and the number of entries in the charges file
+
+	private Set<Integer> m_changedCharges = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private int m_chargeEntries;
+
+	//	Reservation batch size
+
+	private long m_reserveSize = DefaultReserveSize;
+
+	//	Usage file, charges file, save interval in seconds, and usage change/save versions
+
+	private File m_usageFile;
+	private File m_chargesFile;
+	private long m_saveInterval = DefaultSaveInterval;
+
+	private AtomicLong m_usageVersion = new AtomicLong();
+	private long m_savedVersion;
+
+	//	Thread pool and timed request used to save the usage file
+
+	private ThreadRequestPool m_threadPool;
+	private UsageSaveTimedRequest m_saveRequest;
+
+	//	Debug enable flag
+
+	private boolean m_debug;
+
+	/**
+	 * Open File Space Reservation Class
+	 */
+	protected static class FileReservation {
+
+		//	File id, and the upper case name of the user the file is charged to, or null
+
+		private int m_fid;
+		private String m_owner;
+
+		//	Quota counters the file is charged to
+
+		private QuotaCounter[] m_counters;
+
+		//	Reserved space not yet used by the file
+
+		private long m_reserved;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param fid int
+		 * @param owner String
+		 * @param counters QuotaCounter[]
+		 */
+		protected FileReservation(int fid, String owner, QuotaCounter[] counters) {
+			m_fid = fid;
+			m_owner = owner;
+			m_counters = counters;
+		}
+	}
+
+	/**
+	 * File Charge Class
+	 *
+	 * <p>Space charged to the user quota of the file owner.
+	 */
+	protected static class FileCharge {
+
+		//	Upper case name of the user the file is charged to
+
+		private String m_owner;
+
+		//	Space charged to the user
+
+		private long m_charged;
+
+		//	Charge has been removed from the file charges list
+
+		private boolean m_removed;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param owner String
+		 */
+		protected FileCharge(String owner) {
+			m_owner = owner;
+		}
+	}
+
+	/**
+	 * Usage File Save Timed Thread Request Class
+	 */
+	private class UsageSaveTimedRequest extends TimedThreadRequest {
+
+		/**
+		 * Constructor
+		 *
+		 * @param name String
+		 * @param interval long
+		 */
+		public UsageSaveTimedRequest(String name, long interval) {
+			super( name, System.currentTimeMillis() + (interval * 1000L), interval);
+		}
+
+		/**
+		 * Save the usage file, if the usage has changed
+		 */
+		protected void runTimedRequest() {
+			saveUsage( false);
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param ctx DBDeviceContext
+	 * @param params ConfigElement
+	 * @param dbg boolean
+	 * @exception QuotaManagerException
+	 */
+	public DBUserQuotaManager(DBDeviceContext ctx, ConfigElement params, boolean dbg)
+		throws QuotaManagerException {
+
+		//	Enable/disable debug output
+
+		setDebug(dbg);
+
+		//	Get the default user quota
+
+		ConfigElement elem = params.getChild("UserQuota");
+		if ( elem != null)
+			m_defUserQuota = parseQuotaSize("UserQuota", elem.getValue());
+
+		//	Get the per user and per folder quotas
+
+		if ( params.hasChildren()) {
+			for (ConfigElement childElem : params.getChildren()) {
+
+				if ( childElem.getName().equalsIgnoreCase("User")) {
+
+					//	Get the user name and quota
+
+					String userName = childElem.getAttribute("name");
+					if ( userName == null || userName.length() == 0)
+						throw new QuotaManagerException("User quota name not specified");
+
+					m_userQuotas.put(userName.toUpperCase(), new Long(parseQuotaSize("User " + userName, childElem.getAttribute("quota"))));
+				}
+				else if ( childElem.getName().equalsIgnoreCase("Folder")) {
+
+					//	Get the folder path and quota
+
+					String path = childElem.getAttribute("path");
+					if ( path == null || path.length() == 0)
+						throw new QuotaManagerException("Folder quota path not specified");
+
+					//	Normalize the folder path
+
+					path = path.replace('/', '\\').toUpperCase();
+					if ( path.startsWith("\\") == false)
+						path = "\\" + path;
+					if ( path.endsWith("\\"))
+						path = path.substring(0, path.length() - 1);
+
+					m_folderCounters.add(new QuotaCounter(path, parseQuotaSize("Folder " + path, childElem.getAttribute("quota"))));
+				}
+			}
+		}
+
+		//	Get the reservation batch size
+
+		elem = params.getChild("ReserveSize");
+		if ( elem != null) {
+			m_reserveSize = parseQuotaSize("ReserveSize", elem.getValue());
+			if ( m_reserveSize < MinimumReserveSize || m_reserveSize > MaximumReserveSize)
+				throw new QuotaManagerException("ReserveSize out of valid range (" + MemorySize.asScaledString(MinimumReserveSize) +
+						" - " + MemorySize.asScaledString(MaximumReserveSize) + ")");
+		}
+
+		//	Get the usage file and save interval, the usage file is required as the user usage cannot be recalculated
+
+		elem = params.getChild("UsageFile");
+		if ( elem == null || elem.getValue() == null || elem.getValue().length() == 0)
+			throw new QuotaManagerException("UsageFile not specified");
+
+		m_usageFile = new File(elem.getValue());
+		m_chargesFile = new File(elem.getValue() + ChargesFileExtension);
+
+		elem = params.getChild("SaveInterval");
+		if ( elem != null) {
+			try {
+				m_saveInterval = Long.parseLong(elem.getValue());
+				if ( m_saveInterval < MinimumSaveInterval || m_saveInterval > MaximumSaveInterval)
+					throw new QuotaManagerException("SaveInterval out of valid range (" + MinimumSaveInterval + " - " + MaximumSaveInterval + ")");
+			}
+			catch (NumberFormatException ex) {
+				throw new QuotaManagerException("Invalid SaveInterval value, " + elem.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Parse a quota size value
+	 *
+	 * @param name String
+	 * @param val String
+	 * @return long
+	 * @exception QuotaManagerException
+	 */
+	private final long parseQuotaSize(String name, String val)
+		throws QuotaManagerException {
+
+		//	Parse the size value, with an optional K, M, G or T suffix
+
+		if ( val == null || val.length() == 0)
+			throw new QuotaManagerException("Quota size not specified for " + name);
+
+		try {
+			long size = MemorySize.getByteValue(val);
+			if ( size < 0L)
+				throw new QuotaManagerException("Invalid quota size for " + name + ", " + val);
+			return size;
+		}
+		catch (NumberFormatException ex) {
+			throw new QuotaManagerException("Invalid quota size for " + name + ", " + val);
+		}
+	}
+
+	/**
+	 * Allocate space from the filesystem free space, and the user and folder quotas.
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @param file NetworkFile
+	 * @param alloc long
+	 * @return long
+	 * @throws IOException
+	 */
+	public long allocateSpace(SrvSession sess, TreeConnection tree, NetworkFile file, long alloc)
+		throws IOException {
+
+		//	Check if the allocation is valid
+
+		if ( alloc <= 0)
+			return 0L;
+
+		//	Get the reservation for the file, or create a new reservation
+
+		FileReservation fileRes = m_reservations.get(file);
+
+		if ( fileRes == null) {
+
+			//	Charge the file to the existing owner, or to the session user if the file has not been charged
+
+			FileCharge charge = m_fileCharges.get(new Integer(file.getFileId()));
+			String owner = charge != null ? charge.m_owner : getUserName(sess);
+
+			FileReservation newRes = new FileReservation(file.getFileId(), owner, getCounters(owner, file.getFullName()));
+			fileRes = m_reservations.putIfAbsent(file, newRes);
+			if ( fileRes == null)
+				fileRes = newRes;
+		}
+
+		//	Allocate the space from the file reservation, reserve another batch of space if the reservation
+		//	is not large enough
+
+		synchronized ( fileRes) {
+
+			if ( fileRes.m_reserved < alloc) {
+
+				//	Reserve a batch of space, or just the required space if the quota is nearly exhausted
+
+				long reqSize = alloc - fileRes.m_reserved;
+				long batchSize = Math.max(reqSize, m_reserveSize);
+
+				if ( reserveSpace(fileRes.m_counters, batchSize) == false) {
+
+					if ( batchSize == reqSize || reserveSpace(fileRes.m_counters, reqSize) == false) {
+
+						//	DEBUG
+
+						if ( Debug.EnableInfo && hasDebug())
+							Debug.println("DBUserQuotaManager: Quota exceeded, alloc=" + alloc + ", file=" + file.getFullName());
+
+						throw new DiskFullException();
+					}
+
+					batchSize = reqSize;
+				}
+
+				fileRes.m_reserved += batchSize;
+			}
+
+			//	Allocate the space from the file reservation
+
+			fileRes.m_reserved -= alloc;
+		}
+
+		//	Record the space charged to the file owner
+
+		if ( fileRes.m_owner != null)
+			addFileCharge(fileRes.m_fid, fileRes.m_owner, alloc);
+
+		//	Return the allocation size
+
+		return alloc;
+	}
+
+	/**
+	 * Release space back to the filesystem, and the user and folder quotas.
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @param fid int
+	 * @param path String
+	 * @param alloc long
+	 * @throws IOException
+	 */
+	public void releaseSpace(SrvSession sess, TreeConnection tree, int fid, String path, long alloc)
+		throws IOException {
+
+		//	Check if the allocation is valid
+
+		if ( alloc <= 0)
+			return;
+
+		//	Release the space to the share and folder counters
+
+		QuotaCounter[] counters = getCounters(null, path);
+
+		for (int i = 0; i < counters.length; i++)
+			counters[i].release(alloc);
+
+		//	Credit the file owner with the space that was charged to the owner, the space may be released by a
+		//	different user
+
+		releaseFileCharge(fid, alloc);
+
+		m_usageVersion.incrementAndGet();
+
+		//	DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("DBUserQuotaManager: Release=" + alloc + ", path=" + path + ", free=" + MemorySize.asScaledString(getAvailableFreeSpace()));
+	}
+
+	/**
+	 * Release any unused space reserved by a file, called when the file is closed
+	 *
+	 * @param file NetworkFile
+	 */
+	public void fileClosed(NetworkFile file) {
+
+		//	Remove the file reservation
+
+		FileReservation fileRes = m_reservations.remove(file);
+		if ( fileRes == null)
+			return;
+
+		//	Return the unused reserved space
+
+		synchronized ( fileRes) {
+			if ( fileRes.m_reserved > 0L) {
+				for (int i = 0; i < fileRes.m_counters.length; i++)
+					fileRes.m_counters[i].release(fileRes.m_reserved);
+				fileRes.m_reserved = 0L;
+			}
+		}
+	}
+
+	/**
+	 * Reserve space in the folder quotas that a file/folder rename moves the file into. The rename must be
+	 * completed by calling renameComplete(), whether the rename succeeds or fails.
+	 *
+	 * @param fid int
+	 * @param oldPath String
+	 * @param newPath String
+	 * @param isDir boolean
+	 * @param size long
+	 * @exception IOException If the rename would exceed a folder quota, or moves a folder across a quota folder
+	 */
+	public void renameStart(int fid, String oldPath, String newPath, boolean isDir, long size)
+		throws IOException {
+
+		//	Get the folder counters that the rename moves the file into and out of
+
+		QuotaCounter[] addCounters = getRenameCounters(newPath, oldPath);
+
+		if ( isDir) {
+
+			//	The usage of the folder contents is not known, do not allow a folder to be moved across a quota folder
+
+			if ( addCounters.length > 0 || getRenameCounters(oldPath, newPath).length > 0)
+				throw new AccessDeniedException("Folder rename across quota folder not allowed");
+			return;
+		}
+
+		//	Reserve the file space from the folders the file is moving into
+
+		size = getRenameSize(fid, size);
+
+		if ( addCounters.length > 0 && size > 0L && reserveSpace(addCounters, size) == false) {
+
+			//	DEBUG
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("DBUserQuotaManager: Quota exceeded, rename=" + oldPath + " to " + newPath + ", size=" + size);
+
+			throw new DiskFullException();
+		}
+	}
+
+	/**
+	 * Complete a file rename, release the file space from the folder quotas the file has moved out of, or from the
+	 * folder quotas reserved by renameStart() if the rename failed
+	 *
+	 * @param fid int
+	 * @param oldPath String
+	 * @param newPath String
+	 * @param size long
+	 * @param renamed boolean
+	 */
+	public void renameComplete(int fid, String oldPath, String newPath, long size, boolean renamed) {
+
+		//	Release the file space from the folders the file has moved out of, or the folders that were reserved
+		//	if the rename failed
+
+		QuotaCounter[] relCounters = renamed ? getRenameCounters(oldPath, newPath) : getRenameCounters(newPath, oldPath);
+		size = getRenameSize(fid, size);
+
+		if ( relCounters.length > 0 && size > 0L) {
+			for (int i = 0; i < relCounters.length; i++)
+				relCounters[i].release(size);
+			m_usageVersion.incrementAndGet();
+		}
+
+		//	Charge further allocations by open instances of the file to the new folders, return the unused reserved
+		//	space to the old folders
+
+		if ( renamed && m_reservations.size() > 0) {
+
+			for (FileReservation fileRes : m_reservations.values()) {
+
+				if ( fileRes.m_fid != fid)
+					continue;
+
+				synchronized ( fileRes) {
+					if ( fileRes.m_reserved > 0L) {
+						for (int i = 0; i < fileRes.m_counters.length; i++)
+							fileRes.m_counters[i].release(fileRes.m_reserved);
+						fileRes.m_reserved = 0L;
+					}
+
+					fileRes.m_counters = getCounters(fileRes.m_owner, newPath);
+				}
+			}
+		}
+
+		//	DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("DBUserQuotaManager: Rename " + oldPath + " to " + newPath + ", size=" + size + ", renamed=" + renamed);
+	}
+
+	/**
+	 * Return the folder counters that a path is within that the other path is not within
+	 *
+	 * @param path String
+	 * @param otherPath String
+	 * @return QuotaCounter[]
+	 */
+	private final QuotaCounter[] getRenameCounters(String path, String otherPath) {
+
+		//	Check if there are any folder quotas
+
+		if ( m_folderCounters.size() == 0)
+			return new QuotaCounter[0];
+
+		//	Find the folders the path is within, that the other path is not within
+
+		List<QuotaCounter> counters = new ArrayList<QuotaCounter>(2);
+		String upPath = path.toUpperCase();
+		String upOther = otherPath.toUpperCase();
+
+		for (QuotaCounter folderCounter : m_folderCounters) {
+			if ( isWithinFolder(upPath, folderCounter.getName()) && isWithinFolder(upOther, folderCounter.getName()) == false)
+				counters.add(folderCounter);
+		}
+
+		return counters.toArray(new QuotaCounter[counters.size()]);
+	}
+
+	/**
+	 * Return the size to move between folder quotas for a rename, open instances of the file may have extended the
+	 * file beyond the saved file size
+	 *
+	 * @param fid int
+	 * @param size long
+	 * @return long
+	 */
+	private final long getRenameSize(int fid, long size) {
+
+		for (Map.Entry<NetworkFile, FileReservation> entry : m_reservations.entrySet()) {
+			if ( entry.getValue().m_fid == fid && entry.getKey().getFileSize() > size)
+				size = entry.getKey().getFileSize();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Add to the space charged to the owner of a file
+	 *
+	 * @param fid int
+	 * @param owner String
+	 * @param alloc long
+	 */
+	private final void addFileCharge(int fid, String owner, long alloc) {
+
+		Integer fidKey = new Integer(fid);
+
+		while ( true) {
+
+			//	Get the file charge, or create a new charge
+
+			FileCharge charge = m_fileCharges.get(fidKey);
+
+			if ( charge == null) {
+				FileCharge newCharge = new FileCharge(owner);
+				charge = m_fileCharges.putIfAbsent(fidKey, newCharge);
+				if ( charge == null)
+					charge = newCharge;
+			}
+
+			//	Update the charge, retry if the charge was removed by a release
+
+			synchronized ( charge) {
+				if ( charge.m_removed == false) {
+					charge.m_charged += alloc;
+					m_changedCharges.add(fidKey);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Credit the owner of a file with released space, up to the amount charged to the owner. The file charge is
+	 * removed when all of the charged space has been released.
+	 *
+	 * @param fid int
+	 * @param alloc long
+	 */
+	private final void releaseFileCharge(int fid, long alloc) {
+
+		//	Get the file charge
+
+		Integer fidKey = new Integer(fid);
+		FileCharge charge = m_fileCharges.get(fidKey);
+		if ( charge == null)
+			return;
+
+		//	Credit the owner, up to the charged space
+
+		long credit = 0L;
+
+		synchronized ( charge) {
+			if ( charge.m_removed)
+				return;
+
+			credit = Math.min(alloc, charge.m_charged);
+			charge.m_charged -= credit;
+
+			if ( charge.m_charged == 0L) {
+				charge.m_removed = true;
+				m_fileCharges.remove(fidKey, charge);
+			}
+
+			m_changedCharges.add(fidKey);
+		}
+
+		if ( credit > 0L)
+			getUserCounter(charge.m_owner).release(credit);
+	}
+
+	/**
+	 * Reserve space from a set of quota counters, if any counter does not have enough space then the space
+	 * reserved from the other counters is released
+	 *
+	 * @param counters QuotaCounter[]
+	 * @param alloc long
+	 * @return boolean
+	 */
+	private final boolean reserveSpace(QuotaCounter[] counters, long alloc) {
+
+		//	Reserve the space from each counter
+
+		for (int i = 0; i < counters.length; i++) {
+
+			if ( counters[i].reserve(alloc) == false) {
+
+				//	Release the space from the counters already updated
+
+				for (int j = 0; j < i; j++)
+					counters[j].release(alloc);
+				return false;
+			}
+		}
+
+		m_usageVersion.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Return the quota counters that a user/path is charged to, the share counter is always first
+	 *
+	 * @param owner String
+	 * @param path String
+	 * @return QuotaCounter[]
+	 */
+	private final QuotaCounter[] getCounters(String owner, String path) {
+
+		//	Add the share counter
+
+		List<QuotaCounter> counters = new ArrayList<QuotaCounter>(4);
+		counters.add(m_shareCounter);
+
+		//	Add the user counter
+
+		if ( owner != null)
+			counters.add(getUserCounter(owner));
+
+		//	Add the counters for any folders the path is within
+
+		if ( path != null && m_folderCounters.size() > 0) {
+			String upPath = path.toUpperCase();
+
+			for (QuotaCounter folderCounter : m_folderCounters) {
+				if ( isWithinFolder(upPath, folderCounter.getName()))
+					counters.add(folderCounter);
+			}
+		}
+
+		return counters.toArray(new QuotaCounter[counters.size()]);
+	}
+
+	/**
+	 * Check if an upper case path is within a quota folder
+	 *
+	 * @param upPath String
+	 * @param folder String
+	 * @return boolean
+	 */
+	private static final boolean isWithinFolder(String upPath, String folder) {
+		return upPath.startsWith(folder) && upPath.length() > folder.length() && upPath.charAt(folder.length()) == '\\' ? true : false;
+	}
+
+	/**
+	 * Return the upper case user name for a session
+	 *
+	 * @param sess SrvSession
+	 * @return String, or null if the session does not have a user name
+	 */
+	private final String getUserName(SrvSession sess) {
+
+		//	Get the user name
+
+		if ( sess == null || sess.getClientInformation() == null)
+			return null;
+
+		String userName = sess.getClientInformation().getUserName();
+		if ( userName == null || userName.length() == 0)
+			return null;
+
+		return userName.toUpperCase();
+	}
+
+	/**
+	 * Return the quota counter for the session user, creating the counter if required
+	 *
+	 * @param sess SrvSession
+	 * @return QuotaCounter, or null if the session does not have a user name
+	 */
+	private final QuotaCounter getUserCounter(SrvSession sess) {
+
+		//	Find the user counter, or create a new counter
+
+		String userName = getUserName(sess);
+		return userName != null ? getUserCounter(userName) : null;
+	}
+
+	/**
+	 * Return the quota counter for an upper case user name, creating the counter if required
+	 *
+	 * @param userName String
+	 * @return QuotaCounter
+	 */
+	private final QuotaCounter getUserCounter(String userName) {
+
+		//	Find the user counter, or create a new counter using the configured or default user quota
+
+		QuotaCounter userCounter = m_userCounters.get(userName);
+
+		if ( userCounter == null) {
+			Long userQuota = m_userQuotas.get(userName);
+
+			QuotaCounter newCounter = new QuotaCounter(userName, userQuota != null ? userQuota.longValue() : m_defUserQuota);
+			userCounter = m_userCounters.putIfAbsent(userName, newCounter);
+			if ( userCounter == null)
+				userCounter = newCounter;
+		}
+
+		return userCounter;
+	}
+
+	/**
+	 * Start the quota manager
+	 *
+	 * @param disk DiskInterface
+	 * @param ctx DiskDeviceContext
+	 * @exception QuotaManagerException
+	 */
+	public void startManager(DiskInterface disk, DiskDeviceContext ctx)
+		throws QuotaManagerException {
+
+		//	Access the JDBC context
+
+		DBDeviceContext dbCtx = (DBDeviceContext) ctx;
+
+		//	Get the disk size information for the filesystem
+
+		if ( disk instanceof DiskSizeInterface) {
+
+			//	Get the disk size information from the driver
+
+			DiskSizeInterface sizeInterface = (DiskSizeInterface) disk;
+			m_diskInfo = new SrvDiskInfo();
+
+			try {
+				sizeInterface.getDiskInformation(ctx, m_diskInfo);
+			}
+			catch (IOException ex) {
+				m_diskInfo = null;
+			}
+		}
+		else if ( dbCtx.hasDiskInformation()) {
+
+			//	Use the static disk size information
+
+			m_diskInfo = dbCtx.getDiskInformation();
+		}
+
+		//	Check if the disk information is valid
+
+		if ( m_diskInfo == null)
+			throw new QuotaManagerException("Disk size information not available");
+
+		//	Create the share counter using the total space for the filesystem
+
+		long totalSpace = m_diskInfo.getDiskSizeKb() * 1024L;
+
+		if ( totalSpace == 0)
+			throw new QuotaManagerException("Disk size not set");
+
+		m_shareCounter = new QuotaCounter(ctx.getShareName(), totalSpace);
+
+		//	Load the saved usage, recalculate the used space using the database if the saved usage is not
+		//	available or the server did not shutdown cleanly
+
+		if ( loadUsage() == false) {
+
+			//	Get the used space from the database interface
+
+			long usedSpace = dbCtx.getDBInterface().getUsedFileSpace();
+
+			//	Check if the currently used space was returned
+
+			if ( usedSpace == -1L)
+				throw new QuotaManagerException("Failed to calculate used space");
+
+			m_shareCounter.setUsed(usedSpace);
+		}
+
+		//	Mark the usage file as in use, and start the usage save timer
+
+		if ( m_usageFile != null) {
+			saveUsage( true);
+
+			if ( m_threadPool != null) {
+				m_saveRequest = new UsageSaveTimedRequest("QuotaUsageSave_" + ctx.getShareName(), m_saveInterval);
+				m_threadPool.queueTimedRequest(m_saveRequest);
+			}
+		}
+
+		//	DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("DBUserQuotaManager: Startup share=" + m_shareCounter + ", users=" + m_userCounters.size() +
+					", folders=" + m_folderCounters);
+	}
+
+	/**
+	 * Stop the quota manager
+	 *
+	 * @param disk DiskInterface
+	 * @param ctx DiskDeviceContext
+	 * @exception QuotaManagerException
+	 */
+	public void stopManager(DiskInterface disk, DiskDeviceContext ctx)
+		throws QuotaManagerException {
+
+		//	Stop the usage save timer
+
+		if ( m_saveRequest != null && m_threadPool != null) {
+			m_threadPool.removeTimedRequest(m_saveRequest);
+			m_saveRequest = null;
+		}
+
+		//	Save the final usage, and mark the shutdown as clean
+
+		if ( m_usageFile != null && m_shareCounter != null) {
+			m_usageVersion.incrementAndGet();
+			saveUsage( false, true);
+		}
+	}
+
+	/**
+	 * Load the saved usage from the usage file
+	 *
+	 * @return boolean true if the share usage was loaded from a cleanly closed usage file
+	 */
+	private final boolean loadUsage() {
+
+		//	Check if there is a usage file
+
+		if ( m_usageFile == null || m_usageFile.exists() == false)
+			return false;
+
+		//	Load the usage properties
+
+		Properties usage = new Properties();
+		FileInputStream in = null;
+
+		try {
+			in = new FileInputStream(m_usageFile);
+			usage.load(in);
+		}
+		catch (IOException ex) {
+
+			//	DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("DBUserQuotaManager: Failed to load usage file " + m_usageFile + ", " + ex.toString());
+			return false;
+		}
+		finally {
+			if ( in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException ex) {
+				}
+			}
+		}
+
+		//	Set the user and folder usage
+
+		try {
+			for (Map.Entry<Object, Object> entry : usage.entrySet()) {
+				String name = (String) entry.getKey();
+				if ( name.startsWith(PropUserPrefix) == false && name.startsWith(PropFolderPrefix) == false)
+					continue;
+
+				long used = Long.parseLong((String) entry.getValue());
+
+				if ( name.startsWith(PropUserPrefix))
+					getUserCounter(name.substring(PropUserPrefix.length())).setUsed(used);
+				else if ( name.startsWith(PropFolderPrefix)) {
+					String folder = name.substring(PropFolderPrefix.length());
+					for (QuotaCounter folderCounter : m_folderCounters) {
+						if ( folderCounter.getName().equals(folder))
+							folderCounter.setUsed(used);
+					}
+				}
+			}
+
+			//	Load the space charged to the file owners
+
+			loadCharges();
+
+			//	Set the share usage if the usage file was closed cleanly
+
+			String shareUsed = usage.getProperty(PropShare);
+
+			if ( shareUsed != null && Boolean.parseBoolean(usage.getProperty(PropClean))) {
+				m_shareCounter.setUsed(Long.parseLong(shareUsed));
+				return true;
+			}
+		}
+		catch (NumberFormatException ex) {
+
+			//	DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("DBUserQuotaManager: Invalid usage file " + m_usageFile + ", " + ex.toString());
+		}
+
+		//	Share usage must be recalculated
+
+		return false;
+	}
+
+	/**
+	 * Load the space charged to the file owners from the charges file. Each entry is written as
+	 * '<fid>,<charged>,<owner>', later entries replace earlier entries for the same file and a zero charge removes
+	 * the file charge.
+	 */
+	private final void loadCharges() {
+
+		//	Check if there is a charges file
+
+		if ( m_chargesFile.exists() == false)
+			return;
+
+		//	Replay the charges file
+
+		BufferedReader in = null;
+
+		try {
+			in = new BufferedReader(new FileReader(m_chargesFile));
+			String line = null;
+
+			while (( line = in.readLine()) != null) {
+
+				//	Parse the file id, charge and owner
+
+				int pos1 = line.indexOf(',');
+				int pos2 = pos1 != -1 ? line.indexOf(',', pos1 + 1) : -1;
+
+				if ( pos2 == -1)
+					continue;
+
+				try {
+					Integer fid = new Integer(line.substring(0, pos1));
+					long charged = Long.parseLong(line.substring(pos1 + 1, pos2));
+
+					if ( charged > 0L) {
+						FileCharge charge = new FileCharge(line.substring(pos2 + 1));
+						charge.m_charged = charged;
+
+						m_fileCharges.put(fid, charge);
+					}
+					else
+						m_fileCharges.remove(fid);
+
+					m_chargeEntries++;
+				}
+				catch (NumberFormatException ex) {
+
+					//	DEBUG
+
+					if ( Debug.EnableError && hasDebug())
+						Debug.println("DBUserQuotaManager: Invalid charges entry " + line);
+				}
+			}
+		}
+		catch (IOException ex) {
+
+			//	DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("DBUserQuotaManager: Failed to load charges file " + m_chargesFile + ", " + ex.toString());
+		}
+		finally {
+			if ( in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException ex) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save the file charges that have changed since the last save to the charges file, or rewrite the charges file
+	 * if most of the entries have been superseded
+	 *
+	 * @exception IOException
+	 */
+	private final void saveCharges()
+		throws IOException {
+
+		//	Check if the charges file should be compacted
+
+		if ( m_chargeEntries >= MinimumCompactEntries && m_chargeEntries > m_fileCharges.size() * 2) {
+
+			//	Clear the changed charges, the current charges are written. The changed charges are restored if the
+			//	charges file cannot be rewritten.
+
+			Set<Integer> changed = new HashSet<Integer>(m_changedCharges);
+			m_changedCharges.removeAll(changed);
+
+			//	Write the current charges to a temporary file, then replace the charges file
+
+			File tmpFile = new File(m_chargesFile.getPath() + ".tmp");
+			int entries = 0;
+
+			try {
+				BufferedWriter out = new BufferedWriter(new FileWriter(tmpFile));
+
+				try {
+					for (Map.Entry<Integer, FileCharge> entry : m_fileCharges.entrySet()) {
+						FileCharge charge = entry.getValue();
+
+						synchronized ( charge) {
+							if ( charge.m_removed == false && charge.m_charged > 0L) {
+								writeCharge(out, entry.getKey(), charge.m_charged, charge.m_owner);
+								entries++;
+							}
+						}
+					}
+				}
+				finally {
+					out.close();
+				}
+
+				if ( tmpFile.renameTo(m_chargesFile) == false) {
+					m_chargesFile.delete();
+					if ( tmpFile.renameTo(m_chargesFile) == false)
+						throw new IOException("Failed to rename " + tmpFile);
+				}
+			}
+			catch (IOException ex) {
+				m_changedCharges.addAll(changed);
+				throw ex;
+			}
+
+			m_chargeEntries = entries;
+
+			//	DEBUG
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("DBUserQuotaManager: Compacted charges file, entries=" + entries);
+			return;
+		}
+
+		//	Check if any charges have changed
+
+		if ( m_changedCharges.isEmpty())
+			return;
+
+		//	Append the changed charges, a removed charge is written as a zero charge
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(m_chargesFile, true));
+
+		try {
+			for (Integer fid : m_changedCharges) {
+
+				//	Remove the changed flag before the charge is read, a later change will be saved by the next save
+
+				m_changedCharges.remove(fid);
+
+				FileCharge charge = m_fileCharges.get(fid);
+				long charged = 0L;
+				String owner = "";
+
+				if ( charge != null) {
+					synchronized ( charge) {
+						if ( charge.m_removed == false) {
+							charged = charge.m_charged;
+							owner = charge.m_owner;
+						}
+					}
+				}
+
+				writeCharge(out, fid, charged, owner);
+				m_chargeEntries++;
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a file charge entry to the charges file
+	 *
+	 * @param out BufferedWriter
+	 * @param fid Integer
+	 * @param charged long
+	 * @param owner String
+	 * @exception IOException
+	 */
+	private static final void writeCharge(BufferedWriter out, Integer fid, long charged, String owner)
+		throws IOException {
+		out.write(fid.toString());
+		out.write(',');
+		out.write(Long.toString(charged));
+		out.write(',');
+		out.write(owner);
+		out.newLine();
+	}
+
+	/**
+	 * Save the usage to the usage file, if the usage has changed
+	 *
+	 * @param force boolean
+	 */
+	protected final void saveUsage(boolean force) {
+		saveUsage(force, false);
+	}
+
+	/**
+	 * Save the usage to the usage file, if the usage has changed
+	 *
+	 * @param force boolean
+	 * @param clean boolean
+	 */
+	private final synchronized void saveUsage(boolean force, boolean clean) {
+
+		//	Check if the usage has changed since the last save
+
+		long usageVersion = m_usageVersion.get();
+
+		if ( force == false && usageVersion == m_savedVersion)
+			return;
+
+		//	Get the reserved space that has not been used by open files, this is not saved as used space
+
+		HashMap<QuotaCounter, Long> reserved = new HashMap<QuotaCounter, Long>();
+
+		for (FileReservation fileRes : m_reservations.values()) {
+			synchronized ( fileRes) {
+				if ( fileRes.m_reserved > 0L) {
+					for (int i = 0; i < fileRes.m_counters.length; i++) {
+						Long curVal = reserved.get(fileRes.m_counters[i]);
+						reserved.put(fileRes.m_counters[i], new Long((curVal != null ? curVal.longValue() : 0L) + fileRes.m_reserved));
+					}
+				}
+			}
+		}
+
+		//	Build the usage properties
+
+		Properties usage = new Properties();
+
+		usage.setProperty(PropClean, Boolean.toString(clean));
+		usage.setProperty(PropShare, Long.toString(getSavedUsage(m_shareCounter, reserved)));
+
+		for (QuotaCounter userCounter : m_userCounters.values()) {
+			long used = getSavedUsage(userCounter, reserved);
+			if ( used > 0L)
+				usage.setProperty(PropUserPrefix + userCounter.getName(), Long.toString(used));
+		}
+
+		for (QuotaCounter folderCounter : m_folderCounters)
+			usage.setProperty(PropFolderPrefix + folderCounter.getName(), Long.toString(getSavedUsage(folderCounter, reserved)));
+
+		//	Save the changed file charges, then write the usage to a temporary file and replace the usage file
+
+		File tmpFile = new File(m_usageFile.getPath() + ".tmp");
+		FileOutputStream out = null;
+
+		try {
+			saveCharges();
+
+			out = new FileOutputStream(tmpFile);
+			usage.store(out, "JLAN quota usage");
+			out.close();
+			out = null;
+
+			if ( tmpFile.renameTo(m_usageFile) == false) {
+				m_usageFile.delete();
+				if ( tmpFile.renameTo(m_usageFile) == false)
+					throw new IOException("Failed to rename " + tmpFile);
+			}
+
+			m_savedVersion = usageVersion;
+		}
+		catch (IOException ex) {
+
+			//	DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("DBUserQuotaManager: Failed to save usage file " + m_usageFile + ", " + ex.toString());
+		}
+		finally {
+			if ( out != null) {
+				try {
+					out.close();
+				}
+				catch (IOException ex) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the used space for a counter, not including unused reserved space
+	 *
+	 * @param counter QuotaCounter
+	 * @param reserved HashMap<QuotaCounter, Long>
+	 * @return long
+	 */
+	private final long getSavedUsage(QuotaCounter counter, HashMap<QuotaCounter, Long> reserved) {
+		Long resVal = reserved.get(counter);
+		long used = counter.getUsed() - (resVal != null ? resVal.longValue() : 0L);
+		return used > 0L ? used : 0L;
+	}
+
+	/**
+	 * Return the available free space in bytes
+	 *
+	 * @return long
+	 */
+	public long getAvailableFreeSpace() {
+		return m_shareCounter != null ? m_shareCounter.getFree() : 0L;
+	}
+
+	/**
+	 * Return the free space available to the specified user/session
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @return long
+	 */
+	public long getUserFreeSpace(SrvSession sess, TreeConnection tree) {
+
+		//	Return the lower of the filesystem free space and the user quota free space
+
+		long freeSpace = getAvailableFreeSpace();
+		QuotaCounter userCounter = getUserCounter(sess);
+
+		if ( userCounter != null && userCounter.getFree() < freeSpace)
+			freeSpace = userCounter.getFree();
+		return freeSpace;
+	}
+
+	/**
+	 * Return total space available to the specified user/session
+	 *
+	 * @param sess SrvSession
+	 * @param tree TreeConnection
+	 * @return long
+	 */
+	public long getUserTotalSpace(SrvSession sess, TreeConnection tree) {
+
+		//	Return the user quota, if set, else the filesystem size
+
+		QuotaCounter userCounter = getUserCounter(sess);
+
+		if ( userCounter != null && userCounter.hasLimit() && userCounter.getLimit() < m_shareCounter.getLimit())
+			return userCounter.getLimit();
+		return m_shareCounter.getLimit();
+	}
+
+	/**
+	 * Set the thread pool used to run the usage file save timer
+	 *
+	 * @param threadPool ThreadRequestPool
+	 */
+	public final void setThreadPool(ThreadRequestPool threadPool) {
+		m_threadPool = threadPool;
+	}
+
+	/**
+	 * Determine if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Enable/disable debug output
+	 *
+	 * @param dbg boolean
+	 */
+	public void setDebug(boolean dbg) {
+		m_debug = dbg;
+	}
+}
@@ -39,6 +39,7 @@ import org.alfresco.jlan.server.filesys.cache.FileStateCache;
 import org.alfresco.jlan.server.filesys.cache.FileStateListener;
 import org.alfresco.jlan.server.filesys.loader.BackgroundFileLoader;
 import org.alfresco.jlan.server.filesys.loader.DeleteFileRequest;
+import org.alfresco.jlan.server.filesys.loader.FileContentCache;
 import org.alfresco.jlan.server.filesys.loader.FileLoader;
 import org.alfresco.jlan.server.filesys.loader.FileLoaderException;
 import org.alfresco.jlan.server.filesys.loader.FileProcessor;
@@ -169,6 +170,10 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 
 	private FileProcessorList m_fileProcessors;
 
+	// Local file content cache, survives file state expiry and server restarts
+
+	private FileContentCache m_contentCache;
+
 	// Required attributes to add to file requests
 
 	private StringList m_reqAttributes;
@@ -338,6 +343,15 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 		return m_tempFilePrefix;
 	}
 
+	/**
+	 * Return the local file content cache, or null if not configured
+	 *
+	 * @return FileContentCache
+	 */
+	public final FileContentCache getContentCache() {
+		return m_contentCache;
+	}
+
 	/**
 	 * Set the worker thread name prefix
 	 *
@@ -598,6 +612,11 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 
 		try {
 
+			// Remove any locally cached copy of the file data
+
+			if ( m_contentCache != null)
+				m_contentCache.removeFile(fid, stid);
+
 			// Find the associated file state
 
 			FileState fstate = m_stateCache.findFileState(fname, false);
@@ -697,6 +716,7 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 
 		int loadSts = StsRequeue;
 		String objectId = null;
+		long cacheLen = -1L;
 
 		int fileId = loadReq.getFileId();
 		int strmId = loadReq.getStreamId();
@@ -713,9 +733,23 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 
 			if ( objectId != null) {
 
-				// Load the file data
+				// Check if the file data for the object id is in the local content cache
+
+				if ( m_contentCache != null)
+					cacheLen = m_contentCache.loadFile(fileId, strmId, objectId, tempFile);
+
+				if ( cacheLen != -1L) {
+
+					// File data loaded from the content cache
+
+					fileSeg.setReadableLength(cacheLen);
+				}
+				else {
 
-				loadFileData(fileId, strmId, objectId, fileSeg);
+					// Load the file data
+
+					loadFileData(fileId, strmId, objectId, fileSeg);
+				}
 
 				// Set the load status
 
@@ -726,7 +760,7 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 				if ( Debug.EnableInfo && hasDebug()) {
 					long endTime = System.currentTimeMillis();
 					Debug.println("## ObjIdLoader loaded fid=" + loadReq.getFileId() + ", stream=" + loadReq.getStreamId()
-							+ ", time=" + (endTime - startTime) + "ms");
+							+ (cacheLen != -1L ? " from content cache" : "") + ", time=" + (endTime - startTime) + "ms");
 				}
 			}
 			else {
@@ -805,6 +839,11 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 			// Run the file load processors
 
 			runFileLoadedProcessors(getContext(), loadReq.getFileState(), fileSeg);
+
+			// Add the file data to the local content cache, if not loaded from the cache
+
+			if ( m_contentCache != null && objectId != null && cacheLen == -1L)
+				m_contentCache.addFile(fileId, strmId, objectId, tempFile);
 		}
 		else if ( loadSts == StsError) {
 
@@ -868,13 +907,15 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 		fileSeg.setStatus(FileSegmentInfo.Saving);
 		fileSeg.getInfo().setUpdated(false);
 
+		String objectId = null;
+
 		// Save the file data
 
 		try {
 
 			// Save the file data and get the assigned object id
 
-			String objectId = saveFileData(saveReq.getFileId(), saveReq.getStreamId(), fileSeg, req.getAttributes());
+			objectId = saveFileData(saveReq.getFileId(), saveReq.getStreamId(), fileSeg, req.getAttributes());
 
 			// Save the object id to the mapping database
 
@@ -907,6 +948,17 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 			saveSts = StsError;
 		}
 
+		// Update the local content cache with the saved file data, if the file was not updated whilst the data was
+		// being saved, else remove the out of date cached data
+
+		if ( m_contentCache != null) {
+			if ( saveSts == StsSuccess && objectId != null && fileSeg.isUpdated() == false)
+				m_contentCache.addFile(saveReq.getFileId(), saveReq.getStreamId(), objectId, tempFile);
+
+			if ( saveSts != StsSuccess || objectId == null || fileSeg.isUpdated())
+				m_contentCache.removeFile(saveReq.getFileId(), saveReq.getStreamId());
+		}
+
 		// Update the segment status
 
 		if ( saveSts == StsSuccess)
@@ -1070,6 +1122,10 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 		else
 			m_tempMax = MaximumFilesPerSubDir;
 
+		// Check if the local file content cache is enabled
+
+		m_contentCache = FileContentCache.createContentCache(params, m_tempDirName);
+
 		// Check if there are any file processors configured
 
 		ConfigElement fileProcs = params.getChild("FileProcessors");
@@ -1245,6 +1301,11 @@ public abstract class ObjectIdFileLoader implements FileLoader, BackgroundFileLo
 
 		if ( m_backgroundLoader != null)
 			m_backgroundLoader.shutdownThreads();
+
+		// Close the local content cache, the cached file data is kept for the next server run
+
+		if ( m_contentCache != null)
+			m_contentCache.closeCache();
 	}
 
 	/**
@@ -0,0 +1,963 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.util.MemorySize;
+import org.springframework.extensions.config.ConfigElement;
+
+/**
+ * File Content Cache Class
+ *
+ * <p>Size limited local disk cache of file data, used by the file loaders to avoid reloading file data from the
+ * backing store when a file state has expired and the temporary file has been deleted. Each cache entry is indexed
+ * by the file id, stream id and a data version string supplied by the file loader, only one version of the data
+ * is kept for each file/stream.
+ *
+ * <p>The index is held in memory and rebuilt from the cache directory at startup, the file id, stream id and data
+ * version are encoded into the cache file name, so the cache survives a server restart without a separate index
+ * file. The least recently used entries are removed when the total size of the cached data exceeds the maximum
+ * cache size.
+ *
+ * @author gkspencer
+ */
+public class FileContentCache {
+
+	//	Cache file name prefix/extensions
+
+	private static final String CacheFilePrefix		= "cc_";
+	private static final String CacheFileExtension	= ".dat";
+	private static final String PartFileExtension	= ".part";
+
+	//	Default cache sub-directory name, within the file loader temporary directory
+
+	public static final String DefaultCacheDirectory	= "contentCache";
+
+	//	Minimum cache size
+
+	public static final long MinimumCacheSize		= MemorySize.MEGABYTE;
+
+	//	Largest file that will be cached, as a fraction of the maximum cache size
+
+	private static final long MaximumFileFraction	= 4L;
+
+	//	Content hash algorithm, and read buffer size used to hash file data
+
+	public static final String ContentHashAlgorithm	= "SHA-1";
+	private static final int HashBufferSize			= 65536;
+
+	//	Copy chunk size
+
+	private static final long CopyChunkSize			= MemorySize.MEGABYTE;
+
+	//	Cache directory
+
+	private File m_cacheDir;
+
+	//	Maximum and current cache size, in bytes
+
+	private long m_maxSize;
+	private long m_curSize;
+
+	//	Cache index, in least recently used order
+
+	private LinkedHashMap<String, CacheEntry> m_index;
+
+	//	Unique id for partial copy files
+
+	private long m_partId;
+
+	//	Cache statistics
+
+	private long m_hits;
+	private long m_misses;
+
+	//	Debug enable
+
+	private boolean m_debug;
+
+	/**
+	 * Cache Entry Class
+	 */
+	protected class CacheEntry {
+
+		//	File id, stream id and data version
+
+		private int m_fid;
+		private int m_stid;
+		private String m_version;
+
+		//	Cached data file and length
+
+		private File m_file;
+		private long m_length;
+
+		//	Count of active copies from this entry, and entry removed flag
+
+		private int m_useCount;
+		private boolean m_removed;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param fid int
+		 * @param stid int
+		 * @param version String
+		 * @param file File
+		 * @param len long
+		 */
+		protected CacheEntry(int fid, int stid, String version, File file, long len) {
+			m_fid     = fid;
+			m_stid    = stid;
+			m_version = version;
+			m_file    = file;
+			m_length  = len;
+		}
+
+		/**
+		 * Return the data version
+		 *
+		 * @return String
+		 */
+		public final String getVersion() {
+			return m_version;
+		}
+
+		/**
+		 * Return the cached data file
+		 *
+		 * @return File
+		 */
+		public final File getFile() {
+			return m_file;
+		}
+
+		/**
+		 * Return the cached data length
+		 *
+		 * @return long
+		 */
+		public final long getLength() {
+			return m_length;
+		}
+
+		/**
+		 * Check if the entry is being copied from
+		 *
+		 * @return boolean
+		 */
+		public final boolean isInUse() {
+			return m_useCount > 0 ? true : false;
+		}
+
+		/**
+		 * Return the entry details as a string
+		 *
+		 * @return String
+		 */
+		public String toString() {
+			StringBuffer str = new StringBuffer();
+
+			str.append("[fid=");
+			str.append(m_fid);
+			str.append(",stid=");
+			str.append(m_stid);
+			str.append(",ver=");
+			str.append(m_version);
+			str.append(",len=");
+			str.append(m_length);
+			str.append(",use=");
+			str.append(m_useCount);
+			str.append("]");
+
+			return str.toString();
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param cacheDir File
+	 * @param maxSize long
+	 */
+	public FileContentCache(File cacheDir, long maxSize) {
+		m_cacheDir = cacheDir;
+		m_maxSize  = maxSize;
+
+		m_index = new LinkedHashMap<String, CacheEntry>(256, 0.75f, true);
+	}
+
+	/**
+	 * Create a content cache using the file loader configuration, the cache is enabled by the ContentCacheSize
+	 * value. The ContentCacheDirectory value is optional, the default is a sub-directory of the loader
+	 * temporary directory.
+	 *
+	 * @param params ConfigElement
+	 * @param tempDirName String
+	 * @return FileContentCache, or null if the content cache is not configured
+	 * @exception FileLoaderException
+	 */
+	public static FileContentCache createContentCache(ConfigElement params, String tempDirName)
+		throws FileLoaderException {
+
+		// Check if the content cache is enabled
+
+		ConfigElement nameVal = params.getChild("ContentCacheSize");
+		if ( nameVal == null)
+			return null;
+
+		// Convert the maximum cache size
+
+		long maxSize = 0L;
+
+		try {
+			maxSize = MemorySize.getByteValue(nameVal.getValue());
+		}
+		catch (NumberFormatException ex) {
+			throw new FileLoaderException("Invalid ContentCacheSize value, " + nameVal.getValue());
+		}
+
+		if ( maxSize < MinimumCacheSize)
+			throw new FileLoaderException("ContentCacheSize is below the minimum of " + MemorySize.asScaledString(MinimumCacheSize));
+
+		// Get the cache directory, or use the default
+
+		File cacheDir = null;
+
+		nameVal = params.getChild("ContentCacheDirectory");
+		if ( nameVal != null) {
+			if ( nameVal.getValue() == null || nameVal.getValue().length() == 0)
+				throw new FileLoaderException("ContentCacheDirectory value is null");
+			cacheDir = new File(nameVal.getValue());
+		}
+		else
+			cacheDir = new File(tempDirName, DefaultCacheDirectory);
+
+		// Create the content cache, and build the index from any existing cache files
+
+		FileContentCache cache = new FileContentCache(cacheDir, maxSize);
+
+		if ( params.getChild("ContentCacheDebug") != null)
+			cache.setDebug(true);
+
+		try {
+			cache.openCache();
+		}
+		catch (IOException ex) {
+			throw new FileLoaderException("Failed to open content cache, " + ex.getMessage());
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Return the cache directory
+	 *
+	 * @return File
+	 */
+	public final File getCacheDirectory() {
+		return m_cacheDir;
+	}
+
+	/**
+	 * Return the maximum cache size, in bytes
+	 *
+	 * @return long
+	 */
+	public final long getMaximumSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * Return the current size of the cached data, in bytes
+	 *
+	 * @return long
+	 */
+	public synchronized final long getCacheSize() {
+		return m_curSize;
+	}
+
+	/**
+	 * Return the number of cache entries
+	 *
+	 * @return int
+	 */
+	public synchronized final int numberOfEntries() {
+		return m_index.size();
+	}
+
+	/**
+	 * Return the cache hit count
+	 *
+	 * @return long
+	 */
+	public synchronized final long getHitCount() {
+		return m_hits;
+	}
+
+	/**
+	 * Return the cache miss count
+	 *
+	 * @return long
+	 */
+	public synchronized final long getMissCount() {
+		return m_misses;
+	}
+
+	/**
+	 * Check if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Enable/disable debug output
+	 *
+	 * @param dbg boolean
+	 */
+	public final void setDebug(boolean dbg) {
+		m_debug = dbg;
+	}
+
+	/**
+	 * Open the cache, create the cache directory if required and rebuild the cache index from the existing
+	 * cache files
+	 *
+	 * @exception IOException
+	 */
+	public synchronized void openCache()
+		throws IOException {
+
+		// Create the cache directory, if required
+
+		if ( m_cacheDir.exists() == false && m_cacheDir.mkdirs() == false)
+			throw new IOException("Failed to create content cache directory " + m_cacheDir.getAbsolutePath());
+
+		if ( m_cacheDir.isDirectory() == false || m_cacheDir.canWrite() == false)
+			throw new IOException("Content cache path is not a writeable directory " + m_cacheDir.getAbsolutePath());
+
+		// Scan the cache directory, the last modified date/time of each cache file is its last access time
+
+		File[] files = m_cacheDir.listFiles();
+		List<File> cacheFiles = new ArrayList<File>();
+		int partCnt = 0;
+
+		if ( files != null) {
+			for ( int idx = 0; idx < files.length; idx++) {
+
+				// Delete partial copies left by a server shutdown or crash
+
+				File curFile = files[idx];
+				String name = curFile.getName();
+
+				if ( name.endsWith(PartFileExtension)) {
+					curFile.delete();
+					partCnt++;
+				}
+				else if ( name.startsWith(CacheFilePrefix) && name.endsWith(CacheFileExtension) && curFile.isFile())
+					cacheFiles.add(curFile);
+			}
+		}
+
+		// Add the cache files to the index, oldest first
+
+		File[] sortedFiles = cacheFiles.toArray(new File[cacheFiles.size()]);
+		Arrays.sort(sortedFiles, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long diff = f1.lastModified() - f2.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+
+		m_index.clear();
+		m_curSize = 0L;
+
+		for ( int idx = 0; idx < sortedFiles.length; idx++) {
+
+			// Parse the file id, stream id and version from the file name
+
+			File curFile = sortedFiles[idx];
+			CacheEntry entry = parseCacheFileName(curFile);
+
+			if ( entry != null && m_index.containsKey(makeKey(entry.m_fid, entry.m_stid)) == false) {
+
+				// Add the entry to the index
+
+				m_index.put(makeKey(entry.m_fid, entry.m_stid), entry);
+				m_curSize += entry.getLength();
+			}
+			else {
+
+				// Invalid or duplicate cache file, delete it
+
+				curFile.delete();
+			}
+		}
+
+		// Trim the cache if the maximum size has been reduced since the last run
+
+		evictEntries(0L);
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("[ContentCache] Opened cache " + m_cacheDir.getAbsolutePath() + ", entries=" + m_index.size() + ", size="
+					+ MemorySize.asScaledString(m_curSize) + "/" + MemorySize.asScaledString(m_maxSize) + ", partials=" + partCnt);
+	}
+
+	/**
+	 * Close the cache
+	 */
+	public synchronized void closeCache() {
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("[ContentCache] Closed cache, entries=" + m_index.size() + ", size=" + MemorySize.asScaledString(m_curSize)
+					+ ", hits=" + m_hits + ", misses=" + m_misses);
+
+		// The cache files are left in place for the next server run, clear the in-memory index
+
+		m_index.clear();
+		m_curSize = 0L;
+	}
+
+	/**
+	 * Return the data version of the cached data for a file/stream
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @return String, or null if the file/stream is not cached
+	 */
+	public synchronized String getVersion(int fid, int stid) {
+		CacheEntry entry = m_index.get(makeKey(fid, stid));
+		return entry != null ? entry.getVersion() : null;
+	}
+
+	/**
+	 * Calculate a hash of the file data, as a hex string. The hash is calculated by the server from the file data
+	 * so it may be used as a data version that cannot be set by a client.
+	 *
+	 * @param file File
+	 * @return String
+	 * @exception IOException
+	 */
+	public static String getContentHash(File file)
+		throws IOException {
+
+		// Create the message digest
+
+		MessageDigest digest = null;
+
+		try {
+			digest = MessageDigest.getInstance(ContentHashAlgorithm);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IOException("Content hash algorithm not available, " + ContentHashAlgorithm);
+		}
+
+		// Hash the file data
+
+		FileInputStream in = null;
+
+		try {
+			in = new FileInputStream(file);
+			FileChannel inChan = in.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(HashBufferSize);
+
+			while ( inChan.read(buf) != -1) {
+				buf.flip();
+				digest.update(buf);
+				buf.clear();
+			}
+		}
+		finally {
+
+			// Close the file
+
+			if ( in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException ex) {
+				}
+			}
+		}
+
+		// Convert the hash to a hex string
+
+		byte[] hash = digest.digest();
+		StringBuffer str = new StringBuffer(hash.length * 2);
+
+		for ( int idx = 0; idx < hash.length; idx++) {
+			int val = hash[idx] & 0xFF;
+			if ( val < 0x10)
+				str.append('0');
+			str.append(Integer.toHexString(val));
+		}
+
+		return str.toString();
+	}
+
+	/**
+	 * Copy the cached data for a file/stream to the specified file, if the cache holds the required data version
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @param version String
+	 * @param destFile File
+	 * @return long Length of the data copied, or -1 if the data is not cached
+	 */
+	public long loadFile(int fid, int stid, String version, File destFile) {
+
+		// Find the cache entry, and check the version matches
+
+		CacheEntry entry = null;
+		String key = makeKey(fid, stid);
+
+		synchronized ( this) {
+
+			entry = m_index.get(key);
+
+			if ( entry == null || entry.getVersion().equals(version) == false) {
+
+				// Remove an out of date entry
+
+				if ( entry != null)
+					removeEntry(key, entry);
+
+				m_misses++;
+				return -1L;
+			}
+
+			// Mark the entry as in use so that it is not deleted whilst the data is copied
+
+			entry.m_useCount++;
+		}
+
+		// Copy the cached data to the destination file
+
+		boolean copied = false;
+
+		try {
+
+			// Copy the data
+
+			copyFile(entry.getFile(), destFile);
+			copied = true;
+
+			// Update the cache file last modified time, used to rebuild the LRU order at startup
+
+			entry.getFile().setLastModified(System.currentTimeMillis());
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("[ContentCache] Hit " + entry);
+		}
+		catch (IOException ex) {
+
+			// DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("[ContentCache] Error copying from cache " + entry + ", " + ex.toString());
+		}
+		finally {
+
+			// Release the entry, remove the entry if the copy failed
+
+			synchronized ( this) {
+				entry.m_useCount--;
+
+				if ( copied)
+					m_hits++;
+				else {
+					m_misses++;
+					removeEntry(key, entry);
+				}
+
+				// Delete the cache file if the entry was removed whilst the data was being copied
+
+				if ( entry.m_removed && entry.isInUse() == false)
+					entry.getFile().delete();
+			}
+		}
+
+		// Return the copied data length, or -1 if the copy failed
+
+		return copied ? entry.getLength() : -1L;
+	}
+
+	/**
+	 * Add the data for a file/stream to the cache, replacing any existing cached data for the file/stream. If the
+	 * data cannot be cached any existing cached data for the file/stream is removed.
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @param version String
+	 * @param srcFile File
+	 * @return boolean
+	 */
+	public boolean addFile(int fid, int stid, String version, File srcFile) {
+
+		// Check if the file is too large to cache
+
+		long len = srcFile.length();
+		if ( len > m_maxSize / MaximumFileFraction) {
+			removeFile(fid, stid);
+			return false;
+		}
+
+		// Check if the required version is already cached
+
+		String key = makeKey(fid, stid);
+		long partId = 0L;
+
+		synchronized ( this) {
+			CacheEntry curEntry = m_index.get(key);
+			if ( curEntry != null && curEntry.getVersion().equals(version))
+				return true;
+
+			partId = m_partId++;
+		}
+
+		// Copy the data to a partial file, then rename to the cache file name so that a crash cannot leave a
+		// truncated cache file
+
+		File partFile = new File(m_cacheDir, CacheFilePrefix + fid + "_" + stid + "_" + partId + PartFileExtension);
+		File cacheFile = new File(m_cacheDir, makeCacheFileName(fid, stid, version));
+
+		try {
+
+			// Copy the file data
+
+			copyFile(srcFile, partFile);
+
+			// Check that the source file did not change during the copy
+
+			if ( partFile.length() != len) {
+				partFile.delete();
+				removeFile(fid, stid);
+				return false;
+			}
+
+			// Add the new entry, replacing any existing entry for the file/stream
+
+			synchronized ( this) {
+
+				// Remove the existing entry
+
+				CacheEntry curEntry = m_index.get(key);
+				if ( curEntry != null)
+					removeEntry(key, curEntry);
+
+				// Make room for the new entry
+
+				evictEntries(len);
+
+				// Rename the partial file to the cache file name, the old file may still be in use if the version
+				// is the same so fail the add
+
+				if ( cacheFile.exists() || partFile.renameTo(cacheFile) == false) {
+					partFile.delete();
+					return false;
+				}
+
+				// Add the new entry to the index
+
+				CacheEntry entry = new CacheEntry(fid, stid, version, cacheFile, len);
+				m_index.put(key, entry);
+				m_curSize += len;
+
+				// DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println("[ContentCache] Added " + entry + ", cacheSize=" + MemorySize.asScaledString(m_curSize));
+			}
+		}
+		catch (IOException ex) {
+
+			// Delete the partial file, and any out of date cached data
+
+			partFile.delete();
+			removeFile(fid, stid);
+
+			// DEBUG
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("[ContentCache] Error adding to cache fid=" + fid + ", stid=" + stid + ", " + ex.toString());
+
+			return false;
+		}
+
+		// Data added to the cache
+
+		return true;
+	}
+
+	/**
+	 * Remove the cached data for a file/stream
+	 *
+	 * @param fid int
+	 * @param stid int
+	 */
+	public synchronized void removeFile(int fid, int stid) {
+
+		// Find the cache entry
+
+		String key = makeKey(fid, stid);
+		CacheEntry entry = m_index.get(key);
+
+		if ( entry != null) {
+
+			// Remove the entry
+
+			removeEntry(key, entry);
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("[ContentCache] Removed " + entry);
+		}
+	}
+
+	/**
+	 * Remove least recently used entries until the required space is available. Must be called whilst holding
+	 * the cache lock.
+	 *
+	 * @param reqSize long
+	 */
+	private final void evictEntries(long reqSize) {
+
+		// Check if there is space for the new data
+
+		if ( m_curSize + reqSize <= m_maxSize)
+			return;
+
+		// Walk the index in least recently used order
+
+		Iterator<CacheEntry> iter = m_index.values().iterator();
+		int evictCnt = 0;
+
+		while ( iter.hasNext() && m_curSize + reqSize > m_maxSize) {
+
+			// Remove the entry, the data file is deleted when the last copy from the entry completes
+
+			CacheEntry entry = iter.next();
+			iter.remove();
+
+			m_curSize -= entry.getLength();
+			entry.m_removed = true;
+
+			if ( entry.isInUse() == false)
+				entry.getFile().delete();
+
+			evictCnt++;
+		}
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("[ContentCache] Evicted " + evictCnt + " entries, cacheSize=" + MemorySize.asScaledString(m_curSize));
+	}
+
+	/**
+	 * Remove an entry from the index and delete the data file, if not in use. Must be called whilst holding the
+	 * cache lock.
+	 *
+	 * @param key String
+	 * @param entry CacheEntry
+	 */
+	private final void removeEntry(String key, CacheEntry entry) {
+
+		// Remove the entry from the index, if still the current entry
+
+		if ( m_index.get(key) == entry) {
+			m_index.remove(key);
+			m_curSize -= entry.getLength();
+		}
+
+		// Delete the data file, or mark the entry so the file is deleted when the current copy completes
+
+		entry.m_removed = true;
+
+		if ( entry.isInUse() == false)
+			entry.getFile().delete();
+	}
+
+	/**
+	 * Copy a file
+	 *
+	 * @param srcFile File
+	 * @param destFile File
+	 * @exception IOException
+	 */
+	private final void copyFile(File srcFile, File destFile)
+		throws IOException {
+
+		FileInputStream in = null;
+		FileOutputStream out = null;
+
+		try {
+
+			// Open the source and destination files
+
+			in = new FileInputStream(srcFile);
+			out = new FileOutputStream(destFile);
+
+			FileChannel inChan = in.getChannel();
+			FileChannel outChan = out.getChannel();
+
+			// Copy the data
+
+			long len = inChan.size();
+			long pos = 0L;
+
+			while ( pos < len) {
+				long cnt = inChan.transferTo(pos, Math.min(CopyChunkSize, len - pos), outChan);
+				if ( cnt <= 0)
+					break;
+				pos += cnt;
+			}
+		}
+		finally {
+
+			// Close the files
+
+			if ( in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException ex) {
+				}
+			}
+
+			if ( out != null)
+				out.close();
+		}
+	}
+
+	/**
+	 * Build the cache index key for a file/stream
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @return String
+	 */
+	private final String makeKey(int fid, int stid) {
+		return fid + ":" + stid;
+	}
+
+	/**
+	 * Build the cache file name, the version string is hex encoded so that it may contain any characters
+	 *
+	 * @param fid int
+	 * @param stid int
+	 * @param version String
+	 * @return String
+	 */
+	private final String makeCacheFileName(int fid, int stid, String version) {
+
+		StringBuffer name = new StringBuffer();
+
+		name.append(CacheFilePrefix);
+		name.append(fid);
+		name.append("_");
+		name.append(stid);
+		name.append("_");
+
+		for ( int idx = 0; idx < version.length(); idx++) {
+			String hex = Integer.toHexString(version.charAt(idx));
+			for ( int pad = hex.length(); pad < 4; pad++)
+				name.append('0');
+			name.append(hex);
+		}
+
+		name.append(CacheFileExtension);
+
+		return name.toString();
+	}
+
+	/**
+	 * Parse a cache file name to create a cache entry
+	 *
+	 * @param cacheFile File
+	 * @return CacheEntry, or null if the file name is not valid
+	 */
+	private final CacheEntry parseCacheFileName(File cacheFile) {
+
+		// Strip the prefix and extension, split the file id, stream id and encoded version
+
+		String name = cacheFile.getName();
+		name = name.substring(CacheFilePrefix.length(), name.length() - CacheFileExtension.length());
+
+		int pos1 = name.indexOf('_');
+		int pos2 = pos1 != -1 ? name.indexOf('_', pos1 + 1) : -1;
+
+		if ( pos1 == -1 || pos2 == -1)
+			return null;
+
+		String encVer = name.substring(pos2 + 1);
+		if ( encVer.length() == 0 || (encVer.length() % 4) != 0)
+			return null;
+
+		try {
+
+			// Parse the file id and stream id
+
+			int fid = Integer.parseInt(name.substring(0, pos1));
+			int stid = Integer.parseInt(name.substring(pos1 + 1, pos2));
+
+			// Decode the version string
+
+			StringBuffer version = new StringBuffer();
+			for ( int idx = 0; idx < encVer.length(); idx += 4)
+				version.append((char) Integer.parseInt(encVer.substring(idx, idx + 4), 16));
+
+			// Create the cache entry
+
+			return new CacheEntry(fid, stid, version.toString(), cacheFile, cacheFile.length());
+		}
+		catch (NumberFormatException ex) {
+		}
+
+		// Invalid file name
+
+		return null;
+	}
+}
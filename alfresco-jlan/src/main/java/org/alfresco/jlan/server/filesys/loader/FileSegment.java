@@ -22,6 +22,9 @@ package org.alfresco.jlan.server.filesys.loader;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.alfresco.jlan.debug.Debug;
 
@@ -31,6 +34,11 @@ import org.alfresco.jlan.debug.Debug;
  *
  * <p>Contains the details of a segment of file data.
  *
+ * <p>File data is accessed using positional reads and writes on the temporary file channel so that multiple threads
+ * may read, or write non-extending blocks, concurrently. Reads and writes share the segment I/O lock, truncating or
+ * closing the temporary file takes the I/O lock exclusively. Writes that extend the file are serialized. Reads during
+ * a file data load are limited to the readable length published by the loader.
+ *
  * @author gkspencer
  */
 public class FileSegment {
@@ -39,9 +47,14 @@ public class FileSegment {
 
 	private FileSegmentInfo m_info;
 
-	//	Local file containing the data segment
+	//	Local file containing the data segment, and the file channel used for positional reads/writes
+
+	private volatile RandomAccessFile m_segment;
+	private volatile FileChannel m_channel;
 
-	private RandomAccessFile m_segment;
+	//	I/O lock, reads and writes are shared, truncate and close are exclusive
+
+	private final ReentrantReadWriteLock m_ioLock = new ReentrantReadWriteLock();
 
 	//	Open file for write access
 
@@ -68,8 +81,9 @@ public class FileSegment {
 	 */
 	public final long getFileLength()
 		throws IOException {
-		if ( isOpen())
-			return m_segment.length();
+		FileChannel channel = m_channel;
+		if ( channel != null)
+			return channel.size();
 		return -1;
 	}
 
@@ -333,11 +347,35 @@ public class FileSegment {
 	public final void closeFile()
 		throws IOException {
 
+		//	Wait for active reads and writes to complete
+
+		m_ioLock.writeLock().lock();
+
+		try {
+			closeSegment();
+		}
+		finally {
+			m_ioLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Close the temporary file, without taking the I/O lock
+	 *
+	 * @exception IOException
+	 */
+	private final synchronized void closeSegment()
+		throws IOException {
+
 		//	Close the temporary file
 
 		if ( m_segment != null) {
-			m_segment.close();
+			RandomAccessFile segment = m_segment;
+
 			m_segment = null;
+			m_channel = null;
+
+			segment.close();
 		}
 	}
 
@@ -346,18 +384,22 @@ public class FileSegment {
 	 *
 	 * @exception IOException
 	 */
-	public final void openFile()
+	public final synchronized void openFile()
 		throws IOException {
 		if ( m_segment == null) {
 
 			//	Open the temporary file
 
-			m_segment = new RandomAccessFile(m_info.getTemporaryFile(), "rw");
+			RandomAccessFile segment = new RandomAccessFile(m_info.getTemporaryFile(), "rw");
+
+			m_channel = segment.getChannel();
+			m_segment = segment;
 		}
 	}
 
 	/**
-	 * Read a block of data from the segment file
+	 * Read a block of data from the segment file. Reads share the I/O lock with other reads and writes, if the file
+	 * data is still being loaded the read is limited to the data that the loader has written to the temporary file.
 	 *
    * @param buf byte[]
    * @param len int
@@ -366,49 +408,69 @@ public class FileSegment {
    * @return     Length of data read.
    * @exception IOException
    */
-	public synchronized final int readBytes(byte[] buf, int len, int pos, long fileOff)
+	public final int readBytes(byte[] buf, int len, int pos, long fileOff)
 		throws IOException {
 
-		//	Check if the temporary file is open
+		m_ioLock.readLock().lock();
 
-		if ( m_segment == null) {
+		try {
+			return readChannel(buf, len, pos, fileOff);
+		}
+		finally {
+			m_ioLock.readLock().unlock();
+		}
+	}
 
-			//	Open the temporary file
+	/**
+	 * Read a block of data from the segment file, the caller must hold the I/O lock
+	 *
+   * @param buf byte[]
+   * @param len int
+   * @param pos int
+   * @param fileOff long
+   * @return     Length of data read.
+   * @exception IOException
+	 */
+	private final int readChannel(byte[] buf, int len, int pos, long fileOff)
+		throws IOException {
 
-			openFile();
-		}
-		else {
+		//	Get the file channel, open the temporary file if required
 
-			//	Check that the file descriptor is valid
+		FileChannel channel = getChannel();
 
-			checkFileDescriptor();
-		}
+		//	If the file data is being loaded then only read the data that has been written by the loader
 
-		//	Seek to the read position within the segment
+		int sts = m_info.hasStatus();
 
-		m_segment.seek(fileOff);
+		if ( sts == FileSegmentInfo.LoadWait || sts == FileSegmentInfo.Loading) {
+			long readable = m_info.getReadableLength();
+
+			if ( fileOff >= readable)
+				return 0;
+			else if ( fileOff + len > readable)
+				len = (int) (readable - fileOff);
+		}
 
 		//	Fill the user buffer
 
+		ByteBuffer bytBuf = ByteBuffer.wrap(buf, pos, len);
 		int totLen = 0;
-		int rdLen = len;
-		int bufPos = pos;
+		int rdLen = 0;
 
 		try {
 
-			while ( totLen < len && rdLen > 0) {
+			while ( totLen < len && rdLen >= 0) {
 
-				//	Read data into the user buffer
+				//	Read data into the user buffer from the current position
 
-				rdLen = m_segment.read(buf,bufPos,rdLen);
+				rdLen = channel.read(bytBuf, fileOff + totLen);
 
 				//	Update the total read length
 
-				if ( rdLen > 0) {
+				if ( rdLen > 0)
 					totLen += rdLen;
-					bufPos += rdLen;
-					rdLen = len - totLen;
-				}
+				else if ( rdLen == 0)
+					break;
 			}
 		}
 		catch (Exception ex) {
@@ -422,7 +484,8 @@ public class FileSegment {
 	}
 
 	/**
-	 * Write a block of data to the segment file
+	 * Write a block of data to the segment file. Writes within the current file length share the I/O lock with other
+	 * reads and writes, writes that extend the file are serialized.
 	 *
    * @param buf byte[]
    * @param len int
@@ -430,49 +493,57 @@ public class FileSegment {
    * @param fileOff long
    * @exception IOException
 	 */
-	public synchronized final void writeBytes(byte[] buf, int len, int pos, long fileOff)
+	public final void writeBytes(byte[] buf, int len, int pos, long fileOff)
 		throws IOException {
 
-		//	Check if the temporary file is open
-
-		if ( m_segment == null) {
-
-			//	Open the temporary file
+		m_ioLock.readLock().lock();
 
-			openFile();
+		try {
+			writeSegment(buf, len, pos, fileOff);
 		}
-		else {
-
-			//	Check that the file descriptor is valid
-
-			checkFileDescriptor();
+		finally {
+			m_ioLock.readLock().unlock();
 		}
+	}
 
-    //	We need to seek to the write position. If the write position is off the end of the file
-    //	we must null out the area between the current end of file and the write position.
-
-    long fileLen = m_segment.length();
-    long endpos  = fileOff + len;
+	/**
+	 * Write a block of data to the segment file, the caller must hold the I/O lock
+	 *
+   * @param buf byte[]
+   * @param len int
+   * @param pos int
+   * @param fileOff long
+   * @exception IOException
+	 */
+	private final void writeSegment(byte[] buf, int len, int pos, long fileOff)
+		throws IOException {
 
-		if ( fileOff > fileLen) {
+		//	Get the file channel, open the temporary file if required
 
-			//	Extend the file
+		FileChannel channel = getChannel();
 
-			m_segment.setLength(endpos);
-		}
+		//	Check if the write extends the file. A positional write past the end of file extends the file, the area
+		//	between the previous end of file and the write position reads as zeros. A zero length write sets the file
+		//	size, it is serialized with other extending writes and the length re-checked so the file is not shortened.
 
-		//	Check for a zero length write
+		long endpos  = fileOff + len;
 
-		if ( len == 0)
-			return;
+		if ( endpos > channel.size()) {
 
-		//	Seek to the write position within the segment
+			synchronized ( this) {
 
-		m_segment.seek(fileOff);
+				if ( len > 0)
+					writeChannel( channel, buf, len, pos, fileOff);
+				else if ( fileOff > channel.size())
+					m_segment.setLength(fileOff);
+			}
+		}
+		else if ( len > 0) {
 
-		//	Write data to the segment file
+			//	Write within the current file length
 
-		m_segment.write(buf,pos,len);
+			writeChannel( channel, buf, len, pos, fileOff);
+		}
 
 		//	Update the file segment status to indicate the data has been updated
 
@@ -480,6 +551,26 @@ public class FileSegment {
 			m_info.setUpdated(true);
 	}
 
+	/**
+	 * Write data to the file channel at the specified position
+	 *
+	 * @param channel FileChannel
+   * @param buf byte[]
+   * @param len int
+   * @param pos int
+   * @param fileOff long
+   * @exception IOException
+	 */
+	private final void writeChannel(FileChannel channel, byte[] buf, int len, int pos, long fileOff)
+		throws IOException {
+
+		ByteBuffer bytBuf = ByteBuffer.wrap(buf, pos, len);
+		long wrPos = fileOff;
+
+		while ( bytBuf.hasRemaining())
+			wrPos += channel.write(bytBuf, wrPos);
+	}
+
 	/**
 	 * Flush buffered output to the file
 	 *
@@ -490,26 +581,35 @@ public class FileSegment {
 
 		//	If the file is open flush all buffered output
 
-		if ( m_segment != null)
-			m_segment.getFD().sync();
+		FileChannel channel = m_channel;
+		if ( channel != null)
+			channel.force(false);
 	}
 
 	/**
-	 * Truncate the file to the specified size
+	 * Truncate the file to the specified size, active reads and writes complete before the file is truncated
 	 *
 	 * @param siz long
 	 */
 	public final void truncate(long siz)
 		throws IOException {
 
-		//	Check if the temporary file is open
+		m_ioLock.writeLock().lock();
 
-		if ( m_segment == null)
-			openFile();
+		try {
+
+			//	Open the temporary file if required, and set the file size
 
-		//	Set the temporary file size
+			synchronized ( this) {
+				if ( m_segment == null)
+					openFile();
 
-		m_segment.setLength(siz);
+				m_segment.setLength(siz);
+			}
+		}
+		finally {
+			m_ioLock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -603,7 +703,56 @@ public class FileSegment {
 	}
 
 	/**
-	 * Check if the file descriptor is valid
+	 * Return the file channel for the temporary file, open the temporary file if required
+	 *
+	 * @return FileChannel
+	 * @exception IOException
+	 */
+	private final FileChannel getChannel()
+		throws IOException {
+
+		//	Use the open channel without locking the segment
+
+		FileChannel channel = m_channel;
+		if ( channel != null && channel.isOpen())
+			return channel;
+
+		//	Open, or re-open, the temporary file
+
+		return openChannel();
+	}
+
+	/**
+	 * Open the temporary file, or re-open the file if the file channel has been closed
+	 *
+	 * @return FileChannel
+	 * @exception IOException
+	 */
+	private final synchronized FileChannel openChannel()
+		throws IOException {
+
+		//	Check if the temporary file is open
+
+		if ( m_segment == null) {
+
+			//	Open the temporary file
+
+			openFile();
+		}
+		else {
+
+			//	Check that the file descriptor is valid
+
+			checkFileDescriptor();
+		}
+
+		//	Return the file channel
+
+		return m_channel;
+	}
+
+	/**
+	 * Check if the file descriptor is valid. Must be called whilst holding the segment lock.
 	 *
 	 * @exception IOException
 	 */
@@ -614,14 +763,15 @@ public class FileSegment {
 
 		if ( m_segment != null) {
 
-			//	Check if the file descriptor is valid
+			//	Check if the file descriptor is valid, the channel will have been closed if a thread was interrupted
+			//	during an I/O
 
-			if ( m_segment.getFD() != null && m_segment.getFD().valid() == false) {
+			if (( m_segment.getFD() != null && m_segment.getFD().valid() == false) || m_channel.isOpen() == false) {
 
 				//	Close the file
 
 				try {
-					closeFile();
+					closeSegment();
 				}
 				catch (Exception ex) {
 				}
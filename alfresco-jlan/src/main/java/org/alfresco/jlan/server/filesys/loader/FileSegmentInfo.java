@@ -70,7 +70,7 @@ public class FileSegmentInfo {
 
 	//  Amount of valid data in the file, used to allow reads during data loading
 
-	private long m_readable;
+	private volatile long m_readable;
 
 	/**
 	 * Default constructor
@@ -212,6 +212,12 @@ public class FileSegmentInfo {
 	 */
 	public synchronized final void setStatus(int sts) {
 		m_status = sts;
+
+		//	Reset the readable length if the file data is to be reloaded
+
+		if ( sts == Initial)
+			m_readable = 0L;
+
 		notifyAll();
 	}
 
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.filesys.quota;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.jlan.util.MemorySize;
+
+/**
+ * Quota Counter Class
+ *
+ * <p>Tracks the space used against a quota limit, for a share, user or folder. Space is reserved and released
+ * using compare-and-set updates so that concurrent writers do not serialize on a lock.
+ *
+ * @author gkspencer
+ */
+public class QuotaCounter {
+
+	//	Unlimited quota
+
+	public static final long Unlimited	= 0L;
+
+	//	Counter name
+
+	private String m_name;
+
+	//	Quota limit, in bytes, or zero for no limit
+
+	private long m_limit;
+
+	//	Space used, in bytes
+
+	private AtomicLong m_used = new AtomicLong();
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 * @param limit long
+	 */
+	public QuotaCounter(String name, long limit) {
+		m_name = name;
+		m_limit = limit;
+	}
+
+	/**
+	 * Return the counter name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Check if the counter has a quota limit
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasLimit() {
+		return m_limit != Unlimited ? true : false;
+	}
+
+	/**
+	 * Return the quota limit, in bytes
+	 *
+	 * @return long
+	 */
+	public final long getLimit() {
+		return m_limit;
+	}
+
+	/**
+	 * Return the used space, in bytes
+	 *
+	 * @return long
+	 */
+	public final long getUsed() {
+		return m_used.get();
+	}
+
+	/**
+	 * Return the free space, in bytes, or Long.MAX_VALUE if the counter has no limit
+	 *
+	 * @return long
+	 */
+	public final long getFree() {
+		if ( hasLimit() == false)
+			return Long.MAX_VALUE;
+
+		long free = m_limit - m_used.get();
+		return free > 0L ? free : 0L;
+	}
+
+	/**
+	 * Reserve space against the quota limit
+	 *
+	 * @param alloc long
+	 * @return boolean true if the space was reserved, false if the quota limit would be exceeded
+	 */
+	public final boolean reserve(long alloc) {
+
+		// Update the used space, unless the limit would be exceeded
+
+		while ( true) {
+			long used = m_used.get();
+
+			if ( hasLimit() && used + alloc > m_limit)
+				return false;
+
+			if ( m_used.compareAndSet(used, used + alloc))
+				return true;
+		}
+	}
+
+	/**
+	 * Release space back to the quota, the used space does not go below zero
+	 *
+	 * @param alloc long
+	 */
+	public final void release(long alloc) {
+
+		// Update the used space
+
+		while ( true) {
+			long used = m_used.get();
+			long newUsed = used - alloc;
+
+			if ( newUsed < 0L)
+				newUsed = 0L;
+
+			if ( m_used.compareAndSet(used, newUsed))
+				return;
+		}
+	}
+
+	/**
+	 * Set the used space
+	 *
+	 * @param used long
+	 */
+	public final void setUsed(long used) {
+		m_used.set(used);
+	}
+
+	/**
+	 * Set the quota limit
+	 *
+	 * @param limit long
+	 */
+	public final void setLimit(long limit) {
+		m_limit = limit;
+	}
+
+	/**
+	 * Return the quota counter as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[");
+		str.append(getName());
+		str.append(",used=");
+		str.append(MemorySize.asScaledString(getUsed()));
+		str.append(",limit=");
+		str.append(hasLimit() ? MemorySize.asScaledString(getLimit()) : "Unlimited");
+		str.append("]");
+
+		return str.toString();
+	}
+}
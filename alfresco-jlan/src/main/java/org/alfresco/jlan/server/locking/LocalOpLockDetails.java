@@ -30,6 +30,7 @@ import org.alfresco.jlan.smb.PacketType;
 import org.alfresco.jlan.smb.SMBStatus;
 import org.alfresco.jlan.smb.server.CIFSPacketPool;
 import org.alfresco.jlan.smb.server.CIFSThreadRequest;
+import org.alfresco.jlan.smb.server.OpLockBreakDispatcher;
 import org.alfresco.jlan.smb.server.SMBSrvPacket;
 import org.alfresco.jlan.smb.server.SMBSrvSession;
 
@@ -499,9 +500,19 @@ public class LocalOpLockDetails extends OpLockDetailsAdapter {
 
 		opBreakPkt.setRequestPacket( true);
 
-		// Send the oplock break to the session that owns the oplock
+		// Send the oplock break to the session that owns the oplock, via the oplock break dispatcher so that
+		// multiple breaks to the same session are batched
 
-		boolean breakSent = getOwnerSession().sendAsynchResponseSMB( opBreakPkt, opBreakPkt.getLength());
+		boolean breakSent = false;
+		OpLockBreakDispatcher dispatcher = null;
+
+		if ( getOwnerSession().getSMBServer() != null)
+			dispatcher = getOwnerSession().getSMBServer().getOpLockBreakDispatcher();
+
+		if ( dispatcher != null)
+			breakSent = dispatcher.queueBreak( getOwnerSession(), opBreakPkt);
+		else
+			breakSent = getOwnerSession().sendAsynchResponseSMB( opBreakPkt, opBreakPkt.getLength());
 
 		// Set the time the oplock break was sent
 
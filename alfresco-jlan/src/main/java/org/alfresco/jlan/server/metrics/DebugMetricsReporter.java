@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.metrics;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.jlan.debug.Debug;
+
+/**
+ * Debug Metrics Reporter Class
+ *
+ * <p>Outputs the server metrics to the debug output device. Only timers and counters that have been updated are
+ * output, gauges are always output.
+ *
+ * @author gkspencer
+ */
+public class DebugMetricsReporter implements MetricsReporter {
+
+	/**
+	 * Report the current metrics values
+	 *
+	 * @param registry MetricsRegistry
+	 */
+	public void reportMetrics(MetricsRegistry registry) {
+
+		// Output the operation timers
+
+		List<LatencyHistogram> timers = registry.getTimers();
+
+		Map<String, Long> gauges = registry.getGauges();
+
+		Debug.println("[Metrics] Timers=" + timers.size() + ", Counters=" + registry.getCounters().size() + ", Gauges=" + gauges.size());
+
+		for ( LatencyHistogram timer : timers) {
+			if ( timer.getCount() > 0L)
+				Debug.println("[Metrics]  " + timer);
+		}
+
+		// Output the counters
+
+		Iterator<Map.Entry<String, Long>> iter = registry.getCounters().entrySet().iterator();
+
+		while ( iter.hasNext()) {
+			Map.Entry<String, Long> counter = iter.next();
+			if ( counter.getValue().longValue() != 0L)
+				Debug.println("[Metrics]  [" + counter.getKey() + " count=" + counter.getValue() + "]");
+		}
+
+		// Output the gauges
+
+		iter = gauges.entrySet().iterator();
+
+		while ( iter.hasNext()) {
+			Map.Entry<String, Long> gauge = iter.next();
+			Debug.println("[Metrics]  [" + gauge.getKey() + " value=" + gauge.getValue() + "]");
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency Histogram Class
+ *
+ * <p>Records operation latencies, in microseconds, using log-linear buckets. Each power of two range is split into
+ * sixteen linear sub-buckets so that recorded values, and the percentiles calculated from them, are accurate to
+ * within approximately 6%. All updates use atomic operations so that recording a value does not lock.
+ *
+ * @author gkspencer
+ */
+public class LatencyHistogram {
+
+	//	Number of sub-buckets per power of two, as a bit count and value
+
+	private static final int SubBucketBits	= 4;
+	private static final int SubBucketCount	= 1 << SubBucketBits;
+
+	//	Highest power of two tracked, larger values are recorded in the last bucket
+
+	private static final int MaximumMagnitude	= 40;
+
+	//	Total number of buckets
+
+	private static final int BucketCount	= (MaximumMagnitude - SubBucketBits + 2) * SubBucketCount;
+
+	//	Histogram name
+
+	private String m_name;
+
+	//	Bucket counts
+
+	private AtomicLongArray m_buckets = new AtomicLongArray(BucketCount);
+
+	//	Total count, total time and maximum recorded time, in microseconds
+
+	private AtomicLong m_count = new AtomicLong();
+	private AtomicLong m_total = new AtomicLong();
+	private AtomicLong m_max = new AtomicLong();
+
+	/**
+	 * Class constructor
+	 *
+	 * @param name String
+	 */
+	public LatencyHistogram(String name) {
+		m_name = name;
+	}
+
+	/**
+	 * Return the histogram name
+	 *
+	 * @return String
+	 */
+	public final String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Return the number of recorded values
+	 *
+	 * @return long
+	 */
+	public final long getCount() {
+		return m_count.get();
+	}
+
+	/**
+	 * Return the maximum recorded value, in microseconds
+	 *
+	 * @return long
+	 */
+	public final long getMaximum() {
+		return m_max.get();
+	}
+
+	/**
+	 * Return the mean recorded value, in microseconds
+	 *
+	 * @return long
+	 */
+	public final long getMean() {
+		long cnt = m_count.get();
+		if ( cnt == 0L)
+			return 0L;
+		return m_total.get() / cnt;
+	}
+
+	/**
+	 * Record an operation time
+	 *
+	 * @param nanos long
+	 */
+	public final void recordNanos(long nanos) {
+		recordMicros(nanos / 1000L);
+	}
+
+	/**
+	 * Record an operation time
+	 *
+	 * @param micros long
+	 */
+	public final void recordMicros(long micros) {
+
+		// Ignore negative times, the clock may have been adjusted
+
+		if ( micros < 0L)
+			return;
+
+		// Update the bucket, count and total
+
+		m_buckets.incrementAndGet(getBucketIndex(micros));
+		m_count.incrementAndGet();
+		m_total.addAndGet(micros);
+
+		// Update the maximum value
+
+		long curMax = m_max.get();
+		while ( micros > curMax && m_max.compareAndSet(curMax, micros) == false)
+			curMax = m_max.get();
+	}
+
+	/**
+	 * Return the value at the specified percentile, in microseconds
+	 *
+	 * @param pct double
+	 * @return long
+	 */
+	public final long getPercentile(double pct) {
+
+		// Take a copy of the bucket counts, values may be recorded whilst the percentile is calculated
+
+		long[] counts = new long[BucketCount];
+		long total = 0L;
+
+		for ( int idx = 0; idx < BucketCount; idx++) {
+			counts[idx] = m_buckets.get(idx);
+			total += counts[idx];
+		}
+
+		if ( total == 0L)
+			return 0L;
+
+		// Find the bucket containing the required percentile
+
+		long target = (long) Math.ceil((pct / 100.0) * total);
+		if ( target < 1L)
+			target = 1L;
+
+		long runTotal = 0L;
+
+		for ( int idx = 0; idx < BucketCount; idx++) {
+			runTotal += counts[idx];
+			if ( runTotal >= target)
+				return Math.min(getBucketValue(idx), m_max.get());
+		}
+
+		// Should not get here
+
+		return m_max.get();
+	}
+
+	/**
+	 * Reset the histogram
+	 */
+	public final void reset() {
+		for ( int idx = 0; idx < BucketCount; idx++)
+			m_buckets.set(idx, 0L);
+
+		m_count.set(0L);
+		m_total.set(0L);
+		m_max.set(0L);
+	}
+
+	/**
+	 * Return the bucket index for a value
+	 *
+	 * @param val long
+	 * @return int
+	 */
+	private static final int getBucketIndex(long val) {
+
+		// Small values map directly to a bucket
+
+		if ( val < SubBucketCount)
+			return (int) val;
+
+		// Calculate the power of two and the linear sub-bucket within that range
+
+		int mag = 63 - Long.numberOfLeadingZeros(val);
+		if ( mag > MaximumMagnitude)
+			return BucketCount - 1;
+
+		int subIdx = (int) ((val >>> (mag - SubBucketBits)) & (SubBucketCount - 1));
+		return (mag - SubBucketBits + 1) * SubBucketCount + subIdx;
+	}
+
+	/**
+	 * Return the value represented by a bucket, the highest value that maps to the bucket
+	 *
+	 * @param idx int
+	 * @return long
+	 */
+	private static final long getBucketValue(int idx) {
+
+		// Small values map directly to a bucket
+
+		if ( idx < SubBucketCount)
+			return idx;
+
+		// Calculate the bucket range
+
+		int mag = (idx / SubBucketCount) + SubBucketBits - 1;
+		int subIdx = idx % SubBucketCount;
+		int shift = mag - SubBucketBits;
+
+		long lowVal = ((long) (SubBucketCount + subIdx)) << shift;
+		return lowVal + (1L << shift) - 1L;
+	}
+
+	/**
+	 * Return the histogram details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[");
+		str.append(getName());
+		str.append(" count=");
+		str.append(getCount());
+		str.append(",mean=");
+		str.append(getMean());
+		str.append("us,p50=");
+		str.append(getPercentile(50.0));
+		str.append("us,p90=");
+		str.append(getPercentile(90.0));
+		str.append("us,p99=");
+		str.append(getPercentile(99.0));
+		str.append("us,max=");
+		str.append(getMaximum());
+		str.append("us]");
+
+		return str.toString();
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Metrics MBean Adapter Class
+ *
+ * <p>Exports the metrics registry via JMX. Each timer is exported as a set of read-only attributes named
+ * <i>timer</i>.count, .mean, .p50, .p90, .p99 and .max, with the times in microseconds. Each counter and gauge is
+ * exported as a read-only attribute using the counter or gauge name. The attribute list is rebuilt each time the MBean information is
+ * requested as timers are created on first use.
+ *
+ * @author gkspencer
+ */
+public class MetricsMBeanAdapter implements DynamicMBean {
+
+	//	Timer attribute suffixes
+
+	private static final String[] _timerAttrs = { "count", "mean", "p50", "p90", "p99", "max" };
+
+	//	Reset operation name
+
+	private static final String OpReset	= "reset";
+
+	//	Metrics registry
+
+	private MetricsRegistry m_registry;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param registry MetricsRegistry
+	 */
+	public MetricsMBeanAdapter(MetricsRegistry registry) {
+		m_registry = registry;
+	}
+
+	/**
+	 * Return the value of an attribute
+	 *
+	 * @param attrName String
+	 * @return Object
+	 * @exception AttributeNotFoundException
+	 * @exception MBeanException
+	 * @exception ReflectionException
+	 */
+	public Object getAttribute(String attrName)
+		throws AttributeNotFoundException, MBeanException, ReflectionException {
+
+		// Check for a counter
+
+		Long cntVal = m_registry.getCounters().get(attrName);
+		if ( cntVal != null)
+			return cntVal;
+
+		// Check for a gauge
+
+		Long gaugeVal = m_registry.getGauges().get(attrName);
+		if ( gaugeVal != null)
+			return gaugeVal;
+
+		// Split the timer name and value type
+
+		int pos = attrName.lastIndexOf('.');
+		if ( pos != -1) {
+
+			// Find the timer
+
+			String timerName = attrName.substring(0, pos);
+			String valType = attrName.substring(pos + 1);
+
+			LatencyHistogram timer = m_registry.findTimer(timerName);
+
+			if ( timer != null) {
+
+				// Return the required value
+
+				if ( valType.equals("count"))
+					return Long.valueOf(timer.getCount());
+				else if ( valType.equals("mean"))
+					return Long.valueOf(timer.getMean());
+				else if ( valType.equals("p50"))
+					return Long.valueOf(timer.getPercentile(50.0));
+				else if ( valType.equals("p90"))
+					return Long.valueOf(timer.getPercentile(90.0));
+				else if ( valType.equals("p99"))
+					return Long.valueOf(timer.getPercentile(99.0));
+				else if ( valType.equals("max"))
+					return Long.valueOf(timer.getMaximum());
+			}
+		}
+
+		// Unknown attribute
+
+		throw new AttributeNotFoundException(attrName);
+	}
+
+	/**
+	 * Return the values of a list of attributes
+	 *
+	 * @param attrNames String[]
+	 * @return AttributeList
+	 */
+	public AttributeList getAttributes(String[] attrNames) {
+
+		AttributeList attrList = new AttributeList();
+
+		for ( int idx = 0; idx < attrNames.length; idx++) {
+			try {
+				attrList.add(new Attribute(attrNames[idx], getAttribute(attrNames[idx])));
+			}
+			catch (Exception ex) {
+			}
+		}
+
+		return attrList;
+	}
+
+	/**
+	 * Set an attribute value, all attributes are read-only
+	 *
+	 * @param attr Attribute
+	 * @exception AttributeNotFoundException
+	 */
+	public void setAttribute(Attribute attr)
+		throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Attribute is read-only, " + attr.getName());
+	}
+
+	/**
+	 * Set a list of attribute values, all attributes are read-only
+	 *
+	 * @param attrs AttributeList
+	 * @return AttributeList
+	 */
+	public AttributeList setAttributes(AttributeList attrs) {
+		return new AttributeList();
+	}
+
+	/**
+	 * Invoke an operation
+	 *
+	 * @param opName String
+	 * @param params Object[]
+	 * @param signature String[]
+	 * @return Object
+	 * @exception MBeanException
+	 * @exception ReflectionException
+	 */
+	public Object invoke(String opName, Object[] params, String[] signature)
+		throws MBeanException, ReflectionException {
+
+		// Check for the reset operation
+
+		if ( opName.equals(OpReset)) {
+			m_registry.resetMetrics();
+			return null;
+		}
+
+		// Unknown operation
+
+		throw new ReflectionException(new NoSuchMethodException(opName));
+	}
+
+	/**
+	 * Return the MBean information
+	 *
+	 * @return MBeanInfo
+	 */
+	public MBeanInfo getMBeanInfo() {
+
+		// Build the attribute list for the current timers, counters and gauges
+
+		List<MBeanAttributeInfo> attrList = new ArrayList<MBeanAttributeInfo>();
+
+		for ( LatencyHistogram timer : m_registry.getTimers()) {
+			for ( int idx = 0; idx < _timerAttrs.length; idx++)
+				attrList.add(new MBeanAttributeInfo(timer.getName() + "." + _timerAttrs[idx], "java.lang.Long",
+						idx == 0 ? "Operation count" : "Operation time, in microseconds", true, false, false));
+		}
+
+		Iterator<Map.Entry<String, Long>> iter = m_registry.getCounters().entrySet().iterator();
+		while ( iter.hasNext())
+			attrList.add(new MBeanAttributeInfo(iter.next().getKey(), "java.lang.Long", "Counter", true, false, false));
+
+		iter = m_registry.getGauges().entrySet().iterator();
+		while ( iter.hasNext())
+			attrList.add(new MBeanAttributeInfo(iter.next().getKey(), "java.lang.Long", "Gauge", true, false, false));
+
+		// Build the operation list
+
+		MBeanOperationInfo[] ops = new MBeanOperationInfo[1];
+		ops[0] = new MBeanOperationInfo(OpReset, "Reset all timers and counters", new MBeanParameterInfo[0], "void",
+				MBeanOperationInfo.ACTION);
+
+		// Return the MBean details
+
+		return new MBeanInfo(getClass().getName(), "JLAN server metrics", attrList.toArray(new MBeanAttributeInfo[attrList.size()]),
+				null, ops, null);
+	}
+}
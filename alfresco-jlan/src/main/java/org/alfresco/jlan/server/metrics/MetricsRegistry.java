@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.server.thread.TimedThreadRequest;
+
+/**
+ * Metrics Registry Class
+ *
+ * <p>Server wide registry of operation latency timers, event counters and gauges. Timers are grouped, for example by
+ * protocol or by protocol and share name, and are created on first use. Gauges return values, such as queue depths,
+ * that are owned by other server components. Lookups and updates do not lock so the
+ * registry may be used on the request processing path.
+ *
+ * <p>The metrics may be exported via JMX and output to one or more reporters at a regular interval.
+ *
+ * @author gkspencer
+ */
+public class MetricsRegistry {
+
+	//	Standard timer groups
+
+	public static final String GroupSMB		= "smb";
+	public static final String GroupNFS		= "nfs";
+	public static final String GroupFTP		= "ftp";
+
+	//	Default JMX object name
+
+	public static final String DefaultObjectName	= "org.alfresco.jlan:type=Metrics";
+
+	//	Default, minimum and maximum report interval, in seconds
+
+	public static final long DefaultReportInterval	= 300L;
+	public static final long MinimumReportInterval	= 10L;
+	public static final long MaximumReportInterval	= 86400L;
+
+	//	Timers, indexed by group and then name
+
+	private ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>> m_timers;
+
+	//	Counters
+
+	private ConcurrentHashMap<String, AtomicLong> m_counters;
+
+	//	Gauges
+
+	private ConcurrentHashMap<String, MetricsGauge> m_gauges;
+
+	//	Metrics reporters, and the timed request used to run the reporters
+
+	private List<MetricsReporter> m_reporters;
+	private ReportTimedRequest m_reportRequest;
+	private ThreadRequestPool m_threadPool;
+
+	//	JMX object name, if registered
+
+	private ObjectName m_objName;
+
+	/**
+	 * Metrics Report Timed Thread Request Class
+	 */
+	private class ReportTimedRequest extends TimedThreadRequest {
+
+		/**
+		 * Constructor
+		 *
+		 * @param interval long
+		 */
+		public ReportTimedRequest(long interval) {
+			super( "MetricsReport", System.currentTimeMillis() + (interval * 1000L), interval);
+		}
+
+		/**
+		 * Run the metrics reporters
+		 */
+		protected void runTimedRequest() {
+			runReporters();
+		}
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public MetricsRegistry() {
+		m_timers = new ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>>();
+		m_counters = new ConcurrentHashMap<String, AtomicLong>();
+		m_gauges = new ConcurrentHashMap<String, MetricsGauge>();
+		m_reporters = new CopyOnWriteArrayList<MetricsReporter>();
+	}
+
+	/**
+	 * Return the timer for the specified group and name, create the timer if it does not exist
+	 *
+	 * @param group String
+	 * @param name String
+	 * @return LatencyHistogram
+	 */
+	public final LatencyHistogram getTimer(String group, String name) {
+
+		// Find the timer group
+
+		ConcurrentHashMap<String, LatencyHistogram> groupMap = m_timers.get(group);
+
+		if ( groupMap == null) {
+
+			// Create the timer group
+
+			groupMap = new ConcurrentHashMap<String, LatencyHistogram>();
+			ConcurrentHashMap<String, LatencyHistogram> curMap = m_timers.putIfAbsent(group, groupMap);
+			if ( curMap != null)
+				groupMap = curMap;
+		}
+
+		// Find the timer
+
+		LatencyHistogram timer = groupMap.get(name);
+
+		if ( timer == null) {
+
+			// Create the timer
+
+			timer = new LatencyHistogram(group + "." + name);
+			LatencyHistogram curTimer = groupMap.putIfAbsent(name, timer);
+			if ( curTimer != null)
+				timer = curTimer;
+		}
+
+		// Return the timer
+
+		return timer;
+	}
+
+	/**
+	 * Find an existing timer using the full timer name, in the format group.name
+	 *
+	 * @param fullName String
+	 * @return LatencyHistogram, or null if the timer does not exist
+	 */
+	public final LatencyHistogram findTimer(String fullName) {
+
+		// The group name may contain dots, check each possible group/name split
+
+		int pos = fullName.indexOf('.');
+
+		while ( pos != -1) {
+
+			// Check for the timer group, and timer
+
+			ConcurrentHashMap<String, LatencyHistogram> groupMap = m_timers.get(fullName.substring(0, pos));
+			if ( groupMap != null) {
+				LatencyHistogram timer = groupMap.get(fullName.substring(pos + 1));
+				if ( timer != null)
+					return timer;
+			}
+
+			pos = fullName.indexOf('.', pos + 1);
+		}
+
+		// Timer not found
+
+		return null;
+	}
+
+	/**
+	 * Record an operation time
+	 *
+	 * @param group String
+	 * @param name String
+	 * @param nanos long
+	 */
+	public final void recordTime(String group, String name, long nanos) {
+		getTimer(group, name).recordNanos(nanos);
+	}
+
+	/**
+	 * Return the counter with the specified name, create the counter if it does not exist
+	 *
+	 * @param name String
+	 * @return AtomicLong
+	 */
+	public final AtomicLong getCounter(String name) {
+
+		// Find the counter
+
+		AtomicLong counter = m_counters.get(name);
+
+		if ( counter == null) {
+
+			// Create the counter
+
+			counter = new AtomicLong();
+			AtomicLong curCounter = m_counters.putIfAbsent(name, counter);
+			if ( curCounter != null)
+				counter = curCounter;
+		}
+
+		// Return the counter
+
+		return counter;
+	}
+
+	/**
+	 * Increment a counter
+	 *
+	 * @param name String
+	 * @return long
+	 */
+	public final long incrementCounter(String name) {
+		return getCounter(name).incrementAndGet();
+	}
+
+	/**
+	 * Add a value to a counter
+	 *
+	 * @param name String
+	 * @param val long
+	 * @return long
+	 */
+	public final long addToCounter(String name, long val) {
+		return getCounter(name).addAndGet(val);
+	}
+
+	/**
+	 * Return the list of timers, sorted by name
+	 *
+	 * @return List<LatencyHistogram>
+	 */
+	public final List<LatencyHistogram> getTimers() {
+
+		// Build the list of timers
+
+		List<LatencyHistogram> timers = new ArrayList<LatencyHistogram>();
+		Iterator<ConcurrentHashMap<String, LatencyHistogram>> iter = m_timers.values().iterator();
+
+		while ( iter.hasNext())
+			timers.addAll(iter.next().values());
+
+		// Sort the list by timer name
+
+		Collections.sort(timers, new Comparator<LatencyHistogram>() {
+			public int compare(LatencyHistogram t1, LatencyHistogram t2) {
+				return t1.getName().compareTo(t2.getName());
+			}
+		});
+
+		return timers;
+	}
+
+	/**
+	 * Return a snapshot of the counter values, sorted by name
+	 *
+	 * @return Map<String, Long>
+	 */
+	public final Map<String, Long> getCounters() {
+
+		Map<String, Long> counters = new TreeMap<String, Long>();
+		Iterator<Map.Entry<String, AtomicLong>> iter = m_counters.entrySet().iterator();
+
+		while ( iter.hasNext()) {
+			Map.Entry<String, AtomicLong> counter = iter.next();
+			counters.put(counter.getKey(), Long.valueOf(counter.getValue().get()));
+		}
+
+		return counters;
+	}
+
+	/**
+	 * Add a gauge, replaces any existing gauge with the same name
+	 *
+	 * @param name String
+	 * @param gauge MetricsGauge
+	 */
+	public final void addGauge(String name, MetricsGauge gauge) {
+		m_gauges.put(name, gauge);
+	}
+
+	/**
+	 * Remove a gauge
+	 *
+	 * @param name String
+	 */
+	public final void removeGauge(String name) {
+		m_gauges.remove(name);
+	}
+
+	/**
+	 * Return a snapshot of the gauge values, sorted by name
+	 *
+	 * @return Map<String, Long>
+	 */
+	public final Map<String, Long> getGauges() {
+
+		Map<String, Long> gauges = new TreeMap<String, Long>();
+		Iterator<Map.Entry<String, MetricsGauge>> iter = m_gauges.entrySet().iterator();
+
+		while ( iter.hasNext()) {
+			Map.Entry<String, MetricsGauge> gauge = iter.next();
+			gauges.put(gauge.getKey(), Long.valueOf(gauge.getValue().getValue()));
+		}
+
+		return gauges;
+	}
+
+	/**
+	 * Reset all timers and counters, gauges are not reset
+	 */
+	public final void resetMetrics() {
+
+		// Reset the timers
+
+		Iterator<ConcurrentHashMap<String, LatencyHistogram>> iter = m_timers.values().iterator();
+
+		while ( iter.hasNext()) {
+			Iterator<LatencyHistogram> timerIter = iter.next().values().iterator();
+			while ( timerIter.hasNext())
+				timerIter.next().reset();
+		}
+
+		// Reset the counters
+
+		Iterator<AtomicLong> cntIter = m_counters.values().iterator();
+		while ( cntIter.hasNext())
+			cntIter.next().set(0L);
+	}
+
+	/**
+	 * Add a metrics reporter
+	 *
+	 * @param reporter MetricsReporter
+	 */
+	public final void addReporter(MetricsReporter reporter) {
+		m_reporters.add(reporter);
+	}
+
+	/**
+	 * Return the number of metrics reporters
+	 *
+	 * @return int
+	 */
+	public final int numberOfReporters() {
+		return m_reporters.size();
+	}
+
+	/**
+	 * Run the metrics reporters
+	 */
+	public final void runReporters() {
+		for ( MetricsReporter reporter : m_reporters) {
+			try {
+				reporter.reportMetrics(this);
+			}
+			catch (Exception ex) {
+
+				// DEBUG
+
+				if ( Debug.EnableError)
+					Debug.println("[Metrics] Reporter " + reporter.getClass().getName() + " error, " + ex.toString());
+			}
+		}
+	}
+
+	/**
+	 * Start running the metrics reporters at the specified interval
+	 *
+	 * @param threadPool ThreadRequestPool
+	 * @param interval long
+	 */
+	public final synchronized void startReporting(ThreadRequestPool threadPool, long interval) {
+
+		// Check if reporting is already running
+
+		if ( m_reportRequest != null || m_reporters.size() == 0)
+			return;
+
+		// Queue the timed report request
+
+		m_threadPool = threadPool;
+		m_reportRequest = new ReportTimedRequest(interval);
+
+		m_threadPool.queueTimedRequest(m_reportRequest);
+	}
+
+	/**
+	 * Stop running the metrics reporters
+	 */
+	public final synchronized void stopReporting() {
+
+		// Remove the timed report request
+
+		if ( m_reportRequest != null) {
+			m_threadPool.removeTimedRequest(m_reportRequest);
+			m_reportRequest = null;
+		}
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server
+	 *
+	 * @param objName String
+	 * @exception Exception
+	 */
+	public final synchronized void registerMBean(String objName)
+		throws Exception {
+
+		// Check if the metrics are already registered
+
+		if ( m_objName != null)
+			return;
+
+		// Register the metrics MBean
+
+		ObjectName name = new ObjectName(objName);
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+		mbeanServer.registerMBean(new MetricsMBeanAdapter(this), name);
+		m_objName = name;
+	}
+
+	/**
+	 * Unregister the metrics from the platform MBean server
+	 */
+	public final synchronized void unregisterMBean() {
+
+		// Check if the metrics are registered
+
+		if ( m_objName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_objName);
+		}
+		catch (Exception ex) {
+
+			// DEBUG
+
+			if ( Debug.EnableError)
+				Debug.println("[Metrics] Failed to unregister MBean " + m_objName + ", " + ex.toString());
+		}
+
+		m_objName = null;
+	}
+
+	/**
+	 * Close the metrics registry, stop the reporters and unregister from JMX
+	 */
+	public final void closeRegistry() {
+
+		// Run a final report, and stop the timed reports
+
+		if ( m_reportRequest != null) {
+			stopReporting();
+			runReporters();
+		}
+
+		// Unregister the MBean
+
+		unregisterMBean();
+	}
+}
@@ -156,6 +156,12 @@ public class CIFSConfigSection extends ConfigSection {
 
   private int m_virtualCircuitLimit = VirtualCircuitList.DefMaxCircuits;
 
+  // Session setup authentication thread pool size, zero to authenticate using the CIFS worker threads, and the
+  // maximum queued session setup requests
+
+  private int m_authThreads = SessionSetupDispatcher.DefaultAuthThreads;
+  private int m_authMaxQueued = SessionSetupDispatcher.DefaultMaxQueued;
+
   //--------------------------------------------------------------------------------
   //  Win32 NetBIOS configuration
   //
@@ -634,6 +640,24 @@ public class CIFSConfigSection extends ConfigSection {
 	  return m_virtualCircuitLimit;
   }
 
+  /**
+   * Return the session setup authentication thread pool size, zero if authentication uses the CIFS worker threads
+   *
+   * @return int
+   */
+  public final int getAuthenticationThreads() {
+	  return m_authThreads;
+  }
+
+  /**
+   * Return the maximum number of session setup requests queued for the authentication threads
+   *
+   * @return int
+   */
+  public final int getAuthenticationQueueLimit() {
+	  return m_authMaxQueued;
+  }
+
   /**
    * Check if native code calls are disabled
    *
@@ -1524,6 +1548,28 @@ public class CIFSConfigSection extends ConfigSection {
 	  return sts;
   }
 
+  /**
+   * Set the session setup authentication thread pool size and queue limit
+   *
+   * @param authThreads int
+   * @param maxQueued int
+   * @return int
+   * @exception InvalidConfigurationException
+   */
+  public final int setAuthenticationThreads(int authThreads, int maxQueued)
+  	throws InvalidConfigurationException {
+
+	  //  Inform listeners, validate the configuration change
+
+	  int sts = fireConfigurationChange(ConfigId.SMBAuthThreads, new Integer(authThreads));
+	  m_authThreads = authThreads;
+	  m_authMaxQueued = maxQueued;
+
+	  //  Return the change status
+
+	  return sts;
+  }
+
   /**
    * Close the configuration section
    */
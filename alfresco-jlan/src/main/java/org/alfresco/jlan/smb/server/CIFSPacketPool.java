@@ -388,6 +388,17 @@ public class CIFSPacketPool {
 		return m_maxOverSize;
 	}
 
+	/**
+	 * Return the size of the largest packet that can be allocated, from the pool or as an over sized packet
+	 *
+	 * @return int
+	 */
+	public final int getMaximumPacketSize() {
+		if ( allowsOverSizedAllocations() && getMaximumOverSizedAllocation() > getLargestSize())
+			return getMaximumOverSizedAllocation();
+		return getLargestSize();
+	}
+
 	/**
 	 * Enable/disable debug output
 	 *
@@ -78,6 +78,7 @@ import org.alfresco.jlan.server.locking.LockManager;
 import org.alfresco.jlan.server.locking.OpLockDetails;
 import org.alfresco.jlan.server.locking.OpLockInterface;
 import org.alfresco.jlan.server.locking.OpLockManager;
+import org.alfresco.jlan.smb.Capability;
 import org.alfresco.jlan.smb.DataType;
 import org.alfresco.jlan.smb.FileInfoLevel;
 import org.alfresco.jlan.smb.FindFirstNext;
@@ -144,6 +145,12 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 
 	public static final int NTFSStreamsInfoBufsize	= 4096;	// 4K buffer
 
+	// Maximum SMB message length for the native SMB over TCP and NetBIOS session transports, used to limit
+	// large read/write requests
+
+	public static final int MaxTcpipMessageLength	= 0x00FFFFFF;
+	public static final int MaxNetBIOSMessageLength	= 0x0001FFFF;
+
 	// Security descriptor to allow Everyone access, returned by the QuerySecurityDescrptor NT
 	// transaction when NTFS streams are enabled for a virtual filesystem.
 
@@ -410,12 +417,45 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		// Call the authenticator to process the session setup
 
 		ICifsAuthenticator cifsAuthenticator = m_sess.getSMBServer().getCifsAuthenticator();
+		SessionSetupDispatcher authDispatcher = m_sess.getSMBServer().getSessionSetupDispatcher();
 
 		try {
 
-			// Process the session setup request, build the response
+			// Check if the request has completed authentication using the authentication thread pool
+
+			SessionSetupDispatcher.SessionSetupRequest authReq = m_sess.removePendingSessionSetup(smbPkt);
+
+			if ( authReq != null) {
+
+				// Check if the authenticator returned an error
+
+				if ( authReq.hasException())
+					throw authReq.getException();
+			}
+			else if ( authDispatcher != null) {
 
-			cifsAuthenticator.processSessionSetup(m_sess, smbPkt);
+				// Authentication will be done by the authentication thread pool, the request is queued back to the
+				// CIFS thread pool to send the response
+
+				if ( authDispatcher.queueSessionSetup(m_sess, smbPkt))
+					throw new DeferredPacketException("Waiting for authentication");
+
+				// The queue limit has been reached, process the session setup using this thread. The request is pending
+				// for the session whilst it is processed so a second session setup is rejected.
+
+				try {
+					cifsAuthenticator.processSessionSetup(m_sess, smbPkt);
+				}
+				finally {
+					m_sess.removePendingSessionSetup(smbPkt);
+				}
+			}
+			else {
+
+				// Process the session setup request, build the response
+
+				cifsAuthenticator.processSessionSetup(m_sess, smbPkt);
+			}
 		}
 		catch (SMBSrvException ex) {
 
@@ -2654,6 +2694,20 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 			offset += topOff << 32;
 		}
 
+		// Check for a large read, if the client negotiated large read support. The high word of the read
+		// count shares the timeout field, the all ones timeout value does not indicate a large read.
+
+		boolean largeRead = false;
+
+		if ( m_sess.hasClientCapability(Capability.LargeRead) && smbPkt.hasAndXCommand() == false) {
+			int maxCountHigh = smbPkt.getParameter(7);
+
+			if ( maxCountHigh != 0 && maxCountHigh != 0xFFFF) {
+				maxCount += maxCountHigh << 16;
+				largeRead = true;
+			}
+		}
+
 		NetworkFile netFile = conn.findFile(fid);
 
 		if ( netFile == null) {
@@ -2685,6 +2739,22 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 			dataPos = respPkt.getByteOffset();
 			dataPos = DataPacker.wordAlign(dataPos); // align the data buffer
 
+			// Limit a large read to the largest packet that can be allocated and the maximum message length
+			// for the transport
+
+			if ( largeRead) {
+				int maxLargeCount = getMaximumLargeDataLength(dataPos);
+
+				if ( maxCount > maxLargeCount) {
+					maxCount = maxLargeCount;
+
+					// Debug
+
+					if ( Debug.EnableInfo && m_sess.hasDebug(SMBSrvSession.DBG_FILEIO))
+						m_sess.debugPrintln("File Read AndX [" + netFile.getFileId() + "] Large read limited to " + maxCount);
+				}
+			}
+
 			// Check if the requested data will fit into the current packet
 
 			if ( maxCount > ( buf.length - dataPos)) {
@@ -2786,17 +2856,18 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		respPkt.setParameter(2, 0); // bytes remaining, for pipes only
 		respPkt.setParameter(3, 0); // data compaction mode
 		respPkt.setParameter(4, 0); // reserved
-		respPkt.setParameter(5, rdlen); // data length
+		respPkt.setParameter(5, rdlen & 0xFFFF); // data length
 		respPkt.setParameter(6, dataPos - RFCNetBIOSProtocol.HEADER_LEN); // offset to data
+		respPkt.setParameter(7, rdlen >> 16); // data length high, for large reads
 
 		// Clear the reserved parameters
 
-		for (int i = 7; i < 12; i++)
+		for (int i = 8; i < 12; i++)
 			respPkt.setParameter(i, 0);
 
-		// Set the byte count
+		// Set the byte count, only the low 16 bits are valid for a large read
 
-		respPkt.setByteCount((dataPos + rdlen) - smbPkt.getByteOffset());
+		respPkt.setByteCount(((dataPos + rdlen) - smbPkt.getByteOffset()) & 0xFFFF);
 
 		// Check if there is a chained command, or commands
 
@@ -2812,12 +2883,34 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		}
 		else {
 
-			// Send the normal read andX response
+			// Send the normal read andX response, the response length is calculated from the data length as the
+			// byte count does not hold the full length for a large read
 
-			m_sess.sendResponseSMB(respPkt);
+			m_sess.sendResponseSMB(respPkt, (dataPos + rdlen) - RFCNetBIOSProtocol.HEADER_LEN);
 		}
 	}
 
+	/**
+	 * Return the maximum data length for a large read or write, limited by the largest packet that can be
+	 * allocated and the maximum SMB message length for the session transport
+	 *
+	 * @param dataPos int
+	 * @return int
+	 */
+	protected final int getMaximumLargeDataLength(int dataPos) {
+
+		// Get the maximum message length for the transport
+
+		int maxMsgLen = MaxNetBIOSMessageLength;
+		if ( m_sess.getPacketHandler().isProtocol() == SMBSrvPacket.PROTOCOL_TCPIP)
+			maxMsgLen = MaxTcpipMessageLength;
+
+		// Limit to the largest packet that can be allocated
+
+		int maxPktLen = Math.min( m_sess.getPacketPool().getMaximumPacketSize(), maxMsgLen + RFCNetBIOSProtocol.HEADER_LEN);
+		return maxPktLen - dataPos;
+	}
+
 	/**
 	 * Rename a file.
 	 *
@@ -5539,12 +5632,27 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		int dataLen = smbPkt.getParameter(10);
 		int dataLenHigh = 0;
 
-		if ( smbPkt.getReceivedLength() > 0xFFFF)
-			dataLenHigh = smbPkt.getParameter(9) & 0x0001;
+		// Check for a large write, the high word of the data length is only valid if the request is
+		// larger than 64K
+
+		if ( smbPkt.getReceivedLength() > 0xFFFF) {
+			dataLenHigh = smbPkt.getParameter(9);
+
+			if ( m_sess.hasClientCapability(Capability.LargeWrite) == false)
+				dataLenHigh &= 0x0001;
+		}
 
 		if ( dataLenHigh > 0)
 			dataLen += (dataLenHigh << 16);
 
+		// Check that the write data is within the received request, the packet buffer may be larger than the
+		// request and contain data from a previous request
+
+		if ( dataLen < 0 || dataPos + dataLen > smbPkt.getReceivedLength()) {
+			m_sess.sendErrorResponseSMB( smbPkt, SMBStatus.NTInvalidParameter, SMBStatus.SRVNonSpecificError, SMBStatus.ErrSrv);
+			return;
+		}
+
 		// Check for the NT format request that has the top 32bits of the file offset
 
 		if ( smbPkt.getParameterCount() == 14) {
@@ -5660,11 +5768,11 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		smbPkt.setParameterCount(6);
 		smbPkt.setAndXCommand(0xFF);
 		smbPkt.setParameter(1, 0); // AndX offset
-		smbPkt.setParameter(2, wrtlen);
+		smbPkt.setParameter(2, wrtlen & 0xFFFF);
 		smbPkt.setParameter(3, 0xFFFF);
 
 		if ( dataLenHigh > 0) {
-			smbPkt.setParameter(4, dataLen >> 16);
+			smbPkt.setParameter(4, wrtlen >> 16);
 			smbPkt.setParameter(5, 0);
 		}
 		else {
@@ -7682,7 +7790,8 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 		// Get the maximum notifications to buffer whilst waiting for the request to be reset after
 		// a notification has been triggered
 
-		int maxQueue = 0;
+		int maxQueue = NotifyRequest.DefaultMaxQueueLength;
+		int maxBufSize = ntpkt.getMaximumParameterReturn();
 
 		// Debug
 
@@ -7701,6 +7810,7 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 			// Reset the existing request with the new multiplex id
 
 			req.setMultiplexId(mid);
+			req.setMaximumBufferSize(maxBufSize);
 			req.setCompleted(false);
 
 			// Check if there are any buffered notifications for this session
@@ -7739,6 +7849,7 @@ public class NTProtocolHandler extends CoreProtocolHandler {
 			// Create a change notification request
 
 			req = new NotifyRequest(filter, watchTree, m_sess, dir, mid, ntpkt.getTreeId(), ntpkt.getProcessId(), ntpkt.getUserId(), maxQueue);
+			req.setMaximumBufferSize(maxBufSize);
 
 			// Add the request to the pending notify change lists
 
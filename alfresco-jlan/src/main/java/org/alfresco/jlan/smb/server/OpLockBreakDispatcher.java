@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.smb.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.thread.ThreadRequest;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.server.metrics.LatencyHistogram;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+
+/**
+ * Oplock Break Dispatcher Class
+ *
+ * <p>Collects oplock break requests that are pending for each session and sends them using a single gathered
+ * write from a thread pool thread. When many oplocks owned by the same client are broken at the same time, for example
+ * by a folder rename or a cluster state change, the breaks are sent to the client as one batch.
+ *
+ * @author gkspencer
+ */
+public class OpLockBreakDispatcher {
+
+	// Thread pool used to send the batched oplock breaks
+
+	private ThreadRequestPool m_threadPool;
+
+	// Pending oplock breaks, by session
+
+	private HashMap<SMBSrvSession, PendingBreaks> m_pending = new HashMap<SMBSrvSession, PendingBreaks>();
+
+	// Statistics
+
+	private AtomicLong m_breakCount = new AtomicLong();
+	private AtomicLong m_batchCount = new AtomicLong();
+	private AtomicLong m_maxBatch   = new AtomicLong();
+	private AtomicLong m_sendErrors = new AtomicLong();
+
+	// Time from queueing an oplock break to it being sent to the client
+
+	private LatencyHistogram m_dispatchLatency;
+
+	// Debug enable
+
+	private boolean m_debug;
+
+	/**
+	 * Pending Breaks Class
+	 *
+	 * <p>Oplock break packets waiting to be sent to a session, and the time the first break was queued.
+	 */
+	private class PendingBreaks implements ThreadRequest {
+
+		// Session the breaks will be sent to
+
+		private SMBSrvSession m_sess;
+
+		// Pending oplock break packets
+
+		private ArrayList<SMBSrvPacket> m_pkts = new ArrayList<SMBSrvPacket>();
+
+		// Time the first oplock break was queued
+
+		private long m_queuedAt;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param sess SMBSrvSession
+		 */
+		public PendingBreaks( SMBSrvSession sess) {
+			m_sess = sess;
+			m_queuedAt = System.nanoTime();
+		}
+
+		/**
+		 * Send the pending oplock breaks
+		 */
+		public void runRequest() {
+			sendPendingBreaks( m_sess);
+		}
+
+		/**
+		 * Return the pending breaks as a string
+		 *
+		 * @return String
+		 */
+		public String toString() {
+			return "[OplockBreaks sess=" + m_sess.getUniqueId() + ", pending=" + m_pkts.size() + "]";
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param threadPool ThreadRequestPool
+	 * @param metrics MetricsRegistry
+	 */
+	public OpLockBreakDispatcher( ThreadRequestPool threadPool, MetricsRegistry metrics) {
+		m_threadPool = threadPool;
+
+		// Use the server metrics timer, if metrics are enabled
+
+		if ( metrics != null)
+			m_dispatchLatency = metrics.getTimer( MetricsRegistry.GroupSMB, "OplockBreakDispatch");
+		else
+			m_dispatchLatency = new LatencyHistogram( MetricsRegistry.GroupSMB + ".OplockBreakDispatch");
+	}
+
+	/**
+	 * Check if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Enable/disable debug output
+	 *
+	 * @param ena boolean
+	 */
+	public final void setDebug( boolean ena) {
+		m_debug = ena;
+	}
+
+	/**
+	 * Queue an oplock break packet to be sent to a session
+	 *
+	 * @param sess SMBSrvSession
+	 * @param breakPkt SMBSrvPacket
+	 * @return boolean true if the break was sent, false if it was queued
+	 */
+	public final boolean queueBreak( SMBSrvSession sess, SMBSrvPacket breakPkt) {
+
+		// If there is no thread pool then send the oplock break using the current thread
+
+		m_breakCount.incrementAndGet();
+
+		if ( m_threadPool == null) {
+			sendBreaks( sess, new SMBSrvPacket[] { breakPkt }, 1, System.nanoTime());
+			return true;
+		}
+
+		// Add the oplock break to the pending list for the session, the first break for a session queues
+		// the send request to the thread pool
+
+		PendingBreaks pending = null;
+		boolean firstBreak = false;
+
+		synchronized ( m_pending) {
+
+			pending = m_pending.get( sess);
+
+			if ( pending == null) {
+				pending = new PendingBreaks( sess);
+				m_pending.put( sess, pending);
+
+				firstBreak = true;
+			}
+
+			pending.m_pkts.add( breakPkt);
+		}
+
+		// Queue the send request, if this is the first pending break for the session
+
+		if ( firstBreak)
+			m_threadPool.queueRequest( pending);
+
+		return false;
+	}
+
+	/**
+	 * Send the pending oplock breaks for a session
+	 *
+	 * @param sess SMBSrvSession
+	 */
+	protected final void sendPendingBreaks( SMBSrvSession sess) {
+
+		// Remove the pending breaks for the session, new breaks will start a new batch
+
+		PendingBreaks pending = null;
+
+		synchronized ( m_pending) {
+			pending = m_pending.remove( sess);
+		}
+
+		if ( pending == null || pending.m_pkts.size() == 0)
+			return;
+
+		// Send the oplock breaks
+
+		SMBSrvPacket[] pkts = pending.m_pkts.toArray( new SMBSrvPacket[pending.m_pkts.size()]);
+		sendBreaks( sess, pkts, pkts.length, pending.m_queuedAt);
+	}
+
+	/**
+	 * Send a batch of oplock breaks to a session
+	 *
+	 * @param sess SMBSrvSession
+	 * @param pkts SMBSrvPacket[]
+	 * @param cnt int
+	 * @param queuedAt long
+	 */
+	private final void sendBreaks( SMBSrvSession sess, SMBSrvPacket[] pkts, int cnt, long queuedAt) {
+
+		boolean sent = false;
+
+		try {
+
+			// Send, or queue, the oplock breaks on the session
+
+			sent = sess.sendAsynchResponseSMBs( pkts, cnt);
+		}
+		catch ( Exception ex) {
+
+			// Count the failed send, the oplock break timeout will fail the deferred requests
+
+			m_sendErrors.incrementAndGet();
+
+			if ( Debug.EnableError && hasDebug())
+				Debug.println("Oplock break send failed, sess=" + sess.getUniqueId() + ", breaks=" + cnt + ", ex=" + ex);
+		}
+
+		// Update the statistics
+
+		m_batchCount.incrementAndGet();
+		m_dispatchLatency.recordNanos( System.nanoTime() - queuedAt);
+
+		long curMax = m_maxBatch.get();
+		while ( cnt > curMax && m_maxBatch.compareAndSet( curMax, cnt) == false)
+			curMax = m_maxBatch.get();
+
+		// DEBUG
+
+		if ( Debug.EnableDbg && sess.hasDebug( SMBSrvSession.DBG_OPLOCK))
+			sess.debugPrintln("Oplock breaks dispatched to " + sess.getUniqueId() + ", count=" + cnt + " async=" + (sent ? "Sent" : "Queued"));
+	}
+
+	/**
+	 * Return the number of sessions with pending oplock breaks
+	 *
+	 * @return int
+	 */
+	public final int getPendingSessionCount() {
+		synchronized ( m_pending) {
+			return m_pending.size();
+		}
+	}
+
+	/**
+	 * Return the total number of oplock breaks queued
+	 *
+	 * @return long
+	 */
+	public final long getBreakCount() {
+		return m_breakCount.get();
+	}
+
+	/**
+	 * Return the number of oplock break batches sent
+	 *
+	 * @return long
+	 */
+	public final long getBatchCount() {
+		return m_batchCount.get();
+	}
+
+	/**
+	 * Return the largest oplock break batch sent
+	 *
+	 * @return long
+	 */
+	public final long getMaximumBatchSize() {
+		return m_maxBatch.get();
+	}
+
+	/**
+	 * Return the number of batches that failed to send
+	 *
+	 * @return long
+	 */
+	public final long getSendErrorCount() {
+		return m_sendErrors.get();
+	}
+
+	/**
+	 * Return the oplock break dispatch latency histogram
+	 *
+	 * @return LatencyHistogram
+	 */
+	public final LatencyHistogram getDispatchLatency() {
+		return m_dispatchLatency;
+	}
+
+	/**
+	 * Return the dispatcher details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[OplockBreakDispatcher breaks=");
+		str.append( getBreakCount());
+		str.append( ",batches=");
+		str.append( getBatchCount());
+		str.append( ",maxBatch=");
+		str.append( getMaximumBatchSize());
+		str.append( ",errors=");
+		str.append( getSendErrorCount());
+		str.append( ",pending=");
+		str.append( getPendingSessionCount());
+		str.append( ",latency=");
+		str.append( getDispatchLatency());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
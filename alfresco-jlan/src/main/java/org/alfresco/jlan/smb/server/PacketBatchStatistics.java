@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.smb.server;
+
+/**
+ * Packet Batch Statistics Class
+ *
+ * <p>Records the number of request packets processed by each thread run for a session, when the session
+ * requests are read by the NIO request handler. Updates are made by the thread run processing the session,
+ * there is only one active thread run per session.
+ *
+ * @author gkspencer
+ */
+public class PacketBatchStatistics {
+
+	// Number of thread runs, total packets processed and maximum packets in a single thread run
+
+	private volatile long m_runs;
+	private volatile long m_packets;
+	private volatile int m_maxPackets;
+
+	// Number of thread runs that used the full packet budget and were requeued
+
+	private volatile long m_requeued;
+
+	// Packets processed by the last thread run
+
+	private volatile int m_lastPackets;
+
+	/**
+	 * Record the packets processed by a thread run
+	 *
+	 * @param pktCount int
+	 * @param requeued boolean
+	 */
+	public final void recordRun(int pktCount, boolean requeued) {
+		m_runs++;
+		m_packets += pktCount;
+		m_lastPackets = pktCount;
+
+		if ( pktCount > m_maxPackets)
+			m_maxPackets = pktCount;
+
+		if ( requeued)
+			m_requeued++;
+	}
+
+	/**
+	 * Return the number of thread runs
+	 *
+	 * @return long
+	 */
+	public final long getThreadRuns() {
+		return m_runs;
+	}
+
+	/**
+	 * Return the total number of packets processed
+	 *
+	 * @return long
+	 */
+	public final long getPackets() {
+		return m_packets;
+	}
+
+	/**
+	 * Return the maximum number of packets processed by a single thread run
+	 *
+	 * @return int
+	 */
+	public final int getMaximumPacketsPerRun() {
+		return m_maxPackets;
+	}
+
+	/**
+	 * Return the average number of packets processed per thread run
+	 *
+	 * @return double
+	 */
+	public final double getAveragePacketsPerRun() {
+		long runs = m_runs;
+		return runs > 0 ? (double) m_packets / (double) runs : 0.0;
+	}
+
+	/**
+	 * Return the number of packets processed by the last thread run
+	 *
+	 * @return int
+	 */
+	public final int getLastPacketsPerRun() {
+		return m_lastPackets;
+	}
+
+	/**
+	 * Return the number of thread runs that used the full packet budget and were requeued
+	 *
+	 * @return long
+	 */
+	public final long getRequeuedRuns() {
+		return m_requeued;
+	}
+
+	/**
+	 * Return the statistics as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append("[Runs=");
+		str.append(getThreadRuns());
+		str.append(",pkts=");
+		str.append(getPackets());
+		str.append(",avg=");
+		str.append(String.format("%.2f", getAveragePacketsPerRun()));
+		str.append(",max=");
+		str.append(getMaximumPacketsPerRun());
+		str.append(",requeued=");
+		str.append(getRequeuedRuns());
+		str.append("]");
+
+		return str.toString();
+	}
+}
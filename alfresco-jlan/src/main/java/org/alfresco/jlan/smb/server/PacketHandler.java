@@ -226,6 +226,20 @@ public abstract class PacketHandler {
 		writePacket(pkt, pkt.getLength());
 	}
 
+	/**
+	 * Send a group of SMB response packets
+	 *
+	 * @param pkts SMBSrvPacket[]
+	 * @param cnt int
+	 * @exception IOException If a network error occurs.
+	 */
+	public void writePackets(SMBSrvPacket[] pkts, int cnt)
+		throws IOException {
+
+		for ( int idx = 0; idx < cnt; idx++)
+			writePacket( pkts[idx]);
+	}
+
 	/**
 	 * Flush the output socket
 	 *
@@ -43,6 +43,7 @@ import org.alfresco.jlan.server.core.ShareType;
 import org.alfresco.jlan.server.core.SharedDevice;
 import org.alfresco.jlan.server.filesys.DiskInterface;
 import org.alfresco.jlan.server.filesys.NetworkFileServer;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.smb.Dialect;
 import org.alfresco.jlan.smb.DialectSelector;
@@ -98,6 +99,14 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 
 	private CIFSPacketPool m_packetPool;
 
+	// Oplock break dispatcher, batches oplock breaks per session
+
+	private OpLockBreakDispatcher m_oplockDispatcher;
+
+	// Session setup dispatcher, runs authentication using a separate thread pool
+
+	private SessionSetupDispatcher m_authDispatcher;
+
 	/**
 	 * Create an SMB server using the specified configuration.
 	 *
@@ -240,6 +249,22 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 
 				if (( m_cifsConfig.getSessionDebugFlags() & SMBSrvSession.DBG_PKTALLOC) != 0)
 					m_packetPool.setAllocateDebug( true);
+
+				// Create the oplock break dispatcher
+
+				m_oplockDispatcher = new OpLockBreakDispatcher( m_coreConfig.getThreadPool(), getMetrics());
+
+				if (( m_cifsConfig.getSessionDebugFlags() & SMBSrvSession.DBG_OPLOCK) != 0)
+					m_oplockDispatcher.setDebug( true);
+			}
+
+			// Create the session setup dispatcher, if enabled
+
+			if ( m_cifsConfig.getAuthenticationThreads() > 0) {
+				m_authDispatcher = new SessionSetupDispatcher( m_cifsConfig.getAuthenticationThreads(), m_cifsConfig.getAuthenticationQueueLimit(), getMetrics());
+
+				if (( m_cifsConfig.getSessionDebugFlags() & SMBSrvSession.DBG_NEGOTIATE) != 0)
+					m_authDispatcher.setDebug( true);
 			}
 		}
 		else
@@ -338,6 +363,24 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 		return m_packetPool;
 	}
 
+	/**
+	 * Return the oplock break dispatcher
+	 *
+	 * @return OpLockBreakDispatcher
+	 */
+	public final OpLockBreakDispatcher getOpLockBreakDispatcher() {
+		return m_oplockDispatcher;
+	}
+
+	/**
+	 * Return the session setup dispatcher, or null if authentication uses the CIFS worker threads
+	 *
+	 * @return SessionSetupDispatcher
+	 */
+	public final SessionSetupDispatcher getSessionSetupDispatcher() {
+		return m_authDispatcher;
+	}
+
 	/**
 	 * Return the thread pool
 	 *
@@ -347,6 +390,15 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 		return m_coreConfig.getThreadPool();
 	}
 
+	/**
+	 * Return the server metrics registry, or null if metrics are not enabled
+	 *
+	 * @return MetricsRegistry
+	 */
+	public final MetricsRegistry getMetrics() {
+		return m_coreConfig != null ? m_coreConfig.getMetrics() : null;
+	}
+
 	/**
 	 * Start the SMB server.
 	 */
@@ -532,6 +584,11 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 
 		m_connectionsHandler.stopHandler();
 
+		// Shutdown the session setup authentication threads
+
+		if ( m_authDispatcher != null)
+			m_authDispatcher.shutdownDispatcher();
+
 		// Shutdown the Win32 NetBIOS LANA monitor, if enabled
 
 		if ( isWindows && Win32NetBIOSLanaMonitor.getLanaMonitor() != null) {
@@ -548,8 +605,12 @@ public class SMBServer extends NetworkFileServer implements Runnable, Configurat
 
 		// DEBUG
 
-		if ( Debug.EnableInfo && hasDebug())
+		if ( Debug.EnableInfo && hasDebug()) {
 			Debug.println("[SMB] Packet pool at shutdown: " + getPacketPool());
+			Debug.println("[SMB] Oplock breaks at shutdown: " + getOpLockBreakDispatcher());
+			if ( getSessionSetupDispatcher() != null)
+				Debug.println("[SMB] Session setups at shutdown: " + getSessionSetupDispatcher());
+		}
 	}
 
 	/**
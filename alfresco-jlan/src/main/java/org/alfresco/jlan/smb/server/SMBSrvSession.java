@@ -43,6 +43,7 @@ import org.alfresco.jlan.server.filesys.DiskDeviceContext;
 import org.alfresco.jlan.server.filesys.NetworkFile;
 import org.alfresco.jlan.server.filesys.TooManyConnectionsException;
 import org.alfresco.jlan.server.filesys.TreeConnection;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
 import org.alfresco.jlan.server.thread.ThreadRequestPool;
 import org.alfresco.jlan.smb.Capability;
 import org.alfresco.jlan.smb.DataType;
@@ -182,10 +183,18 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 
 	private Hashtable<Integer, Object> m_setupObjects;
 
+	// Session setup request being processed by the authentication thread pool
+
+	private SessionSetupDispatcher.SessionSetupRequest m_authRequest;
+
 	// Flag to indicate an asynchronous read has been queued/is being processed
 
 	private boolean m_asyncRead;
 
+	// Packets processed per thread run statistics, when the session is read by the NIO request handler
+
+	private PacketBatchStatistics m_batchStats = new PacketBatchStatistics();
+
 	// Client used this hostname or ip address to mount the network drive
 
     private String m_shareHostName;
@@ -711,6 +720,33 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 		return m_setupObjects.remove(new Integer(pid));
 	}
 
+	/**
+	 * Set the session setup request being processed by the authentication thread pool
+	 *
+	 * @param authReq SessionSetupDispatcher.SessionSetupRequest
+	 * @return boolean false if there is already a session setup request pending
+	 */
+	protected final synchronized boolean setPendingSessionSetup(SessionSetupDispatcher.SessionSetupRequest authReq) {
+		if ( m_authRequest != null)
+			return false;
+		m_authRequest = authReq;
+		return true;
+	}
+
+	/**
+	 * Remove the completed session setup request for the specified request packet
+	 *
+	 * @param smbPkt SMBSrvPacket
+	 * @return SessionSetupDispatcher.SessionSetupRequest, or null if the packet is not a completed session setup
+	 */
+	protected final synchronized SessionSetupDispatcher.SessionSetupRequest removePendingSessionSetup(SMBSrvPacket smbPkt) {
+		if ( m_authRequest == null || m_authRequest.getRequestPacket() != smbPkt)
+			return null;
+		SessionSetupDispatcher.SessionSetupRequest authReq = m_authRequest;
+		m_authRequest = null;
+		return authReq;
+	}
+
 	/**
 	 * Set the change notify pending flag
 	 *
@@ -1485,10 +1521,34 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 
 						case SMBSrvSessionState.SMBSESSION:
 
+							// Check if server metrics are enabled, get the command and share before the packet is processed
+
+							MetricsRegistry metrics = getSMBServer().getMetrics();
+							long metricsStart = 0L;
+							int metricsCmd = 0;
+							TreeConnection metricsTree = null;
+
+							if ( metrics != null) {
+								metricsCmd = smbPkt.getCommand();
+								metricsTree = findTreeConnection( smbPkt);
+								metricsStart = System.nanoTime();
+							}
+
 							// Run the main protocol handler
 
 							runHandler( smbPkt);
 
+							// Record the request time, for the protocol and for the share
+
+							if ( metrics != null) {
+								long elapsed = System.nanoTime() - metricsStart;
+								String cmdName = PacketType.getCommandName( metricsCmd);
+
+								metrics.recordTime( MetricsRegistry.GroupSMB, cmdName, elapsed);
+								if ( metricsTree != null)
+									metrics.recordTime( metricsTree.getMetricsGroup(), cmdName, elapsed);
+							}
+
 							// Debug
 
 							if ( Debug.EnableInfo && hasDebug(DBG_TIMING)) {
@@ -1527,6 +1587,12 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 				if ( Debug.EnableInfo && hasDebug(DBG_STATE))
 					debugPrintln("Socket closed by remote client");
 			}
+			catch (SocketTimeoutException ex) {
+
+				// The client is not reading responses, the packet handler has closed the socket
+
+				hangupSession( ex.getMessage());
+			}
 			catch (Exception ex) {
 
 				// Output the exception details
@@ -1614,6 +1680,56 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 	public synchronized final void sendResponseSMB(SMBSrvPacket pkt, int len)
 		throws IOException {
 
+		// Finish any active transaction and set the response flags
+
+		prepareResponseSMB(pkt);
+
+		// Send the response packet
+
+		m_pktHandler.writePacket(pkt, len);
+		m_pktHandler.flushPacket();
+
+		// Debug
+
+		if ( Debug.EnableInfo && hasDebug(DBG_TXDATA)) {
+			debugPrintln("Tx Data len=" + len);
+			HexDump.Dump(pkt.getBuffer(), 64, 0, Debug.getDebugInterface());
+		}
+	}
+
+	/**
+	 * Send a group of SMB responses using a single network write, where supported by the packet handler
+	 *
+	 * @param pkts SMBSrvPacket[]
+	 * @param cnt int
+	 * @exception IOException
+	 */
+	public synchronized final void sendResponseSMBs(SMBSrvPacket[] pkts, int cnt)
+		throws IOException {
+
+		// Finish any active transaction and set the response flags for each packet
+
+		for ( int idx = 0; idx < cnt; idx++)
+			prepareResponseSMB(pkts[idx]);
+
+		// Send the response packets
+
+		m_pktHandler.writePackets(pkts, cnt);
+		m_pktHandler.flushPacket();
+
+		// Debug
+
+		if ( Debug.EnableInfo && hasDebug(DBG_TXDATA))
+			debugPrintln("Tx Data packets=" + cnt);
+	}
+
+	/**
+	 * Commit/rollback any active transaction and set the response flags for an SMB response
+	 *
+	 * @param pkt SMBSrvPacket
+	 */
+	private final void prepareResponseSMB(SMBSrvPacket pkt) {
+
 		// Commit/rollback any active transactions before sending the response
 
 		if ( hasTransaction()) {
@@ -1653,18 +1769,6 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 		flags2 &= ~(SMBSrvPacket.FLG2_EXTENDEDATTRIB + SMBSrvPacket.FLG2_DFSRESOLVE + SMBSrvPacket.FLG2_SECURITYSIGS);
 
 		pkt.setFlags2(flags2);
-
-		// Send the response packet
-
-		m_pktHandler.writePacket(pkt, len);
-		m_pktHandler.flushPacket();
-
-		// Debug
-
-		if ( Debug.EnableInfo && hasDebug(DBG_TXDATA)) {
-			debugPrintln("Tx Data len=" + len);
-			HexDump.Dump(pkt.getBuffer(), 64, 0, Debug.getDebugInterface());
-		}
 	}
 
 	/**
@@ -1912,6 +2016,34 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 		return sts;
 	}
 
+	/**
+	 * Send, or queue, a group of asynchronous response SMBs
+	 *
+	 * @param pkts SMBSrvPacket[]
+	 * @param cnt int
+	 * @return true if the packets were sent, or false if they were queued
+	 * @exception IOException If an I/O error occurs
+	 */
+	public final boolean sendAsynchResponseSMBs(SMBSrvPacket[] pkts, int cnt)
+		throws IOException {
+
+		// Check if there is pending data from the client
+
+		if ( m_pktHandler.availableBytes() == 0) {
+
+			// Send the asynchronous responses immediately
+
+			sendResponseSMBs(pkts, cnt);
+			return true;
+		}
+
+		// Queue the packets to send out when current SMB requests have been processed
+
+		for ( int idx = 0; idx < cnt; idx++)
+			queueAsynchResponseSMB(pkts[idx]);
+		return false;
+	}
+
 	/**
 	 * Queue an asynchronous response SMB for sending when current SMB requests have been processed.
 	 *
@@ -1971,42 +2103,39 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 
         // Check if there are any pending asynchronous response packets
 
-		int asyncCnt = 0;
-        SMBSrvPacket asynchPkt;
-
-		while ((asynchPkt = removeFirstAsynchResponse()) != null) {
+		if ( m_asynchQueue == null || m_asynchQueue.size() == 0)
+			return 0;
 
-			try {
+		// Remove all the queued packets and send them using a single write
 
-				// Update the asynchronous pacekt count
+		SMBSrvPacket[] asyncPkts = m_asynchQueue.toArray( new SMBSrvPacket[m_asynchQueue.size()]);
+		m_asynchQueue.clear();
 
-				asyncCnt++;
+		try {
 
-				// Send the current asynchronous response to the client
+			// Send the queued asynchronous responses to the client
 
-				sendResponseSMB(asynchPkt, asynchPkt.getLength());
+			sendResponseSMBs(asyncPkts, asyncPkts.length);
 
-				// DEBUG
+			// DEBUG
 
-				if ( Debug.EnableInfo && (hasDebug(DBG_NOTIFY) || hasDebug(DBG_OPLOCK))) {
+			if ( Debug.EnableInfo && (hasDebug(DBG_NOTIFY) || hasDebug(DBG_OPLOCK))) {
+				for ( SMBSrvPacket asynchPkt : asyncPkts)
 					debugPrintln("Sent queued asynch response type=" + asynchPkt.getPacketTypeString() + ", mid="
 							+ asynchPkt.getMultiplexId() + ", pid=" + asynchPkt.getProcessId());
-					    debugPrintln("  Async queue len=" + m_asynchQueue.size());
-				}
 			}
-			catch (Exception ex) {
+		}
+		catch (Exception ex) {
 
-				// DEBUG
+			// DEBUG
 
-				if ( Debug.EnableError && (hasDebug(DBG_NOTIFY) || hasDebug(DBG_OPLOCK)))
-					debugPrintln("Failed to send queued asynch response type=" + asynchPkt.getPacketTypeString() + ", mid="
-							+ asynchPkt.getMultiplexId() + ", pid=" + asynchPkt.getProcessId() + ", ex=" + ex);
-			}
+			if ( Debug.EnableError && (hasDebug(DBG_NOTIFY) || hasDebug(DBG_OPLOCK)))
+				debugPrintln("Failed to send " + asyncPkts.length + " queued asynch responses, ex=" + ex);
 		}
 
 		// Return the count of asynchrnous packets processed
 
-		return asyncCnt;
+		return asyncPkts.length;
 	}
 
 	/**
@@ -2136,6 +2265,15 @@ public class SMBSrvSession extends SrvSession implements Runnable {
 		m_asyncRead = inProgress;
 	}
 
+	/**
+	 * Return the packets processed per thread run statistics
+	 *
+	 * @return PacketBatchStatistics
+	 */
+	public final PacketBatchStatistics getPacketBatchStatistics() {
+		return m_batchStats;
+	}
+
 	/**
 	 * Indicate that CIFS filesystem searches are not case sensitive
 	 *
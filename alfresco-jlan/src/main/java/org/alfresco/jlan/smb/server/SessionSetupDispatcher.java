@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.smb.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.server.auth.ICifsAuthenticator;
+import org.alfresco.jlan.server.metrics.LatencyHistogram;
+import org.alfresco.jlan.server.metrics.MetricsGauge;
+import org.alfresco.jlan.server.metrics.MetricsRegistry;
+import org.alfresco.jlan.server.thread.ThreadRequest;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.smb.SMBStatus;
+
+/**
+ * Session Setup Dispatcher Class
+ *
+ * <p>Runs the authenticator session setup processing using a dedicated thread pool, so that slow authentication,
+ * such as Kerberos ticket validation or a passthru call to a domain controller, does not hold a CIFS worker thread.
+ * The session setup request packet is deferred whilst authentication is in progress, when the authenticator has
+ * built the response the request is queued back to the CIFS thread pool to send the response.
+ *
+ * <p>The number of queued session setup requests is limited, when the limit is reached the session setup is
+ * processed using the CIFS worker thread. Only one session setup is processed at a time for a session, a second
+ * session setup received whilst the first is being processed is rejected.
+ *
+ * <p>When server metrics are enabled the request counts and latencies are recorded in the metrics registry, and the
+ * queue depths are published as gauges.
+ *
+ * @author gkspencer
+ */
+public class SessionSetupDispatcher {
+
+	// Default, minimum and maximum authentication threads, zero disables the dispatcher
+
+	public static final int DefaultAuthThreads	= 8;
+	public static final int MinAuthThreads		= 0;
+	public static final int MaxAuthThreads		= 64;
+
+	// Default maximum queued session setup requests
+
+	public static final int DefaultMaxQueued	= 256;
+
+	// Metrics counter and gauge names
+
+	public static final String MetricsRequests		= MetricsRegistry.GroupSMB + ".SessionSetup.requests";
+	public static final String MetricsInline		= MetricsRegistry.GroupSMB + ".SessionSetup.inline";
+	public static final String MetricsRejected		= MetricsRegistry.GroupSMB + ".SessionSetup.rejected";
+	public static final String MetricsFailed		= MetricsRegistry.GroupSMB + ".SessionSetup.failed";
+	public static final String MetricsBusy			= MetricsRegistry.GroupSMB + ".SessionSetup.busy";
+	public static final String MetricsQueueDepth	= MetricsRegistry.GroupSMB + ".SessionSetup.queueDepth";
+	public static final String MetricsMaxDepth		= MetricsRegistry.GroupSMB + ".SessionSetup.maxQueueDepth";
+
+	// Authentication thread pool
+
+	private ThreadRequestPool m_authPool;
+
+	// Maximum queued requests
+
+	private int m_maxQueued;
+
+	// Queue depth and statistics
+
+	private AtomicInteger m_queueDepth = new AtomicInteger();
+	private AtomicInteger m_maxDepth   = new AtomicInteger();
+
+	private AtomicLong m_requestCount;
+	private AtomicLong m_inlineCount;
+	private AtomicLong m_rejectCount;
+	private AtomicLong m_failCount;
+	private AtomicLong m_busyCount;
+
+	// Time session setup requests wait for an authentication thread, and time to process
+
+	private LatencyHistogram m_queueLatency;
+	private LatencyHistogram m_authLatency;
+
+	// Server metrics, or null if metrics are not enabled
+
+	private MetricsRegistry m_metrics;
+
+	// Debug enable
+
+	private boolean m_debug;
+
+	/**
+	 * Session Setup Request Class
+	 *
+	 * <p>Session setup request being processed by the authentication thread pool, and the result of the
+	 * authenticator processing.
+	 */
+	static class SessionSetupRequest implements ThreadRequest {
+
+		// Dispatcher that queued the request
+
+		private SessionSetupDispatcher m_dispatcher;
+
+		// Session and request packet
+
+		private SMBSrvSession m_sess;
+		private SMBSrvPacket m_smbPkt;
+
+		// Time the request was queued
+
+		private long m_queuedAt;
+
+		// Error returned by the authenticator, or null if the session setup response was built
+
+		private SMBSrvException m_exception;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param dispatcher SessionSetupDispatcher
+		 * @param sess SMBSrvSession
+		 * @param smbPkt SMBSrvPacket
+		 */
+		SessionSetupRequest( SessionSetupDispatcher dispatcher, SMBSrvSession sess, SMBSrvPacket smbPkt) {
+			m_dispatcher = dispatcher;
+			m_sess       = sess;
+			m_smbPkt     = smbPkt;
+			m_queuedAt   = System.nanoTime();
+		}
+
+		/**
+		 * Return the request packet
+		 *
+		 * @return SMBSrvPacket
+		 */
+		final SMBSrvPacket getRequestPacket() {
+			return m_smbPkt;
+		}
+
+		/**
+		 * Check if the authenticator returned an error
+		 *
+		 * @return boolean
+		 */
+		final boolean hasException() {
+			return m_exception != null ? true : false;
+		}
+
+		/**
+		 * Return the authenticator error
+		 *
+		 * @return SMBSrvException
+		 */
+		final SMBSrvException getException() {
+			return m_exception;
+		}
+
+		/**
+		 * Run the authenticator session setup processing
+		 */
+		public void runRequest() {
+			m_dispatcher.processSessionSetup( this);
+		}
+
+		/**
+		 * Return the session setup request as a string
+		 *
+		 * @return String
+		 */
+		public String toString() {
+			return "[SessionSetup sess=" + m_sess.getUniqueId() + ", pkt=" + m_smbPkt + "]";
+		}
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param authThreads int
+	 * @param maxQueued int
+	 * @param metrics MetricsRegistry
+	 */
+	public SessionSetupDispatcher( int authThreads, int maxQueued, MetricsRegistry metrics) {
+		m_authPool  = new ThreadRequestPool( "CIFSAuth", authThreads);
+		m_maxQueued = maxQueued;
+
+		// Use the server metrics timers and counters, if metrics are enabled
+
+		m_metrics = metrics;
+
+		if ( metrics != null) {
+			m_queueLatency = metrics.getTimer( MetricsRegistry.GroupSMB, "SessionSetupQueue");
+			m_authLatency  = metrics.getTimer( MetricsRegistry.GroupSMB, "SessionSetupAuth");
+
+			m_requestCount = metrics.getCounter( MetricsRequests);
+			m_inlineCount  = metrics.getCounter( MetricsInline);
+			m_rejectCount  = metrics.getCounter( MetricsRejected);
+			m_failCount    = metrics.getCounter( MetricsFailed);
+			m_busyCount    = metrics.getCounter( MetricsBusy);
+
+			// Publish the queue depths
+
+			metrics.addGauge( MetricsQueueDepth, new MetricsGauge() {
+				public long getValue() {
+					return getQueueDepth();
+				}
+			});
+
+			metrics.addGauge( MetricsMaxDepth, new MetricsGauge() {
+				public long getValue() {
+					return getMaximumQueueDepth();
+				}
+			});
+		}
+		else {
+			m_queueLatency = new LatencyHistogram( MetricsRegistry.GroupSMB + ".SessionSetupQueue");
+			m_authLatency  = new LatencyHistogram( MetricsRegistry.GroupSMB + ".SessionSetupAuth");
+
+			m_requestCount = new AtomicLong();
+			m_inlineCount  = new AtomicLong();
+			m_rejectCount  = new AtomicLong();
+			m_failCount    = new AtomicLong();
+			m_busyCount    = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Check if debug output is enabled
+	 *
+	 * @return boolean
+	 */
+	public final boolean hasDebug() {
+		return m_debug;
+	}
+
+	/**
+	 * Enable/disable debug output
+	 *
+	 * @param ena boolean
+	 */
+	public final void setDebug( boolean ena) {
+		m_debug = ena;
+	}
+
+	/**
+	 * Queue a session setup request to the authentication thread pool. If the request is queued the caller must
+	 * not release the request packet, it will be queued back to the CIFS thread pool when authentication completes.
+	 *
+	 * <p>If the queue limit has been reached the caller must process the session setup, the request remains
+	 * pending for the session until the caller removes it using removePendingSessionSetup().
+	 *
+	 * @param sess SMBSrvSession
+	 * @param smbPkt SMBSrvPacket
+	 * @return boolean true if the request was queued, false if the caller should process the session setup
+	 * @exception SMBSrvException If a session setup is already being processed for the session
+	 */
+	public final boolean queueSessionSetup( SMBSrvSession sess, SMBSrvPacket smbPkt)
+		throws SMBSrvException {
+
+		// Only one session setup can be processed at a time for a session, the authenticator and session state
+		// are not updated by multiple threads
+
+		SessionSetupRequest authReq = new SessionSetupRequest( this, sess, smbPkt);
+
+		if ( sess.setPendingSessionSetup( authReq) == false) {
+			m_busyCount.incrementAndGet();
+
+			// DEBUG
+
+			if ( Debug.EnableInfo && hasDebug())
+				Debug.println("Session setup rejected, setup in progress, sess=" + sess.getUniqueId());
+
+			throw new SMBSrvException( SMBStatus.NTRequestNotAccepted, SMBStatus.ErrSrv, SMBStatus.SRVNoResourcesAvailable);
+		}
+
+		// Check if the queue limit has been reached, the request is processed by the calling thread
+
+		if ( m_queueDepth.incrementAndGet() > m_maxQueued) {
+			m_queueDepth.decrementAndGet();
+			m_rejectCount.incrementAndGet();
+			m_inlineCount.incrementAndGet();
+			return false;
+		}
+
+		// Update the maximum queue depth
+
+		int curDepth = m_queueDepth.get();
+		int curMax = m_maxDepth.get();
+
+		while ( curDepth > curMax && m_maxDepth.compareAndSet( curMax, curDepth) == false)
+			curMax = m_maxDepth.get();
+
+		// Queue the request to the authentication thread pool
+
+		m_requestCount.incrementAndGet();
+		m_authPool.queueRequest( authReq);
+
+		return true;
+	}
+
+	/**
+	 * Run the authenticator session setup processing, then queue the request back to the CIFS thread pool
+	 *
+	 * @param authReq SessionSetupRequest
+	 */
+	protected final void processSessionSetup( SessionSetupRequest authReq) {
+
+		// Update the queue statistics
+
+		long startTime = System.nanoTime();
+
+		m_queueDepth.decrementAndGet();
+		m_queueLatency.recordNanos( startTime - authReq.m_queuedAt);
+
+		SMBSrvSession sess = authReq.m_sess;
+
+		if ( sess.isShutdown() == false) {
+
+			// Process the session setup request, build the response
+
+			ICifsAuthenticator cifsAuthenticator = sess.getSMBServer().getCifsAuthenticator();
+
+			try {
+				cifsAuthenticator.processSessionSetup( sess, authReq.m_smbPkt);
+			}
+			catch ( SMBSrvException ex) {
+				authReq.m_exception = ex;
+			}
+			catch ( Throwable ex) {
+
+				// Return a logon failure to the client
+
+				authReq.m_exception = new SMBSrvException( SMBStatus.NTLogonFailure, SMBStatus.ErrDos, SMBStatus.DOSAccessDenied);
+
+				// DEBUG
+
+				if ( Debug.EnableError && hasDebug())
+					Debug.println("Session setup error, sess=" + sess.getUniqueId() + ", ex=" + ex);
+			}
+			finally {
+
+				// Clear any user context set on the authentication thread
+
+				cifsAuthenticator.setCurrentUser( null);
+			}
+
+			if ( authReq.hasException())
+				m_failCount.incrementAndGet();
+		}
+
+		long endTime = System.nanoTime();
+		m_authLatency.recordNanos( endTime - startTime);
+
+		// DEBUG
+
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("Session setup processed, sess=" + sess.getUniqueId() + ", queued=" + (startTime - authReq.m_queuedAt) / 1000000L +
+					"ms, auth=" + (endTime - startTime) / 1000000L + "ms" + (authReq.hasException() ? ", err=" + authReq.getException() : ""));
+
+		// Queue the request back to the CIFS thread pool to send the response, or release the request packet if the
+		// session has closed
+
+		if ( sess.isShutdown() == false)
+			sess.getThreadPool().queueRequest( new CIFSThreadRequest( sess, authReq.m_smbPkt));
+		else {
+			sess.removePendingSessionSetup( authReq.m_smbPkt);
+			sess.getPacketPool().releasePacket( authReq.m_smbPkt);
+		}
+	}
+
+	/**
+	 * Shutdown the authentication thread pool
+	 */
+	public final void shutdownDispatcher() {
+		m_authPool.shutdownThreadPool();
+
+		// Remove the queue depth gauges
+
+		if ( m_metrics != null) {
+			m_metrics.removeGauge( MetricsQueueDepth);
+			m_metrics.removeGauge( MetricsMaxDepth);
+		}
+	}
+
+	/**
+	 * Return the number of session setup requests waiting for, or being processed by, an authentication thread
+	 *
+	 * @return int
+	 */
+	public final int getQueueDepth() {
+		return m_queueDepth.get();
+	}
+
+	/**
+	 * Return the maximum queue depth
+	 *
+	 * @return int
+	 */
+	public final int getMaximumQueueDepth() {
+		return m_maxDepth.get();
+	}
+
+	/**
+	 * Return the queue depth limit
+	 *
+	 * @return int
+	 */
+	public final int getQueueLimit() {
+		return m_maxQueued;
+	}
+
+	/**
+	 * Return the number of session setup requests processed by the authentication thread pool
+	 *
+	 * @return long
+	 */
+	public final long getRequestCount() {
+		return m_requestCount.get();
+	}
+
+	/**
+	 * Return the number of session setup requests processed by the CIFS worker thread
+	 *
+	 * @return long
+	 */
+	public final long getInlineCount() {
+		return m_inlineCount.get();
+	}
+
+	/**
+	 * Return the number of session setup requests processed by the CIFS worker thread as the queue limit was reached
+	 *
+	 * @return long
+	 */
+	public final long getRejectedCount() {
+		return m_rejectCount.get();
+	}
+
+	/**
+	 * Return the number of session setup requests rejected as a session setup was in progress for the session
+	 *
+	 * @return long
+	 */
+	public final long getBusyCount() {
+		return m_busyCount.get();
+	}
+
+	/**
+	 * Return the number of session setup requests that returned an error
+	 *
+	 * @return long
+	 */
+	public final long getFailureCount() {
+		return m_failCount.get();
+	}
+
+	/**
+	 * Return the queue wait latency histogram
+	 *
+	 * @return LatencyHistogram
+	 */
+	public final LatencyHistogram getQueueLatency() {
+		return m_queueLatency;
+	}
+
+	/**
+	 * Return the authentication processing latency histogram
+	 *
+	 * @return LatencyHistogram
+	 */
+	public final LatencyHistogram getAuthLatency() {
+		return m_authLatency;
+	}
+
+	/**
+	 * Return the dispatcher details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append( "[SessionSetupDispatcher requests=");
+		str.append( getRequestCount());
+		str.append( ",inline=");
+		str.append( getInlineCount());
+		str.append( ",rejected=");
+		str.append( getRejectedCount());
+		str.append( ",busy=");
+		str.append( getBusyCount());
+		str.append( ",failed=");
+		str.append( getFailureCount());
+		str.append( ",depth=");
+		str.append( getQueueDepth());
+		str.append( "/");
+		str.append( getMaximumQueueDepth());
+		str.append( ",queue=");
+		str.append( getQueueLatency());
+		str.append( ",auth=");
+		str.append( getAuthLatency());
+		str.append( "]");
+
+		return str.toString();
+	}
+}
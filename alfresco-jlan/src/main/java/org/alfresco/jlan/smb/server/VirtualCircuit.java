@@ -19,8 +19,7 @@
 
 package org.alfresco.jlan.smb.server;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.SrvSession;
@@ -31,6 +30,7 @@ import org.alfresco.jlan.server.filesys.SearchContext;
 import org.alfresco.jlan.server.filesys.SearchContextAdapter;
 import org.alfresco.jlan.server.filesys.TooManyConnectionsException;
 import org.alfresco.jlan.server.filesys.TreeConnection;
+import org.alfresco.jlan.util.CopyOnWriteIntMap;
 
 /**
  * Virtual Circuit Class
@@ -79,23 +79,23 @@ public class VirtualCircuit {
 
   private ClientInfo m_clientInfo;
 
-  // Active tree connections
+  // Active tree connections, lookups do not lock the connection table
 
-  private Map<Integer, TreeConnection> m_connections;
+  private final CopyOnWriteIntMap<TreeConnection> m_connections = new CopyOnWriteIntMap<TreeConnection>();
   private int m_treeId = 1;
 
-  // List of active searches
+  // List of active searches, lookups do not lock the search table
 
-  private SearchContext[] m_search;
+  private volatile AtomicReferenceArray<SearchContext> m_search;
   private int m_searchCount;
 
   //  Active CIFS transaction details
 
-  private SrvTransactBuffer m_transact;
+  private volatile SrvTransactBuffer m_transact;
 
   // Flag to indicate if the virtual circuit is logged on/off
 
-  private boolean m_loggedOn;
+  private volatile boolean m_loggedOn;
 
   /**
    * Class constructor
@@ -147,11 +147,6 @@ public class VirtualCircuit {
   public synchronized int addConnection(SharedDevice shrDev)
     throws TooManyConnectionsException {
 
-    //  Check if the connection array has been allocated
-
-    if (m_connections == null)
-      m_connections = new HashMap<Integer, TreeConnection>(DefaultConnections);
-
     //  Allocate an id for the tree connection
 
     int treeId = 0;
@@ -187,12 +182,7 @@ public class VirtualCircuit {
    * @return TreeConnection
    * @param treeId int
    */
-  public synchronized final TreeConnection findConnection(int treeId) {
-
-    //  Check if the tree id and connection array are valid
-
-    if (m_connections == null)
-      return null;
+  public final TreeConnection findConnection(int treeId) {
 
     //  Get the required tree connection details
 
@@ -207,11 +197,6 @@ public class VirtualCircuit {
    */
   protected synchronized void removeConnection(int treeId, SrvSession sess) {
 
-    //  Check if the tree id is valid
-
-    if (m_connections == null)
-      return;
-
     TreeConnection tree = m_connections.get(treeId);
 
     //  Close the connection, release resources
@@ -233,8 +218,8 @@ public class VirtualCircuit {
    *
    * @return int
    */
-  public synchronized final int getConnectionCount() {
-    return m_connections != null ? m_connections.size() : 0;
+  public final int getConnectionCount() {
+    return m_connections.size();
   }
 
   /**
@@ -247,35 +232,36 @@ public class VirtualCircuit {
     //  Check if the search array has been allocated
 
     if (m_search == null)
-      m_search = new SearchContext[DefaultSearches];
+      m_search = new AtomicReferenceArray<SearchContext>(DefaultSearches);
 
     //  Find a free slot for the new search
 
     int idx = 0;
 
-    while (idx < m_search.length && m_search[idx] != null)
+    while (idx < m_search.length() && m_search.get(idx) != null)
       idx++;
 
     //  Check if we found a free slot
 
-    if (idx == m_search.length) {
+    if (idx == m_search.length()) {
 
       //  The search array needs to be extended, check if we reached the limit.
 
-      if (m_search.length >= MaxSearches)
+      if (m_search.length() >= MaxSearches)
         return -1;
 
-      //  Extend the search array
+      //  Extend the search array, publish the new array once populated
 
-      SearchContext[] newSearch = new SearchContext[m_search.length * 2];
-      System.arraycopy(m_search, 0, newSearch, 0, m_search.length);
+      AtomicReferenceArray<SearchContext> newSearch = new AtomicReferenceArray<SearchContext>(m_search.length() * 2);
+      for (int i = 0; i < m_search.length(); i++)
+        newSearch.set(i, m_search.get(i));
       m_search = newSearch;
     }
 
     //  Return the allocated search slot index, mark the slot as allocated
 
     m_searchCount++;
-    m_search[ idx] = SearchSlotMarker;
+    m_search.set(idx, SearchSlotMarker);
     return idx;
   }
 
@@ -288,18 +274,20 @@ public class VirtualCircuit {
 
     //  Check if the search array has been allocated and that the index is valid
 
-    if (m_search == null || ctxId >= m_search.length)
+    if (m_search == null || ctxId < 0 || ctxId >= m_search.length())
       return;
 
     //  Close the search
 
-    if (m_search[ctxId] != null)
-      m_search[ctxId].closeSearch();
+    SearchContext srch = m_search.get(ctxId);
+
+    if (srch != null)
+      srch.closeSearch();
 
     //  Free the specified search context slot
 
     m_searchCount--;
-    m_search[ctxId] = null;
+    m_search.set(ctxId, null);
   }
 
   /**
@@ -308,16 +296,18 @@ public class VirtualCircuit {
    * @return SearchContext
    * @param srchId int
    */
-  public synchronized final SearchContext getSearchContext(int srchId) {
+  public final SearchContext getSearchContext(int srchId) {
 
     //  Check if the search array is valid and the search index is valid
 
-    if (m_search == null || srchId >= m_search.length)
+    AtomicReferenceArray<SearchContext> search = m_search;
+
+    if (search == null || srchId < 0 || srchId >= search.length())
       return null;
 
     //  Return the required search context
 
-    return m_search[srchId];
+    return search.get(srchId);
   }
 
   /**
@@ -330,12 +320,12 @@ public class VirtualCircuit {
 
     //  Check if the search slot id is valid
 
-    if (m_search == null || slot > m_search.length)
+    if (m_search == null || slot < 0 || slot >= m_search.length())
       return;
 
     //  Store the context
 
-    m_search[slot] = srch;
+    m_search.set(slot, srch);
   }
 
   /**
@@ -352,7 +342,7 @@ public class VirtualCircuit {
    *
    * @return boolean
    */
-  public synchronized final boolean hasTransaction() {
+  public final boolean hasTransaction() {
     return m_transact != null ? true : false;
   }
 
@@ -361,7 +351,7 @@ public class VirtualCircuit {
    *
    * @return TransactBuffer
    */
-  public synchronized final SrvTransactBuffer getTransaction() {
+  public final SrvTransactBuffer getTransaction() {
     return m_transact;
   }
 
@@ -370,7 +360,7 @@ public class VirtualCircuit {
    *
    * @param buf TransactBuffer
    */
-  public synchronized final void setTransaction(SrvTransactBuffer buf) {
+  public final void setTransaction(SrvTransactBuffer buf) {
     m_transact = buf;
   }
 
@@ -401,11 +391,11 @@ public class VirtualCircuit {
 
       //  Close all active searches
 
-      for (int idx = 0; idx < m_search.length; idx++) {
+      for (int idx = 0; idx < m_search.length(); idx++) {
 
         //  Check if the current search slot is active
 
-        if (m_search[idx] != null)
+        if (m_search.get(idx) != null)
           deallocateSearchSlot(idx);
       }
 
@@ -417,7 +407,7 @@ public class VirtualCircuit {
 
     //  Check if there are open tree connections
 
-    if (m_connections != null) {
+    if (m_connections.isEmpty() == false) {
 
       for (TreeConnection tree : m_connections.values()) {
 
@@ -446,7 +436,7 @@ public class VirtualCircuit {
    *
    * @return boolean
    */
-  public synchronized final boolean isLoggedOn() {
+  public final boolean isLoggedOn() {
 	  return m_loggedOn;
   }
 
@@ -455,7 +445,7 @@ public class VirtualCircuit {
    *
    * @param loggedOn boolean
    */
-  public synchronized final void setLoggedOn(boolean loggedOn) {
+  public final void setLoggedOn(boolean loggedOn) {
 	  m_loggedOn = loggedOn;
   }
 
@@ -19,11 +19,9 @@
 
 package org.alfresco.jlan.smb.server;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.SrvSession;
+import org.alfresco.jlan.util.CopyOnWriteIntMap;
 
 
 
@@ -48,9 +46,9 @@ public class VirtualCircuitList {
 
   private static final int UIDMask        = 0x0000FFFF;
 
-  // Active virtual circuits
+  // Active virtual circuits, lookups do not lock the circuit table
 
-  private Map<Integer, VirtualCircuit> m_vcircuits;
+  private final CopyOnWriteIntMap<VirtualCircuit> m_vcircuits = new CopyOnWriteIntMap<VirtualCircuit>();
   private int m_UID = 1;
 
   // Maximum allowed virtual circuits
@@ -74,10 +72,6 @@ public class VirtualCircuitList {
 	  // Save the maxmimum virtual circuits value
 
 	  m_maxVC = maxVC;
-
-	  // Allocate the virtual circuit table
-
-	  m_vcircuits = new HashMap<Integer, VirtualCircuit>( getMaximumVirtualCircuits());
   }
 
   /**
@@ -98,11 +92,6 @@ public class VirtualCircuitList {
    */
   public synchronized int addCircuit( VirtualCircuit vcircuit) {
 
-    //  Check if the circuit table has been allocated
-
-    if (m_vcircuits == null)
-      m_vcircuits = new HashMap<Integer, VirtualCircuit>(DefaultCircuits);
-
     //  Allocate an id for the tree connection
 
     int uid = 0;
@@ -140,14 +129,9 @@ public class VirtualCircuitList {
    * @param uid int
    * @return VirtualCircuit
    */
-  public synchronized final VirtualCircuit findCircuit(int uid) {
+  public final VirtualCircuit findCircuit(int uid) {
 
-    //  Check if the circuit table is valid
-
-    if (m_vcircuits == null)
-      return null;
-
-    //  Get the required tree connection details
+    //  Get the required virtual circuit details
 
     return m_vcircuits.get(uid);
   }
@@ -160,11 +144,6 @@ public class VirtualCircuitList {
    */
   public synchronized void removeCircuit(int uid, SrvSession sess) {
 
-    //  Check if the circuit table is valid
-
-    if (m_vcircuits == null)
-      return;
-
     //  Close the circuit and remove from the circuit table
 
     VirtualCircuit vc = m_vcircuits.get(uid);
@@ -188,15 +167,15 @@ public class VirtualCircuitList {
    *
    * @return int
    */
-  public synchronized final int getCircuitCount() {
-    return m_vcircuits != null ? m_vcircuits.size() : 0;
+  public final int getCircuitCount() {
+    return m_vcircuits.size();
   }
 
   /**
    * Clear the virtual circuit list
    */
   public synchronized final void clearCircuitList( SMBSrvSession sess) {
-    if (m_vcircuits != null) {
+    if (m_vcircuits.isEmpty() == false) {
 
       // Enumerate the virtual circuits and close all circuits
 
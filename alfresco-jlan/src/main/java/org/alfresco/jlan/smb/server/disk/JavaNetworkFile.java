@@ -23,9 +23,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import org.alfresco.jlan.server.filesys.AccessMode;
 import org.alfresco.jlan.server.filesys.DiskFullException;
+import org.alfresco.jlan.server.filesys.FileChannelInterface;
 import org.alfresco.jlan.server.filesys.NetworkFile;
 import org.alfresco.jlan.smb.SeekType;
 
@@ -34,7 +36,7 @@ import org.alfresco.jlan.smb.SeekType;
  *
  * @author gkspencer
  */
-public class JavaNetworkFile extends NetworkFile {
+public class JavaNetworkFile extends NetworkFile implements FileChannelInterface {
 
   //	File details
 
@@ -306,6 +308,22 @@ public class JavaNetworkFile extends NetworkFile {
 		}
   }
 
+  /**
+   * Return the file channel, open the file if not already open
+   *
+   * @return FileChannel
+   * @exception IOException
+   */
+  public FileChannel getFileChannel()
+    throws IOException {
+
+    //  Open the file, if not already open
+
+    if (m_io == null)
+      openFile(false);
+    return m_io.getChannel();
+  }
+
   /**
    * Read from the file.
    *
@@ -30,6 +30,7 @@ import java.nio.channels.OverlappingFileLockException;
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.locking.LockConflictException;
 import org.alfresco.jlan.server.filesys.AccessMode;
+import org.alfresco.jlan.server.filesys.FileChannelInterface;
 import org.alfresco.jlan.server.filesys.NetworkFile;
 import org.alfresco.jlan.smb.SeekType;
 
@@ -38,7 +39,7 @@ import org.alfresco.jlan.smb.SeekType;
  *
  * @author gkspencer
  */
-public class NIOJavaNetworkFile extends NetworkFile {
+public class NIOJavaNetworkFile extends NetworkFile implements FileChannelInterface {
 
 	//	File details
 
@@ -309,6 +310,22 @@ public class NIOJavaNetworkFile extends NetworkFile {
 		setClosed(false);
   }
 
+  /**
+   * Return the file channel, open the file if not already open
+   *
+   * @return FileChannel
+   * @exception IOException
+   */
+  public FileChannel getFileChannel()
+    throws IOException {
+
+    //  Open the file, if not already open
+
+    if (m_channel == null)
+      openFile(false);
+    return m_channel;
+  }
+
   /**
    * Read from the file.
    *
@@ -409,6 +409,30 @@ public class CIFSRequestHandler extends RequestHandler implements Runnable {
 			SelectionKey selKey = keysIter.next();
 			keysIter.remove();
 
+			// Send queued response data if the socket channel is writeable
+
+			if ( selKey.isValid() && selKey.isWritable()) {
+
+				// Drain the sessions write queue using gathering writes
+
+				SMBSrvSession sess = (SMBSrvSession) selKey.attachment();
+
+				if ( sess.getPacketHandler() instanceof AsynchronousWritesHandler) {
+					AsynchronousWritesHandler writesHandler = (AsynchronousWritesHandler) sess.getPacketHandler();
+					int wrCnt = writesHandler.processQueuedWrites();
+
+					// DEBUG
+
+					if ( Debug.EnableInfo && hasDebug())
+						Debug.println( "[SMB] Sent " + wrCnt + " queued writes, remaining=" + writesHandler.getQueuedWriteCount() + ", sess=" + sess.getUniqueId());
+				}
+
+				// Check if there is also a read event to process
+
+				if ( selKey.isValid() == false || selKey.isReadable() == false)
+					continue;
+			}
+
 			if ( selKey.isValid() == false) {
 
 				// Remove the selection key
@@ -430,7 +454,9 @@ public class CIFSRequestHandler extends RequestHandler implements Runnable {
 
 				// Switch off read events for this channel until the current processing is complete
 
-				selKey.interestOps( selKey.interestOps() & ~SelectionKey.OP_READ);
+				synchronized ( selKey) {
+					selKey.interestOps( selKey.interestOps() & ~SelectionKey.OP_READ);
+				}
 
 				// Get the associated session and queue a request to the thread pool to read and process the CIFS request
 
@@ -531,7 +557,11 @@ public class CIFSRequestHandler extends RequestHandler implements Runnable {
 							// Register the session channel with the selector
 
 							sessChannel.configureBlocking( false);
-							sessChannel.register( m_selector, SelectionKey.OP_READ, sess);
+							SelectionKey selKey = sessChannel.register( m_selector, SelectionKey.OP_READ, sess);
+
+							// Responses that cannot be written immediately are queued and sent when the channel is writeable
+
+							chanPktHandler.setSelectionKey( selKey);
 
 							// Update the last I/O time for the session
 
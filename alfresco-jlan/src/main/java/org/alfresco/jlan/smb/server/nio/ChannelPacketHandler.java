@@ -20,11 +20,16 @@
 package org.alfresco.jlan.smb.server.nio;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
 
+import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.smb.server.CIFSPacketPool;
 import org.alfresco.jlan.smb.server.PacketHandler;
+import org.alfresco.jlan.smb.server.SMBSrvPacket;
 
 /**
  * Channel Packet Handler Class
@@ -32,14 +37,41 @@ import org.alfresco.jlan.smb.server.PacketHandler;
  * <p>
  * Provides the base class for Java SocketChannel based packet handler implementations.
  *
+ * <p>
+ * Once the socket channel is registered with a selector the channel is non-blocking, and responses are written
+ * directly to the channel until the socket send buffer is full. The remaining data is then copied to a per
+ * session write queue, and write events are enabled so that the request handler thread drains the queue using
+ * gathering writes. Worker threads only wait if the queued data exceeds the write queue limit, if the queue does
+ * not drain within the write queue timeout the client is not reading responses and the socket channel is closed.
+ *
  * @author gkspencer
  */
-public abstract class ChannelPacketHandler extends PacketHandler {
+public abstract class ChannelPacketHandler extends PacketHandler implements AsynchronousWritesHandler {
+
+	// Maximum bytes queued for writing before a writer waits for the queue to drain, the wait interval, and the
+	// maximum time to wait for the queue to drain before the session is hung up
+
+	private static final int MaxQueuedWriteBytes	= 1024 * 1024;
+	private static final long WriteQueueWait		= 1000L;
+	private static final long WriteQueueTimeout		= 30000L;
+
+	// Maximum buffers output by a single gathering write
+
+	private static final int MaxGatherBuffers		= 64;
 
 	// Socket channel that this session is using.
 
 	private SocketChannel m_sockChannel;
 
+	// Selection key for the socket channel, once registered with a selector
+
+	private SelectionKey m_selectionKey;
+
+	// Queue of response data waiting to be written to the socket channel, and the count of queued bytes
+
+	private LinkedList<ByteBuffer> m_writeQueue = new LinkedList<ByteBuffer>();
+	private int m_queuedBytes;
+
 	// Buffer to read the request header
 
 	protected byte[] m_headerBuf = new byte[4];
@@ -79,6 +111,15 @@ public abstract class ChannelPacketHandler extends PacketHandler {
 		return m_sockChannel;
 	}
 
+	/**
+	 * Set the selection key for the socket channel, the channel must be in non-blocking mode
+	 *
+	 * @param selKey SelectionKey
+	 */
+	public final void setSelectionKey(SelectionKey selKey) {
+		m_selectionKey = selKey;
+	}
+
 	/**
 	 * Return the count of available bytes in the receive input stream
 	 *
@@ -124,10 +165,234 @@ public abstract class ChannelPacketHandler extends PacketHandler {
 
 		ByteBuffer buf = ByteBuffer.wrap( pkt, off, len);
 
-		while ( buf.hasRemaining())
-			m_sockChannel.write( buf);
+		if ( m_selectionKey == null) {
+
+			// Channel is not registered with a selector, blocking write
+
+			while ( buf.hasRemaining())
+				m_sockChannel.write( buf);
+		}
+		else
+			writeOrQueueBuffers( new ByteBuffer[] { buf });
+	}
+
+	/**
+	 * Send a group of SMB response packets using a single gathering write to the socket channel
+	 *
+	 * @param pkts SMBSrvPacket[]
+	 * @param cnt int
+	 * @exception IOException If a network error occurs.
+	 */
+	public void writePackets(SMBSrvPacket[] pkts, int cnt)
+		throws IOException {
+
+		// Fill in the packet headers and wrap each packet buffer
+
+		ByteBuffer[] bufs = new ByteBuffer[cnt];
+
+		for ( int idx = 0; idx < cnt; idx++) {
+			SMBSrvPacket pkt = pkts[idx];
+			int len = setPacketHeader( pkt, pkt.getLength());
+			bufs[idx] = ByteBuffer.wrap( pkt.getBuffer(), 0, len);
+		}
+
+		// Output all the packets to the socket channel
+
+		if ( m_selectionKey == null) {
+
+			// Channel is not registered with a selector, blocking write
+
+			while ( bufs[cnt - 1].hasRemaining())
+				m_sockChannel.write( bufs);
+		}
+		else
+			writeOrQueueBuffers( bufs);
 	}
 
+	/**
+	 * Write the buffers to the non-blocking socket channel, if the write queue is empty, and queue any data that
+	 * could not be written for the request handler thread to send when the channel is writeable.
+	 *
+	 * @param bufs ByteBuffer[]
+	 * @exception IOException If a network error occurs, or the write queue did not drain within the timeout
+	 */
+	private final void writeOrQueueBuffers(ByteBuffer[] bufs)
+		throws IOException {
+
+		synchronized ( m_writeQueue) {
+
+			// Wait if the write queue has reached the limit, the client is not reading the responses
+
+			long deadline = 0L;
+
+			while ( m_queuedBytes >= MaxQueuedWriteBytes) {
+
+				if ( m_sockChannel.isOpen() == false)
+					throw new IOException("Socket channel closed");
+
+				// Check if the queue has not drained within the timeout, hang up the session
+
+				long now = System.currentTimeMillis();
+
+				if ( deadline == 0L)
+					deadline = now + WriteQueueTimeout;
+				else if ( now >= deadline) {
+
+					// DEBUG
+
+					if ( Debug.EnableInfo && hasDebug())
+						Debug.println("Write queue did not drain, queued=" + m_queuedBytes + ", closing channel");
+
+					// Discard the queued data and close the channel, the session is hung up when the timeout
+					// exception is received
+
+					m_writeQueue.clear();
+					m_queuedBytes = 0;
+					m_writeQueue.notifyAll();
+
+					m_sockChannel.close();
+
+					throw new SocketTimeoutException("Write queue timeout, client not reading responses");
+				}
+
+				try {
+					m_writeQueue.wait( Math.min( WriteQueueWait, deadline - now));
+				}
+				catch ( InterruptedException ex) {
+				}
+			}
+
+			// If there is no queued data then write directly to the channel, until the socket send buffer is full
+
+			if ( m_writeQueue.isEmpty()) {
+				while ( bufs[bufs.length - 1].hasRemaining() && m_sockChannel.write( bufs) > 0);
+			}
+
+			// Queue a copy of any remaining data, the caller may reuse or release the packet buffers
+
+			int qlen = 0;
+
+			for ( int idx = 0; idx < bufs.length; idx++) {
+				ByteBuffer buf = bufs[idx];
+
+				if ( buf.hasRemaining()) {
+					ByteBuffer qbuf = ByteBuffer.allocate( buf.remaining());
+					qbuf.put( buf);
+					qbuf.flip();
+
+					m_writeQueue.add( qbuf);
+					qlen += qbuf.remaining();
+				}
+			}
+
+			// Enable write events if data was queued
+
+			if ( qlen > 0) {
+				m_queuedBytes += qlen;
+
+				if ( m_selectionKey.isValid() == false)
+					throw new IOException("Socket channel closed");
+
+				// DEBUG
+
+				if ( Debug.EnableDbg && hasDebug())
+					Debug.println("Queued write data len=" + qlen + ", queued=" + m_queuedBytes + ", bufs=" + m_writeQueue.size());
+
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_WRITE);
+				}
+				m_selectionKey.selector().wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Return the count of queued writes
+	 *
+	 * @return int
+	 */
+	public int getQueuedWriteCount() {
+		synchronized ( m_writeQueue) {
+			return m_writeQueue.size();
+		}
+	}
+
+	/**
+	 * Process the write queue and send pending data until outgoing buffers are full. Called by the request handler
+	 * thread when the socket channel is writeable, write events are disabled when the queue is empty.
+	 *
+	 * @return int Number of requests that were removed from the queue
+	 */
+	public int processQueuedWrites() {
+
+		int procCnt = 0;
+
+		synchronized ( m_writeQueue) {
+
+			try {
+
+				// Write the queued buffers using gathering writes, until the queue is empty or the socket send
+				// buffer is full
+
+				long wrlen = 1;
+
+				while ( m_writeQueue.isEmpty() == false && wrlen > 0) {
+
+					ByteBuffer[] bufs = m_writeQueue.toArray( new ByteBuffer[ Math.min( m_writeQueue.size(), MaxGatherBuffers)]);
+					wrlen = m_sockChannel.write( bufs, 0, Math.min( m_writeQueue.size(), MaxGatherBuffers));
+					m_queuedBytes -= (int) wrlen;
+
+					// Remove the fully written buffers from the queue
+
+					while ( m_writeQueue.isEmpty() == false && m_writeQueue.getFirst().hasRemaining() == false) {
+						m_writeQueue.removeFirst();
+						procCnt++;
+					}
+				}
+			}
+			catch ( IOException ex) {
+
+				// DEBUG
+
+				if ( Debug.EnableDbg && hasDebug())
+					Debug.println("Failed to write queued data, " + ex.getMessage());
+
+				// Discard the queued data, the session will be closed when the socket read fails
+
+				procCnt += m_writeQueue.size();
+
+				m_writeQueue.clear();
+				m_queuedBytes = 0;
+			}
+
+			// Disable write events when the queue is empty
+
+			if ( m_writeQueue.isEmpty() && m_selectionKey != null && m_selectionKey.isValid()) {
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+				}
+			}
+
+			// Wakeup any writers waiting for the queue to drain
+
+			if ( m_queuedBytes < MaxQueuedWriteBytes)
+				m_writeQueue.notifyAll();
+		}
+
+		// Return the count of queued buffers that were written
+
+		return procCnt;
+	}
+
+	/**
+	 * Fill in the protocol header for an SMB response packet
+	 *
+	 * @param pkt SMBSrvPacket
+	 * @param len int
+	 * @return int Length of the packet including the protocol header
+	 */
+	protected abstract int setPacketHeader(SMBSrvPacket pkt, int len);
+
 	/**
 	 * Flush the output socket
 	 *
@@ -142,6 +407,15 @@ public abstract class ChannelPacketHandler extends PacketHandler {
 	 */
 	public void closeHandler() {
 
+		// Discard any queued write data, wakeup waiting writers
+
+		synchronized ( m_writeQueue) {
+			m_writeQueue.clear();
+			m_queuedBytes = 0;
+
+			m_writeQueue.notifyAll();
+		}
+
 		// Close the socket channel
 
 		if ( m_sockChannel != null) {
@@ -36,9 +36,12 @@ import org.alfresco.jlan.smb.server.SMBSrvSession;
  */
 public class NIOCIFSThreadRequest implements ThreadRequest {
 
-	// Maximum packets to run per thread run
+	// Minimum and maximum packets to run per thread run. A session drains the packets already buffered on the
+	// socket channel up to the maximum when the thread pool is idle, the budget is divided between the queued
+	// requests when other sessions are waiting, down to the minimum.
 
-	private static final int MaxPacketsPerRun	= 4;
+	private static final int MinPacketsPerRun	= 4;
+	private static final int MaxPacketsPerRun	= 64;
 
 	// CIFS session
 
@@ -48,6 +51,10 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 
 	private SelectionKey m_selectionKey;
 
+	// Request was requeued after using the full packet budget, rather than queued by a socket read event
+
+	private boolean m_requeued;
+
 	/**
 	 * Class constructor
 	 *
@@ -59,6 +66,19 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 		m_selectionKey = selKey;
 	}
 
+	/**
+	 * Class constructor
+	 *
+	 * @param sess SMBSrvSession
+	 * @param selKey SelectionKey
+	 * @param requeued boolean
+	 */
+	protected NIOCIFSThreadRequest( SMBSrvSession sess, SelectionKey selKey, boolean requeued) {
+		m_sess         = sess;
+		m_selectionKey = selKey;
+		m_requeued     = requeued;
+	}
+
 	/**
 	 * Run the CIFS request
 	 */
@@ -68,6 +88,10 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 
 		if ( m_sess.isShutdown() == false) {
 
+			// Size the packet budget for this run from the thread pool queue depth
+
+			int pktBudget = getPacketBudget();
+
 			// Read one or more packets from the socket for this session
 
 			int pktCount = 0;
@@ -77,7 +101,7 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 
 			SMBSrvPacket smbPkt = null;
 
-			while ( pktCount < MaxPacketsPerRun && morePkts == true && pktError == false) {
+			while ( pktCount < pktBudget && morePkts == true && pktError == false) {
 
 				try {
 
@@ -90,9 +114,10 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 
 					if ( smbPkt == null) {
 
-						// If we have not processed any packets in this run it is an error
+						// If we have not processed any packets in this run it is an error, unless the run was
+						// requeued in which case there may be no more data on the socket
 
-						if ( pktCount == 0) {
+						if ( pktCount == 0 && m_requeued == false) {
 
 							// DEBUG
 
@@ -120,7 +145,6 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 					}
 					else {
 
-
 						// Update the count of packets processed
 
 						pktCount++;
@@ -136,14 +160,6 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 							asyncPkt = true;
 						}
 
-						// If this is the last packet before we hit the maximum packets per thread then
-						// re-enable read events for this socket channel
-
-						else if ( pktCount == MaxPacketsPerRun && asyncPkt == false) {
-							m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_READ);
-							m_selectionKey.selector().wakeup();
-						}
-
 						// Process the CIFS request
 
 						m_sess.processPacket( smbPkt);
@@ -194,23 +210,59 @@ public class NIOCIFSThreadRequest implements ThreadRequest {
 					Debug.println("Sent queued async packets (NIO) count=" + asyncCnt + ", sess=" + m_sess.getUniqueId() + ", addr=" + m_sess.getRemoteAddress().getHostAddress());
 			}
 
-			// Re-enable read events for this socket channel, if there were no errors
+			// Check if the packet budget was used, there may be more packets buffered on the socket
+
+			boolean requeue = pktError == false && pktCount == pktBudget && m_sess.isShutdown() == false;
+
+			if ( requeue == true) {
 
-			if ( pktError == false && (pktCount < MaxPacketsPerRun || asyncPkt == true)) {
+				// Queue another run for the session to the back of the thread pool queue, so that other sessions
+				// get a turn, without re-enabling read events and waking up the selector. Update the last I/O time
+				// as the session does not go through the request handler.
+
+				m_sess.setLastIOTime( System.currentTimeMillis());
+				m_sess.getThreadPool().queueRequest( new NIOCIFSThreadRequest( m_sess, m_selectionKey, true));
+			}
+			else if ( pktError == false) {
 
 				// Re-enable read events for this socket channel
 
-				m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_READ);
+				synchronized ( m_selectionKey) {
+					m_selectionKey.interestOps( m_selectionKey.interestOps() | SelectionKey.OP_READ);
+				}
 				m_selectionKey.selector().wakeup();
 			}
 
+			// Update the packets per run statistics
+
+			m_sess.getPacketBatchStatistics().recordRun( pktCount, requeue);
+
 			// DEBUG
 
 			if ( Debug.EnableInfo && m_sess.hasDebug( SMBSrvSession.DBG_THREADPOOL) && pktCount > 1)
-				Debug.println("Processed " + pktCount + " packets for addr=" + m_sess.getRemoteAddress().getHostAddress() + " in one thread run (max=" + MaxPacketsPerRun + ")");
+				Debug.println("Processed " + pktCount + " packets for addr=" + m_sess.getRemoteAddress().getHostAddress() + " in one thread run (budget=" + pktBudget +
+						(requeue ? ", requeued" : "") + ", stats=" + m_sess.getPacketBatchStatistics() + ")");
 		}
 	}
 
+	/**
+	 * Return the maximum number of packets to process in this thread run. The full budget is allowed when no other
+	 * requests are waiting for a thread, otherwise the budget is shared with the queued requests.
+	 *
+	 * @return int
+	 */
+	protected final int getPacketBudget() {
+
+		// Get the number of requests waiting for a thread
+
+		int queueDepth = m_sess.getThreadPool().getNumberOfRequests();
+
+		if ( queueDepth == 0)
+			return MaxPacketsPerRun;
+
+		return Math.max( MinPacketsPerRun, MaxPacketsPerRun / ( queueDepth + 1));
+	}
+
 	/**
 	 * Return the CIFS request details as a string
 	 *
@@ -156,39 +156,47 @@ public class NetBIOSSMBChannelHandler extends ChannelPacketHandler {
 
 		// Update the NetBIOS header, unless this is  write raw request
 
-		byte[] buf = pkt.getBuffer();
+		if ( writeRaw == false)
+			len = setPacketHeader( pkt, len);
 
-		if ( writeRaw == false) {
+		// Output the data packet
 
-			// Fill in the NetBIOS message header, this is already allocated as part of the users buffer.
+		writeBytes(pkt.getBuffer(), 0, len);
+	}
 
-			buf[0] = (byte) RFCNetBIOSProtocol.SESSION_MESSAGE;
-			buf[1] = (byte) 0;
+	/**
+	 * Fill in the NetBIOS message header, this is already allocated as part of the users buffer.
+	 *
+	 * @param pkt SMBSrvPacket
+	 * @param len int
+	 * @return int
+	 */
+	protected int setPacketHeader(SMBSrvPacket pkt, int len) {
 
-			if ( len > 0xFFFF) {
+		byte[] buf = pkt.getBuffer();
 
-				// Set the >64K flag
+		buf[0] = (byte) RFCNetBIOSProtocol.SESSION_MESSAGE;
+		buf[1] = (byte) 0;
 
-				buf[1] = (byte) 0x01;
+		if ( len > 0xFFFF) {
 
-				// Set the low word of the data length
+			// Set the >64K flag
 
-				DataPacker.putShort((short) (len & 0xFFFF), buf, 2);
-			}
-			else {
+			buf[1] = (byte) 0x01;
 
-				// Set the data length
+			// Set the low word of the data length
 
-				DataPacker.putShort((short) len, buf, 2);
-			}
+			DataPacker.putShort((short) (len & 0xFFFF), buf, 2);
+		}
+		else {
 
-			// Update the length to include the NetBIOS header
+			// Set the data length
 
-			len += RFCNetBIOSProtocol.HEADER_LEN;
+			DataPacker.putShort((short) len, buf, 2);
 		}
 
-		// Output the data packet
+		// Return the length including the NetBIOS header
 
-		writeBytes(buf, 0, len);
+		return len + RFCNetBIOSProtocol.HEADER_LEN;
 	}
 }
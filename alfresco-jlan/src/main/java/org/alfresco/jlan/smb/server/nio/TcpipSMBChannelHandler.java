@@ -149,15 +149,22 @@ public class TcpipSMBChannelHandler extends ChannelPacketHandler {
 	public void writePacket(SMBSrvPacket pkt, int len, boolean writeRaw)
 		throws IOException {
 
-		// Fill in the TCP SMB message header, this is already allocated as
-		// part of the users buffer.
+		// Fill in the TCP SMB message header and output the data packet
 
-		byte[] buf = pkt.getBuffer();
-		DataPacker.putInt(len, buf, 0);
+		int bufSiz = setPacketHeader( pkt, len);
+		writeBytes(pkt.getBuffer(), 0, bufSiz);
+	}
 
-		// Output the data packet
+	/**
+	 * Fill in the TCP SMB message header, this is already allocated as part of the users buffer.
+	 *
+	 * @param pkt SMBSrvPacket
+	 * @param len int
+	 * @return int
+	 */
+	protected int setPacketHeader(SMBSrvPacket pkt, int len) {
 
-		int bufSiz = len + RFCNetBIOSProtocol.HEADER_LEN;
-		writeBytes(buf, 0, bufSiz);
+		DataPacker.putInt(len, pkt.getBuffer(), 0);
+		return len + RFCNetBIOSProtocol.HEADER_LEN;
 	}
 }
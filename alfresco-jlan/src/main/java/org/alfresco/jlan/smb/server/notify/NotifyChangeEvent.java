@@ -89,7 +89,7 @@ public class NotifyChangeEvent {
 		  m_fileName = m_fileName.replace('/', '\\');
 
 		if ( m_oldName.indexOf('/') != -1)
-		  m_oldName.replace('/', '\\');
+		  m_oldName = m_oldName.replace('/', '\\');
 	}
 
 	/**
@@ -181,6 +181,24 @@ public class NotifyChangeEvent {
 		return m_dir;
 	}
 
+	/**
+	 * Check if the specified event is a duplicate of this event, with the same filter, action and path(s)
+	 *
+	 * @param evt NotifyChangeEvent
+	 * @return boolean
+	 */
+	public final boolean isSameEvent(NotifyChangeEvent evt) {
+		if ( evt.getFilter() != getFilter() || evt.getAction() != getAction() || evt.isDirectory() != isDirectory())
+			return false;
+
+		if ( evt.getFileName().equals(getFileName()) == false)
+			return false;
+
+		if ( hasOldFileName())
+			return getOldFileName().equals(evt.getOldFileName());
+		return evt.hasOldFileName() ? false : true;
+	}
+
 	/**
 	 * Return the notify change event as a string
 	 *
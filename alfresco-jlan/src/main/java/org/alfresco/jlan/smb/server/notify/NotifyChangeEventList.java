@@ -19,6 +19,8 @@
 
 package org.alfresco.jlan.smb.server.notify;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
 
 /**
@@ -32,6 +34,10 @@ public class NotifyChangeEventList {
 
 	private Vector<NotifyChangeEvent> m_list;
 
+	//	Most recent event in the list for each path, used to coalesce duplicate events
+
+	private HashMap<String, NotifyChangeEvent> m_lastEvents;
+
 	/**
 	 * Default constructor
 	 */
@@ -73,6 +79,34 @@ public class NotifyChangeEventList {
 	 */
 	public final void addEvent(NotifyChangeEvent evt) {
 		m_list.add(evt);
+
+		if ( m_lastEvents != null)
+			m_lastEvents.put(evt.getFileName(), evt);
+	}
+
+	/**
+	 * Add a change event to the list, unless it is a duplicate of the most recent event in the list for the
+	 * same path
+	 *
+	 * @param evt NotifyChangeEvent
+	 * @return boolean true if the event was added, false if it was coalesced with an existing event
+	 */
+	public final boolean addEventCoalesced(NotifyChangeEvent evt) {
+
+		//	Check if the most recent event for the path is the same event
+
+		if ( m_lastEvents == null)
+			m_lastEvents = new HashMap<String, NotifyChangeEvent>();
+		else {
+			NotifyChangeEvent lastEvt = m_lastEvents.get(evt.getFileName());
+			if ( lastEvt != null && lastEvt.isSameEvent(evt))
+				return false;
+		}
+
+		//	Add the event
+
+		addEvent(evt);
+		return true;
 	}
 
 	/**
@@ -90,7 +124,37 @@ public class NotifyChangeEventList {
 
 		//	Return the required notify event
 
-    return m_list.remove( idx);
+		NotifyChangeEvent evt = m_list.remove( idx);
+		removeLastEvent(evt);
+
+		return evt;
+	}
+
+	/**
+	 * Remove events from the head of the list
+	 *
+	 * @param cnt int
+	 * @param evtList List<NotifyChangeEvent>
+	 * @return int Number of events removed
+	 */
+	public final int removeEvents(int cnt, List<NotifyChangeEvent> evtList) {
+
+		//	Get the events from the head of the list
+
+		if ( cnt > m_list.size())
+			cnt = m_list.size();
+
+		List<NotifyChangeEvent> headList = m_list.subList(0, cnt);
+
+		for ( NotifyChangeEvent evt : headList) {
+			evtList.add(evt);
+			removeLastEvent(evt);
+		}
+
+		//	Remove the events from the list
+
+		headList.clear();
+		return cnt;
 	}
 
 	/**
@@ -98,5 +162,18 @@ public class NotifyChangeEventList {
 	 */
 	public final void removeAllEvents() {
 		m_list.removeAllElements();
+
+		if ( m_lastEvents != null)
+			m_lastEvents.clear();
+	}
+
+	/**
+	 * Clear the most recent event for a path, if it is the specified event
+	 *
+	 * @param evt NotifyChangeEvent
+	 */
+	private final void removeLastEvent(NotifyChangeEvent evt) {
+		if ( m_lastEvents != null && evt != null && m_lastEvents.get(evt.getFileName()) == evt)
+			m_lastEvents.remove(evt.getFileName());
 	}
 }
@@ -19,12 +19,17 @@
 
 package org.alfresco.jlan.smb.server.notify;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import org.alfresco.jlan.debug.Debug;
 import org.alfresco.jlan.server.filesys.DiskDeviceContext;
 import org.alfresco.jlan.server.filesys.FileName;
 import org.alfresco.jlan.server.filesys.NotifyChange;
+import org.alfresco.jlan.server.thread.ThreadRequest;
+import org.alfresco.jlan.server.thread.ThreadRequestPool;
+import org.alfresco.jlan.server.thread.TimedThreadRequest;
 import org.alfresco.jlan.smb.PacketType;
 import org.alfresco.jlan.smb.SMBStatus;
 import org.alfresco.jlan.smb.server.NTTransPacket;
@@ -35,26 +40,56 @@ import org.alfresco.jlan.util.DataPacker;
 /**
  * Notify Change Handler Class
  *
+ * <p>Change events for the device are queued and processed by a thread pool that is shared by all devices, at most
+ * one pool thread processes the events for a device at a time. Duplicate events for the same path are coalesced
+ * whilst queued. If the queue reaches the maximum size the queued events are discarded and all notify requests
+ * are sent a notify enum status, so the clients will enumerate the watched folders again.
+ *
  * @author gkspencer
  */
-public class NotifyChangeHandler implements Runnable {
+public class NotifyChangeHandler {
+
+	//	Interval between checks for expired notify requests, in seconds
+
+	private static final long ExpiryCheckIntervalSecs	= NotifyRequest.DefaultRequestTimeout / 2000L;
+
+	//	Maximum number of queued change events for the device, and the number of events processed before the
+	//	device is requeued to the thread pool
+
+	private static final int MaxQueuedEvents	= 8192;
+	private static final int EventBatchSize		= 256;
 
-	//	Change notification request list and global filter mask
+	//	Thread pool used to process change events, normally the server thread pool shared by all devices, and the
+	//	flag to indicate the pool was created by this handler and must be shutdown with the handler
+
+	private ThreadRequestPool m_threadPool;
+	private boolean m_ownPool;
+
+	//	Change notification request list, path index and global filter mask
 
 	private NotifyRequestList m_notifyList;
+	private NotifyRequestIndex m_notifyIndex;
 	private int m_globalNotifyMask;
 
 	//	Associated disk device context
 
 	private DiskDeviceContext m_diskCtx;
 
-	//	Change notification processing thread
+	//	Change events queue, processing request and expiry timed request
 
-	private Thread m_procThread;
+	private NotifyChangeEventList m_eventList;
+	private ProcessEventsRequest m_processReq;
+	private NotifyExpiryTimedRequest m_expiryReq;
 
-	//	Change events queue
+	//	Event processing request is queued to the thread pool, events were discarded as the queue is full
 
-	private NotifyChangeEventList m_eventList;
+	private boolean m_scheduled;
+	private boolean m_queueOverflow;
+
+	//	Count of coalesced events and queue overflows
+
+	private long m_coalescedEvents;
+	private long m_overflowCount;
 
 	//	Debug output enable
 
@@ -62,7 +97,67 @@ public class NotifyChangeHandler implements Runnable {
 
 	//	Shutdown request flag
 
-	private boolean m_shutdown;
+	private volatile boolean m_shutdown;
+
+	/**
+	 * Process Events Request Class
+	 *
+	 * <p>Processes a batch of queued change events for the device using a thread pool thread.
+	 */
+	private class ProcessEventsRequest implements ThreadRequest {
+
+		/**
+		 * Process queued change events
+		 */
+		public void runRequest() {
+			processEvents();
+		}
+
+		/**
+		 * Return the request as a string
+		 *
+		 * @return String
+		 */
+		public String toString() {
+			return "[NotifyEvents " + m_diskCtx.getDeviceName() + "]";
+		}
+	}
+
+	/**
+	 * Notify Request Expiry Timed Request Class
+	 */
+	private class NotifyExpiryTimedRequest extends TimedThreadRequest {
+
+		/**
+		 * Class constructor
+		 *
+		 * @param name String
+		 * @param interval long
+		 */
+		public NotifyExpiryTimedRequest(String name, long interval) {
+			super(name, -interval, interval);
+		}
+
+		/**
+		 * Expiry checker method
+		 */
+		protected void runTimedRequest() {
+
+			//	Check for expired notify requests
+
+			int expireCnt = removeExpiredRequests();
+
+			//	DEBUG
+
+			if ( Debug.EnableInfo && hasDebug() && expireCnt > 0)
+				Debug.println("Removed " + expireCnt + " expired notify requests");
+
+			//	If the shutdown flag is set then clear the repeat interval so the timed request does not get requeued
+
+			if ( m_shutdown == true)
+				setRepeatInterval(0L);
+		}
+	}
 
 	/**
 	 * Class constructor
@@ -70,23 +165,48 @@ public class NotifyChangeHandler implements Runnable {
 	 * @param diskCtx DiskDeviceContext
 	 */
 	public NotifyChangeHandler(DiskDeviceContext diskCtx) {
+		this(diskCtx, null);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param diskCtx DiskDeviceContext
+	 * @param threadPool ThreadRequestPool, or null to create a thread pool for this handler
+	 */
+	public NotifyChangeHandler(DiskDeviceContext diskCtx, ThreadRequestPool threadPool) {
 
 		//	Save the associated disk context details
 
 		m_diskCtx = diskCtx;
 
+		//	Use the server thread pool, or create a thread pool that is shutdown with the handler
+
+		if ( threadPool != null)
+			m_threadPool = threadPool;
+		else {
+			m_threadPool = new ThreadRequestPool("Notify_" + m_diskCtx.getDeviceName() + "_", ThreadRequestPool.MinimumWorkerThreads);
+			m_ownPool = true;
+		}
+
 		//	Allocate the events queue
 
 		m_eventList = new NotifyChangeEventList();
+		m_processReq = new ProcessEventsRequest();
 
-		//	Create the processing thread
-
-		m_procThread = new Thread(this);
+		//	Queue the notify request expiry checker to the shared thread pool
 
-		m_procThread.setDaemon(true);
-		m_procThread.setName("Notify_" + m_diskCtx.getDeviceName());
+		m_expiryReq = new NotifyExpiryTimedRequest("NotifyExpiry_" + m_diskCtx.getDeviceName(), ExpiryCheckIntervalSecs);
+		getNotifyThreadPool().queueTimedRequest(m_expiryReq);
+	}
 
-		m_procThread.start();
+	/**
+	 * Return the thread pool used to process change events
+	 *
+	 * @return ThreadRequestPool
+	 */
+	protected final ThreadRequestPool getNotifyThreadPool() {
+		return m_threadPool;
 	}
 
 	/**
@@ -98,13 +218,16 @@ public class NotifyChangeHandler implements Runnable {
 
 		//	Check if the request list has been allocated
 
-		if ( m_notifyList == null)
+		if ( m_notifyList == null) {
 			m_notifyList = new NotifyRequestList();
+			m_notifyIndex = new NotifyRequestIndex();
+		}
 
-		//	Add the request to the list
+		//	Add the request to the list and path index
 
 		req.setDiskContext(m_diskCtx);
 		m_notifyList.addRequest(req);
+		m_notifyIndex.addRequest(req);
 
 		//	Regenerate the global notify change filter mask
 
@@ -133,9 +256,10 @@ public class NotifyChangeHandler implements Runnable {
 		if ( m_notifyList == null)
 			return;
 
-		//	Remove the request from the list
+		//	Remove the request from the list and path index
 
 		m_notifyList.removeRequest(req);
+		m_notifyIndex.removeRequest(req);
 
 		//	Regenerate the global notify change filter mask
 
@@ -150,9 +274,15 @@ public class NotifyChangeHandler implements Runnable {
 	 */
 	public final void removeNotifyRequests(SMBSrvSession sess) {
 
+	  //	Check if the request list has been allocated
+
+	  if ( m_notifyList == null)
+	    return;
+
 	  //	Remove all requests owned by the session
 
 	  m_notifyList.removeAllRequestsForSession(sess);
+	  m_notifyIndex.removeAllRequestsForSession(sess);
 
 	  //	Recalculate the global notify change filter mask
 
@@ -258,6 +388,35 @@ public class NotifyChangeHandler implements Runnable {
 		return m_notifyList != null ? m_notifyList.numberOfRequests() : 0;
 	}
 
+	/**
+	 * Return the number of queued change events
+	 *
+	 * @return int
+	 */
+	public final int getQueuedEventCount() {
+		synchronized ( m_eventList) {
+			return m_eventList.numberOfEvents();
+		}
+	}
+
+	/**
+	 * Return the number of change events that were coalesced with an already queued event
+	 *
+	 * @return long
+	 */
+	public final long getCoalescedEventCount() {
+		return m_coalescedEvents;
+	}
+
+	/**
+	 * Return the number of times the change event queue overflowed
+	 *
+	 * @return long
+	 */
+	public final long getOverflowCount() {
+		return m_overflowCount;
+	}
+
 	/**
 	 * Check if the change filter has the specified flag enabled
 	 *
@@ -443,23 +602,35 @@ public class NotifyChangeHandler implements Runnable {
 	 */
 	public final void shutdownRequest() {
 
-		//	Check if the processing thread is valid
+		//	Set the shutdown flag
 
-		if ( m_procThread != null) {
+		m_shutdown = true;
 
-			//	Set the shutdown flag
+		//	Remove the expiry checker from the thread pool
 
-			m_shutdown = true;
+		if ( m_expiryReq != null) {
+			m_expiryReq.setRepeatInterval(0L);
+			getNotifyThreadPool().removeTimedRequest(m_expiryReq);
+		}
 
-			//	Wakeup the processing thread
+		//	Discard any queued events
 
-      m_procThread.interrupt();
+		synchronized ( m_eventList) {
+			m_eventList.removeAllEvents();
 		}
+
+		//	Shutdown the thread pool, if created by this handler
+
+		if ( m_ownPool)
+			m_threadPool.shutdownThreadPool();
 	}
 
 	/**
 	 * Send buffered change notifications for a session
 	 *
+	 * <p>The buffered events are packed into a single notification response. If the notify enum flag is set, or the
+	 * events will not fit into the clients buffer, a notify enum status is returned instead.
+	 *
 	 * @param req NotifyRequest
 	 * @param evtList NotifyChangeEventList
 	 */
@@ -487,161 +658,171 @@ public class NotifyChangeHandler implements Runnable {
 		ntpkt.setNTParameter(1, 0);					//	total data count
 		ntpkt.setNTParameter(3, pos - 4);		//	offset to parameter block
 
-		//	Check if the notify enum status is set
+		//	Pack the buffered change notification events
 
-		if ( req.hasNotifyEnum()) {
+		int prmLen = 0;
 
-			//	Set the parameter block length
+		if ( req.hasNotifyEnum() == false) {
 
-			ntpkt.setNTParameter(0, 0);				//	total parameter block count
-			ntpkt.setNTParameter(2, 0);				//	parameter block count for this packet
-			ntpkt.setNTParameter(6, pos - 4);	//	data block offset
-			ntpkt.setByteCount();
+			//	Check if there are any buffered events
 
-			ntpkt.setCommand(PacketType.NTTransact);
-      ntpkt.setLongErrorCode(SMBStatus.NTNotifyEnumDir);
+			if ( evtList == null || evtList.numberOfEvents() == 0)
+				return;
 
-			ntpkt.setFlags(SMBSrvPacket.FLG_CANONICAL + SMBSrvPacket.FLG_CASELESS);
-			ntpkt.setFlags2(SMBSrvPacket.FLG2_UNICODE + SMBSrvPacket.FLG2_LONGERRORCODE);
+			//	Pack the events, if they do not fit into the buffer then send a notify enum status
 
-			//	Set the notification request id to indicate that it has completed
+			prmLen = packNotifyEvents(ntpkt, req, evtList, pos);
 
-			req.setCompleted(true, tmo);
-			req.setNotifyEnum( false);
+			if ( prmLen == -1) {
+				req.setNotifyEnum(true);
+				ntpkt.setPosition(pos);
+				prmLen = 0;
+			}
+		}
 
-			//	Set the response for the current notify request
+		//	Set the parameter block length
 
-			ntpkt.setMultiplexId(req.getMultiplexId());
-			ntpkt.setTreeId(req.getTreeId());
-			ntpkt.setUserId(req.getUserId());
-			ntpkt.setProcessId(req.getProcessId());
+		ntpkt.alignBytePointer();
 
-			try {
+		ntpkt.setNTParameter(0, prmLen);				//	total parameter block count
+		ntpkt.setNTParameter(2, prmLen);				//	parameter block count for this packet
+		ntpkt.setNTParameter(6, ntpkt.getPosition() - 4);
+																				//	data block offset
+		ntpkt.setByteCount();
 
-				//	Send the response to the current session
+		ntpkt.setCommand(PacketType.NTTransact);
+		ntpkt.setLongErrorCode(req.hasNotifyEnum() ? SMBStatus.NTNotifyEnumDir : 0);
 
-				if ( req.getSession().sendAsynchResponseSMB(ntpkt, ntpkt.getLength()) == false) {
+		ntpkt.setFlags(SMBSrvPacket.FLG_CANONICAL + SMBSrvPacket.FLG_CASELESS);
+		ntpkt.setFlags2(SMBSrvPacket.FLG2_UNICODE + SMBSrvPacket.FLG2_LONGERRORCODE);
 
-					//	Asynchronous request was queued, clone the request packet
+		//	Set the notification request id to indicate that it has completed
 
-					ntpkt = new NTTransPacket(ntpkt);
-				}
-			}
-			catch (Exception ex) {
+		req.setCompleted(true, tmo);
+		req.setNotifyEnum( false);
 
-        //  DEBUG
+		//	Set the response for the current notify request
 
-        if ( Debug.EnableError && hasDebug())
-          Debug.println("Failed to send change notification, " + ex.getMessage());
-			}
-		}
-		else if ( evtList != null) {
-
-			//	Pack the change notification events
+		ntpkt.setMultiplexId(req.getMultiplexId());
+		ntpkt.setTreeId(req.getTreeId());
+		ntpkt.setUserId(req.getUserId());
+		ntpkt.setProcessId(req.getProcessId());
 
-			for ( int i = 0; i < evtList.numberOfEvents(); i++) {
+		try {
 
-			  //	Get the current event from the list
+			//	Send the response to the current session
 
-			  NotifyChangeEvent evt = evtList.getEventAt(i);
+			req.getSession().sendAsynchResponseSMB(ntpkt, ntpkt.getLength());
+		}
+		catch (Exception ex) {
 
-				//	Get the relative file name for the event
+      //  DEBUG
 
-				String relName = FileName.makeRelativePath(req.getWatchPath(), evt.getFileName());
-				if ( relName == null)
-				  relName = evt.getShortFileName();
+      if ( Debug.EnableError && hasDebug())
+        Debug.println("Failed to send change notification, " + ex.getMessage());
+		}
 
-				//	DEBUG
+		//	DEBUG
 
-				if ( Debug.EnableInfo && hasDebug())
-				  Debug.println("  Notify evtPath=" + evt.getFileName()  + ", reqPath=" + req.getWatchPath() + ", relative=" + relName);
+		if ( Debug.EnableInfo && hasDebug())
+			Debug.println("sendBufferedNotifications() done, prmLen=" + prmLen);
+	}
 
-				//	Pack the notification structure
+	/**
+	 * Pack change notification events into a notification response
+	 *
+	 * @param ntpkt NTTransPacket
+	 * @param req NotifyRequest
+	 * @param evtList NotifyChangeEventList
+	 * @param pos int
+	 * @return int Length of the packed events, or -1 if the events do not fit into the buffer
+	 */
+	private final int packNotifyEvents(NTTransPacket ntpkt, NotifyRequest req, NotifyChangeEventList evtList, int pos) {
 
-				ntpkt.packInt(0);																//	offset to next structure
-				ntpkt.packInt(evt.getAction());									//	action
-				ntpkt.packInt(relName.length() * 2);						//	file name length
-				ntpkt.packString(relName, true, false);
+		//	Get the maximum position for the packed events, limited by the packet buffer and the client buffer size
 
-				//	Check if the event is a file/directory rename, if so then add the old file/directory details
+		int maxPos = ntpkt.getBuffer().length - 4;
+		if ( req.getMaximumBufferSize() > 0 && pos + req.getMaximumBufferSize() < maxPos)
+			maxPos = pos + req.getMaximumBufferSize();
 
-				if ( evt.getAction() == NotifyChange.ActionRenamedNewName &&
-						 evt.hasOldFileName()) {
+		int prevEntry = -1;
 
-					//	Set the offset from the first structure to this structure
+		for ( int i = 0; i < evtList.numberOfEvents(); i++) {
 
-					int newPos = DataPacker.longwordAlign(ntpkt.getPosition());
-					DataPacker.putIntelInt(newPos - pos, ntpkt.getBuffer(), pos);
+		  //	Get the current event from the list
 
-					//	Get the old file name
+		  NotifyChangeEvent evt = evtList.getEventAt(i);
 
-					relName = FileName.makeRelativePath(req.getWatchPath(), evt.getOldFileName());
-					if ( relName == null)
-					  relName = evt.getOldFileName();
+			//	Get the relative file name for the event
 
-					//	Add the old file/directory name details
+			String relName = FileName.makeRelativePath(req.getWatchPath(), evt.getFileName());
+			if ( relName == null)
+			  relName = evt.getShortFileName();
 
-					ntpkt.packInt(0);																//	offset to next structure
-					ntpkt.packInt(NotifyChange.ActionRenamedOldName);
-					ntpkt.packInt(relName.length() * 2);						//	file name length
-					ntpkt.packString(relName, true, false);
-				}
+			//	Check if the event is a file/directory rename, if so then get the old file/directory name
 
-				//	Calculate the parameter block length, longword align the buffer position
+			String oldRelName = null;
 
-				int prmLen = ntpkt.getPosition() - pos;
-				ntpkt.alignBytePointer();
-				pos = (pos + 3) & 0xFFFFFFFC;
+			if ( evt.getAction() == NotifyChange.ActionRenamedNewName && evt.hasOldFileName()) {
+				oldRelName = FileName.makeRelativePath(req.getWatchPath(), evt.getOldFileName());
+				if ( oldRelName == null)
+				  oldRelName = evt.getOldFileName();
+			}
 
-				//	Set the parameter block length
+			//	DEBUG
 
-				ntpkt.setNTParameter(0, prmLen);		//	total parameter block count
-				ntpkt.setNTParameter(2, prmLen);		//	parameter block count for this packet
-				ntpkt.setNTParameter(6, ntpkt.getPosition() - 4);
-																						//	data block offset
-				ntpkt.setByteCount();
+			if ( Debug.EnableInfo && hasDebug())
+			  Debug.println("  Notify evtPath=" + evt.getFileName()  + ", reqPath=" + req.getWatchPath() + ", relative=" + relName);
 
-				ntpkt.setCommand(PacketType.NTTransact);
+			//	Check if the notification structure(s) will fit into the buffer
 
-				ntpkt.setFlags(SMBSrvPacket.FLG_CANONICAL + SMBSrvPacket.FLG_CASELESS);
-				ntpkt.setFlags2(SMBSrvPacket.FLG2_UNICODE + SMBSrvPacket.FLG2_LONGERRORCODE);
+			int needLen = 12 + relName.length() * 2;
+			if ( oldRelName != null)
+				needLen = DataPacker.longwordAlign(needLen) + 12 + oldRelName.length() * 2;
 
-				//	Set the notification request id to indicate that it has completed
+			if ( DataPacker.longwordAlign(ntpkt.getPosition()) + needLen > maxPos)
+				return -1;
 
-				req.setCompleted(true, tmo);
+			//	Pack the notification structure(s)
 
-				//	Set the response for the current notify request
+			prevEntry = packNotifyEntry(ntpkt, prevEntry, evt.getAction(), relName);
 
-				ntpkt.setMultiplexId(req.getMultiplexId());
-				ntpkt.setTreeId(req.getTreeId());
-				ntpkt.setUserId(req.getUserId());
-				ntpkt.setProcessId(req.getProcessId());
+			if ( oldRelName != null)
+				prevEntry = packNotifyEntry(ntpkt, prevEntry, NotifyChange.ActionRenamedOldName, oldRelName);
+		}
 
-				try {
+		//	Return the length of the packed events
 
-					//	Send the response to the current session
+		return ntpkt.getPosition() - pos;
+	}
 
-					if ( req.getSession().sendAsynchResponseSMB(ntpkt, ntpkt.getLength()) == false) {
+	/**
+	 * Pack a change notification structure, and chain it to the previous structure
+	 *
+	 * @param ntpkt NTTransPacket
+	 * @param prevEntry int
+	 * @param action int
+	 * @param relName String
+	 * @return int Offset of the new structure
+	 */
+	private final int packNotifyEntry(NTTransPacket ntpkt, int prevEntry, int action, String relName) {
 
-						//	Asynchronous request was queued, clone the request packet
+		//	Longword align the structure and set the offset from the previous structure to this structure
 
-						ntpkt = new NTTransPacket(ntpkt);
-					}
-				}
-				catch (Exception ex) {
+		ntpkt.alignBytePointer();
+		int entryPos = ntpkt.getPosition();
 
-          //  DEBUG
+		if ( prevEntry != -1)
+			DataPacker.putIntelInt(entryPos - prevEntry, ntpkt.getBuffer(), prevEntry);
 
-          if ( Debug.EnableError && hasDebug())
-            Debug.println("Failed to send change notification, " + ex.getMessage());
-				}
-			}
-		}
+		//	Pack the notification structure
 
-		//	DEBUG
+		ntpkt.packInt(0);																//	offset to next structure
+		ntpkt.packInt(action);													//	action
+		ntpkt.packInt(relName.length() * 2);						//	file name length
+		ntpkt.packString(relName, true, false);
 
-		if ( Debug.EnableInfo && hasDebug())
-			Debug.println("sendBufferedNotifications() done");
+		return entryPos;
 	}
 
 	/**
@@ -660,13 +841,132 @@ public class NotifyChangeHandler implements Runnable {
 
 		synchronized ( m_eventList) {
 
-			//	Add the event to the list
+			//	If the queue has overflowed then all notify requests will be sent a notify enum status, the event is
+			//	not required
+
+			if ( m_queueOverflow == true || m_shutdown == true)
+				return;
+
+			//	Check if the queue is full, if so then discard the queued events
+
+			if ( m_eventList.numberOfEvents() >= MaxQueuedEvents) {
+
+				m_eventList.removeAllEvents();
+				m_queueOverflow = true;
+				m_overflowCount++;
+
+				//	DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println("Notification queue overflow, device=" + m_diskCtx.getDeviceName());
+			}
+
+			//	Add the event to the list, unless it duplicates the most recent queued event for the path
+
+			else if ( m_eventList.addEventCoalesced(evt) == false) {
+				m_coalescedEvents++;
+				return;
+			}
+
+			//	Queue the event processing request to the thread pool, if not already queued
+
+			if ( m_scheduled == true)
+				return;
+			m_scheduled = true;
+		}
+
+		getNotifyThreadPool().queueRequest(m_processReq);
+	}
+
+	/**
+	 * Process a batch of queued change events, requeue the processing request if there are more events queued
+	 */
+	protected final void processEvents() {
+
+		//	Get a batch of events from the queue, and the queue overflow status
+
+		ArrayList<NotifyChangeEvent> evtList = new ArrayList<NotifyChangeEvent>(EventBatchSize);
+		boolean overflow = false;
+
+		synchronized ( m_eventList) {
+			overflow = m_queueOverflow;
+			m_queueOverflow = false;
+
+			m_eventList.removeEvents(EventBatchSize, evtList);
+		}
+
+		//	If the queue overflowed then send a notify enum status to all notify requests
+
+		if ( overflow == true && m_shutdown == false)
+			notifyEnumAllRequests();
+
+		//	Process the events
 
-			m_eventList.addEvent(evt);
+		for ( int i = 0; i < evtList.size() && m_shutdown == false; i++) {
 
-			//	Notify the processing thread that there are events to process
+			NotifyChangeEvent evt = evtList.get(i);
 
-			m_eventList.notifyAll();
+			try {
+
+				//	Send out change notifications to clients that match the filter/path
+
+				int cnt = sendChangeNotification(evt);
+
+				//	DEBUG
+
+				if ( Debug.EnableInfo && hasDebug())
+					Debug.println("Change notify event=" + evt.toString() + ", clients=" + cnt);
+			}
+			catch (Throwable ex) {
+			  Debug.println("NotifyChangeHandler event processing");
+			  Debug.println(ex);
+			}
+		}
+
+		//	Check if there are more events to process, if so then requeue the processing request so that other devices
+		//	get a share of the thread pool
+
+		synchronized ( m_eventList) {
+			if ( m_shutdown == true || ( m_eventList.numberOfEvents() == 0 && m_queueOverflow == false)) {
+				m_scheduled = false;
+				return;
+			}
+		}
+
+		getNotifyThreadPool().queueRequest(m_processReq);
+	}
+
+	/**
+	 * Send a notify enum status to all notify requests, or set the notify enum status on requests that are waiting to
+	 * be reset by the client
+	 */
+	protected final void notifyEnumAllRequests() {
+
+		//	Check if the request list has been allocated
+
+		if ( m_notifyList == null)
+			return;
+
+		//	Take a copy of the request list, requests may be added or removed by other threads whilst the notify
+		//	enum responses are sent
+
+		NotifyRequest[] reqs = m_notifyList.getRequests();
+
+		for ( int i = 0; i < reqs.length; i++) {
+
+			//	Get the current request
+
+			NotifyRequest req = reqs[i];
+
+			//	Clear any buffered events and set the notify enum status
+
+			req.removeAllEvents();
+			req.setNotifyEnum(true);
+
+			//	If the request is active then send the notify enum status now
+
+			if ( req.isCompleted() == false)
+				sendBufferedNotifications(req, null);
 		}
 	}
 
@@ -863,197 +1163,83 @@ public class NotifyChangeHandler implements Runnable {
 	 * @param isdir boolean
 	 * @return Vector
 	 */
-	protected final synchronized Vector findMatchingRequests(int typ, String path, boolean isdir) {
+	protected final Vector findMatchingRequests(int typ, String path, boolean isdir) {
 
 		//	Create a vector to hold the matching requests
 
-		Vector reqList = new Vector();
-
-		//	Normalise the path string
+		Vector<NotifyRequest> reqList = new Vector<NotifyRequest>();
 
-		String matchPath = path.toUpperCase();
+		if ( m_notifyIndex == null)
+			return reqList;
 
-		//	Search for matching requests and remove them from the main request list
+		//	Find the matching requests using the path index, only the requests on the path of the changed
+		//	file/directory are checked. Expired requests are skipped, they are removed by the expiry timer.
 
-		int idx = 0;
-		long curTime = System.currentTimeMillis();
+		m_notifyIndex.findMatchingRequests(typ, path, isdir, System.currentTimeMillis(), reqList);
 
-		boolean removedReq = false;
-
-		while ( idx < m_notifyList.numberOfRequests()) {
+		for ( int i = 0; i < reqList.size(); i++) {
 
-			//	Get the current request
+			//	For all notify requests in the matching list we set the 'notify pending' state on the associated SMB
+			//	session so that any socket writes on those sessions are synchronized until the change notification
+			//	response has been sent.
 
-			NotifyRequest curReq = m_notifyList.getRequest(idx);
+			NotifyRequest curReq = reqList.get(i);
+			curReq.getSession().setNotifyPending(true);
 
 			//	DEBUG
 
-			if ( Debug.EnableInfo && hasDebug())
-				Debug.println("findMatchingRequests() req=" + curReq.toString());
-
-			//	Check if the request has expired
-
-			if ( curReq.hasExpired(curTime)) {
-
-				//	Remove the request from the list
-
-				m_notifyList.removeRequestAt(idx);
-
-				//	DEBUG
-
-				if ( Debug.EnableInfo && hasDebug()) {
-					Debug.println("Removed expired request req=" + curReq.toString());
-					if ( curReq.getBufferedEventList() != null) {
-					  NotifyChangeEventList bufList = curReq.getBufferedEventList();
-					  Debug.println("  Buffered events = " + bufList.numberOfEvents());
-					  for ( int b = 0; b < bufList.numberOfEvents(); b++)
-					    Debug.println("    " + (b+1) + ": " + bufList.getEventAt(b));
-					}
-				}
-
-				//	Indicate that q request has been removed from the queue, the global filter mask will need
-				//	to be recalculated
-
-				removedReq = true;
-
-				//	Restart the loop
-
-				continue;
-			}
-
-			//	Check if the request matches the filter
-
-			if ( curReq.hasFilter(typ)) {
-
-			  //	DEBUG
-
-			  if ( Debug.EnableInfo && hasDebug())
-			    Debug.println("  hasFilter typ=" + typ + ", watchTree=" + curReq.hasWatchTree() + ", watchPath=" + curReq.getWatchPath() +
-			        ", matchPath=" + matchPath + ", isDir=" + isdir);
-
-				//	Check if the path matches or is a subdirectory and the whole tree is being watched
-
-				boolean wantReq = false;
-
-				if ( matchPath.length() == 0 && curReq.hasWatchTree())
-					wantReq = true;
-				else if ( curReq.hasWatchTree() == true && matchPath.startsWith(curReq.getWatchPath()) == true)
-					wantReq = true;
-				else if ( isdir == true && matchPath.compareTo(curReq.getWatchPath()) == 0)
-					wantReq = true;
-				else if ( isdir == false) {
-
-					//	Strip the file name from the path and compare
-
-					String[] paths = FileName.splitPath(matchPath);
-
-					if ( paths != null && paths[0] != null) {
-
-						//	Check if the directory part of the path is the directory being watched
-
-						if ( curReq.getWatchPath().equalsIgnoreCase(paths[0]))
-							wantReq = true;
-					}
-				}
-
-				//	Check if the request is required
-
-				if ( wantReq == true) {
-
-					//	For all notify requests in the matching list we set the 'notify pending' state on the associated SMB
-					//	session so that any socket writes on those sessions are synchronized until the change notification
-					//	response has been sent.
-
-					curReq.getSession().setNotifyPending(true);
-
-					//	Add the request to the matching list
-
-					reqList.addElement(curReq);
-
-					//	DEBUG
-
-				  if ( Debug.EnableInfo && hasDebug())
-				    Debug.println("  Added request to matching list");
-				}
-			}
-
-			//	Move to the next request in the list
-
-			idx++;
+		  if ( Debug.EnableInfo && hasDebug())
+		    Debug.println("findMatchingRequests() matched req=" + curReq + ", typ=" + typ + ", path=" + path + ", isDir=" + isdir);
 		}
 
-		//	If requests were removed from the queue the global filter mask must be recalculated
-
-		if ( removedReq == true)
-		  m_globalNotifyMask = m_notifyList.getGlobalFilter();
-
 		//	Return the matching request list
 
 		return reqList;
 	}
 
 	/**
-	 * Asynchronous change notification processing thread
+	 * Remove expired notify requests from the request list and path index
+	 *
+	 * @return int
 	 */
-	public void run() {
-
-		//	Loop until shutdown
-
-		while ( m_shutdown == false) {
-
-			//	Wait for some events to process
-
-			synchronized ( m_eventList) {
-				try {
-					m_eventList.wait();
-				}
-				catch (InterruptedException ex) {
-				}
-			}
-
-			//	Check if the shutdown flag has been set
+	protected final int removeExpiredRequests() {
 
-			if ( m_shutdown == true)
-				break;
-
-			//	Loop until all pending events have been processed
-
-			while ( m_eventList.numberOfEvents() > 0) {
-
-				//	Remove the event at the head of the queue
+		//	Check if the request list has been allocated
 
-				NotifyChangeEvent evt = null;
+		if ( m_notifyIndex == null)
+			return 0;
 
-				synchronized ( m_eventList) {
-					evt = m_eventList.removeEventAt(0);
-				}
+		//	Find the expired requests
 
-				//	Check if the event is valid
+		List<NotifyRequest> expired = m_notifyIndex.removeExpiredRequests(System.currentTimeMillis());
+		if ( expired == null)
+			return 0;
 
-				if ( evt == null)
-					break;
+		for ( NotifyRequest curReq : expired) {
 
-				try {
+			//	Remove the request from the list
 
-					//	Send out change notifications to clients that match the filter/path
+			m_notifyList.removeRequest(curReq);
 
-					int cnt = sendChangeNotification(evt);
-
-					//	DEBUG
+			//	DEBUG
 
-					if ( Debug.EnableInfo && hasDebug())
-						Debug.println("Change notify event=" + evt.toString() + ", clients=" + cnt);
-				}
-				catch (Throwable ex) {
-				  Debug.println("NotifyChangeHandler thread");
-				  Debug.println(ex);
+			if ( Debug.EnableInfo && hasDebug()) {
+				Debug.println("Removed expired request req=" + curReq.toString());
+				if ( curReq.getBufferedEventList() != null) {
+				  NotifyChangeEventList bufList = curReq.getBufferedEventList();
+				  Debug.println("  Buffered events = " + bufList.numberOfEvents());
+				  for ( int b = 0; b < bufList.numberOfEvents(); b++)
+				    Debug.println("    " + (b+1) + ": " + bufList.getEventAt(b));
 				}
 			}
 		}
 
-		//	DEBUG
+		//	Requests were removed from the queue so the global filter mask must be recalculated
 
-		if ( Debug.EnableInfo && hasDebug())
-			Debug.println("NotifyChangeHandler thread exit");
+		m_globalNotifyMask = m_notifyList.getGlobalFilter();
+
+		//	Return the count of expired requests
+
+		return expired.size();
 	}
 }
@@ -38,6 +38,11 @@ public class NotifyRequest {
 
 	public final static long DefaultRequestTimeout	= 10000L;	//	10 seconds
 
+	//	Default number of events to buffer whilst waiting for the request to be reset, if more events occur
+	//	then the client is sent a notify enum status
+
+	public final static int DefaultMaxQueueLength	= 64;
+
 	//	Notify change filter
 
 	private int m_filter;
@@ -72,6 +77,10 @@ public class NotifyRequest {
 
 	private int m_maxQueueLen;
 
+	//	Maximum size of the notification data the client will accept, or zero if not known
+
+	private int m_maxBufferSize;
+
 	//	Disk device context that the request is associated with
 
 	private DiskDeviceContext m_diskCtx;
@@ -348,6 +357,15 @@ public class NotifyRequest {
 		return m_maxQueueLen;
 	}
 
+	/**
+	 * Return the maximum size of the notification data the client will accept, or zero if not known
+	 *
+	 * @return int
+	 */
+	public final int getMaximumBufferSize() {
+		return m_maxBufferSize;
+	}
+
 	/**
 	 * Determine if there are buffered events
 	 *
@@ -389,9 +407,10 @@ public class NotifyRequest {
 
 		if ( m_bufferedEvents.numberOfEvents() < getMaximumQueueLength()) {
 
-			//	Buffer the event until the client resets the notify filter
+			//	Buffer the event until the client resets the notify filter, duplicate events for the same path
+			//	are only buffered once
 
-			m_bufferedEvents.addEvent(evt);
+			m_bufferedEvents.addEventCoalesced(evt);
 		}
 		else {
 
@@ -429,6 +448,15 @@ public class NotifyRequest {
 		m_notifyEnum = ena;
 	}
 
+	/**
+	 * Set the maximum size of the notification data the client will accept
+	 *
+	 * @param bufSize int
+	 */
+	public final void setMaximumBufferSize(int bufSize) {
+		m_maxBufferSize = bufSize;
+	}
+
 	/**
 	 * Set the associated disk device context
 	 *
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2006-2010 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.smb.server.notify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.jlan.smb.server.SMBSrvSession;
+
+/**
+ * Notify Request Index Class
+ *
+ * <p>Indexes change notification requests by watch path using a path trie, with one node per upper case path
+ * component. Each node holds the requests watching the directory, split into requests that watch the whole
+ * subtree and requests that only watch the directory itself. A change event only visits the requests on the
+ * nodes along its path.
+ *
+ * @author gkspencer
+ */
+public class NotifyRequestIndex {
+
+	/**
+	 * Path Node Class
+	 */
+	private static class PathNode {
+
+		// Parent node and path component name
+
+		private PathNode m_parent;
+		private String m_name;
+
+		// Child nodes, by upper case path component
+
+		private HashMap<String, PathNode> m_children;
+
+		// Requests watching the whole subtree, and requests watching this directory only
+
+		private ArrayList<NotifyRequest> m_treeWatchers;
+		private ArrayList<NotifyRequest> m_dirWatchers;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param parent PathNode
+		 * @param name String
+		 */
+		public PathNode( PathNode parent, String name) {
+			m_parent = parent;
+			m_name = name;
+		}
+
+		/**
+		 * Return the child node for a path component, optionally creating the node
+		 *
+		 * @param name String
+		 * @param create boolean
+		 * @return PathNode
+		 */
+		public final PathNode getChild( String name, boolean create) {
+			PathNode child = m_children != null ? m_children.get( name) : null;
+
+			if ( child == null && create == true) {
+				if ( m_children == null)
+					m_children = new HashMap<String, PathNode>();
+
+				child = new PathNode( this, name);
+				m_children.put( name, child);
+			}
+
+			return child;
+		}
+
+		/**
+		 * Check if the node has no requests and no child nodes
+		 *
+		 * @return boolean
+		 */
+		public final boolean isEmpty() {
+			if (( m_children != null && m_children.size() > 0) ||
+					( m_treeWatchers != null && m_treeWatchers.size() > 0) ||
+					( m_dirWatchers != null && m_dirWatchers.size() > 0))
+				return false;
+			return true;
+		}
+	}
+
+	// Root node of the path trie
+
+	private PathNode m_root = new PathNode( null, "");
+
+	// Node for each indexed request
+
+	private HashMap<NotifyRequest, PathNode> m_reqNodes = new HashMap<NotifyRequest, PathNode>();
+
+	/**
+	 * Add a request to the index
+	 *
+	 * @param req NotifyRequest
+	 */
+	public final synchronized void addRequest( NotifyRequest req) {
+
+		// Find, or create, the node for the watch path
+
+		PathNode node = m_root;
+		String path = req.getWatchPath();
+
+		int pos = 0;
+		int len = path.length();
+
+		while ( pos < len) {
+
+			// Skip path seperators
+
+			if ( path.charAt( pos) == '\\') {
+				pos++;
+				continue;
+			}
+
+			// Get the path component
+
+			int endPos = path.indexOf( '\\', pos);
+			if ( endPos == -1)
+				endPos = len;
+
+			node = node.getChild( path.substring( pos, endPos), true);
+			pos = endPos;
+		}
+
+		// Add the request to the node
+
+		if ( req.hasWatchTree()) {
+			if ( node.m_treeWatchers == null)
+				node.m_treeWatchers = new ArrayList<NotifyRequest>();
+			node.m_treeWatchers.add( req);
+		}
+		else {
+			if ( node.m_dirWatchers == null)
+				node.m_dirWatchers = new ArrayList<NotifyRequest>();
+			node.m_dirWatchers.add( req);
+		}
+
+		m_reqNodes.put( req, node);
+	}
+
+	/**
+	 * Remove a request from the index
+	 *
+	 * @param req NotifyRequest
+	 * @return boolean
+	 */
+	public final synchronized boolean removeRequest( NotifyRequest req) {
+
+		// Find the node for the request
+
+		PathNode node = m_reqNodes.remove( req);
+		if ( node == null)
+			return false;
+
+		// Remove the request from the node
+
+		removeFromList( node.m_treeWatchers, req);
+		removeFromList( node.m_dirWatchers, req);
+
+		// Remove empty nodes
+
+		while ( node.m_parent != null && node.isEmpty()) {
+			node.m_parent.m_children.remove( node.m_name);
+			node = node.m_parent;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove all requests for the specified session
+	 *
+	 * @param sess SMBSrvSession
+	 */
+	public final synchronized void removeAllRequestsForSession( SMBSrvSession sess) {
+
+		// Find the requests owned by the session
+
+		ArrayList<NotifyRequest> sessReqs = new ArrayList<NotifyRequest>();
+
+		for ( NotifyRequest req : m_reqNodes.keySet()) {
+			if ( req.getSession() == sess)
+				sessReqs.add( req);
+		}
+
+		// Remove the requests
+
+		for ( NotifyRequest req : sessReqs)
+			removeRequest( req);
+	}
+
+	/**
+	 * Remove requests that have expired
+	 *
+	 * @param curTime long
+	 * @return List<NotifyRequest> Expired requests, or null if no requests have expired
+	 */
+	public final synchronized List<NotifyRequest> removeExpiredRequests( long curTime) {
+
+		ArrayList<NotifyRequest> expired = null;
+
+		Iterator<Map.Entry<NotifyRequest, PathNode>> iter = m_reqNodes.entrySet().iterator();
+
+		while ( iter.hasNext()) {
+
+			// Check if the current request has expired
+
+			Map.Entry<NotifyRequest, PathNode> entry = iter.next();
+			NotifyRequest req = entry.getKey();
+
+			if ( req.hasExpired( curTime)) {
+
+				// Remove the request from its node
+
+				PathNode node = entry.getValue();
+
+				removeFromList( node.m_treeWatchers, req);
+				removeFromList( node.m_dirWatchers, req);
+
+				iter.remove();
+
+				while ( node.m_parent != null && node.isEmpty()) {
+					node.m_parent.m_children.remove( node.m_name);
+					node = node.m_parent;
+				}
+
+				// Add to the expired list
+
+				if ( expired == null)
+					expired = new ArrayList<NotifyRequest>();
+				expired.add( req);
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * Find the requests that match a change event type and path
+	 *
+	 * <p>Requests that watch the subtree of a directory on the path, or of the path itself, match. Requests that
+	 * watch only one directory match a directory event on that directory or a file event for a file within that
+	 * directory. An empty path matches all subtree requests.
+	 *
+	 * @param typ int
+	 * @param path String
+	 * @param isdir boolean
+	 * @param curTime long
+	 * @param reqList List<NotifyRequest>
+	 * @return int Number of matching requests
+	 */
+	public final synchronized int findMatchingRequests( int typ, String path, boolean isdir, long curTime, List<NotifyRequest> reqList) {
+
+		int startCnt = reqList.size();
+
+		// An empty path matches all requests watching a subtree
+
+		if ( path.length() == 0) {
+			addAllTreeWatchers( m_root, typ, curTime, reqList);
+			return reqList.size() - startCnt;
+		}
+
+		// Normalise the path string
+
+		String matchPath = path.toUpperCase();
+		if ( matchPath.indexOf( '/') != -1)
+			matchPath = matchPath.replace( '/', '\\');
+
+		// Walk the path, adding the subtree watchers from each node
+
+		PathNode node = m_root;
+		PathNode parent = m_root;
+
+		addRequests( node.m_treeWatchers, typ, curTime, reqList);
+
+		int pos = 0;
+		int len = matchPath.length();
+
+		while ( pos < len && node != null) {
+
+			// Skip path seperators
+
+			if ( matchPath.charAt( pos) == '\\') {
+				pos++;
+				continue;
+			}
+
+			// Get the path component
+
+			int endPos = matchPath.indexOf( '\\', pos);
+			if ( endPos == -1)
+				endPos = len;
+
+			// Move to the child node
+
+			parent = node;
+			node = node.getChild( matchPath.substring( pos, endPos), false);
+
+			if ( node != null)
+				addRequests( node.m_treeWatchers, typ, curTime, reqList);
+
+			pos = endPos;
+
+			// Skip trailing seperators so the parent is set correctly for the last path component
+
+			while ( pos < len && matchPath.charAt( pos) == '\\')
+				pos++;
+
+			// If this is the last component then check the file event parent directory watchers before the
+			// loop exits
+
+			if ( pos >= len && isdir == false)
+				addRequests( parent.m_dirWatchers, typ, curTime, reqList);
+		}
+
+		// Check for directory watchers of the directory itself, or a file at the root
+
+		if ( isdir == true) {
+			if ( node != null && pos >= len)
+				addRequests( node.m_dirWatchers, typ, curTime, reqList);
+		}
+		else if ( node == m_root)
+			addRequests( m_root.m_dirWatchers, typ, curTime, reqList);
+
+		return reqList.size() - startCnt;
+	}
+
+	/**
+	 * Return the number of requests in the index
+	 *
+	 * @return int
+	 */
+	public final synchronized int numberOfRequests() {
+		return m_reqNodes.size();
+	}
+
+	/**
+	 * Add the matching requests from a request list
+	 *
+	 * @param reqs ArrayList<NotifyRequest>
+	 * @param typ int
+	 * @param curTime long
+	 * @param reqList List<NotifyRequest>
+	 */
+	private final void addRequests( ArrayList<NotifyRequest> reqs, int typ, long curTime, List<NotifyRequest> reqList) {
+
+		if ( reqs == null)
+			return;
+
+		// Add requests that match the filter and have not expired, expired requests are removed by the expiry timer
+
+		for ( int i = 0; i < reqs.size(); i++) {
+			NotifyRequest req = reqs.get( i);
+			if ( req.hasFilter( typ) && req.hasExpired( curTime) == false)
+				reqList.add( req);
+		}
+	}
+
+	/**
+	 * Add the matching subtree watch requests from a node and all child nodes
+	 *
+	 * @param node PathNode
+	 * @param typ int
+	 * @param curTime long
+	 * @param reqList List<NotifyRequest>
+	 */
+	private final void addAllTreeWatchers( PathNode node, int typ, long curTime, List<NotifyRequest> reqList) {
+
+		addRequests( node.m_treeWatchers, typ, curTime, reqList);
+
+		if ( node.m_children != null) {
+			for ( PathNode child : node.m_children.values())
+				addAllTreeWatchers( child, typ, curTime, reqList);
+		}
+	}
+
+	/**
+	 * Remove a request from a request list
+	 *
+	 * @param reqs ArrayList<NotifyRequest>
+	 * @param req NotifyRequest
+	 */
+	private static final void removeFromList( ArrayList<NotifyRequest> reqs, NotifyRequest req) {
+		if ( reqs == null)
+			return;
+
+		for ( int i = 0; i < reqs.size(); i++) {
+			if ( reqs.get( i) == req) {
+				reqs.remove( i);
+				return;
+			}
+		}
+	}
+}
@@ -61,6 +61,15 @@ public class NotifyRequestList {
 		return m_requests.elementAt(idx);
 	}
 
+	/**
+	 * Return a copy of the request list
+	 *
+	 * @return NotifyRequest[]
+	 */
+	public final synchronized NotifyRequest[] getRequests() {
+		return m_requests.toArray(new NotifyRequest[m_requests.size()]);
+	}
+
 	/**
 	 * Return the global filter mask, generated by combining all of the pending notify request filters
 	 *
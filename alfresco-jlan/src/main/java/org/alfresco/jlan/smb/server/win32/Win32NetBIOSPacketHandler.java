@@ -22,6 +22,7 @@ package org.alfresco.jlan.smb.server.win32;
 import java.io.IOException;
 
 import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
 import org.alfresco.jlan.netbios.win32.NetBIOS;
 import org.alfresco.jlan.netbios.win32.Win32NetBIOS;
 import org.alfresco.jlan.smb.server.CIFSPacketPool;
@@ -197,10 +198,11 @@ public class Win32NetBIOSPacketHandler extends PacketHandler {
     			}
     		}
 
-    		// Set the received packet length
+    		// Set the received packet length, include the NetBIOS header so the length matches the other packet
+    		// handlers
 
     		if ( pkt != null)
-    			pkt.setReceivedLength( rxLen);
+    			pkt.setReceivedLength( rxLen > 0 ? rxLen + RFCNetBIOSProtocol.HEADER_LEN : 0);
 		}
 		catch (Throwable t)
 		{
@@ -22,6 +22,7 @@ package org.alfresco.jlan.smb.server.win32;
 import java.io.IOException;
 
 import org.alfresco.jlan.debug.Debug;
+import org.alfresco.jlan.netbios.RFCNetBIOSProtocol;
 import org.alfresco.jlan.netbios.win32.NetBIOSSocket;
 import org.alfresco.jlan.netbios.win32.WinsockNetBIOSException;
 import org.alfresco.jlan.server.core.NoPooledMemoryException;
@@ -317,10 +318,11 @@ public class WinsockNetBIOSPacketHandler extends PacketHandler implements Asynch
 			rethrowException(ex);
 		}
 
-		// Set the received packet length
+		// Set the received packet length, include the NetBIOS header so the length matches the other packet
+		// handlers
 
 		if ( pkt != null)
-			pkt.setReceivedLength( rxlen);
+			pkt.setReceivedLength( rxlen > 0 ? rxlen + RFCNetBIOSProtocol.HEADER_LEN : 0);
 
 		// Return the received packet
 
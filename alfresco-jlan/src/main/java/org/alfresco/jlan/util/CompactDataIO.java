@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Compact Data I/O Class
+ *
+ * <p>Static helpers used to write/read values to/from a compact binary stream. Integer values are written
+ * as variable length zig-zag encoded values so that small and negative values only use one or two bytes.
+ * Strings are written as a length followed by the UTF-8 bytes, and may be null.
+ *
+ * @author gkspencer
+ */
+public final class CompactDataIO {
+
+	// UTF-8 character set
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8");
+
+	/**
+	 * Write a variable length int value
+	 *
+	 * @param out DataOutput
+	 * @param val int
+	 * @exception IOException
+	 */
+	public final static void writeVarInt( DataOutput out, int val)
+		throws IOException {
+
+		// Zig-zag encode so that small negative values are also short
+
+		int zval = ( val << 1) ^ ( val >> 31);
+
+		while (( zval & 0xFFFFFF80) != 0) {
+			out.writeByte(( zval & 0x7F) | 0x80);
+			zval >>>= 7;
+		}
+		out.writeByte( zval);
+	}
+
+	/**
+	 * Read a variable length int value
+	 *
+	 * @param in DataInput
+	 * @return int
+	 * @exception IOException
+	 */
+	public final static int readVarInt( DataInput in)
+		throws IOException {
+
+		int zval = 0;
+		int shift = 0;
+		int byt = 0;
+
+		do {
+			if ( shift > 28)
+				throw new IOException( "Invalid variable length int");
+
+			byt = in.readByte();
+			zval |= ( byt & 0x7F) << shift;
+			shift += 7;
+
+		} while (( byt & 0x80) != 0);
+
+		return ( zval >>> 1) ^ -( zval & 1);
+	}
+
+	/**
+	 * Write a variable length long value
+	 *
+	 * @param out DataOutput
+	 * @param val long
+	 * @exception IOException
+	 */
+	public final static void writeVarLong( DataOutput out, long val)
+		throws IOException {
+
+		// Zig-zag encode so that small negative values are also short
+
+		long zval = ( val << 1) ^ ( val >> 63);
+
+		while (( zval & 0xFFFFFFFFFFFFFF80L) != 0L) {
+			out.writeByte((int) ( zval & 0x7FL) | 0x80);
+			zval >>>= 7;
+		}
+		out.writeByte((int) zval);
+	}
+
+	/**
+	 * Read a variable length long value
+	 *
+	 * @param in DataInput
+	 * @return long
+	 * @exception IOException
+	 */
+	public final static long readVarLong( DataInput in)
+		throws IOException {
+
+		long zval = 0L;
+		int shift = 0;
+		int byt = 0;
+
+		do {
+			if ( shift > 63)
+				throw new IOException( "Invalid variable length long");
+
+			byt = in.readByte();
+			zval |= (long) ( byt & 0x7F) << shift;
+			shift += 7;
+
+		} while (( byt & 0x80) != 0);
+
+		return ( zval >>> 1) ^ -( zval & 1L);
+	}
+
+	/**
+	 * Write a string, the string may be null
+	 *
+	 * @param out DataOutput
+	 * @param str String
+	 * @exception IOException
+	 */
+	public final static void writeString( DataOutput out, String str)
+		throws IOException {
+
+		// A zero length indicates a null string
+
+		if ( str == null) {
+			writeVarInt( out, 0);
+			return;
+		}
+
+		byte[] strBytes = str.getBytes( UTF8);
+
+		writeVarInt( out, strBytes.length + 1);
+		out.write( strBytes);
+	}
+
+	/**
+	 * Read a string, may return null
+	 *
+	 * @param in DataInput
+	 * @return String
+	 * @exception IOException
+	 */
+	public final static String readString( DataInput in)
+		throws IOException {
+
+		int len = readVarInt( in);
+		if ( len == 0)
+			return null;
+		else if ( len < 0)
+			throw new IOException( "Invalid string length, " + len);
+
+		byte[] strBytes = new byte[ len - 1];
+		in.readFully( strBytes);
+
+		return new String( strBytes, UTF8);
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copy On Write Int Map Class
+ *
+ * <p>Map of objects keyed by a primitive int value. Lookups do not lock and do not allocate, updates copy the
+ * map so the map is intended for small tables that are read on each request but updated rarely, such as the
+ * virtual circuits and tree connections of a session.
+ *
+ * @author gkspencer
+ */
+public class CopyOnWriteIntMap<V> {
+
+	//	Empty key and value arrays
+
+	private static final int[] EmptyKeys		= new int[0];
+	private static final Object[] EmptyValues	= new Object[0];
+
+	//	Sorted keys and the associated values, replaced as a pair on each update
+
+	private volatile Entries m_entries = new Entries(EmptyKeys, EmptyValues);
+
+	/**
+	 * Entries Class
+	 *
+	 * <p>Immutable snapshot of the map keys and values.
+	 */
+	private static final class Entries {
+
+		//	Sorted keys and associated values
+
+		final int[] m_keys;
+		final Object[] m_values;
+
+		/**
+		 * Class constructor
+		 *
+		 * @param keys int[]
+		 * @param values Object[]
+		 */
+		Entries(int[] keys, Object[] values) {
+			m_keys = keys;
+			m_values = values;
+		}
+	}
+
+	/**
+	 * Return the number of entries in the map
+	 *
+	 * @return int
+	 */
+	public final int size() {
+		return m_entries.m_keys.length;
+	}
+
+	/**
+	 * Check if the map is empty
+	 *
+	 * @return boolean
+	 */
+	public final boolean isEmpty() {
+		return m_entries.m_keys.length == 0 ? true : false;
+	}
+
+	/**
+	 * Return the value for the specified key, or null if the key is not in the map
+	 *
+	 * @param key int
+	 * @return V
+	 */
+	@SuppressWarnings("unchecked")
+	public final V get(int key) {
+		Entries entries = m_entries;
+		int idx = Arrays.binarySearch(entries.m_keys, key);
+		return idx >= 0 ? (V) entries.m_values[idx] : null;
+	}
+
+	/**
+	 * Check if the map contains the specified key
+	 *
+	 * @param key int
+	 * @return boolean
+	 */
+	public final boolean containsKey(int key) {
+		return Arrays.binarySearch(m_entries.m_keys, key) >= 0 ? true : false;
+	}
+
+	/**
+	 * Add or replace the value for the specified key
+	 *
+	 * @param key int
+	 * @param value V
+	 * @return V Previous value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public final synchronized V put(int key, V value) {
+
+		Entries entries = m_entries;
+		int idx = Arrays.binarySearch(entries.m_keys, key);
+
+		//	Check if the key is already in the map, replace the value
+
+		if ( idx >= 0) {
+			Object[] newValues = entries.m_values.clone();
+			newValues[idx] = value;
+
+			m_entries = new Entries(entries.m_keys, newValues);
+			return (V) entries.m_values[idx];
+		}
+
+		//	Insert the new key and value at the insertion point
+
+		int insIdx = -(idx + 1);
+		int len = entries.m_keys.length;
+
+		int[] newKeys = new int[len + 1];
+		Object[] newValues = new Object[len + 1];
+
+		System.arraycopy(entries.m_keys, 0, newKeys, 0, insIdx);
+		System.arraycopy(entries.m_values, 0, newValues, 0, insIdx);
+
+		newKeys[insIdx] = key;
+		newValues[insIdx] = value;
+
+		System.arraycopy(entries.m_keys, insIdx, newKeys, insIdx + 1, len - insIdx);
+		System.arraycopy(entries.m_values, insIdx, newValues, insIdx + 1, len - insIdx);
+
+		m_entries = new Entries(newKeys, newValues);
+		return null;
+	}
+
+	/**
+	 * Remove the specified key from the map
+	 *
+	 * @param key int
+	 * @return V Removed value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public final synchronized V remove(int key) {
+
+		Entries entries = m_entries;
+		int idx = Arrays.binarySearch(entries.m_keys, key);
+
+		if ( idx < 0)
+			return null;
+
+		//	Copy the keys and values, excluding the removed entry
+
+		int len = entries.m_keys.length;
+
+		int[] newKeys = new int[len - 1];
+		Object[] newValues = new Object[len - 1];
+
+		System.arraycopy(entries.m_keys, 0, newKeys, 0, idx);
+		System.arraycopy(entries.m_values, 0, newValues, 0, idx);
+		System.arraycopy(entries.m_keys, idx + 1, newKeys, idx, len - idx - 1);
+		System.arraycopy(entries.m_values, idx + 1, newValues, idx, len - idx - 1);
+
+		m_entries = new Entries(newKeys, newValues);
+		return (V) entries.m_values[idx];
+	}
+
+	/**
+	 * Remove all entries from the map
+	 */
+	public final synchronized void clear() {
+		m_entries = new Entries(EmptyKeys, EmptyValues);
+	}
+
+	/**
+	 * Return a snapshot of the map values, in key order
+	 *
+	 * @return List<V>
+	 */
+	@SuppressWarnings("unchecked")
+	public final List<V> values() {
+		Entries entries = m_entries;
+		List<V> values = new ArrayList<V>(entries.m_values.length);
+		for ( int i = 0; i < entries.m_values.length; i++)
+			values.add((V) entries.m_values[i]);
+		return values;
+	}
+
+	/**
+	 * Return the map details as a string
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		StringBuffer str = new StringBuffer();
+
+		str.append("[Entries=");
+		str.append(size());
+		str.append("]");
+
+		return str.toString();
+	}
+}
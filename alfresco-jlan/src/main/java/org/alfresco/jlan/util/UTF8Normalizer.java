@@ -189,11 +189,11 @@ public class UTF8Normalizer {
       catch (NoSuchMethodException ex) {
       }
     }
-    else if ( javaVer.equals("1.6") || javaVer.equals( "1.7")) {
+    else {
 
       try {
 
-        // Load the java.text.Normalizer class
+        // Load the java.text.Normalizer class, available from Java 6 onwards
 
         Class<?> java6Class = Class.forName("java.text.Normalizer");
 
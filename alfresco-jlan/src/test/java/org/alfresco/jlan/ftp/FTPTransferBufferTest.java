@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.alfresco.jlan.ftp;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.jlan.server.config.ServerConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * FTP Transfer Buffer Test Class
+ *
+ * <p>Checks that file transfers still get a buffer when the transfer buffer pool is exhausted, and that only
+ * pooled buffers are returned to the pool.
+ *
+ * @author gkspencer
+ */
+public class FTPTransferBufferTest {
+
+	/**
+	 * Allocate more buffers than the pool holds, release them all, then check the pool still works
+	 */
+	@Test
+	public void testPoolExhausted() {
+
+		FTPServer ftpServer = new FTPServer( new ServerConfiguration( "FTPTransferBufferTest"));
+
+		// Allocate more transfer buffers than the pool allows
+
+		int bufCnt = FTPServer.TransferBufferMaximum + 8;
+		List<byte[]> bufs = new ArrayList<byte[]>();
+
+		for ( int i = 0; i < bufCnt; i++) {
+			byte[] buf = ftpServer.allocateTransferBuffer();
+
+			assertNotNull( buf, "Buffer " + i);
+			assertEquals( buf.length, FTPServer.TransferBufferSize, "Buffer " + i + " length");
+			bufs.add( buf);
+		}
+
+		// Release all of the buffers, the non-pooled buffers must not be added to the pool
+
+		for ( byte[] buf : bufs)
+			ftpServer.releaseTransferBuffer( buf);
+
+		// The pool should supply the original pooled buffers again, then allocate new buffers
+
+		List<byte[]> pooled = bufs.subList( 0, FTPServer.TransferBufferMaximum);
+		List<byte[]> realloc = new ArrayList<byte[]>();
+
+		for ( int i = 0; i < FTPServer.TransferBufferMaximum; i++) {
+			byte[] buf = ftpServer.allocateTransferBuffer();
+			assertTrue( containsBuffer( pooled, buf), "Pooled buffer " + i);
+			realloc.add( buf);
+		}
+
+		byte[] extraBuf = ftpServer.allocateTransferBuffer();
+		assertFalse( containsBuffer( bufs, extraBuf), "Non-pooled buffer returned to the pool");
+
+		ftpServer.releaseTransferBuffer( extraBuf);
+		for ( byte[] buf : realloc)
+			ftpServer.releaseTransferBuffer( buf);
+	}
+
+	/**
+	 * Check if a list contains the specified buffer instance
+	 *
+	 * @param bufs List<byte[]>
+	 * @param buf byte[]
+	 * @return boolean
+	 */
+	private static boolean containsBuffer( List<byte[]> bufs, byte[] buf) {
+		for ( byte[] curBuf : bufs) {
+			if ( curBuf == buf)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.locking;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * File Lock List Test Class
+ *
+ * <p>Checks the interval tree based FileLockList against a linear scan of the same locks, using a randomized run
+ * of lock/unlock/check operations including overlapping, zero length and whole file locks.
+ *
+ * @author gkspencer
+ */
+public class FileLockListTest {
+
+	// Number of randomized operations
+
+	private static final int RandomOperations	= 200000;
+
+	// Record size used for the database style record locks
+
+	private static final int RecordSize	= 128;
+
+	/**
+	 * Linear scan lock checks, the original FileLockList algorithm
+	 */
+	private static class LinearLockList {
+
+		// List of file locks
+
+		private ArrayList<FileLock> m_locks = new ArrayList<FileLock>();
+
+		/**
+		 * Add a lock
+		 *
+		 * @param lock FileLock
+		 */
+		public void addLock( FileLock lock) {
+			m_locks.add( lock);
+		}
+
+		/**
+		 * Remove a lock
+		 *
+		 * @param offset long
+		 * @param len long
+		 * @return FileLock
+		 */
+		public FileLock removeLock( long offset, long len) {
+			for ( int i = 0; i < m_locks.size(); i++) {
+				FileLock curLock = m_locks.get( i);
+				if ( curLock.getOffset() == offset && curLock.getLength() == len)
+					return m_locks.remove( i);
+			}
+			return null;
+		}
+
+		/**
+		 * Check if a lock would be allowed
+		 *
+		 * @param lock FileLock
+		 * @return boolean
+		 */
+		public boolean allowsLock( FileLock lock) {
+			for ( int i = 0; i < m_locks.size(); i++) {
+				if ( m_locks.get( i).hasOverlap( lock))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Check if the range is accessible for the process
+		 *
+		 * @param offset long
+		 * @param len long
+		 * @param pid int
+		 * @return boolean
+		 */
+		public boolean canAccess( long offset, long len, int pid) {
+			for ( int i = 0; i < m_locks.size(); i++) {
+				FileLock curLock = m_locks.get( i);
+				if ( curLock.getProcessId() != pid && curLock.hasOverlap( offset, len))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Return the lock count
+		 *
+		 * @return int
+		 */
+		public int numberOfLocks() {
+			return m_locks.size();
+		}
+	}
+
+	/**
+	 * Create a random lock, mostly small record locks with some overlapping, zero length and whole file locks
+	 *
+	 * @param rand Random
+	 * @return FileLock
+	 */
+	private static FileLock randomLock( Random rand) {
+		int typ = rand.nextInt( 100);
+		int pid = rand.nextInt( 4);
+
+		if ( typ < 2)
+			return new FileLock( 0L, -1L, pid);
+		else if ( typ < 10)
+			return new FileLock( rand.nextInt( 4096), 0L, pid);
+		else if ( typ < 20)
+			return new FileLock( rand.nextInt( 4096), rand.nextInt( 2048), pid);
+		else if ( typ < 22)
+			return new FileLock( Long.MAX_VALUE - rand.nextInt( 10), 100L + rand.nextInt( 10), pid);
+		return new FileLock( rand.nextInt( 4096), 1 + rand.nextInt( 32), pid);
+	}
+
+	/**
+	 * Randomized comparison of the interval tree lock list with the linear scan
+	 */
+	@Test
+	public void testRandomLockOperations() {
+
+		Random rand = new Random( 1234L);
+		FileLockList lockList = new FileLockList();
+		LinearLockList linList = new LinearLockList();
+
+		for ( int i = 0; i < RandomOperations; i++) {
+
+			int op = rand.nextInt( 10);
+			FileLock lock = randomLock( rand);
+
+			if ( op < 3) {
+				lockList.addLock( lock);
+				linList.addLock( lock);
+			}
+			else if ( op < 5 && linList.numberOfLocks() > 0) {
+
+				// Remove an existing lock
+
+				FileLock remLock = linList.m_locks.get( rand.nextInt( linList.numberOfLocks()));
+				FileLock rem1 = lockList.removeLock( remLock.getOffset(), remLock.getLength(), remLock.getProcessId());
+				FileLock rem2 = linList.removeLock( remLock.getOffset(), remLock.getLength());
+
+				assertSame( rem1, rem2, "Removed lock");
+			}
+			else {
+
+				// Compare the conflict checks
+
+				assertEquals( lockList.allowsLock( lock), linList.allowsLock( lock), "allowsLock for " + lock);
+
+				boolean canAccess = linList.canAccess( lock.getOffset(), lock.getLength(), lock.getProcessId());
+
+				assertEquals( lockList.canReadFile( lock), canAccess, "canReadFile for " + lock);
+				assertEquals( lockList.canWriteFile( lock), canAccess, "canWriteFile for " + lock);
+			}
+
+			assertEquals( lockList.numberOfLocks(), linList.numberOfLocks(), "Lock count");
+		}
+
+		// Check that indexed access returns every lock, then remove them by index
+
+		int lockCnt = lockList.numberOfLocks();
+		for ( int i = 0; i < lockCnt; i++)
+			assertTrue( linList.m_locks.contains( lockList.getLockAt( i)), "getLockAt index " + i);
+
+		while ( lockList.numberOfLocks() > 0)
+			lockList.removeLockAt( lockList.numberOfLocks() / 2);
+	}
+
+	/**
+	 * Check record locks held by another process, with a gap between each lock
+	 */
+	@Test
+	public void testRecordLocks() {
+
+		FileLockList lockList = new FileLockList();
+		LinearLockList linList = new LinearLockList();
+
+		for ( int i = 0; i < 10000; i++) {
+			FileLock lock = new FileLock(( long) i * RecordSize * 2L, RecordSize, 2);
+			lockList.addLock( lock);
+			linList.addLock( lock);
+		}
+
+		// Check access to locked and unlocked records, by the lock owner and another process
+
+		for ( long offset = 0L; offset < 20000L * RecordSize; offset += RecordSize / 2) {
+			assertEquals( lockList.canWriteFile( offset, RecordSize, 1), linList.canAccess( offset, RecordSize, 1), "Offset " + offset);
+			assertTrue( lockList.canWriteFile( offset, RecordSize, 2), "Owner access at offset " + offset);
+		}
+
+		// Remove the locks
+
+		for ( int i = 0; i < 10000; i++)
+			assertNotNull( lockList.removeLock(( long) i * RecordSize * 2L, RecordSize, 2), "Remove lock " + i);
+
+		assertEquals( lockList.numberOfLocks(), 0);
+	}
+}
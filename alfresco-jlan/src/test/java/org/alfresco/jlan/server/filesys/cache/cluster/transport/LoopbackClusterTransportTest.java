@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.server.filesys.cache.cluster.transport;
+
+import static org.testng.Assert.*;
+
+import java.io.Serializable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.jlan.server.filesys.FileStatus;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.hazelcast.ClusterMessage;
+import org.alfresco.jlan.server.filesys.cache.hazelcast.ClusterMessageCodec;
+import org.alfresco.jlan.server.filesys.cache.hazelcast.ClusterStateCodec;
+import org.alfresco.jlan.server.filesys.cache.hazelcast.HazelCastClusterFileState;
+import org.alfresco.jlan.server.filesys.cache.hazelcast.StateUpdateMessage;
+import org.alfresco.jlan.smb.SharingMode;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Loopback Cluster Transport Test Class
+ *
+ * <p>Runs two loopback cluster members in the test JVM and checks that file states, messages, tasks and
+ * membership events are passed between the members via the cluster transport SPI.
+ *
+ * @author gkspencer
+ */
+public class LoopbackClusterTransportTest {
+
+	// Loopback cluster name, map and topic names
+
+	private static final String ClusterName	= "loopbackTest";
+	private static final String MapName		= "fileStates";
+	private static final String TopicName	= "clusterMessages";
+
+	// Path used for the test file state
+
+	private static final String TestPath	= "\\Projects\\Cluster\\Documents\\Budget-2012.xlsx";
+
+	// Maximum time to wait for an event, in seconds
+
+	private static final long EventWait		= 5L;
+
+	// Cluster members
+
+	private LoopbackClusterTransport m_member1;
+	private LoopbackClusterTransport m_member2;
+
+	/**
+	 * Task that returns the name of the cluster member it runs on
+	 */
+	public static class MemberNameTask implements Callable<String>, ClusterTransportAware, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		// Cluster transport of the member running the task, not serialized
+
+		private transient ClusterTransport m_transport;
+
+		/**
+		 * Set the cluster transport
+		 *
+		 * @param transport ClusterTransport
+		 */
+		public void setClusterTransport( ClusterTransport transport) {
+			m_transport = transport;
+		}
+
+		/**
+		 * Run the task
+		 *
+		 * @return String
+		 */
+		public String call() {
+			return m_transport.getLocalMember().getName();
+		}
+	}
+
+	/**
+	 * Start two cluster members
+	 *
+	 * @exception Exception
+	 */
+	@BeforeMethod
+	public void startMembers()
+		throws Exception {
+
+		m_member1 = new LoopbackClusterTransport( ClusterName);
+		m_member1.startTransport();
+
+		m_member2 = new LoopbackClusterTransport( ClusterName);
+		m_member2.startTransport();
+	}
+
+	/**
+	 * Shutdown the cluster members
+	 *
+	 * @exception Exception
+	 */
+	@AfterMethod
+	public void shutdownMembers()
+		throws Exception {
+
+		m_member2.shutdownTransport();
+		m_member1.shutdownTransport();
+	}
+
+	/**
+	 * Create a file state
+	 *
+	 * @return HazelCastClusterFileState
+	 */
+	private static HazelCastClusterFileState createFileState() {
+
+		HazelCastClusterFileState state = new HazelCastClusterFileState( TestPath, false);
+
+		state.setFileStatus( FileStatus.FileExists);
+		state.setSharedAccess( SharingMode.READWRITE);
+		state.setOpenCount( 2);
+		state.setFileSize( 1234567L);
+		state.updateModifyDateTime();
+
+		return state;
+	}
+
+	/**
+	 * Store a file state via one member and read it via the other member
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testMapRoundTrip()
+		throws Exception {
+
+		ClusterMap<String, ClusterFileState> map1 = m_member1.getMap( MapName, new ClusterStateCodec<ClusterFileState>());
+		ClusterMap<String, ClusterFileState> map2 = m_member2.getMap( MapName, new ClusterStateCodec<ClusterFileState>());
+
+		// Listen for map events on the second member
+
+		final BlockingQueue<ClusterFileState> added = new LinkedBlockingQueue<ClusterFileState>();
+
+		map2.addEntryListener( new ClusterMapListener<String, ClusterFileState>() {
+			public void entryAdded( String key, ClusterFileState value) {
+				added.add( value);
+			}
+			public void entryRemoved( String key, ClusterFileState value) {
+			}
+			public void entryUpdated( String key, ClusterFileState value) {
+			}
+			public void entryEvicted( String key, ClusterFileState value) {
+			}
+		});
+
+		// Store the file state via the first member
+
+		HazelCastClusterFileState state = createFileState();
+		assertNull( map1.putIfAbsent( TestPath, state), "Existing value");
+
+		// Read the file state via the second member, the value is a copy
+
+		ClusterFileState copy = map2.get( TestPath);
+
+		assertNotNull( copy, "Value not found");
+		assertNotSame( copy, state, "Value not copied");
+		assertEquals( copy.getPath(), state.getPath(), "Path");
+		assertEquals( copy.getFileStatus(), state.getFileStatus(), "File status");
+		assertEquals( copy.getFileSize(), state.getFileSize(), "File size");
+		assertEquals( copy.getModifyDateTime(), state.getModifyDateTime(), "Modify date/time");
+		assertEquals( copy.getOpenCount(), state.getOpenCount(), "Open count");
+		assertEquals( copy.getSharedAccess(), state.getSharedAccess(), "Shared access");
+		assertEquals( map2.size(), 1, "Map size");
+
+		// Check the entry added event was received by the second member
+
+		ClusterFileState evState = added.poll( EventWait, TimeUnit.SECONDS);
+
+		assertNotNull( evState, "Entry added event not received");
+		assertEquals( evState.getFileSize(), state.getFileSize(), "Event file size");
+
+		// Remove the file state via the second member
+
+		assertNotNull( map2.remove( TestPath), "Removed value");
+		assertNull( map1.get( TestPath), "Value not removed");
+	}
+
+	/**
+	 * Publish a message via one member and receive it on both members
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testTopicRoundTrip()
+		throws Exception {
+
+		ClusterTopic<ClusterMessage> topic1 = m_member1.getTopic( TopicName, new ClusterMessageCodec());
+		ClusterTopic<ClusterMessage> topic2 = m_member2.getTopic( TopicName, new ClusterMessageCodec());
+
+		// Listen for messages on both members
+
+		final BlockingQueue<ClusterMessage> rx1 = new LinkedBlockingQueue<ClusterMessage>();
+		final BlockingQueue<ClusterMessage> rx2 = new LinkedBlockingQueue<ClusterMessage>();
+
+		topic1.addMessageListener( new ClusterTopicListener<ClusterMessage>() {
+			public void onMessage( ClusterMessage msg) {
+				rx1.add( msg);
+			}
+		});
+
+		topic2.addMessageListener( new ClusterTopicListener<ClusterMessage>() {
+			public void onMessage( ClusterMessage msg) {
+				rx2.add( msg);
+			}
+		});
+
+		// Publish a state update via the first member
+
+		StateUpdateMessage updMsg = new StateUpdateMessage( ClusterMessage.AllNodes, null, createFileState(),
+				ClusterFileState.UpdateFileSize + ClusterFileState.UpdateModifyDate);
+		topic1.publish( updMsg);
+
+		// Check both members received a copy of the message
+
+		ClusterMessage msg1 = rx1.poll( EventWait, TimeUnit.SECONDS);
+		ClusterMessage msg2 = rx2.poll( EventWait, TimeUnit.SECONDS);
+
+		assertNotNull( msg1, "Message not received by publisher");
+		assertNotNull( msg2, "Message not received by remote member");
+		assertNotSame( msg1, msg2, "Message not copied");
+
+		StateUpdateMessage updCopy = (StateUpdateMessage) msg2;
+
+		assertEquals( updCopy.getPath(), updMsg.getPath(), "Update path");
+		assertEquals( updCopy.getUpdateMask(), updMsg.getUpdateMask(), "Update mask");
+		assertEquals( updCopy.getFileSize(), updMsg.getFileSize(), "Update file size");
+	}
+
+	/**
+	 * Run a task on the key owner
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testExecuteOnKeyOwner()
+		throws Exception {
+
+		// Check the key is owned by exactly one member
+
+		boolean local1 = m_member1.isLocalKey( TestPath);
+		boolean local2 = m_member2.isLocalKey( TestPath);
+
+		assertTrue( local1 != local2, "Key owner");
+
+		// Run the task from the member that does not own the key, the task runs on the owner
+
+		LoopbackClusterTransport owner = local1 ? m_member1 : m_member2;
+		LoopbackClusterTransport caller = local1 ? m_member2 : m_member1;
+
+		String runOn = caller.executeOnKeyOwner( new MemberNameTask(), TestPath).get( EventWait, TimeUnit.SECONDS);
+
+		assertEquals( runOn, owner.getMemberName(), "Task member");
+	}
+
+	/**
+	 * Check membership and membership events
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testMembership()
+		throws Exception {
+
+		assertEquals( m_member1.getMembers().size(), 2, "Member count");
+		assertNotEquals( m_member1.getMemberName(), m_member2.getMemberName(), "Member names");
+		assertTrue( m_member2.getLocalMember().isLocalMember(), "Local member");
+
+		// Listen for membership events on the first member
+
+		final BlockingQueue<String> added = new LinkedBlockingQueue<String>();
+		final BlockingQueue<String> removed = new LinkedBlockingQueue<String>();
+
+		m_member1.addMembershipListener( new ClusterMembershipListener() {
+			public void memberAdded( ClusterMember member) {
+				added.add( member.getName());
+			}
+			public void memberRemoved( ClusterMember member) {
+				removed.add( member.getName());
+			}
+		});
+
+		// Start and stop a third member
+
+		LoopbackClusterTransport member3 = new LoopbackClusterTransport( ClusterName);
+		member3.startTransport();
+
+		String member3Name = member3.getMemberName();
+		assertEquals( added.poll( EventWait, TimeUnit.SECONDS), member3Name, "Member added");
+		assertEquals( m_member2.getMembers().size(), 3, "Member count");
+
+		member3.shutdownTransport();
+
+		assertEquals( removed.poll( EventWait, TimeUnit.SECONDS), member3Name, "Member removed");
+		assertEquals( m_member1.getMembers().size(), 2, "Member count");
+	}
+}
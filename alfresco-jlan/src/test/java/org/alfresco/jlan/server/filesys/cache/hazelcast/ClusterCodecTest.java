@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2006-2011 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.alfresco.jlan.server.filesys.cache.hazelcast;
+
+import static org.testng.Assert.*;
+
+import org.alfresco.jlan.server.filesys.FileStatus;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileLock;
+import org.alfresco.jlan.server.filesys.cache.cluster.ClusterFileState;
+import org.alfresco.jlan.smb.OpLock;
+import org.alfresco.jlan.smb.SharingMode;
+import org.testng.annotations.Test;
+
+/**
+ * Cluster Codec Test Class
+ *
+ * <p>Checks that cluster file states and messages are unchanged by a round trip through the compact cluster codecs.
+ *
+ * @author gkspencer
+ */
+public class ClusterCodecTest {
+
+	// Cluster node names used in the test objects
+
+	private static final String LocalNode	= "/192.168.1.10:5701";
+	private static final String RemoteNode	= "/192.168.1.11:5701";
+
+	/**
+	 * Create a file state with byte range locks and a remote oplock
+	 *
+	 * @param lockCnt int
+	 * @return HazelCastClusterFileState
+	 * @exception Exception
+	 */
+	private static HazelCastClusterFileState createFileState( int lockCnt)
+		throws Exception {
+
+		HazelCastClusterFileState state = new HazelCastClusterFileState( "\\Projects\\Cluster\\Documents\\Budget-2012.xlsx", false);
+
+		state.setFileStatus( FileStatus.FileExists);
+		state.setSharedAccess( SharingMode.READWRITE);
+		state.setPrimaryOwner( LocalNode);
+		state.setProcessId( 1234);
+		state.setOpenCount( 2);
+		state.setFileSize( 1234567L);
+		state.setAllocationSize( 1310720L);
+		state.updateModifyDateTime();
+		state.updateChangeDateTime();
+
+		for ( int idx = 0; idx < lockCnt; idx++) {
+			ClusterFileLock lock = new ClusterFileLock();
+			lock.setOffset( idx * 4096L);
+			lock.setLength( 1024L);
+			lock.setProcessId( 0x00010000 + idx);
+
+			state.addLock( lock);
+		}
+
+		state.setOpLock( new RemoteOpLockDetails( RemoteNode, OpLock.TypeBatch, state.getPath(), null));
+		return state;
+	}
+
+	/**
+	 * Check that a file state is unchanged by a codec round trip
+	 *
+	 * @param state ClusterFileState
+	 * @exception Exception
+	 */
+	private static void checkFileState( ClusterFileState state)
+		throws Exception {
+
+		ClusterStateCodec<ClusterFileState> codec = new ClusterStateCodec<ClusterFileState>();
+		ClusterFileState copy = codec.decode( codec.encode( state));
+
+		assertEquals( copy.getPath(), state.getPath(), "Path");
+		assertEquals( copy.getFileStatus(), state.getFileStatus(), "File status");
+		assertEquals( copy.getFileSize(), state.getFileSize(), "File size");
+		assertEquals( copy.getModifyDateTime(), state.getModifyDateTime(), "Modify date/time");
+		assertEquals( copy.getOpenCount(), state.getOpenCount(), "Open count");
+		assertEquals( copy.getSharedAccess(), state.getSharedAccess(), "Shared access");
+		assertEquals( copy.numberOfLocks(), state.numberOfLocks(), "Lock count");
+		assertEquals( copy.getPrimaryOwner(), state.getPrimaryOwner(), "Primary owner");
+		assertEquals( copy.hasOpLock(), state.hasOpLock(), "Oplock");
+
+		if ( copy.hasOpLock())
+			assertEquals( copy.getOpLock().getLockType(), state.getOpLock().getLockType(), "Oplock type");
+	}
+
+	/**
+	 * Round trip a file state without byte range locks
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testFileState()
+		throws Exception {
+		checkFileState( createFileState( 0));
+	}
+
+	/**
+	 * Round trip a file state with byte range locks
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testFileStateWithLocks()
+		throws Exception {
+		checkFileState( createFileState( 8));
+	}
+
+	/**
+	 * Round trip the cluster messages
+	 *
+	 * @exception Exception
+	 */
+	@Test
+	public void testMessages()
+		throws Exception {
+
+		ClusterMessageCodec msgCodec = new ClusterMessageCodec();
+		HazelCastClusterFileState state = createFileState( 0);
+
+		StateUpdateMessage updMsg = new StateUpdateMessage( ClusterMessage.AllNodes, null, state,
+				ClusterFileState.UpdateFileSize + ClusterFileState.UpdateModifyDate + ClusterFileState.UpdateAllocSize);
+		StateUpdateMessage updCopy = (StateUpdateMessage) msgCodec.decode( msgCodec.encode( updMsg));
+
+		assertEquals( updCopy.getPath(), updMsg.getPath(), "Update path");
+		assertEquals( updCopy.getUpdateMask(), updMsg.getUpdateMask(), "Update mask");
+		assertEquals( updCopy.getFileSize(), updMsg.getFileSize(), "Update file size");
+
+		OpLockMessage oplockMsg = new OpLockMessage( RemoteNode, ClusterMessageType.OpLockBreakRequest, state.getPath());
+		OpLockMessage oplockCopy = (OpLockMessage) msgCodec.decode( msgCodec.encode( oplockMsg));
+
+		assertEquals( oplockCopy.getPath(), oplockMsg.getPath(), "Oplock path");
+		assertEquals( oplockCopy.getTargetNode(), oplockMsg.getTargetNode(), "Oplock target node");
+	}
+}